@@ -859,12 +859,11 @@ public class AnetMeshObject
         AnetMeshObjectNeighborManager nMgr = getNeighborManager();
 
         MeshTypeIdentifier [] types;
-        if( theMeshTypes != null && theMeshTypes.size() > 0 ) {
-            types = new MeshTypeIdentifier[ theMeshTypes.size() ];
+        if( theMeshTypes != null ) {
+            types = new MeshTypeIdentifier[ theMeshTypes.length ];
 
-            int i=0;
-            for( EntityType current : theMeshTypes.keySet() ) {
-                types[i++] = current.getIdentifier();
+            for( int i=0 ; i<types.length ; ++i ) {
+                types[i] = theMeshTypes[i].getIdentifier();
             }
         } else {
             types = null;
@@ -873,15 +872,23 @@ public class AnetMeshObject
         // FIXME? Only send read-write and not read-only properties?
         MeshTypeIdentifier [] propertyTypes;
         PropertyValue  [] propertyValues;
-        if( theProperties != null && theProperties.size() > 0 ) {
-            propertyTypes  = new MeshTypeIdentifier[ theProperties.size() ];
-            propertyValues = new PropertyValue[ propertyTypes.length ];
+        if( thePropertyValues != null ) {
+            int count = 0;
+            for( PropertyValue current : thePropertyValues ) {
+                if( current != null ) {
+                    ++count;
+                }
+            }
+            propertyTypes  = new MeshTypeIdentifier[ count ];
+            propertyValues = new PropertyValue[ count ];
 
             int i=0;
-            for( PropertyType current : theProperties.keySet() ) {
-                propertyTypes[i]  = current.getIdentifier();
-                propertyValues[i] = theProperties.get( current );
-                ++i;
+            for( int slot=0 ; slot<thePropertyValues.length ; ++slot ) {
+                if( thePropertyValues[slot] != null ) {
+                    propertyTypes[i]  = thePropertyLayout.getPropertyType( slot ).getIdentifier();
+                    propertyValues[i] = thePropertyValues[slot];
+                    ++i;
+                }
             }
         } else {
             propertyTypes  = null;
@@ -2049,7 +2056,7 @@ public class AnetMeshObject
                     theTimeUpdated,
                     theTimeRead,
                     theTimeExpires,
-                    theMeshTypes != null ? theMeshTypes.keySet() : null,
+                    theMeshTypes,
                     theNeighborIdentifiers,
                     theNeighborRoleTypes,
                     theMeshBase != null ? theMeshBase.getIdentifier().toExternalForm() : null
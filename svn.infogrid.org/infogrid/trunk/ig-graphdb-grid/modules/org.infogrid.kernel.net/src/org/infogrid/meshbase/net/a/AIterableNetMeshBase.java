@@ -14,7 +14,6 @@
 
 package org.infogrid.meshbase.net.a;
 
-import java.util.HashMap;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.set.MeshObjectSetFactory;
@@ -99,9 +98,8 @@ public abstract class AIterableNetMeshBase
      */
     public CursorIterator<MeshObject> iterator()
     {
-        // not sure why these type casts are needed, they should not be
         MapCursorIterator.Values<MeshObjectIdentifier,MeshObject> ret = MapCursorIterator.createForValues(
-                (HashMap<MeshObjectIdentifier,MeshObject>) theCache,
+                theCache,
                 MeshObjectIdentifier.class,
                 MeshObject.class );
         return ret;
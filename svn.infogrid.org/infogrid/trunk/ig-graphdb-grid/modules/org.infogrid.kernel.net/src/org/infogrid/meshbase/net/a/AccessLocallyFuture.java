@@ -0,0 +1,295 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.net.a;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.infogrid.mesh.net.NetMeshObject;
+import org.infogrid.meshbase.net.NetMeshObjectAccessException;
+import org.infogrid.meshbase.net.NetMeshObjectAccessSpecification;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.util.ReturnSynchronizer;
+import org.infogrid.util.logging.Log;
+
+/**
+ * The result of an asynchronous accessLocally operation. If the operation failed,
+ * the get methods throw an ExecutionException whose cause is the NetMeshObjectAccessException
+ * that the corresponding synchronous accessLocally method would have thrown.
+ *
+ * @see AnetMeshBase#accessLocallyAsync
+ */
+public class AccessLocallyFuture
+        implements
+            Future<NetMeshObject []>
+{
+    private static final Log log = Log.getLogInstance( AccessLocallyFuture.class ); // our own, private logger
+
+    /**
+     * Constructor, for AnetMeshBase only.
+     *
+     * @param pathsToObjects the NetMeshObjectAccessSpecifications of the operation
+     * @param listener if given, notified once the result is available
+     */
+    protected AccessLocallyFuture(
+            NetMeshObjectAccessSpecification [] pathsToObjects,
+            AccessLocallyListener               listener )
+    {
+        thePathsToObjects = pathsToObjects;
+        theListener       = listener;
+    }
+
+    /**
+     * Obtain the NetMeshObjectAccessSpecifications of the operation.
+     *
+     * @return the NetMeshObjectAccessSpecifications
+     */
+    public NetMeshObjectAccessSpecification [] getPathsToObjects()
+    {
+        return thePathsToObjects;
+    }
+
+    /**
+     * Stop waiting for the responses. Responses that arrive later are still replicated into the NetMeshBase.
+     *
+     * @param mayInterruptIfRunning ignored
+     * @return true if the operation was cancelled, false if it was complete already
+     */
+    public boolean cancel(
+            boolean mayInterruptIfRunning )
+    {
+        ReturnSynchronizer<Long,XprisoMessage>.Detached detached;
+        ScheduledFuture<?>                              timeoutTask;
+
+        synchronized( this ) {
+            if( isDone ) {
+                return false;
+            }
+            isDone      = true;
+            isCancelled = true;
+            detached    = theDetached;
+            timeoutTask = theTimeoutTask;
+
+            notifyAll();
+        }
+        if( timeoutTask != null ) {
+            timeoutTask.cancel( false );
+        }
+        if( detached != null ) {
+            detached.cancel();
+        }
+        notifyListener();
+        return true;
+    }
+
+    /**
+     * Determine whether the operation was cancelled.
+     *
+     * @return true if cancelled
+     */
+    public synchronized boolean isCancelled()
+    {
+        return isCancelled;
+    }
+
+    /**
+     * Determine whether the operation has completed, successfully or not, or was cancelled.
+     *
+     * @return true if done
+     */
+    public synchronized boolean isDone()
+    {
+        return isDone;
+    }
+
+    /**
+     * Wait for the result.
+     *
+     * @return the locally replicated NetMeshObjects, or null if not found
+     * @throws InterruptedException thrown if interrupted while waiting
+     * @throws ExecutionException thrown if the operation failed; the cause is a NetMeshObjectAccessException
+     * @throws CancellationException thrown if the operation was cancelled
+     */
+    public synchronized NetMeshObject [] get()
+        throws
+            InterruptedException,
+            ExecutionException
+    {
+        while( !isDone ) {
+            wait();
+        }
+        return result();
+    }
+
+    /**
+     * Wait for the result, but no longer than the provided time.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return the locally replicated NetMeshObjects, or null if not found
+     * @throws InterruptedException thrown if interrupted while waiting
+     * @throws ExecutionException thrown if the operation failed; the cause is a NetMeshObjectAccessException
+     * @throws TimeoutException thrown if the result did not become available in time
+     * @throws CancellationException thrown if the operation was cancelled
+     */
+    public synchronized NetMeshObject [] get(
+            long     timeout,
+            TimeUnit unit )
+        throws
+            InterruptedException,
+            ExecutionException,
+            TimeoutException
+    {
+        long until = System.currentTimeMillis() + unit.toMillis( timeout );
+        while( !isDone ) {
+            long delta = until - System.currentTimeMillis();
+            if( delta <= 0 ) {
+                throw new TimeoutException();
+            }
+            wait( delta );
+        }
+        return result();
+    }
+
+    /**
+     * Obtain the result once done.
+     *
+     * @return the locally replicated NetMeshObjects, or null if not found
+     * @throws ExecutionException thrown if the operation failed
+     */
+    protected NetMeshObject [] result()
+        throws
+            ExecutionException
+    {
+        if( isCancelled ) {
+            throw new CancellationException();
+        }
+        if( theException != null ) {
+            throw new ExecutionException( theException );
+        }
+        return theResult;
+    }
+
+    /**
+     * Remember the detached transaction and the timeout, so they can be cancelled.
+     *
+     * @param detached the detached transaction
+     * @param timeoutTask the timeout, if any
+     */
+    protected void setDetached(
+            ReturnSynchronizer<Long,XprisoMessage>.Detached detached,
+            ScheduledFuture<?>                              timeoutTask )
+    {
+        synchronized( this ) {
+            if( !isDone ) {
+                theDetached    = detached;
+                theTimeoutTask = timeoutTask;
+                return;
+            }
+        }
+        // completed in the meantime
+        if( timeoutTask != null ) {
+            timeoutTask.cancel( false );
+        }
+    }
+
+    /**
+     * Complete the operation.
+     *
+     * @param result the locally replicated NetMeshObjects, if successful
+     * @param ex the NetMeshObjectAccessException, if not successful
+     */
+    protected void complete(
+            NetMeshObject []             result,
+            NetMeshObjectAccessException ex )
+    {
+        ScheduledFuture<?> timeoutTask;
+
+        synchronized( this ) {
+            if( isDone ) {
+                return; // was cancelled
+            }
+            isDone       = true;
+            theResult    = result;
+            theException = ex;
+            timeoutTask  = theTimeoutTask;
+
+            notifyAll();
+        }
+        if( timeoutTask != null ) {
+            timeoutTask.cancel( false );
+        }
+        notifyListener();
+    }
+
+    /**
+     * Notify the AccessLocallyListener, if any.
+     */
+    protected void notifyListener()
+    {
+        if( theListener == null ) {
+            return;
+        }
+        try {
+            theListener.accessLocallyComplete( this );
+
+        } catch( Throwable t ) {
+            log.error( t );
+        }
+    }
+
+    /**
+     * The NetMeshObjectAccessSpecifications of the operation.
+     */
+    protected NetMeshObjectAccessSpecification [] thePathsToObjects;
+
+    /**
+     * The AccessLocallyListener to notify, if any.
+     */
+    protected AccessLocallyListener theListener;
+
+    /**
+     * The detached transaction on the AccessLocallySynchronizer, if any.
+     */
+    protected ReturnSynchronizer<Long,XprisoMessage>.Detached theDetached;
+
+    /**
+     * The timeout, if any.
+     */
+    protected ScheduledFuture<?> theTimeoutTask;
+
+    /**
+     * The result, if successful.
+     */
+    protected NetMeshObject [] theResult;
+
+    /**
+     * The exception, if not successful.
+     */
+    protected NetMeshObjectAccessException theException;
+
+    /**
+     * True once completed or cancelled.
+     */
+    protected boolean isDone;
+
+    /**
+     * True if cancelled.
+     */
+    protected boolean isCancelled;
+}
@@ -0,0 +1,33 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.net.a;
+
+/**
+ * Implemented by those who wish to be notified when an asynchronous accessLocally
+ * operation has completed.
+ *
+ * @see AnetMeshBase#accessLocallyAsync
+ */
+public interface AccessLocallyListener
+{
+    /**
+     * The accessLocally operation has completed, successfully or not, or was cancelled.
+     * This is invoked on the Thread that delivered the last response, and must not block.
+     *
+     * @param future the AccessLocallyFuture of the operation, whose get methods return without waiting
+     */
+    public abstract void accessLocallyComplete(
+            AccessLocallyFuture future );
+}
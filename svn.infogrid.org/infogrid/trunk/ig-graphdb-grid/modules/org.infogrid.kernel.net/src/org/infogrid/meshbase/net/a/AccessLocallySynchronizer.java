@@ -14,8 +14,13 @@
 
 package org.infogrid.meshbase.net.a;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import org.infogrid.meshbase.net.NetMeshBase;
 import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.util.NamedThreadFactory;
 import org.infogrid.util.ReturnSynchronizer;
 import org.infogrid.util.logging.Log;
 
@@ -54,4 +59,46 @@ public class AccessLocallySynchronizer
     {
         super( mb.getIdentifier().toExternalForm() );
     }
+
+    /**
+     * Cancel a detached transaction if it has not completed by a certain time.
+     *
+     * @param detached the detached transaction
+     * @param timeout the timeout, in milliseconds
+     * @return the ScheduledFuture of the timeout, so it can be cancelled
+     */
+    public ScheduledFuture<?> scheduleTimeout(
+            final Detached detached,
+            long           timeout )
+    {
+        return getTimeoutExecutor().schedule(
+                new Runnable() {
+                        public void run()
+                        {
+                            detached.cancel();
+                        }
+                },
+                timeout,
+                TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Obtain the ScheduledExecutorService that runs the timeouts of detached transactions.
+     * It is shared by all AccessLocallySynchronizers, and its Thread does not keep the JVM from exiting.
+     *
+     * @return the ScheduledExecutorService
+     */
+    protected static synchronized ScheduledExecutorService getTimeoutExecutor()
+    {
+        if( theTimeoutExecutor == null ) {
+            theTimeoutExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new NamedThreadFactory( AccessLocallySynchronizer.class.getName() + "-timeout", true ));
+        }
+        return theTimeoutExecutor;
+    }
+
+    /**
+     * Runs the timeouts of detached transactions. Allocated when needed.
+     */
+    private static ScheduledExecutorService theTimeoutExecutor;
 }
@@ -16,6 +16,7 @@ package org.infogrid.meshbase.net.a;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.NotPermittedException;
@@ -39,6 +40,7 @@ import org.infogrid.meshbase.net.proxy.Proxy;
 import org.infogrid.meshbase.net.proxy.ProxyManager;
 import org.infogrid.meshbase.net.proxy.ProxyParameters;
 import org.infogrid.meshbase.net.security.NetAccessManager;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
 import org.infogrid.meshbase.net.xpriso.logging.LogXprisoMessageLogger;
 import org.infogrid.meshbase.net.xpriso.logging.XprisoMessageLogger;
 import org.infogrid.meshbase.transaction.Transaction;
@@ -50,6 +52,7 @@ import org.infogrid.util.FactoryException;
 import org.infogrid.util.NameServer;
 import org.infogrid.util.RemoteQueryTimeoutException;
 import org.infogrid.util.ResourceHelper;
+import org.infogrid.util.ReturnSynchronizer;
 import org.infogrid.util.ReturnSynchronizerException;
 import org.infogrid.util.context.Context;
 import org.infogrid.util.logging.Log;
@@ -109,6 +112,7 @@ public abstract class AnetMeshBase
         theNetMeshObjectAccessSpecificationFactory = netMeshObjectAccessSpecificationFactory;
         theProxyManager                            = proxyManager;
         theAccessLocallySynchronizer               = AccessLocallySynchronizer.create( this );
+        theReplicaRequestCoalescer                 = ReplicaRequestCoalescer.create( this, theAccessLocallySynchronizer, REPLICA_REQUEST_DEFAULT_WAIT );
 
         Log mostSpecificLog = Log.getLogInstance( getClass() );
         if( mostSpecificLog.isInfoEnabled() ) {
@@ -175,10 +179,8 @@ public abstract class AnetMeshBase
             MeshObjectIdentifier [] identifiers )
     {
         NetMeshObject [] ret = new NetMeshObject[ identifiers.length ];
-        
-        for( int i=0 ; i<ret.length ; ++i ) {
-            ret[i] = findMeshObjectByIdentifier( identifiers[i] );
-        }
+        findMeshObjectsByIdentifier( identifiers, ret );
+
         return ret;
     }
     
@@ -618,27 +620,176 @@ public abstract class AnetMeshBase
 //            throw new IllegalStateException( "You must not invoke accessLocally while your Thread has a Transaction open" );
 //        }
 
+        AccessLocallyOperation operation = startAccessLocally( pathsToObjects, timeoutInMillis );
+
+        boolean ok;
+        if( operation.isTransactionOpen ) {
+            try {
+                ok = theAccessLocallySynchronizer.join( operation.theRealTimeout );
+
+                if( !ok && !operation.hasCause ) {
+                    log.warn( this + ".accessLocally() timed out trying to reach " + ArrayHelper.arrayToString( pathsToObjects ) + ", timeout: " + operation.theRealTimeout );
+                }
+
+                if( operation.theRealTimeout < 0L ) {
+                    ok = true;
+                }
+                theAccessLocallySynchronizer.endTransaction();
+
+            } catch( ReturnSynchronizerException ex ) {
+                log.error( ex );
+                ok = false;
+
+            } catch( InterruptedException ex ) {
+                log.error( ex );
+                ok = false;
+            }
+        } else {
+            ok = !operation.isBroken;
+        }
+
+        return operation.finish( ok );
+    }
+
+    /**
+     * <p>Obtain N local replicas of N NetMeshObjects using N NetMeshObjectAccessSpecifications,
+     * without waiting for them. Specify a non-default timeout.
+     * This call does not obtain update rights for the obtained replicas.</p>
+     * <p>This sends the same requests as {@link #accessLocally(NetMeshObjectAccessSpecification[],long)}
+     * but returns right away, so one Thread may have any number of these calls outstanding. The returned
+     * AccessLocallyFuture is completed, and the AccessLocallyListener notified, once all responses have arrived
+     * or the timeout has passed. That happens on the Thread that delivered the last response, so the
+     * AccessLocallyListener must not block.</p>
+     *
+     * @param pathsToObjects the NetMeshObjectAccessSpecifications indicating the location and paths to use to access the remote NetMeshObjects
+     * @param timeoutInMillis the timeout parameter for this call, in milli-seconds. -1 means "use default".
+     * @param listener if given, notified once the result is available
+     * @return the AccessLocallyFuture through which the locally replicated NetMeshObjects become available
+     * @throws NotPermittedException thrown if the caller is not authorized to perform this operation
+     */
+    public AccessLocallyFuture accessLocallyAsync(
+            NetMeshObjectAccessSpecification [] pathsToObjects,
+            long                                timeoutInMillis,
+            AccessLocallyListener               listener )
+        throws
+            NotPermittedException
+    {
+        if( log.isDebugEnabled() ) {
+            log.debug(
+                    this
+                    + ".accessLocallyAsync( "
+                    + ArrayHelper.arrayToString( pathsToObjects )
+                    + ", "
+                    + timeoutInMillis
+                    + " )" );
+        }
+        final AccessLocallyFuture ret = new AccessLocallyFuture( pathsToObjects, listener );
+
+        if( pathsToObjects == null ) {
+            ret.complete( null, null );
+            return ret;
+        }
+        if( pathsToObjects.length == 0 ) {
+            ret.complete( new NetMeshObject[0], null );
+            return ret;
+        }
+
+        final AccessLocallyOperation operation = startAccessLocally( pathsToObjects, timeoutInMillis );
+        if( !operation.isTransactionOpen ) {
+            completeAccessLocallyAsync( operation, ret, !operation.isBroken );
+            return ret;
+        }
+
+        try {
+            ReturnSynchronizer<Long,XprisoMessage>.Detached detached = theAccessLocallySynchronizer.detachTransaction(
+                    new ReturnSynchronizer.CompletionListener<Long,XprisoMessage>() {
+                            public void transactionComplete(
+                                    ReturnSynchronizer<Long,XprisoMessage> synchronizer,
+                                    Map<Long,XprisoMessage>                results,
+                                    boolean                                allQueriesComplete )
+                            {
+                                completeAccessLocallyAsync( operation, ret, allQueriesComplete || operation.theRealTimeout < 0L );
+                            }
+                    });
+
+            if( operation.theRealTimeout < 0L ) {
+                detached.cancel(); // same as accessLocally: don't wait
+
+            } else if( operation.theRealTimeout > 0L ) {
+                ret.setDetached( detached, theAccessLocallySynchronizer.scheduleTimeout( detached, operation.theRealTimeout ));
+
+            } else {
+                ret.setDetached( detached, null );
+            }
+
+        } catch( ReturnSynchronizerException ex ) {
+            log.error( ex );
+            completeAccessLocallyAsync( operation, ret, false );
+        }
+        return ret;
+    }
+
+    /**
+     * Complete an AccessLocallyFuture once the responses have arrived, or the timeout has passed.
+     *
+     * @param operation the AccessLocallyOperation
+     * @param future the AccessLocallyFuture to complete
+     * @param ok if true, all queries returned
+     */
+    protected void completeAccessLocallyAsync(
+            AccessLocallyOperation operation,
+            AccessLocallyFuture    future,
+            boolean                ok )
+    {
+        if( !ok && !operation.hasCause && !future.isCancelled() ) {
+            log.warn( this + ".accessLocallyAsync() timed out trying to reach " + ArrayHelper.arrayToString( operation.thePathsToObjects ) + ", timeout: " + operation.theRealTimeout );
+        }
+        try {
+            future.complete( operation.finish( ok ), null );
+
+        } catch( NetMeshObjectAccessException ex ) {
+            future.complete( null, ex );
+        }
+    }
+
+    /**
+     * Find those of the requested NetMeshObjects that are available locally, and send requests
+     * for the others. If requests were sent, this leaves a transaction open on the
+     * AccessLocallySynchronizer for the calling Thread.
+     *
+     * @param pathsToObjects the NetMeshObjectAccessSpecifications indicating the location and paths to use to access the remote NetMeshObjects
+     * @param timeoutInMillis the timeout parameter for this call, in milli-seconds. -1 means "use default".
+     * @return the AccessLocallyOperation
+     * @throws NotPermittedException thrown if the caller is not authorized to perform this operation
+     */
+    protected AccessLocallyOperation startAccessLocally(
+            NetMeshObjectAccessSpecification [] pathsToObjects,
+            long                                timeoutInMillis )
+        throws
+            NotPermittedException
+    {
         // strip out cyclical and non-sensical items from path
         NetMeshObjectAccessSpecification [] correctRemotePaths = new NetMeshObjectAccessSpecification[ pathsToObjects.length ];
         for( int i=0 ; i<pathsToObjects.length ; ++i ) {
             correctRemotePaths[i] = correctPath( pathsToObjects[i] );
         }
-        
-        NetMeshObject [] ret       = new NetMeshObject[ correctRemotePaths.length ];
-        boolean       [] foundRet  = new boolean[ ret.length ]; // we keep a separate array to keep track of which we found already
-                                                                // (or know to be null for sure, which is the same) and which not
-        boolean       [] sentQuery = new boolean[ ret.length ]; // we keep a separate array to keep track of which we sent a query already
+
+        AccessLocallyOperation ret = new AccessLocallyOperation( pathsToObjects, correctRemotePaths );
+
+        NetMeshObject [] found     = ret.theResult;
+        boolean       [] foundRet  = ret.theFoundRet;
+        boolean       [] sentQuery = new boolean[ found.length ]; // we keep a separate array to keep track of which we sent a query already
 
         // first check whether we have any of them already
-        int stillToGet = ret.length;
-        for( int i=0 ; i<ret.length ; ++i ) {
+        int stillToGet = found.length;
+        for( int i=0 ; i<found.length ; ++i ) {
             NetMeshObject localObject = null;
 
             if( correctRemotePaths[i].getNetMeshObjectIdentifier() == null ) {
 
                 if( correctRemotePaths[i].getAccessPath().length == 0 ) {
 
-                    ret[i]       = getHomeObject();
+                    found[i]     = getHomeObject();
                     foundRet[i]  = true;
                     sentQuery[i] = true;
                     --stillToGet;
@@ -650,13 +801,13 @@ public abstract class AnetMeshBase
 
                 localObject = findMeshObjectByIdentifier( correctRemotePaths[i].getNetMeshObjectIdentifier() );
                 if( localObject != null ) {
-                    ret[i]       = localObject;
+                    found[i]     = localObject;
                     foundRet[i]  = true;
                     sentQuery[i] = true;
                     --stillToGet;
 
                 } else if( correctRemotePaths[i].getAccessPath() == null || correctRemotePaths[i].getAccessPath().length == 0 ) {
-                    ret[i]       = null;
+                    found[i]     = null;
                     foundRet[i]  = true; // we found it -- well, we know for sure it isn't there
                     sentQuery[i] = true;
                     --stillToGet;
@@ -675,173 +826,140 @@ public abstract class AnetMeshBase
             realAccessManager.checkPermittedAccessLocally( this, correctRemotePaths ); // may throw exception
         }
 
-        // we collect all exceptions here, in the same sequence as the pathsToObjects
-        Throwable []                        causes          = new Throwable[ pathsToObjects.length ];
-        NetMeshObjectAccessSpecification [] redirectedPaths = new NetMeshObjectAccessSpecification[ pathsToObjects.length ];
-        boolean                             hasCause        = false;
-
-        boolean ok;
         try {
             theAccessLocallySynchronizer.beginTransaction();
+            ret.isTransactionOpen = true;
 
-            // now break down the still remaining objects into chunks, one chunk per
-            // different proxy, and get them until we have everything.
-            long    realTimeout = 0L; //
-
-            int pivotIndex = 0;
-            Proxy [] proxyKeeper = new Proxy[ stillToGet ]; // keep Proxies from being garbage collected while queries are ongoing
-            int proxyKeeperCount = 0;
+        } catch( ReturnSynchronizerException ex ) {
+            log.error( ex );
+            ret.isBroken = true;
+            return ret;
+        }
 
-            while( stillToGet > 0 ) {
-                // find the first one we have not gotten yet
-                for( ; foundRet[pivotIndex] || sentQuery[pivotIndex] ; ++pivotIndex )
-                {}
+        // if another accessLocally operation is requesting the same NetMeshObject already, wait for that
+        if( COALESCE_REPLICA_REQUESTS ) {
+            for( int i=0 ; i<found.length ; ++i ) {
+                if( foundRet[i] || sentQuery[i] ) {
+                    continue;
+                }
+                try {
+                    ReplicaRequestCoalescer.InFlightRequest request = theReplicaRequestCoalescer.coalesceOrIssue( correctRemotePaths[i], ret );
+                    if( request.isIssuedBy( ret )) {
+                        ret.theIssuedRequests[i] = request;
 
-                int runningIndex = pivotIndex;
+                    } else {
+                        ret.theCoalescedRequests[i] = request;
+                        ret.theRealTimeout          = Math.max( ret.theRealTimeout, request.getRemainingWait() );
+                        sentQuery[i]                = true;
+                        --stillToGet;
+                    }
 
-                // now find all that have the same first NetMeshBaseIdentifier element
-                NetMeshBaseAccessSpecification pivot     = correctRemotePaths[ runningIndex ].getAccessPath()[0];
-                NetMeshBaseIdentifier          pivotName = pivot.getNetMeshBaseIdentifier();
-                ProxyParameters                pivotPars = ProxyParameters.create( pivot.getCoherenceSpecification());
+                } catch( ReturnSynchronizerException ex ) {
+                    log.error( ex ); // send our own request then
+                }
+            }
+        }
 
-                // obtain a new set of object names that we still need to get
-                NetMeshObjectAccessSpecification [] nextObjectPaths = new NetMeshObjectAccessSpecification[ stillToGet ]; // potentially over-allocated
+        // now break down the still remaining objects into chunks, one chunk per
+        // different proxy, and get them until we have everything.
+        int pivotIndex = 0;
+        ret.theProxyKeeper = new Proxy[ stillToGet ]; // keep Proxies from being garbage collected while queries are ongoing
+        int proxyKeeperCount = 0;
 
-                nextObjectPaths[0] = theNetMeshObjectAccessSpecificationFactory.obtain(
-                        ArrayHelper.subarray( correctRemotePaths[ runningIndex ].getAccessPath(), 1, NetMeshBaseAccessSpecification.class ),
-                        correctRemotePaths[ runningIndex ].getNetMeshObjectIdentifier() );
+        while( stillToGet > 0 ) {
+            // find the first one we have not gotten yet
+            for( ; foundRet[pivotIndex] || sentQuery[pivotIndex] ; ++pivotIndex )
+            {}
 
-                sentQuery[ runningIndex ] = true;
-                int nextObjectCount = 1;
+            int runningIndex = pivotIndex;
 
-                for( ++runningIndex ; runningIndex < correctRemotePaths.length ; ++runningIndex ) {
-                    if( foundRet[runningIndex] || sentQuery[runningIndex] ) {
-                        continue; // skip
-                    }
+            // now find all that have the same first NetMeshBaseIdentifier element
+            NetMeshBaseAccessSpecification pivot     = correctRemotePaths[ runningIndex ].getAccessPath()[0];
+            NetMeshBaseIdentifier          pivotName = pivot.getNetMeshBaseIdentifier();
+            ProxyParameters                pivotPars = ProxyParameters.create( pivot.getCoherenceSpecification());
 
-                    if( ! pivotName.equals( correctRemotePaths[runningIndex].getAccessPath()[0].getNetMeshBaseIdentifier() )) {
-                        continue; // has different pivot
-                    }
+            // obtain a new set of object names that we still need to get
+            NetMeshObjectAccessSpecification [] nextObjectPaths   = new NetMeshObjectAccessSpecification[ stillToGet ]; // potentially over-allocated
+            int []                              nextObjectIndices = new int[ stillToGet ];
 
-                    nextObjectPaths[ nextObjectCount ] = theNetMeshObjectAccessSpecificationFactory.obtain(
-                            ArrayHelper.subarray( correctRemotePaths[ runningIndex ].getAccessPath(), 1, NetMeshBaseAccessSpecification.class ),
-                            correctRemotePaths[ runningIndex ].getNetMeshObjectIdentifier() );
+            nextObjectPaths[0] = theNetMeshObjectAccessSpecificationFactory.obtain(
+                    ArrayHelper.subarray( correctRemotePaths[ runningIndex ].getAccessPath(), 1, NetMeshBaseAccessSpecification.class ),
+                    correctRemotePaths[ runningIndex ].getNetMeshObjectIdentifier() );
 
-                    sentQuery[ runningIndex ] = true;
+            nextObjectIndices[0]      = runningIndex;
+            sentQuery[ runningIndex ] = true;
+            int nextObjectCount = 1;
 
-                    ++nextObjectCount;
+            for( ++runningIndex ; runningIndex < correctRemotePaths.length ; ++runningIndex ) {
+                if( foundRet[runningIndex] || sentQuery[runningIndex] ) {
+                    continue; // skip
                 }
 
-                // we may have over-allocated, so reduce if necessary
-                if( nextObjectCount < nextObjectPaths.length ) {
-                    nextObjectPaths = ArrayHelper.subarray( nextObjectPaths, 0, nextObjectCount, NetMeshObjectAccessSpecification.class );
+                if( ! pivotName.equals( correctRemotePaths[runningIndex].getAccessPath()[0].getNetMeshBaseIdentifier() )) {
+                    continue; // has different pivot
                 }
 
-                Proxy theProxy = null;
-                try {
-                    theProxy = obtainProxyFor( pivotName, pivotPars ); // this triggers the Shadow creation in the right subclasses
-                    if( theProxy != null ) {
-                        long requestedTimeout = theProxy.obtainReplicas( nextObjectPaths, timeoutInMillis ); // FIXME? Should we use a different timeout here?
-                        realTimeout = Math.max( realTimeout, requestedTimeout );
-                    }
+                nextObjectPaths[ nextObjectCount ] = theNetMeshObjectAccessSpecificationFactory.obtain(
+                        ArrayHelper.subarray( correctRemotePaths[ runningIndex ].getAccessPath(), 1, NetMeshBaseAccessSpecification.class ),
+                        correctRemotePaths[ runningIndex ].getNetMeshObjectIdentifier() );
 
-                } catch( FactoryException ex ) {
-                    NetMeshObjectAccessSpecification [] attemptedThisTime = withPrefix( pivot, nextObjectPaths );
+                nextObjectIndices[ nextObjectCount ] = runningIndex;
+                sentQuery[ runningIndex ]            = true;
 
-                    Throwable toAdd = ex.getCause() != null ? ex.getCause() : ex;
-                    NetMeshObjectAccessSpecification redirect;
-                    if( toAdd instanceof NetMeshBaseRedirectException ) {
-                        redirect = theNetMeshObjectAccessSpecificationFactory.obtain( ((NetMeshBaseRedirectException)toAdd).getNewId());
-                    } else {
-                        redirect = null;
-                    }
+                ++nextObjectCount;
+            }
 
-                    for( int i=0 ; i<pathsToObjects.length ; ++i ) {
-                        if( ArrayHelper.isIn( pathsToObjects[i], attemptedThisTime, true )) {
-                            if( causes[i] != null ) {
-                                log.error( "Already have cause", toAdd, causes[i] );
-                            }
-                            causes[i] = toAdd;
-                            hasCause  = true;
+            // we may have over-allocated, so reduce if necessary
+            if( nextObjectCount < nextObjectPaths.length ) {
+                nextObjectPaths = ArrayHelper.subarray( nextObjectPaths, 0, nextObjectCount, NetMeshObjectAccessSpecification.class );
+            }
 
-                            redirectedPaths[i] = redirect;
+            Proxy theProxy = null;
+            try {
+                theProxy = obtainProxyFor( pivotName, pivotPars ); // this triggers the Shadow creation in the right subclasses
+                if( theProxy != null ) {
+                    long requestedTimeout = theProxy.obtainReplicas( nextObjectPaths, timeoutInMillis ); // FIXME? Should we use a different timeout here?
+                    ret.theRealTimeout = Math.max( ret.theRealTimeout, requestedTimeout );
+
+                    for( int i=0 ; i<nextObjectCount ; ++i ) {
+                        ReplicaRequestCoalescer.InFlightRequest request = ret.theIssuedRequests[ nextObjectIndices[i] ];
+                        if( request != null ) {
+                            request.setExpectedWait( timeoutInMillis > 0 ? timeoutInMillis : requestedTimeout );
                         }
                     }
                 }
-                proxyKeeper[ proxyKeeperCount++ ] = theProxy;
-                stillToGet -= nextObjectPaths.length;
-            }
-
-            if( timeoutInMillis > 0 ) { // if something has been specified
-                realTimeout = timeoutInMillis;
-            }
-
-            ok = theAccessLocallySynchronizer.join( realTimeout );
 
-            if( !ok && !hasCause ) {
-                log.warn( this + ".accessLocally() timed out trying to reach " + ArrayHelper.arrayToString( pathsToObjects ) + ", timeout: " + realTimeout );
-            }
-
-            if( realTimeout < 0L ) {
-                ok = true;
-            }
-            theAccessLocallySynchronizer.endTransaction();
-
-        } catch( ReturnSynchronizerException ex ) {
-            log.error( ex );
-            ok = false;
-
-        } catch( InterruptedException ex ) {
-            log.error( ex );
-            ok = false;
-        }
-
-        if( hasCause ) {
-            ok = false;
-        }
+            } catch( FactoryException ex ) {
+                NetMeshObjectAccessSpecification [] attemptedThisTime = withPrefix( pivot, nextObjectPaths );
 
-        // now insert the results
-        boolean allFound  = true;
-        boolean someFound = false;
-        for( int i=0 ; i<correctRemotePaths.length ; ++i ) {
-            if( foundRet[i] ) {
-                someFound = true;
-                continue;
-            }
+                Throwable toAdd = ex.getCause() != null ? ex.getCause() : ex;
+                NetMeshObjectAccessSpecification redirect;
+                if( toAdd instanceof NetMeshBaseRedirectException ) {
+                    redirect = theNetMeshObjectAccessSpecificationFactory.obtain( ((NetMeshBaseRedirectException)toAdd).getNewId());
+                } else {
+                    redirect = null;
+                }
 
-            NetMeshObject newlyFound = findMeshObjectByIdentifier( correctRemotePaths[i].getNetMeshObjectIdentifier() );
-            if( newlyFound == null ) {
-                allFound = false;
+                for( int i=0 ; i<pathsToObjects.length ; ++i ) {
+                    if( ArrayHelper.isIn( pathsToObjects[i], attemptedThisTime, true )) {
+                        if( ret.theCauses[i] != null ) {
+                            log.error( "Already have cause", toAdd, ret.theCauses[i] );
+                        }
+                        ret.theCauses[i] = toAdd;
+                        ret.hasCause     = true;
 
-            } else {
-                someFound = true;
-                ret[i]    = newlyFound;
+                        ret.theRedirectedPaths[i] = redirect;
+                    }
+                }
             }
+            ret.theProxyKeeper[ proxyKeeperCount++ ] = theProxy;
+            stillToGet -= nextObjectPaths.length;
         }
 
-        if( ok ) { // all queries returned, definitive answer
-            return ret;
-
-        } else if( allFound ) { // we timed out, but we have the answer anyway
-            return ret;
-
-        } else if( !hasCause ) { // we timed out, but have a partial result, future results still incoming
-            throw new NetMeshObjectAccessException(
-                    this,
-                    pathsToObjects,
-                    ret,
-                    redirectedPaths,
-                    causes,
-                    new RemoteQueryTimeoutException.QueryIsOngoing( this, someFound, ret ));
-
-        } else {
-            throw new NetMeshObjectAccessException(
-                    this,
-                    pathsToObjects,
-                    ret,
-                    redirectedPaths,
-                    causes );
+        if( timeoutInMillis > 0 ) { // if something has been specified
+            ret.theRealTimeout = timeoutInMillis;
         }
+        return ret;
     }
     
     /**
@@ -1092,6 +1210,18 @@ public abstract class AnetMeshBase
         return theAccessLocallySynchronizer;
     }
 
+    /**
+     * Obtain the ReplicaRequestCoalescer that makes concurrent accessLocally calls for the
+     * same NetMeshObjects share one request. This also provides the counters of issued and
+     * coalesced requests.
+     *
+     * @return the ReplicaRequestCoalescer
+     */
+    public final ReplicaRequestCoalescer getReplicaRequestCoalescer()
+    {
+        return theReplicaRequestCoalescer;
+    }
+
     /**
      * <p>Attempt to update the set of NetMeshObjects to their most current state. Usually, InfoGrid manages
      * this automatically and on its own schedule. However, under some circumstances the user may
@@ -1357,6 +1487,11 @@ public abstract class AnetMeshBase
      * This object helps us with synchronizing results we are getting asynchronously.
      */
     protected AccessLocallySynchronizer theAccessLocallySynchronizer;
+
+    /**
+     * Makes concurrent accessLocally calls for the same NetMeshObjects share one request.
+     */
+    protected ReplicaRequestCoalescer theReplicaRequestCoalescer;
     
     /**
      * We delegate to this ProxyManager to manage our Proxies.
@@ -1380,4 +1515,196 @@ public abstract class AnetMeshBase
     static final boolean ALLOW_NON_LOCAL_MESHOBJECT_CREATION = theResourceHelper.getResourceBooleanOrDefault(
             "AllowNonLocalMeshObjectCreation",
             false );
+
+    /**
+     * If true, concurrent accessLocally calls for the same NetMeshObjects share one request.
+     */
+    protected static final boolean COALESCE_REPLICA_REQUESTS = theResourceHelper.getResourceBooleanOrDefault(
+            "CoalesceReplicaRequests",
+            true );
+
+    /**
+     * The number of milliseconds a coalesced accessLocally call is prepared to wait for a request in
+     * flight whose issuer has not determined its timeout yet.
+     */
+    protected static final long REPLICA_REQUEST_DEFAULT_WAIT = theResourceHelper.getResourceLongOrDefault(
+            "ReplicaRequestDefaultWait",
+            5000L );
+
+    /**
+     * Captures the state of one accessLocally operation between sending the requests and
+     * assembling the result.
+     */
+    protected class AccessLocallyOperation
+    {
+        /**
+         * Constructor.
+         *
+         * @param pathsToObjects the NetMeshObjectAccessSpecifications as requested
+         * @param correctRemotePaths the corrected NetMeshObjectAccessSpecifications, in the same sequence
+         */
+        protected AccessLocallyOperation(
+                NetMeshObjectAccessSpecification [] pathsToObjects,
+                NetMeshObjectAccessSpecification [] correctRemotePaths )
+        {
+            thePathsToObjects     = pathsToObjects;
+            theCorrectRemotePaths = correctRemotePaths;
+            theResult             = new NetMeshObject[ correctRemotePaths.length ];
+            theFoundRet           = new boolean[ theResult.length ];
+            theCauses             = new Throwable[ pathsToObjects.length ];
+            theRedirectedPaths    = new NetMeshObjectAccessSpecification[ pathsToObjects.length ];
+            theIssuedRequests     = new ReplicaRequestCoalescer.InFlightRequest[ pathsToObjects.length ];
+            theCoalescedRequests  = new ReplicaRequestCoalescer.InFlightRequest[ pathsToObjects.length ];
+        }
+
+        /**
+         * Assemble the result, after the responses have arrived or the timeout has passed.
+         *
+         * @param ok if true, all queries returned
+         * @return the locally replicated NetMeshObjects, or null if not found
+         * @throws NetMeshObjectAccessException thrown if something went wrong attempting to access the NetMeshObjects
+         */
+        public NetMeshObject [] finish(
+                boolean ok )
+            throws
+                NetMeshObjectAccessException
+        {
+            NetMeshObject [] ret = theResult;
+
+            if( hasCause ) {
+                ok = false;
+            }
+
+            // now insert the results
+            boolean allFound  = true;
+            boolean someFound = false;
+            for( int i=0 ; i<theCorrectRemotePaths.length ; ++i ) {
+                if( theFoundRet[i] ) {
+                    someFound = true;
+                    continue;
+                }
+
+                NetMeshObject newlyFound = findMeshObjectByIdentifier( theCorrectRemotePaths[i].getNetMeshObjectIdentifier() );
+                if( newlyFound == null ) {
+                    allFound = false;
+
+                    ReplicaRequestCoalescer.InFlightRequest coalesced = theCoalescedRequests[i];
+                    if( coalesced != null ) {
+                        // the operation that issued the request tells us how it went
+                        if( coalesced.getCause() != null ) {
+                            theCauses[i]          = coalesced.getCause();
+                            theRedirectedPaths[i] = coalesced.getRedirect();
+                            hasCause              = true;
+                            ok                    = false;
+
+                        } else if( !coalesced.isOk() ) {
+                            ok = false;
+                        }
+                    }
+
+                } else {
+                    someFound = true;
+                    ret[i]    = newlyFound;
+                }
+            }
+            theProxyKeeper = null;
+
+            for( int i=0 ; i<theIssuedRequests.length ; ++i ) {
+                if( theIssuedRequests[i] != null ) {
+                    theReplicaRequestCoalescer.release( theIssuedRequests[i], ok, theCauses[i], theRedirectedPaths[i] );
+                }
+            }
+
+            if( ok ) { // all queries returned, definitive answer
+                return ret;
+
+            } else if( allFound ) { // we timed out, but we have the answer anyway
+                return ret;
+
+            } else if( !hasCause ) { // we timed out, but have a partial result, future results still incoming
+                throw new NetMeshObjectAccessException(
+                        AnetMeshBase.this,
+                        thePathsToObjects,
+                        ret,
+                        theRedirectedPaths,
+                        theCauses,
+                        new RemoteQueryTimeoutException.QueryIsOngoing( AnetMeshBase.this, someFound, ret ));
+
+            } else {
+                throw new NetMeshObjectAccessException(
+                        AnetMeshBase.this,
+                        thePathsToObjects,
+                        ret,
+                        theRedirectedPaths,
+                        theCauses );
+            }
+        }
+
+        /**
+         * The NetMeshObjectAccessSpecifications as requested.
+         */
+        protected NetMeshObjectAccessSpecification [] thePathsToObjects;
+
+        /**
+         * The corrected NetMeshObjectAccessSpecifications.
+         */
+        protected NetMeshObjectAccessSpecification [] theCorrectRemotePaths;
+
+        /**
+         * The NetMeshObjects found so far.
+         */
+        protected NetMeshObject [] theResult;
+
+        /**
+         * Keeps track of which NetMeshObjects we found already (or know to be null for sure,
+         * which is the same) and which not.
+         */
+        protected boolean [] theFoundRet;
+
+        /**
+         * All exceptions, in the same sequence as thePathsToObjects.
+         */
+        protected Throwable [] theCauses;
+
+        /**
+         * The redirects, in the same sequence as thePathsToObjects.
+         */
+        protected NetMeshObjectAccessSpecification [] theRedirectedPaths;
+
+        /**
+         * The requests this operation issued on the ReplicaRequestCoalescer, in the same sequence as thePathsToObjects.
+         */
+        protected ReplicaRequestCoalescer.InFlightRequest [] theIssuedRequests;
+
+        /**
+         * The requests of other operations this operation waits for instead of sending its own,
+         * in the same sequence as thePathsToObjects.
+         */
+        protected ReplicaRequestCoalescer.InFlightRequest [] theCoalescedRequests;
+
+        /**
+         * True if at least one cause has been recorded.
+         */
+        protected boolean hasCause;
+
+        /**
+         * The timeout to wait for the responses.
+         */
+        protected long theRealTimeout = 0L;
+
+        /**
+         * Keeps Proxies from being garbage collected while queries are ongoing.
+         */
+        protected Proxy [] theProxyKeeper;
+
+        /**
+         * True if requests were sent and a transaction was opened on the AccessLocallySynchronizer.
+         */
+        protected boolean isTransactionOpen;
+
+        /**
+         * True if the transaction could not be opened on the AccessLocallySynchronizer.
+         */
+        protected boolean isBroken;
+    }
 }
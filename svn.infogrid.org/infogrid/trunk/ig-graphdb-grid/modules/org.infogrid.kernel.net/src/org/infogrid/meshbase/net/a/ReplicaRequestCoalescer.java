@@ -0,0 +1,375 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.net.a;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.NetMeshObjectAccessSpecification;
+import org.infogrid.util.ReturnSynchronizerException;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Makes sure that concurrent accessLocally operations on the same NetMeshBase send only one
+ * request for the same NetMeshObjectAccessSpecification. The first operation issues the request;
+ * operations that need the same replica while the request is in flight add a synthetic query to
+ * their own transaction on the AccessLocallySynchronizer instead, which is completed when the
+ * issuing operation is done. They then find the replica locally, like the issuing operation.</p>
+ * <p>Counts how many requests were issued and how many were coalesced into an in-flight request.</p>
+ */
+public class ReplicaRequestCoalescer
+{
+    private static final Log log = Log.getLogInstance( ReplicaRequestCoalescer.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param mb the NetMeshBase on whose behalf this ReplicaRequestCoalescer works
+     * @param synchronizer the AccessLocallySynchronizer of the NetMeshBase
+     * @param defaultWait the number of milliseconds to assume a request takes until the issuer knows better
+     * @return the created ReplicaRequestCoalescer
+     */
+    public static ReplicaRequestCoalescer create(
+            NetMeshBase               mb,
+            AccessLocallySynchronizer synchronizer,
+            long                      defaultWait )
+    {
+        ReplicaRequestCoalescer ret = new ReplicaRequestCoalescer( mb, synchronizer, defaultWait );
+        if( log.isTraceEnabled() ) {
+            log.traceConstructor( ret );
+        }
+        return ret;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param mb the NetMeshBase on whose behalf this ReplicaRequestCoalescer works
+     * @param synchronizer the AccessLocallySynchronizer of the NetMeshBase
+     * @param defaultWait the number of milliseconds to assume a request takes until the issuer knows better
+     */
+    protected ReplicaRequestCoalescer(
+            NetMeshBase               mb,
+            AccessLocallySynchronizer synchronizer,
+            long                      defaultWait )
+    {
+        theMeshBase     = mb;
+        theSynchronizer = synchronizer;
+        theDefaultWait  = defaultWait;
+    }
+
+    /**
+     * Either join a request for this NetMeshObjectAccessSpecification that is in flight already,
+     * or register a new request that the caller must then send. To join, a synthetic query is added
+     * to the open transaction of the calling Thread on the AccessLocallySynchronizer.
+     *
+     * @param path the NetMeshObjectAccessSpecification, with the first element of the access path being the NetMeshBase to ask
+     * @param issuer the operation that will issue the request if there is none in flight
+     * @return the in-flight request. If its issuer is the provided issuer, the caller must send the request
+     * @throws ReturnSynchronizerException.NoTransactionOpen thrown if the calling Thread has no open transaction
+     * @throws ReturnSynchronizerException.DuplicateKey should not happen
+     */
+    public synchronized InFlightRequest coalesceOrIssue(
+            NetMeshObjectAccessSpecification path,
+            Object                           issuer )
+        throws
+            ReturnSynchronizerException.NoTransactionOpen,
+            ReturnSynchronizerException.DuplicateKey
+    {
+        long now = System.currentTimeMillis();
+
+        InFlightRequest ret = theInFlightRequests.get( path );
+        if( ret != null && ret.theIssuer != issuer && ret.theDeadline >= now ) {
+            Long key = theNextKey.decrementAndGet(); // real invocation ids are positive
+
+            theSynchronizer.addOpenQuery( key );
+            ret.theWaitingKeys.add( key );
+
+            theCoalescedCounter.incrementAndGet();
+
+            if( log.isDebugEnabled() ) {
+                log.debug( this + " coalesced request for " + path );
+            }
+            return ret;
+        }
+        if( ret == null || ret.theIssuer != issuer ) {
+            // none, or expired because its issuer never released it
+            ret = new InFlightRequest( path, issuer, now + theDefaultWait );
+            theInFlightRequests.put( path, ret );
+        }
+        theIssuedCounter.incrementAndGet();
+
+        return ret;
+    }
+
+    /**
+     * The issuer is done with a request. Complete the synthetic queries of all operations that joined it.
+     *
+     * @param request the InFlightRequest
+     * @param ok if true, the issuer received all responses
+     * @param cause the reason why the request failed, if any
+     * @param redirect the NetMeshObjectAccessSpecification the issuer was redirected to, if any
+     */
+    public void release(
+            InFlightRequest                  request,
+            boolean                          ok,
+            Throwable                        cause,
+            NetMeshObjectAccessSpecification redirect )
+    {
+        List<Long> waitingKeys;
+
+        synchronized( this ) {
+            if( request.isDone ) {
+                return; // same path requested several times by the same operation
+            }
+            if( theInFlightRequests.get( request.thePath ) == request ) {
+                theInFlightRequests.remove( request.thePath );
+            }
+            request.isDone      = true;
+            request.isOk        = ok;
+            request.theCause    = cause;
+            request.theRedirect = redirect;
+
+            waitingKeys = request.theWaitingKeys;
+            request.theWaitingKeys = null;
+        }
+
+        for( Long current : waitingKeys ) {
+            try {
+                theSynchronizer.depositQueryResult( current, null );
+
+            } catch( ReturnSynchronizerException.DuplicateResult ex ) {
+                log.error( ex );
+            }
+        }
+    }
+
+    /**
+     * Obtain the number of requests that were issued.
+     *
+     * @return the number of requests
+     */
+    public long getIssuedRequests()
+    {
+        return theIssuedCounter.get();
+    }
+
+    /**
+     * Obtain the number of requests that were not issued because they could
+     * be coalesced into a request in flight.
+     *
+     * @return the number of requests
+     */
+    public long getCoalescedRequests()
+    {
+        return theCoalescedCounter.get();
+    }
+
+    /**
+     * Obtain the number of requests currently in flight.
+     *
+     * @return the number of requests
+     */
+    public synchronized int getNumberOfInFlightRequests()
+    {
+        return theInFlightRequests.size();
+    }
+
+    /**
+     * Convert to String representation, for debugging.
+     *
+     * @return String representation
+     */
+    @Override
+    public String toString()
+    {
+        return super.toString() + "{ mb: " + theMeshBase.getIdentifier().toExternalForm() + " }";
+    }
+
+    /**
+     * The NetMeshBase on whose behalf this ReplicaRequestCoalescer works.
+     */
+    protected NetMeshBase theMeshBase;
+
+    /**
+     * The AccessLocallySynchronizer of the NetMeshBase.
+     */
+    protected AccessLocallySynchronizer theSynchronizer;
+
+    /**
+     * The number of milliseconds to assume a request takes until the issuer knows better.
+     */
+    protected long theDefaultWait;
+
+    /**
+     * The requests in flight, keyed by NetMeshObjectAccessSpecification.
+     */
+    protected HashMap<NetMeshObjectAccessSpecification,InFlightRequest> theInFlightRequests
+            = new HashMap<NetMeshObjectAccessSpecification,InFlightRequest>();
+
+    /**
+     * Source of the keys of the synthetic queries.
+     */
+    protected final AtomicLong theNextKey = new AtomicLong();
+
+    /**
+     * The number of requests issued.
+     */
+    protected final AtomicLong theIssuedCounter = new AtomicLong();
+
+    /**
+     * The number of requests coalesced into a request in flight.
+     */
+    protected final AtomicLong theCoalescedCounter = new AtomicLong();
+
+    /**
+     * A request in flight.
+     */
+    public class InFlightRequest
+    {
+        /**
+         * Constructor.
+         *
+         * @param path the requested NetMeshObjectAccessSpecification
+         * @param issuer the operation that issued the request
+         * @param deadline the time by which the request will have been released
+         */
+        protected InFlightRequest(
+                NetMeshObjectAccessSpecification path,
+                Object                           issuer,
+                long                             deadline )
+        {
+            thePath     = path;
+            theIssuer   = issuer;
+            theDeadline = deadline;
+        }
+
+        /**
+         * Determine whether this request was issued by this operation.
+         *
+         * @param candidate the operation
+         * @return true if this request was issued by the candidate
+         */
+        public boolean isIssuedBy(
+                Object candidate )
+        {
+            return theIssuer == candidate;
+        }
+
+        /**
+         * Set the number of milliseconds the issuer expects to wait for the response, once known.
+         *
+         * @param wait the number of milliseconds, from now
+         */
+        public void setExpectedWait(
+                long wait )
+        {
+            synchronized( ReplicaRequestCoalescer.this ) {
+                theDeadline = System.currentTimeMillis() + wait;
+            }
+        }
+
+        /**
+         * Obtain the number of milliseconds an operation joining now will have to wait at most.
+         *
+         * @return the number of milliseconds
+         */
+        public long getRemainingWait()
+        {
+            synchronized( ReplicaRequestCoalescer.this ) {
+                return Math.max( 1L, theDeadline - System.currentTimeMillis() ); // 0 would mean forever
+            }
+        }
+
+        /**
+         * Determine whether the issuer received all responses. Only meaningful once released.
+         *
+         * @return true if all responses were received
+         */
+        public boolean isOk()
+        {
+            synchronized( ReplicaRequestCoalescer.this ) {
+                return isOk;
+            }
+        }
+
+        /**
+         * Obtain the reason why the request failed, if any. Only meaningful once released.
+         *
+         * @return the cause, if any
+         */
+        public Throwable getCause()
+        {
+            synchronized( ReplicaRequestCoalescer.this ) {
+                return theCause;
+            }
+        }
+
+        /**
+         * Obtain the NetMeshObjectAccessSpecification the issuer was redirected to, if any.
+         * Only meaningful once released.
+         *
+         * @return the NetMeshObjectAccessSpecification, if any
+         */
+        public NetMeshObjectAccessSpecification getRedirect()
+        {
+            synchronized( ReplicaRequestCoalescer.this ) {
+                return theRedirect;
+            }
+        }
+
+        /**
+         * The requested NetMeshObjectAccessSpecification.
+         */
+        protected NetMeshObjectAccessSpecification thePath;
+
+        /**
+         * The operation that issued the request.
+         */
+        protected Object theIssuer;
+
+        /**
+         * The time by which the request will have been released.
+         */
+        protected long theDeadline;
+
+        /**
+         * The keys of the synthetic queries of the operations that joined this request.
+         */
+        protected List<Long> theWaitingKeys = new ArrayList<Long>();
+
+        /**
+         * True once released.
+         */
+        protected boolean isDone;
+
+        /**
+         * True if the issuer received all responses.
+         */
+        protected boolean isOk;
+
+        /**
+         * The reason why the request failed, if any.
+         */
+        protected Throwable theCause;
+
+        /**
+         * The NetMeshObjectAccessSpecification the issuer was redirected to, if any.
+         */
+        protected NetMeshObjectAccessSpecification theRedirect;
+    }
+}
@@ -175,6 +175,32 @@ public class ExternalizedProxyXmlEncoder
         throws
             DecodingException,
             IOException
+    {
+        ExternalizedProxyXmlEncoder decoder = (ExternalizedProxyXmlEncoder) obtainDecoder();
+        try {
+            return decoder.internalDecodeExternalizedProxy( contentAsStream, mb );
+
+        } finally {
+            releaseDecoder( decoder );
+        }
+    }
+
+    /**
+     * Deserialize a ExternalizedProxy from a stream, using this instance as the parse handler.
+     * This must only be invoked on an instance obtained through {@link #obtainDecoder}.
+     * 
+     * @param contentAsStream the byte [] stream in which the ExternalizedProxy is encoded
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return return the just-instantiated ExternalizedProxy
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected ExternalizedProxy internalDecodeExternalizedProxy(
+            InputStream contentAsStream,
+            NetMeshBase mb )
+        throws
+            DecodingException,
+            IOException
     {
         theMeshBase = mb;
 
@@ -38,6 +38,7 @@ import org.infogrid.meshbase.net.proxy.ProxyMessageEndpointFactory;
 import org.infogrid.meshbase.net.proxy.ProxyPolicyFactory;
 import org.infogrid.util.CachingMap;
 import org.infogrid.util.MCachingHashMap;
+import org.infogrid.util.MConcurrentCachingHashMap;
 import org.infogrid.util.context.Context;
 import org.infogrid.util.logging.Log;
 
@@ -135,8 +136,8 @@ public class NetMMeshBase
             ProxyPolicyFactory                      proxyPolicyFactory,
             Context                                 context )
     {
-        MCachingHashMap<MeshObjectIdentifier,MeshObject> objectStorage = MCachingHashMap.create();
-        MCachingHashMap<NetMeshBaseIdentifier,Proxy>     proxyStorage  = MCachingHashMap.create();
+        MConcurrentCachingHashMap<MeshObjectIdentifier,MeshObject> objectStorage = MConcurrentCachingHashMap.create();
+        MCachingHashMap<NetMeshBaseIdentifier,Proxy>               proxyStorage  = MCachingHashMap.create();
         
         DefaultProxyFactory            proxyFactory = DefaultProxyFactory.create( endpointFactory, proxyPolicyFactory );
         ProxyManager                   proxyManager = ProxyManager.create( proxyFactory, proxyStorage );
@@ -185,8 +186,8 @@ public class NetMMeshBase
             ProxyFactory                            proxyFactory,
             Context                                 context )
     {
-        MCachingHashMap<MeshObjectIdentifier,MeshObject> objectStorage = MCachingHashMap.create();
-        MCachingHashMap<NetMeshBaseIdentifier,Proxy>     proxyStorage  = MCachingHashMap.create();
+        MConcurrentCachingHashMap<MeshObjectIdentifier,MeshObject> objectStorage = MConcurrentCachingHashMap.create();
+        MCachingHashMap<NetMeshBaseIdentifier,Proxy>               proxyStorage  = MCachingHashMap.create();
         
         ProxyManager                   proxyManager = ProxyManager.create( proxyFactory, proxyStorage );
         AnetMeshBaseLifecycleManager   life         = AnetMeshBaseLifecycleManager.create();
@@ -22,6 +22,7 @@ import org.infogrid.comm.ReceivingMessageEndpoint;
 import org.infogrid.comm.ReturnSynchronizerEndpoint;
 import org.infogrid.comm.SendingMessageEndpoint;
 import org.infogrid.comm.pingpong.PingPongMessageEndpoint;
+import org.infogrid.comm.windowed.WindowedMessageEndpoint;
 import org.infogrid.mesh.MeshObjectIdentifierNotUniqueException;
 import org.infogrid.mesh.NotPermittedException;
 import org.infogrid.mesh.net.NetMeshObject;
@@ -443,11 +444,22 @@ public abstract class AbstractCommunicatingProxy
     {
         List<XprisoMessage> consolidated = XprisoMessageHelper.consolidate( incoming );
 
+        boolean isFirst = true;
         for( XprisoMessage current : consolidated ) {
             long    responseId    = current.getResponseId();
             boolean callIsWaiting = theWaitEndpoint.isCallWaitingFor( responseId );
 
-            ProxyProcessingInstructions instructions = theProxyPolicy.calculateForIncomingMessage( endpoint, current, callIsWaiting, this, thePotentialOutgoingMessage );
+            // performInstructions hands off the potential outgoing message; each further incoming message
+            // needs its own, otherwise the responses to pipelined requests overwrite each other's response id
+            CreateWhenNeeded<ParserFriendlyXprisoMessage> perhapsOutgoing;
+            if( isFirst ) {
+                perhapsOutgoing = thePotentialOutgoingMessage;
+                isFirst         = false;
+            } else {
+                perhapsOutgoing = startCreatingPotentialOutgoingMessage();
+            }
+
+            ProxyProcessingInstructions instructions = theProxyPolicy.calculateForIncomingMessage( endpoint, current, callIsWaiting, this, perhapsOutgoing );
 
             AccessLocallySynchronizer synchronizer = theMeshBase.getAccessLocallySynchronizer();
             try {
@@ -890,6 +902,19 @@ public abstract class AbstractCommunicatingProxy
         proxyUpdated();
     }
 
+    /**
+     * Called when the partner has acknowledged receipt of sent messages.
+     *
+     * @param endpoint the MessageEndpoint sending this event
+     * @param acknowledged the partner has received all MessageEnvelopes up to and including this sequence number
+     */
+    public final void messagesAcknowledged(
+            WindowedMessageEndpoint<XprisoMessage> endpoint,
+            long                                   acknowledged )
+    {
+        proxyUpdated();
+    }
+
     /**
      * Called when the receiving endpoint threw the EndpointIsDeadException.
      *
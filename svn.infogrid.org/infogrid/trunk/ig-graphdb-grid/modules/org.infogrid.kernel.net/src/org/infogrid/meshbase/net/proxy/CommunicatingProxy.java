@@ -15,6 +15,7 @@
 package org.infogrid.meshbase.net.proxy;
 
 import org.infogrid.comm.pingpong.PingPongMessageEndpointListener;
+import org.infogrid.comm.windowed.WindowedMessageEndpointListener;
 import org.infogrid.meshbase.net.xpriso.XprisoMessage;
 
 /**
@@ -23,6 +24,7 @@ import org.infogrid.meshbase.net.xpriso.XprisoMessage;
 public interface CommunicatingProxy
         extends
             Proxy,
-            PingPongMessageEndpointListener<XprisoMessage>
+            PingPongMessageEndpointListener<XprisoMessage>,
+            WindowedMessageEndpointListener<XprisoMessage>
 {
 }
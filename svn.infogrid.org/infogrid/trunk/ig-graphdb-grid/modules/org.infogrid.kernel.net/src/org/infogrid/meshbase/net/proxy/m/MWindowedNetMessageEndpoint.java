@@ -0,0 +1,326 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.net.proxy.m;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.comm.MessageEndpointIsDeadException;
+import org.infogrid.comm.MessageSendException;
+import org.infogrid.comm.windowed.MessageEnvelope;
+import org.infogrid.comm.windowed.m.MWindowedMessageEndpoint;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.proxy.Proxy;
+import org.infogrid.meshbase.net.proxy.ProxyMessageEndpoint;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.util.FactoryException;
+import org.infogrid.util.NameServer;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Subclass of MWindowedMessageEndpoint to be used for Proxy communication that
+ * does not persist its own data and communicates via the windowed protocol.
+ * The sequence numbers of the MessageEnvelopes take the place of the ping-pong tokens.
+ */
+public class MWindowedNetMessageEndpoint
+        extends
+            MWindowedMessageEndpoint<XprisoMessage>
+        implements
+            ProxyMessageEndpoint
+{
+    private static final Log log = Log.getLogInstance( MWindowedNetMessageEndpoint.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param name the name of the MessageEndpoint (for debugging only)
+     * @param partnerIdentifier identifier of the partner NetMeshBase
+     * @param myIdentifier identifier of the NetMeshBase on whose behalf this endpoint communicates
+     * @param nameServer the NameServer to use to to resolve identifiers
+     * @param windowSize the maximum number of MessageEnvelopes sent but not acknowledged yet
+     * @param maxMessagesPerEnvelope the maximum number of messages coalesced into one MessageEnvelope
+     * @param deltaCoalesce the number of milliseconds to wait for more messages before sending an enqueued message
+     * @param deltaAcknowledge the number of milliseconds until received MessageEnvelopes are acknowledged
+     *                         if there is no outgoing MessageEnvelope to carry the acknowledgement
+     * @param deltaResend the number of milliseconds until a MessageEnvelope that has not been acknowledged is resent
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule timed tasks
+     * @return the created MWindowedNetMessageEndpoint
+     */
+    public static MWindowedNetMessageEndpoint create(
+            String                                                  name,
+            NetMeshBaseIdentifier                                   partnerIdentifier,
+            NetMeshBaseIdentifier                                   myIdentifier,
+            NameServer<NetMeshBaseIdentifier,? extends NetMeshBase> nameServer,
+            int                                                     windowSize,
+            int                                                     maxMessagesPerEnvelope,
+            long                                                    deltaCoalesce,
+            long                                                    deltaAcknowledge,
+            long                                                    deltaResend,
+            double                                                  randomVariation,
+            ScheduledExecutorService                                exec )
+    {
+        MWindowedNetMessageEndpoint ret = new MWindowedNetMessageEndpoint(
+                name,
+                partnerIdentifier,
+                myIdentifier,
+                nameServer,
+                windowSize,
+                maxMessagesPerEnvelope,
+                deltaCoalesce,
+                deltaAcknowledge,
+                deltaResend,
+                randomVariation,
+                exec,
+                -1,
+                -1,
+                null,
+                new ArrayList<XprisoMessage>() );
+
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( MWindowedNetMessageEndpoint.class, "create" );
+        }
+        return ret;
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param name the name of the MessageEndpoint (for debugging only)
+     * @param partnerIdentifier identifier of the partner NetMeshBase
+     * @param myIdentifier identifier of the NetMeshBase on whose behalf this endpoint communicates
+     * @param nameServer the NameServer to use to to resolve identifiers
+     * @param windowSize the maximum number of MessageEnvelopes sent but not acknowledged yet
+     * @param maxMessagesPerEnvelope the maximum number of messages coalesced into one MessageEnvelope
+     * @param deltaCoalesce the number of milliseconds to wait for more messages before sending an enqueued message
+     * @param deltaAcknowledge the number of milliseconds until received MessageEnvelopes are acknowledged
+     *                         if there is no outgoing MessageEnvelope to carry the acknowledgement
+     * @param deltaResend the number of milliseconds until a MessageEnvelope that has not been acknowledged is resent
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule timed tasks
+     * @param lastSentSequenceNumber the last sequence number sent in a previous instantiation of this MessageEndpoint
+     * @param lastReceivedSequenceNumber the last sequence number received in a previous instantiation of this MessageEndpoint
+     * @param messagesUnacknowledged the Messages that had not been acknowledged in a previous instantiation of this MessageEndpoint
+     * @param messagesToBeSent outgoing message queue (may or may not be empty)
+     * @return the created MWindowedNetMessageEndpoint
+     */
+    public static MWindowedNetMessageEndpoint restore(
+            String                                                  name,
+            NetMeshBaseIdentifier                                   partnerIdentifier,
+            NetMeshBaseIdentifier                                   myIdentifier,
+            NameServer<NetMeshBaseIdentifier,? extends NetMeshBase> nameServer,
+            int                                                     windowSize,
+            int                                                     maxMessagesPerEnvelope,
+            long                                                    deltaCoalesce,
+            long                                                    deltaAcknowledge,
+            long                                                    deltaResend,
+            double                                                  randomVariation,
+            ScheduledExecutorService                                exec,
+            long                                                    lastSentSequenceNumber,
+            long                                                    lastReceivedSequenceNumber,
+            List<XprisoMessage>                                     messagesUnacknowledged,
+            List<XprisoMessage>                                     messagesToBeSent )
+    {
+        MWindowedNetMessageEndpoint ret = new MWindowedNetMessageEndpoint(
+                name,
+                partnerIdentifier,
+                myIdentifier,
+                nameServer,
+                windowSize,
+                maxMessagesPerEnvelope,
+                deltaCoalesce,
+                deltaAcknowledge,
+                deltaResend,
+                randomVariation,
+                exec,
+                lastSentSequenceNumber,
+                lastReceivedSequenceNumber,
+                messagesUnacknowledged,
+                messagesToBeSent );
+
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( MWindowedNetMessageEndpoint.class, "restore" );
+        }
+        return ret;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the MessageEndpoint (for debugging only)
+     * @param partnerIdentifier identifier of the partner NetMeshBase
+     * @param myIdentifier identifier of the NetMeshBase on whose behalf this endpoint communicates
+     * @param nameServer the NameServer to use to to resolve identifiers
+     * @param windowSize the maximum number of MessageEnvelopes sent but not acknowledged yet
+     * @param maxMessagesPerEnvelope the maximum number of messages coalesced into one MessageEnvelope
+     * @param deltaCoalesce the number of milliseconds to wait for more messages before sending an enqueued message
+     * @param deltaAcknowledge the number of milliseconds until received MessageEnvelopes are acknowledged
+     *                         if there is no outgoing MessageEnvelope to carry the acknowledgement
+     * @param deltaResend the number of milliseconds until a MessageEnvelope that has not been acknowledged is resent
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule timed tasks
+     * @param lastSentSequenceNumber the last sequence number sent in a previous instantiation of this MessageEndpoint
+     * @param lastReceivedSequenceNumber the last sequence number received in a previous instantiation of this MessageEndpoint
+     * @param messagesUnacknowledged the Messages that had not been acknowledged in a previous instantiation of this MessageEndpoint
+     * @param messagesToBeSent outgoing message queue (may or may not be empty)
+     */
+    protected MWindowedNetMessageEndpoint(
+            String                                                  name,
+            NetMeshBaseIdentifier                                   partnerIdentifier,
+            NetMeshBaseIdentifier                                   myIdentifier,
+            NameServer<NetMeshBaseIdentifier,? extends NetMeshBase> nameServer,
+            int                                                     windowSize,
+            int                                                     maxMessagesPerEnvelope,
+            long                                                    deltaCoalesce,
+            long                                                    deltaAcknowledge,
+            long                                                    deltaResend,
+            double                                                  randomVariation,
+            ScheduledExecutorService                                exec,
+            long                                                    lastSentSequenceNumber,
+            long                                                    lastReceivedSequenceNumber,
+            List<XprisoMessage>                                     messagesUnacknowledged,
+            List<XprisoMessage>                                     messagesToBeSent )
+    {
+        super(  name,
+                windowSize,
+                maxMessagesPerEnvelope,
+                deltaCoalesce,
+                deltaAcknowledge,
+                deltaResend,
+                randomVariation,
+                exec,
+                lastSentSequenceNumber,
+                lastReceivedSequenceNumber,
+                messagesUnacknowledged,
+                messagesToBeSent );
+
+        if( partnerIdentifier.equals( myIdentifier )) {
+            throw new IllegalArgumentException( "Cannot talk to myself: " + myIdentifier.toExternalForm() );
+        }
+
+        thePartnerIdentifier = partnerIdentifier;
+        theMyIdentifier      = myIdentifier;
+        theNameServerRef     = new WeakReference<NameServer<NetMeshBaseIdentifier,? extends NetMeshBase>>( nameServer );
+    }
+
+    /**
+     * Determine the NetMeshBaseIdentifier of the partner MeshBase.
+     *
+     * @return the NetMeshBaseIdentifier of the partner MeshBase
+     */
+    public NetMeshBaseIdentifier getNetworkIdentifierOfPartner()
+    {
+        return thePartnerIdentifier;
+    }
+
+    /**
+     * Obtain the token that was last sent. This is the sequence number of the
+     * MessageEnvelope that was last sent.
+     *
+     * @return the token
+     */
+    public long getLastSentToken()
+    {
+        return getLastSentSequenceNumber();
+    }
+
+    /**
+     * Obtain the token that was last received. This is the sequence number up to which
+     * all MessageEnvelopes have been received.
+     *
+     * @return the token
+     */
+    public long getLastReceivedToken()
+    {
+        return getLastReceivedSequenceNumber();
+    }
+
+    /**
+     * Do the message send.
+     *
+     * @param envelope the MessageEnvelope to send
+     * @throws MessageEndpointIsDeadException thrown if the partner MessageEndpoint is dead
+     * @throws MessageSendException thrown if the message could not be sent
+     */
+    @Override
+    protected void sendEnvelope(
+            MessageEnvelope<XprisoMessage> envelope )
+        throws
+            MessageEndpointIsDeadException,
+            MessageSendException
+    {
+        if( thePartner == null ) {
+            NameServer<NetMeshBaseIdentifier, ? extends NetMeshBase> nameServer = theNameServerRef.get();
+            if( nameServer == null ) {
+                // has been garbage collected, we are done
+                return;
+            }
+            List<XprisoMessage> content = envelope.getContent();
+            try {
+                NetMeshBase partnerBase = nameServer.get( thePartnerIdentifier );
+                if( partnerBase == null ) {
+                    throw new MessageSendException( content, "Could not find NetMeshBase with identifier " + thePartnerIdentifier );
+                }
+
+                Proxy partnerProxy = partnerBase.obtainProxyFor( theMyIdentifier, null ); // FIXME? What is the right CoherenceSpecification here?
+                if( partnerProxy == null ) {
+                    throw new MessageSendException( content, "Could not obtain proxy for " + theMyIdentifier + " from NetMeshBase with identifier " + thePartnerIdentifier );
+                }
+
+                thePartner = (MWindowedNetMessageEndpoint) partnerProxy.getMessageEndpoint();
+
+            } catch( FactoryException ex ) {
+                throw new MessageSendException( content, ex );
+            }
+        }
+        super.sendEnvelope( envelope );
+    }
+
+    /**
+     * Convert to String, for debugging only.
+     *
+     * @return String representation
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append( super.toString() );
+        buf.append( "{ " );
+        buf.append( theMyIdentifier.toExternalForm() );
+        buf.append( " -> " );
+        buf.append( thePartnerIdentifier.toExternalForm() );
+        buf.append( " {" );
+        return buf.toString();
+    }
+
+    /**
+     * Identifier of the local MeshBase.
+     */
+    protected NetMeshBaseIdentifier theMyIdentifier;
+
+    /**
+     * Identifier of the partner MeshBase.
+     */
+    protected NetMeshBaseIdentifier thePartnerIdentifier;
+
+    /**
+     * The NameServer to use to find the partner NetMeshBase. This is a WeakReference so garbage collection
+     * is not impeded.
+     */
+    protected WeakReference<NameServer<NetMeshBaseIdentifier, ? extends NetMeshBase>> theNameServerRef;
+}
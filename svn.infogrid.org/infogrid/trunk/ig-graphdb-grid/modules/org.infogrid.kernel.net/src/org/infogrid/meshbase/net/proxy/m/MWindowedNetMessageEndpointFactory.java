@@ -0,0 +1,259 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.net.proxy.m;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.NetMeshBaseNameServer;
+import org.infogrid.meshbase.net.proxy.ProxyMessageEndpoint;
+import org.infogrid.meshbase.net.proxy.ProxyMessageEndpointFactory;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.util.AbstractFactory;
+import org.infogrid.util.FactoryException;
+import org.infogrid.util.ResourceHelper;
+
+/**
+ * Manufactures MessageEndpoints that do not persist their data themselves, and that
+ * communicate via the windowed protocol. This can be used wherever an
+ * MPingPongNetMessageEndpointFactory is used; both sides of a conversation need to use the same protocol.
+ */
+public class MWindowedNetMessageEndpointFactory
+        extends
+            AbstractFactory<NetMeshBaseIdentifier,ProxyMessageEndpoint,NetMeshBaseIdentifier>
+        implements
+            ProxyMessageEndpointFactory
+{
+    /**
+     * Factory method.
+     *
+     * @param exec the ScheduledExecutorService to schedule communication-related events
+     * @return the created MWindowedNetMessageEndpointFactory
+     */
+    public static MWindowedNetMessageEndpointFactory create(
+            ScheduledExecutorService exec )
+    {
+        int    windowSize             = theResourceHelper.getResourceIntegerOrDefault( "WindowSize",             32 );
+        int    maxMessagesPerEnvelope = theResourceHelper.getResourceIntegerOrDefault( "MaxMessagesPerEnvelope", 64 );
+        long   deltaCoalesce          = theResourceHelper.getResourceLongOrDefault(    "DeltaCoalesce",          2L ); // wait briefly for more messages
+        long   deltaAcknowledge       = theResourceHelper.getResourceLongOrDefault(    "DeltaAcknowledge",       10L );
+        long   deltaResend            = theResourceHelper.getResourceLongOrDefault(    "DeltaResend",            500L );
+        double randomVariation        = theResourceHelper.getResourceDoubleOrDefault(  "RandomVariation",        0.02 ); // 2%
+
+        return new MWindowedNetMessageEndpointFactory(
+                windowSize,
+                maxMessagesPerEnvelope,
+                deltaCoalesce,
+                deltaAcknowledge,
+                deltaResend,
+                randomVariation,
+                exec );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param windowSize the maximum number of MessageEnvelopes sent but not acknowledged yet
+     * @param maxMessagesPerEnvelope the maximum number of messages coalesced into one MessageEnvelope
+     * @param deltaCoalesce the number of milliseconds to wait for more messages before sending an enqueued message
+     * @param deltaAcknowledge the number of milliseconds until received MessageEnvelopes are acknowledged
+     *                         if there is no outgoing MessageEnvelope to carry the acknowledgement
+     * @param deltaResend the number of milliseconds until a MessageEnvelope that has not been acknowledged is resent
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule communication-related events
+     * @return the created MWindowedNetMessageEndpointFactory
+     */
+    public static MWindowedNetMessageEndpointFactory create(
+            int                      windowSize,
+            int                      maxMessagesPerEnvelope,
+            long                     deltaCoalesce,
+            long                     deltaAcknowledge,
+            long                     deltaResend,
+            double                   randomVariation,
+            ScheduledExecutorService exec )
+    {
+        return new MWindowedNetMessageEndpointFactory(
+                windowSize,
+                maxMessagesPerEnvelope,
+                deltaCoalesce,
+                deltaAcknowledge,
+                deltaResend,
+                randomVariation,
+                exec );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param windowSize the maximum number of MessageEnvelopes sent but not acknowledged yet
+     * @param maxMessagesPerEnvelope the maximum number of messages coalesced into one MessageEnvelope
+     * @param deltaCoalesce the number of milliseconds to wait for more messages before sending an enqueued message
+     * @param deltaAcknowledge the number of milliseconds until received MessageEnvelopes are acknowledged
+     *                         if there is no outgoing MessageEnvelope to carry the acknowledgement
+     * @param deltaResend the number of milliseconds until a MessageEnvelope that has not been acknowledged is resent
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule communication-related events
+     */
+    protected MWindowedNetMessageEndpointFactory(
+            int                      windowSize,
+            int                      maxMessagesPerEnvelope,
+            long                     deltaCoalesce,
+            long                     deltaAcknowledge,
+            long                     deltaResend,
+            double                   randomVariation,
+            ScheduledExecutorService exec )
+    {
+        theWindowSize             = windowSize;
+        theMaxMessagesPerEnvelope = maxMessagesPerEnvelope;
+        theDeltaCoalesce          = deltaCoalesce;
+        theDeltaAcknowledge       = deltaAcknowledge;
+        theDeltaResend            = deltaResend;
+        theRandomVariation        = randomVariation;
+
+        theExecService = exec;
+    }
+
+    /**
+     * Set the NameServer to use. This is a separate method and not in the constructor because
+     * there are situations where the NameServer is not available at the time of construction
+     * of an instance.
+     *
+     * @param nameServer the NameServer
+     */
+    public void setNameServer(
+            NetMeshBaseNameServer<NetMeshBaseIdentifier,NetMeshBase> nameServer )
+    {
+        theNameServer = nameServer;
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param partnerIdentifier the key information required for object creation
+     * @param myIdentifier any argument-style information required for object creation
+     * @return the created object
+     * @throws FactoryException catch-all Exception, consider its cause
+     */
+    public MWindowedNetMessageEndpoint obtainFor(
+            NetMeshBaseIdentifier partnerIdentifier,
+            NetMeshBaseIdentifier myIdentifier )
+        throws
+            FactoryException
+    {
+        MWindowedNetMessageEndpoint ret = MWindowedNetMessageEndpoint.create(
+                "Endpoint " + myIdentifier.toExternalForm() + " -> " + partnerIdentifier.toExternalForm(),
+                partnerIdentifier,
+                myIdentifier,
+                theNameServer,
+                theWindowSize,
+                theMaxMessagesPerEnvelope,
+                theDeltaCoalesce,
+                theDeltaAcknowledge,
+                theDeltaResend,
+                theRandomVariation,
+                theExecService );
+
+        return ret;
+    }
+
+    /**
+     * Restore a ProxyMessageEndpoint from storage. The tokens are interpreted as sequence numbers,
+     * and the last messages sent as the messages that have not been acknowledged yet.
+     *
+     * @param partnerIdentifier identifier of the partner NetMeshBase
+     * @param myIdentifier identifier of the NetMeshBase on whose behalf the endpoint communicates
+     * @param lastTokenSent the last sequence number sent
+     * @param lastTokenReceived the last sequence number received
+     * @param lastMessagesSent the messages that had not been acknowledged
+     * @param messagesToBeSent the messages still to be sent
+     * @return the restored ProxyMessageEndpoint
+     * @throws FactoryException catch-all Exception, consider its cause
+     */
+    public ProxyMessageEndpoint restoreNetMessageEndpoint(
+            NetMeshBaseIdentifier partnerIdentifier,
+            NetMeshBaseIdentifier myIdentifier,
+            long                  lastTokenSent,
+            long                  lastTokenReceived,
+            List<XprisoMessage>   lastMessagesSent,
+            List<XprisoMessage>   messagesToBeSent )
+        throws
+            FactoryException
+    {
+        MWindowedNetMessageEndpoint ret = MWindowedNetMessageEndpoint.restore(
+                "Endpoint " + myIdentifier.toExternalForm() + " -> " + partnerIdentifier.toExternalForm(),
+                partnerIdentifier,
+                myIdentifier,
+                theNameServer,
+                theWindowSize,
+                theMaxMessagesPerEnvelope,
+                theDeltaCoalesce,
+                theDeltaAcknowledge,
+                theDeltaResend,
+                theRandomVariation,
+                theExecService,
+                lastTokenSent,
+                lastTokenReceived,
+                lastMessagesSent,
+                messagesToBeSent );
+
+        return ret;
+    }
+
+    /**
+     * The ScheduledExecutorService to use.
+     */
+    protected ScheduledExecutorService theExecService;
+
+    /**
+     * The NameServer to find Proxies to communicate with.
+     */
+    protected NetMeshBaseNameServer<NetMeshBaseIdentifier,NetMeshBase> theNameServer;
+
+    /**
+     * Our ResourceHelper.
+     */
+    protected static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( MWindowedNetMessageEndpointFactory.class );
+
+    /**
+     * Maximum number of MessageEnvelopes sent but not acknowledged yet.
+     */
+    protected int theWindowSize;
+
+    /**
+     * Maximum number of messages coalesced into one MessageEnvelope.
+     */
+    protected int theMaxMessagesPerEnvelope;
+
+    /**
+     * Milliseconds to wait for more messages before sending.
+     */
+    protected long theDeltaCoalesce;
+
+    /**
+     * Milliseconds until received MessageEnvelopes are acknowledged.
+     */
+    protected long theDeltaAcknowledge;
+
+    /**
+     * Milliseconds until unacknowledged MessageEnvelopes are resent.
+     */
+    protected long theDeltaResend;
+
+    /**
+     * Random variation, as percentage, of the various times.
+     */
+    protected double theRandomVariation;
+}
@@ -0,0 +1,1415 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.net.xpriso.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.infogrid.mesh.net.NetMeshObjectIdentifier;
+import org.infogrid.mesh.net.externalized.ExternalizedNetMeshObject;
+import org.infogrid.mesh.net.externalized.ParserFriendlyExternalizedNetMeshObject;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.NetMeshObjectAccessSpecification;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectDeletedEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectNeighborAddedEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectNeighborRemovedEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectPropertyChangeEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectRoleAddedEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectRoleRemovedEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectTypeAddedEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectTypeRemovedEvent;
+import org.infogrid.meshbase.net.xpriso.ParserFriendlyXprisoMessage;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.model.primitives.MeshTypeIdentifier;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+import org.infogrid.model.primitives.externalized.binary.BinaryInput;
+import org.infogrid.model.primitives.externalized.binary.BinaryOutput;
+import org.infogrid.model.primitives.externalized.binary.PropertyValueBinaryEncoder;
+import org.infogrid.util.ArrayHelper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Encodes and decodes XprisoMessages in a compact binary representation. Unlike the
+ *    XML representation, this encoder keeps state about the connection, so an instance
+ *    must be used for one connection only, by both of its ends: each end encodes its
+ *    outgoing and decodes its incoming XprisoMessages with its own instance.</p>
+ * <p>Each encoded XprisoMessage carries a sequence number, and the highest sequence number
+ *    that its sender has decoded from its partner, which acknowledges all XprisoMessages
+ *    up to that one. XprisoMessages must be decoded in the sequence they were encoded,
+ *    without gaps, as the XPRISO MessageEndpoints deliver them; a gap is reported as a
+ *    DecodingException. If the transport acknowledges messages by itself,
+ *    {@link #acknowledge} may be invoked as well.</p>
+ * <p>Two kinds of state are kept:</p>
+ * <ul>
+ *  <li>MeshTypeIdentifiers are assigned an index per connection. Each XprisoMessage
+ *      carries the external form of the MeshTypeIdentifiers it uses, until one that does
+ *      has been acknowledged; after that, only the index is sent.</li>
+ *  <li>When an ExternalizedNetMeshObject is conveyed whose earlier version the partner has
+ *      acknowledged, only the difference to that version is sent: changed times and flags,
+ *      and those types, properties, neighbors, equivalents and proxies that changed. This
+ *      avoids sending large unchanged BlobValues again.</li>
+ * </ul>
+ * <p>The same information is conveyed as in the XML representation, plus the requested
+ *    freshen and home replica lists.</p>
+ */
+public class XprisoMessageBinaryEncoder
+        extends
+            PropertyValueBinaryEncoder
+{
+    private static final Log log = Log.getLogInstance( XprisoMessageBinaryEncoder.class ); // our own, private logger
+
+    /**
+     * Constructor.
+     */
+    public XprisoMessageBinaryEncoder()
+    {
+        // no op
+    }
+
+    /**
+     * Determine whether some data is an XprisoMessage in this binary representation.
+     *
+     * @param data the data
+     * @return true if this is an XprisoMessage in this binary representation
+     */
+    public static boolean isBinaryEncoded(
+            byte [] data )
+    {
+        return data.length >= 2 && ( data[0] & 0xff ) == MAGIC;
+    }
+
+    /**
+     * Serialize an XprisoMessage to an OutputStream.
+     *
+     * @param msg the XprisoMessage
+     * @param out the OutputStream to which to append the XprisoMessage
+     * @throws EncodingException thrown if a problem occurred during encoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void encodeXprisoMessage(
+            XprisoMessage msg,
+            OutputStream  out )
+        throws
+            EncodingException,
+            IOException
+    {
+        BinaryOutput buf = BinaryOutput.create();
+
+        appendXprisoMessage( msg, buf );
+
+        buf.writeTo( out );
+    }
+
+    /**
+     * Serialize an XprisoMessage to a BinaryOutput. If encoding fails, the state
+     * of the connection remains unchanged.
+     *
+     * @param msg the XprisoMessage
+     * @param buf the BinaryOutput to which to append the XprisoMessage
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    public synchronized void appendXprisoMessage(
+            XprisoMessage msg,
+            BinaryOutput  buf )
+        throws
+            EncodingException
+    {
+        long         seq = theLastSentSequenceNumber + 1;
+        BinaryOutput out = BinaryOutput.create();
+
+        theTypesDefinedInMessage.clear();
+        theObjectsForgottenInMessage.clear();
+        theVersionsSentInMessage.clear();
+
+        out.writeByte( MAGIC );
+        out.writeByte( FORMAT_VERSION );
+        out.writeVarLong( seq );
+        out.writeSignedVarLong( theLastReceivedSequenceNumber );
+
+        out.writeSignedVarLong( msg.getRequestId() );
+        out.writeSignedVarLong( msg.getResponseId() );
+        writeNetMeshBaseIdentifier( msg.getSenderIdentifier(),   out );
+        writeNetMeshBaseIdentifier( msg.getReceiverIdentifier(), out );
+        out.writeByte( msg.getCeaseCommunications() ? 1 : 0 );
+
+        NetMeshObjectAccessSpecification [] requestedFirstTimeObjects = msg.getRequestedFirstTimeObjects();
+        if( requestedFirstTimeObjects != null ) {
+            out.writeVarInt( requestedFirstTimeObjects.length );
+            for( NetMeshObjectAccessSpecification current : requestedFirstTimeObjects ) {
+                out.writeString( current.toExternalForm() );
+            }
+        } else {
+            out.writeVarInt( 0 );
+        }
+
+        writeNetMeshObjectIdentifiers( msg.getRequestedCanceledObjects(),         out );
+        writeNetMeshObjectIdentifiers( msg.getRequestedFreshenReplicas(),         out );
+        writeNetMeshObjectIdentifiers( msg.getRequestedResynchronizeReplicas(),   out );
+        writeNetMeshObjectIdentifiers( msg.getRequestedLockObjects(),             out );
+        writeNetMeshObjectIdentifiers( msg.getPushLockObjects(),                  out );
+        writeNetMeshObjectIdentifiers( msg.getReclaimedLockObjects(),             out );
+        writeNetMeshObjectIdentifiers( msg.getRequestedHomeReplicas(),            out );
+        writeNetMeshObjectIdentifiers( msg.getPushHomeReplicas(),                 out );
+
+        // deletions go before the conveyed objects, so a NetMeshObject that is deleted and
+        // conveyed again in the same XprisoMessage is conveyed in full
+        NetMeshObjectDeletedEvent [] deletions = msg.getDeletions();
+        if( deletions != null ) {
+            out.writeVarInt( deletions.length );
+            for( NetMeshObjectDeletedEvent current : deletions ) {
+                out.writeString( current.getAffectedMeshObjectIdentifier().toExternalForm() );
+                out.writeSignedVarLong( current.getTimeEventOccurred() );
+
+                theObjectsForgottenInMessage.add( current.getAffectedMeshObjectIdentifier() );
+            }
+        } else {
+            out.writeVarInt( 0 );
+        }
+
+        ExternalizedNetMeshObject [] conveyedMeshObjects = msg.getConveyedMeshObjects();
+        if( conveyedMeshObjects != null ) {
+            out.writeVarInt( conveyedMeshObjects.length );
+            for( ExternalizedNetMeshObject current : conveyedMeshObjects ) {
+                writeConveyedMeshObject( current, seq, out );
+            }
+        } else {
+            out.writeVarInt( 0 );
+        }
+
+        NetMeshObjectNeighborAddedEvent [] neighborAdditions = msg.getNeighborAdditions();
+        if( neighborAdditions != null ) {
+            out.writeVarInt( neighborAdditions.length );
+            for( NetMeshObjectNeighborAddedEvent current : neighborAdditions ) {
+                out.writeString( current.getAffectedMeshObjectIdentifier().toExternalForm() );
+                out.writeString( current.getNeighborMeshObjectIdentifier().toExternalForm() );
+                out.writeSignedVarLong( current.getTimeEventOccurred() );
+                writeMeshTypeIdentifiers( current.getAffectedRoleTypeIdentifiers(), seq, out );
+            }
+        } else {
+            out.writeVarInt( 0 );
+        }
+
+        NetMeshObjectNeighborRemovedEvent [] neighborRemovals = msg.getNeighborRemovals();
+        if( neighborRemovals != null ) {
+            out.writeVarInt( neighborRemovals.length );
+            for( NetMeshObjectNeighborRemovedEvent current : neighborRemovals ) {
+                out.writeString( current.getAffectedMeshObjectIdentifier().toExternalForm() );
+                out.writeString( current.getNeighborMeshObjectIdentifier().toExternalForm() );
+                out.writeSignedVarLong( current.getTimeEventOccurred() );
+            }
+        } else {
+            out.writeVarInt( 0 );
+        }
+
+        NetMeshObjectPropertyChangeEvent [] propertyChanges = msg.getPropertyChanges();
+        if( propertyChanges != null ) {
+            out.writeVarInt( propertyChanges.length );
+            for( NetMeshObjectPropertyChangeEvent current : propertyChanges ) {
+                out.writeString( current.getAffectedMeshObjectIdentifier().toExternalForm() );
+                writeMeshTypeIdentifier( current.getPropertyTypeIdentifier(), seq, out );
+                out.writeSignedVarLong( current.getTimeEventOccurred() );
+                appendPropertyValue( current.getDeltaValue(), out );
+            }
+        } else {
+            out.writeVarInt( 0 );
+        }
+
+        NetMeshObjectRoleAddedEvent [] roleAdditions = msg.getRoleAdditions();
+        if( roleAdditions != null ) {
+            out.writeVarInt( roleAdditions.length );
+            for( NetMeshObjectRoleAddedEvent current : roleAdditions ) {
+                out.writeString( current.getAffectedMeshObjectIdentifier().toExternalForm() );
+                out.writeString( current.getNeighborMeshObjectIdentifier().toExternalForm() );
+                out.writeSignedVarLong( current.getTimeEventOccurred() );
+                writeMeshTypeIdentifiers( current.getAffectedRoleTypeIdentifiers(), seq, out );
+            }
+        } else {
+            out.writeVarInt( 0 );
+        }
+
+        NetMeshObjectRoleRemovedEvent [] roleRemovals = msg.getRoleRemovals();
+        if( roleRemovals != null ) {
+            out.writeVarInt( roleRemovals.length );
+            for( NetMeshObjectRoleRemovedEvent current : roleRemovals ) {
+                out.writeString( current.getAffectedMeshObjectIdentifier().toExternalForm() );
+                out.writeString( current.getNeighborMeshObjectIdentifier().toExternalForm() );
+                out.writeSignedVarLong( current.getTimeEventOccurred() );
+                writeMeshTypeIdentifiers( current.getAffectedRoleTypeIdentifiers(), seq, out );
+            }
+        } else {
+            out.writeVarInt( 0 );
+        }
+
+        NetMeshObjectTypeAddedEvent [] typeAdditions = msg.getTypeAdditions();
+        if( typeAdditions != null ) {
+            out.writeVarInt( typeAdditions.length );
+            for( NetMeshObjectTypeAddedEvent current : typeAdditions ) {
+                out.writeString( current.getAffectedMeshObjectIdentifier().toExternalForm() );
+                out.writeSignedVarLong( current.getTimeEventOccurred() );
+                writeMeshTypeIdentifiers( current.getEntityTypeIdentifiers(), seq, out );
+            }
+        } else {
+            out.writeVarInt( 0 );
+        }
+
+        NetMeshObjectTypeRemovedEvent [] typeRemovals = msg.getTypeRemovals();
+        if( typeRemovals != null ) {
+            out.writeVarInt( typeRemovals.length );
+            for( NetMeshObjectTypeRemovedEvent current : typeRemovals ) {
+                out.writeString( current.getAffectedMeshObjectIdentifier().toExternalForm() );
+                out.writeSignedVarLong( current.getTimeEventOccurred() );
+                writeMeshTypeIdentifiers( current.getEntityTypeIdentifiers(), seq, out );
+            }
+        } else {
+            out.writeVarInt( 0 );
+        }
+
+        // successful, now we can update the state of the connection
+
+        theLastSentSequenceNumber = seq;
+
+        for( TypeEntry current : theTypesDefinedInMessage.values() ) {
+            if( current.theFirstDefinedIn < 0 ) {
+                current.theFirstDefinedIn = seq;
+            }
+        }
+        for( NetMeshObjectIdentifier current : theObjectsForgottenInMessage ) {
+            theSentVersions.remove( current );
+        }
+        for( Version current : theVersionsSentInMessage ) {
+            SentVersions versions = theSentVersions.get( current.theIdentifier );
+            if( versions == null ) {
+                versions = new SentVersions();
+                theSentVersions.put( current.theIdentifier, versions );
+            }
+            if( versions.thePending.size() >= MAX_RETAINED_VERSIONS ) {
+                versions.thePending.remove( 0 );
+            }
+            versions.thePending.add( current );
+            theUnacknowledgedVersions.add( current );
+        }
+
+        buf.writeBytes( out.toByteArray() );
+    }
+
+    /**
+     * Serialize a conveyed ExternalizedNetMeshObject, as the difference to the version last
+     * acknowledged by the partner if possible.
+     *
+     * @param obj the ExternalizedNetMeshObject
+     * @param seq the sequence number of the XprisoMessage being encoded
+     * @param out the BinaryOutput to write to
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    protected void writeConveyedMeshObject(
+            ExternalizedNetMeshObject obj,
+            long                      seq,
+            BinaryOutput              out )
+        throws
+            EncodingException
+    {
+        NetMeshObjectIdentifier id       = obj.getIdentifier();
+        SentVersions            versions = theObjectsForgottenInMessage.contains( id ) ? null : theSentVersions.get( id );
+        Version                 base     = null;
+
+        // the partner keeps the last MAX_RETAINED_VERSIONS it received, so the base must not be older
+        if( versions != null && versions.theBase != null && versions.thePending.size() < MAX_RETAINED_VERSIONS ) {
+            base = versions.theBase;
+        }
+
+        out.writeString( id.toExternalForm() );
+        if( base != null ) {
+            out.writeByte( DELTA_TAG );
+            out.writeVarLong( base.theSequenceNumber );
+        } else {
+            out.writeByte( FULL_TAG );
+        }
+        writeDifference( base != null ? base.theObject : null, obj, seq, out );
+
+        theVersionsSentInMessage.add( new Version( id, seq, obj ));
+    }
+
+    /**
+     * Serialize the difference between two versions of an ExternalizedNetMeshObject.
+     *
+     * @param base the earlier version, or null to serialize the entire ExternalizedNetMeshObject
+     * @param obj the current version
+     * @param seq the sequence number of the XprisoMessage being encoded
+     * @param out the BinaryOutput to write to
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    protected void writeDifference(
+            ExternalizedNetMeshObject base,
+            ExternalizedNetMeshObject obj,
+            long                      seq,
+            BinaryOutput              out )
+        throws
+            EncodingException
+    {
+        out.writeSignedVarLong( obj.getTimeCreated() );
+        out.writeSignedVarLong( obj.getTimeUpdated() );
+        out.writeSignedVarLong( obj.getTimeRead() );
+        out.writeSignedVarLong( obj.getTimeExpires() );
+        out.writeByte( ( obj.getGiveUpHomeReplica() ? GIVE_UP_HOME_FLAG : 0 ) | ( obj.getGiveUpLock() ? GIVE_UP_LOCK_FLAG : 0 ));
+
+        // properties
+        List<MeshTypeIdentifier> changedPropertyTypes  = new ArrayList<MeshTypeIdentifier>();
+        List<PropertyValue>      changedPropertyValues = new ArrayList<PropertyValue>();
+        List<MeshTypeIdentifier> removedPropertyTypes  = new ArrayList<MeshTypeIdentifier>();
+
+        Map<MeshTypeIdentifier,PropertyValue> baseProperties = propertiesOf( base );
+        Map<MeshTypeIdentifier,PropertyValue> properties     = propertiesOf( obj );
+
+        for( Map.Entry<MeshTypeIdentifier,PropertyValue> current : properties.entrySet() ) {
+            if( !baseProperties.containsKey( current.getKey() ) || !equals( baseProperties.get( current.getKey() ), current.getValue() )) {
+                changedPropertyTypes.add( current.getKey() );
+                changedPropertyValues.add( current.getValue() );
+            }
+        }
+        for( MeshTypeIdentifier current : baseProperties.keySet() ) {
+            if( !properties.containsKey( current )) {
+                removedPropertyTypes.add( current );
+            }
+        }
+
+        // neighbors
+        List<NetMeshObjectIdentifier> changedNeighbors = new ArrayList<NetMeshObjectIdentifier>();
+        List<NetMeshObjectIdentifier> removedNeighbors = new ArrayList<NetMeshObjectIdentifier>();
+
+        NetMeshObjectIdentifier [] baseNeighbors = base != null ? base.getNeighbors() : null;
+        NetMeshObjectIdentifier [] neighbors     = obj.getNeighbors();
+
+        if( neighbors != null ) {
+            for( NetMeshObjectIdentifier current : neighbors ) {
+                if(    baseNeighbors == null
+                    || !ArrayHelper.isIn( current, baseNeighbors, true )
+                    || !ArrayHelper.hasSameContentOutOfOrder( base.getRoleTypesFor( current ), obj.getRoleTypesFor( current ), true )
+                    || !ArrayHelper.hasSameContentOutOfOrder( base.getRelationshipProxyIdentifiersFor( current ), obj.getRelationshipProxyIdentifiersFor( current ), true ))
+                {
+                    changedNeighbors.add( current );
+                }
+            }
+        }
+        if( baseNeighbors != null ) {
+            for( NetMeshObjectIdentifier current : baseNeighbors ) {
+                if( neighbors == null || !ArrayHelper.isIn( current, neighbors, true )) {
+                    removedNeighbors.add( current );
+                }
+            }
+        }
+
+        int changed = 0;
+        if( base == null || !ArrayHelper.hasSameContentOutOfOrder( base.getExternalTypeIdentifiers(), obj.getExternalTypeIdentifiers(), true )) {
+            changed |= TYPES_CHANGED;
+        }
+        if( !changedPropertyTypes.isEmpty() || !removedPropertyTypes.isEmpty() ) {
+            changed |= PROPERTIES_CHANGED;
+        }
+        if( !changedNeighbors.isEmpty() || !removedNeighbors.isEmpty() ) {
+            changed |= NEIGHBORS_CHANGED;
+        }
+        if( base == null || !Arrays.equals( base.getEquivalents(), obj.getEquivalents() )) {
+            // the sequence of equivalents matters
+            changed |= EQUIVALENTS_CHANGED;
+        }
+        if(    base == null
+            || !Arrays.equals( base.getProxyIdentifiers(), obj.getProxyIdentifiers() )
+            || !equals( base.getProxyTowardsHomeNetworkIdentifier(), obj.getProxyTowardsHomeNetworkIdentifier() )
+            || !equals( base.getProxyTowardsLockNetworkIdentifier(), obj.getProxyTowardsLockNetworkIdentifier() ))
+        {
+            changed |= PROXIES_CHANGED;
+        }
+        out.writeByte( changed );
+
+        if( ( changed & TYPES_CHANGED ) != 0 ) {
+            writeMeshTypeIdentifiers( obj.getExternalTypeIdentifiers(), seq, out );
+        }
+        if( ( changed & PROPERTIES_CHANGED ) != 0 ) {
+            out.writeVarInt( changedPropertyTypes.size() );
+            for( int i=0 ; i<changedPropertyTypes.size() ; ++i ) {
+                writeMeshTypeIdentifier( changedPropertyTypes.get( i ), seq, out );
+                appendPropertyValue( changedPropertyValues.get( i ), out );
+            }
+            out.writeVarInt( removedPropertyTypes.size() );
+            for( MeshTypeIdentifier current : removedPropertyTypes ) {
+                writeMeshTypeIdentifier( current, seq, out );
+            }
+        }
+        if( ( changed & NEIGHBORS_CHANGED ) != 0 ) {
+            out.writeVarInt( changedNeighbors.size() );
+            for( NetMeshObjectIdentifier current : changedNeighbors ) {
+                out.writeString( current.toExternalForm() );
+                writeMeshTypeIdentifiers( obj.getRoleTypesFor( current ), seq, out );
+                writeNetMeshBaseIdentifiers( obj.getRelationshipProxyIdentifiersFor( current ), out );
+            }
+            out.writeVarInt( removedNeighbors.size() );
+            for( NetMeshObjectIdentifier current : removedNeighbors ) {
+                out.writeString( current.toExternalForm() );
+            }
+        }
+        if( ( changed & EQUIVALENTS_CHANGED ) != 0 ) {
+            // nulls are significant, because otherwise we can't distinguish right from left
+            NetMeshObjectIdentifier [] equivalents = obj.getEquivalents();
+            if( equivalents != null ) {
+                out.writeVarInt( equivalents.length );
+                for( NetMeshObjectIdentifier current : equivalents ) {
+                    out.writeString( current != null ? current.toExternalForm() : null );
+                }
+            } else {
+                out.writeVarInt( 0 );
+            }
+        }
+        if( ( changed & PROXIES_CHANGED ) != 0 ) {
+            NetMeshBaseIdentifier [] proxies = obj.getProxyIdentifiers();
+            writeNetMeshBaseIdentifiers( proxies, out );
+            out.writeSignedVarLong( indexOf( obj.getProxyTowardsHomeNetworkIdentifier(), proxies ));
+            out.writeSignedVarLong( indexOf( obj.getProxyTowardsLockNetworkIdentifier(), proxies ));
+        }
+    }
+
+    /**
+     * Serialize a MeshTypeIdentifier, either as its index only, or as its index followed by
+     * its external form if the partner may not know it yet.
+     *
+     * @param id the MeshTypeIdentifier
+     * @param seq the sequence number of the XprisoMessage being encoded
+     * @param out the BinaryOutput to write to
+     */
+    protected void writeMeshTypeIdentifier(
+            MeshTypeIdentifier id,
+            long               seq,
+            BinaryOutput       out )
+    {
+        TypeEntry entry = theSentTypes.get( id );
+        if( entry == null ) {
+            entry = new TypeEntry( theSentTypes.size() );
+            theSentTypes.put( id, entry );
+        }
+
+        boolean known =    ( entry.theFirstDefinedIn >= 0 && entry.theFirstDefinedIn <= theLastAcknowledgedSequenceNumber )
+                        || theTypesDefinedInMessage.containsKey( id );
+
+        if( known ) {
+            out.writeVarInt( entry.theIndex << 1 );
+        } else {
+            out.writeVarInt( ( entry.theIndex << 1 ) | 1 );
+            out.writeString( id.toExternalForm() );
+            theTypesDefinedInMessage.put( id, entry );
+        }
+    }
+
+    /**
+     * Serialize a set of MeshTypeIdentifiers.
+     *
+     * @param ids the MeshTypeIdentifiers, or null
+     * @param seq the sequence number of the XprisoMessage being encoded
+     * @param out the BinaryOutput to write to
+     */
+    protected void writeMeshTypeIdentifiers(
+            MeshTypeIdentifier [] ids,
+            long                  seq,
+            BinaryOutput          out )
+    {
+        if( ids == null ) {
+            out.writeVarInt( 0 );
+            return;
+        }
+        out.writeVarInt( ids.length );
+        for( MeshTypeIdentifier current : ids ) {
+            writeMeshTypeIdentifier( current, seq, out );
+        }
+    }
+
+    /**
+     * Serialize a set of NetMeshObjectIdentifiers.
+     *
+     * @param ids the NetMeshObjectIdentifiers, or null
+     * @param out the BinaryOutput to write to
+     */
+    protected void writeNetMeshObjectIdentifiers(
+            NetMeshObjectIdentifier [] ids,
+            BinaryOutput               out )
+    {
+        if( ids == null ) {
+            out.writeVarInt( 0 );
+            return;
+        }
+        out.writeVarInt( ids.length );
+        for( NetMeshObjectIdentifier current : ids ) {
+            out.writeString( current.toExternalForm() );
+        }
+    }
+
+    /**
+     * Serialize a NetMeshBaseIdentifier.
+     *
+     * @param id the NetMeshBaseIdentifier, or null
+     * @param out the BinaryOutput to write to
+     */
+    protected void writeNetMeshBaseIdentifier(
+            NetMeshBaseIdentifier id,
+            BinaryOutput          out )
+    {
+        out.writeString( id != null ? id.getCanonicalForm() : null );
+    }
+
+    /**
+     * Serialize a set of NetMeshBaseIdentifiers.
+     *
+     * @param ids the NetMeshBaseIdentifiers, or null
+     * @param out the BinaryOutput to write to
+     */
+    protected void writeNetMeshBaseIdentifiers(
+            NetMeshBaseIdentifier [] ids,
+            BinaryOutput             out )
+    {
+        if( ids == null ) {
+            out.writeVarInt( 0 );
+            return;
+        }
+        out.writeVarInt( ids.length );
+        for( NetMeshBaseIdentifier current : ids ) {
+            writeNetMeshBaseIdentifier( current, out );
+        }
+    }
+
+    /**
+     * Deserialize an XprisoMessage from a stream.
+     *
+     * @param contentAsStream the byte [] stream in which the XprisoMessage is encoded
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return return the just-instantiated XprisoMessage
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public XprisoMessage decodeXprisoMessage(
+            InputStream contentAsStream,
+            NetMeshBase mb )
+        throws
+            DecodingException,
+            IOException
+    {
+        BinaryInput in = BinaryInput.create( contentAsStream );
+
+        return readXprisoMessage( in, mb );
+    }
+
+    /**
+     * Read an XprisoMessage from a BinaryInput. If decoding fails, the connection
+     * cannot be used any more.
+     *
+     * @param in the BinaryInput
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return return the just-instantiated XprisoMessage
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    public synchronized XprisoMessage readXprisoMessage(
+            BinaryInput in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        int magic = in.readByte();
+        if( magic != MAGIC ) {
+            throw new DecodingException( "Not a binary XprisoMessage" );
+        }
+        int version = in.readByte();
+        if( version != FORMAT_VERSION ) {
+            throw new DecodingException( "Unsupported format version " + version + ", expected " + FORMAT_VERSION );
+        }
+        long seq = in.readVarLong();
+        if( seq != theLastReceivedSequenceNumber + 1 ) {
+            throw new DecodingException( "Received XprisoMessage " + seq + ", expected " + ( theLastReceivedSequenceNumber + 1 ));
+        }
+        acknowledge( in.readSignedVarLong() );
+
+        long                  requestId  = in.readSignedVarLong();
+        long                  responseId = in.readSignedVarLong();
+        NetMeshBaseIdentifier senderId   = readNetMeshBaseIdentifier( in, mb );
+        NetMeshBaseIdentifier receiverId = readNetMeshBaseIdentifier( in, mb );
+
+        ParserFriendlyXprisoMessage ret = ParserFriendlyXprisoMessage.create( senderId, receiverId );
+        ret.setRequestId( requestId );
+        ret.setResponseId( responseId );
+        ret.setCeaseCommunications( in.readByte() != 0 );
+
+        int n = in.readVarInt();
+        for( int i=0 ; i<n ; ++i ) {
+            String path = in.readString();
+            try {
+                ret.addRequestedFirstTimeObject( mb.getNetMeshObjectAccessSpecificationFactory().fromExternalForm( path ));
+            } catch( ParseException ex ) {
+                throw new DecodingException( ex );
+            }
+        }
+
+        ret.addRequestedCanceledObjects(       readNetMeshObjectIdentifiers( in, mb ));
+        ret.addRequestedFreshenReplicas(       readNetMeshObjectIdentifiers( in, mb ));
+        ret.addRequestedResynchronizeReplicas( readNetMeshObjectIdentifiers( in, mb ));
+        ret.addRequestedLockObjects(           readNetMeshObjectIdentifiers( in, mb ));
+        ret.addPushLockObjects(                readNetMeshObjectIdentifiers( in, mb ));
+        ret.addReclaimedLockObjects(           readNetMeshObjectIdentifiers( in, mb ));
+        ret.addRequestedHomeReplicas(          readNetMeshObjectIdentifiers( in, mb ));
+        ret.addPushHomeReplicas(               readNetMeshObjectIdentifiers( in, mb ));
+
+        n = in.readVarInt();
+        for( int i=0 ; i<n ; ++i ) {
+            NetMeshObjectIdentifier ref  = readNetMeshObjectIdentifier( in, mb );
+            long                    time = in.readSignedVarLong();
+            ret.addDeleteChange( new NetMeshObjectDeletedEvent( null, senderId, null, ref, senderId, null, time ));
+
+            theReceivedVersions.remove( ref );
+        }
+
+        n = in.readVarInt();
+        for( int i=0 ; i<n ; ++i ) {
+            ret.addConveyedMeshObject( readConveyedMeshObject( seq, in, mb ));
+        }
+
+        n = in.readVarInt();
+        for( int i=0 ; i<n ; ++i ) {
+            NetMeshObjectIdentifier ref      = readNetMeshObjectIdentifier( in, mb );
+            NetMeshObjectIdentifier neighbor = readNetMeshObjectIdentifier( in, mb );
+            long                    time     = in.readSignedVarLong();
+            ret.addNeighborAddition( new NetMeshObjectNeighborAddedEvent( ref, readMeshTypeIdentifiers( in, mb ), neighbor, senderId, time, null ));
+        }
+
+        n = in.readVarInt();
+        for( int i=0 ; i<n ; ++i ) {
+            NetMeshObjectIdentifier ref      = readNetMeshObjectIdentifier( in, mb );
+            NetMeshObjectIdentifier neighbor = readNetMeshObjectIdentifier( in, mb );
+            long                    time     = in.readSignedVarLong();
+            ret.addNeighborRemoval( new NetMeshObjectNeighborRemovedEvent( ref, neighbor, senderId, time, null ));
+        }
+
+        n = in.readVarInt();
+        for( int i=0 ; i<n ; ++i ) {
+            NetMeshObjectIdentifier ref  = readNetMeshObjectIdentifier( in, mb );
+            MeshTypeIdentifier      type = readMeshTypeIdentifier( in, mb );
+            long                    time = in.readSignedVarLong();
+            ret.addPropertyChange( new NetMeshObjectPropertyChangeEvent( ref, type, readPropertyValue( in ), senderId, time, null ));
+        }
+
+        n = in.readVarInt();
+        for( int i=0 ; i<n ; ++i ) {
+            NetMeshObjectIdentifier ref      = readNetMeshObjectIdentifier( in, mb );
+            NetMeshObjectIdentifier neighbor = readNetMeshObjectIdentifier( in, mb );
+            long                    time     = in.readSignedVarLong();
+            ret.addRoleAddition( new NetMeshObjectRoleAddedEvent( ref, readMeshTypeIdentifiers( in, mb ), neighbor, senderId, time, null ));
+        }
+
+        n = in.readVarInt();
+        for( int i=0 ; i<n ; ++i ) {
+            NetMeshObjectIdentifier ref      = readNetMeshObjectIdentifier( in, mb );
+            NetMeshObjectIdentifier neighbor = readNetMeshObjectIdentifier( in, mb );
+            long                    time     = in.readSignedVarLong();
+            ret.addRoleRemoval( new NetMeshObjectRoleRemovedEvent( ref, readMeshTypeIdentifiers( in, mb ), neighbor, senderId, time, null ));
+        }
+
+        n = in.readVarInt();
+        for( int i=0 ; i<n ; ++i ) {
+            NetMeshObjectIdentifier ref  = readNetMeshObjectIdentifier( in, mb );
+            long                    time = in.readSignedVarLong();
+            ret.addTypeAddition( new NetMeshObjectTypeAddedEvent( ref, readMeshTypeIdentifiers( in, mb ), senderId, time, null ));
+        }
+
+        n = in.readVarInt();
+        for( int i=0 ; i<n ; ++i ) {
+            NetMeshObjectIdentifier ref  = readNetMeshObjectIdentifier( in, mb );
+            long                    time = in.readSignedVarLong();
+            ret.addTypeRemoval( new NetMeshObjectTypeRemovedEvent( ref, readMeshTypeIdentifiers( in, mb ), senderId, time, null ));
+        }
+
+        theLastReceivedSequenceNumber = seq;
+
+        return ret;
+    }
+
+    /**
+     * Read a conveyed ExternalizedNetMeshObject, applying the difference to the earlier
+     * version if it was sent as a difference.
+     *
+     * @param seq the sequence number of the XprisoMessage being decoded
+     * @param in the BinaryInput
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the ExternalizedNetMeshObject
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected ExternalizedNetMeshObject readConveyedMeshObject(
+            long        seq,
+            BinaryInput in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        NetMeshObjectIdentifier id = readNetMeshObjectIdentifier( in, mb );
+
+        TreeMap<Long,ExternalizedNetMeshObject> versions = theReceivedVersions.get( id );
+        ExternalizedNetMeshObject               base;
+
+        int tag = in.readByte();
+        switch( tag ) {
+            case FULL_TAG:
+                base = null;
+                break;
+
+            case DELTA_TAG:
+                long baseSeq = in.readVarLong();
+                base = versions != null ? versions.get( baseSeq ) : null;
+                if( base == null ) {
+                    throw new DecodingException( "Do not have version " + baseSeq + " of " + id.toExternalForm() );
+                }
+                // the partner will not refer to older versions any more
+                versions.headMap( baseSeq ).clear();
+                break;
+
+            default:
+                throw new DecodingException( "Invalid conveyed MeshObject tag " + tag );
+        }
+
+        ParserFriendlyExternalizedNetMeshObject ret = mb.getMeshBaseLifecycleManager().createParserFriendlyExternalizedMeshObject();
+
+        ret.setIdentifier( id );
+        ret.setTimeCreated( in.readSignedVarLong() );
+        ret.setTimeUpdated( in.readSignedVarLong() );
+        ret.setTimeRead(    in.readSignedVarLong() );
+        ret.setTimeExpires( in.readSignedVarLong() );
+
+        int flags = in.readByte();
+        ret.setGiveUpHome( ( flags & GIVE_UP_HOME_FLAG ) != 0 );
+        ret.setGiveUpLock( ( flags & GIVE_UP_LOCK_FLAG ) != 0 );
+
+        int changed = in.readByte();
+
+        MeshTypeIdentifier [] types;
+        if( ( changed & TYPES_CHANGED ) != 0 ) {
+            types = readMeshTypeIdentifiers( in, mb );
+        } else {
+            types = base != null ? base.getExternalTypeIdentifiers() : null;
+        }
+        if( types != null ) {
+            for( MeshTypeIdentifier current : types ) {
+                ret.addMeshType( current );
+            }
+        }
+
+        Map<MeshTypeIdentifier,PropertyValue> properties = propertiesOf( base );
+        if( ( changed & PROPERTIES_CHANGED ) != 0 ) {
+            int nChanged = in.readVarInt();
+            for( int i=0 ; i<nChanged ; ++i ) {
+                MeshTypeIdentifier type = readMeshTypeIdentifier( in, mb );
+                properties.put( type, readPropertyValue( in ));
+            }
+            int nRemoved = in.readVarInt();
+            for( int i=0 ; i<nRemoved ; ++i ) {
+                properties.remove( readMeshTypeIdentifier( in, mb ));
+            }
+        }
+        for( Map.Entry<MeshTypeIdentifier,PropertyValue> current : properties.entrySet() ) {
+            ret.addPropertyType( current.getKey() );
+            ret.addPropertyValue( current.getValue() );
+        }
+
+        LinkedHashMap<NetMeshObjectIdentifier,ParserFriendlyExternalizedNetMeshObject.RelationshipWithRelationshipProxies> relationships
+                = new LinkedHashMap<NetMeshObjectIdentifier,ParserFriendlyExternalizedNetMeshObject.RelationshipWithRelationshipProxies>();
+
+        if( base != null && base.getNeighbors() != null ) {
+            for( NetMeshObjectIdentifier current : base.getNeighbors() ) {
+                relationships.put( current, createRelationship( id, current, base.getRoleTypesFor( current ), base.getRelationshipProxyIdentifiersFor( current )));
+            }
+        }
+        if( ( changed & NEIGHBORS_CHANGED ) != 0 ) {
+            int nChanged = in.readVarInt();
+            for( int i=0 ; i<nChanged ; ++i ) {
+                NetMeshObjectIdentifier  neighbor  = readNetMeshObjectIdentifier( in, mb );
+                MeshTypeIdentifier []    roleTypes = readMeshTypeIdentifiers( in, mb );
+                NetMeshBaseIdentifier [] proxies   = readNetMeshBaseIdentifiers( in, mb );
+
+                relationships.put( neighbor, createRelationship( id, neighbor, roleTypes, proxies ));
+            }
+            int nRemoved = in.readVarInt();
+            for( int i=0 ; i<nRemoved ; ++i ) {
+                relationships.remove( readNetMeshObjectIdentifier( in, mb ));
+            }
+        }
+        for( ParserFriendlyExternalizedNetMeshObject.RelationshipWithRelationshipProxies current : relationships.values() ) {
+            ret.addRelationship( current );
+        }
+
+        if( ( changed & EQUIVALENTS_CHANGED ) != 0 ) {
+            int nEquivalents = in.readVarInt();
+            for( int i=0 ; i<nEquivalents ; ++i ) {
+                ret.addEquivalent( readNetMeshObjectIdentifier( in, mb ));
+            }
+        } else if( base != null && base.getEquivalents() != null ) {
+            for( NetMeshObjectIdentifier current : base.getEquivalents() ) {
+                ret.addEquivalent( current );
+            }
+        }
+
+        NetMeshBaseIdentifier [] proxies;
+        int                      homeIndex;
+        int                      lockIndex;
+        if( ( changed & PROXIES_CHANGED ) != 0 ) {
+            proxies   = readNetMeshBaseIdentifiers( in, mb );
+            homeIndex = (int) in.readSignedVarLong();
+            lockIndex = (int) in.readSignedVarLong();
+        } else if( base != null ) {
+            proxies   = base.getProxyIdentifiers();
+            homeIndex = indexOf( base.getProxyTowardsHomeNetworkIdentifier(), proxies );
+            lockIndex = indexOf( base.getProxyTowardsLockNetworkIdentifier(), proxies );
+        } else {
+            proxies   = null;
+            homeIndex = -1;
+            lockIndex = -1;
+        }
+        if( proxies != null ) {
+            for( int i=0 ; i<proxies.length ; ++i ) {
+                ret.addProxyNetworkIdentifier( proxies[i], i == homeIndex, i == lockIndex );
+            }
+        }
+
+        if( versions == null ) {
+            versions = new TreeMap<Long,ExternalizedNetMeshObject>();
+            theReceivedVersions.put( id, versions );
+        }
+        versions.put( seq, ret );
+        while( versions.size() > MAX_RETAINED_VERSIONS ) {
+            versions.remove( versions.firstKey() );
+        }
+
+        return ret;
+    }
+
+    /**
+     * Read a MeshTypeIdentifier, and remember its index if the external form was sent.
+     *
+     * @param in the BinaryInput
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the MeshTypeIdentifier
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected MeshTypeIdentifier readMeshTypeIdentifier(
+            BinaryInput in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        int code  = in.readVarInt();
+        int index = code >>> 1;
+
+        if( ( code & 1 ) != 0 ) {
+            String externalForm = in.readString();
+            if( externalForm == null ) {
+                throw new DecodingException( "No external form for MeshTypeIdentifier " + index );
+            }
+            MeshTypeIdentifier ret = mb.getModelBase().getMeshTypeIdentifierFactory().fromExternalForm( externalForm );
+
+            // if an earlier XprisoMessage failed to encode, its indices are never sent
+            while( theReceivedTypes.size() <= index ) {
+                theReceivedTypes.add( null );
+            }
+            theReceivedTypes.set( index, ret );
+            return ret;
+        }
+
+        MeshTypeIdentifier ret = index < theReceivedTypes.size() ? theReceivedTypes.get( index ) : null;
+        if( ret == null ) {
+            throw new DecodingException( "Unknown MeshTypeIdentifier " + index );
+        }
+        return ret;
+    }
+
+    /**
+     * Read a set of MeshTypeIdentifiers.
+     *
+     * @param in the BinaryInput
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the MeshTypeIdentifiers
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected MeshTypeIdentifier [] readMeshTypeIdentifiers(
+            BinaryInput in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        MeshTypeIdentifier [] ret = new MeshTypeIdentifier[ in.readVarInt() ];
+        for( int i=0 ; i<ret.length ; ++i ) {
+            ret[i] = readMeshTypeIdentifier( in, mb );
+        }
+        return ret;
+    }
+
+    /**
+     * Read a NetMeshObjectIdentifier.
+     *
+     * @param in the BinaryInput
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the NetMeshObjectIdentifier, or null
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected NetMeshObjectIdentifier readNetMeshObjectIdentifier(
+            BinaryInput in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        String externalForm = in.readString();
+        if( externalForm == null ) {
+            return null;
+        }
+        try {
+            return mb.getMeshObjectIdentifierFactory().guessFromExternalForm( externalForm );
+
+        } catch( ParseException ex ) {
+            throw new DecodingException( ex );
+        }
+    }
+
+    /**
+     * Read a set of NetMeshObjectIdentifiers.
+     *
+     * @param in the BinaryInput
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the NetMeshObjectIdentifiers
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected NetMeshObjectIdentifier [] readNetMeshObjectIdentifiers(
+            BinaryInput in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        NetMeshObjectIdentifier [] ret = new NetMeshObjectIdentifier[ in.readVarInt() ];
+        for( int i=0 ; i<ret.length ; ++i ) {
+            ret[i] = readNetMeshObjectIdentifier( in, mb );
+        }
+        return ret;
+    }
+
+    /**
+     * Read a NetMeshBaseIdentifier.
+     *
+     * @param in the BinaryInput
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the NetMeshBaseIdentifier, or null
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected NetMeshBaseIdentifier readNetMeshBaseIdentifier(
+            BinaryInput in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        String externalForm = in.readString();
+        if( externalForm == null || externalForm.length() == 0 ) {
+            return null;
+        }
+        try {
+            return mb.getMeshBaseIdentifierFactory().guessFromExternalForm( externalForm );
+
+        } catch( ParseException ex ) {
+            throw new DecodingException( ex );
+        }
+    }
+
+    /**
+     * Read a set of NetMeshBaseIdentifiers.
+     *
+     * @param in the BinaryInput
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the NetMeshBaseIdentifiers
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected NetMeshBaseIdentifier [] readNetMeshBaseIdentifiers(
+            BinaryInput in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        NetMeshBaseIdentifier [] ret = new NetMeshBaseIdentifier[ in.readVarInt() ];
+        for( int i=0 ; i<ret.length ; ++i ) {
+            ret[i] = readNetMeshBaseIdentifier( in, mb );
+        }
+        return ret;
+    }
+
+    /**
+     * Factors out the creation of Relationship instances, so subclasses can override it.
+     *
+     * @param identifier the NetMeshObjectIdentifier on this side of the relationship
+     * @param neighborIdentifier the NetMeshObjectIdentifier on the other side of the relationship
+     * @param roleTypes the MeshTypeIdentifiers of the RoleTypes, or null
+     * @param proxies the NetMeshBaseIdentifiers of the relationship Proxies, or null
+     * @return the created Relationship object
+     */
+    protected ParserFriendlyExternalizedNetMeshObject.RelationshipWithRelationshipProxies createRelationship(
+            NetMeshObjectIdentifier  identifier,
+            NetMeshObjectIdentifier  neighborIdentifier,
+            MeshTypeIdentifier []    roleTypes,
+            NetMeshBaseIdentifier [] proxies )
+    {
+        ParserFriendlyExternalizedNetMeshObject.RelationshipWithRelationshipProxies ret
+                = new ParserFriendlyExternalizedNetMeshObject.RelationshipWithRelationshipProxies( identifier, neighborIdentifier, -1L );
+
+        if( roleTypes != null ) {
+            for( MeshTypeIdentifier current : roleTypes ) {
+                ret.addType( current );
+            }
+        }
+        if( proxies != null ) {
+            for( NetMeshBaseIdentifier current : proxies ) {
+                ret.addRelationshipProxyIdentifier( current );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * The partner has decoded all XprisoMessages up to and including this sequence number.
+     * The versions of the ExternalizedNetMeshObjects conveyed in them become the versions
+     * against which later versions are encoded, and the MeshTypeIdentifiers defined in them
+     * are sent as index only from now on.
+     *
+     * @param seq the sequence number
+     */
+    public synchronized void acknowledge(
+            long seq )
+    {
+        if( seq <= theLastAcknowledgedSequenceNumber ) {
+            return;
+        }
+        if( seq > theLastSentSequenceNumber ) {
+            log.error( this + ": acknowledged " + seq + " but only sent " + theLastSentSequenceNumber );
+            return;
+        }
+        theLastAcknowledgedSequenceNumber = seq;
+
+        while( !theUnacknowledgedVersions.isEmpty() && theUnacknowledgedVersions.peek().theSequenceNumber <= seq ) {
+            Version      current  = theUnacknowledgedVersions.poll();
+            SentVersions versions = theSentVersions.get( current.theIdentifier );
+
+            // the NetMeshObject may have been deleted, or the version dropped from the pending versions
+            if( versions != null && !versions.thePending.isEmpty() && versions.thePending.get( 0 ) == current ) {
+                versions.thePending.remove( 0 );
+                versions.theBase = current;
+            }
+        }
+    }
+
+    /**
+     * Obtain the sequence number of the XprisoMessage encoded most recently.
+     *
+     * @return the sequence number, or -1 if none
+     */
+    public synchronized long getLastSentSequenceNumber()
+    {
+        return theLastSentSequenceNumber;
+    }
+
+    /**
+     * Obtain the highest sequence number acknowledged by the partner.
+     *
+     * @return the sequence number, or -1 if none
+     */
+    public synchronized long getLastAcknowledgedSequenceNumber()
+    {
+        return theLastAcknowledgedSequenceNumber;
+    }
+
+    /**
+     * Obtain the sequence number of the XprisoMessage decoded most recently.
+     *
+     * @return the sequence number, or -1 if none
+     */
+    public synchronized long getLastReceivedSequenceNumber()
+    {
+        return theLastReceivedSequenceNumber;
+    }
+
+    /**
+     * Obtain the properties of an ExternalizedNetMeshObject as a Map.
+     *
+     * @param obj the ExternalizedNetMeshObject, or null
+     * @return the PropertyValues keyed by PropertyType identifier, in their original sequence
+     */
+    protected static LinkedHashMap<MeshTypeIdentifier,PropertyValue> propertiesOf(
+            ExternalizedNetMeshObject obj )
+    {
+        LinkedHashMap<MeshTypeIdentifier,PropertyValue> ret = new LinkedHashMap<MeshTypeIdentifier,PropertyValue>();
+        if( obj == null || obj.getPropertyTypes() == null ) {
+            return ret;
+        }
+        MeshTypeIdentifier [] types  = obj.getPropertyTypes();
+        PropertyValue []      values = obj.getPropertyValues();
+        for( int i=0 ; i<types.length ; ++i ) {
+            ret.put( types[i], values[i] );
+        }
+        return ret;
+    }
+
+    /**
+     * Determine the index of a NetMeshBaseIdentifier in an array.
+     *
+     * @param id the NetMeshBaseIdentifier, or null
+     * @param ids the array, or null
+     * @return the index, or -1 if not found
+     */
+    protected static int indexOf(
+            NetMeshBaseIdentifier    id,
+            NetMeshBaseIdentifier [] ids )
+    {
+        if( id == null || ids == null ) {
+            return -1;
+        }
+        for( int i=0 ; i<ids.length ; ++i ) {
+            if( id.equals( ids[i] )) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compare two Objects, either of which may be null.
+     *
+     * @param one the first Object
+     * @param two the second Object
+     * @return true if they are equal
+     */
+    protected static boolean equals(
+            Object one,
+            Object two )
+    {
+        if( one == null ) {
+            return two == null;
+        }
+        return one.equals( two );
+    }
+
+    /**
+     * Sequence number of the XprisoMessage encoded most recently.
+     */
+    protected long theLastSentSequenceNumber = -1L;
+
+    /**
+     * Highest sequence number acknowledged by the partner.
+     */
+    protected long theLastAcknowledgedSequenceNumber = -1L;
+
+    /**
+     * Sequence number of the XprisoMessage decoded most recently.
+     */
+    protected long theLastReceivedSequenceNumber = -1L;
+
+    /**
+     * The indices assigned to the MeshTypeIdentifiers we sent.
+     */
+    protected HashMap<MeshTypeIdentifier,TypeEntry> theSentTypes = new HashMap<MeshTypeIdentifier,TypeEntry>();
+
+    /**
+     * The MeshTypeIdentifiers received, by index.
+     */
+    protected ArrayList<MeshTypeIdentifier> theReceivedTypes = new ArrayList<MeshTypeIdentifier>();
+
+    /**
+     * The versions of the ExternalizedNetMeshObjects we sent, keyed by identifier.
+     */
+    protected HashMap<NetMeshObjectIdentifier,SentVersions> theSentVersions = new HashMap<NetMeshObjectIdentifier,SentVersions>();
+
+    /**
+     * The versions we sent that the partner has not acknowledged yet, in sequence.
+     */
+    protected ArrayDeque<Version> theUnacknowledgedVersions = new ArrayDeque<Version>();
+
+    /**
+     * The versions of the ExternalizedNetMeshObjects we received, keyed by identifier and then by
+     * the sequence number of the XprisoMessage that conveyed them.
+     */
+    protected HashMap<NetMeshObjectIdentifier,TreeMap<Long,ExternalizedNetMeshObject>> theReceivedVersions
+            = new HashMap<NetMeshObjectIdentifier,TreeMap<Long,ExternalizedNetMeshObject>>();
+
+    /**
+     * Used while encoding: the MeshTypeIdentifiers whose external form has been written already.
+     */
+    protected HashMap<MeshTypeIdentifier,TypeEntry> theTypesDefinedInMessage = new HashMap<MeshTypeIdentifier,TypeEntry>();
+
+    /**
+     * Used while encoding: the NetMeshObjects that were deleted.
+     */
+    protected Set<NetMeshObjectIdentifier> theObjectsForgottenInMessage = new HashSet<NetMeshObjectIdentifier>();
+
+    /**
+     * Used while encoding: the versions of the ExternalizedNetMeshObjects that were conveyed.
+     */
+    protected List<Version> theVersionsSentInMessage = new ArrayList<Version>();
+
+    /**
+     * Identifies the binary representation. This is not a valid first byte of an XML document in UTF-8.
+     */
+    public static final int MAGIC = 0xB1;
+
+    /**
+     * The version of the binary format written by this class. Incompatible changes to
+     * the format must increment this.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * The number of versions of each ExternalizedNetMeshObject the decoder retains.
+     */
+    public static final int MAX_RETAINED_VERSIONS = 8;
+
+    /**
+     * Tag for an ExternalizedNetMeshObject that is conveyed in full.
+     */
+    protected static final int FULL_TAG = 0;
+
+    /**
+     * Tag for an ExternalizedNetMeshObject that is conveyed as the difference to an earlier version.
+     */
+    protected static final int DELTA_TAG = 1;
+
+    /**
+     * Flag for GiveUpHomeReplica.
+     */
+    protected static final int GIVE_UP_HOME_FLAG = 1;
+
+    /**
+     * Flag for GiveUpLock.
+     */
+    protected static final int GIVE_UP_LOCK_FLAG = 2;
+
+    /**
+     * Flag indicating that the types of the ExternalizedNetMeshObject changed.
+     */
+    protected static final int TYPES_CHANGED = 1;
+
+    /**
+     * Flag indicating that properties of the ExternalizedNetMeshObject changed.
+     */
+    protected static final int PROPERTIES_CHANGED = 2;
+
+    /**
+     * Flag indicating that neighbors of the ExternalizedNetMeshObject changed.
+     */
+    protected static final int NEIGHBORS_CHANGED = 4;
+
+    /**
+     * Flag indicating that the equivalents of the ExternalizedNetMeshObject changed.
+     */
+    protected static final int EQUIVALENTS_CHANGED = 8;
+
+    /**
+     * Flag indicating that the proxies of the ExternalizedNetMeshObject changed.
+     */
+    protected static final int PROXIES_CHANGED = 16;
+
+    /**
+     * The index assigned to a MeshTypeIdentifier.
+     */
+    protected static class TypeEntry
+    {
+        /**
+         * Constructor.
+         *
+         * @param index the index
+         */
+        public TypeEntry(
+                int index )
+        {
+            theIndex = index;
+        }
+
+        /**
+         * The index.
+         */
+        protected int theIndex;
+
+        /**
+         * The sequence number of the first XprisoMessage that carried the external form, or -1.
+         */
+        protected long theFirstDefinedIn = -1L;
+    }
+
+    /**
+     * A version of an ExternalizedNetMeshObject that was sent.
+     */
+    protected static class Version
+    {
+        /**
+         * Constructor.
+         *
+         * @param identifier identifier of the NetMeshObject
+         * @param sequenceNumber the sequence number of the XprisoMessage that conveyed this version
+         * @param obj the version
+         */
+        public Version(
+                NetMeshObjectIdentifier   identifier,
+                long                      sequenceNumber,
+                ExternalizedNetMeshObject obj )
+        {
+            theIdentifier     = identifier;
+            theSequenceNumber = sequenceNumber;
+            theObject         = obj;
+        }
+
+        /**
+         * Identifier of the NetMeshObject.
+         */
+        protected NetMeshObjectIdentifier theIdentifier;
+
+        /**
+         * The sequence number of the XprisoMessage that conveyed this version.
+         */
+        protected long theSequenceNumber;
+
+        /**
+         * The version.
+         */
+        protected ExternalizedNetMeshObject theObject;
+    }
+
+    /**
+     * The versions of one ExternalizedNetMeshObject that were sent.
+     */
+    protected static class SentVersions
+    {
+        /**
+         * The most recent version acknowledged by the partner, if any.
+         */
+        protected Version theBase;
+
+        /**
+         * The versions sent after the base, in sequence.
+         */
+        protected List<Version> thePending = new ArrayList<Version>();
+    }
+}
@@ -0,0 +1,188 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.net.xpriso.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.meshbase.net.xpriso.xml.XprisoMessageXmlEncoder;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+
+/**
+ * <p>Encodes and decodes the XprisoMessages of one connection in the representation agreed
+ *    upon by both ends. Given the encoding ids the partner supports, {@link #negotiate} picks
+ *    the one to use. The XML representation is the fallback that
+ *    all ends support.</p>
+ * <p>Regardless of the agreed representation, incoming XprisoMessages in the XML representation
+ *    are always accepted, so an end can fall back to XML at any time.</p>
+ */
+public class XprisoMessageCodec
+{
+    /**
+     * Factory method.
+     *
+     * @param encodingId the encoding id, one of SUPPORTED_ENCODING_IDS
+     * @return the created XprisoMessageCodec
+     * @throws IllegalArgumentException thrown if the encoding id is not supported
+     */
+    public static XprisoMessageCodec create(
+            String encodingId )
+    {
+        if( !XML_ENCODING_ID.equals( encodingId ) && !BINARY_ENCODING_ID.equals( encodingId )) {
+            throw new IllegalArgumentException( "Unsupported encoding: " + encodingId );
+        }
+        return new XprisoMessageCodec( encodingId );
+    }
+
+    /**
+     * Factory method for the most preferred of our encodings that the partner supports as well.
+     *
+     * @param offered the encoding ids supported by the partner, or null
+     * @return the created XprisoMessageCodec
+     */
+    public static XprisoMessageCodec negotiate(
+            String [] offered )
+    {
+        if( offered != null ) {
+            for( String supported : SUPPORTED_ENCODING_IDS ) {
+                for( String current : offered ) {
+                    if( supported.equals( current )) {
+                        return new XprisoMessageCodec( supported );
+                    }
+                }
+            }
+        }
+        return new XprisoMessageCodec( XML_ENCODING_ID );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param encodingId the encoding id
+     */
+    protected XprisoMessageCodec(
+            String encodingId )
+    {
+        theEncodingId    = encodingId;
+        theXmlEncoder    = new XprisoMessageXmlEncoder();
+        theBinaryEncoder = new XprisoMessageBinaryEncoder();
+    }
+
+    /**
+     * Obtain the agreed-upon encoding id.
+     *
+     * @return the encoding id
+     */
+    public String getEncodingId()
+    {
+        return theEncodingId;
+    }
+
+    /**
+     * Obtain the XprisoMessageBinaryEncoder that keeps the state of this connection.
+     *
+     * @return the XprisoMessageBinaryEncoder
+     */
+    public XprisoMessageBinaryEncoder getBinaryEncoder()
+    {
+        return theBinaryEncoder;
+    }
+
+    /**
+     * Serialize an XprisoMessage in the agreed-upon representation.
+     *
+     * @param msg the XprisoMessage
+     * @return the serialized XprisoMessage
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    public byte [] encodeXprisoMessage(
+            XprisoMessage msg )
+        throws
+            EncodingException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if( BINARY_ENCODING_ID.equals( theEncodingId )) {
+                theBinaryEncoder.encodeXprisoMessage( msg, out );
+            } else {
+                theXmlEncoder.encodeXprisoMessage( msg, out );
+            }
+        } catch( IOException ex ) {
+            throw new EncodingException( ex );
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Deserialize an XprisoMessage, in either representation.
+     *
+     * @param data the serialized XprisoMessage
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the XprisoMessage
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    public XprisoMessage decodeXprisoMessage(
+            byte []     data,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        try {
+            if( XprisoMessageBinaryEncoder.isBinaryEncoded( data )) {
+                return theBinaryEncoder.decodeXprisoMessage( new ByteArrayInputStream( data ), mb );
+            } else {
+                return theXmlEncoder.decodeXprisoMessage( new ByteArrayInputStream( data ), mb );
+            }
+        } catch( IOException ex ) {
+            throw new DecodingException( ex );
+        }
+    }
+
+    /**
+     * The agreed-upon encoding id.
+     */
+    protected String theEncodingId;
+
+    /**
+     * Encodes and decodes the XML representation.
+     */
+    protected XprisoMessageXmlEncoder theXmlEncoder;
+
+    /**
+     * Encodes and decodes the binary representation, and keeps the state of the connection.
+     */
+    protected XprisoMessageBinaryEncoder theBinaryEncoder;
+
+    /**
+     * Encoding id of the XML representation.
+     */
+    public static final String XML_ENCODING_ID = XprisoMessageXmlEncoder.class.getName();
+
+    /**
+     * Encoding id of the binary representation.
+     */
+    public static final String BINARY_ENCODING_ID = XprisoMessageBinaryEncoder.class.getName();
+
+    /**
+     * The supported encoding ids, in order of preference.
+     */
+    public static final String [] SUPPORTED_ENCODING_IDS = {
+            BINARY_ENCODING_ID,
+            XML_ENCODING_ID
+    };
+}
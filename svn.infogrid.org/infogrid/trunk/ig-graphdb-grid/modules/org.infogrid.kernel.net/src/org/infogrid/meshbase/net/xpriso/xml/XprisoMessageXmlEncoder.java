@@ -325,14 +325,39 @@ public class XprisoMessageXmlEncoder
      * @throws DecodingException thrown if a problem occurred during decoding
      * @throws IOException thrown if an I/O error occurred
      */
-    public synchronized XprisoMessage decodeXprisoMessage(
+    public XprisoMessage decodeXprisoMessage(
             InputStream                                    contentAsStream,
             NetMeshBase                                    mb )
         throws
             DecodingException,
             IOException
     {
-        // note the synchronized statement
+        XprisoMessageXmlEncoder decoder = (XprisoMessageXmlEncoder) obtainDecoder();
+        try {
+            return decoder.internalDecodeXprisoMessage( contentAsStream, mb );
+
+        } finally {
+            releaseDecoder( decoder );
+        }
+    }
+
+    /**
+     * Deserialize a XprisoMessage from a stream, using this instance as the parse handler.
+     * This must only be invoked on an instance obtained through {@link #obtainDecoder}.
+     * 
+     * @param contentAsStream the byte [] stream in which the ExternalizedProxy is encoded
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return return the just-instantiated XprisoMessage
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected XprisoMessage internalDecodeXprisoMessage(
+            InputStream contentAsStream,
+            NetMeshBase mb )
+        throws
+            DecodingException,
+            IOException
+    {
         theMeshBase = mb;
         
         try {
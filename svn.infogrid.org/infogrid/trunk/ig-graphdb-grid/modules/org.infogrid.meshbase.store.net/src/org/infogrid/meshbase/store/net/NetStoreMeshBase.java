@@ -37,6 +37,7 @@ import org.infogrid.meshbase.net.proxy.ProxyFactory;
 import org.infogrid.meshbase.net.proxy.ProxyMessageEndpointFactory;
 import org.infogrid.meshbase.net.proxy.ProxyPolicyFactory;
 import org.infogrid.meshbase.net.security.NetAccessManager;
+import org.infogrid.meshbase.store.GroupCommitter;
 import org.infogrid.meshbase.store.StoreMeshBase;
 import org.infogrid.meshbase.store.StoreMeshBaseSwappingHashMap;
 import org.infogrid.meshbase.transaction.Transaction;
@@ -323,6 +324,46 @@ public class NetStoreMeshBase
         return (IterableStoreBackedSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache;
     }
 
+    /**
+     * Set the GroupCommitter through which the changes made by committed Transactions are
+     * written to the Store. If null, changes are written when each Transaction is committed.
+     *
+     * @param newValue the new GroupCommitter, or null
+     */
+    @SuppressWarnings(value={"unchecked"})
+    public void setGroupCommitter(
+            GroupCommitter newValue )
+    {
+        ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).setGroupCommitter( newValue );
+    }
+
+    /**
+     * Obtain the GroupCommitter through which the changes made by committed Transactions are
+     * written to the Store, if any.
+     *
+     * @return the GroupCommitter, or null
+     */
+    @SuppressWarnings(value={"unchecked"})
+    public GroupCommitter getGroupCommitter()
+    {
+        return ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).getGroupCommitter();
+    }
+
+    /**
+     * Write all changes that have been committed, but not written to the Store yet.
+     *
+     * @param isPermanent if true, this MeshBase will go away permanmently; if false, it may come alive again some time later
+     */
+    @Override
+    @SuppressWarnings(value={"unchecked"})
+    protected void internalDie(
+            boolean isPermanent )
+    {
+        super.internalDie( isPermanent );
+
+        ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).flushPendingWrites();
+    }
+
     /**
      * Update the cache when Transactions are committed.
      *
@@ -345,14 +386,11 @@ public class NetStoreMeshBase
         }
         theReplicationChangedObjectsToBeStored.clear();
         
-        for( Map.Entry<MeshObjectIdentifier,MeshObject> current : toWrite.entrySet() ) {
-            if( current.getValue() != null ) {
-                map.saveValueToStorageUponCommit( current.getKey(), current.getValue() );
-            } else {
-                map.removeValueFromStorageUponCommit( current.getKey() );
-            }
+        map.saveValuesToStorageUponCommit( toWrite, tx );
+        if( !hasActiveTransactions() ) {
+            // other, concurrent Transactions may still have removed values pending
+            map.transactionDone();
         }
-        map.transactionDone();
     }
 
     /**
@@ -34,6 +34,7 @@ public class AllTests
         TestSpec [] tests = {
 
                 new TestSpec( XprisoMessageSerializationTest1.class ),
+                new TestSpec( XprisoMessageSerializationTest2.class ),
                 new TestSpec( XprisoTest1.class ),
                 new TestSpec( XprisoTest1a.class ),
                 new TestSpec( XprisoTest1b.class ),
@@ -57,7 +58,9 @@ public class AllTests
                 new TestSpec( XprisoTest13.class ),
                 new TestSpec( XprisoTest14.class ),
                 new TestSpec( XprisoTest15.class ),
-                new TestSpec( XprisoTest16.class )
+                new TestSpec( XprisoTest16.class ),
+                new TestSpec( XprisoTest17.class ),
+                new TestSpec( XprisoTest18.class )
         };
 
         runTests( tests );
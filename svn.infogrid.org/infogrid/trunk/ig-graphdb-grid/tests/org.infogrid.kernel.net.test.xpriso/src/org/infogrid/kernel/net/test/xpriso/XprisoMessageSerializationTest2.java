@@ -0,0 +1,375 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.net.test.xpriso;
+
+import org.infogrid.mesh.net.NetMeshObjectIdentifier;
+import org.infogrid.mesh.net.externalized.ExternalizedNetMeshObject;
+import org.infogrid.mesh.net.externalized.SimpleExternalizedNetMeshObject;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.xpriso.ParserFriendlyXprisoMessage;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.meshbase.net.xpriso.binary.XprisoMessageCodec;
+import org.infogrid.model.primitives.BlobDataType;
+import org.infogrid.model.primitives.BlobValue;
+import org.infogrid.model.primitives.MeshTypeIdentifier;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests XprisoMessage serialization in the binary representation, including the conveying
+ * of ExternalizedNetMeshObjects as differences, and the negotiation of the representation.
+ */
+public class XprisoMessageSerializationTest2
+        extends
+            XprisoMessageSerializationTest1
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Override
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Round trip" );
+
+        theSender   = XprisoMessageCodec.create( XprisoMessageCodec.BINARY_ENCODING_ID );
+        theReceiver = XprisoMessageCodec.create( XprisoMessageCodec.BINARY_ENCODING_ID );
+
+        super.run();
+
+        //
+
+        log.info( "Differences" );
+
+        XprisoMessageCodec a = XprisoMessageCodec.create( XprisoMessageCodec.BINARY_ENCODING_ID );
+        XprisoMessageCodec b = XprisoMessageCodec.create( XprisoMessageCodec.BINARY_ENCODING_ID );
+
+        ExternalizedNetMeshObject v1 = createBlobObject( "one", new NetMeshObjectIdentifier[0] );
+
+        byte [] data1 = a.encodeXprisoMessage( createMessage( v1 ));
+        checkCondition( data1.length > BLOB_SIZE, "Blob not sent: " + data1.length );
+        checkConveyed( b.decodeXprisoMessage( data1, theNetMeshBase ), v1 );
+
+        // b acknowledges v1
+        a.decodeXprisoMessage( b.encodeXprisoMessage( ParserFriendlyXprisoMessage.create( nmbid1, nmbid0 )), theNetMeshBase );
+        checkEquals( a.getBinaryEncoder().getLastAcknowledgedSequenceNumber(), 0L, "Not acknowledged" );
+
+        ExternalizedNetMeshObject v2 = createBlobObject( "two", new NetMeshObjectIdentifier[0] );
+
+        byte [] data2 = a.encodeXprisoMessage( createMessage( v2 ));
+        checkCondition( data2.length < BLOB_SIZE / 10, "Difference too large: " + data2.length );
+        checkCondition( !contains( data2, theBlobTypeId.toExternalForm().getBytes( "UTF-8" )), "MeshTypeIdentifier sent again" );
+        checkConveyed( b.decodeXprisoMessage( data2, theNetMeshBase ), v2 );
+
+        // v2 is not acknowledged, so v3 is still sent as difference to v1
+        ExternalizedNetMeshObject v3 = createBlobObject( "three", new NetMeshObjectIdentifier[] { theNeighbor } );
+
+        byte [] data3 = a.encodeXprisoMessage( createMessage( v3 ));
+        checkCondition( data3.length < BLOB_SIZE / 10, "Difference too large: " + data3.length );
+        checkConveyed( b.decodeXprisoMessage( data3, theNetMeshBase ), v3 );
+
+        // b acknowledges v2 and v3
+        a.decodeXprisoMessage( b.encodeXprisoMessage( ParserFriendlyXprisoMessage.create( nmbid1, nmbid0 )), theNetMeshBase );
+        checkEquals( a.getBinaryEncoder().getLastAcknowledgedSequenceNumber(), 2L, "Not acknowledged" );
+
+        ExternalizedNetMeshObject v4 = createBlobObject( null, new NetMeshObjectIdentifier[0] );
+
+        byte [] data4 = a.encodeXprisoMessage( createMessage( v4 ));
+        checkCondition( data4.length < BLOB_SIZE / 10, "Difference too large: " + data4.length );
+        checkConveyed( b.decodeXprisoMessage( data4, theNetMeshBase ), v4 );
+
+        log.info( "Sizes: " + data1.length + ", " + data2.length + ", " + data3.length + ", " + data4.length );
+
+        //
+
+        log.info( "Gap" );
+
+        XprisoMessageCodec c = XprisoMessageCodec.create( XprisoMessageCodec.BINARY_ENCODING_ID );
+        XprisoMessageCodec d = XprisoMessageCodec.create( XprisoMessageCodec.BINARY_ENCODING_ID );
+
+        c.encodeXprisoMessage( createMessage( v1 ));
+        byte [] lost = c.encodeXprisoMessage( createMessage( v2 ));
+        try {
+            d.decodeXprisoMessage( lost, theNetMeshBase );
+            reportError( "Gap not detected" );
+        } catch( DecodingException ex ) {
+            // expected
+        }
+
+        //
+
+        log.info( "Negotiation" );
+
+        checkEquals(
+                XprisoMessageCodec.negotiate( new String[] { XprisoMessageCodec.XML_ENCODING_ID, XprisoMessageCodec.BINARY_ENCODING_ID } ).getEncodingId(),
+                XprisoMessageCodec.BINARY_ENCODING_ID,
+                "Binary not preferred" );
+        checkEquals(
+                XprisoMessageCodec.negotiate( new String[] { XprisoMessageCodec.XML_ENCODING_ID } ).getEncodingId(),
+                XprisoMessageCodec.XML_ENCODING_ID,
+                "XML not chosen" );
+        checkEquals(
+                XprisoMessageCodec.negotiate( new String[] { "unknown" } ).getEncodingId(),
+                XprisoMessageCodec.XML_ENCODING_ID,
+                "No fallback to XML" );
+
+        XprisoMessageCodec xml     = XprisoMessageCodec.negotiate( null );
+        XprisoMessage      msg     = constructTestMessages()[2];
+        XprisoMessage      fromXml = XprisoMessageCodec.create( XprisoMessageCodec.BINARY_ENCODING_ID ).decodeXprisoMessage(
+                xml.encodeXprisoMessage( msg ),
+                theNetMeshBase );
+
+        checkEquals( fromXml, msg, "XML not accepted by binary codec" );
+    }
+
+    /**
+     * Run a single test.
+     *
+     * @param index the index of the test
+     * @param message the XprisoMessage to test
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Override
+    protected void runOne(
+            int           index,
+            XprisoMessage message )
+        throws
+            Exception
+    {
+        log.info( "Now running test " + index );
+
+        byte [] data = theSender.encodeXprisoMessage( message );
+        byte [] xml  = XprisoMessageCodec.create( XprisoMessageCodec.XML_ENCODING_ID ).encodeXprisoMessage( message );
+
+        checkCondition( data.length < xml.length, "Binary not smaller: " + data.length + " vs. " + xml.length );
+
+        XprisoMessage recovered = theReceiver.decodeXprisoMessage( data, theNetMeshBase );
+
+        checkEquals( message, recovered, "Recovered XprisoMessage not the same" );
+    }
+
+    /**
+     * Create a version of the test ExternalizedNetMeshObject with a large BlobValue.
+     *
+     * @param text the value of the String property, or null if it does not have one
+     * @param neighbors the neighbors
+     * @return the ExternalizedNetMeshObject
+     */
+    protected ExternalizedNetMeshObject createBlobObject(
+            String                     text,
+            NetMeshObjectIdentifier [] neighbors )
+    {
+        MeshTypeIdentifier [] propertyTypes;
+        PropertyValue []      propertyValues;
+        if( text != null ) {
+            propertyTypes  = new MeshTypeIdentifier[] { theBlobPropertyTypeId, theStringPropertyTypeId };
+            propertyValues = new PropertyValue[]      { theBlob, StringValue.create( text ) };
+        } else {
+            propertyTypes  = new MeshTypeIdentifier[] { theBlobPropertyTypeId };
+            propertyValues = new PropertyValue[]      { theBlob };
+        }
+        MeshTypeIdentifier [][]    roleTypes    = new MeshTypeIdentifier[ neighbors.length ][];
+        NetMeshBaseIdentifier [][] roleProxies  = new NetMeshBaseIdentifier[ neighbors.length ][];
+        for( int i=0 ; i<neighbors.length ; ++i ) {
+            roleTypes[i]   = new MeshTypeIdentifier[] { theRoleTypeId };
+            roleProxies[i] = new NetMeshBaseIdentifier[] { nmbid1 };
+        }
+
+        return SimpleExternalizedNetMeshObject.create(
+                theBlobObjectId,
+                new MeshTypeIdentifier[] { theBlobTypeId },
+                1L,
+                2L,
+                3L,
+                -1L,
+                propertyTypes,
+                propertyValues,
+                neighbors,
+                roleTypes,
+                new NetMeshObjectIdentifier[0],
+                false,
+                false,
+                new NetMeshBaseIdentifier[] { nmbid1 },
+                0,
+                -1,
+                roleProxies );
+    }
+
+    /**
+     * Create an XprisoMessage that conveys an ExternalizedNetMeshObject.
+     *
+     * @param obj the ExternalizedNetMeshObject
+     * @return the XprisoMessage
+     */
+    protected XprisoMessage createMessage(
+            ExternalizedNetMeshObject obj )
+    {
+        ParserFriendlyXprisoMessage ret = ParserFriendlyXprisoMessage.create( nmbid0, nmbid1 );
+        ret.addConveyedMeshObject( obj );
+        return ret;
+    }
+
+    /**
+     * Check that a received XprisoMessage conveys the expected ExternalizedNetMeshObject.
+     *
+     * @param msg the received XprisoMessage
+     * @param expected the expected ExternalizedNetMeshObject
+     */
+    protected void checkConveyed(
+            XprisoMessage             msg,
+            ExternalizedNetMeshObject expected )
+    {
+        ExternalizedNetMeshObject [] conveyed = msg.getConveyedMeshObjects();
+
+        if( checkEquals( conveyed.length, 1, "Wrong number of conveyed objects" )) {
+            checkEquals( conveyed[0], expected, "Wrong conveyed object" );
+        }
+    }
+
+    /**
+     * Determine whether some data contains a sequence of bytes.
+     *
+     * @param data the data
+     * @param pattern the sequence of bytes
+     * @return true if found
+     */
+    protected static boolean contains(
+            byte [] data,
+            byte [] pattern )
+    {
+        outer:
+        for( int i=0 ; i<=data.length-pattern.length ; ++i ) {
+            for( int j=0 ; j<pattern.length ; ++j ) {
+                if( data[i+j] != pattern[j] ) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        XprisoMessageSerializationTest2 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new XprisoMessageSerializationTest2( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    public XprisoMessageSerializationTest2(
+            String [] args )
+        throws
+            Exception
+    {
+        super( args );
+
+        byte [] blob = new byte[ BLOB_SIZE ];
+        for( int i=0 ; i<blob.length ; ++i ) {
+            blob[i] = (byte) ( i * 31 );
+        }
+        theBlob = BlobDataType.theAnyType.createBlobValue( blob, BlobValue.OCTET_STREAM_MIME_TYPE );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( XprisoMessageSerializationTest2.class );
+
+    /**
+     * Size of the BlobValue.
+     */
+    protected static final int BLOB_SIZE = 20000;
+
+    /**
+     * Encodes the round-trip XprisoMessages.
+     */
+    protected XprisoMessageCodec theSender;
+
+    /**
+     * Decodes the round-trip XprisoMessages.
+     */
+    protected XprisoMessageCodec theReceiver;
+
+    /**
+     * The large BlobValue.
+     */
+    protected BlobValue theBlob;
+
+    /**
+     * Identifier of the NetMeshObject with the large BlobValue.
+     */
+    protected NetMeshObjectIdentifier theBlobObjectId = theNetMeshObjectIdentifierFactory.fromExternalForm( "#blob" );
+
+    /**
+     * Identifier of its neighbor.
+     */
+    protected NetMeshObjectIdentifier theNeighbor = theNetMeshObjectIdentifierFactory.fromExternalForm( "#neighbor" );
+
+    /**
+     * Identifier of its EntityType.
+     */
+    protected MeshTypeIdentifier theBlobTypeId = theMeshTypeIdentifierFactory.fromExternalForm( "org.infogrid.model.Test/BlobHolder" );
+
+    /**
+     * Identifier of the PropertyType holding the BlobValue.
+     */
+    protected MeshTypeIdentifier theBlobPropertyTypeId = theMeshTypeIdentifierFactory.fromExternalForm( "org.infogrid.model.Test/BlobHolder_Blob" );
+
+    /**
+     * Identifier of the PropertyType holding the StringValue.
+     */
+    protected MeshTypeIdentifier theStringPropertyTypeId = theMeshTypeIdentifierFactory.fromExternalForm( "org.infogrid.model.Test/BlobHolder_Name" );
+
+    /**
+     * Identifier of the RoleType to the neighbor.
+     */
+    protected MeshTypeIdentifier theRoleTypeId = theMeshTypeIdentifierFactory.fromExternalForm( "org.infogrid.model.Test/BlobHolder_Contains_Thing-S" );
+}
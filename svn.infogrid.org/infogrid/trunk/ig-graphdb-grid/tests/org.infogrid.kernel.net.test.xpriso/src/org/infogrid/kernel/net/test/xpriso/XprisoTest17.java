@@ -0,0 +1,278 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.net.test.xpriso;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.infogrid.mesh.net.NetMeshObject;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.NetMeshBaseLifecycleManager;
+import org.infogrid.meshbase.net.NetMeshObjectAccessSpecification;
+import org.infogrid.meshbase.net.NetMeshObjectIdentifierFactory;
+import org.infogrid.meshbase.net.a.AccessLocallyFuture;
+import org.infogrid.meshbase.net.a.AccessLocallyListener;
+import org.infogrid.meshbase.net.m.NetMMeshBase;
+import org.infogrid.meshbase.net.proxy.m.MPingPongNetMessageEndpointFactory;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that one Thread can have many asynchronous accessLocally operations outstanding,
+ * and that they are faster than the same number of synchronous ones.
+ */
+public class XprisoTest17
+        extends
+            AbstractXprisoTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Setting up entities" );
+
+        Transaction tx = mb1.createTransactionAsap();
+
+        NetMeshBaseLifecycleManager    life1 = mb1.getMeshBaseLifecycleManager();
+        NetMeshObjectIdentifierFactory idf1  = mb1.getMeshObjectIdentifierFactory();
+
+        NetMeshObject [] async_mb1 = new NetMeshObject[ N_OBJECTS ];
+        NetMeshObject [] sync_mb1  = new NetMeshObject[ N_OBJECTS ];
+        for( int i=0 ; i<N_OBJECTS ; ++i ) {
+            async_mb1[i] = life1.createMeshObject( idf1.fromExternalForm( "#async" + i ));
+            sync_mb1[i]  = life1.createMeshObject( idf1.fromExternalForm( "#sync" + i ));
+        }
+
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Accessing asynchronously" );
+
+        Listener listener = new Listener();
+
+        long asyncStart = System.currentTimeMillis();
+
+        AccessLocallyFuture [] futures = new AccessLocallyFuture[ N_OBJECTS ];
+        for( int i=0 ; i<N_OBJECTS ; ++i ) {
+            futures[i] = mb2.accessLocallyAsync(
+                    new NetMeshObjectAccessSpecification[] {
+                            mb2.getNetMeshObjectAccessSpecificationFactory().obtain( mb1.getIdentifier(), async_mb1[i].getIdentifier() )
+                    },
+                    60000L, // long for debugging
+                    listener );
+        }
+        AccessLocallyFuture missing = mb2.accessLocallyAsync(
+                new NetMeshObjectAccessSpecification[] {
+                        mb2.getNetMeshObjectAccessSpecificationFactory().obtain( mb1.getIdentifier(), idf1.fromExternalForm( "#nothere" ))
+                },
+                60000L,
+                null );
+
+        for( int i=0 ; i<N_OBJECTS ; ++i ) {
+            NetMeshObject [] found = futures[i].get( 60000L, TimeUnit.MILLISECONDS );
+
+            checkEquals( found.length, 1, "Wrong number of results" );
+            checkObject( found[0], "No replica for " + i );
+            if( found[0] != null ) {
+                checkEquals( found[0].getIdentifier(), async_mb1[i].getIdentifier(), "Wrong replica" );
+            }
+        }
+        long asyncDuration = System.currentTimeMillis() - asyncStart;
+
+        NetMeshObject [] notFound = missing.get( 60000L, TimeUnit.MILLISECONDS );
+        checkEquals( notFound.length, 1, "Wrong number of results for missing object" );
+        checkCondition( notFound[0] == null, "Found replica of missing object" );
+
+        for( int i=0 ; i<50 && listener.getCount() < N_OBJECTS ; ++i ) {
+            Thread.sleep( 20L ); // the listener may be notified just after get() returns
+        }
+        checkEquals( listener.getCount(), N_OBJECTS, "Listener not invoked for each operation" );
+        checkEquals( mb2.getAccessLocallySynchronizer().getNumberOfOpenDetachedQueries(), 0, "Queries still open" );
+
+        //
+
+        log.info( "Accessing synchronously" );
+
+        long syncStart = System.currentTimeMillis();
+
+        for( int i=0 ; i<N_OBJECTS ; ++i ) {
+            NetMeshObject found = mb2.accessLocally( mb1.getIdentifier(), sync_mb1[i].getIdentifier(), 60000L );
+            checkObject( found, "No replica for " + i );
+        }
+        long syncDuration = System.currentTimeMillis() - syncStart;
+
+        log.info( "Replicated " + N_OBJECTS + " NetMeshObjects asynchronously in " + asyncDuration + " msec, synchronously in " + syncDuration + " msec" );
+
+        checkCondition( asyncDuration < syncDuration, "Asynchronous not faster: " + asyncDuration + " vs. " + syncDuration );
+
+        //
+
+        log.info( "Cancelling" );
+
+        AccessLocallyFuture cancelled = mb2.accessLocallyAsync(
+                new NetMeshObjectAccessSpecification[] {
+                        mb2.getNetMeshObjectAccessSpecificationFactory().obtain( mb1.getIdentifier(), idf1.fromExternalForm( "#nothere2" ))
+                },
+                60000L,
+                null );
+        cancelled.cancel( false );
+
+        checkCondition( cancelled.isCancelled(), "Not cancelled" );
+        checkCondition( cancelled.isDone(), "Not done after cancel" );
+        checkEquals( mb2.getAccessLocallySynchronizer().getNumberOfOpenDetachedQueries(), 0, "Queries still open after cancel" );
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        XprisoTest17 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new XprisoTest17( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    public XprisoTest17(
+            String [] args )
+        throws
+            Exception
+    {
+        super( XprisoTest17.class );
+
+        MPingPongNetMessageEndpointFactory endpointFactory = MPingPongNetMessageEndpointFactory.create( exec );
+        endpointFactory.setNameServer( theNameServer );
+
+        mb1 = NetMMeshBase.create( net1, theModelBase, null, endpointFactory, rootContext );
+        mb2 = NetMMeshBase.create( net2, theModelBase, null, endpointFactory, rootContext );
+
+        theNameServer.put( mb1.getIdentifier(), mb1 );
+        theNameServer.put( mb2.getIdentifier(), mb2 );
+    }
+
+    /**
+     * Clean up after the test.
+     */
+    @Override
+    public void cleanup()
+    {
+        mb1.die();
+        mb2.die();
+
+        exec.shutdown();
+    }
+
+    /**
+     * The number of NetMeshObjects to replicate each way.
+     */
+    protected static final int N_OBJECTS = 20;
+
+    /**
+     * The first NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net1 = theMeshBaseIdentifierFactory.fromExternalForm( "test://one.local" );
+
+    /**
+     * The second NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net2 = theMeshBaseIdentifierFactory.fromExternalForm( "test://two.local" );
+
+    /**
+     * The first NetMeshBase.
+     */
+    protected NetMeshBase mb1;
+
+    /**
+     * The second NetMeshBase.
+     */
+    protected NetMMeshBase mb2;
+
+    /**
+     * Our ThreadPool.
+     */
+    protected ScheduledExecutorService exec = createThreadPool( 1 );
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( XprisoTest17.class );
+
+    /**
+     * Counts the completed operations.
+     */
+    static class Listener
+            implements
+                AccessLocallyListener
+    {
+        /**
+         * The accessLocally operation has completed.
+         *
+         * @param future the AccessLocallyFuture of the operation
+         */
+        public synchronized void accessLocallyComplete(
+                AccessLocallyFuture future )
+        {
+            ++theCount;
+        }
+
+        /**
+         * Obtain the number of completed operations.
+         *
+         * @return the number
+         */
+        public synchronized int getCount()
+        {
+            return theCount;
+        }
+
+        /**
+         * The number of completed operations.
+         */
+        protected int theCount;
+    }
+}
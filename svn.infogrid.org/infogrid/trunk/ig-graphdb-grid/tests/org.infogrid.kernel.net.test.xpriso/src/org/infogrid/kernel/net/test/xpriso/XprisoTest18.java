@@ -0,0 +1,277 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.net.test.xpriso;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.mesh.net.NetMeshObject;
+import org.infogrid.mesh.net.NetMeshObjectIdentifier;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.NetMeshBaseLifecycleManager;
+import org.infogrid.meshbase.net.NetMeshObjectAccessSpecification;
+import org.infogrid.meshbase.net.NetMeshObjectIdentifierFactory;
+import org.infogrid.meshbase.net.a.ReplicaRequestCoalescer;
+import org.infogrid.meshbase.net.m.NetMMeshBase;
+import org.infogrid.meshbase.net.proxy.m.MPingPongNetMessageEndpointFactory;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that concurrent accessLocally calls for the same NetMeshObjects share one request.
+ */
+public class XprisoTest18
+        extends
+            AbstractXprisoTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Setting up entities" );
+
+        Transaction tx = mb1.createTransactionAsap();
+
+        NetMeshBaseLifecycleManager    life1 = mb1.getMeshBaseLifecycleManager();
+        NetMeshObjectIdentifierFactory idf1  = mb1.getMeshObjectIdentifierFactory();
+
+        NetMeshObjectAccessSpecification [] paths = new NetMeshObjectAccessSpecification[ N_OBJECTS + 1 ];
+        for( int i=0 ; i<N_OBJECTS ; ++i ) {
+            NetMeshObject obj = life1.createMeshObject( idf1.fromExternalForm( "#obj" + i ));
+            paths[i] = mb2.getNetMeshObjectAccessSpecificationFactory().obtain( mb1.getIdentifier(), obj.getIdentifier() );
+        }
+        NetMeshObjectIdentifier missing = idf1.fromExternalForm( "#nothere" );
+        paths[N_OBJECTS] = mb2.getNetMeshObjectAccessSpecificationFactory().obtain( mb1.getIdentifier(), missing );
+
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Accessing the same NetMeshObjects from " + N_THREADS + " Threads at the same time" );
+
+        ReplicaRequestCoalescer coalescer = mb2.getReplicaRequestCoalescer();
+
+        CountDownLatch startGate = new CountDownLatch( 1 );
+        Requester []   threads   = new Requester[ N_THREADS ];
+        for( int i=0 ; i<N_THREADS ; ++i ) {
+            threads[i] = new Requester( paths, startGate );
+            threads[i].start();
+        }
+        startGate.countDown();
+
+        for( int i=0 ; i<N_THREADS ; ++i ) {
+            threads[i].join( 60000L );
+
+            checkCondition( threads[i].theException == null, "Thread " + i + " threw " + threads[i].theException );
+            checkObject( threads[i].theResult, "Thread " + i + " has no result" );
+            if( threads[i].theResult == null ) {
+                continue;
+            }
+            for( int j=0 ; j<N_OBJECTS ; ++j ) {
+                checkObject( threads[i].theResult[j], "Thread " + i + " did not obtain replica " + j );
+            }
+            checkCondition( threads[i].theResult[N_OBJECTS] == null, "Thread " + i + " found missing object" );
+        }
+
+        log.info( "Issued " + coalescer.getIssuedRequests() + " requests, coalesced " + coalescer.getCoalescedRequests() );
+
+        checkEquals( coalescer.getIssuedRequests() + coalescer.getCoalescedRequests(), (long) N_THREADS * paths.length, "Wrong number of requests" );
+        checkCondition( coalescer.getCoalescedRequests() > 0, "No requests coalesced" );
+        checkEquals( coalescer.getNumberOfInFlightRequests(), 0, "Requests still in flight" );
+        checkEquals( mb2.getAccessLocallySynchronizer().getNumberOfOpenDetachedQueries(), 0, "Queries still open" );
+
+        //
+
+        log.info( "Accessing again, now locally" );
+
+        long issued = coalescer.getIssuedRequests();
+
+        NetMeshObject [] again = mb2.accessLocally( paths );
+        for( int j=0 ; j<N_OBJECTS ; ++j ) {
+            checkEquals( again[j], threads[0].theResult[j], "Different replica " + j );
+        }
+        checkEquals( coalescer.getIssuedRequests(), issued + 1, "Only the missing object should have been requested" );
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        XprisoTest18 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new XprisoTest18( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    public XprisoTest18(
+            String [] args )
+        throws
+            Exception
+    {
+        super( XprisoTest18.class );
+
+        MPingPongNetMessageEndpointFactory endpointFactory = MPingPongNetMessageEndpointFactory.create( exec );
+        endpointFactory.setNameServer( theNameServer );
+
+        mb1 = NetMMeshBase.create( net1, theModelBase, null, endpointFactory, rootContext );
+        mb2 = NetMMeshBase.create( net2, theModelBase, null, endpointFactory, rootContext );
+
+        theNameServer.put( mb1.getIdentifier(), mb1 );
+        theNameServer.put( mb2.getIdentifier(), mb2 );
+    }
+
+    /**
+     * Clean up after the test.
+     */
+    @Override
+    public void cleanup()
+    {
+        mb1.die();
+        mb2.die();
+
+        exec.shutdown();
+    }
+
+    /**
+     * The number of NetMeshObjects to access.
+     */
+    protected static final int N_OBJECTS = 5;
+
+    /**
+     * The number of Threads accessing them at the same time.
+     */
+    protected static final int N_THREADS = 8;
+
+    /**
+     * The first NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net1 = theMeshBaseIdentifierFactory.fromExternalForm( "test://one.local" );
+
+    /**
+     * The second NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net2 = theMeshBaseIdentifierFactory.fromExternalForm( "test://two.local" );
+
+    /**
+     * The first NetMeshBase.
+     */
+    protected NetMeshBase mb1;
+
+    /**
+     * The second NetMeshBase.
+     */
+    protected NetMMeshBase mb2;
+
+    /**
+     * Our ThreadPool.
+     */
+    protected ScheduledExecutorService exec = createThreadPool( 1 );
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( XprisoTest18.class );
+
+    /**
+     * Accesses the NetMeshObjects once the start gate opens.
+     */
+    class Requester
+            extends
+                Thread
+    {
+        /**
+         * Constructor.
+         *
+         * @param paths the NetMeshObjectAccessSpecifications to access
+         * @param startGate opens when all Requesters have been started
+         */
+        public Requester(
+                NetMeshObjectAccessSpecification [] paths,
+                CountDownLatch                      startGate )
+        {
+            thePaths     = paths;
+            theStartGate = startGate;
+        }
+
+        /**
+         * Run.
+         */
+        @Override
+        public void run()
+        {
+            try {
+                theStartGate.await();
+
+                theResult = mb2.accessLocally( thePaths, 60000L );
+
+            } catch( Throwable t ) {
+                theException = t;
+            }
+        }
+
+        /**
+         * The NetMeshObjectAccessSpecifications to access.
+         */
+        protected NetMeshObjectAccessSpecification [] thePaths;
+
+        /**
+         * Opens when all Requesters have been started.
+         */
+        protected CountDownLatch theStartGate;
+
+        /**
+         * The result, if any.
+         */
+        protected volatile NetMeshObject [] theResult;
+
+        /**
+         * The exception thrown, if any.
+         */
+        protected volatile Throwable theException;
+    }
+}
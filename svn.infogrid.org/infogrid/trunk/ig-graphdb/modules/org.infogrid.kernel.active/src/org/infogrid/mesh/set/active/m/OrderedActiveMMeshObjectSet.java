@@ -133,14 +133,7 @@ public class OrderedActiveMMeshObjectSet
     public final int findIndexOf(
             MeshObject candidate )
     {
-        MeshObject [] meshObjects = getMeshObjects();
-
-        for( int i=0 ; i<meshObjects.length ; ++i ) {
-            if( meshObjects[i] == candidate ) {
-                return i;
-            }
-        }
-        return -1;
+        return findPositionIn( getMeshObjects(), candidate );
     }
 
     /**
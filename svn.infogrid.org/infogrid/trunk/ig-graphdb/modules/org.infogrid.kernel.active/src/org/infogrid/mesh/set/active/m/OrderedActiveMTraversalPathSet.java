@@ -97,14 +97,7 @@ public class OrderedActiveMTraversalPathSet
     public int findIndexOf(
             TraversalPath candidate )
     {
-        TraversalPath [] paths = getTraversalPaths();
-
-        for( int i=0 ; i<paths.length ; ++i ) {
-            if( paths[i] == candidate ) {
-                return i;
-            }
-        }
-        return -1;
+        return findPositionIn( getTraversalPaths(), candidate );
     }
 
     /**
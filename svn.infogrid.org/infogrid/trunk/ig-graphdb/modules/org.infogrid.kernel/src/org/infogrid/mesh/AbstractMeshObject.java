@@ -22,9 +22,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
 import org.infogrid.mesh.security.PropertyReadOnlyException;
 import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.meshbase.AbstractMeshBase;
 import org.infogrid.meshbase.MeshBase;
 import org.infogrid.meshbase.security.AccessManager;
 import org.infogrid.meshbase.transaction.MeshObjectBecameDeadStateEvent;
@@ -38,10 +38,10 @@ import org.infogrid.meshbase.transaction.MeshObjectTypeRemovedEvent;
 import org.infogrid.meshbase.transaction.NotWithinTransactionBoundariesException;
 import org.infogrid.meshbase.transaction.Transaction;
 import org.infogrid.meshbase.transaction.TransactionException;
-import org.infogrid.model.primitives.AttributableMeshType;
 import org.infogrid.model.primitives.DataType;
 import org.infogrid.model.primitives.EntityType;
 import org.infogrid.model.primitives.MeshTypeIdentifier;
+import org.infogrid.model.primitives.PropertySlotLayout;
 import org.infogrid.model.primitives.PropertyType;
 import org.infogrid.model.primitives.PropertyValue;
 import org.infogrid.model.primitives.Role;
@@ -263,20 +263,10 @@ public abstract class AbstractMeshObject
             throw new NullPointerException( "Null PropertyType" );
         }
 
-        EntityType requiredType = (EntityType) thePropertyType.getAttributableMeshType();
-        boolean    found        = false;
-
         synchronized( this ) {
-            
-            if( theMeshTypes != null ) {
-                for( AttributableMeshType type : theMeshTypes.keySet() ) {
-                    if( type.equalsOrIsSupertype( requiredType )) {
-                        found = true;
-                        break;
-                    }
-                }
-            }
-            if( !found ) {
+
+            int slot = findPropertySlot( thePropertyType );
+            if( slot < 0 ) {
                 throw new IllegalPropertyTypeException( this, thePropertyType );
             }
             
@@ -284,13 +274,7 @@ public abstract class AbstractMeshObject
 
             updateLastRead();
 
-            PropertyValue ret;
-            if( theProperties != null ) {
-                ret = theProperties.get( thePropertyType );
-            } else {
-                ret = null;
-            }
-            return ret;
+            return getPropertyValueInSlot( slot );
         }
     }
 
@@ -318,19 +302,10 @@ public abstract class AbstractMeshObject
         }
 
         synchronized( this ) {
+            int [] slots = new int[ thePropertyTypes.length ];
             for( int i=0 ; i<thePropertyTypes.length ; ++i ) {
-                EntityType requiredType = (EntityType) thePropertyTypes[i].getAttributableMeshType();
-                boolean    found        = false;
-            
-                if( theMeshTypes != null ) {
-                    for( AttributableMeshType type : theMeshTypes.keySet() ) {
-                        if( type.equalsOrIsSupertype( requiredType )) {
-                            found = true;
-                            break;
-                        }
-                    }
-                }
-                if( !found ) {
+                slots[i] = findPropertySlot( thePropertyTypes[i] );
+                if( slots[i] < 0 ) {
                     throw new IllegalPropertyTypeException( this, thePropertyTypes[i] );
                 }
             }
@@ -342,10 +317,8 @@ public abstract class AbstractMeshObject
             updateLastRead();
             
             PropertyValue [] ret = new PropertyValue[ thePropertyTypes.length ];
-            if( theProperties != null ) {
-                for( int i=0 ; i<thePropertyTypes.length ; ++i ) {
-                    ret[i] = theProperties.get( thePropertyTypes[i] );
-                }
+            for( int i=0 ; i<thePropertyTypes.length ; ++i ) {
+                ret[i] = getPropertyValueInSlot( slots[i] );
             }
             return ret;
         }
@@ -487,30 +460,18 @@ public abstract class AbstractMeshObject
             }
         }
 
+        int [] slots = new int[ thePropertyTypes.length ];
         for( int i=0 ; i<thePropertyTypes.length ; ++i ) {
-            EntityType requiredType = (EntityType) thePropertyTypes[i].getAttributableMeshType();
-            boolean    found        = false;
-
-            if( theMeshTypes != null ) {
-                for( AttributableMeshType amt : theMeshTypes.keySet() ) {
-                    if( amt.equalsOrIsSupertype( requiredType )) {
-                        found = true;
-                        break;
-                    }
-                }
-            }
-            if( !found ) {
+            slots[i] = findPropertySlot( thePropertyTypes[i] );
+            if( slots[i] < 0 ) {
                 throw new IllegalPropertyTypeException( this, thePropertyTypes[i] );
             }
         }
 
-        if( theProperties == null ) {
-            theProperties = createProperties();
-        }
         PropertyValue [] oldValues = new PropertyValue[ thePropertyTypes.length ];
 
         for( int i=0 ; i<thePropertyTypes.length ; ++i ) {
-            oldValues[i] = theProperties.put( thePropertyTypes[i], newValues[i] );
+            oldValues[i] = putPropertyValueInSlot( slots[i], newValues[i] );
         }
         updateLastUpdated( timeUpdated, theTimeUpdated );
 
@@ -653,11 +614,11 @@ public abstract class AbstractMeshObject
         checkAlive();
 
         // we cannot look at the properties table, because it may not contain keys for all of them
-        if( theMeshTypes == null || theMeshTypes.isEmpty() ) {
+        if( theMeshTypes == null ) {
             return new PropertyType[0];
         }
         ArrayList<PropertyType> almostRet = new ArrayList<PropertyType>();
-        for( EntityType type : theMeshTypes.keySet() ) {
+        for( EntityType type : theMeshTypes ) {
             PropertyType [] current = type.getAllPropertyTypes();
             for( int i=0 ; i<current.length ; ++i ) {
                 if( !almostRet.contains( current[i] )) {
@@ -838,7 +799,7 @@ public abstract class AbstractMeshObject
             }
         }
 
-        theMeshBase.checkTransaction();
+        checkTransaction();
         //  if we do checkTransaction, it does not seem we need to do synchronized
 
         if( isMaster ) {
@@ -849,10 +810,9 @@ public abstract class AbstractMeshObject
 
         // throw Exception if the new type is already here, or a supertype of an existing one.
         // However, subtypes are allowed but need to be removed.
+        EntityType toRemove = null;
         if( theMeshTypes != null ) {
-            EntityType toRemove = null;
-            Set<EntityType> keySet = theMeshTypes.keySet();
-            for( EntityType already : keySet ) {
+            for( EntityType already : theMeshTypes ) {
                 oldTypes.add( already );
                 for( int i=0 ; i<types.length ; ++i ) {
                     if( !forgiving && already.isSubtypeOfOrEquals( types[i] )) {
@@ -862,25 +822,20 @@ public abstract class AbstractMeshObject
                     }
                 }
             }
-            if( toRemove != null ) {
-                if( theMeshTypes.size() == 1 ) {
-                    theMeshTypes = null;
-                } else {
-                    theMeshTypes.remove( toRemove );
-                }
-            }
         }
-        if( theMeshTypes == null ) {
-            theMeshTypes = createMeshTypes();
+        ArrayList<EntityType> newTypes = new ArrayList<EntityType>( oldTypes );
+        if( toRemove != null ) {
+            newTypes.remove( toRemove );
         }
         boolean doTimeUpdate = false;
         for( int i=0 ; i<types.length ; ++i ) {
-            WeakReference<TypedMeshObjectFacade> already = theMeshTypes.get( types[i] );
-            if( already == null ) { // otherwise we have it already
-                theMeshTypes.put( types[i], null );
+            if( !newTypes.contains( types[i] )) { // otherwise we have it already
+                newTypes.add( types[i] );
             }
             doTimeUpdate = true;
         }
+        setMeshTypes( ArrayHelper.copyIntoNewArray( newTypes, EntityType.class ));
+
         if( doTimeUpdate ) {
             updateLastUpdated();
         }
@@ -888,7 +843,7 @@ public abstract class AbstractMeshObject
         fireTypesAdded(
                 ArrayHelper.copyIntoNewArray( oldTypes, EntityType.class ),
                 types,
-                ArrayHelper.copyIntoNewArray( theMeshTypes.keySet().iterator(), EntityType.class ),
+                ArrayHelper.copyIntoNewArray( newTypes, EntityType.class ),
                 theMeshBase );
 
         for( int i=0 ; i<types.length ; ++i ) {
@@ -995,7 +950,7 @@ public abstract class AbstractMeshObject
         if( types == null || types.length == 0 ) {
             return;
         }
-        theMeshBase.checkTransaction();
+        checkTransaction();
 
         if( isMaster ) {
             checkPermittedUnbless( types );
@@ -1004,9 +959,8 @@ public abstract class AbstractMeshObject
         if( theMeshTypes == null ) {
             throw new EntityNotBlessedException( this, types[0] );
         }
-        Set<EntityType> keySet = theMeshTypes.keySet();
         for( int i=0 ; i<types.length ; ++i ) {
-            if( !keySet.contains( types[i] )) {
+            if( !ArrayHelper.isIn( types[i], theMeshTypes, true )) {
                  throw new EntityNotBlessedException( this, types[i] );
             }
         }
@@ -1031,27 +985,10 @@ public abstract class AbstractMeshObject
                 }
             }
         }
-        for( int i=0 ; i<types.length ; ++i ) {
-            keySet.remove( types[i] );
-        }
+        // this also removes the properties that the remaining types don't have
+        Map<PropertyType,PropertyValue> removedProperties
+                = setMeshTypes( ArrayHelper.removeIfPresent( theMeshTypes, types, true, EntityType.class ));
 
-        // remove unnecessary properties
-        HashMap<PropertyType,PropertyValue> removedProperties = null;
-        if( theProperties != null ) {
-            PropertyType [] remainingProperties = getAllPropertyTypes();
-            removedProperties = new HashMap<PropertyType,PropertyValue>();
-            for( Map.Entry<PropertyType,PropertyValue> current : theProperties.entrySet() ) {
-                if( !ArrayHelper.isIn( current.getKey(), remainingProperties, false )) {
-                    removedProperties.put( current.getKey(), current.getValue() );
-                }
-            }
-            for( PropertyType current : removedProperties.keySet() ) {
-                theProperties.remove( current );
-            }
-            if( theProperties.isEmpty() ) {
-                theProperties = null;
-            }
-        }
         
         updateLastUpdated( timeUpdated, theTimeUpdated );
 
@@ -1075,11 +1012,10 @@ public abstract class AbstractMeshObject
         updateLastRead();
 
         if( theMeshTypes != null ) {
-            Set<EntityType> keySet = theMeshTypes.keySet();
-            EntityType []   ret    = new EntityType[ keySet.size() ];
+            EntityType [] ret = new EntityType[ theMeshTypes.length ];
 
             int index = 0;
-            for( EntityType current : keySet ) {
+            for( EntityType current : theMeshTypes ) {
                 try {
                     checkPermittedBlessedBy( current );
                     ret[ index++ ] = current;
@@ -1131,16 +1067,14 @@ public abstract class AbstractMeshObject
             updateLastRead();
             
             if( theMeshTypes != null ) {
-                Set<EntityType> keySet = theMeshTypes.keySet();
-
                 if( considerSubtypes ) {
-                    for( EntityType actualBlessed : keySet ) {
+                    for( EntityType actualBlessed : theMeshTypes ) {
                         if( actualBlessed.isSubtypeOfOrEquals( type )) {
                             return true;
                         }
                     }
                 } else {
-                    for( EntityType actualBlessed : keySet ) {
+                    for( EntityType actualBlessed : theMeshTypes ) {
                         if( actualBlessed.equals( type )) {
                             return true;
                         }
@@ -1188,12 +1122,12 @@ public abstract class AbstractMeshObject
         }
         // This means theMeshTypes != null
 
-        Set<EntityType> keySet = theMeshTypes.keySet();
+        EntityType [] meshTypes = theMeshTypes;
 
         int        count    = 0;
-        EntityType found [] = new EntityType[ keySet.size() ];
+        EntityType found [] = new EntityType[ meshTypes.length ];
 
-        for( EntityType actualBlessed : keySet ) {
+        for( EntityType actualBlessed : meshTypes ) {
             if( actualBlessed.isSubtypeOfDoesNotEqual( type )) {
                 found[ count++ ] = actualBlessed;
             }
@@ -1254,20 +1188,18 @@ public abstract class AbstractMeshObject
         if( obj == null ) {
             throw new NullPointerException();
         }
-        if( theMeshTypes == null ) {
+        if( theFacades == null ) {
             return null;
         }
 
         updateLastRead();
         
-        Iterator<EntityType> iter = theMeshTypes.keySet().iterator();
-        while( iter.hasNext() ) {
-            EntityType                       key   = iter.next();
-            Reference<TypedMeshObjectFacade> value = theMeshTypes.get( key );
+        for( int i=0 ; i<theFacades.length ; ++i ) {
+            Reference<TypedMeshObjectFacade> value = theFacades[i];
             if( value != null ) {
                 TypedMeshObjectFacade candidate = value.get();
                 if( candidate != null && candidate == obj ) {
-                    return key;
+                    return theMeshTypes[i];
                 }
             }
         }
@@ -1297,24 +1229,25 @@ public abstract class AbstractMeshObject
                 throw new EntityNotBlessedException( this, type );
             }
 
-            Set<EntityType> keySet = theMeshTypes.keySet();
-
-            EntityType found = null;
-            for( EntityType actualBlessed : keySet ) {
-                if( actualBlessed.isSubtypeOfOrEquals( type )) {
-                    found = actualBlessed;
+            int found = -1;
+            for( int i=0 ; i<theMeshTypes.length ; ++i ) {
+                if( theMeshTypes[i].isSubtypeOfOrEquals( type )) {
+                    found = i;
                     break; // good enough
                 }
             }
-            if( found == null ) {
+            if( found < 0 ) {
                 throw new EntityNotBlessedException( this, type );
             }
-            WeakReference<TypedMeshObjectFacade> ref = theMeshTypes.get( found );
+            WeakReference<TypedMeshObjectFacade> ref = ( theFacades != null ) ? theFacades[ found ] : null;
             TypedMeshObjectFacade                ret = ( ref != null ) ? ref.get() : null;
 
             if( ret == null ) {
-                ret = theMeshBase.getMeshBaseLifecycleManager().createTypedMeshObjectFacade( this, found );
-                theMeshTypes.put( found, new WeakReference<TypedMeshObjectFacade>( ret ));
+                ret = theMeshBase.getMeshBaseLifecycleManager().createTypedMeshObjectFacade( this, theMeshTypes[ found ] );
+                if( theFacades == null ) {
+                    theFacades = createFacades( theMeshTypes.length );
+                }
+                theFacades[ found ] = new WeakReference<TypedMeshObjectFacade>( ret );
             }
 
             updateLastRead();
@@ -2027,6 +1960,8 @@ public abstract class AbstractMeshObject
         checkAlive();
 
         internalCheckTransaction( theMeshBase );
+
+        lockForWrite( theMeshBase, this );
     }
 
     /**
@@ -2049,6 +1984,27 @@ public abstract class AbstractMeshObject
         tx.checkThreadIsAllowed();
     }
 
+    /**
+     * Internal helper to obtain the write lock on a MeshObject for the current Transaction,
+     * if the MeshBase allows concurrent Transactions. Operations that modify other MeshObjects
+     * in addition to this one need to obtain their write locks, too.
+     * We pass in the MeshBase, because this may be invokved when the member variable has been zero'd out already.
+     *
+     * @param mb the MeshBase
+     * @param obj the MeshObject to be modified, or null
+     * @throws TransactionException thrown if the write lock could not be obtained
+     */
+    protected static void lockForWrite(
+            MeshBase   mb,
+            MeshObject obj )
+        throws
+            TransactionException
+    {
+        if( obj != null && mb instanceof AbstractMeshBase ) {
+            ((AbstractMeshBase) mb).lockForWrite( obj );
+        }
+    }
+
     /**
      * Update the lastUpdated property. This does not trigger an event generation -- not necessary.
      * This may be overridden.
@@ -2348,23 +2304,206 @@ public abstract class AbstractMeshObject
     }
 
     /**
-     * Internal helper to allocate the theMeshTypes property.
+     * Initialize the EntityTypes and PropertyValues of a MeshObject that is restored, e.g. from
+     * an ExternalizedMeshObject. This does not perform any checking or generate any events.
+     *
+     * @param meshTypes the EntityTypes, if any
+     * @param properties the PropertyTypes with their PropertyValues, if any
+     */
+    protected void initializeMeshTypesAndProperties(
+            EntityType []                   meshTypes,
+            Map<PropertyType,PropertyValue> properties )
+    {
+        if( meshTypes != null && meshTypes.length > 0 ) {
+            setMeshTypes( meshTypes );
+        }
+        if( properties != null ) {
+            for( Map.Entry<PropertyType,PropertyValue> current : properties.entrySet() ) {
+                int slot = findPropertySlot( current.getKey() );
+                if( slot >= 0 ) {
+                    putPropertyValueInSlot( slot, current.getValue() );
+                } else {
+                    log.warn( this + ": ignoring value of PropertyType that none of its EntityTypes carries: " + current.getKey() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the EntityTypes that this MeshObject is blessed with, without any checking or events,
+     * and move the PropertyValues into the PropertySlotLayout for the new EntityTypes.
+     *
+     * @param newTypes the new EntityTypes
+     * @return the PropertyValues whose PropertyTypes none of the new EntityTypes carry any more, or null
+     */
+    protected Map<PropertyType,PropertyValue> setMeshTypes(
+            EntityType [] newTypes )
+    {
+        WeakReference<TypedMeshObjectFacade> [] newFacades = null;
+        if( theFacades != null ) {
+            for( int i=0 ; i<theFacades.length ; ++i ) {
+                if( theFacades[i] == null ) {
+                    continue;
+                }
+                int index = ArrayHelper.findIn( theMeshTypes[i], newTypes, true );
+                if( index >= 0 ) {
+                    if( newFacades == null ) {
+                        newFacades = createFacades( newTypes.length );
+                    }
+                    newFacades[ index ] = theFacades[i];
+                }
+            }
+        }
+        theMeshTypes = newTypes.length > 0 ? newTypes : null;
+        theFacades   = newFacades;
+
+        return relayoutProperties( PropertySlotLayout.obtain( theMeshTypes ));
+    }
+
+    /**
+     * Move the PropertyValues into a different PropertySlotLayout.
+     *
+     * @param newLayout the new PropertySlotLayout, or null
+     * @return the PropertyValues whose PropertyTypes do not have a slot in the new PropertySlotLayout, or null
+     */
+    protected Map<PropertyType,PropertyValue> relayoutProperties(
+            PropertySlotLayout newLayout )
+    {
+        PropertySlotLayout oldLayout = thePropertyLayout;
+        PropertyValue []   oldValues = thePropertyValues;
+
+        if( oldLayout == newLayout ) {
+            return null;
+        }
+        thePropertyLayout = newLayout;
+        thePropertyValues = null;
+
+        if( oldValues == null ) {
+            return null;
+        }
+
+        HashMap<PropertyType,PropertyValue> ret = null;
+        for( int i=0 ; i<oldValues.length ; ++i ) {
+            if( oldValues[i] == null ) {
+                continue;
+            }
+            PropertyType type = oldLayout.getPropertyType( i );
+            int          slot = newLayout != null ? newLayout.getSlot( type ) : -1;
+
+            if( slot >= 0 ) {
+                if( thePropertyValues == null ) {
+                    thePropertyValues = new PropertyValue[ newLayout.size() ];
+                }
+                thePropertyValues[ slot ] = oldValues[i];
+
+            } else {
+                if( ret == null ) {
+                    ret = new HashMap<PropertyType,PropertyValue>();
+                }
+                ret.put( type, oldValues[i] );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Find the slot of a PropertyType in the current PropertySlotLayout.
+     *
+     * @param type the PropertyType
+     * @return the slot, or -1 if this MeshObject does not carry this PropertyType
+     */
+    protected int findPropertySlot(
+            PropertyType type )
+    {
+        PropertySlotLayout layout = thePropertyLayout;
+        if( layout == null ) {
+            return -1;
+        }
+        int ret = layout.getSlot( type );
+        if( ret < 0 ) {
+            // the inheritance hierarchy may have changed since the layout was determined
+            PropertySlotLayout current = PropertySlotLayout.obtain( theMeshTypes );
+            if( current != layout ) {
+                relayoutProperties( current );
+                ret = current.getSlot( type );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the PropertyValue in a slot of the current PropertySlotLayout.
+     *
+     * @param slot the slot
+     * @return the PropertyValue
+     */
+    protected PropertyValue getPropertyValueInSlot(
+            int slot )
+    {
+        PropertyValue [] values = thePropertyValues;
+        return values != null ? values[ slot ] : null;
+    }
+
+    /**
+     * Put a PropertyValue into a slot of the current PropertySlotLayout.
+     *
+     * @param slot the slot
+     * @param newValue the new PropertyValue
+     * @return the old PropertyValue
+     */
+    protected PropertyValue putPropertyValueInSlot(
+            int           slot,
+            PropertyValue newValue )
+    {
+        if( thePropertyValues == null ) {
+            if( newValue == null ) {
+                return null;
+            }
+            thePropertyValues = new PropertyValue[ thePropertyLayout.size() ];
+        }
+        PropertyValue ret = thePropertyValues[ slot ];
+        thePropertyValues[ slot ] = newValue;
+        return ret;
+    }
+
+    /**
+     * Internal helper to allocate the theFacades property.
      *
-     * @return the object to become the theMeshTypes property
+     * @param size the number of EntityTypes
+     * @return the object to become the theFacades property
      */
-    protected HashMap<EntityType,WeakReference<TypedMeshObjectFacade>> createMeshTypes()
+    protected WeakReference<TypedMeshObjectFacade> [] createFacades(
+            int size )
     {
-        return new HashMap<EntityType,WeakReference<TypedMeshObjectFacade>>();
+        @SuppressWarnings(value={"unchecked"})
+        WeakReference<TypedMeshObjectFacade> [] ret = (WeakReference<TypedMeshObjectFacade> []) new WeakReference<?>[ size ];
+        return ret;
     }
 
     /**
-     * Internal helper to allocate the theProperties property.
+     * Estimate how much memory this MeshObject uses, in bytes. This neither checks
+     * access rights nor updates the time read, so caches may invoke it at any time.
+     * The estimate is approximate, and subclasses add the memory used by their own members.
      *
-     * @return the object to become the theProperties property
+     * @return the estimate, in bytes
      */
-    protected HashMap<PropertyType,PropertyValue> createProperties()
+    public int estimateWeight()
     {
-        return new HashMap<PropertyType,PropertyValue>();
+        PropertyValue []                         properties = thePropertyValues;
+        EntityType []                            types      = theMeshTypes;
+        WeakReference<TypedMeshObjectFacade> []  facades    = theFacades;
+
+        int ret = OBJECT_WEIGHT;
+        if( properties != null ) {
+            ret += ARRAY_WEIGHT + properties.length * PROPERTY_WEIGHT;
+        }
+        if( types != null ) {
+            ret += ARRAY_WEIGHT + types.length * REFERENCE_WEIGHT;
+        }
+        if( facades != null ) {
+            ret += ARRAY_WEIGHT + facades.length * REFERENCE_WEIGHT;
+        }
+        return ret;
     }
 
     /**
@@ -2382,7 +2521,8 @@ public abstract class AbstractMeshObject
                     "theTimeUpdated",
                     "theTimeRead",
                     "theTimeExpires",
-                    "theProperties",
+                    "thePropertyLayout",
+                    "thePropertyValues",
                     "theMeshTypes"
                 },
                 new Object[] {
@@ -2391,8 +2531,9 @@ public abstract class AbstractMeshObject
                     theTimeUpdated,
                     theTimeRead,
                     theTimeExpires,
-                    theProperties,
-                    theMeshTypes != null ? theMeshTypes.keySet() : null
+                    thePropertyLayout,
+                    thePropertyValues,
+                    theMeshTypes
                 });
     }
 
@@ -2444,17 +2585,53 @@ public abstract class AbstractMeshObject
     protected long theTimeExpires;
 
     /**
-     * The set of properties with their types and values. This is allocated as needed.
+     * The PropertySlotLayout for the current EntityTypes. This is null if there are no EntityTypes.
      */
-    protected HashMap<PropertyType,PropertyValue> theProperties;
+    protected PropertySlotLayout thePropertyLayout;
 
     /**
-     * The set of MeshTypes with their respective facades. This is allocated as needed.
+     * The PropertyValues, in the slots given by thePropertyLayout. This is allocated as needed.
      */
-    protected HashMap<EntityType,WeakReference<TypedMeshObjectFacade>> theMeshTypes;
+    protected PropertyValue [] thePropertyValues;
+
+    /**
+     * The EntityTypes that this MeshObject is blessed with. This is null if there are none.
+     */
+    protected EntityType [] theMeshTypes;
+
+    /**
+     * The facades for the EntityTypes, in the same sequence as theMeshTypes. This is allocated as needed.
+     */
+    protected WeakReference<TypedMeshObjectFacade> [] theFacades;
 
     /**
       * The current set of PropertyChangeListeners.
       */
     protected FlexiblePropertyChangeListenerSet thePropertyChangeListeners;
+
+    /**
+     * Estimated number of bytes used by a MeshObject without any properties, types or neighbors,
+     * including its identifier.
+     */
+    protected static final int OBJECT_WEIGHT = 160;
+
+    /**
+     * Estimated number of bytes used by an empty HashMap.
+     */
+    protected static final int MAP_WEIGHT = 64;
+
+    /**
+     * Estimated number of bytes used by an empty array.
+     */
+    protected static final int ARRAY_WEIGHT = 16;
+
+    /**
+     * Estimated number of bytes used by each slot in thePropertyValues, including a small PropertyValue.
+     */
+    protected static final int PROPERTY_WEIGHT = 32;
+
+    /**
+     * Estimated number of bytes used by each entry in theMeshTypes or theFacades.
+     */
+    protected static final int REFERENCE_WEIGHT = 4;
 }
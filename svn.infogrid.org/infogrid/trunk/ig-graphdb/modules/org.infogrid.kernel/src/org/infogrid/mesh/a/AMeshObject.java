@@ -17,7 +17,7 @@ package org.infogrid.mesh.a;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Set;
+import java.util.LinkedHashSet;
 import org.infogrid.mesh.AbstractMeshObject;
 import org.infogrid.mesh.CannotRelateToItselfException;
 import org.infogrid.mesh.EntityNotBlessedException;
@@ -116,7 +116,6 @@ public class AMeshObject
     {
         super( identifier, meshBase, created, updated, read, expires );
         
-        theProperties          = properties;
         theNeighborIdentifiers = neighborIdentifiers;
         theNeighborRoleTypes   = neighborRoleTypes;
        
@@ -124,13 +123,8 @@ public class AMeshObject
             throw new IllegalArgumentException( "Equivalents must be of length 2" );
         }
         theEquivalenceSetPointers = equivalents;
-        
-        if( meshTypes != null && meshTypes.length > 0 ) {
-            theMeshTypes = createMeshTypes();
-            for( int i=0 ; i<meshTypes.length ; ++i ) {
-                theMeshTypes.put( meshTypes[i], null );
-            }
-        }
+
+        initializeMeshTypesAndProperties( meshTypes, properties );
     }
 
     /**
@@ -363,6 +357,10 @@ public class AMeshObject
         Object neighborSyncObject = neighbor != null ? neighbor : neighborIdentifier;
                 // if there is no neighbor, we don't really need to sync, but Java is inflexible and so we just pick something
 
+        // obtain the write locks first, so we never wait for them while holding a monitor
+        lockForWrite( theMeshBase, this );
+        lockForWrite( theMeshBase, neighbor );
+
         synchronized( this ) {
             synchronized( neighborSyncObject ) {
                 
@@ -372,27 +370,21 @@ public class AMeshObject
                 boolean thereAlready = false;
 
                 // do what can throw exceptions first
-                if( nMgr.hasNeighbors( this )) {
-                    for( MeshObjectIdentifier hereNeighborIdentifier : nMgr.getNeighborIdentifiers( this )) {
-                        if( neighborIdentifier.equals( hereNeighborIdentifier )) {
-                            if( forgiving ) {
-                                hereAlready = true;
-                            } else {
-                                throw new RelatedAlreadyException( this, neighborIdentifier );
-                            }
-                        }
+                if( nMgr.isRelated( this, neighborIdentifier )) {
+                    if( forgiving ) {
+                        hereAlready = true;
+                    } else {
+                        throw new RelatedAlreadyException( this, neighborIdentifier );
                     }
                 }
                 oldNeighborIdentifiers = nMgr.getNeighborIdentifiers( this );
 
                 if( realNeighbor != null && nMgr.hasNeighbors( realNeighbor )) {
-                    for( MeshObjectIdentifier thereNeighborIdentifier : nMgr.getNeighborIdentifiers( realNeighbor )) {
-                        if( here.equals( thereNeighborIdentifier )) {
-                            if( forgiving ) {
-                                thereAlready = true;
-                            } else {
-                                throw new RelatedAlreadyException( realNeighbor, this );
-                            }
+                    if( nMgr.isRelated( realNeighbor, here )) {
+                        if( forgiving ) {
+                            thereAlready = true;
+                        } else {
+                            throw new RelatedAlreadyException( realNeighbor, this );
                         }
                     }
                     oldNeighborNeighborIdentifiers = nMgr.getNeighborIdentifiers( realNeighbor );
@@ -488,6 +480,10 @@ public class AMeshObject
         Object neighborSyncObject = neighbor != null ? neighbor : neighborIdentifier;
                 // if there is no neighbor, we don't really need to sync, but Java is inflexible and so we just pick something
 
+        // obtain the write locks first, so we never wait for them while holding a monitor
+        lockForWrite( mb, this );
+        lockForWrite( mb, neighbor );
+
         synchronized( this ) {
             synchronized( neighborSyncObject ) {
 
@@ -701,6 +697,10 @@ public class AMeshObject
         Object neighborSyncObject = neighbor != null ? neighbor : neighborIdentifier;
                 // if there is no neighbor, we don't really need to sync, but Java is inflexible and so we just pick something
 
+        // obtain the write locks first, so we never wait for them while holding a monitor
+        lockForWrite( theMeshBase, this );
+        lockForWrite( theMeshBase, neighbor );
+
         synchronized( this ) {
             synchronized( neighborSyncObject ) {
 
@@ -714,7 +714,7 @@ public class AMeshObject
                     if( requiredType != null ) {
                         boolean found = false;
                         if( theMeshTypes != null ) {
-                            for( AttributableMeshType amt : theMeshTypes.keySet() ) {
+                            for( AttributableMeshType amt : theMeshTypes ) {
                                 if( amt.equalsOrIsSupertype( requiredType )) {
                                     found = true;
                                     break;
@@ -728,7 +728,7 @@ public class AMeshObject
                     if( realNeighbor != null && requiredNeighborType != null ) {
                         boolean found = false;
                         if( realNeighbor.theMeshTypes != null ) {
-                            for( AttributableMeshType amt : realNeighbor.theMeshTypes.keySet() ) {
+                            for( AttributableMeshType amt : realNeighbor.theMeshTypes ) {
                                 if( amt.equalsOrIsSupertype( requiredNeighborType )) {
                                     found = true;
                                     break;
@@ -901,6 +901,10 @@ public class AMeshObject
         }
 
         AMeshObjectNeighborManager nMgr = getNeighborManager();
+        // obtain the write locks first, so we never wait for them while holding a monitor
+        lockForWrite( theMeshBase, this );
+        lockForWrite( theMeshBase, neighbor );
+
         synchronized( this ) {
             synchronized( neighborSyncObject ) {
 
@@ -1051,50 +1055,21 @@ public class AMeshObject
             starts = new MeshObject[] { this };
         }
         
-        AMeshObjectNeighborManager nMgr = getNeighborManager();
+        AMeshObjectNeighborManager nMgr     = getNeighborManager();
+        AMeshBase                  realBase = (AMeshBase) theMeshBase;
 
-        AMeshBase                 realBase            = (AMeshBase) theMeshBase;
-        MeshObjectIdentifier [][] neighborIdentifiers = createMeshObjectIdentifierArrayArray( starts.length );
-        RoleType [][][]           roleTypes           = new RoleType[ starts.length ][][];
-
-        int n = 0;
+        // it's more efficient to first assemble all possible neighbors, and then subset based on permissions
+        LinkedHashSet<MeshObjectIdentifier> found = new LinkedHashSet<MeshObjectIdentifier>();
         for( int s=0 ; s<starts.length ; ++s ) {
-            AMeshObject current = (AMeshObject) starts[s];
-            synchronized( current ) {
-                neighborIdentifiers[s] = nMgr.getNeighborIdentifiers( current );
-                roleTypes[s]           = nMgr.getRoleTypes( current );
-            }
-            if( neighborIdentifiers[s] != null ) {
-                n += neighborIdentifiers[s].length;
-            }
+            nMgr.addNeighborIdentifiersFor( (AMeshObject) starts[s], type, found );
         }
 
         MeshObjectSet ret;
-        if( n == 0 ) {
+        if( found.isEmpty() ) {
             ret = realBase.getMeshObjectSetFactory().obtainEmptyImmutableMeshObjectSet();
         } else {
-            MeshObjectIdentifier [] almost = createMeshObjectIdentifierArray( n );
-            int                     max    = 0;
+            MeshObjectIdentifier [] almost = found.toArray( createMeshObjectIdentifierArray( found.size() ));
 
-            // it's more efficient to first assemble all possible neighbors, and then subset based on permissions
-            for( int s=0 ; s<neighborIdentifiers.length ; ++s ) {
-                for( int i=0 ; i<neighborIdentifiers[s].length ; ++i ) {
-                    if( roleTypes[s][i] != null ) {
-                        for( int j=0 ; j<roleTypes[s][i].length ; ++j ) {
-                            if( roleTypes[s][i][j].isSpecializationOfOrEquals( type ) ) {
-                                if( !ArrayHelper.isIn( neighborIdentifiers[s][i], almost, 0, max, true )) {
-                                    almost[max++] = neighborIdentifiers[s][i];
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-
-            if( max < almost.length ) {
-                almost = ArrayHelper.copyIntoNewArray( almost, 0, max, MeshObjectIdentifier.class );
-            }
             MeshObject [] almostRet  = findRelatedMeshObjects( theMeshBase, almost );
             MeshObject [] almostRet2 = new MeshObject[ almostRet.length ];
 
@@ -1384,22 +1359,19 @@ public class AMeshObject
         
         AMeshObjectNeighborManager nMgr = getNeighborManager();
 
-        MeshObjectIdentifier [][] neighborIdentifiers = createMeshObjectIdentifierArrayArray( starts.length );
-        RoleType [][][]           roleTypes           = new RoleType[ starts.length ][][];
+        RoleType [][] roleTypes = new RoleType[ starts.length ][];
 
         int n=0;
         for( int s=0 ; s<starts.length ; ++s ) {
             AMeshObject current = (AMeshObject) starts[s];
             synchronized( current ) {
-                neighborIdentifiers[s] = nMgr.getNeighborIdentifiers( current );
-                roleTypes[s]  = nMgr.getRoleTypes( current );
+                int index = nMgr.determineRelationshipIndex( current, neighborIdentifier );
+                if( index >= 0 ) {
+                    roleTypes[s] = nMgr.getRoleTypes( current )[index];
+                }
             }
             if( roleTypes[s] != null ) {
-                for( int i=0 ; i<roleTypes[s].length ; ++i ) {
-                    if( roleTypes[s][i] != null ) {
-                        n += roleTypes[s][i].length;
-                    }
-                }
+                n += roleTypes[s].length;
             }
         }
 
@@ -1412,27 +1384,19 @@ public class AMeshObject
             ret     = new RoleType[ n ];
 
             for( int s=0 ; s<starts.length ; ++s ) {
-
-                if( neighborIdentifiers[s] == null ) {
+                if( roleTypes[s] == null ) {
                     continue;
                 }
+                for( int j=0 ; j<roleTypes[s].length ; ++j ) {
+                    try {
+                        checkPermittedTraversal(
+                                roleTypes[s][j],
+                                neighborIdentifier,
+                                neighbor );
 
-                for( int i=0 ; i<neighborIdentifiers[s].length ; ++i ) {
-                    if( neighborIdentifier.equals( neighborIdentifiers[s][i] )) {
-                        if( roleTypes[s][i] != null ) {
-                            for( int j=0 ; j<roleTypes[s][i].length ; ++j ) {
-                                try {
-                                    checkPermittedTraversal(
-                                            roleTypes[s][i][j],
-                                            neighborIdentifier,
-                                            neighbor );
-
-                                    ret[max++] = roleTypes[s][i][j];
-                                } catch( NotPermittedException ex ) {
-                                    log.info( ex );
-                                }
-                            }
-                        }
+                        ret[max++] = roleTypes[s][j];
+                    } catch( NotPermittedException ex ) {
+                        log.info( ex );
                     }
                 }
             }
@@ -1497,6 +1461,7 @@ public class AMeshObject
         }
 
         checkTransaction();
+        lockForWrite( theMeshBase, equiv );
 
         if( this == equiv ) {
             throw new EquivalentAlreadyException( this, equiv );
@@ -1533,6 +1498,9 @@ public class AMeshObject
             rightMostThere = temp;
         }
 
+        lockForWrite( theMeshBase, leftMostHere );
+        lockForWrite( theMeshBase, rightMostThere );
+
         if( rightMostThere.theEquivalenceSetPointers == null ) {
             rightMostThere.theEquivalenceSetPointers = createMeshObjectIdentifierArray( 2 );
         }
@@ -1631,6 +1599,9 @@ public class AMeshObject
         AMeshObject theLeft  = getLeftEquivalentObject( theMeshBase );
         AMeshObject theRight = getRightEquivalentObject( theMeshBase );
 
+        lockForWrite( theMeshBase, theLeft );
+        lockForWrite( theMeshBase, theRight );
+
         if( theLeft != null ) {
             theLeft.theEquivalenceSetPointers[1] = ( theRight != null ) ? theRight.getIdentifier() : null;
         }
@@ -1666,9 +1637,7 @@ public class AMeshObject
             TransactionException
     {
         if( theMeshTypes != null ) {
-            Set<EntityType> keySet = theMeshTypes.keySet();
-
-            for( EntityType current : keySet ) {
+            for( EntityType current : theMeshTypes ) {
                 TypeInitializer init = createTypeInitializer( current );
                 init.cascadingDelete();
             }
@@ -1699,6 +1668,11 @@ public class AMeshObject
 
         AMeshObject theLeft  = getLeftEquivalentObject( oldMeshBase );
         AMeshObject theRight = getRightEquivalentObject( oldMeshBase );
+
+        lockForWrite( oldMeshBase, this );
+        lockForWrite( oldMeshBase, theLeft );
+        lockForWrite( oldMeshBase, theRight );
+
         if( theLeft != null ) {
             if( theRight != null ) {
                 // we are in the middle
@@ -1800,12 +1774,11 @@ public class AMeshObject
         AMeshObjectNeighborManager nMgr = getNeighborManager();
 
         MeshTypeIdentifier [] types;
-        if( theMeshTypes != null && theMeshTypes.size() > 0 ) {
-            types = new MeshTypeIdentifier[ theMeshTypes.size() ];
+        if( theMeshTypes != null ) {
+            types = new MeshTypeIdentifier[ theMeshTypes.length ];
 
-            int i=0;
-            for( EntityType current : theMeshTypes.keySet() ) {
-                types[i++] = current.getIdentifier();
+            for( int i=0 ; i<types.length ; ++i ) {
+                types[i] = theMeshTypes[i].getIdentifier();
             }
         } else {
             types = null;
@@ -1813,15 +1786,23 @@ public class AMeshObject
         
         MeshTypeIdentifier [] propertyTypes;
         PropertyValue      [] propertyValues;
-        if( theProperties != null && theProperties.size() > 0 ) {
-            propertyTypes  = new MeshTypeIdentifier[ theProperties.size() ];
-            propertyValues = new PropertyValue[ propertyTypes.length ];
+        if( thePropertyValues != null ) {
+            int count = 0;
+            for( PropertyValue current : thePropertyValues ) {
+                if( current != null ) {
+                    ++count;
+                }
+            }
+            propertyTypes  = new MeshTypeIdentifier[ count ];
+            propertyValues = new PropertyValue[ count ];
 
             int i=0;
-            for( PropertyType current : theProperties.keySet() ) {
-                propertyTypes[i]  = current.getIdentifier();
-                propertyValues[i] = theProperties.get( current );
-                ++i;
+            for( int slot=0 ; slot<thePropertyValues.length ; ++slot ) {
+                if( thePropertyValues[slot] != null ) {
+                    propertyTypes[i]  = thePropertyLayout.getPropertyType( slot ).getIdentifier();
+                    propertyValues[i] = thePropertyValues[slot];
+                    ++i;
+                }
             }
         } else {
             propertyTypes  = null;
@@ -1895,12 +1876,18 @@ public class AMeshObject
         if( types != null && types.length > 0 ) {
             synchronized( this ) {
                 for( EntityType current : types ) {
-                    WeakReference<TypedMeshObjectFacade> ref    = theMeshTypes.get( current );
+                    int                                  index  = theMeshTypes != null ? ArrayHelper.findIn( current, theMeshTypes, true ) : -1;
+                    WeakReference<TypedMeshObjectFacade> ref    = ( index >= 0 && theFacades != null ) ? theFacades[ index ] : null;
                     TypedMeshObjectFacade                facade = ( ref != null ) ? ref.get() : null;
 
                     if( facade == null ) {
                         facade = theMeshBase.getMeshBaseLifecycleManager().createTypedMeshObjectFacade( this, current );
-                        theMeshTypes.put( current, new WeakReference<TypedMeshObjectFacade>( facade ));
+                        if( index >= 0 ) {
+                            if( theFacades == null ) {
+                                theFacades = createFacades( theMeshTypes.length );
+                            }
+                            theFacades[ index ] = new WeakReference<TypedMeshObjectFacade>( facade );
+                        }
                     }
 
                     if( facade != null ) {
@@ -2097,6 +2084,40 @@ public class AMeshObject
         return ret;
     }
 
+    /**
+     * Estimate how much memory this MeshObject uses, in bytes. This adds the memory
+     * used by neighbors and their RoleTypes.
+     *
+     * @return the estimate, in bytes
+     */
+    @Override
+    public int estimateWeight()
+    {
+        MeshObjectIdentifier [] neighbors = theNeighborIdentifiers;
+        RoleType [][]           roleTypes = theNeighborRoleTypes;
+
+        int ret = super.estimateWeight();
+        if( neighbors != null ) {
+            ret += ARRAY_WEIGHT + neighbors.length * NEIGHBOR_WEIGHT;
+        }
+        if( roleTypes != null ) {
+            ret += ARRAY_WEIGHT;
+            for( int i=0 ; i<roleTypes.length ; ++i ) {
+                if( roleTypes[i] != null ) {
+                    ret += ARRAY_WEIGHT + roleTypes[i].length * REFERENCE_WEIGHT;
+                }
+            }
+        }
+        if( theEquivalenceSetPointers != null ) {
+            ret += ARRAY_WEIGHT + 2 * NEIGHBOR_WEIGHT;
+        }
+        AMeshObjectNeighborIndex index = theNeighborIndex;
+        if( index != null ) {
+            ret += 2 * MAP_WEIGHT + index.size() * INDEX_ENTRY_WEIGHT;
+        }
+        return ret;
+    }
+
     /**
      * Find a manager for the MeshObject's neighbors.
      *
@@ -2143,6 +2164,12 @@ public class AMeshObject
      * The set of sets of RoleTypes that goes with theOtherSides.
      */
     protected RoleType [][] theNeighborRoleTypes;
+
+    /**
+     * Index over theNeighborIdentifiers and theNeighborRoleTypes, if this MeshObject has
+     * enough neighbors to warrant one. This is maintained by the AMeshObjectNeighborManager.
+     */
+    protected AMeshObjectNeighborIndex theNeighborIndex;
     
     /**
      * The left and right MeshObject in the equivalence set. This member is either null,
@@ -2152,6 +2179,26 @@ public class AMeshObject
      */
     protected MeshObjectIdentifier [] theEquivalenceSetPointers;
 
+    /**
+     * Estimated number of bytes used by an empty array.
+     */
+    protected static final int ARRAY_WEIGHT = 16;
+
+    /**
+     * Estimated number of bytes used by each neighbor's MeshObjectIdentifier.
+     */
+    protected static final int NEIGHBOR_WEIGHT = 72;
+
+    /**
+     * Estimated number of bytes used by a reference to a shared object, such as a RoleType.
+     */
+    protected static final int REFERENCE_WEIGHT = 8;
+
+    /**
+     * Estimated number of bytes used by each neighbor in the AMeshObjectNeighborIndex.
+     */
+    protected static final int INDEX_ENTRY_WEIGHT = 96;
+
     /**
      * String representing the home object if no other UserVisibleString could be found.
      */
@@ -0,0 +1,230 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.mesh.a;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.model.primitives.RoleType;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+
+/**
+ * <p>Hash-based index over the neighbors of an AMeshObject with many neighbors. It
+ *    maps each neighbor's MeshObjectIdentifier to its position in the AMeshObject's
+ *    neighbor arrays, and partitions the neighbors by the RoleTypes of the relationships
+ *    with them.</p>
+ * <p>The AMeshObject's neighbor arrays remain authoritative; this index only makes
+ *    finding a neighbor, and traversing by RoleType, independent of the number of
+ *    neighbors. It is maintained by the AMeshObjectNeighborManager, which creates it
+ *    once an AMeshObject has enough neighbors. Instances of this class must only be
+ *    accessed while holding the monitor of the AMeshObject they belong to.</p>
+ */
+public class AMeshObjectNeighborIndex
+        implements
+            CanBeDumped
+{
+    /**
+     * Factory method.
+     *
+     * @param neighborIdentifiers the identifiers of the current neighbors
+     * @param neighborRoleTypes the RoleTypes of the current neighbors, in the same sequence
+     * @return the created AMeshObjectNeighborIndex
+     */
+    public static AMeshObjectNeighborIndex create(
+            MeshObjectIdentifier [] neighborIdentifiers,
+            RoleType [][]           neighborRoleTypes )
+    {
+        AMeshObjectNeighborIndex ret = new AMeshObjectNeighborIndex( neighborIdentifiers.length );
+
+        for( int i=0 ; i<neighborIdentifiers.length ; ++i ) {
+            ret.neighborAppended( i, neighborIdentifiers[i], neighborRoleTypes != null ? neighborRoleTypes[i] : null );
+        }
+        return ret;
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param expectedSize the expected number of neighbors
+     */
+    protected AMeshObjectNeighborIndex(
+            int expectedSize )
+    {
+        thePositions  = new HashMap<MeshObjectIdentifier,Integer>( expectedSize * 2 );
+        theByRoleType = new HashMap<RoleType,LinkedHashSet<MeshObjectIdentifier>>();
+    }
+
+    /**
+     * Determine the position of a neighbor in the neighbor arrays.
+     *
+     * @param neighborIdentifier identifier of the neighbor
+     * @return the position, or -1 if not a neighbor
+     */
+    public int indexOf(
+            MeshObjectIdentifier neighborIdentifier )
+    {
+        Integer ret = thePositions.get( neighborIdentifier );
+        return ret != null ? ret.intValue() : -1;
+    }
+
+    /**
+     * Obtain the number of neighbors in this index.
+     *
+     * @return the number of neighbors
+     */
+    public int size()
+    {
+        return thePositions.size();
+    }
+
+    /**
+     * Add the identifiers of the neighbors related with a RoleType that is the given
+     * RoleType, or a specialization of it, to a Collection.
+     *
+     * @param type the RoleType
+     * @param result the Collection to add to
+     */
+    public void addNeighborIdentifiersFor(
+            RoleType                         type,
+            Collection<MeshObjectIdentifier> result )
+    {
+        for( Map.Entry<RoleType,LinkedHashSet<MeshObjectIdentifier>> current : theByRoleType.entrySet() ) {
+            if( current.getKey().isSpecializationOfOrEquals( type )) {
+                result.addAll( current.getValue() );
+            }
+        }
+    }
+
+    /**
+     * A neighbor was appended to the neighbor arrays.
+     *
+     * @param position the position of the new neighbor in the neighbor arrays
+     * @param neighborIdentifier identifier of the new neighbor
+     * @param roleTypes the RoleTypes of the relationship with the new neighbor, if any
+     */
+    public void neighborAppended(
+            int                  position,
+            MeshObjectIdentifier neighborIdentifier,
+            RoleType []          roleTypes )
+    {
+        thePositions.put( neighborIdentifier, position );
+
+        roleTypesAdded( neighborIdentifier, roleTypes );
+    }
+
+    /**
+     * A neighbor was removed from the neighbor arrays.
+     *
+     * @param position the position of the removed neighbor in the old neighbor arrays
+     * @param neighborIdentifier identifier of the removed neighbor
+     * @param roleTypes the RoleTypes of the relationship with the removed neighbor, if any
+     * @param newNeighborIdentifiers the neighbor identifiers after the removal
+     */
+    public void neighborRemoved(
+            int                     position,
+            MeshObjectIdentifier    neighborIdentifier,
+            RoleType []             roleTypes,
+            MeshObjectIdentifier [] newNeighborIdentifiers )
+    {
+        thePositions.remove( neighborIdentifier );
+
+        // the neighbors after the removed one have moved up by one
+        for( int i=position ; i<newNeighborIdentifiers.length ; ++i ) {
+            thePositions.put( newNeighborIdentifiers[i], i );
+        }
+
+        if( roleTypes != null ) {
+            for( RoleType current : roleTypes ) {
+                roleTypeRemoved( neighborIdentifier, current );
+            }
+        }
+    }
+
+    /**
+     * RoleTypes were added to the relationship with a neighbor.
+     *
+     * @param neighborIdentifier identifier of the neighbor
+     * @param roleTypes the added RoleTypes, if any
+     */
+    public void roleTypesAdded(
+            MeshObjectIdentifier neighborIdentifier,
+            RoleType []          roleTypes )
+    {
+        if( roleTypes == null ) {
+            return;
+        }
+        for( RoleType current : roleTypes ) {
+            LinkedHashSet<MeshObjectIdentifier> partition = theByRoleType.get( current );
+            if( partition == null ) {
+                partition = new LinkedHashSet<MeshObjectIdentifier>();
+                theByRoleType.put( current, partition );
+            }
+            partition.add( neighborIdentifier );
+        }
+    }
+
+    /**
+     * A RoleType was removed from the relationship with a neighbor.
+     *
+     * @param neighborIdentifier identifier of the neighbor
+     * @param roleType the removed RoleType
+     */
+    public void roleTypeRemoved(
+            MeshObjectIdentifier neighborIdentifier,
+            RoleType             roleType )
+    {
+        LinkedHashSet<MeshObjectIdentifier> partition = theByRoleType.get( roleType );
+        if( partition == null ) {
+            return;
+        }
+        partition.remove( neighborIdentifier );
+        if( partition.isEmpty() ) {
+            theByRoleType.remove( roleType );
+        }
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "positions",
+                    "byRoleType"
+                },
+                new Object[] {
+                    thePositions,
+                    theByRoleType
+                });
+    }
+
+    /**
+     * Position of each neighbor in the neighbor arrays, keyed by the neighbor's identifier.
+     */
+    protected HashMap<MeshObjectIdentifier,Integer> thePositions;
+
+    /**
+     * The identifiers of the neighbors, partitioned by the RoleTypes of the relationships
+     * with them.
+     */
+    protected HashMap<RoleType,LinkedHashSet<MeshObjectIdentifier>> theByRoleType;
+}
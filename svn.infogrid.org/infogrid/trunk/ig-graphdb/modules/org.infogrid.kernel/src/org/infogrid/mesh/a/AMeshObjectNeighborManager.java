@@ -14,6 +14,7 @@
 
 package org.infogrid.mesh.a;
 
+import java.util.Collection;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.NotRelatedException;
 import org.infogrid.mesh.RelatedAlreadyException;
@@ -21,10 +22,14 @@ import org.infogrid.model.primitives.RoleType;
 import org.infogrid.util.ArrayHelper;
 
 /**
- * Abstraction to managers neighbors and associated information
+ * <p>Abstraction to managers neighbors and associated information
  * in an AMeshObject. Instances of this type do not actually store any
  * information; that is provided by the AMeshObject provided as argument
- * into each method call.
+ * into each method call.</p>
+ * <p>Once an AMeshObject has at least {@link #NEIGHBOR_INDEX_THRESHOLD} neighbors,
+ * this class also maintains an {@link AMeshObjectNeighborIndex} for it, so finding a
+ * neighbor and traversing by RoleType do not need to scan all neighbors. The index is
+ * discarded again if the number of neighbors drops well below the threshold.</p>
  */
 public class AMeshObjectNeighborManager
 {
@@ -73,6 +78,15 @@ public class AMeshObjectNeighborManager
         if( neighborIdentifiers == null || neighborIdentifiers.length == 0 ) {
             return -1;
         }
+        if( neighborIdentifiers.length >= NEIGHBOR_INDEX_THRESHOLD ) {
+            synchronized( subject ) {
+                AMeshObjectNeighborIndex index = obtainNeighborIndex( subject );
+                if( index != null ) {
+                    return index.indexOf( neighborIdentifier );
+                }
+                neighborIdentifiers = subject.theNeighborIdentifiers; // may have changed in the meantime
+            }
+        }
         for( int i=0 ; i<neighborIdentifiers.length ; ++i ) {
             if( neighborIdentifier.equals( neighborIdentifiers[i] )) {
                 return i;
@@ -136,20 +150,10 @@ public class AMeshObjectNeighborManager
         throws
             NotRelatedException
     {
-        MeshObjectIdentifier [] neighborIdentifiers;
-        RoleType [][]           neighborRoleTypes;
-
         synchronized( subject ) {
-            neighborIdentifiers = subject.theNeighborIdentifiers;
-            neighborRoleTypes   = subject.theNeighborRoleTypes;
-        }
-
-        if( neighborIdentifiers != null && neighborIdentifiers.length > 0 ) {
-            for( int i=0 ; i<neighborIdentifiers.length ; ++i ) {
-                if( neighborIdentifier.equals( neighborIdentifiers[i] )) {
-                    // found
-                    return neighborRoleTypes[i];
-                }
+            int found = determineRelationshipIndex( subject, neighborIdentifier );
+            if( found >= 0 ) {
+                return subject.theNeighborRoleTypes[found];
             }
         }
         throw new NotRelatedException(
@@ -161,6 +165,68 @@ public class AMeshObjectNeighborManager
                 neighborIdentifier );
     }
 
+    /**
+     * Add the identifiers of those neighbors of a MeshObject, with which the MeshObject
+     * has a relationship with the given RoleType, or a specialization of it, to a Collection.
+     *
+     * @param subject the MeshObject in question
+     * @param type the RoleType
+     * @param result the Collection to add to
+     */
+    public void addNeighborIdentifiersFor(
+            AMeshObject                      subject,
+            RoleType                         type,
+            Collection<MeshObjectIdentifier> result )
+    {
+        synchronized( subject ) {
+            AMeshObjectNeighborIndex index = obtainNeighborIndex( subject );
+            if( index != null ) {
+                index.addNeighborIdentifiersFor( type, result );
+                return;
+            }
+
+            MeshObjectIdentifier [] neighborIdentifiers = subject.theNeighborIdentifiers;
+            RoleType [][]           neighborRoleTypes   = subject.theNeighborRoleTypes;
+
+            if( neighborIdentifiers == null ) {
+                return;
+            }
+            for( int i=0 ; i<neighborIdentifiers.length ; ++i ) {
+                if( neighborRoleTypes[i] == null ) {
+                    continue;
+                }
+                for( int j=0 ; j<neighborRoleTypes[i].length ; ++j ) {
+                    if( neighborRoleTypes[i][j].isSpecializationOfOrEquals( type )) {
+                        result.add( neighborIdentifiers[i] );
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtain the AMeshObjectNeighborIndex of a MeshObject, creating it if the MeshObject
+     * has enough neighbors to warrant one. The caller must hold the MeshObject's monitor.
+     *
+     * @param subject the MeshObject in question
+     * @return the AMeshObjectNeighborIndex, or null if the MeshObject has too few neighbors
+     */
+    protected AMeshObjectNeighborIndex obtainNeighborIndex(
+            AMeshObject subject )
+    {
+        AMeshObjectNeighborIndex ret = subject.theNeighborIndex;
+        if( ret == null ) {
+            MeshObjectIdentifier [] neighborIdentifiers = subject.theNeighborIdentifiers;
+
+            if( neighborIdentifiers != null && neighborIdentifiers.length >= NEIGHBOR_INDEX_THRESHOLD ) {
+                ret = AMeshObjectNeighborIndex.create( neighborIdentifiers, subject.theNeighborRoleTypes );
+                subject.theNeighborIndex = ret;
+            }
+        }
+        return ret;
+    }
+
     /**
      * Append a new neighbor and associated RoleTypes to a MeshObject.
      * 
@@ -207,6 +273,9 @@ public class AMeshObjectNeighborManager
             subject.theNeighborIdentifiers = makeMeshObjectIdentifiers( subject.theNeighborIdentifiers, neighborIdentifier );
             subject.theNeighborRoleTypes   = ArrayHelper.append( subject.theNeighborRoleTypes, neighborRoleTypes,  RoleType[].class );
         }
+        if( subject.theNeighborIndex != null ) {
+            subject.theNeighborIndex.neighborAppended( subject.theNeighborIdentifiers.length-1, neighborIdentifier, neighborRoleTypes );
+        }
     }
 
     /**
@@ -241,8 +310,19 @@ public class AMeshObjectNeighborManager
             AMeshObject subject,
             int         index )
     {
+        MeshObjectIdentifier neighborIdentifier = subject.theNeighborIdentifiers[index];
+        RoleType []          neighborRoleTypes  = subject.theNeighborRoleTypes[index];
+
         subject.theNeighborIdentifiers = removeMeshObjectIdentifier( subject.theNeighborIdentifiers, index );
         subject.theNeighborRoleTypes   = ArrayHelper.remove( subject.theNeighborRoleTypes, index, RoleType[].class );
+
+        if( subject.theNeighborIndex != null ) {
+            if( subject.theNeighborIdentifiers.length < NEIGHBOR_INDEX_THRESHOLD / 2 ) {
+                subject.theNeighborIndex = null; // not worth it any more
+            } else {
+                subject.theNeighborIndex.neighborRemoved( index, neighborIdentifier, neighborRoleTypes, subject.theNeighborIdentifiers );
+            }
+        }
     }
 
     /**
@@ -304,6 +384,9 @@ public class AMeshObjectNeighborManager
         } else {
             subject.theNeighborRoleTypes[index] = ArrayHelper.append( subject.theNeighborRoleTypes[index], toAdd, RoleType.class );
         }
+        if( subject.theNeighborIndex != null ) {
+            subject.theNeighborIndex.roleTypesAdded( subject.theNeighborIdentifiers[index], toAdd );
+        }
     }
 
     /**
@@ -347,6 +430,9 @@ public class AMeshObjectNeighborManager
         if( subject.theNeighborRoleTypes[index].length == 0 ) {
             subject.theNeighborRoleTypes[index] = null;
         }
+        if( subject.theNeighborIndex != null ) {
+            subject.theNeighborIndex.roleTypeRemoved( subject.theNeighborIdentifiers[index], toRemove );
+        }
     }
 
     /**
@@ -392,6 +478,11 @@ public class AMeshObjectNeighborManager
         return ret;
     }
 
+    /**
+     * The number of neighbors at and above which an AMeshObjectNeighborIndex is maintained.
+     */
+    public static final int NEIGHBOR_INDEX_THRESHOLD = 32;
+
     /**
      * Singleton instance of this class.
      */
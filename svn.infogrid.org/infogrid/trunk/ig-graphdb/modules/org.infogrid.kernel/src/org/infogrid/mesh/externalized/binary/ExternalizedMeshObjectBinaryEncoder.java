@@ -0,0 +1,527 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.mesh.externalized.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.externalized.ExternalizedMeshObject;
+import org.infogrid.mesh.externalized.ExternalizedMeshObjectEncoder;
+import org.infogrid.mesh.externalized.ParserFriendlyExternalizedMeshObject;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.model.primitives.MeshTypeIdentifier;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+import org.infogrid.model.primitives.externalized.binary.BinaryInput;
+import org.infogrid.model.primitives.externalized.binary.BinaryOutput;
+import org.infogrid.model.primitives.externalized.binary.PropertyValueBinaryEncoder;
+import org.infogrid.modelbase.MeshTypeIdentifierFactory;
+
+/**
+ * <p>Encodes and decodes an ExternalizedMeshObject in a compact, versioned binary
+ *    representation. This is considerably smaller and faster to decode than the XML
+ *    representation, which makes it the preferred representation in Stores.</p>
+ * <p>The encoding starts with a format version byte. It is followed by a table of all
+ *    MeshTypeIdentifiers used by the ExternalizedMeshObject, so each of them is written
+ *    and parsed only once, and then referred to by its index in the table. The table is
+ *    sorted, and each entry only contains the part that differs from the previous one,
+ *    as MeshTypeIdentifiers from the same Subject Area share long prefixes. Counts and
+ *    lengths are written as variable-length quantities.</p>
+ * <p>Instances hold no parsing state, so the same instance may be used by any number
+ *    of Threads at the same time.</p>
+ */
+public class ExternalizedMeshObjectBinaryEncoder
+        extends
+            PropertyValueBinaryEncoder
+        implements
+            ExternalizedMeshObjectEncoder
+{
+    /**
+     * Constructor.
+     */
+    public ExternalizedMeshObjectBinaryEncoder()
+    {
+        // no op
+    }
+
+    /**
+     * Serialize an ExternalizedMeshObject to an OutputStream.
+     *
+     * @param obj the input ExternalizedMeshObject
+     * @param out the OutputStream to which to append the ExternalizedMeshObject
+     * @throws EncodingException thrown if a problem occurred during encoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void encodeExternalizedMeshObject(
+            ExternalizedMeshObject obj,
+            OutputStream           out )
+        throws
+            EncodingException,
+            IOException
+    {
+        BinaryOutput buf = BinaryOutput.create();
+
+        appendExternalizedMeshObject( obj, buf );
+
+        buf.writeTo( out );
+    }
+
+    /**
+     * Serialize an ExternalizedMeshObject to a BinaryOutput.
+     *
+     * @param obj the ExternalizedMeshObject to encode
+     * @param buf the BinaryOutput to which to append the ExternalizedMeshObject
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    public void appendExternalizedMeshObject(
+            ExternalizedMeshObject obj,
+            BinaryOutput           buf )
+        throws
+            EncodingException
+    {
+        buf.writeByte( FORMAT_VERSION );
+
+        buf.writeString( obj.getIdentifier().toExternalForm() );
+        buf.writeSignedVarLong( obj.getTimeCreated() );
+        buf.writeSignedVarLong( obj.getTimeUpdated() );
+        buf.writeSignedVarLong( obj.getTimeRead() );
+        buf.writeSignedVarLong( obj.getTimeExpires() );
+
+        Map<MeshTypeIdentifier,Integer> typeTable = createTypeTable( obj );
+        String []                       types     = new String[ typeTable.size() ];
+        for( Map.Entry<MeshTypeIdentifier,Integer> current : typeTable.entrySet() ) {
+            types[ current.getValue() ] = current.getKey().toExternalForm();
+        }
+
+        // the table is sorted, so we only write the part that differs from the previous entry
+        buf.writeVarInt( types.length );
+        String previous = "";
+        for( int i=0 ; i<types.length ; ++i ) {
+            int shared = sharedPrefixLength( previous, types[i] );
+            buf.writeVarInt( shared );
+            buf.writeString( types[i].substring( shared ));
+            previous = types[i];
+        }
+
+        encodeExternalizedMeshObjectTypes(       obj, typeTable, buf );
+        encodeExternalizedMeshObjectProperties(  obj, typeTable, buf );
+        encodeExternalizedMeshObjectNeighbors(   obj, typeTable, buf );
+        encodeExternalizedMeshObjectEquivalents( obj, buf );
+
+        appendExternalizedMeshObjectEncodingHook( obj, typeTable, buf );
+    }
+
+    /**
+     * Assign an index to each of the MeshTypeIdentifiers used by an ExternalizedMeshObject,
+     * in the sequence of their external forms.
+     *
+     * @param obj the ExternalizedMeshObject to encode
+     * @return the indices, keyed by MeshTypeIdentifier
+     */
+    protected Map<MeshTypeIdentifier,Integer> createTypeTable(
+            ExternalizedMeshObject obj )
+    {
+        TreeMap<String,MeshTypeIdentifier> sorted = new TreeMap<String,MeshTypeIdentifier>();
+
+        addToTypeTable( obj.getExternalTypeIdentifiers(), sorted );
+        addToTypeTable( obj.getPropertyTypes(), sorted );
+
+        MeshObjectIdentifier [] neighbors = obj.getNeighbors();
+        if( neighbors != null ) {
+            for( int i=0 ; i<neighbors.length ; ++i ) {
+                addToTypeTable( obj.getRoleTypesFor( neighbors[i] ), sorted );
+            }
+        }
+
+        Map<MeshTypeIdentifier,Integer> ret = new HashMap<MeshTypeIdentifier,Integer>();
+        for( MeshTypeIdentifier current : sorted.values() ) {
+            ret.put( current, ret.size() );
+        }
+        return ret;
+    }
+
+    /**
+     * Add MeshTypeIdentifiers to a type table being assembled.
+     *
+     * @param identifiers the MeshTypeIdentifiers, or null
+     * @param sorted the type table being assembled, keyed by external form
+     */
+    protected static void addToTypeTable(
+            MeshTypeIdentifier []              identifiers,
+            TreeMap<String,MeshTypeIdentifier> sorted )
+    {
+        if( identifiers == null ) {
+            return;
+        }
+        for( int i=0 ; i<identifiers.length ; ++i ) {
+            sorted.put( identifiers[i].toExternalForm(), identifiers[i] );
+        }
+    }
+
+    /**
+     * Determine the length of the prefix shared by two Strings.
+     *
+     * @param one the first String
+     * @param two the second String
+     * @return the number of leading characters that are the same
+     */
+    protected static int sharedPrefixLength(
+            String one,
+            String two )
+    {
+        int max = Math.min( one.length(), two.length() );
+        int ret = 0;
+        while( ret < max && one.charAt( ret ) == two.charAt( ret )) {
+            ++ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Serialize a set of MeshTypeIdentifiers as indices into the type table.
+     *
+     * @param identifiers the MeshTypeIdentifiers, or null
+     * @param typeTable the type table
+     * @param buf the BinaryOutput to which to append
+     */
+    protected void encodeTypeIndices(
+            MeshTypeIdentifier []           identifiers,
+            Map<MeshTypeIdentifier,Integer> typeTable,
+            BinaryOutput                    buf )
+    {
+        if( identifiers == null ) {
+            buf.writeVarInt( 0 );
+            return;
+        }
+        buf.writeVarInt( identifiers.length );
+        for( int i=0 ; i<identifiers.length ; ++i ) {
+            buf.writeVarInt( typeTable.get( identifiers[i] ));
+        }
+    }
+
+    /**
+     * Serialize the types section.
+     *
+     * @param obj the ExternalizedMeshObject to encode
+     * @param typeTable the type table
+     * @param buf the BinaryOutput to which to append the ExternalizedMeshObject
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    protected void encodeExternalizedMeshObjectTypes(
+            ExternalizedMeshObject          obj,
+            Map<MeshTypeIdentifier,Integer> typeTable,
+            BinaryOutput                    buf )
+        throws
+            EncodingException
+    {
+        encodeTypeIndices( obj.getExternalTypeIdentifiers(), typeTable, buf );
+    }
+
+    /**
+     * Serialize the properties section.
+     *
+     * @param obj the ExternalizedMeshObject to encode
+     * @param typeTable the type table
+     * @param buf the BinaryOutput to which to append the ExternalizedMeshObject
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    protected void encodeExternalizedMeshObjectProperties(
+            ExternalizedMeshObject          obj,
+            Map<MeshTypeIdentifier,Integer> typeTable,
+            BinaryOutput                    buf )
+        throws
+            EncodingException
+    {
+        MeshTypeIdentifier [] allPropertyTypes  = obj.getPropertyTypes();
+        PropertyValue []      allPropertyValues = obj.getPropertyValues();
+
+        if( allPropertyTypes == null ) {
+            buf.writeVarInt( 0 );
+            return;
+        }
+        buf.writeVarInt( allPropertyTypes.length );
+        for( int i=0 ; i<allPropertyTypes.length ; ++i ) {
+            buf.writeVarInt( typeTable.get( allPropertyTypes[i] ));
+            appendPropertyValue( allPropertyValues[i], buf );
+        }
+    }
+
+    /**
+     * Serialize the neighbors section.
+     *
+     * @param obj the ExternalizedMeshObject to encode
+     * @param typeTable the type table
+     * @param buf the BinaryOutput to which to append the ExternalizedMeshObject
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    protected void encodeExternalizedMeshObjectNeighbors(
+            ExternalizedMeshObject          obj,
+            Map<MeshTypeIdentifier,Integer> typeTable,
+            BinaryOutput                    buf )
+        throws
+            EncodingException
+    {
+        MeshObjectIdentifier [] neighbors = obj.getNeighbors();
+
+        if( neighbors == null ) {
+            buf.writeVarInt( 0 );
+            return;
+        }
+        buf.writeVarInt( neighbors.length );
+        for( int i=0 ; i<neighbors.length ; ++i ) {
+            buf.writeString( neighbors[i].toExternalForm() );
+            encodeTypeIndices( obj.getRoleTypesFor( neighbors[i] ), typeTable, buf );
+        }
+    }
+
+    /**
+     * Serialize the equivalents section.
+     *
+     * @param obj the ExternalizedMeshObject to encode
+     * @param buf the BinaryOutput to which to append the ExternalizedMeshObject
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    protected void encodeExternalizedMeshObjectEquivalents(
+            ExternalizedMeshObject obj,
+            BinaryOutput           buf )
+        throws
+            EncodingException
+    {
+        // If we have this, we have to write even null values, because otherwise we can't distinguish right from left
+        MeshObjectIdentifier [] equivalents = obj.getEquivalents();
+
+        if( equivalents == null ) {
+            buf.writeVarInt( 0 );
+            return;
+        }
+        buf.writeVarInt( equivalents.length );
+        for( int i=0 ; i<equivalents.length ; ++i ) {
+            buf.writeString( equivalents[i] != null ? equivalents[i].toExternalForm() : null );
+        }
+    }
+
+    /**
+     * Hook to enable subclasses to add to the encoding of an ExternalizedMeshObject.
+     *
+     * @param obj the ExternalizedMeshObject to encode
+     * @param typeTable the type table
+     * @param buf the BinaryOutput to which to append the ExternalizedMeshObject
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    protected void appendExternalizedMeshObjectEncodingHook(
+            ExternalizedMeshObject          obj,
+            Map<MeshTypeIdentifier,Integer> typeTable,
+            BinaryOutput                    buf )
+        throws
+            EncodingException
+    {
+        // noop on this level
+    }
+
+    /**
+     * Deserialize an ExternalizedMeshObject from a stream.
+     *
+     * @param contentAsStream the byte [] stream in which the ExternalizedMeshObject is encoded
+     * @param mb the MeshBase on whose behalf the decoding is performed
+     * @return return the just-instantiated ExternalizedMeshObject
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public ExternalizedMeshObject decodeExternalizedMeshObject(
+            InputStream contentAsStream,
+            MeshBase    mb )
+        throws
+            DecodingException,
+            IOException
+    {
+        BinaryInput in = BinaryInput.create( contentAsStream );
+
+        return readExternalizedMeshObject( in, mb );
+    }
+
+    /**
+     * Read an ExternalizedMeshObject from a BinaryInput.
+     *
+     * @param in the BinaryInput
+     * @param mb the MeshBase on whose behalf the decoding is performed
+     * @return return the just-instantiated ExternalizedMeshObject
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    public ExternalizedMeshObject readExternalizedMeshObject(
+            BinaryInput in,
+            MeshBase    mb )
+        throws
+            DecodingException
+    {
+        int version = in.readByte();
+        if( version != FORMAT_VERSION ) {
+            throw new DecodingException( "Unsupported format version " + version + ", expected " + FORMAT_VERSION );
+        }
+
+        MeshTypeIdentifierFactory typeIdFactory = mb.getModelBase().getMeshTypeIdentifierFactory();
+
+        ParserFriendlyExternalizedMeshObject ret = mb.getMeshBaseLifecycleManager().createParserFriendlyExternalizedMeshObject();
+
+        ret.setIdentifier( readMeshObjectIdentifier( in, mb ));
+        ret.setTimeCreated( in.readSignedVarLong() );
+        ret.setTimeUpdated( in.readSignedVarLong() );
+        ret.setTimeRead(    in.readSignedVarLong() );
+        ret.setTimeExpires( in.readSignedVarLong() );
+
+        MeshTypeIdentifier [] types    = new MeshTypeIdentifier[ in.readVarInt() ];
+        String                previous = "";
+        for( int i=0 ; i<types.length ; ++i ) {
+            int    shared = in.readVarInt();
+            String suffix = in.readString();
+            if( shared > previous.length() || suffix == null ) {
+                throw new DecodingException( "Invalid type table entry " + i );
+            }
+            String current = shared > 0 ? previous.substring( 0, shared ) + suffix : suffix;
+
+            types[i] = typeIdFactory.fromExternalForm( current );
+            previous = current;
+        }
+
+        int nTypes = in.readVarInt();
+        for( int i=0 ; i<nTypes ; ++i ) {
+            ret.addMeshType( readTypeIndex( in, types ));
+        }
+
+        int nProperties = in.readVarInt();
+        for( int i=0 ; i<nProperties ; ++i ) {
+            ret.addPropertyType( readTypeIndex( in, types ));
+            ret.addPropertyValue( readPropertyValue( in ));
+        }
+
+        int nNeighbors = in.readVarInt();
+        for( int i=0 ; i<nNeighbors ; ++i ) {
+            ParserFriendlyExternalizedMeshObject.Relationship rel = createRelationship(
+                    ret.getIdentifier(),
+                    readMeshObjectIdentifier( in, mb ),
+                    -1L );
+
+            int nRoleTypes = in.readVarInt();
+            for( int j=0 ; j<nRoleTypes ; ++j ) {
+                rel.addType( readTypeIndex( in, types ));
+            }
+            ret.addRelationship( rel );
+        }
+
+        int nEquivalents = in.readVarInt();
+        for( int i=0 ; i<nEquivalents ; ++i ) {
+            ret.addEquivalent( readMeshObjectIdentifier( in, mb ));
+        }
+
+        readExternalizedMeshObjectDecodingHook( ret, types, in, mb );
+
+        return ret;
+    }
+
+    /**
+     * Read a MeshObjectIdentifier.
+     *
+     * @param in the BinaryInput
+     * @param mb the MeshBase on whose behalf the decoding is performed
+     * @return the MeshObjectIdentifier, or null
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected MeshObjectIdentifier readMeshObjectIdentifier(
+            BinaryInput in,
+            MeshBase    mb )
+        throws
+            DecodingException
+    {
+        String externalForm = in.readString();
+        if( externalForm == null ) {
+            return null;
+        }
+        try {
+            return mb.getMeshObjectIdentifierFactory().guessFromExternalForm( externalForm );
+
+        } catch( ParseException ex ) {
+            throw new DecodingException( ex );
+        }
+    }
+
+    /**
+     * Read an index into the type table.
+     *
+     * @param in the BinaryInput
+     * @param types the type table
+     * @return the MeshTypeIdentifier at that index
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected MeshTypeIdentifier readTypeIndex(
+            BinaryInput           in,
+            MeshTypeIdentifier [] types )
+        throws
+            DecodingException
+    {
+        int index = in.readVarInt();
+        if( index >= types.length ) {
+            throw new DecodingException( "Invalid type index " + index + ", only have " + types.length );
+        }
+        return types[ index ];
+    }
+
+    /**
+     * Factors out the creation of Relationship instances, so subclasses can override it.
+     *
+     * @param identifier the MeshObjectIdentifier on this side of the relationship
+     * @param neighborIdentifier the MeshObjectIdentifier on the other side of the relationship
+     * @param timeUpdated the time it was last updated
+     * @return the created Relationship object
+     */
+    protected ParserFriendlyExternalizedMeshObject.Relationship createRelationship(
+            MeshObjectIdentifier identifier,
+            MeshObjectIdentifier neighborIdentifier,
+            long                 timeUpdated )
+    {
+        return new ParserFriendlyExternalizedMeshObject.Relationship( identifier, neighborIdentifier, timeUpdated );
+    }
+
+    /**
+     * Hook to enable subclasses to read what they added in
+     * {@link #appendExternalizedMeshObjectEncodingHook}.
+     *
+     * @param obj the ExternalizedMeshObject being decoded
+     * @param types the type table
+     * @param in the BinaryInput
+     * @param mb the MeshBase on whose behalf the decoding is performed
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected void readExternalizedMeshObjectDecodingHook(
+            ParserFriendlyExternalizedMeshObject obj,
+            MeshTypeIdentifier []                types,
+            BinaryInput                          in,
+            MeshBase                             mb )
+        throws
+            DecodingException
+    {
+        // noop on this level
+    }
+
+    /**
+     * The version of the binary format written by this class. Incompatible changes to
+     * the format must increment this.
+     */
+    public static final int FORMAT_VERSION = 1;
+}
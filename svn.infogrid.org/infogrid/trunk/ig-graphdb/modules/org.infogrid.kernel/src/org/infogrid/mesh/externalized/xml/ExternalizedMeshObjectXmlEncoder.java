@@ -321,7 +321,33 @@ public class ExternalizedMeshObjectXmlEncoder
      * @throws DecodingException thrown if a problem occurred during decoding
      * @throws IOException thrown if an I/O error occurred
      */
-    public synchronized ExternalizedMeshObject decodeExternalizedMeshObject(
+    public ExternalizedMeshObject decodeExternalizedMeshObject(
+            InputStream contentAsStream,
+            MeshBase    mb )
+        throws
+            DecodingException,
+            IOException
+    {
+        ExternalizedMeshObjectXmlEncoder decoder = (ExternalizedMeshObjectXmlEncoder) obtainDecoder();
+        try {
+            return decoder.internalDecodeExternalizedMeshObject( contentAsStream, mb );
+
+        } finally {
+            releaseDecoder( decoder );
+        }
+    }
+
+    /**
+     * Deserialize a ExternalizedMeshObject from a stream, using this instance as the parse handler.
+     * This must only be invoked on an instance obtained through {@link #obtainDecoder}.
+     * 
+     * @param contentAsStream the byte [] stream in which the ExternalizedProxy is encoded
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return return the just-instantiated ExternalizedMeshObject
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected ExternalizedMeshObject internalDecodeExternalizedMeshObject(
             InputStream contentAsStream,
             MeshBase    mb )
         throws
@@ -14,6 +14,7 @@
 
 package org.infogrid.mesh.set;
 
+import java.util.HashSet;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.meshbase.MeshBase;
@@ -269,12 +270,13 @@ public abstract class AbstractMeshObjectSetFactory
 
         MeshObject [] objs = ArrayHelper.createArray( theComponentClass, count );
 
+        HashSet<MeshObject> seen = new HashSet<MeshObject>( count * 2 );
         count = 0;
         for( int i=0 ; i<inputSets.length ; ++i ) {
             MeshObject [] candidates = inputSets[i].getMeshObjects();
 
             for( int j=0 ; j<candidates.length ; ++j ) {
-                if( !ArrayHelper.isIn( candidates[j], objs, 0, count, false )) {
+                if( seen.add( candidates[j] )) {
                     if( selector == null || selector.accepts( candidates[j] )) {
                         objs[ count++ ] = candidates[j];
                     }
@@ -306,13 +308,17 @@ public abstract class AbstractMeshObjectSetFactory
 
         int takenOut = 0;
         for( int i=1; i<inputSets.length ; ++i ) {
-            MeshObject [] thisContent = inputSets[i].getMeshObjects();
+            MeshObject []       thisContent = inputSets[i].getMeshObjects();
+            HashSet<MeshObject> thisSet     = new HashSet<MeshObject>( thisContent.length * 2 );
+            for( int j=0 ; j<thisContent.length ; ++j ) {
+                thisSet.add( thisContent[j] );
+            }
             for( int j=0 ; j<ret.length ; ++j ) {
                 MeshObject testObject = ret[j];
                 if( testObject == null ) {
                     continue; // was removed previously
                 }
-                if( !ArrayHelper.isIn( testObject, thisContent, false )) {
+                if( !thisSet.contains( testObject )) {
                     if( selector == null || !selector.accepts( testObject )) { // note this is !accepts
                         ret[j] = null;
                         ++takenOut;
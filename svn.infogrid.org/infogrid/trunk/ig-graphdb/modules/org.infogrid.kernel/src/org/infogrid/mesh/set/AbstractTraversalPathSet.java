@@ -17,6 +17,7 @@ package org.infogrid.mesh.set;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.EventObject;
+import java.util.HashSet;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.meshbase.MeshBase;
 import org.infogrid.model.traversal.TraversalPath;
@@ -196,19 +197,12 @@ public abstract class AbstractTraversalPathSet
         MeshObject    [] content = new MeshObject[ paths.length ];
         int count = 0;
 
+        HashSet<MeshObject> found = new HashSet<MeshObject>( paths.length * 2 );
         for( int i=0 ; i<paths.length ; ++i ) {
-            boolean found   = false;
-            MeshObject  current = paths[i].getLastMeshObject();
-            for( int j=0 ; j<i ; ++j ) {
-                if( content[j] == current ) {
-                    found = true;
-                    break;
-                }
+            MeshObject current = paths[i].getLastMeshObject();
+            if( found.add( current )) {
+                content[ count++ ] = current;
             }
-            if( found ) {
-                continue;
-            }
-            content[ count++ ] = current;
         }
         if( count < content.length ) {
             content = ArrayHelper.copyIntoNewArray( content, 0, count, MeshObject.class );
@@ -233,19 +227,12 @@ public abstract class AbstractTraversalPathSet
         MeshObject    [] content = new MeshObject[ paths.length ];
         int count = 0;
 
+        HashSet<MeshObject> found = new HashSet<MeshObject>( paths.length * 2 );
         for( int i=0 ; i<paths.length ; ++i ) {
-            boolean found   = false;
-            MeshObject  current = paths[i].getMeshObjectAt( index );
-            for( int j=0 ; j<i ; ++j ) {
-                if( content[j] == current ) {
-                    found = true;
-                    break;
-                }
-            }
-            if( found ) {
-                continue;
+            MeshObject current = paths[i].getMeshObjectAt( index );
+            if( found.add( current )) {
+                content[ count++ ] = current;
             }
-            content[ count++ ] = current;
         }
         if( count < content.length ) {
             content = ArrayHelper.copyIntoNewArray( content, 0, count, MeshObject.class );
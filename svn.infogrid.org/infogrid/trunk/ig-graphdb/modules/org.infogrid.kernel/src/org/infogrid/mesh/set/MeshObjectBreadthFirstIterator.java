@@ -19,7 +19,10 @@ import org.infogrid.model.traversal.TraversalSpecification;
 import org.infogrid.util.logging.Log;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <p>This is a breadth-first iterator over a a graph of MeshObjects, returning the
@@ -49,7 +52,7 @@ public class MeshObjectBreadthFirstIterator
             MeshObject start,
             int        max )
     {
-        return new MeshObjectBreadthFirstIterator( start, null, max );
+        return new MeshObjectBreadthFirstIterator( start, null, max, null );
     }
 
     /**
@@ -66,7 +69,27 @@ public class MeshObjectBreadthFirstIterator
             TraversalSpecification toTraverse,
             int                    max )
     {
-        return new MeshObjectBreadthFirstIterator( start, toTraverse, max );
+        return new MeshObjectBreadthFirstIterator( start, toTraverse, max, null );
+    }
+
+    /**
+     * Factory method for a MeshObjectBreadthFirstIterator that will traverse the specified TraversalSpecification
+     * from the start MeshObject, then from the reached MeshObjects, and so forth, spreading the work
+     * for large numbers of reached MeshObjects over a ForkJoinPool.
+     *
+     * @param start where to start the traversal
+     * @param toTraverse the TraversalSpecification to traverse, or null to traverse to all neighbors
+     * @param max the maximum number of "steps" we want to traverse
+     * @param pool the ForkJoinPool to use, if any
+     * @return the created MeshObjectBreadthFirstIterator
+     */
+    public static MeshObjectBreadthFirstIterator create(
+            MeshObject             start,
+            TraversalSpecification toTraverse,
+            int                    max,
+            ForkJoinPool           pool )
+    {
+        return new MeshObjectBreadthFirstIterator( start, toTraverse, max, pool );
     }
 
     /**
@@ -75,11 +98,13 @@ public class MeshObjectBreadthFirstIterator
      * @param start where to start the traversal
      * @param toTraverse the TraversalSpecification to traverse
      * @param max the maximum number of "steps" we want to traverse
+     * @param pool the ForkJoinPool to use, if any
      */
     protected MeshObjectBreadthFirstIterator(
             MeshObject             start,
             TraversalSpecification toTraverse,
-            int                    max )
+            int                    max,
+            ForkJoinPool           pool )
     {
         startMeshObject = start;
         maximum         = max;
@@ -92,8 +117,10 @@ public class MeshObjectBreadthFirstIterator
         }
 
         theTraversalSpecification = toTraverse;
+        theTraversal              = MeshObjectBreadthFirstTraversal.create( toTraverse, max, MeshObjectBreadthFirstTraversal.UNLIMITED, null, pool );
 
         outerIndex = 0;
+        visited.add( startMeshObject );
 
         ArrayList<MeshObject> nextStepArrayList = new ArrayList<MeshObject>();
         nextStepArrayList.add( startMeshObject );
@@ -176,30 +203,15 @@ public class MeshObjectBreadthFirstIterator
                 log.debug( "goNext() in else section" );
             }
 
-            // need to do the next step here
-            ArrayList<MeshObject> nextStepArrayList = new ArrayList<MeshObject>();
-
-            Iterator<MeshObject> nextStepIter = foundAlready.get( outerIndex ).iterator();
+            // need to do the next step here: all MeshObjects of the step are accessed together
+            ArrayList<MeshObject> previousStep = foundAlready.get( outerIndex );
             outerIndex++;
 
-            while( nextStepIter.hasNext() ) {
-                MeshObject    current = nextStepIter.next();
-                MeshObjectSet nextStepSet;
+            MeshObject [] nextStep = theTraversal.nextLevel(
+                    previousStep.toArray( new MeshObject[ previousStep.size() ] ),
+                    visited );
 
-                if( theTraversalSpecification != null ) {
-                    nextStepSet = current.traverse( theTraversalSpecification );
-                } else {
-                    nextStepSet = current.traverseToNeighborMeshObjects();
-                }
-
-                Iterator<MeshObject> candidateIter = nextStepSet.iterator();
-                while( candidateIter.hasNext() ) {
-                    MeshObject candidate = candidateIter.next();
-                    if( ! haveAlready( candidate, nextStepArrayList )) {
-                        nextStepArrayList.add( candidate );
-                    }
-                }
-            }
+            ArrayList<MeshObject> nextStepArrayList = new ArrayList<MeshObject>( Arrays.asList( nextStep ));
             foundAlready.add( outerIndex, nextStepArrayList );
 
             if( outerIndex < maximum ) {
@@ -244,12 +256,8 @@ public class MeshObjectBreadthFirstIterator
         if( candidate == startMeshObject ) {
             return true;
         }
-
-        for( int i=0 ; i<outerIndex ; ++i ) {
-            ArrayList<MeshObject> listHere = foundAlready.get( i );
-            if( listHere.contains( candidate )) {
-                return true;
-            }
+        if( visited.contains( candidate )) {
+            return true;
         }
         return currentList.contains( candidate );
     }
@@ -268,6 +276,16 @@ public class MeshObjectBreadthFirstIterator
      */
     protected ArrayList<ArrayList<MeshObject>> foundAlready = new ArrayList<ArrayList<MeshObject>>();
 
+    /**
+     * All MeshObjects found so far, for quick lookup.
+     */
+    protected HashSet<MeshObject> visited = new HashSet<MeshObject>();
+
+    /**
+     * Determines the MeshObjects reached by the next step.
+     */
+    protected MeshObjectBreadthFirstTraversal theTraversal;
+
     /**
      * The iterator that iterates over the "outer" foundAlready list.
      * We need to use an integer index here as a real iterator would fail every time
@@ -0,0 +1,358 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.mesh.set;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.NotPermittedException;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.MeshObjectAccessException;
+import org.infogrid.meshbase.ParallelChunkProcessor;
+import org.infogrid.model.traversal.TraversalSpecification;
+import org.infogrid.util.IsDeadException;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Traverses a graph of MeshObjects breadth-first, one level ("frontier") at a time,
+ *    by repeatedly traversing a TraversalSpecification, or to all neighbors if none is given.</p>
+ * <p>Before the MeshObjects of a frontier are traversed, the neighbors of all of them are
+ *    obtained with a single {@link MeshBase#accessLocally(MeshObjectIdentifier[]) accessLocally}
+ *    call. Against a MeshBase that has to load or replicate its MeshObjects, this takes one
+ *    batched round trip per level instead of one per MeshObject. Optionally, accessing and
+ *    traversing a large frontier is spread over the Threads of a ForkJoinPool; the caller's
+ *    identity is passed on to them.</p>
+ * <p>The traversal ends when no new MeshObjects are found, after the maximum number of
+ *    steps, once the maximum number of MeshObjects has been found, or as soon as a
+ *    MeshObject has been found that is accepted by an optional MeshObjectSelector.</p>
+ * <p><b>WARNING:</b> without limits, this may replicate a large part of the world's data
+ *    locally onto your machine.</p>
+ */
+public class MeshObjectBreadthFirstTraversal
+{
+    private static final Log log = Log.getLogInstance( MeshObjectBreadthFirstTraversal.class ); // our own, private logger
+
+    /**
+     * Factory method for a traversal without limits that runs in the calling Thread.
+     *
+     * @param toTraverse the TraversalSpecification to traverse, or null to traverse to all neighbors
+     * @return the created MeshObjectBreadthFirstTraversal
+     */
+    public static MeshObjectBreadthFirstTraversal create(
+            TraversalSpecification toTraverse )
+    {
+        return new MeshObjectBreadthFirstTraversal( toTraverse, UNLIMITED, UNLIMITED, null, null );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param toTraverse the TraversalSpecification to traverse, or null to traverse to all neighbors
+     * @param maxSteps the maximum number of steps to take from the start MeshObject, or UNLIMITED
+     * @param maxFound the maximum number of MeshObjects to find, including the start MeshObject, or UNLIMITED
+     * @param stopWhenFound if given, stop as soon as a MeshObject accepted by this MeshObjectSelector has been found
+     * @param pool if given, spread the work for large frontiers over this ForkJoinPool
+     * @return the created MeshObjectBreadthFirstTraversal
+     */
+    public static MeshObjectBreadthFirstTraversal create(
+            TraversalSpecification toTraverse,
+            int                    maxSteps,
+            int                    maxFound,
+            MeshObjectSelector     stopWhenFound,
+            ForkJoinPool           pool )
+    {
+        if( maxSteps < 0 ) {
+            throw new IllegalArgumentException( "maxSteps must not be negative" );
+        }
+        if( maxFound < 1 ) {
+            throw new IllegalArgumentException( "maxFound must be at least 1" );
+        }
+        return new MeshObjectBreadthFirstTraversal( toTraverse, maxSteps, maxFound, stopWhenFound, pool );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param toTraverse the TraversalSpecification to traverse, or null to traverse to all neighbors
+     * @param maxSteps the maximum number of steps to take from the start MeshObject
+     * @param maxFound the maximum number of MeshObjects to find, including the start MeshObject
+     * @param stopWhenFound if given, stop as soon as a MeshObject accepted by this MeshObjectSelector has been found
+     * @param pool if given, spread the work for large frontiers over this ForkJoinPool
+     */
+    protected MeshObjectBreadthFirstTraversal(
+            TraversalSpecification toTraverse,
+            int                    maxSteps,
+            int                    maxFound,
+            MeshObjectSelector     stopWhenFound,
+            ForkJoinPool           pool )
+    {
+        theTraversalSpecification = toTraverse;
+        theMaxSteps               = maxSteps;
+        theMaxFound               = maxFound;
+        theStopWhenFound          = stopWhenFound;
+        thePool                   = pool;
+    }
+
+    /**
+     * Traverse from a start MeshObject.
+     *
+     * @param start the start MeshObject
+     * @return the found MeshObjects, grouped by the number of steps they are away from the
+     *         start MeshObject. The first group only contains the start MeshObject.
+     */
+    public MeshObject [][] traverse(
+            MeshObject start )
+    {
+        ArrayList<MeshObject []> levels  = new ArrayList<MeshObject []>();
+        Set<MeshObject>          visited = new HashSet<MeshObject>();
+
+        MeshObject [] frontier = new MeshObject[] { start };
+        visited.add( start );
+        levels.add( frontier );
+
+        int     count = 1;
+        boolean done  = count >= theMaxFound || ( theStopWhenFound != null && theStopWhenFound.accepts( start ));
+
+        for( int step=1 ; !done && step <= theMaxSteps ; ++step ) {
+            MeshObject [] next = nextLevel( frontier, visited );
+
+            // apply the limits
+            int max = next.length;
+            for( int i=0 ; i<max ; ++i ) {
+                ++count;
+                if( count >= theMaxFound || ( theStopWhenFound != null && theStopWhenFound.accepts( next[i] ))) {
+                    max  = i+1;
+                    done = true;
+                }
+            }
+            if( max == 0 ) {
+                break;
+            }
+            if( max < next.length ) {
+                MeshObject [] old = next;
+                next = new MeshObject[ max ];
+                System.arraycopy( old, 0, next, 0, max );
+            }
+            levels.add( next );
+            frontier = next;
+        }
+        return levels.toArray( new MeshObject[ levels.size() ][] );
+    }
+
+    /**
+     * Traverse from a start MeshObject, and return all found MeshObjects, including the
+     * start MeshObject, as a single array.
+     *
+     * @param start the start MeshObject
+     * @return the found MeshObjects, in the sequence in which they were found
+     */
+    public MeshObject [] traverseToArray(
+            MeshObject start )
+    {
+        MeshObject [][] levels = traverse( start );
+
+        int count = 0;
+        for( int i=0 ; i<levels.length ; ++i ) {
+            count += levels[i].length;
+        }
+        MeshObject [] ret = new MeshObject[ count ];
+        count = 0;
+        for( int i=0 ; i<levels.length ; ++i ) {
+            System.arraycopy( levels[i], 0, ret, count, levels[i].length );
+            count += levels[i].length;
+        }
+        return ret;
+    }
+
+    /**
+     * Determine the next level of the traversal: the MeshObjects reached from the MeshObjects
+     * in the frontier that have not been visited before. They are added to the visited MeshObjects.
+     * This takes no limits into account.
+     *
+     * @param frontier the MeshObjects to traverse from
+     * @param visited the MeshObjects visited so far
+     * @return the newly reached MeshObjects, in sequence
+     */
+    public MeshObject [] nextLevel(
+            MeshObject []   frontier,
+            Set<MeshObject> visited )
+    {
+        if( frontier.length == 0 ) {
+            return frontier;
+        }
+        MeshBase mb = frontier[0].getMeshBase();
+
+        // Threads other than the one with the Transaction may not be able to proceed
+        ForkJoinPool pool = mb.getCurrentTransaction() == null ? thePool : null;
+
+        accessNeighbors( mb, frontier, pool );
+
+        MeshObject [][] reached = traverseFrom( frontier, pool );
+
+        ArrayList<MeshObject> ret = new ArrayList<MeshObject>();
+        for( int i=0 ; i<reached.length ; ++i ) {
+            for( int j=0 ; j<reached[i].length ; ++j ) {
+                if( visited.add( reached[i][j] )) {
+                    ret.add( reached[i][j] );
+                }
+            }
+        }
+        return ret.toArray( new MeshObject[ ret.size() ] );
+    }
+
+    /**
+     * Make the neighbors of the MeshObjects in the frontier available locally, with one
+     * accessLocally call per chunk of neighbors.
+     *
+     * @param mb the MeshBase
+     * @param frontier the MeshObjects whose neighbors shall be made available
+     * @param pool the ForkJoinPool to use, if any
+     */
+    protected void accessNeighbors(
+            final MeshBase mb,
+            MeshObject []  frontier,
+            ForkJoinPool   pool )
+    {
+        LinkedHashSet<MeshObjectIdentifier> neighbors = new LinkedHashSet<MeshObjectIdentifier>();
+        for( int i=0 ; i<frontier.length ; ++i ) {
+            try {
+                MeshObjectIdentifier [] found = frontier[i].getNeighborMeshObjectIdentifiers();
+                if( found != null ) {
+                    for( int j=0 ; j<found.length ; ++j ) {
+                        neighbors.add( found[j] );
+                    }
+                }
+            } catch( IsDeadException ex ) {
+                // ignore
+            }
+        }
+        if( neighbors.isEmpty() ) {
+            return;
+        }
+
+        final MeshObjectIdentifier [] identifiers = neighbors.toArray( new MeshObjectIdentifier[ neighbors.size() ] );
+        final boolean                 inTx        = mb.getCurrentTransaction() != null;
+
+        ParallelChunkProcessor.process( pool, identifiers.length, CHUNK_SIZE, new ParallelChunkProcessor.Chunk() {
+                public void process(
+                        int from,
+                        int to )
+                {
+                    MeshObjectIdentifier [] chunk = new MeshObjectIdentifier[ to - from ];
+                    System.arraycopy( identifiers, from, chunk, 0, chunk.length );
+
+                    if( inTx ) {
+                        // like traversal itself, do not reach out while a Transaction is open
+                        mb.findMeshObjectsByIdentifier( chunk );
+                        return;
+                    }
+                    try {
+                        mb.accessLocally( chunk );
+
+                    } catch( MeshObjectAccessException ex ) {
+                        if( log.isDebugEnabled() ) {
+                            log.debug( ex );
+                        }
+                    } catch( NotPermittedException ex ) {
+                        log.warn( ex );
+                    }
+                }
+        });
+    }
+
+    /**
+     * Traverse from each of the MeshObjects in the frontier.
+     *
+     * @param frontier the MeshObjects to traverse from
+     * @param pool the ForkJoinPool to use, if any
+     * @return the MeshObjects reached from each MeshObject in the frontier, in the same sequence
+     */
+    protected MeshObject [][] traverseFrom(
+            final MeshObject [] frontier,
+            ForkJoinPool        pool )
+    {
+        final MeshObject [][] ret = new MeshObject[ frontier.length ][];
+
+        ParallelChunkProcessor.process( pool, frontier.length, CHUNK_SIZE, new ParallelChunkProcessor.Chunk() {
+                public void process(
+                        int from,
+                        int to )
+                {
+                    for( int i=from ; i<to ; ++i ) {
+                        try {
+                            if( theTraversalSpecification != null ) {
+                                ret[i] = frontier[i].traverse( theTraversalSpecification ).getMeshObjects();
+                            } else {
+                                ret[i] = frontier[i].traverseToNeighborMeshObjects().getMeshObjects();
+                            }
+                        } catch( IsDeadException ex ) {
+                            ret[i] = new MeshObject[0];
+                        }
+                    }
+                }
+        });
+        return ret;
+    }
+
+    /**
+     * Obtain the TraversalSpecification that is traversed.
+     *
+     * @return the TraversalSpecification, or null if traversing to all neighbors
+     */
+    public TraversalSpecification getTraversalSpecification()
+    {
+        return theTraversalSpecification;
+    }
+
+    /**
+     * The TraversalSpecification to traverse, or null to traverse to all neighbors.
+     */
+    protected TraversalSpecification theTraversalSpecification;
+
+    /**
+     * The maximum number of steps to take from the start MeshObject.
+     */
+    protected int theMaxSteps;
+
+    /**
+     * The maximum number of MeshObjects to find, including the start MeshObject.
+     */
+    protected int theMaxFound;
+
+    /**
+     * If given, stop as soon as a MeshObject accepted by this MeshObjectSelector has been found.
+     */
+    protected MeshObjectSelector theStopWhenFound;
+
+    /**
+     * If given, spread the work for large frontiers over this ForkJoinPool.
+     */
+    protected ForkJoinPool thePool;
+
+    /**
+     * Indicates that there is no limit.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * The maximum number of MeshObjects, or MeshObjectIdentifiers, processed by a single task
+     * in the ForkJoinPool.
+     */
+    public static final int CHUNK_SIZE = 64;
+}
@@ -14,8 +14,10 @@
 
 package org.infogrid.mesh.set.m;
 
+import java.util.HashMap;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.set.AbstractMeshObjectSet;
+import org.infogrid.mesh.set.MeshObjectSet;
 import org.infogrid.mesh.set.MeshObjectSetFactory;
 import org.infogrid.mesh.set.MeshObjectSorter;
 import org.infogrid.meshbase.MeshBase;
@@ -146,6 +148,8 @@ public abstract class AbstractMMeshObjectSet
         MeshBase base          = theFactory.getMeshBase();
         currentContent         = new MeshObject[ count ];
         currentContentCounters = new int[ count ];
+
+        HashMap<MeshObject,Integer> positions = new HashMap<MeshObject,Integer>( count * 2 );
         count = 0;
 
         for( int i=0 ; i<initialContent.length ; ++i ) {
@@ -159,15 +163,11 @@ public abstract class AbstractMMeshObjectSet
                     throw new WrongMeshBaseException( base, candidate.getMeshBase() );
                 }
 
-                boolean found = false;
-                for( int k=0 ; k<count ; ++k ) {
-                    if( currentContent[k] == candidate ) {
-                        found = true;
-                        ++currentContentCounters[k];
-                        break;
-                    }
-                }
-                if( !found ) {
+                Integer found = positions.get( candidate );
+                if( found != null ) {
+                    ++currentContentCounters[ found.intValue() ];
+                } else {
+                    positions.put( candidate, count );
                     currentContent[count++] = candidate;
                 }
             }
@@ -213,6 +213,94 @@ public abstract class AbstractMMeshObjectSet
         return currentContent.length;
     }
 
+    /**
+     * Determine whether this set contains a certain MeshObject.
+     *
+     * @param testObject the MeshObject to test for
+     * @return true if testObject is contained in this set
+     * @throws WrongMeshBaseException thrown if the tested object is contained in a different MeshBase than the MeshObjects in this set
+     */
+    @Override
+    public boolean contains(
+            MeshObject testObject )
+        throws
+            WrongMeshBaseException
+    {
+        MeshObject [] content = currentContent;
+        if( content.length == 0 ) {
+            return false;
+        }
+        if( content[0].getMeshBase() != testObject.getMeshBase() ) {
+            throw new WrongMeshBaseException( content[0].getMeshBase(), testObject.getMeshBase() );
+        }
+        return findPositionIn( content, testObject ) >= 0;
+    }
+
+    /**
+     * Determine whether this set contains all MeshObjects in a supposed subset.
+     *
+     * @param subset the supposed subset
+     * @return true if this set contains all MeshObjects in the supposed subset
+     * @throws WrongMeshBaseException thrown if a tested object is contained in a different MeshBase than the MeshObjects in this set
+     */
+    @Override
+    public boolean containsAll(
+            MeshObjectSet subset )
+        throws
+            WrongMeshBaseException
+    {
+        if( getMeshBase() != subset.getMeshBase()) {
+            throw new WrongMeshBaseException( getMeshBase(), subset.getMeshBase() );
+        }
+
+        MeshObject [] content = currentContent;
+        for( MeshObject current : subset ) {
+            if( findPositionIn( content, current ) < 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the position of a MeshObject in a content array of this set. Small arrays
+     * are searched sequentially; for larger ones, a hash-based index is built on demand
+     * and kept until the content array is replaced.
+     *
+     * @param content the content array, which must be the current or a previous value of currentContent
+     * @param candidate the MeshObject to look for
+     * @return the position, or -1 if not found
+     */
+    protected int findPositionIn(
+            MeshObject [] content,
+            MeshObject    candidate )
+    {
+        if( content.length < CONTENT_INDEX_THRESHOLD ) {
+            for( int i=0 ; i<content.length ; ++i ) {
+                if( candidate == content[i] ) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        HashMap<MeshObject,Integer> index;
+        synchronized( this ) {
+            if( theIndexedContent != content ) {
+                index = new HashMap<MeshObject,Integer>( content.length * 2 );
+                for( int i=0 ; i<content.length ; ++i ) {
+                    index.put( content[i], i );
+                }
+                theIndexedContent = content;
+                theContentIndex   = index;
+            } else {
+                index = theContentIndex;
+            }
+        }
+        Integer ret = index.get( candidate );
+        return ret != null ? ret.intValue() : -1;
+    }
+
     /**
      * This is invoked by our subclasses to potentially reorder the set according to
      * the specified MeshObjectSorter.
@@ -245,4 +333,20 @@ public abstract class AbstractMMeshObjectSet
      * are N instances (there are N+1 instances).</p>
      */
     protected int [] currentContentCounters;
+
+    /**
+     * The content array that theContentIndex was built for.
+     */
+    private MeshObject [] theIndexedContent;
+
+    /**
+     * Position of each MeshObject in theIndexedContent, keyed by the MeshObject.
+     */
+    private HashMap<MeshObject,Integer> theContentIndex;
+
+    /**
+     * Sets with at least this many members use a hash-based index to determine whether
+     * they contain a MeshObject, instead of searching sequentially.
+     */
+    public static final int CONTENT_INDEX_THRESHOLD = 32;
 }
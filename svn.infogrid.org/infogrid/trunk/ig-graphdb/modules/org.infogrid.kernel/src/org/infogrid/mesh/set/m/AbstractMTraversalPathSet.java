@@ -14,6 +14,7 @@
 
 package org.infogrid.mesh.set.m;
 
+import java.util.HashMap;
 import org.infogrid.mesh.set.MeshObjectSetFactory;
 import org.infogrid.mesh.set.AbstractTraversalPathSet;
 import org.infogrid.meshbase.MeshBase;
@@ -69,8 +70,87 @@ public abstract class AbstractMTraversalPathSet
         return currentContent;
     }
 
+    /**
+     * Determine whether a certain TraversalPath is contained in this set.
+     * This method uses equals() to determine whether the path is contained.
+     *
+     * @param testObject the test TraversalPath
+     * @return true if testObject is contained in this set
+     */
+    @Override
+    public boolean contains(
+            TraversalPath testObject )
+    {
+        TraversalPath [] content = currentContent;
+        if( content.length < AbstractMMeshObjectSet.CONTENT_INDEX_THRESHOLD ) {
+            return super.contains( testObject );
+        }
+        return obtainContentIndex( content ).containsKey( testObject );
+    }
+
+    /**
+     * Find the position of a TraversalPath in a content array of this set, using
+     * identity rather than equals(). Small arrays are searched sequentially; for larger
+     * ones, a hash-based index is used.
+     *
+     * @param content the content array, which must be the current or a previous value of currentContent
+     * @param candidate the TraversalPath to look for
+     * @return the position, or -1 if not found
+     */
+    protected int findPositionIn(
+            TraversalPath [] content,
+            TraversalPath    candidate )
+    {
+        if( content.length >= AbstractMMeshObjectSet.CONTENT_INDEX_THRESHOLD ) {
+            Integer found = obtainContentIndex( content ).get( candidate );
+            if( found == null ) {
+                return -1;
+            }
+            if( content[ found.intValue() ] == candidate ) {
+                return found.intValue();
+            }
+            // an equal, but different TraversalPath is in the index: fall back
+        }
+        for( int i=0 ; i<content.length ; ++i ) {
+            if( candidate == content[i] ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Obtain the hash-based index over a content array of this set, building it if needed.
+     *
+     * @param content the content array
+     * @return the index, mapping each TraversalPath to its position
+     */
+    protected synchronized HashMap<TraversalPath,Integer> obtainContentIndex(
+            TraversalPath [] content )
+    {
+        if( theIndexedContent != content ) {
+            HashMap<TraversalPath,Integer> index = new HashMap<TraversalPath,Integer>( content.length * 2 );
+            for( int i=content.length-1 ; i>=0 ; --i ) {
+                index.put( content[i], i ); // backwards, so the first of several equal TraversalPaths wins
+            }
+            theIndexedContent = content;
+            theContentIndex   = index;
+        }
+        return theContentIndex;
+    }
+
     /**
      * The content of this set.
      */
     protected TraversalPath [] currentContent;
+
+    /**
+     * The content array that theContentIndex was built for.
+     */
+    private TraversalPath [] theIndexedContent;
+
+    /**
+     * Position of each TraversalPath in theIndexedContent, keyed by the TraversalPath.
+     */
+    private HashMap<TraversalPath,Integer> theContentIndex;
 }
@@ -14,7 +14,7 @@
 
 package org.infogrid.mesh.set.m;
 
-import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.set.ImmutableMeshObjectSet;
 import org.infogrid.mesh.set.MeshObjectSet;
@@ -73,7 +73,7 @@ public class ImmutableMMeshObjectSet
             RoleType role,
             boolean  considerEquivalents )
     {
-        ArrayList<MeshObject> almostRet = new ArrayList<MeshObject>( currentContent.length * 3 ); // fudge
+        LinkedHashSet<MeshObject> almostRet = new LinkedHashSet<MeshObject>( currentContent.length * 3 ); // fudge
         if( considerEquivalents ) {
 
             for( int i = 0 ; i < currentContent.length ; ++i ) {
@@ -83,9 +83,7 @@ public class ImmutableMMeshObjectSet
                     MeshObject [] found = equivalents[j].traverse( role ).getMeshObjects();
 
                     for( int k=0 ; k<found.length ; ++k ) {
-                        if( ! almostRet.contains( found[k] )) {
-                            almostRet.add( found[k] );
-                        }
+                        almostRet.add( found[k] );
                     }
                 }
             }
@@ -96,9 +94,7 @@ public class ImmutableMMeshObjectSet
                 MeshObject [] found = currentContent[i].traverse( role ).getMeshObjects();
 
                 for( int j=0 ; j<found.length ; ++j ) {
-                    if( ! almostRet.contains( found[j] )) {
-                        almostRet.add( found[j] );
-                    }
+                    almostRet.add( found[j] );
                 }
             }            
         }
@@ -14,11 +14,13 @@
 
 package org.infogrid.mesh.set.m;
 
+import java.util.HashSet;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.set.AbstractMeshObjectSetFactory;
 import org.infogrid.mesh.set.CompositeImmutableMeshObjectSet;
 import org.infogrid.mesh.set.ImmutableMeshObjectSet;
+import org.infogrid.mesh.set.MeshObjectBreadthFirstTraversal;
 import org.infogrid.mesh.set.MeshObjectSelector;
 import org.infogrid.mesh.set.MeshObjectSet;
 import org.infogrid.mesh.set.MeshObjectSorter;
@@ -213,20 +215,7 @@ public class ImmutableMMeshObjectSetFactory
             MeshObject []      candidates,
             MeshObjectSelector selector )
     {
-        // check for duplicates first
-        for( int i=0 ; i<candidates.length ; ++i ) {
-            if( candidates[i] == null ) {
-                throw new IllegalArgumentException( "Cannot add a null object to a MeshObjectSet" );
-            }
-            if( candidates[i].getIsDead() ) {
-                throw new IllegalArgumentException( "Cannot add a dead object to a MeshObjectSet: " + candidates[i] );
-            }
-            for( int j=0 ; j<i ; ++j ) {
-                if( candidates[i] == candidates[j] ) {
-                    throw new IllegalArgumentException( "Cannot create a MeshObjectSet with duplicate members: " + candidates[i] );
-                }
-            }
-        }
+        checkCandidates( candidates );
         
         MeshObject [] content;
         
@@ -251,6 +240,33 @@ public class ImmutableMMeshObjectSetFactory
         return ret;
     }
     
+    /**
+     * Check that an array of candidate members for a new MeshObjectSet does not contain
+     * null pointers, dead MeshObjects or duplicates.
+     *
+     * @param candidates the candidate members
+     * @throws IllegalArgumentException thrown if the array of MeshObjects contained dead objects, duplicates, null pointers etc.
+     */
+    protected void checkCandidates(
+            MeshObject [] candidates )
+        throws
+            IllegalArgumentException
+    {
+        HashSet<MeshObject> seen = new HashSet<MeshObject>( candidates.length * 2 );
+
+        for( int i=0 ; i<candidates.length ; ++i ) {
+            if( candidates[i] == null ) {
+                throw new IllegalArgumentException( "Cannot add a null object to a MeshObjectSet" );
+            }
+            if( candidates[i].getIsDead() ) {
+                throw new IllegalArgumentException( "Cannot add a dead object to a MeshObjectSet: " + candidates[i] );
+            }
+            if( !seen.add( candidates[i] )) {
+                throw new IllegalArgumentException( "Cannot create a MeshObjectSet with duplicate members: " + candidates[i] );
+            }
+        }
+    }
+
     /**
      * Factory method to construct a MeshObjectSet with all the members of the provided
      * MeshObjectSets, as long as they are selected by the MeshObjectSelector.
@@ -323,11 +339,17 @@ public class ImmutableMMeshObjectSetFactory
         }
         
         MeshObject [] oneContent = one.getMeshObjects();
+        MeshObject [] twoContent = two.getMeshObjects();
         MeshObject [] result     = ArrayHelper.createArray( theComponentClass, oneContent.length );
 
+        HashSet<MeshObject> twoSet = new HashSet<MeshObject>( twoContent.length * 2 );
+        for( int i=0 ; i<twoContent.length ; ++i ) {
+            twoSet.add( twoContent[i] );
+        }
+
         int count = 0;
         for( int i=0 ; i<oneContent.length ; ++i ) {
-            if( !two.contains( oneContent[i] )) {
+            if( !twoSet.contains( oneContent[i] )) {
                 if( selector == null || selector.accepts( oneContent[i] )) {
                     result[ count++ ] = oneContent[i];
                 }
@@ -363,20 +385,7 @@ public class ImmutableMMeshObjectSetFactory
             MeshObject []      candidatesInOrder,
             MeshObjectSelector selector )
     {
-        // check for duplicates first
-        for( int i=0 ; i<candidatesInOrder.length ; ++i ) {
-            if( candidatesInOrder[i] == null ) {
-                throw new IllegalArgumentException( "Cannot add a null object to a MeshObjectSet" );
-            }
-            if( candidatesInOrder[i].getIsDead() ) {
-                throw new IllegalArgumentException( "Cannot add a dead object to a MeshObjectSet: " + candidatesInOrder[i] );
-            }
-            for( int j=0 ; j<i ; ++j ) {
-                if( candidatesInOrder[i] == candidatesInOrder[j] ) {
-                    throw new IllegalArgumentException( "Cannot create a MeshObjectSet with duplicate members: " + candidatesInOrder[i] );
-                }
-            }
-        }
+        checkCandidates( candidatesInOrder );
         
         MeshObject [] content;
         
@@ -497,6 +506,21 @@ public class ImmutableMMeshObjectSetFactory
         return new TransitiveClosureImmutableMMeshObjectSet( this, startObject, specification );
     }
 
+    /**
+     * Factory method to construct a ImmutableMeshObjectSet as the result of
+     * traversing from a MeshObject breadth-first, within the limits of a MeshObjectBreadthFirstTraversal.
+     *
+     * @param startObject the MeshObject from where we start the traversal
+     * @param traversal the MeshObjectBreadthFirstTraversal to use
+     * @return the created ImmutableMeshObjectSet
+     */
+    public TransitiveClosureImmutableMMeshObjectSet createTransitiveClosureImmutableMeshObjectSet(
+            MeshObject                      startObject,
+            MeshObjectBreadthFirstTraversal traversal )
+    {
+        return new TransitiveClosureImmutableMMeshObjectSet( this, startObject, traversal );
+    }
+
     /**
      * Factory method to create an empty TraversalPathSet. This method may return
      * the same instance every time it is invoked, but is not required to do so.
@@ -615,8 +639,9 @@ public class ImmutableMMeshObjectSetFactory
         TraversalPath [] newPaths = new TraversalPath[ count ];
         int count2 = 0;
         for( int i=0 ; i<oldPaths.length ; ++i ) {
-            for( int j=0 ; j<newSets[i].size() ; ++j ) {
-                newPaths[ count2++ ] = TraversalPath.create( newPaths[i], spec, newSets[i].get( j ));
+            MeshObject [] reached = newSets[i].getMeshObjects();
+            for( int j=0 ; j<reached.length ; ++j ) {
+                newPaths[ count2++ ] = TraversalPath.create( oldPaths[i], spec, reached[j] );
             }
         }
         return createImmutableTraversalPathSet( newPaths );
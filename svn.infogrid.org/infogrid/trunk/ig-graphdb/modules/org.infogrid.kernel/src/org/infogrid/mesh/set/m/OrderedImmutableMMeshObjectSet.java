@@ -92,7 +92,7 @@ public class OrderedImmutableMMeshObjectSet
 
     /**
      * Determine the index of a certain MeshObject in this ordered set.
-     * Because we know nothing about how we are ordered, we simple search linearly.
+     * Larger sets use a hash-based index, smaller ones are searched sequentially.
      *
      * @param candidate the MeshObject we look for
      * @return index of the found MeshObject, or -1 if not found
@@ -100,12 +100,7 @@ public class OrderedImmutableMMeshObjectSet
     public int findIndexOf(
             MeshObject candidate )
     {
-        for( int i=0 ; i<currentContent.length ; ++i ) {
-            if( candidate == currentContent[i] ) {
-                return i;
-            }
-        }
-        return -1;
+        return findPositionIn( currentContent, candidate );
     }
 
     /**
@@ -70,12 +70,7 @@ public class OrderedImmutableMTraversalPathSet
     public int findIndexOf(
             TraversalPath candidate )
     {
-        for( int i=0 ; i<currentContent.length ; ++i ) {
-            if( candidate == currentContent[i] ) {
-                return i;
-            }
-        }
-        return -1;
+        return findPositionIn( currentContent, candidate );
     }
 
     /**
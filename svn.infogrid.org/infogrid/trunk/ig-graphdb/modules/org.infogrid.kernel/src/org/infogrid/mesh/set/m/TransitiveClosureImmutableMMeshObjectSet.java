@@ -15,8 +15,10 @@
 package org.infogrid.mesh.set.m;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.set.ImmutableMeshObjectSet;
+import org.infogrid.mesh.set.MeshObjectBreadthFirstTraversal;
 import org.infogrid.mesh.set.MeshObjectSetFactory;
 import org.infogrid.model.traversal.TraversalSpecification;
 import org.infogrid.util.ArrayHelper;
@@ -56,6 +58,23 @@ public class TransitiveClosureImmutableMMeshObjectSet
         setInitialContent( content );
     }
 
+    /**
+     * Constructor for a set whose content is limited by a MeshObjectBreadthFirstTraversal.
+     *
+     * @param factory the MeshObjectSetFactory that created this MeshObjectSet
+     * @param root the root MeshObject from where we attempt to traverse
+     * @param traversal the MeshObjectBreadthFirstTraversal to use
+     */
+    protected TransitiveClosureImmutableMMeshObjectSet(
+            MeshObjectSetFactory            factory,
+            MeshObject                      root,
+            MeshObjectBreadthFirstTraversal traversal )
+    {
+        super( factory );
+
+        setInitialContent( traversal.traverseToArray( root ));
+    }
+
     /**
      * Construct the content of the set.
      *
@@ -67,23 +86,10 @@ public class TransitiveClosureImmutableMMeshObjectSet
             MeshObject             root,
             TraversalSpecification spec )
     {
-        ArrayList<MeshObject> found     = new ArrayList<MeshObject>();
-        ArrayList<MeshObject> toProcess = new ArrayList<MeshObject>();
-        found.add( root );
-        toProcess.add( root );
-
-        while( !toProcess.isEmpty() ) {
-            // remove from the end, that makes things more efficient
-            MeshObject current = toProcess.remove( toProcess.size()-1 );
+        // all MeshObjects reached in the same number of steps are accessed together
+        MeshObject [] content = MeshObjectBreadthFirstTraversal.create( spec ).traverseToArray( root );
 
-            MeshObject [] newlyFound = current.traverse( spec ).getMeshObjects();
-            for( int i=0 ; i<newlyFound.length ; ++i ) {
-                if( !found.contains( newlyFound[i] )) {
-                    found.add( newlyFound[i] );
-                    toProcess.add( newlyFound[i] );
-                }
-            }
-        }
+        ArrayList<MeshObject> found = new ArrayList<MeshObject>( Arrays.asList( content ));
         return found;
     }
 }
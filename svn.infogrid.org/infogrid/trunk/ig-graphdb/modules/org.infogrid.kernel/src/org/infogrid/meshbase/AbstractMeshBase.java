@@ -15,6 +15,9 @@
 package org.infogrid.meshbase;
 
 import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import org.infogrid.mesh.AbstractMeshObject;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.MeshObjectGraphModificationException;
@@ -25,14 +28,18 @@ import org.infogrid.mesh.security.ThreadIdentityManager;
 import org.infogrid.mesh.set.MeshObjectSet;
 import org.infogrid.mesh.set.MeshObjectSetFactory;
 import org.infogrid.mesh.text.MeshStringRepresentationParameters;
+import org.infogrid.meshbase.index.ExtentIndex;
+import org.infogrid.meshbase.index.PropertyValueIndexer;
 import org.infogrid.meshbase.security.AccessManager;
 import org.infogrid.meshbase.sweeper.Sweeper;
+import org.infogrid.meshbase.transaction.AsyncTransactionDispatcher;
 import org.infogrid.meshbase.transaction.DefaultTransaction;
 import org.infogrid.meshbase.transaction.IllegalTransactionThreadException;
 import org.infogrid.meshbase.transaction.MeshObjectCreatedEvent;
 import org.infogrid.meshbase.transaction.MeshObjectDeletedEvent;
 import org.infogrid.meshbase.transaction.MeshObjectLifecycleEvent;
 import org.infogrid.meshbase.transaction.MeshObjectLifecycleListener;
+import org.infogrid.meshbase.transaction.MeshObjectWriteLockException;
 import org.infogrid.meshbase.transaction.NotWithinTransactionBoundariesException;
 import org.infogrid.meshbase.transaction.Transaction;
 import org.infogrid.meshbase.transaction.TransactionAction;
@@ -41,6 +48,7 @@ import org.infogrid.meshbase.transaction.TransactionActiveAlreadyException;
 import org.infogrid.meshbase.transaction.TransactionAsapTimeoutException;
 import org.infogrid.meshbase.transaction.TransactionException;
 import org.infogrid.meshbase.transaction.TransactionListener;
+import org.infogrid.model.primitives.EntityType;
 import org.infogrid.model.primitives.RoleType;
 import org.infogrid.modelbase.ModelBase;
 import org.infogrid.util.AbstractFactory;
@@ -48,6 +56,7 @@ import org.infogrid.util.AbstractLiveDeadObject;
 import org.infogrid.util.ArrayHelper;
 import org.infogrid.util.CachingMap;
 import org.infogrid.util.CannotFindHasIdentifierException;
+import org.infogrid.util.CursorIterator;
 import org.infogrid.util.Factory;
 import org.infogrid.util.FactoryException;
 import org.infogrid.util.FlexibleListenerSet;
@@ -298,10 +307,37 @@ public abstract class AbstractMeshBase
             MeshObjectIdentifier[] identifiers )
     {
         MeshObject [] ret = new MeshObject[ identifiers.length ];
+        findMeshObjectsByIdentifier( identifiers, ret );
+        return ret;
+    }
+
+    /**
+     * Helper method to find a set of MeshObjects in this MeshBase by their identifiers.
+     * This obtains all MeshObjects from the cache at the same time, so MeshObjects that
+     * need to be swapped in can be loaded with a single storage operation.
+     *
+     * @param identifiers the identifiers of the MeshObjects that shall be found
+     * @param ret array of the same length as identifiers, into which the found MeshObjects are written
+     */
+    protected void findMeshObjectsByIdentifier(
+            MeshObjectIdentifier [] identifiers,
+            MeshObject []           ret )
+    {
         for( int i=0 ; i<identifiers.length ; ++i ) {
-            ret[i] = findMeshObjectByIdentifier( identifiers[i] );
+            if( identifiers[i] == null ) {
+                throw new NullPointerException();
+            }
+        }
+        theCache.getMultiple( identifiers, ret );
+
+        Sweeper s = theSweeper;
+        if( s != null ) {
+            for( int i=0 ; i<ret.length ; ++i ) {
+                if( ret[i] != null ) {
+                    ret[i] = s.getSweepPolicy().potentiallyFilter( ret[i] );
+                }
+            }
         }
-        return ret;
     }
 
     /**
@@ -342,12 +378,11 @@ public abstract class AbstractMeshBase
         throws
             MeshObjectsNotFoundException
     {
-        MeshObject []           ret      = new MeshObject[ identifiers.length ];
+        MeshObject []           ret      = findMeshObjectsByIdentifier( identifiers );
         MeshObjectIdentifier [] notFound = null; // allocated when needed
         int                     count    = 0;
         
         for( int i=0 ; i<identifiers.length ; ++i ) {
-            ret[i] = findMeshObjectByIdentifier( identifiers[i] );
             if( ret[i] == null ) {
                 if( notFound == null ) {
                     notFound = new MeshObjectIdentifier[ identifiers.length ];
@@ -364,6 +399,90 @@ public abstract class AbstractMeshBase
         throw new MeshObjectsNotFoundException( this, notFound );
     }
 
+    /**
+     * <p>Find all MeshObjects in this MeshBase that are blessed with an EntityType, or one
+     *    of its subtypes.</p>
+     * <p>If the PropertyValueIndexer maintains an ExtentIndex for the EntityType, the
+     *    MeshObjects are found without iterating over the MeshBase, and MeshObjects blessed
+     *    in a Transaction that has not been committed yet are not found.</p>
+     *
+     * @param type the EntityType
+     * @return the found MeshObjects
+     * @throws UnsupportedOperationException thrown if this MeshBase cannot find all instances of the EntityType
+     */
+    public MeshObjectSet findMeshObjectsByType(
+            EntityType type )
+        throws
+            UnsupportedOperationException
+    {
+        ExtentIndex index = findExtentIndex( type );
+        if( index != null ) {
+            return index.find();
+        }
+
+        CursorIterator<MeshObject> iter  = meshObjectsByTypeIteratorWithoutIndex( type );
+        ArrayList<MeshObject>      found = new ArrayList<MeshObject>();
+        while( iter.hasNext() ) {
+            found.add( iter.next() );
+        }
+        return theMeshObjectSetFactory.createImmutableMeshObjectSet(
+                ArrayHelper.copyIntoNewArray( found, MeshObject.class ));
+    }
+
+    /**
+     * Obtain a CursorIterator over all MeshObjects in this MeshBase that are blessed with
+     * an EntityType, or one of its subtypes.
+     *
+     * @param type the EntityType
+     * @return the CursorIterator
+     * @throws UnsupportedOperationException thrown if this MeshBase cannot find all instances of the EntityType
+     */
+    public CursorIterator<MeshObject> meshObjectsByTypeIterator(
+            EntityType type )
+        throws
+            UnsupportedOperationException
+    {
+        ExtentIndex index = findExtentIndex( type );
+        if( index != null ) {
+            return index.iterator();
+        }
+        return meshObjectsByTypeIteratorWithoutIndex( type );
+    }
+
+    /**
+     * Find the ExtentIndex for an EntityType, if the PropertyValueIndexer maintains one.
+     *
+     * @param type the EntityType
+     * @return the ExtentIndex, or null
+     */
+    protected ExtentIndex findExtentIndex(
+            EntityType type )
+    {
+        PropertyValueIndexer indexer = thePropertyValueIndexer;
+        if( indexer == null ) {
+            return null;
+        }
+        return indexer.getExtentIndex( type );
+    }
+
+    /**
+     * Obtain a CursorIterator over all MeshObjects in this MeshBase that are blessed with
+     * an EntityType, or one of its subtypes, if there is no ExtentIndex for the EntityType.
+     * This implementation cannot find them; subclasses that can iterate over their
+     * content override this.
+     *
+     * @param type the EntityType
+     * @return the CursorIterator
+     * @throws UnsupportedOperationException thrown if this MeshBase cannot find all instances of the EntityType
+     */
+    protected CursorIterator<MeshObject> meshObjectsByTypeIteratorWithoutIndex(
+            EntityType type )
+        throws
+            UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException( "Cannot find the instances of " + type + " without an ExtentIndex" );
+    }
+
     /**
      * Find a MeshObject from its Identifier.
      *
@@ -428,10 +547,7 @@ public abstract class AbstractMeshBase
             MeshObjectAccessException,
             NotPermittedException
     {
-        MeshObject [] ret = new MeshObject[ identifiers.length ];
-        for( int i=0 ; i<identifiers.length ; ++i ) {
-            ret[i] = findMeshObjectByIdentifier( identifiers[i] );
-        }
+        MeshObject [] ret = findMeshObjectsByIdentifier( identifiers );
         return ret;
     }
 
@@ -477,15 +593,18 @@ public abstract class AbstractMeshBase
             log.traceMethodCallEntry( this, "die", isPermanent );
         }
 
-        // let current transaction finish for no more than 5 seconds
-        int count = 25;
-        while( count> 0 && theCurrentTransaction != null ) {
-            try {
-                Thread.sleep( asapRetryInterval );
-                --count;
+        // let current transactions finish for no more than 5 seconds
+        synchronized( this ) {
+            long deadline = System.currentTimeMillis() + 25L * asapRetryInterval;
+            long remaining;
+
+            while( hasActiveTransactions() && ( remaining = deadline - System.currentTimeMillis() ) > 0 ) {
+                try {
+                    wait( remaining );
 
-            } catch( InterruptedException ex ) {
-                // ignore
+                } catch( InterruptedException ex ) {
+                    // ignore
+                }
             }
         }
 
@@ -495,9 +614,11 @@ public abstract class AbstractMeshBase
          
         internalDie( isPermanent );
 
-        theLifecycleEventListeners = null;
-        theTransactionListeners    = null;
-        theSweeper                 = null;
+        theLifecycleEventListeners    = null;
+        theTransactionListeners       = null;
+        theSweeper                    = null;
+        thePropertyValueIndexer       = null;
+        theAsyncTransactionDispatcher = null;
         // let's not set the cache to null, we want to know that it is collected at the same time
 
         QuitManager qm = getContext().findContextObject( QuitManager.class );
@@ -584,6 +705,51 @@ public abstract class AbstractMeshBase
         return theSweeper;
     }
 
+    /**
+     * Set a PropertyValueIndexer for this MeshBase. The MeshBase notifies it of all
+     * committed and rolled-back Transactions.
+     *
+     * @param newIndexer the new PropertyValueIndexer, or null
+     */
+    public void setPropertyValueIndexer(
+            PropertyValueIndexer newIndexer )
+    {
+        thePropertyValueIndexer = newIndexer;
+    }
+
+    /**
+     * Obtain the currently set PropertyValueIndexer for this MeshBase, if any.
+     *
+     * @return the PropertyValueIndexer, if any
+     */
+    public PropertyValueIndexer getPropertyValueIndexer()
+    {
+        return thePropertyValueIndexer;
+    }
+
+    /**
+     * Set an AsyncTransactionDispatcher for this MeshBase. The MeshBase hands all
+     * committed Transactions to it, after the synchronous TransactionListeners have
+     * been notified.
+     *
+     * @param newDispatcher the new AsyncTransactionDispatcher, or null
+     */
+    public void setAsyncTransactionDispatcher(
+            AsyncTransactionDispatcher newDispatcher )
+    {
+        theAsyncTransactionDispatcher = newDispatcher;
+    }
+
+    /**
+     * Obtain the currently set AsyncTransactionDispatcher for this MeshBase, if any.
+     *
+     * @return the AsyncTransactionDispatcher, if any
+     */
+    public AsyncTransactionDispatcher getAsyncTransactionDispatcher()
+    {
+        return theAsyncTransactionDispatcher;
+    }
+
     /**
      * Obtain a factory for MeshObjectIdentifiers that is appropriate for this MeshBase.
      *
@@ -632,28 +798,24 @@ public abstract class AbstractMeshBase
             log.traceMethodCallEntry( this, "createTransactionAsap" );
         }
 
-        Transaction existingTransaction = null;
-        Transaction ret                 = null;
-        int counter = nTries;
+        Transaction ret;
+        synchronized( this ) {
+            long deadline = System.currentTimeMillis() + getAsapTimeout();
+
+            while( ( ret = tryCreateTransaction()) == null ) {
+                Transaction existingTransaction = getBlockingTransaction();
+                long        remaining           = deadline - System.currentTimeMillis();
 
-        while( ret == null && counter -- > 0 ) {
-            synchronized( this ) {
-                existingTransaction = theCurrentTransaction;
-                if( theCurrentTransaction == null ) {
-                    theCurrentTransaction = createNewTransaction();
-                    ret = theCurrentTransaction;
+                if( remaining <= 0 || existingTransaction.owns( Thread.currentThread() )) {
+                    // we would wait for ourselves
+                    throw new TransactionAsapTimeoutException( this, existingTransaction );
                 }
-            }
-            if( ret == null ) {
                 try {
-                    Thread.sleep( asapRetryInterval );
+                    wait( remaining );
                 } catch( InterruptedException ex ) {
                 }
             }
         }
-        if( ret == null ) {
-            throw new TransactionAsapTimeoutException( this, existingTransaction );
-        }
 
         fireTransactionStartedEvent( ret );
 
@@ -677,11 +839,9 @@ public abstract class AbstractMeshBase
 
         Transaction ret;
         synchronized( this ) {
-            if( theCurrentTransaction == null ) {
-                theCurrentTransaction = createNewTransaction();
-                ret = theCurrentTransaction;
-            } else {
-                throw new TransactionActiveAlreadyException( this, theCurrentTransaction );
+            ret = tryCreateTransaction();
+            if( ret == null ) {
+                throw new TransactionActiveAlreadyException( this, getBlockingTransaction() );
             }
         }
 
@@ -707,37 +867,30 @@ public abstract class AbstractMeshBase
             log.traceMethodCallEntry( this, "createTransactionAsapIfNeeded" );
         }
 
-        Transaction existingTransaction = null;
-        Transaction ret                 = null;
-        int counter = nTries;
+        Transaction ret;
+        synchronized( this ) {
+            long deadline = System.currentTimeMillis() + getAsapTimeout();
 
-        while( ret == null && counter -- > 0 ) {
-            synchronized( this ) {
-                existingTransaction = theCurrentTransaction;
-                if( theCurrentTransaction == null ) {
-                    theCurrentTransaction = createNewTransaction();
-                    ret = theCurrentTransaction;
-                } else {
-                    try {
+            while( ( ret = tryCreateTransaction()) == null ) {
+                Transaction existingTransaction = getBlockingTransaction();
+                try {
+                    existingTransaction.checkThreadIsAllowed();
+                    return null;
 
-                        theCurrentTransaction.checkThreadIsAllowed();
-                        return null;
+                } catch( IllegalTransactionThreadException ex ) {
+                    // do nothing
+                }
 
-                    } catch( IllegalTransactionThreadException ex ) {
-                        // do nothing
-                    }
+                long remaining = deadline - System.currentTimeMillis();
+                if( remaining <= 0 ) {
+                    throw new TransactionAsapTimeoutException( this, existingTransaction );
                 }
-            }
-            if( ret == null ) {
                 try {
-                    Thread.sleep( asapRetryInterval );
+                    wait( remaining );
                 } catch( InterruptedException ex ) {
                 }
             }
         }
-        if( ret == null ) {
-            throw new TransactionAsapTimeoutException( this, existingTransaction );
-        }
 
         fireTransactionStartedEvent( ret );
 
@@ -763,17 +916,14 @@ public abstract class AbstractMeshBase
         
         Transaction ret;
         synchronized( this ) {
-            if( theCurrentTransaction == null ) {
-                theCurrentTransaction = createNewTransaction();
-                ret = theCurrentTransaction;
-            } else {
+            ret = tryCreateTransaction();
+            if( ret == null ) {
+                Transaction existingTransaction = getBlockingTransaction();
                 try {
-                    theCurrentTransaction.checkThreadIsAllowed();
-
-                    ret = null;
+                    existingTransaction.checkThreadIsAllowed();
 
                 } catch( IllegalTransactionThreadException ex ) {
-                    throw new TransactionActiveAlreadyException( this, theCurrentTransaction );
+                    throw new TransactionActiveAlreadyException( this, existingTransaction );
                 }
             }
         }
@@ -782,6 +932,91 @@ public abstract class AbstractMeshBase
         return ret;
     }
 
+    /**
+     * Create and register a new Transaction, if this is possible right now.
+     * This must only be invoked while holding this object's monitor.
+     *
+     * @return the created Transaction, or null if another Transaction is in the way
+     */
+    private Transaction tryCreateTransaction()
+    {
+        Transaction ret = null;
+        if( theAllowsConcurrentTransactions ) {
+            Thread current = Thread.currentThread();
+            if( !theConcurrentTransactions.containsKey( current )) {
+                ret = createNewTransaction();
+                theConcurrentTransactions.put( current, ret );
+            }
+
+        } else if( theCurrentTransaction == null ) {
+            theCurrentTransaction = createNewTransaction();
+            ret = theCurrentTransaction;
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the Transaction that prevents a new Transaction from being created on this Thread.
+     * This must only be invoked while holding this object's monitor.
+     *
+     * @return the Transaction, or null if there is none
+     */
+    private Transaction getBlockingTransaction()
+    {
+        if( theAllowsConcurrentTransactions ) {
+            return theConcurrentTransactions.get( Thread.currentThread() );
+        } else {
+            return theCurrentTransaction;
+        }
+    }
+
+    /**
+     * Unregister the Transaction on this Thread, and release its write locks. This must only be
+     * invoked while holding this object's monitor. The Threads waiting for a Transaction to end
+     * are woken up by wakeUpWaitingThreads once the Transaction has been fully processed.
+     *
+     * @return the Transaction, or null if there was none
+     */
+    private Transaction endTransaction()
+    {
+        Transaction ret;
+        if( theAllowsConcurrentTransactions ) {
+            ret = theConcurrentTransactions.remove( Thread.currentThread() );
+
+            if( ret != null ) {
+                ArrayList<MeshObjectIdentifier> locked = theWriteLocksByTransaction.remove( ret );
+                if( locked != null ) {
+                    for( MeshObjectIdentifier current : locked ) {
+                        theWriteLocks.remove( current );
+                    }
+                }
+            }
+        } else {
+            ret = theCurrentTransaction;
+            theCurrentTransaction = null;
+        }
+        return ret;
+    }
+
+    /**
+     * Wake up the Threads waiting for a Transaction to end, or for a write lock to be released.
+     */
+    private synchronized void wakeUpWaitingThreads()
+    {
+        notifyAll();
+    }
+
+    /**
+     * Obtain the maximum time, in milliseconds, that a Thread waits to create an "asap" Transaction
+     * or to obtain a write lock.
+     *
+     * @return the time, in milliseconds
+     */
+    protected long getAsapTimeout()
+    {
+        return ((long) nTries) * asapRetryInterval;
+    }
+
     /**
      * Factory method to create a new Transaction. This overridable implementation
      * creates an DefaultTransaction.
@@ -794,13 +1029,28 @@ public abstract class AbstractMeshBase
     }
 
     /**
-      * Obtain the currently active Transaction (if any).
+      * Obtain the currently active Transaction (if any). If this MeshBase allows concurrent
+      * Transactions, this is the Transaction active on the calling Thread (if any).
       *
       * @return the currently active Transaction, or null if there is none
       */
     public final Transaction getCurrentTransaction()
     {
-        return theCurrentTransaction;
+        if( theAllowsConcurrentTransactions ) {
+            return theConcurrentTransactions.get( Thread.currentThread() );
+        } else {
+            return theCurrentTransaction;
+        }
+    }
+
+    /**
+     * Determine whether any Transaction is currently active on this MeshBase, on any Thread.
+     *
+     * @return true if at least one Transaction is active
+     */
+    public final boolean hasActiveTransactions()
+    {
+        return theCurrentTransaction != null || !theConcurrentTransactions.isEmpty();
     }
 
     /**
@@ -814,11 +1064,155 @@ public abstract class AbstractMeshBase
         throws
             TransactionException
     {
-        if( theCurrentTransaction == null ) {
+        Transaction ret = getCurrentTransaction();
+        if( ret == null ) {
+            throw new NotWithinTransactionBoundariesException( this );
+        }
+        ret.checkThreadIsAllowed();
+        return ret;
+    }
+
+    /**
+     * Determine whether several Transactions may be active at the same time on this MeshBase.
+     *
+     * @return true if several Transactions may be active at the same time
+     * @see #setAllowsConcurrentTransactions
+     */
+    public boolean getAllowsConcurrentTransactions()
+    {
+        return theAllowsConcurrentTransactions;
+    }
+
+    /**
+     * <p>Specify whether several Transactions may be active at the same time on this MeshBase,
+     *    each on its own Thread. If not, only one Transaction may be active at any time, and
+     *    Threads attempting to create another one have to wait.</p>
+     * <p>If concurrent Transactions are allowed, a Transaction obtains the write lock on each
+     *    MeshObject it modifies, and keeps it until it is committed or rolled back. A Transaction
+     *    attempting to modify a MeshObject whose write lock is held by another Transaction waits,
+     *    and throws a {@link MeshObjectWriteLockException} if the wait times out or would cause
+     *    a deadlock. Transactions modifying disjoint sets of MeshObjects do not wait for each other.</p>
+     * <p>This may only be changed while no Transaction is active.</p>
+     *
+     * @param newValue true if several Transactions may be active at the same time
+     * @throws IllegalStateException thrown if a Transaction is currently active
+     */
+    public synchronized void setAllowsConcurrentTransactions(
+            boolean newValue )
+    {
+        if( hasActiveTransactions() ) {
+            throw new IllegalStateException( "Cannot change while Transactions are active" );
+        }
+        theAllowsConcurrentTransactions = newValue;
+    }
+
+    /**
+     * Obtain the write lock on a MeshObject for the Transaction active on this Thread, waiting
+     * for another Transaction to release it if needed. The write lock is released when the
+     * Transaction is committed or rolled back. If this MeshBase does not allow concurrent
+     * Transactions, this does nothing.
+     *
+     * @param obj the MeshObject
+     * @throws MeshObjectWriteLockException thrown if the write lock could not be obtained
+     * @throws TransactionException thrown if there was no valid Transaction
+     */
+    public void lockForWrite(
+            MeshObject obj )
+        throws
+            TransactionException
+    {
+        if( obj != null ) {
+            lockForWrite( obj.getIdentifier() );
+        }
+    }
+
+    /**
+     * Obtain the write lock on the MeshObject with this MeshObjectIdentifier, which may not
+     * exist yet, for the Transaction active on this Thread. Otherwise the same as
+     * {@link #lockForWrite(MeshObject)}.
+     *
+     * @param id the MeshObjectIdentifier
+     * @throws MeshObjectWriteLockException thrown if the write lock could not be obtained
+     * @throws TransactionException thrown if there was no valid Transaction
+     */
+    public void lockForWrite(
+            MeshObjectIdentifier id )
+        throws
+            TransactionException
+    {
+        if( !theAllowsConcurrentTransactions || id == null ) {
+            return;
+        }
+        Transaction tx = theConcurrentTransactions.get( Thread.currentThread() );
+        if( tx == null ) {
             throw new NotWithinTransactionBoundariesException( this );
         }
-        theCurrentTransaction.checkThreadIsAllowed();
-        return theCurrentTransaction;
+
+        synchronized( this ) {
+            Transaction owner = theWriteLocks.get( id );
+            if( owner == tx ) {
+                return;
+            }
+            if( owner != null ) {
+                ++theWriteLockWaitCount;
+
+                long deadline = System.currentTimeMillis() + getAsapTimeout();
+                try {
+                    while( ( owner = theWriteLocks.get( id )) != null ) {
+                        // would we be waiting, directly or indirectly, for ourselves?
+                        Transaction current = owner;
+                        for( int i=theWaitingTransactions.size() ; current != null && i>=0 ; --i ) {
+                            if( current == tx ) {
+                                ++theWriteLockFailureCount;
+                                throw new MeshObjectWriteLockException( this, tx, id, owner, true );
+                            }
+                            current = theWaitingTransactions.get( current );
+                        }
+
+                        long remaining = deadline - System.currentTimeMillis();
+                        if( remaining <= 0 ) {
+                            ++theWriteLockFailureCount;
+                            throw new MeshObjectWriteLockException( this, tx, id, owner, false );
+                        }
+                        theWaitingTransactions.put( tx, owner );
+                        try {
+                            wait( remaining );
+                        } catch( InterruptedException ex ) {
+                        }
+                    }
+                } finally {
+                    theWaitingTransactions.remove( tx );
+                }
+            }
+            theWriteLocks.put( id, tx );
+
+            ArrayList<MeshObjectIdentifier> locked = theWriteLocksByTransaction.get( tx );
+            if( locked == null ) {
+                locked = new ArrayList<MeshObjectIdentifier>();
+                theWriteLocksByTransaction.put( tx, locked );
+            }
+            locked.add( id );
+        }
+    }
+
+    /**
+     * Obtain the number of times a Transaction had to wait for the write lock on a MeshObject.
+     *
+     * @return the number of times
+     */
+    public synchronized long getWriteLockWaitCount()
+    {
+        return theWriteLockWaitCount;
+    }
+
+    /**
+     * Obtain the number of times a Transaction could not obtain the write lock on a MeshObject.
+     *
+     * @return the number of times
+     */
+    public synchronized long getWriteLockFailureCount()
+    {
+        return theWriteLockFailureCount;
     }
 
     /**
@@ -1324,16 +1718,31 @@ public abstract class AbstractMeshBase
 
         Transaction oldTransaction;
         synchronized( this ) {
-            oldTransaction = theCurrentTransaction;
+            oldTransaction = endTransaction();
 
             log.assertLog( oldTransaction, "cannot commit empty transaction" );
-
-            theCurrentTransaction = null;
         }
 
-        transactionCommittedHook( oldTransaction );
+        try {
+            PropertyValueIndexer indexer = thePropertyValueIndexer;
+            if( indexer != null ) {
+                indexer.transactionCommitted( oldTransaction );
+            }
+
+            transactionCommittedHook( oldTransaction );
+
+            fireTransactionCommittedEvent( oldTransaction );
+
+            AsyncTransactionDispatcher dispatcher = theAsyncTransactionDispatcher;
+            if( dispatcher != null ) {
+                dispatcher.transactionCommitted( oldTransaction );
+            }
 
-        fireTransactionCommittedEvent( oldTransaction );
+        } finally {
+            // only now, so that waiting Transactions cannot start before the hook, e.g. sending
+            // the changes to replicas, has processed this one
+            wakeUpWaitingThreads();
+        }
     }
 
     /**
@@ -1351,16 +1760,24 @@ public abstract class AbstractMeshBase
 
         Transaction oldTransaction;
         synchronized( this ) {
-            oldTransaction = theCurrentTransaction;
+            oldTransaction = endTransaction();
 
             log.assertLog( oldTransaction, "cannot roll back empty transaction" );
-
-            theCurrentTransaction = null;
         }
 
-        transactionRolledbackHook( oldTransaction );
+        try {
+            PropertyValueIndexer indexer = thePropertyValueIndexer;
+            if( indexer != null ) {
+                indexer.transactionRolledback( oldTransaction );
+            }
+
+            transactionRolledbackHook( oldTransaction );
+
+            fireTransactionRolledbackEvent( oldTransaction );
 
-        fireTransactionRolledbackEvent( oldTransaction );
+        } finally {
+            wakeUpWaitingThreads();
+        }
     }
 
     /**
@@ -1622,6 +2039,16 @@ public abstract class AbstractMeshBase
      * The Sweeper that sweeps the content of the MeshBase, if any.
      */
     protected Sweeper theSweeper;
+
+    /**
+     * The PropertyValueIndexer that maintains the secondary indexes of the MeshBase, if any.
+     */
+    protected PropertyValueIndexer thePropertyValueIndexer;
+
+    /**
+     * The AsyncTransactionDispatcher that delivers committed Transactions asynchronously, if any.
+     */
+    protected AsyncTransactionDispatcher theAsyncTransactionDispatcher;
     
     /**
      * The factory for MeshObjectIdentifiers.
@@ -1655,10 +2082,50 @@ public abstract class AbstractMeshBase
     private FlexibleListenerSet<MeshObjectLifecycleListener, MeshObjectLifecycleEvent, Integer> theLifecycleEventListeners = null;
 
     /**
-      * The current Transaction, if any.
+      * The current Transaction, if any. Only used if concurrent Transactions are not allowed.
       */
     private Transaction theCurrentTransaction;
 
+    /**
+      * The currently active Transactions, keyed by the Thread that owns them. Only used if
+      * concurrent Transactions are allowed.
+      */
+    private final ConcurrentHashMap<Thread,Transaction> theConcurrentTransactions = new ConcurrentHashMap<Thread,Transaction>();
+
+    /**
+      * If true, several Transactions may be active at the same time, each on its own Thread.
+      */
+    private volatile boolean theAllowsConcurrentTransactions = theResourceHelper.getResourceBooleanOrDefault(
+            "AllowsConcurrentTransactions",
+            false );
+
+    /**
+      * Maps the identifiers of the MeshObjects whose write locks are held to the Transaction holding them.
+      */
+    private final HashMap<MeshObjectIdentifier,Transaction> theWriteLocks = new HashMap<MeshObjectIdentifier,Transaction>();
+
+    /**
+      * Maps the active Transactions to the identifiers of the MeshObjects whose write locks they hold.
+      */
+    private final HashMap<Transaction,ArrayList<MeshObjectIdentifier>> theWriteLocksByTransaction
+            = new HashMap<Transaction,ArrayList<MeshObjectIdentifier>>();
+
+    /**
+      * Maps the Transactions waiting for a write lock to the Transaction holding it. This is used to
+      * detect deadlocks.
+      */
+    private final HashMap<Transaction,Transaction> theWaitingTransactions = new HashMap<Transaction,Transaction>();
+
+    /**
+      * The number of times a Transaction had to wait for a write lock.
+      */
+    private long theWriteLockWaitCount;
+
+    /**
+      * The number of times a Transaction could not obtain a write lock.
+      */
+    private long theWriteLockFailureCount;
+
     /**
       * The Context in which we run.
       */
@@ -15,6 +15,10 @@
 package org.infogrid.meshbase;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import org.infogrid.mesh.BlessedAlreadyException;
 import org.infogrid.mesh.IllegalPropertyTypeException;
 import org.infogrid.mesh.MeshObject;
@@ -26,6 +30,7 @@ import org.infogrid.mesh.RelatedAlreadyException;
 import org.infogrid.mesh.RoleTypeBlessedAlreadyException;
 import org.infogrid.mesh.externalized.ExternalizedMeshObject;
 import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.mesh.set.MeshObjectSetFactory;
 import org.infogrid.meshbase.transaction.AbstractMeshObjectEquivalentsChangeEvent;
 import org.infogrid.meshbase.transaction.AbstractMeshObjectLifecycleEvent;
 import org.infogrid.meshbase.transaction.AbstractMeshObjectNeighborChangeEvent;
@@ -51,6 +56,7 @@ import org.infogrid.model.primitives.PropertyType;
 import org.infogrid.model.primitives.PropertyValue;
 import org.infogrid.model.primitives.RoleType;
 import org.infogrid.util.ArrayHelper;
+import org.infogrid.util.CursorIterator;
 import org.infogrid.util.logging.CanBeDumped;
 import org.infogrid.util.logging.Dumper;
 import org.infogrid.util.logging.Log;
@@ -63,6 +69,12 @@ import org.infogrid.util.logging.Log;
   * only one is necessary and the other is redundant. However, overall it appears more efficient
   * (and is certainly easier to program) to generate and process both (i.e. ignore the second
   * one), so that's what we do.</p>
+  *
+  * <p>Each IterableMeshBase is iterated over in batches, and the MeshObject with the same
+  * MeshObjectIdentifier is looked up in the other IterableMeshBase, so neither needs to be
+  * held in memory in its entirety. If a ForkJoinPool is given, the MeshObjects of a batch are
+  * compared in chunks on its Threads. Either way, the Changes are returned in the same sequence
+  * as if the MeshObjects had been compared one after the other.</p>
   */
 public class IterableMeshBaseDifferencer
         implements
@@ -77,8 +89,22 @@ public class IterableMeshBaseDifferencer
      */
     public IterableMeshBaseDifferencer(
             IterableMeshBase baselineBase )
+    {
+        this( baselineBase, null );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param baselineBase the IterableMeshBase that forms the "base" against which compare
+     * @param pool if given, compare the MeshObjects in chunks on the Threads of this ForkJoinPool
+     */
+    public IterableMeshBaseDifferencer(
+            IterableMeshBase baselineBase,
+            ForkJoinPool     pool )
     {
         theBaselineBase = baselineBase;
+        thePool         = pool;
     }
 
     /**
@@ -91,6 +117,27 @@ public class IterableMeshBaseDifferencer
         return theBaselineBase;
     }
 
+    /**
+     * Obtain the ForkJoinPool on whose Threads the MeshObjects are compared, if any.
+     *
+     * @return the ForkJoinPool, or null
+     */
+    public ForkJoinPool getForkJoinPool()
+    {
+        return thePool;
+    }
+
+    /**
+     * Set the ForkJoinPool on whose Threads the MeshObjects are compared.
+     *
+     * @param newValue the new ForkJoinPool, or null to compare on the calling Thread
+     */
+    public void setForkJoinPool(
+            ForkJoinPool newValue )
+    {
+        thePool = newValue;
+    }
+
     /**
      * This method performs the diff between the baseline IterableMeshBase (set in the constructor)
      * and the comparison IterableMeshBase (provided as argument to this call). The differences between
@@ -119,395 +166,599 @@ public class IterableMeshBaseDifferencer
      * @return the ChangeSet between the baseline IterableMeshBase and the comparison IterableMeshBase
      */
     public ChangeSet determineChangeSet(
-            IterableMeshBase comparisonBase,
-            boolean          checkDates )
+            final IterableMeshBase comparisonBase,
+            final boolean          checkDates )
     {
         if( log.isTraceEnabled() ) {
             log.traceMethodCallEntry( this, "determineChangeSet" );
         }
 
-        long      now                    = System.currentTimeMillis();
-        
+        final long now = System.currentTimeMillis();
+
         ChangeSet entityChanges          = ChangeSet.create();
         ChangeSet graphChanges           = ChangeSet.create();
         ChangeSet roleAdditionChanges    = ChangeSet.create();
         ChangeSet roleSubtractionChanges = ChangeSet.create();
 
-        for( MeshObject meshObjectInBase : theBaselineBase ) {
-            MeshObjectIdentifier identifier             = meshObjectInBase.getIdentifier();
-            MeshObject           meshObjectInComparison = comparisonBase.findMeshObjectByIdentifier( identifier );
+        // iterate through all the objects in BASE, and find them in COMPARISON
+        determineChangesInBatches(
+                theBaselineBase,
+                new MeshObjectComparison() {
+                        public ChangesForMeshObject determineChanges(
+                                MeshObject meshObjectInBase )
+                        {
+                            MeshObject meshObjectInComparison = comparisonBase.findMeshObjectByIdentifier( meshObjectInBase.getIdentifier() );
+
+                            if( meshObjectInComparison == null ) {
+                                return determineChangesForDeleted( meshObjectInBase, now );
+                            } else {
+                                return determineChangesForExisting( meshObjectInBase, meshObjectInComparison, comparisonBase, checkDates );
+                            }
+                        }
+                },
+                entityChanges,
+                graphChanges,
+                roleAdditionChanges,
+                roleSubtractionChanges );
+
+        // iterate through all the objects in COMPARISON, and look for those not in BASE
+        determineChangesInBatches(
+                comparisonBase,
+                new MeshObjectComparison() {
+                        public ChangesForMeshObject determineChanges(
+                                MeshObject meshObjectInComparison )
+                        {
+                            if( theBaselineBase.findMeshObjectByIdentifier( meshObjectInComparison.getIdentifier() ) == null ) {
+                                return determineChangesForCreated( meshObjectInComparison );
+                            } else {
+                                return null;
+                            }
+                        }
+                },
+                entityChanges,
+                graphChanges,
+                roleAdditionChanges,
+                roleSubtractionChanges );
 
-            if( meshObjectInComparison == null ) {
-                // If the MeshObject from BASE does not exist in COMPARISON,
-                // add MeshObjectObsoletionChange in the ChangeSet
+        ChangeSet changes = ChangeSet.createCat( new ChangeSet[] {
+                entityChanges,
+                graphChanges,
+                roleAdditionChanges,
+                roleSubtractionChanges
+        });
+        return changes;
+    }
 
-                ExternalizedMeshObject externalized = meshObjectInBase.asExternalized();
-                
-                AbstractMeshObjectLifecycleEvent obsoletionChange = createMeshObjectDeletedEvent( meshObjectInBase, identifier, externalized, now );
-                entityChanges.addChange( obsoletionChange );
+    /**
+     * Iterate over the MeshObjects of an IterableMeshBase in batches of BATCH_SIZE, determine
+     * the Changes for the MeshObjects of each batch, and append them to the ChangeSets in the
+     * sequence of iteration. Only one batch is held at a time. If a ForkJoinPool has been given,
+     * the MeshObjects of a batch are compared in chunks on its Threads.
+     *
+     * @param mb the IterableMeshBase to iterate over
+     * @param comparison determines the Changes for a MeshObject
+     * @param entityChanges the ChangeSet for Changes to types, properties, creations and deletions
+     * @param graphChanges the ChangeSet for Changes to neighbors and equivalents
+     * @param roleAdditionChanges the ChangeSet for added RoleTypes
+     * @param roleSubtractionChanges the ChangeSet for removed RoleTypes
+     */
+    protected void determineChangesInBatches(
+            IterableMeshBase           mb,
+            final MeshObjectComparison comparison,
+            ChangeSet                  entityChanges,
+            ChangeSet                  graphChanges,
+            ChangeSet                  roleAdditionChanges,
+            ChangeSet                  roleSubtractionChanges )
+    {
+        CursorIterator<MeshObject> iter = mb.iterator();
+
+        while( iter.hasNext() ) {
+            final MeshObject []           batch   = iter.next( BATCH_SIZE );
+            final ChangesForMeshObject [] changes = new ChangesForMeshObject[ batch.length ];
+
+            ParallelChunkProcessor.process( thePool, batch.length, CHUNK_SIZE, new ParallelChunkProcessor.Chunk() {
+                    public void process(
+                            int from,
+                            int to )
+                    {
+                        for( int i=from ; i<to ; ++i ) {
+                            changes[i] = comparison.determineChanges( batch[i] );
+                        }
+                    }
+            });
 
-            } else {
-                // If the MeshObject from BASE exists on COMPARISON,
-                // we need to check for any changes made to it.
+            for( int i=0 ; i<changes.length ; ++i ) {
+                if( changes[i] != null ) {
+                    changes[i].appendTo( entityChanges, graphChanges, roleAdditionChanges, roleSubtractionChanges );
+                }
+            }
+        }
+    }
 
-                // Let's compare the types. First add missing types, then remove obsoleted ones (that way we
-                // won't miss PropertyValues later).
-                EntityType [] objectTypesInBase       = meshObjectInBase.getTypes();
-                EntityType [] objectTypesInComparison = meshObjectInComparison.getTypes();
+    /**
+     * Determine the Changes for a MeshObject in the baseline IterableMeshBase that does not
+     * exist in the comparison IterableMeshBase.
+     *
+     * @param meshObjectInBase the MeshObject in the baseline
+     * @param now the time of the deletion
+     * @return the Changes
+     */
+    protected ChangesForMeshObject determineChangesForDeleted(
+            MeshObject meshObjectInBase,
+            long       now )
+    {
+        // If the MeshObject from BASE does not exist in COMPARISON,
+        // add MeshObjectObsoletionChange in the ChangeSet
 
-                ArrayList<EntityType> addedTypes = new ArrayList<EntityType>();
-                for( EntityType objectTypeInComparison : objectTypesInComparison ) {
-                    if( !ArrayHelper.isIn( objectTypeInComparison, objectTypesInBase, false ) ) {
+        ExternalizedMeshObject externalized = meshObjectInBase.asExternalized();
+
+        ChangesForMeshObject ret = new ChangesForMeshObject();
+        ret.addEntityChange( createMeshObjectDeletedEvent( meshObjectInBase, meshObjectInBase.getIdentifier(), externalized, now ));
+        return ret;
+    }
+
+    /**
+     * Determine the Changes for a MeshObject that exists both in the baseline and in the
+     * comparison IterableMeshBase.
+     *
+     * @param meshObjectInBase the MeshObject in the baseline
+     * @param meshObjectInComparison the MeshObject with the same MeshObjectIdentifier in the comparison
+     * @param comparisonBase the MeshBase to compare against
+     * @param checkDates if true, this will also check created, updated, and auto-delete dates
+     * @return the Changes, or null if there are none
+     */
+    protected ChangesForMeshObject determineChangesForExisting(
+            MeshObject meshObjectInBase,
+            MeshObject meshObjectInComparison,
+            MeshBase   comparisonBase,
+            boolean    checkDates )
+    {
+        ChangesForMeshObject ret = new ChangesForMeshObject();
 
-                        addedTypes.add( objectTypeInComparison );
+        // If the MeshObject from BASE exists on COMPARISON,
+        // we need to check for any changes made to it.
+
+        // Let's compare the types. First add missing types, then remove obsoleted ones (that way we
+        // won't miss PropertyValues later).
+        EntityType [] objectTypesInBase       = meshObjectInBase.getTypes();
+        EntityType [] objectTypesInComparison = meshObjectInComparison.getTypes();
+
+        ArrayList<EntityType> addedTypes = determineMissing( objectTypesInComparison, objectTypesInBase );
+
+        EntityType [] addedTypesArray      = ArrayHelper.copyIntoNewArray( addedTypes, EntityType.class );
+        EntityType [] hypotheticalAllTypes = ArrayHelper.append( objectTypesInBase, addedTypesArray, EntityType.class ); // need to do this given that subtractions are separate
+
+        if( !addedTypes.isEmpty() ) {
+            AbstractMeshObjectTypeChangeEvent addedTypeChange = createMeshObjectTypesAddedEvent(
+                    meshObjectInBase,
+                    meshObjectInComparison,
+                    objectTypesInBase,
+                    addedTypesArray,
+                    hypotheticalAllTypes );
+            ret.addEntityChange( addedTypeChange );
+        }
+
+        ArrayList<EntityType> removedTypes = determineMissing( objectTypesInBase, objectTypesInComparison );
+        if( !removedTypes.isEmpty() ) {
+            AbstractMeshObjectTypeChangeEvent removedTypeChange = createMeshObjectTypesRemovedEvent(
+                    meshObjectInBase,
+                    meshObjectInComparison,
+                    hypotheticalAllTypes,
+                    ArrayHelper.copyIntoNewArray( removedTypes, EntityType.class ),
+                    objectTypesInComparison );
+            ret.addEntityChange( removedTypeChange );
+        }
+
+        // Now compare the properties. We only compare the ones in COMPARISON, because the ones
+        // in BASE become irrelevant as the type changes are applied
+        for( EntityType objectTypeInComparison : objectTypesInComparison ) {
+            for( PropertyType propertyTypeInComparison : objectTypeInComparison.getAllPropertyTypes() ) {
+
+                try {
+                    PropertyValue propertyValueInBase       = meshObjectInBase.getPropertyValue( propertyTypeInComparison );
+                    PropertyValue propertyValueInComparison = meshObjectInComparison.getPropertyValue( propertyTypeInComparison );
+
+                    if( PropertyValue.compare( propertyValueInBase, propertyValueInComparison ) != 0 ) {
+                        // there is a change
+                        MeshObjectPropertyChangeEvent propertyChange = createMeshObjectPropertyChangeEvent(
+                                meshObjectInBase,
+                                meshObjectInComparison,
+                                propertyTypeInComparison,
+                                propertyValueInBase,
+                                propertyValueInComparison );
+
+                        ret.addEntityChange( propertyChange );
+                    }
+                } catch( IllegalPropertyTypeException ex ) {
+                    // that's fine -- PropertyType does not exist on the old version
+                } catch( NotPermittedException ex ) {
+                    log.error( ex );
+                }
+
+                if( checkDates ) {
+                    // also check creation and update times
+                    if( meshObjectInBase.getTimeCreated() != meshObjectInComparison.getTimeCreated() ) {
+                        log.error(
+                                "Different creation times for "
+                                + meshObjectInBase.getIdentifier()
+                                + ": "
+                                + meshObjectInBase.getTimeCreated()
+                                + " vs. "
+                                + meshObjectInComparison.getTimeCreated() );
+                    }
+                    if( meshObjectInBase.getTimeUpdated() != meshObjectInComparison.getTimeUpdated() ) {
+                        log.error(
+                                "Different update times for "
+                                + meshObjectInBase.getIdentifier()
+                                + ": "
+                                + meshObjectInBase.getTimeUpdated()
+                                + " vs. "
+                                + meshObjectInComparison.getTimeUpdated() );
+                    }
+                    if( meshObjectInBase.getTimeRead() != meshObjectInComparison.getTimeRead() ) {
+                        log.error(
+                                "Different update times for "
+                                + meshObjectInBase.getIdentifier()
+                                + ": "
+                                + meshObjectInBase.getTimeRead()
+                                + " vs. "
+                                + meshObjectInComparison.getTimeRead() );
                     }
                 }
-                EntityType [] addedTypesArray      = ArrayHelper.copyIntoNewArray( addedTypes, EntityType.class );
-                EntityType [] hypotheticalAllTypes = ArrayHelper.append( objectTypesInBase, addedTypesArray, EntityType.class ); // need to do this given that subtractions are separate
+            }
+        }
+
+        // Most MeshObjects keep their relationships and equivalents: skip the detailed comparison for those
+        if( hasSameNeighborsAndEquivalents( meshObjectInBase, meshObjectInComparison )) {
+            return ret.isEmpty() ? null : ret;
+        }
 
-                if( !addedTypes.isEmpty() ) {
-                    AbstractMeshObjectTypeChangeEvent addedTypeChange = createMeshObjectTypesAddedEvent( 
+        // now look at the attached relationships
+        MeshObjectSet otherSidesInBase       = meshObjectInBase.traverseToNeighborMeshObjects( false );
+        MeshObjectSet otherSidesInComparison = meshObjectInComparison.traverseToNeighborMeshObjects( false );
+
+        Set<MeshObjectIdentifier> otherSideIdentifiersInBase       = createSet( otherSidesInBase.asIdentifiers() );
+        Set<MeshObjectIdentifier> otherSideIdentifiersInComparison = createSet( otherSidesInComparison.asIdentifiers() );
+
+        for( MeshObject currentOtherSideInBase : otherSidesInBase ) {
+            if( ! otherSideIdentifiersInComparison.contains( currentOtherSideInBase.getIdentifier() ) ) {
+                // check whether this MeshObject has been obsoleted, so we don't have to do anything
+                if( comparisonBase.findMeshObjectByIdentifier( currentOtherSideInBase.getIdentifier() ) != null ) {
+
+                    AbstractMeshObjectNeighborChangeEvent relChange = createMeshObjectNeighborRemovedEvent(
                             meshObjectInBase,
                             meshObjectInComparison,
-                            objectTypesInBase,
-                            addedTypesArray,
-                            hypotheticalAllTypes );
-                    entityChanges.addChange( addedTypeChange );
+                            otherSidesInBase,
+                            currentOtherSideInBase,
+                            otherSidesInComparison );
+
+                    ret.addGraphChange( relChange );
                 }
+            } else {
+                // noop, nothing changed
+            }
+        }
 
-                ArrayList<EntityType> removedTypes = new ArrayList<EntityType>();
-                for( EntityType objectTypeInBase : objectTypesInBase ) {
-                    if( !ArrayHelper.isIn( objectTypeInBase, objectTypesInComparison, false ) ) {
+        for( MeshObject currentOtherSideInComparison : otherSidesInComparison ) {
+            if( ! otherSideIdentifiersInBase.contains( currentOtherSideInComparison.getIdentifier() ) ) {
+                // in this case, we have to do things anyway
+                try {
+                    RoleType [] addedRoleTypes = meshObjectInComparison.getRoleTypes( currentOtherSideInComparison );
 
-                        removedTypes.add( objectTypeInBase );
-                    }
-                }
-                if( !removedTypes.isEmpty() ) {
-                    AbstractMeshObjectTypeChangeEvent removedTypeChange = createMeshObjectTypesRemovedEvent(
+                    AbstractMeshObjectNeighborChangeEvent relChange = createMeshObjectNeighborAddedEvent(
                             meshObjectInBase,
                             meshObjectInComparison,
-                            hypotheticalAllTypes,
-                            ArrayHelper.copyIntoNewArray( removedTypes, EntityType.class ),
-                            objectTypesInComparison );
-                    entityChanges.addChange( removedTypeChange );
-                }
-                
-                // Now compare the properties. We only compare the ones in COMPARISON, because the ones
-                // in BASE become irrelevant as the type changes are applied
-                for( EntityType objectTypeInComparison : objectTypesInComparison ) {
-                    for( PropertyType propertyTypeInComparison : objectTypeInComparison.getAllPropertyTypes() ) {
-
-                        try {
-                            PropertyValue propertyValueInBase       = meshObjectInBase.getPropertyValue( propertyTypeInComparison );
-                            PropertyValue propertyValueInComparison = meshObjectInComparison.getPropertyValue( propertyTypeInComparison );
-
-                            if( PropertyValue.compare( propertyValueInBase, propertyValueInComparison ) != 0 ) {
-                                // there is a change
-                                MeshObjectPropertyChangeEvent propertyChange = createMeshObjectPropertyChangeEvent(
-                                        meshObjectInBase,
-                                        meshObjectInComparison,
-                                        propertyTypeInComparison,
-                                        propertyValueInBase,
-                                        propertyValueInComparison );
-
-                                entityChanges.addChange( propertyChange );
-                            }
-                        } catch( IllegalPropertyTypeException ex ) {
-                            // that's fine -- PropertyType does not exist on the old version
-                        } catch( NotPermittedException ex ) {
-                            log.error( ex );
-                        }
+                            otherSidesInBase,
+                            currentOtherSideInComparison,
+                            otherSidesInComparison,
+                            addedRoleTypes );
 
-                        if( checkDates ) {
-                            // also check creation and update times
-                            if( meshObjectInBase.getTimeCreated() != meshObjectInComparison.getTimeCreated() ) {
-                                log.error(
-                                        "Different creation times for "
-                                        + meshObjectInBase.getIdentifier()
-                                        + ": "
-                                        + meshObjectInBase.getTimeCreated()
-                                        + " vs. "
-                                        + meshObjectInComparison.getTimeCreated() );
-                            }
-                            if( meshObjectInBase.getTimeUpdated() != meshObjectInComparison.getTimeUpdated() ) {
-                                log.error(
-                                        "Different update times for "
-                                        + meshObjectInBase.getIdentifier()
-                                        + ": "
-                                        + meshObjectInBase.getTimeUpdated()
-                                        + " vs. "
-                                        + meshObjectInComparison.getTimeUpdated() );
-                            }
-                            if( meshObjectInBase.getTimeRead() != meshObjectInComparison.getTimeRead() ) {
-                                log.error(
-                                        "Different update times for "
-                                        + meshObjectInBase.getIdentifier()
-                                        + ": "
-                                        + meshObjectInBase.getTimeRead()
-                                        + " vs. "
-                                        + meshObjectInComparison.getTimeRead() );
-                            }
-                        }
-                    }
+                    ret.addGraphChange( relChange );
+
+                } catch( NotRelatedException ex ) {
+                    log.error( ex );
                 }
+            }
 
-                // now look at the attached relationships
-                MeshObjectSet otherSidesInBase       = meshObjectInBase.traverseToNeighborMeshObjects( false );
-                MeshObjectSet otherSidesInComparison = meshObjectInComparison.traverseToNeighborMeshObjects( false );
-
-                for( MeshObject currentOtherSideInBase : otherSidesInBase ) {
-                    if( ! otherSidesInComparison.contains( currentOtherSideInBase.getIdentifier() ) ) {
-                        // check whether this MeshObject has been obsoleted, so we don't have to do anything
-                        if( comparisonBase.findMeshObjectByIdentifier( currentOtherSideInBase.getIdentifier() ) != null ) {
-                            
-                            AbstractMeshObjectNeighborChangeEvent relChange = createMeshObjectNeighborRemovedEvent(
-                                    meshObjectInBase,
-                                    meshObjectInComparison,
-                                    otherSidesInBase,
-                                    currentOtherSideInBase,
-                                    otherSidesInComparison );
-                                    
-                            graphChanges.addChange( relChange );
-                        }
-                    } else {
-                        // noop, nothing changed
+            // in any case, check the RoleTypes
+            MeshObject currentOtherSideInBase = theBaselineBase.findMeshObjectByIdentifier( currentOtherSideInComparison.getIdentifier() );
+            if( currentOtherSideInBase != null ) {
+                RoleType [] roleTypesInBase       = null;
+                RoleType [] roleTypesInComparison = null;
+
+                if( meshObjectInBase.isRelated( currentOtherSideInBase )) {
+                    try {
+                        roleTypesInBase = meshObjectInBase.getRoleTypes( currentOtherSideInBase );
+                    } catch( NotRelatedException ex ) {
+                        log.error( ex );
                     }
                 }
-                
-                for( MeshObject currentOtherSideInComparison : otherSidesInComparison ) {
-                    if( ! otherSidesInBase.contains( currentOtherSideInComparison.getIdentifier() ) ) {
-                        // in this case, we have to do things anyway
-                        try {
-                            RoleType [] addedRoleTypes = meshObjectInComparison.getRoleTypes( currentOtherSideInComparison );
-
-                            AbstractMeshObjectNeighborChangeEvent relChange = createMeshObjectNeighborAddedEvent(
-                                    meshObjectInBase,
-                                    meshObjectInComparison,
-                                    otherSidesInBase,
-                                    currentOtherSideInComparison,
-                                    otherSidesInComparison,
-                                    addedRoleTypes );
-
-                            graphChanges.addChange( relChange );
-
-                        } catch( NotRelatedException ex ) {
-                            log.error( ex );
-                        }
+                if( meshObjectInComparison.isRelated( currentOtherSideInComparison )) {
+                    try {
+                        roleTypesInComparison = meshObjectInComparison.getRoleTypes( currentOtherSideInComparison );
+                    } catch( NotRelatedException ex ) {
+                        log.error( ex );
                     }
+                }
 
-                    // in any case, check the RoleTypes
-                    MeshObject currentOtherSideInBase = theBaselineBase.findMeshObjectByIdentifier( currentOtherSideInComparison.getIdentifier() );
-                    if( currentOtherSideInBase != null ) {
-                        RoleType [] roleTypesInBase       = null;
-                        RoleType [] roleTypesInComparison = null;
-
-                        if( meshObjectInBase.isRelated( currentOtherSideInBase )) {
-                            try {
-                                roleTypesInBase = meshObjectInBase.getRoleTypes( currentOtherSideInBase );
-                            } catch( NotRelatedException ex ) {
-                                log.error( ex );
-                            }
-                        }
-                        if( meshObjectInComparison.isRelated( currentOtherSideInComparison )) {
-                            try {
-                                roleTypesInComparison = meshObjectInComparison.getRoleTypes( currentOtherSideInComparison );
-                            } catch( NotRelatedException ex ) {
-                                log.error( ex );
-                            }
-                        }
+                RoleType [] hypotheticalMinRoleTypes = new RoleType[0];
+                if( roleTypesInBase != null ) {
+                    ArrayList<RoleType> removed = roleTypesInComparison != null
+                            ? determineMissing( roleTypesInBase, roleTypesInComparison )
+                            : new ArrayList<RoleType>( Arrays.asList( roleTypesInBase ));
 
-                        RoleType [] hypotheticalMinRoleTypes = new RoleType[0];
-                        if( roleTypesInBase != null ) {
-                            RoleType [] removed = new RoleType[ roleTypesInBase.length ];
-                            int         count   = 0;
-                            
-                            for( RoleType currentRoleTypeInBase : roleTypesInBase ) {
-                                if( roleTypesInComparison == null || !ArrayHelper.isIn( currentRoleTypeInBase, roleTypesInComparison, false )) {
-                                    removed[ count++ ] = currentRoleTypeInBase;
-                                }
-                            }
-                            if( count > 0 ) {
-                                if( count < removed.length ) {
-                                    removed = ArrayHelper.subarray( removed, 0, count, RoleType.class );
-                                }
-                                hypotheticalMinRoleTypes = ArrayHelper.removeIfPresent( roleTypesInBase, removed, false, RoleType.class ); // the "if present" is probably not good -- FIXME
-                                
-                                AbstractMeshObjectRoleChangeEvent change = createMeshObjectRoleRemovedEvent(
-                                        meshObjectInBase,
-                                        meshObjectInComparison,
-                                        roleTypesInBase,
-                                        removed,
-                                        hypotheticalMinRoleTypes,
-                                        currentOtherSideInBase );
-                                roleSubtractionChanges.addChange( change );
-                            }
-                        }
+                    if( !removed.isEmpty() ) {
+                        RoleType [] removedArray = ArrayHelper.copyIntoNewArray( removed, RoleType.class );
 
-                        if( roleTypesInComparison != null ) {
-                            RoleType [] added = new RoleType[ roleTypesInComparison.length ];
-                            int         count = 0;
+                        hypotheticalMinRoleTypes = ArrayHelper.removeIfPresent( roleTypesInBase, removedArray, false, RoleType.class ); // the "if present" is probably not good -- FIXME
 
-                            for( RoleType currentRoleTypeInComparison : roleTypesInComparison ) {
-                                if( roleTypesInBase == null || !ArrayHelper.isIn( currentRoleTypeInComparison, roleTypesInBase, false )) {
-                                    added[ count++ ] = currentRoleTypeInComparison;
-                                }
-                            }
-                            if( count > 0 ) {
-                                if( count < added.length ) {
-                                    added = ArrayHelper.subarray( added, 0, count, RoleType.class );
-                                }
-                                AbstractMeshObjectRoleChangeEvent change = createMeshObjectRoleAddedEvent(
-                                        meshObjectInBase,
-                                        meshObjectInComparison,
-                                        hypotheticalMinRoleTypes,
-                                        added,
-                                        roleTypesInComparison,
-                                        currentOtherSideInComparison );
-
-                                roleAdditionChanges.addChange( change );
-                            }
-                        }
+                        AbstractMeshObjectRoleChangeEvent change = createMeshObjectRoleRemovedEvent(
+                                meshObjectInBase,
+                                meshObjectInComparison,
+                                roleTypesInBase,
+                                removedArray,
+                                hypotheticalMinRoleTypes,
+                                currentOtherSideInBase );
+                        ret.addRoleSubtractionChange( change );
                     }
                 }
-                
-                MeshObjectSet      equivalentsInBase       = meshObjectInBase.getEquivalents();
-                MeshObjectSet      equivalentsInComparison = meshObjectInComparison.getEquivalents();
-                MeshObjectIdentifier [] equivalentsInBaseIdentifiers       = equivalentsInBase.asIdentifiers();
-                MeshObjectIdentifier [] equivalentsInComparisonIdentifiers = equivalentsInComparison.asIdentifiers();
-
-                ArrayHelper.Difference<MeshObject> diff
-                        = ArrayHelper.determineDifference(
-                                equivalentsInBase.getMeshObjects(),
-                                equivalentsInComparison.getMeshObjects(),
-                                true,
-                                MeshObject.class );
-
-                MeshObject [] removal  = diff.getRemovals();
-                MeshObject [] addition = diff.getAdditions();
-
-                MeshObjectSet hypotheticalMinEquivalents;
-                if( removal != null && removal.length > 0 ) {
-                    hypotheticalMinEquivalents = theBaselineBase.getMeshObjectSetFactory().createImmutableMeshObjectSetMinus(
-                            equivalentsInBase,
-                            theBaselineBase.getMeshObjectSetFactory().createImmutableMeshObjectSet( removal ));
-
-                    AbstractMeshObjectEquivalentsChangeEvent equivChange = createMeshObjectEquivalentsRemovedEvent(
-                            meshObjectInBase,
-                            meshObjectInComparison,
-                            equivalentsInBase,
-                            asIdentifiers( removal ),
-                            hypotheticalMinEquivalents );
-                            
-                    graphChanges.addChange( equivChange );
 
-                } else {
-                    hypotheticalMinEquivalents = equivalentsInBase;
-                }
+                if( roleTypesInComparison != null ) {
+                    ArrayList<RoleType> added = roleTypesInBase != null
+                            ? determineMissing( roleTypesInComparison, roleTypesInBase )
+                            : new ArrayList<RoleType>( Arrays.asList( roleTypesInComparison ));
 
-                if( addition != null && addition.length > 0 ) {
-                    
-                    AbstractMeshObjectEquivalentsChangeEvent equivChange = createMeshObjectEquivalentsAddedEvent(
-                            meshObjectInBase,
-                            meshObjectInComparison,
-                            hypotheticalMinEquivalents,
-                            asIdentifiers( addition ),
-                            equivalentsInComparison );
-                    
-                    graphChanges.addChange( equivChange );                    
+                    if( !added.isEmpty() ) {
+                        AbstractMeshObjectRoleChangeEvent change = createMeshObjectRoleAddedEvent(
+                                meshObjectInBase,
+                                meshObjectInComparison,
+                                hypotheticalMinRoleTypes,
+                                ArrayHelper.copyIntoNewArray( added, RoleType.class ),
+                                roleTypesInComparison,
+                                currentOtherSideInComparison );
+
+                        ret.addRoleAdditionChange( change );
+                    }
                 }
             }
         }
 
-        // iterate through all the objects in COMPARISON
-        for( MeshObject meshObjectInComparison : comparisonBase ) {
+        MeshObjectSet equivalentsInBase       = meshObjectInBase.getEquivalents();
+        MeshObjectSet equivalentsInComparison = meshObjectInComparison.getEquivalents();
 
-            MeshObject meshObjectInBase = theBaselineBase.findMeshObjectByIdentifier( meshObjectInComparison.getIdentifier() );
+        ArrayHelper.Difference<MeshObject> diff
+                = ArrayHelper.determineDifference(
+                        equivalentsInBase.getMeshObjects(),
+                        equivalentsInComparison.getMeshObjects(),
+                        true,
+                        MeshObject.class );
 
-            // If the MeshObject from COMPARISON does not exist in BASE, add a MeshObjectCreatedEvent to the ChangeSet
-            if( meshObjectInBase == null ) {
+        MeshObject [] removal  = diff.getRemovals();
+        MeshObject [] addition = diff.getAdditions();
 
-                AbstractMeshObjectLifecycleEvent creationChange = createMeshObjectCreatedEvent( 
-                        meshObjectInComparison,
-                        meshObjectInComparison.getTimeCreated() );
-                entityChanges.addChange( creationChange );
-                
-                // we don't need to do anything about blessing -- that's captured in the MeshObjectCreatedEvent
-                for( EntityType objectTypeInComparison : meshObjectInComparison.getTypes() ) {
-                    for( PropertyType propertyTypeInComparison : objectTypeInComparison.getAllPropertyTypes() ) {
-                        try {
-                            PropertyValue propertyValueInComparison = meshObjectInComparison.getPropertyValue( propertyTypeInComparison );
-                            if( PropertyValue.compare( propertyTypeInComparison.getDefaultValue(), propertyValueInComparison ) != 0 ) {
-
-                                MeshObjectPropertyChangeEvent propertyChange = createMeshObjectPropertyChangeEvent(
-                                        meshObjectInComparison,
-                                        meshObjectInComparison,
-                                        propertyTypeInComparison,
-                                        null,
-                                        propertyValueInComparison );
-
-                                entityChanges.addChange( propertyChange );
-                            }
+        MeshObjectSet hypotheticalMinEquivalents;
+        if( removal != null && removal.length > 0 ) {
+            hypotheticalMinEquivalents = theBaselineBase.getMeshObjectSetFactory().createImmutableMeshObjectSetMinus(
+                    equivalentsInBase,
+                    theBaselineBase.getMeshObjectSetFactory().createImmutableMeshObjectSet( removal ));
 
-                        } catch( IllegalPropertyTypeException ex ) {
-                            log.error( ex );
+            AbstractMeshObjectEquivalentsChangeEvent equivChange = createMeshObjectEquivalentsRemovedEvent(
+                    meshObjectInBase,
+                    meshObjectInComparison,
+                    equivalentsInBase,
+                    asIdentifiers( removal ),
+                    hypotheticalMinEquivalents );
 
-                        } catch( NotPermittedException ex ) {
-                            log.error( ex );
-                        }
-                    }
-                }
+            ret.addGraphChange( equivChange );
 
-                MeshObjectSet otherSidesInComparison = meshObjectInComparison.traverseToNeighborMeshObjects( false );
-                MeshObjectSet oldOtherSides          = comparisonBase.getMeshObjectSetFactory().obtainEmptyImmutableMeshObjectSet();
+        } else {
+            hypotheticalMinEquivalents = equivalentsInBase;
+        }
 
-                for( MeshObject currentOtherSideInComparison : otherSidesInComparison ) {
+        if( addition != null && addition.length > 0 ) {
 
-                    try {
-                        RoleType [] addedRoleTypes = meshObjectInComparison.getRoleTypes( currentOtherSideInComparison );
+            AbstractMeshObjectEquivalentsChangeEvent equivChange = createMeshObjectEquivalentsAddedEvent(
+                    meshObjectInBase,
+                    meshObjectInComparison,
+                    hypotheticalMinEquivalents,
+                    asIdentifiers( addition ),
+                    equivalentsInComparison );
 
-                        MeshObjectSet newOtherSides = comparisonBase.getMeshObjectSetFactory().createImmutableMeshObjectSetUnification(
-                                oldOtherSides,
-                                currentOtherSideInComparison );
+            ret.addGraphChange( equivChange );
+        }
+        return ret.isEmpty() ? null : ret;
+    }
 
-                        AbstractMeshObjectNeighborChangeEvent relChange = createMeshObjectNeighborAddedEvent(
+    /**
+     * Determine the Changes for a MeshObject in the comparison IterableMeshBase that does
+     * not exist in the baseline IterableMeshBase.
+     *
+     * @param meshObjectInComparison the MeshObject in the comparison
+     * @return the Changes
+     */
+    protected ChangesForMeshObject determineChangesForCreated(
+            MeshObject meshObjectInComparison )
+    {
+        ChangesForMeshObject ret = new ChangesForMeshObject();
+
+        AbstractMeshObjectLifecycleEvent creationChange = createMeshObjectCreatedEvent(
+                meshObjectInComparison,
+                meshObjectInComparison.getTimeCreated() );
+        ret.addEntityChange( creationChange );
+
+        // we don't need to do anything about blessing -- that's captured in the MeshObjectCreatedEvent
+        for( EntityType objectTypeInComparison : meshObjectInComparison.getTypes() ) {
+            for( PropertyType propertyTypeInComparison : objectTypeInComparison.getAllPropertyTypes() ) {
+                try {
+                    PropertyValue propertyValueInComparison = meshObjectInComparison.getPropertyValue( propertyTypeInComparison );
+                    if( PropertyValue.compare( propertyTypeInComparison.getDefaultValue(), propertyValueInComparison ) != 0 ) {
+
+                        MeshObjectPropertyChangeEvent propertyChange = createMeshObjectPropertyChangeEvent(
                                 meshObjectInComparison,
                                 meshObjectInComparison,
-                                comparisonBase.getMeshObjectSetFactory().obtainEmptyImmutableMeshObjectSet(),
-                                currentOtherSideInComparison,
-                                newOtherSides,
-                                addedRoleTypes );
+                                propertyTypeInComparison,
+                                null,
+                                propertyValueInComparison );
 
-                        graphChanges.addChange( relChange );
+                        ret.addEntityChange( propertyChange );
+                    }
 
-                        oldOtherSides = newOtherSides;
+                } catch( IllegalPropertyTypeException ex ) {
+                    log.error( ex );
 
-                    } catch( NotRelatedException ex ) {
-                        log.error( ex );
-                    }
+                } catch( NotPermittedException ex ) {
+                    log.error( ex );
                 }
-                
-                MeshObjectSet equivalentsInComparison = meshObjectInComparison.getEquivalents();
-                if( equivalentsInComparison.size() > 1 ) {
-                    
-                    AbstractMeshObjectEquivalentsChangeEvent equivChange = createMeshObjectEquivalentsAddedEvent(
-                            meshObjectInComparison,
-                            meshObjectInComparison,
-                            comparisonBase.getMeshObjectSetFactory().obtainEmptyImmutableMeshObjectSet(),
-                            asIdentifiers( ArrayHelper.remove( equivalentsInComparison.getMeshObjects(), meshObjectInComparison, false, MeshObject.class )),
-                            equivalentsInComparison );
-                            
-                    graphChanges.addChange( equivChange );
+            }
+        }
+
+        MeshObjectSetFactory factory = meshObjectInComparison.getMeshBase().getMeshObjectSetFactory();
+
+        MeshObjectSet otherSidesInComparison = meshObjectInComparison.traverseToNeighborMeshObjects( false );
+        MeshObjectSet oldOtherSides          = factory.obtainEmptyImmutableMeshObjectSet();
+
+        for( MeshObject currentOtherSideInComparison : otherSidesInComparison ) {
+
+            try {
+                RoleType [] addedRoleTypes = meshObjectInComparison.getRoleTypes( currentOtherSideInComparison );
+
+                MeshObjectSet newOtherSides = factory.createImmutableMeshObjectSetUnification(
+                        oldOtherSides,
+                        currentOtherSideInComparison );
+
+                AbstractMeshObjectNeighborChangeEvent relChange = createMeshObjectNeighborAddedEvent(
+                        meshObjectInComparison,
+                        meshObjectInComparison,
+                        factory.obtainEmptyImmutableMeshObjectSet(),
+                        currentOtherSideInComparison,
+                        newOtherSides,
+                        addedRoleTypes );
+
+                ret.addGraphChange( relChange );
+
+                oldOtherSides = newOtherSides;
+
+            } catch( NotRelatedException ex ) {
+                log.error( ex );
+            }
+        }
+
+        MeshObjectSet equivalentsInComparison = meshObjectInComparison.getEquivalents();
+        if( equivalentsInComparison.size() > 1 ) {
+
+            AbstractMeshObjectEquivalentsChangeEvent equivChange = createMeshObjectEquivalentsAddedEvent(
+                    meshObjectInComparison,
+                    meshObjectInComparison,
+                    factory.obtainEmptyImmutableMeshObjectSet(),
+                    asIdentifiers( ArrayHelper.remove( equivalentsInComparison.getMeshObjects(), meshObjectInComparison, false, MeshObject.class )),
+                    equivalentsInComparison );
+
+            ret.addGraphChange( equivChange );
+        }
+        return ret;
+    }
+
+    /**
+     * Quickly determine whether two MeshObjects with the same MeshObjectIdentifier have the same
+     * neighbors, play the same RoleTypes with each of them, and have the same equivalents. This
+     * acts as a fingerprint of the MeshObjects' graph content: if it matches, the detailed
+     * comparison would not find any Changes, and can be skipped.
+     *
+     * @param meshObjectInBase the MeshObject in the baseline
+     * @param meshObjectInComparison the MeshObject in the comparison
+     * @return true if neighbors, RoleTypes and equivalents are the same
+     */
+    protected boolean hasSameNeighborsAndEquivalents(
+            MeshObject meshObjectInBase,
+            MeshObject meshObjectInComparison )
+    {
+        MeshObjectIdentifier [] neighborsInBase       = meshObjectInBase.getNeighborMeshObjectIdentifiers();
+        MeshObjectIdentifier [] neighborsInComparison = meshObjectInComparison.getNeighborMeshObjectIdentifiers();
+
+        if( !hasSameMembers( neighborsInBase, neighborsInComparison )) {
+            return false;
+        }
+        if( neighborsInBase != null ) {
+            try {
+                for( MeshObjectIdentifier current : neighborsInBase ) {
+                    if( !hasSameMembers( meshObjectInBase.getRoleTypes( current ), meshObjectInComparison.getRoleTypes( current ))) {
+                        return false;
+                    }
                 }
+            } catch( NotRelatedException ex ) {
+                return false;
             }
         }
+        return hasSameMembers(
+                meshObjectInBase.getEquivalentMeshObjectIdentifiers(),
+                meshObjectInComparison.getEquivalentMeshObjectIdentifiers() );
+    }
 
-        ChangeSet changes = ChangeSet.createCat( new ChangeSet[] {
-                entityChanges,
-                graphChanges,
-                roleAdditionChanges,
-                roleSubtractionChanges
-        });
-        return changes;
+    /**
+     * Create a Set from the members of an array.
+     *
+     * @param members the members, may be null
+     * @return the Set
+     * @param <T> the type of member
+     */
+    protected static <T> Set<T> createSet(
+            T [] members )
+    {
+        if( members == null ) {
+            return new HashSet<T>();
+        }
+        HashSet<T> ret = new HashSet<T>( members.length * 4 / 3 + 1 );
+        ret.addAll( Arrays.asList( members ));
+        return ret;
+    }
+
+    /**
+     * Determine the members of one array that are not members of another array,
+     * in sequence.
+     *
+     * @param candidates the members to look for
+     * @param in the members to look in
+     * @return the candidates not found
+     * @param <T> the type of member
+     */
+    protected static <T> ArrayList<T> determineMissing(
+            T [] candidates,
+            T [] in )
+    {
+        Set<T>       inSet = createSet( in );
+        ArrayList<T> ret   = new ArrayList<T>();
+
+        for( T current : candidates ) {
+            if( !inSet.contains( current )) {
+                ret.add( current );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Determine whether two arrays have the same members, regardless of sequence.
+     * A null array has the same members as an empty array.
+     *
+     * @param one the first array
+     * @param two the second array
+     * @return true if they have the same members
+     * @param <T> the type of member
+     */
+    protected static <T> boolean hasSameMembers(
+            T [] one,
+            T [] two )
+    {
+        int oneLength = one != null ? one.length : 0;
+        int twoLength = two != null ? two.length : 0;
+
+        if( oneLength != twoLength ) {
+            return false;
+        }
+        if( oneLength == 0 ) {
+            return true;
+        }
+        return createSet( one ).equals( createSet( two ));
     }
 
     /**
@@ -526,7 +777,7 @@ public class IterableMeshBaseDifferencer
             log.info( this + ".applyChangeSet( " + theChangeSet + " )" );
         }
 
-        for( Change currentChange : theChangeSet ) {
+        for( Change<?,?,?,?> currentChange : theChangeSet ) {
             try {
                 currentChange.applyTo( theBaselineBase );
 
@@ -878,10 +1129,12 @@ public class IterableMeshBaseDifferencer
     {
         d.dump( this,
                 new String[] {
-                    "theBaselineBase"
+                    "theBaselineBase",
+                    "thePool"
                 },
                 new Object[] {
-                    theBaselineBase
+                    theBaselineBase,
+                    thePool
                 });
     }
 
@@ -889,4 +1142,167 @@ public class IterableMeshBaseDifferencer
      * The IterableMeshBase against which we are comparing, and to which we apply any changes.
      */
     protected IterableMeshBase theBaselineBase;
+
+    /**
+     * If given, the MeshObjects are compared in chunks on the Threads of this ForkJoinPool.
+     */
+    protected ForkJoinPool thePool;
+
+    /**
+     * The maximum number of MeshObjects compared by a single task in the ForkJoinPool.
+     */
+    public static final int CHUNK_SIZE = 128;
+
+    /**
+     * The maximum number of MeshObjects obtained from an IterableMeshBase at a time.
+     */
+    public static final int BATCH_SIZE = 16 * CHUNK_SIZE;
+
+    /**
+     * Determines the Changes for a single MeshObject.
+     */
+    protected static interface MeshObjectComparison
+    {
+        /**
+         * Determine the Changes for this MeshObject.
+         *
+         * @param meshObject the MeshObject
+         * @return the Changes, or null if there are none
+         */
+        public ChangesForMeshObject determineChanges(
+                MeshObject meshObject );
+    }
+
+    /**
+     * Collects the Changes found for a single MeshObject, so they can be assembled into
+     * the ChangeSet in sequence.
+     */
+    protected static class ChangesForMeshObject
+    {
+        /**
+         * Add a Change to the MeshObject's types or properties, or its creation or deletion.
+         *
+         * @param toAdd the Change
+         */
+        public void addEntityChange(
+                Change<?,?,?,?> toAdd )
+        {
+            if( theEntityChanges == null ) {
+                theEntityChanges = new ArrayList<Change<?,?,?,?>>();
+            }
+            theEntityChanges.add( toAdd );
+        }
+
+        /**
+         * Add a Change to the MeshObject's neighbors or equivalents.
+         *
+         * @param toAdd the Change
+         */
+        public void addGraphChange(
+                Change<?,?,?,?> toAdd )
+        {
+            if( theGraphChanges == null ) {
+                theGraphChanges = new ArrayList<Change<?,?,?,?>>();
+            }
+            theGraphChanges.add( toAdd );
+        }
+
+        /**
+         * Add a Change that adds RoleTypes.
+         *
+         * @param toAdd the Change
+         */
+        public void addRoleAdditionChange(
+                Change<?,?,?,?> toAdd )
+        {
+            if( theRoleAdditionChanges == null ) {
+                theRoleAdditionChanges = new ArrayList<Change<?,?,?,?>>();
+            }
+            theRoleAdditionChanges.add( toAdd );
+        }
+
+        /**
+         * Add a Change that removes RoleTypes.
+         *
+         * @param toAdd the Change
+         */
+        public void addRoleSubtractionChange(
+                Change<?,?,?,?> toAdd )
+        {
+            if( theRoleSubtractionChanges == null ) {
+                theRoleSubtractionChanges = new ArrayList<Change<?,?,?,?>>();
+            }
+            theRoleSubtractionChanges.add( toAdd );
+        }
+
+        /**
+         * Determine whether no Changes have been found.
+         *
+         * @return true if no Changes have been found
+         */
+        public boolean isEmpty()
+        {
+            return theEntityChanges == null
+                    && theGraphChanges == null
+                    && theRoleAdditionChanges == null
+                    && theRoleSubtractionChanges == null;
+        }
+
+        /**
+         * Append the found Changes to the ChangeSets for the respective kind of Change.
+         *
+         * @param entityChanges the ChangeSet for Changes to types, properties, creations and deletions
+         * @param graphChanges the ChangeSet for Changes to neighbors and equivalents
+         * @param roleAdditionChanges the ChangeSet for added RoleTypes
+         * @param roleSubtractionChanges the ChangeSet for removed RoleTypes
+         */
+        public void appendTo(
+                ChangeSet entityChanges,
+                ChangeSet graphChanges,
+                ChangeSet roleAdditionChanges,
+                ChangeSet roleSubtractionChanges )
+        {
+            appendTo( theEntityChanges,          entityChanges );
+            appendTo( theGraphChanges,           graphChanges );
+            appendTo( theRoleAdditionChanges,    roleAdditionChanges );
+            appendTo( theRoleSubtractionChanges, roleSubtractionChanges );
+        }
+
+        /**
+         * Append Changes to a ChangeSet.
+         *
+         * @param changes the Changes, if any
+         * @param changeSet the ChangeSet
+         */
+        protected static void appendTo(
+                ArrayList<Change<?,?,?,?>> changes,
+                ChangeSet                  changeSet )
+        {
+            if( changes != null ) {
+                for( Change<?,?,?,?> current : changes ) {
+                    changeSet.addChange( current );
+                }
+            }
+        }
+
+        /**
+         * Changes to types, properties, creations and deletions, if any.
+         */
+        protected ArrayList<Change<?,?,?,?>> theEntityChanges;
+
+        /**
+         * Changes to neighbors and equivalents, if any.
+         */
+        protected ArrayList<Change<?,?,?,?>> theGraphChanges;
+
+        /**
+         * Changes that add RoleTypes, if any.
+         */
+        protected ArrayList<Change<?,?,?,?>> theRoleAdditionChanges;
+
+        /**
+         * Changes that remove RoleTypes, if any.
+         */
+        protected ArrayList<Change<?,?,?,?>> theRoleSubtractionChanges;
+    }
 }
@@ -20,6 +20,7 @@ import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.NotPermittedException;
 import org.infogrid.mesh.set.MeshObjectSet;
 import org.infogrid.mesh.set.MeshObjectSetFactory;
+import org.infogrid.meshbase.index.PropertyValueIndexer;
 import org.infogrid.meshbase.security.AccessManager;
 import org.infogrid.meshbase.sweeper.Sweeper;
 import org.infogrid.meshbase.transaction.MeshObjectLifecycleListener;
@@ -28,8 +29,10 @@ import org.infogrid.meshbase.transaction.TransactionActiveAlreadyException;
 import org.infogrid.meshbase.transaction.TransactionAsapTimeoutException;
 import org.infogrid.meshbase.transaction.TransactionException;
 import org.infogrid.meshbase.transaction.TransactionListener;
+import org.infogrid.model.primitives.EntityType;
 import org.infogrid.model.primitives.RoleType;
 import org.infogrid.modelbase.ModelBase;
+import org.infogrid.util.CursorIterator;
 import org.infogrid.util.LiveDeadObject;
 import org.infogrid.util.QuitListener;
 import org.infogrid.util.context.ObjectInContext;
@@ -158,6 +161,41 @@ public interface MeshBase
         throws
             MeshObjectsNotFoundException;
 
+    /**
+     * <p>Find all MeshObjects in this MeshBase that are blessed with an EntityType, or one
+     *    of its subtypes.</p>
+     * <p>If the {@link #getPropertyValueIndexer PropertyValueIndexer} maintains an
+     *    ExtentIndex for the EntityType, the MeshObjects are found without iterating over
+     *    the MeshBase, and MeshObjects blessed in a Transaction that has not been committed
+     *    yet are not found. Otherwise, an IterableMeshBase iterates over its content; other
+     *    MeshBases cannot find the MeshObjects.</p>
+     *
+     * @param type the EntityType
+     * @return the found MeshObjects
+     * @throws UnsupportedOperationException thrown if this MeshBase cannot find all instances of the EntityType
+     */
+    public abstract MeshObjectSet findMeshObjectsByType(
+            EntityType type )
+        throws
+            UnsupportedOperationException;
+
+    /**
+     * <p>Obtain a CursorIterator over all MeshObjects in this MeshBase that are blessed with
+     *    an EntityType, or one of its subtypes. Unlike
+     *    {@link #findMeshObjectsByType findMeshObjectsByType}, this does not need to load all
+     *    the MeshObjects at once, so the application may page through them.</p>
+     * <p>The same considerations regarding ExtentIndexes apply as for
+     *    {@link #findMeshObjectsByType findMeshObjectsByType}.</p>
+     *
+     * @param type the EntityType
+     * @return the CursorIterator
+     * @throws UnsupportedOperationException thrown if this MeshBase cannot find all instances of the EntityType
+     */
+    public abstract CursorIterator<MeshObject> meshObjectsByTypeIterator(
+            EntityType type )
+        throws
+            UnsupportedOperationException;
+
     /**
      * Obtain a MeshObject whose unique identifier is known.
      * 
@@ -234,6 +272,22 @@ public interface MeshBase
      * @return the Sweeper, if any
      */
     public abstract Sweeper getSweeper();
+
+    /**
+     * Set a PropertyValueIndexer for this MeshBase. The MeshBase notifies it of all
+     * committed and rolled-back Transactions.
+     *
+     * @param newIndexer the new PropertyValueIndexer, or null
+     */
+    public abstract void setPropertyValueIndexer(
+            PropertyValueIndexer newIndexer );
+
+    /**
+     * Obtain the currently set PropertyValueIndexer for this MeshBase, if any.
+     *
+     * @return the PropertyValueIndexer, if any
+     */
+    public abstract PropertyValueIndexer getPropertyValueIndexer();
     
     /**
      * Obtain a factory for MeshObjectIdentifiers that is appropriate for this MeshBase.
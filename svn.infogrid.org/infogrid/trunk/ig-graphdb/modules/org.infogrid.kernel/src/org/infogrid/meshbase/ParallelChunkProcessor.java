@@ -0,0 +1,187 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.security.ThreadIdentityManager;
+
+/**
+ * Processes a range of indices in chunks, spread over the Threads of a ForkJoinPool.
+ * The Threads act on behalf of the caller, and with the super user rights, of the Thread
+ * that started the processing, as managed by the {@link ThreadIdentityManager}.
+ */
+public final class ParallelChunkProcessor
+{
+    /**
+     * Private constructor, this class cannot be instantiated.
+     */
+    private ParallelChunkProcessor()
+    {}
+
+    /**
+     * Process a range of indices, in chunks spread over a ForkJoinPool if one is given
+     * and the range is larger than a chunk, or in the calling Thread otherwise.
+     * Returns once all chunks have been processed.
+     *
+     * @param pool the ForkJoinPool, if any
+     * @param length the length of the range, starting at 0
+     * @param chunkSize the maximum number of indices in a chunk
+     * @param chunk processes a chunk of the range
+     */
+    public static void process(
+            ForkJoinPool pool,
+            int          length,
+            int          chunkSize,
+            Chunk        chunk )
+    {
+        if( pool == null || length <= chunkSize ) {
+            chunk.process( 0, length );
+            return;
+        }
+
+        ChunkAction action = new ChunkAction(
+                chunk,
+                0,
+                length,
+                chunkSize,
+                ThreadIdentityManager.getCaller(),
+                ThreadIdentityManager.isSu() );
+
+        if( ForkJoinTask.inForkJoinPool() ) {
+            action.invoke();
+        } else {
+            pool.invoke( action );
+        }
+    }
+
+    /**
+     * Processes a chunk of a range of indices.
+     */
+    public static interface Chunk
+    {
+        /**
+         * Process the chunk.
+         *
+         * @param from the first index in the chunk
+         * @param to the index after the last index in the chunk
+         */
+        public void process(
+                int from,
+                int to );
+    }
+
+    /**
+     * Splits a range of indices into chunks, and processes them in a ForkJoinPool
+     * on behalf of a caller.
+     */
+    private static class ChunkAction
+            extends
+                RecursiveAction
+    {
+        private static final long serialVersionUID = 1L; // helps with serialization
+
+        /**
+         * Constructor.
+         *
+         * @param chunk processes a chunk
+         * @param from the first index of the range
+         * @param to the index after the last index of the range
+         * @param chunkSize the maximum number of indices in a chunk
+         * @param caller the caller on whose behalf the chunks are processed, if any
+         * @param isSu if true, the chunks are processed with super user rights
+         */
+        public ChunkAction(
+                Chunk      chunk,
+                int        from,
+                int        to,
+                int        chunkSize,
+                MeshObject caller,
+                boolean    isSu )
+        {
+            theChunk     = chunk;
+            theFrom      = from;
+            theTo        = to;
+            theChunkSize = chunkSize;
+            theCaller    = caller;
+            theIsSu      = isSu;
+        }
+
+        /**
+         * Process the range, or split it.
+         */
+        @Override
+        protected void compute()
+        {
+            if( theTo - theFrom > theChunkSize ) {
+                int middle = ( theFrom + theTo ) >>> 1;
+                invokeAll(
+                        new ChunkAction( theChunk, theFrom, middle, theChunkSize, theCaller, theIsSu ),
+                        new ChunkAction( theChunk, middle,  theTo,  theChunkSize, theCaller, theIsSu ));
+                return;
+            }
+
+            MeshObject previousCaller = ThreadIdentityManager.setCaller( theCaller );
+            if( theIsSu ) {
+                ThreadIdentityManager.sudo();
+            }
+            try {
+                theChunk.process( theFrom, theTo );
+
+            } finally {
+                if( theIsSu ) {
+                    ThreadIdentityManager.sudone();
+                }
+                if( previousCaller != null ) {
+                    ThreadIdentityManager.setCaller( previousCaller );
+                } else {
+                    ThreadIdentityManager.unsetCaller();
+                }
+            }
+        }
+
+        /**
+         * Processes a chunk.
+         */
+        protected Chunk theChunk;
+
+        /**
+         * The first index of the range.
+         */
+        protected int theFrom;
+
+        /**
+         * The index after the last index of the range.
+         */
+        protected int theTo;
+
+        /**
+         * The maximum number of indices in a chunk.
+         */
+        protected int theChunkSize;
+
+        /**
+         * The caller on whose behalf the chunks are processed, if any.
+         */
+        protected MeshObject theCaller;
+
+        /**
+         * If true, the chunks are processed with super user rights.
+         */
+        protected boolean theIsSu;
+    }
+}
@@ -22,9 +22,11 @@ import org.infogrid.meshbase.IterableMeshBaseDifferencer;
 import org.infogrid.meshbase.MeshBaseIdentifier;
 import org.infogrid.meshbase.MeshObjectIdentifierFactory;
 import org.infogrid.meshbase.security.AccessManager;
+import org.infogrid.model.primitives.EntityType;
 import org.infogrid.modelbase.ModelBase;
 import org.infogrid.util.CachingMap;
 import org.infogrid.util.CursorIterator;
+import org.infogrid.util.FilteringCursorIterator;
 import org.infogrid.util.context.Context;
 
 /**
@@ -81,4 +83,27 @@ public abstract class AIterableMeshBase
     {
         return new IterableMeshBaseDifferencer( this );
     }
+
+    /**
+     * Obtain a CursorIterator over all MeshObjects in this MeshBase that are blessed with
+     * an EntityType, or one of its subtypes, by iterating over the content of this MeshBase.
+     *
+     * @param type the EntityType
+     * @return the CursorIterator
+     */
+    @Override
+    protected CursorIterator<MeshObject> meshObjectsByTypeIteratorWithoutIndex(
+            final EntityType type )
+    {
+        return FilteringCursorIterator.create(
+                iterator(),
+                new FilteringCursorIterator.Filter<MeshObject>() {
+                    public boolean accept(
+                            MeshObject candidate )
+                    {
+                        return candidate.isBlessedBy( type, true );
+                    }
+                },
+                MeshObject.class );
+    }
 }
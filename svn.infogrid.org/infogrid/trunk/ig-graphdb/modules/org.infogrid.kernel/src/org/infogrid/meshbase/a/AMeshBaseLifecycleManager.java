@@ -129,7 +129,7 @@ public class AMeshBaseLifecycleManager
      * @throws TransactionException thrown if this method was invoked outside of proper Transaction boundaries
      * @throws NotPermittedException thrown if the caller is not authorized to perform this operation
      */
-    public synchronized AMeshObject createMeshObject(
+    public AMeshObject createMeshObject(
             MeshObjectIdentifier identifier,
             long                 timeCreated,
             long                 timeUpdated,
@@ -140,41 +140,47 @@ public class AMeshBaseLifecycleManager
             TransactionException,
             NotPermittedException
     {
-        checkPermittedCreate( identifier );
+        AMeshBase realBase = (AMeshBase) theMeshBase;
 
-        AccessManager access = theMeshBase.getAccessManager();
-        if( access != null ) {
-            access.checkPermittedCreate( identifier );
-        }
+        // Lock before entering our monitor: we may have to wait for another Transaction, which must be able
+        // to create and delete meanwhile. Nobody else may create or modify it until our Transaction is done.
+        realBase.lockForWrite( identifier );
 
-        long now = determineCreationTime();
-        if( timeCreated < 0 ) {
-            timeCreated = now;
-        }
-        if( timeUpdated < 0 ) {
-            timeUpdated = now;
-        }
-        if( timeRead < 0 ) {
-            timeRead = now;
-        }
-        // don't need to check timeExpires
+        synchronized( this ) {
+            checkPermittedCreate( identifier );
 
-        AMeshBase realBase = (AMeshBase) theMeshBase;
+            AccessManager access = theMeshBase.getAccessManager();
+            if( access != null ) {
+                access.checkPermittedCreate( identifier );
+            }
 
-        Transaction tx = realBase.checkTransaction();
+            long now = determineCreationTime();
+            if( timeCreated < 0 ) {
+                timeCreated = now;
+            }
+            if( timeUpdated < 0 ) {
+                timeUpdated = now;
+            }
+            if( timeRead < 0 ) {
+                timeRead = now;
+            }
+            // don't need to check timeExpires
 
-        AMeshObject ret = instantiateMeshObjectImplementation(
-                identifier,
-                timeCreated,
-                timeUpdated,
-                timeRead,
-                timeExpires );
+            Transaction tx = realBase.checkTransaction();
 
-        putIntoMeshBase( ret, createCreatedEvent( ret ));
+            AMeshObject ret = instantiateMeshObjectImplementation(
+                    identifier,
+                    timeCreated,
+                    timeUpdated,
+                    timeRead,
+                    timeExpires );
 
-        assignOwner( ret );
+            putIntoMeshBase( ret, createCreatedEvent( ret ));
 
-        return ret;
+            assignOwner( ret );
+
+            return ret;
+        }
     }
 
     /**
@@ -218,7 +224,7 @@ public class AMeshBaseLifecycleManager
      * @throws TransactionException thrown if this method was invoked outside of proper Transaction boundaries
      * @throws NotPermittedException thrown if the caller is not authorized to perform this operation
      */
-    public synchronized void deleteMeshObjects(
+    public void deleteMeshObjects(
             MeshObject [] theObjects )
         throws
             TransactionException,
@@ -245,23 +251,62 @@ public class AMeshBaseLifecycleManager
         for( int i=0 ; i<theObjects.length ; ++i ) {
             ((AMeshObject)theObjects[i]).checkPermittedDelete(); // this may throw NotPermittedException
         }
+        // lock before entering our monitor: we may have to wait for another Transaction, which must be able
+        // to create and delete meanwhile
         for( int i=0 ; i<theObjects.length ; ++i ) {
-            AMeshObject current = (AMeshObject) theObjects[i];
-            if( !current.getIsDead() ) {
-                // this may be a loop, or this object was deleted already as part of a cascading delete performed
-                // earlier in theObjects
-                MeshObjectIdentifier currentIdentifier = current.getIdentifier();
-
-                ExternalizedMeshObject currentExternalized = current.asExternalized();
-
-                current.delete();
-                removeFromMeshBase(
-                        current.getIdentifier(),
-                        createDeletedEvent( current, currentIdentifier, currentExternalized, now ));
+            lockForDelete( realBase, (AMeshObject) theObjects[i] ); // this may throw MeshObjectWriteLockException
+        }
+        synchronized( this ) {
+            for( int i=0 ; i<theObjects.length ; ++i ) {
+                AMeshObject current = (AMeshObject) theObjects[i];
+                if( !current.getIsDead() ) {
+                    // this may be a loop, or this object was deleted already as part of a cascading delete performed
+                    // earlier in theObjects
+                    MeshObjectIdentifier currentIdentifier = current.getIdentifier();
+
+                    ExternalizedMeshObject currentExternalized = current.asExternalized();
+
+                    current.delete();
+                    removeFromMeshBase(
+                            current.getIdentifier(),
+                            createDeletedEvent( current, currentIdentifier, currentExternalized, now ));
+                }
             }
         }
     }
 
+    /**
+     * Obtain the write locks needed to delete a MeshObject: on the MeshObject itself, on its
+     * equivalents, and on its neighbors. Once we hold the lock on the MeshObject, nobody else can
+     * change its equivalents or neighbors. If the MeshBase does not allow concurrent Transactions,
+     * this does nothing.
+     *
+     * @param realBase the MeshBase
+     * @param obj the to-be-deleted MeshObject
+     * @throws TransactionException thrown if a write lock could not be obtained
+     */
+    protected void lockForDelete(
+            AMeshBase   realBase,
+            AMeshObject obj )
+        throws
+            TransactionException
+    {
+        if( !realBase.getAllowsConcurrentTransactions() ) {
+            return;
+        }
+        realBase.lockForWrite( obj );
+
+        if( obj.getIsDead() ) {
+            return;
+        }
+        for( MeshObject current : obj.getEquivalents().getMeshObjects() ) {
+            realBase.lockForWrite( current );
+        }
+        for( MeshObject current : obj.traverseToNeighborMeshObjects( false ).getMeshObjects() ) {
+            realBase.lockForWrite( current );
+        }
+    }
+
     /**
      * <p>Semantically delete all MeshObjects in a MeshObjectSet at the same time.</p>
      *
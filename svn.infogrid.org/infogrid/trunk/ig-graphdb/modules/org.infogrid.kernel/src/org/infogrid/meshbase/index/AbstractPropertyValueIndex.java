@@ -0,0 +1,311 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2010 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.index;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.PropertyType;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.util.ArrayHelper;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+
+/**
+ * Factors out functionality common to PropertyValueIndex implementations. Subclasses
+ * determine the kind of Map that holds the entries. All access to the entries is
+ * synchronized on this object, so lookups may happen in any Thread while the
+ * PropertyValueIndexer updates the index.
+ */
+public abstract class AbstractPropertyValueIndex
+        implements
+            PropertyValueIndex,
+            CanBeDumped
+{
+    /**
+     * Constructor for subclasses only.
+     *
+     * @param mb the MeshBase whose MeshObjects this index indexes
+     * @param entityType the EntityType whose instances this index indexes
+     * @param propertyType the PropertyType whose values this index indexes
+     * @param entries the Map that holds the entries of this index
+     */
+    protected AbstractPropertyValueIndex(
+            MeshBase                                               mb,
+            EntityType                                             entityType,
+            PropertyType                                           propertyType,
+            Map<PropertyValue,LinkedHashSet<MeshObjectIdentifier>> entries )
+    {
+        theMeshBase     = mb;
+        theEntityType   = entityType;
+        thePropertyType = propertyType;
+        theEntries      = entries;
+        theValues       = new HashMap<MeshObjectIdentifier,PropertyValue>();
+    }
+
+    /**
+     * Obtain the MeshBase whose MeshObjects this PropertyValueIndex indexes.
+     *
+     * @return the MeshBase
+     */
+    public MeshBase getMeshBase()
+    {
+        return theMeshBase;
+    }
+
+    /**
+     * Obtain the EntityType whose instances this PropertyValueIndex indexes.
+     *
+     * @return the EntityType
+     */
+    public EntityType getEntityType()
+    {
+        return theEntityType;
+    }
+
+    /**
+     * Obtain the PropertyType whose values this PropertyValueIndex indexes.
+     *
+     * @return the PropertyType
+     */
+    public PropertyType getPropertyType()
+    {
+        return thePropertyType;
+    }
+
+    /**
+     * Find the MeshObjects whose value for the PropertyType equals the given value.
+     *
+     * @param value the value
+     * @return the found MeshObjects
+     */
+    public MeshObjectSet find(
+            PropertyValue value )
+    {
+        return resolve( findIdentifiers( value ));
+    }
+
+    /**
+     * Find the identifiers of the MeshObjects whose value for the PropertyType equals
+     * the given value. This does not load the MeshObjects.
+     *
+     * @param value the value
+     * @return the identifiers of the found MeshObjects
+     */
+    public synchronized MeshObjectIdentifier [] findIdentifiers(
+            PropertyValue value )
+    {
+        if( value == null ) {
+            return new MeshObjectIdentifier[0]; // nulls are not indexed
+        }
+        LinkedHashSet<MeshObjectIdentifier> found = theEntries.get( value );
+        if( found == null ) {
+            return new MeshObjectIdentifier[0];
+        }
+        return found.toArray( new MeshObjectIdentifier[ found.size() ] );
+    }
+
+    /**
+     * Obtain the indexed value of a MeshObject.
+     *
+     * @param identifier identifier of the MeshObject
+     * @return the indexed value, or null if the MeshObject is not indexed
+     */
+    public synchronized PropertyValue getIndexedValue(
+            MeshObjectIdentifier identifier )
+    {
+        return theValues.get( identifier );
+    }
+
+    /**
+     * Obtain the identifiers of all MeshObjects in this index.
+     *
+     * @return the identifiers
+     */
+    public synchronized MeshObjectIdentifier [] getIndexedIdentifiers()
+    {
+        return theValues.keySet().toArray( new MeshObjectIdentifier[ theValues.size() ] );
+    }
+
+    /**
+     * Obtain the number of MeshObjects in this PropertyValueIndex.
+     *
+     * @return the number of MeshObjects
+     */
+    public synchronized int size()
+    {
+        return theValues.size();
+    }
+
+    /**
+     * Obtain the number of distinct values in this PropertyValueIndex.
+     *
+     * @return the number of distinct values
+     */
+    public synchronized int getNumberOfValues()
+    {
+        return theEntries.size();
+    }
+
+    /**
+     * Determine whether a MeshObject belongs into this index, because it is blessed
+     * with the EntityType, or one of its subtypes.
+     *
+     * @param candidate the MeshObject
+     * @return true if the MeshObject belongs into this index
+     */
+    public boolean appliesTo(
+            MeshObject candidate )
+    {
+        return !candidate.getIsDead() && candidate.isBlessedBy( theEntityType, true );
+    }
+
+    /**
+     * Set the indexed value of a MeshObject. This is invoked by the PropertyValueIndexer only.
+     *
+     * @param identifier identifier of the MeshObject
+     * @param newValue the new value, or null if the MeshObject shall not be indexed any more
+     * @return the previously indexed value, if any
+     */
+    public synchronized PropertyValue put(
+            MeshObjectIdentifier identifier,
+            PropertyValue        newValue )
+    {
+        PropertyValue oldValue;
+        if( newValue != null ) {
+            oldValue = theValues.put( identifier, newValue );
+        } else {
+            oldValue = theValues.remove( identifier );
+        }
+
+        if( oldValue != null ) {
+            if( oldValue.equals( newValue )) {
+                return oldValue;
+            }
+            LinkedHashSet<MeshObjectIdentifier> oldEntry = theEntries.get( oldValue );
+            if( oldEntry != null ) {
+                oldEntry.remove( identifier );
+                if( oldEntry.isEmpty() ) {
+                    theEntries.remove( oldValue );
+                }
+            }
+        }
+        if( newValue != null ) {
+            LinkedHashSet<MeshObjectIdentifier> newEntry = theEntries.get( newValue );
+            if( newEntry == null ) {
+                newEntry = new LinkedHashSet<MeshObjectIdentifier>();
+                theEntries.put( newValue, newEntry );
+            }
+            newEntry.add( identifier );
+        }
+        return oldValue;
+    }
+
+    /**
+     * Remove all entries from this index. This is invoked by the PropertyValueIndexer only.
+     */
+    public synchronized void clear()
+    {
+        theEntries.clear();
+        theValues.clear();
+    }
+
+    /**
+     * Helper method to add the identifiers in a collection of entries to a Collection.
+     *
+     * @param entries the entries
+     * @param result the Collection to add to
+     */
+    protected static void addIdentifiers(
+            Collection<LinkedHashSet<MeshObjectIdentifier>> entries,
+            Collection<MeshObjectIdentifier>                result )
+    {
+        for( LinkedHashSet<MeshObjectIdentifier> current : entries ) {
+            result.addAll( current );
+        }
+    }
+
+    /**
+     * Helper method to find the MeshObjects with the given identifiers. MeshObjects
+     * that have been deleted since are silently skipped.
+     *
+     * @param identifiers the identifiers
+     * @return the MeshObjectSet containing the MeshObjects
+     */
+    protected MeshObjectSet resolve(
+            MeshObjectIdentifier [] identifiers )
+    {
+        MeshObject [] found = theMeshBase.findMeshObjectsByIdentifier( identifiers );
+
+        return theMeshBase.getMeshObjectSetFactory().createImmutableMeshObjectSet(
+                ArrayHelper.collectNonNull( found, MeshObject.class ));
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "entityType",
+                    "propertyType",
+                    "size",
+                    "numberOfValues"
+                },
+                new Object[] {
+                    theEntityType,
+                    thePropertyType,
+                    size(),
+                    getNumberOfValues()
+                });
+    }
+
+    /**
+     * The MeshBase whose MeshObjects this index indexes.
+     */
+    protected MeshBase theMeshBase;
+
+    /**
+     * The EntityType whose instances this index indexes.
+     */
+    protected EntityType theEntityType;
+
+    /**
+     * The PropertyType whose values this index indexes.
+     */
+    protected PropertyType thePropertyType;
+
+    /**
+     * The identifiers of the indexed MeshObjects, keyed by their values.
+     */
+    protected Map<PropertyValue,LinkedHashSet<MeshObjectIdentifier>> theEntries;
+
+    /**
+     * The indexed values, keyed by the identifiers of the MeshObjects. This allows us
+     * to remove a MeshObject from the index when we do not know its value any more,
+     * e.g. because it has been deleted.
+     */
+    protected HashMap<MeshObjectIdentifier,PropertyValue> theValues;
+}
@@ -0,0 +1,218 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2010 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+package org.infogrid.meshbase.index;
+
+import java.util.LinkedHashSet;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.util.ArrayHelper;
+import org.infogrid.util.CursorIterator;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+
+/**
+ * Default implementation of ExtentIndex. It holds the identifiers of the MeshObjects
+ * in the extent in the sequence in which they were added. All access to the members
+ * is synchronized on this object, so lookups may happen in any Thread while the
+ * PropertyValueIndexer updates the index.
+ */
+public class DefaultExtentIndex
+        implements
+            ExtentIndex,
+            CanBeDumped
+{
+    /**
+     * Factory method.
+     *
+     * @param mb the MeshBase whose MeshObjects this index indexes
+     * @param entityType the EntityType whose instances this index indexes
+     * @return the created DefaultExtentIndex
+     */
+    public static DefaultExtentIndex create(
+            MeshBase   mb,
+            EntityType entityType )
+    {
+        return new DefaultExtentIndex( mb, entityType );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param mb the MeshBase whose MeshObjects this index indexes
+     * @param entityType the EntityType whose instances this index indexes
+     */
+    protected DefaultExtentIndex(
+            MeshBase   mb,
+            EntityType entityType )
+    {
+        theMeshBase   = mb;
+        theEntityType = entityType;
+        theMembers    = new LinkedHashSet<MeshObjectIdentifier>();
+    }
+
+    /**
+     * Obtain the MeshBase whose MeshObjects this ExtentIndex indexes.
+     *
+     * @return the MeshBase
+     */
+    public MeshBase getMeshBase()
+    {
+        return theMeshBase;
+    }
+
+    /**
+     * Obtain the EntityType whose instances this ExtentIndex indexes.
+     *
+     * @return the EntityType
+     */
+    public EntityType getEntityType()
+    {
+        return theEntityType;
+    }
+
+    /**
+     * Find all MeshObjects in the extent. MeshObjects that have been deleted since
+     * are silently skipped.
+     *
+     * @return the found MeshObjects
+     */
+    public MeshObjectSet find()
+    {
+        MeshObject [] found = theMeshBase.findMeshObjectsByIdentifier( findIdentifiers() );
+
+        return theMeshBase.getMeshObjectSetFactory().createImmutableMeshObjectSet(
+                ArrayHelper.collectNonNull( found, MeshObject.class ));
+    }
+
+    /**
+     * Find the identifiers of all MeshObjects in the extent. This does not load the
+     * MeshObjects.
+     *
+     * @return the identifiers of the found MeshObjects
+     */
+    public synchronized MeshObjectIdentifier [] findIdentifiers()
+    {
+        return theMembers.toArray( new MeshObjectIdentifier[ theMembers.size() ] );
+    }
+
+    /**
+     * Obtain a CursorIterator over the MeshObjects in the extent. The CursorIterator
+     * works on the members of the extent at the time this method was invoked.
+     *
+     * @return the CursorIterator
+     */
+    public CursorIterator<MeshObject> iterator()
+    {
+        return ResolvingCursorIterator.create( theMeshBase, findIdentifiers() );
+    }
+
+    /**
+     * Determine whether a MeshObject is in the extent.
+     *
+     * @param identifier identifier of the MeshObject
+     * @return true if the MeshObject is in the extent
+     */
+    public synchronized boolean contains(
+            MeshObjectIdentifier identifier )
+    {
+        return theMembers.contains( identifier );
+    }
+
+    /**
+     * Obtain the number of MeshObjects in the extent.
+     *
+     * @return the number of MeshObjects
+     */
+    public synchronized int size()
+    {
+        return theMembers.size();
+    }
+
+    /**
+     * Determine whether a MeshObject belongs into this extent, because it is blessed
+     * with the EntityType, or one of its subtypes.
+     *
+     * @param candidate the MeshObject
+     * @return true if the MeshObject belongs into this extent
+     */
+    public boolean appliesTo(
+            MeshObject candidate )
+    {
+        return !candidate.getIsDead() && candidate.isBlessedBy( theEntityType, true );
+    }
+
+    /**
+     * Add a MeshObject to, or remove it from the extent. This is invoked by the
+     * PropertyValueIndexer only.
+     *
+     * @param identifier identifier of the MeshObject
+     * @param isMember if true, the MeshObject shall be in the extent
+     * @return true if the extent changed
+     */
+    public synchronized boolean put(
+            MeshObjectIdentifier identifier,
+            boolean              isMember )
+    {
+        if( isMember ) {
+            return theMembers.add( identifier );
+        } else {
+            return theMembers.remove( identifier );
+        }
+    }
+
+    /**
+     * Remove all members from the extent. This is invoked by the PropertyValueIndexer only.
+     */
+    public synchronized void clear()
+    {
+        theMembers.clear();
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "entityType",
+                    "size"
+                },
+                new Object[] {
+                    theEntityType,
+                    size()
+                });
+    }
+
+    /**
+     * The MeshBase whose MeshObjects this index indexes.
+     */
+    protected MeshBase theMeshBase;
+
+    /**
+     * The EntityType whose instances this index indexes.
+     */
+    protected EntityType theEntityType;
+
+    /**
+     * The identifiers of the MeshObjects in the extent.
+     */
+    protected LinkedHashSet<MeshObjectIdentifier> theMembers;
+}
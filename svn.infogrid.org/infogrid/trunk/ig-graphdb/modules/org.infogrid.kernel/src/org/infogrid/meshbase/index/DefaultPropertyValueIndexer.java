@@ -0,0 +1,644 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2010 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.index;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.infogrid.mesh.IllegalPropertyTypeException;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.NotPermittedException;
+import org.infogrid.mesh.security.ThreadIdentityManager;
+import org.infogrid.meshbase.IterableMeshBase;
+import org.infogrid.meshbase.transaction.AbstractMeshObjectTypeChangeEvent;
+import org.infogrid.meshbase.transaction.Change;
+import org.infogrid.meshbase.transaction.MeshObjectCreatedEvent;
+import org.infogrid.meshbase.transaction.MeshObjectDeletedEvent;
+import org.infogrid.meshbase.transaction.MeshObjectPropertyChangeEvent;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.PropertyType;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.util.ArrayHelper;
+import org.infogrid.util.CursorIterator;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Default implementation of PropertyValueIndexer for IterableMeshBases. New
+ *    PropertyValueIndexes and ExtentIndexes are populated by iterating over the
+ *    IterableMeshBase once.
+ *    After that, only the MeshObjects affected by a committed Transaction are
+ *    examined again.</p>
+ * <p>Values are read with super user rights, so the PropertyValueIndexes are complete
+ *    regardless of the AccessManager. Access control still applies when the application
+ *    reads the values of the found MeshObjects.</p>
+ */
+public class DefaultPropertyValueIndexer
+        implements
+            PropertyValueIndexer,
+            CanBeDumped
+{
+    private static final Log log = Log.getLogInstance( DefaultPropertyValueIndexer.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param mb the IterableMeshBase whose MeshObjects this PropertyValueIndexer indexes
+     * @return the created DefaultPropertyValueIndexer
+     */
+    public static DefaultPropertyValueIndexer create(
+            IterableMeshBase mb )
+    {
+        return new DefaultPropertyValueIndexer( mb );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param mb the IterableMeshBase whose MeshObjects this PropertyValueIndexer indexes
+     */
+    protected DefaultPropertyValueIndexer(
+            IterableMeshBase mb )
+    {
+        theMeshBase = mb;
+    }
+
+    /**
+     * Determine the MeshBase whose MeshObjects this PropertyValueIndexer indexes.
+     *
+     * @return the MeshBase
+     */
+    public IterableMeshBase getMeshBase()
+    {
+        return theMeshBase;
+    }
+
+    /**
+     * Obtain a PropertyValueIndex that finds MeshObjects with a given value. If no index
+     * exists for this (EntityType, PropertyType) pair yet, it is created and populated.
+     *
+     * @param entityType the EntityType whose instances shall be indexed
+     * @param propertyType the PropertyType whose values shall be indexed
+     * @return the PropertyValueIndex
+     * @throws IllegalArgumentException thrown if the PropertyType does not belong to the EntityType
+     */
+    public synchronized PropertyValueIndex addIndex(
+            EntityType   entityType,
+            PropertyType propertyType )
+        throws
+            IllegalArgumentException
+    {
+        AbstractPropertyValueIndex ret = findIndex( entityType, propertyType );
+        if( ret == null ) {
+            checkPropertyType( entityType, propertyType );
+
+            ret = HashPropertyValueIndex.create( theMeshBase, entityType, propertyType );
+            populate( ret );
+
+            theIndexes = ArrayHelper.append( theIndexes, ret, AbstractPropertyValueIndex.class );
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain a SortedPropertyValueIndex that also finds MeshObjects with values within an
+     * interval. If no SortedPropertyValueIndex exists for this (EntityType, PropertyType)
+     * pair yet, it is created and populated, and replaces an existing PropertyValueIndex
+     * for the same pair, if any.
+     *
+     * @param entityType the EntityType whose instances shall be indexed
+     * @param propertyType the PropertyType whose values shall be indexed
+     * @return the SortedPropertyValueIndex
+     * @throws IllegalArgumentException thrown if the PropertyType does not belong to the EntityType
+     */
+    public synchronized SortedPropertyValueIndex addSortedIndex(
+            EntityType   entityType,
+            PropertyType propertyType )
+        throws
+            IllegalArgumentException
+    {
+        AbstractPropertyValueIndex found = findIndex( entityType, propertyType );
+        if( found instanceof SortedPropertyValueIndex ) {
+            return (SortedPropertyValueIndex) found;
+        }
+        checkPropertyType( entityType, propertyType );
+
+        TreePropertyValueIndex ret = TreePropertyValueIndex.create( theMeshBase, entityType, propertyType );
+        populate( ret );
+
+        if( found != null ) {
+            theIndexes = ArrayHelper.remove( theIndexes, found, false, AbstractPropertyValueIndex.class );
+            indexRemoved( found );
+        }
+        theIndexes = ArrayHelper.append( theIndexes, ret, AbstractPropertyValueIndex.class );
+        return ret;
+    }
+
+    /**
+     * Find the PropertyValueIndex for an (EntityType, PropertyType) pair.
+     *
+     * @param entityType the EntityType
+     * @param propertyType the PropertyType
+     * @return the PropertyValueIndex, or null if there is none
+     */
+    public PropertyValueIndex getIndex(
+            EntityType   entityType,
+            PropertyType propertyType )
+    {
+        return findIndex( entityType, propertyType );
+    }
+
+    /**
+     * Find the SortedPropertyValueIndex for an (EntityType, PropertyType) pair.
+     *
+     * @param entityType the EntityType
+     * @param propertyType the PropertyType
+     * @return the SortedPropertyValueIndex, or null if there is none
+     */
+    public SortedPropertyValueIndex getSortedIndex(
+            EntityType   entityType,
+            PropertyType propertyType )
+    {
+        AbstractPropertyValueIndex found = findIndex( entityType, propertyType );
+        if( found instanceof SortedPropertyValueIndex ) {
+            return (SortedPropertyValueIndex) found;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Obtain all PropertyValueIndexes maintained by this PropertyValueIndexer.
+     *
+     * @return the PropertyValueIndexes
+     */
+    public PropertyValueIndex [] getIndexes()
+    {
+        AbstractPropertyValueIndex [] indexes = theIndexes;
+
+        PropertyValueIndex [] ret = new PropertyValueIndex[ indexes.length ];
+        System.arraycopy( indexes, 0, ret, 0, indexes.length );
+        return ret;
+    }
+
+    /**
+     * Stop maintaining the PropertyValueIndex for an (EntityType, PropertyType) pair, and
+     * discard it.
+     *
+     * @param entityType the EntityType
+     * @param propertyType the PropertyType
+     * @return true if there was such a PropertyValueIndex
+     */
+    public synchronized boolean removeIndex(
+            EntityType   entityType,
+            PropertyType propertyType )
+    {
+        AbstractPropertyValueIndex found = findIndex( entityType, propertyType );
+        if( found == null ) {
+            return false;
+        }
+        theIndexes = ArrayHelper.remove( theIndexes, found, false, AbstractPropertyValueIndex.class );
+        indexRemoved( found );
+
+        return true;
+    }
+
+    /**
+     * Obtain an ExtentIndex that finds all instances of an EntityType, or its subtypes.
+     * If no ExtentIndex exists for this EntityType yet, it is created and populated.
+     *
+     * @param entityType the EntityType whose instances shall be indexed
+     * @return the ExtentIndex
+     */
+    public synchronized ExtentIndex addExtentIndex(
+            EntityType entityType )
+    {
+        DefaultExtentIndex ret = findExtentIndex( entityType );
+        if( ret == null ) {
+            ret = DefaultExtentIndex.create( theMeshBase, entityType );
+            populate( ret );
+
+            theExtentIndexes = ArrayHelper.append( theExtentIndexes, ret, DefaultExtentIndex.class );
+        }
+        return ret;
+    }
+
+    /**
+     * Find the ExtentIndex for an EntityType.
+     *
+     * @param entityType the EntityType
+     * @return the ExtentIndex, or null if there is none
+     */
+    public ExtentIndex getExtentIndex(
+            EntityType entityType )
+    {
+        return findExtentIndex( entityType );
+    }
+
+    /**
+     * Obtain all ExtentIndexes maintained by this PropertyValueIndexer.
+     *
+     * @return the ExtentIndexes
+     */
+    public ExtentIndex [] getExtentIndexes()
+    {
+        DefaultExtentIndex [] indexes = theExtentIndexes;
+
+        ExtentIndex [] ret = new ExtentIndex[ indexes.length ];
+        System.arraycopy( indexes, 0, ret, 0, indexes.length );
+        return ret;
+    }
+
+    /**
+     * Stop maintaining the ExtentIndex for an EntityType, and discard it.
+     *
+     * @param entityType the EntityType
+     * @return true if there was such an ExtentIndex
+     */
+    public synchronized boolean removeExtentIndex(
+            EntityType entityType )
+    {
+        DefaultExtentIndex found = findExtentIndex( entityType );
+        if( found == null ) {
+            return false;
+        }
+        theExtentIndexes = ArrayHelper.remove( theExtentIndexes, found, false, DefaultExtentIndex.class );
+        extentRemoved( found );
+
+        return true;
+    }
+
+    /**
+     * Update the PropertyValueIndexes with the changes of a Transaction that has been committed.
+     * This is invoked by the MeshBase, not the application programmer.
+     *
+     * @param tx the Transaction
+     */
+    public void transactionCommitted(
+            Transaction tx )
+    {
+        reindex( tx );
+    }
+
+    /**
+     * Update the PropertyValueIndexes after a Transaction has been rolled back. This is
+     * necessary because the PropertyValueIndexes may have been populated while the
+     * Transaction was active. This is invoked by the MeshBase, not the application programmer.
+     *
+     * @param tx the Transaction
+     */
+    public void transactionRolledback(
+            Transaction tx )
+    {
+        reindex( tx );
+    }
+
+    /**
+     * Re-examine the MeshObjects affected by a Transaction, and update the
+     * PropertyValueIndexes accordingly. This reads the current state of the MeshObjects
+     * instead of applying the changes, so the outcome does not depend on the sequence
+     * in which concurrent Transactions are reindexed.
+     *
+     * @param tx the Transaction
+     */
+    protected synchronized void reindex(
+            Transaction tx )
+    {
+        AbstractPropertyValueIndex [] indexes       = theIndexes;
+        DefaultExtentIndex []         extentIndexes = theExtentIndexes;
+        if( indexes.length == 0 && extentIndexes.length == 0 ) {
+            return;
+        }
+
+        HashSet<PropertyType> indexedPropertyTypes = new HashSet<PropertyType>();
+        for( AbstractPropertyValueIndex current : indexes ) {
+            indexedPropertyTypes.add( current.getPropertyType() );
+        }
+
+        // MeshObjectIdentifier -> MeshObject, or null if it is gone
+        HashMap<MeshObjectIdentifier,MeshObject> affected = new HashMap<MeshObjectIdentifier,MeshObject>();
+
+        for( Change<?,?,?,?> current : tx.getChangeSet().getChanges() ) {
+            if( current instanceof MeshObjectPropertyChangeEvent ) {
+                if( !indexedPropertyTypes.contains( ((MeshObjectPropertyChangeEvent) current).getProperty() )) {
+                    continue;
+                }
+            } else if(    !( current instanceof AbstractMeshObjectTypeChangeEvent )
+                       && !( current instanceof MeshObjectCreatedEvent )
+                       && !( current instanceof MeshObjectDeletedEvent ))
+            {
+                continue;
+            }
+            affected.put( current.getAffectedMeshObjectIdentifier(), current.getAffectedMeshObject() );
+        }
+        if( affected.isEmpty() ) {
+            return;
+        }
+
+        for( AbstractPropertyValueIndex index : indexes ) {
+            HashMap<MeshObjectIdentifier,PropertyValue> changes = null;
+
+            for( Map.Entry<MeshObjectIdentifier,MeshObject> current : affected.entrySet() ) {
+                MeshObject    obj      = current.getValue();
+                PropertyValue newValue = obj != null ? determineIndexedValue( index, obj ) : null;
+                PropertyValue oldValue = index.put( current.getKey(), newValue );
+
+                if( !ArrayHelper.equals( oldValue, newValue )) {
+                    if( changes == null ) {
+                        changes = new HashMap<MeshObjectIdentifier,PropertyValue>();
+                    }
+                    changes.put( current.getKey(), newValue );
+                }
+            }
+            if( changes != null ) {
+                indexChanged( index, changes );
+            }
+        }
+
+        for( DefaultExtentIndex index : extentIndexes ) {
+            HashSet<MeshObjectIdentifier> added   = null;
+            HashSet<MeshObjectIdentifier> removed = null;
+
+            for( Map.Entry<MeshObjectIdentifier,MeshObject> current : affected.entrySet() ) {
+                MeshObject obj      = current.getValue();
+                boolean    isMember = obj != null && determineIsMember( index, obj );
+
+                if( index.put( current.getKey(), isMember )) {
+                    if( isMember ) {
+                        if( added == null ) {
+                            added = new HashSet<MeshObjectIdentifier>();
+                        }
+                        added.add( current.getKey() );
+                    } else {
+                        if( removed == null ) {
+                            removed = new HashSet<MeshObjectIdentifier>();
+                        }
+                        removed.add( current.getKey() );
+                    }
+                }
+            }
+            if( added != null || removed != null ) {
+                extentChanged(
+                        index,
+                        added   != null ? added   : Collections.<MeshObjectIdentifier>emptySet(),
+                        removed != null ? removed : Collections.<MeshObjectIdentifier>emptySet() );
+            }
+        }
+    }
+
+    /**
+     * Populate a newly created PropertyValueIndex by iterating over the MeshBase.
+     * Subclasses may override this to obtain the entries from elsewhere.
+     *
+     * @param index the PropertyValueIndex
+     */
+    protected void populate(
+            AbstractPropertyValueIndex index )
+    {
+        CursorIterator<MeshObject> iter = theMeshBase.iterator();
+        while( iter.hasNext() ) {
+            MeshObject    current = iter.next();
+            PropertyValue value   = determineIndexedValue( index, current );
+
+            if( value != null ) {
+                index.put( current.getIdentifier(), value );
+            }
+        }
+    }
+
+    /**
+     * Determine the value with which a MeshObject shall be indexed by a PropertyValueIndex.
+     *
+     * @param index the PropertyValueIndex
+     * @param obj the MeshObject
+     * @return the value, or null if the MeshObject shall not be indexed
+     */
+    protected PropertyValue determineIndexedValue(
+            AbstractPropertyValueIndex index,
+            MeshObject                 obj )
+    {
+        ThreadIdentityManager.sudo();
+
+        try {
+            if( !index.appliesTo( obj )) {
+                return null;
+            }
+            return obj.getPropertyValue( index.getPropertyType() );
+
+        } catch( IllegalPropertyTypeException ex ) {
+            log.error( ex );
+            return null;
+
+        } catch( NotPermittedException ex ) {
+            log.error( ex );
+            return null;
+
+        } finally {
+            ThreadIdentityManager.sudone();
+        }
+    }
+
+    /**
+     * Populate a newly created ExtentIndex by iterating over the MeshBase.
+     * Subclasses may override this to obtain the members from elsewhere.
+     *
+     * @param index the ExtentIndex
+     */
+    protected void populate(
+            DefaultExtentIndex index )
+    {
+        CursorIterator<MeshObject> iter = theMeshBase.iterator();
+        while( iter.hasNext() ) {
+            MeshObject current = iter.next();
+
+            if( determineIsMember( index, current )) {
+                index.put( current.getIdentifier(), true );
+            }
+        }
+    }
+
+    /**
+     * Determine whether a MeshObject is in the extent of an ExtentIndex.
+     *
+     * @param index the ExtentIndex
+     * @param obj the MeshObject
+     * @return true if the MeshObject is in the extent
+     */
+    protected boolean determineIsMember(
+            DefaultExtentIndex index,
+            MeshObject         obj )
+    {
+        ThreadIdentityManager.sudo();
+
+        try {
+            return index.appliesTo( obj );
+
+        } finally {
+            ThreadIdentityManager.sudone();
+        }
+    }
+
+    /**
+     * Invoked after the entries of a PropertyValueIndex have changed as the result of
+     * a Transaction. This does nothing; subclasses may override it, for example to
+     * persist the changes.
+     *
+     * @param index the PropertyValueIndex
+     * @param changes the new values, keyed by the identifiers of the affected MeshObjects;
+     *        null values indicate MeshObjects that are not indexed any more
+     */
+    protected void indexChanged(
+            AbstractPropertyValueIndex              index,
+            Map<MeshObjectIdentifier,PropertyValue> changes )
+    {
+        // noop
+    }
+
+    /**
+     * Invoked after a PropertyValueIndex has been removed or replaced. This does nothing;
+     * subclasses may override it.
+     *
+     * @param index the PropertyValueIndex
+     */
+    protected void indexRemoved(
+            AbstractPropertyValueIndex index )
+    {
+        // noop
+    }
+
+    /**
+     * Invoked after the members of an ExtentIndex have changed as the result of a
+     * Transaction. This does nothing; subclasses may override it, for example to
+     * persist the changes.
+     *
+     * @param index the ExtentIndex
+     * @param added the identifiers of the MeshObjects that were added to the extent
+     * @param removed the identifiers of the MeshObjects that were removed from the extent
+     */
+    protected void extentChanged(
+            DefaultExtentIndex        index,
+            Set<MeshObjectIdentifier> added,
+            Set<MeshObjectIdentifier> removed )
+    {
+        // noop
+    }
+
+    /**
+     * Invoked after an ExtentIndex has been removed. This does nothing; subclasses
+     * may override it.
+     *
+     * @param index the ExtentIndex
+     */
+    protected void extentRemoved(
+            DefaultExtentIndex index )
+    {
+        // noop
+    }
+
+    /**
+     * Find the PropertyValueIndex for an (EntityType, PropertyType) pair.
+     *
+     * @param entityType the EntityType
+     * @param propertyType the PropertyType
+     * @return the PropertyValueIndex, or null if there is none
+     */
+    protected AbstractPropertyValueIndex findIndex(
+            EntityType   entityType,
+            PropertyType propertyType )
+    {
+        for( AbstractPropertyValueIndex current : theIndexes ) {
+            if( current.getEntityType().equals( entityType ) && current.getPropertyType().equals( propertyType )) {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the ExtentIndex for an EntityType.
+     *
+     * @param entityType the EntityType
+     * @return the ExtentIndex, or null if there is none
+     */
+    protected DefaultExtentIndex findExtentIndex(
+            EntityType entityType )
+    {
+        for( DefaultExtentIndex current : theExtentIndexes ) {
+            if( current.getEntityType().equals( entityType )) {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Make sure that instances of an EntityType carry a PropertyType.
+     *
+     * @param entityType the EntityType
+     * @param propertyType the PropertyType
+     * @throws IllegalArgumentException thrown if the PropertyType does not belong to the EntityType
+     */
+    protected void checkPropertyType(
+            EntityType   entityType,
+            PropertyType propertyType )
+        throws
+            IllegalArgumentException
+    {
+        if( !ArrayHelper.isIn( propertyType, entityType.getAllPropertyTypes(), true )) {
+            throw new IllegalArgumentException( "PropertyType " + propertyType + " does not belong to EntityType " + entityType );
+        }
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "indexes",
+                    "extentIndexes"
+                },
+                new Object[] {
+                    theIndexes,
+                    theExtentIndexes
+                });
+    }
+
+    /**
+     * The IterableMeshBase whose MeshObjects this PropertyValueIndexer indexes.
+     */
+    protected IterableMeshBase theMeshBase;
+
+    /**
+     * The current PropertyValueIndexes. This array is replaced, not modified, so it can be
+     * read without synchronization.
+     */
+    protected volatile AbstractPropertyValueIndex [] theIndexes = new AbstractPropertyValueIndex[0];
+
+    /**
+     * The current ExtentIndexes. This array is replaced, not modified, so it can be
+     * read without synchronization.
+     */
+    protected volatile DefaultExtentIndex [] theExtentIndexes = new DefaultExtentIndex[0];
+}
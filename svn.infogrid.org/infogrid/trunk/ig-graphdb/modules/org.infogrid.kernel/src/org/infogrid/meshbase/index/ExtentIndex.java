@@ -0,0 +1,84 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2010 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+package org.infogrid.meshbase.index;
+
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.util.CursorIterator;
+
+/**
+ * <p>The extent of an EntityType in a MeshBase: all MeshObjects that are blessed with the
+ *    EntityType, or one of its subtypes. It finds the instances of the EntityType
+ *    without iterating over the entire MeshBase.</p>
+ * <p>Like a PropertyValueIndex, an ExtentIndex reflects committed Transactions only.</p>
+ */
+public interface ExtentIndex
+{
+    /**
+     * Obtain the MeshBase whose MeshObjects this ExtentIndex indexes.
+     *
+     * @return the MeshBase
+     */
+    public MeshBase getMeshBase();
+
+    /**
+     * Obtain the EntityType whose instances this ExtentIndex indexes.
+     *
+     * @return the EntityType
+     */
+    public EntityType getEntityType();
+
+    /**
+     * Find all MeshObjects in the extent.
+     *
+     * @return the found MeshObjects
+     */
+    public MeshObjectSet find();
+
+    /**
+     * Find the identifiers of all MeshObjects in the extent. This does not load the
+     * MeshObjects.
+     *
+     * @return the identifiers of the found MeshObjects
+     */
+    public MeshObjectIdentifier [] findIdentifiers();
+
+    /**
+     * Obtain a CursorIterator over the MeshObjects in the extent. The MeshObjects are only
+     * loaded as the CursorIterator reaches them, so an application may page through a
+     * large extent by repeatedly obtaining the next few elements.
+     *
+     * @return the CursorIterator
+     */
+    public CursorIterator<MeshObject> iterator();
+
+    /**
+     * Determine whether a MeshObject is in the extent.
+     *
+     * @param identifier identifier of the MeshObject
+     * @return true if the MeshObject is in the extent
+     */
+    public boolean contains(
+            MeshObjectIdentifier identifier );
+
+    /**
+     * Obtain the number of MeshObjects in the extent.
+     *
+     * @return the number of MeshObjects
+     */
+    public int size();
+}
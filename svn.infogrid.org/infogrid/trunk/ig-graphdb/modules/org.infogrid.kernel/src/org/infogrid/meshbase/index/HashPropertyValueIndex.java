@@ -0,0 +1,66 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2010 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.index;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.PropertyType;
+import org.infogrid.model.primitives.PropertyValue;
+
+/**
+ * A PropertyValueIndex that keeps its entries in a hash table. It finds MeshObjects
+ * with a given value in constant time, but cannot find intervals of values.
+ */
+public class HashPropertyValueIndex
+        extends
+            AbstractPropertyValueIndex
+{
+    /**
+     * Factory method.
+     *
+     * @param mb the MeshBase whose MeshObjects this index indexes
+     * @param entityType the EntityType whose instances this index indexes
+     * @param propertyType the PropertyType whose values this index indexes
+     * @return the created HashPropertyValueIndex
+     */
+    public static HashPropertyValueIndex create(
+            MeshBase     mb,
+            EntityType   entityType,
+            PropertyType propertyType )
+    {
+        return new HashPropertyValueIndex( mb, entityType, propertyType );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param mb the MeshBase whose MeshObjects this index indexes
+     * @param entityType the EntityType whose instances this index indexes
+     * @param propertyType the PropertyType whose values this index indexes
+     */
+    protected HashPropertyValueIndex(
+            MeshBase     mb,
+            EntityType   entityType,
+            PropertyType propertyType )
+    {
+        super(  mb,
+                entityType,
+                propertyType,
+                new HashMap<PropertyValue,LinkedHashSet<MeshObjectIdentifier>>() );
+    }
+}
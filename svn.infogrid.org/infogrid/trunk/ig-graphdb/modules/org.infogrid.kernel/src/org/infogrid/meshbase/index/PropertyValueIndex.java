@@ -0,0 +1,97 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2010 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.index;
+
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.PropertyType;
+import org.infogrid.model.primitives.PropertyValue;
+
+/**
+ * <p>An index over the values of one PropertyType of all MeshObjects in a MeshBase that
+ *    are blessed with a given EntityType, or one of its subtypes. It finds MeshObjects
+ *    with a given value without iterating over the entire MeshBase.</p>
+ * <p>A PropertyValueIndex reflects committed Transactions only: changes made by a
+ *    Transaction become visible in the index when the Transaction is committed, and
+ *    never if it is rolled back. MeshObjects whose value for the PropertyType is
+ *    null are not indexed.</p>
+ */
+public interface PropertyValueIndex
+{
+    /**
+     * Obtain the MeshBase whose MeshObjects this PropertyValueIndex indexes.
+     *
+     * @return the MeshBase
+     */
+    public MeshBase getMeshBase();
+
+    /**
+     * Obtain the EntityType whose instances this PropertyValueIndex indexes.
+     *
+     * @return the EntityType
+     */
+    public EntityType getEntityType();
+
+    /**
+     * Obtain the PropertyType whose values this PropertyValueIndex indexes.
+     *
+     * @return the PropertyType
+     */
+    public PropertyType getPropertyType();
+
+    /**
+     * Find the MeshObjects whose value for the PropertyType equals the given value.
+     *
+     * @param value the value
+     * @return the found MeshObjects
+     */
+    public MeshObjectSet find(
+            PropertyValue value );
+
+    /**
+     * Find the identifiers of the MeshObjects whose value for the PropertyType equals
+     * the given value. This does not load the MeshObjects.
+     *
+     * @param value the value
+     * @return the identifiers of the found MeshObjects
+     */
+    public MeshObjectIdentifier [] findIdentifiers(
+            PropertyValue value );
+
+    /**
+     * Obtain the indexed value of a MeshObject.
+     *
+     * @param identifier identifier of the MeshObject
+     * @return the indexed value, or null if the MeshObject is not indexed
+     */
+    public PropertyValue getIndexedValue(
+            MeshObjectIdentifier identifier );
+
+    /**
+     * Obtain the number of MeshObjects in this PropertyValueIndex.
+     *
+     * @return the number of MeshObjects
+     */
+    public int size();
+
+    /**
+     * Obtain the number of distinct values in this PropertyValueIndex.
+     *
+     * @return the number of distinct values
+     */
+    public int getNumberOfValues();
+}
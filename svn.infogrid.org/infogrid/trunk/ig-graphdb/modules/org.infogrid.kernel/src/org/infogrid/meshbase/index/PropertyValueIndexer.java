@@ -0,0 +1,166 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2010 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.index;
+
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.PropertyType;
+
+/**
+ * <p>Maintains the PropertyValueIndexes and ExtentIndexes of a MeshBase. The application
+ *    declares which (EntityType, PropertyType) pairs, and which EntityTypes, shall be
+ *    indexed; the PropertyValueIndexer populates the new index, and keeps it up to date
+ *    as Transactions are committed.</p>
+ * <p>A PropertyValueIndexer is set on its MeshBase with
+ *    {@link MeshBase#setPropertyValueIndexer MeshBase.setPropertyValueIndexer}, which then
+ *    notifies it of each Transaction that has been committed or rolled back.</p>
+ */
+public interface PropertyValueIndexer
+{
+    /**
+     * Determine the MeshBase whose MeshObjects this PropertyValueIndexer indexes.
+     *
+     * @return the MeshBase
+     */
+    public MeshBase getMeshBase();
+
+    /**
+     * Obtain a PropertyValueIndex that finds MeshObjects with a given value. If no index
+     * exists for this (EntityType, PropertyType) pair yet, it is created and populated.
+     *
+     * @param entityType the EntityType whose instances shall be indexed
+     * @param propertyType the PropertyType whose values shall be indexed
+     * @return the PropertyValueIndex
+     * @throws IllegalArgumentException thrown if the PropertyType does not belong to the EntityType
+     */
+    public PropertyValueIndex addIndex(
+            EntityType   entityType,
+            PropertyType propertyType )
+        throws
+            IllegalArgumentException;
+
+    /**
+     * Obtain a SortedPropertyValueIndex that also finds MeshObjects with values within an
+     * interval. If no SortedPropertyValueIndex exists for this (EntityType, PropertyType)
+     * pair yet, it is created and populated, and replaces an existing PropertyValueIndex
+     * for the same pair, if any.
+     *
+     * @param entityType the EntityType whose instances shall be indexed
+     * @param propertyType the PropertyType whose values shall be indexed
+     * @return the SortedPropertyValueIndex
+     * @throws IllegalArgumentException thrown if the PropertyType does not belong to the EntityType
+     */
+    public SortedPropertyValueIndex addSortedIndex(
+            EntityType   entityType,
+            PropertyType propertyType )
+        throws
+            IllegalArgumentException;
+
+    /**
+     * Find the PropertyValueIndex for an (EntityType, PropertyType) pair.
+     *
+     * @param entityType the EntityType
+     * @param propertyType the PropertyType
+     * @return the PropertyValueIndex, or null if there is none
+     */
+    public PropertyValueIndex getIndex(
+            EntityType   entityType,
+            PropertyType propertyType );
+
+    /**
+     * Find the SortedPropertyValueIndex for an (EntityType, PropertyType) pair.
+     *
+     * @param entityType the EntityType
+     * @param propertyType the PropertyType
+     * @return the SortedPropertyValueIndex, or null if there is none
+     */
+    public SortedPropertyValueIndex getSortedIndex(
+            EntityType   entityType,
+            PropertyType propertyType );
+
+    /**
+     * Obtain all PropertyValueIndexes maintained by this PropertyValueIndexer.
+     *
+     * @return the PropertyValueIndexes
+     */
+    public PropertyValueIndex [] getIndexes();
+
+    /**
+     * Stop maintaining the PropertyValueIndex for an (EntityType, PropertyType) pair, and
+     * discard it.
+     *
+     * @param entityType the EntityType
+     * @param propertyType the PropertyType
+     * @return true if there was such a PropertyValueIndex
+     */
+    public boolean removeIndex(
+            EntityType   entityType,
+            PropertyType propertyType );
+
+    /**
+     * Obtain an ExtentIndex that finds all instances of an EntityType, or its subtypes.
+     * If no ExtentIndex exists for this EntityType yet, it is created and populated.
+     *
+     * @param entityType the EntityType whose instances shall be indexed
+     * @return the ExtentIndex
+     */
+    public ExtentIndex addExtentIndex(
+            EntityType entityType );
+
+    /**
+     * Find the ExtentIndex for an EntityType.
+     *
+     * @param entityType the EntityType
+     * @return the ExtentIndex, or null if there is none
+     */
+    public ExtentIndex getExtentIndex(
+            EntityType entityType );
+
+    /**
+     * Obtain all ExtentIndexes maintained by this PropertyValueIndexer.
+     *
+     * @return the ExtentIndexes
+     */
+    public ExtentIndex [] getExtentIndexes();
+
+    /**
+     * Stop maintaining the ExtentIndex for an EntityType, and discard it.
+     *
+     * @param entityType the EntityType
+     * @return true if there was such an ExtentIndex
+     */
+    public boolean removeExtentIndex(
+            EntityType entityType );
+
+    /**
+     * Update the PropertyValueIndexes with the changes of a Transaction that has been committed.
+     * This is invoked by the MeshBase, not the application programmer.
+     *
+     * @param tx the Transaction
+     */
+    public void transactionCommitted(
+            Transaction tx );
+
+    /**
+     * Update the PropertyValueIndexes after a Transaction has been rolled back. This is
+     * necessary because the PropertyValueIndexes may have been populated while the
+     * Transaction was active. This is invoked by the MeshBase, not the application programmer.
+     *
+     * @param tx the Transaction
+     */
+    public void transactionRolledback(
+            Transaction tx );
+}
@@ -0,0 +1,258 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2010 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+package org.infogrid.meshbase.index;
+
+import java.util.NoSuchElementException;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.util.AbstractCursorIterator;
+import org.infogrid.util.ArrayCursorIterator;
+import org.infogrid.util.CursorIterator;
+
+/**
+ * <p>A CursorIterator over MeshObjects that iterates over their MeshObjectIdentifiers, and
+ *    only finds the MeshObjects in the MeshBase when they are returned. Obtaining
+ *    several elements at a time finds all of them with a single call to the MeshBase.</p>
+ * <p>If a MeshObject has been deleted since this CursorIterator was created, it is
+ *    returned as <code>null</code>.</p>
+ */
+public class ResolvingCursorIterator
+        extends
+            AbstractCursorIterator<MeshObject>
+{
+    /**
+     * Factory method.
+     *
+     * @param mb the MeshBase in which the MeshObjects are found
+     * @param identifiers the identifiers of the MeshObjects to iterate over
+     * @return the created ResolvingCursorIterator
+     */
+    public static ResolvingCursorIterator create(
+            MeshBase                mb,
+            MeshObjectIdentifier [] identifiers )
+    {
+        return new ResolvingCursorIterator( mb, ArrayCursorIterator.<MeshObjectIdentifier>create( identifiers ));
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param mb the MeshBase in which the MeshObjects are found
+     * @param delegate iterates over the identifiers of the MeshObjects
+     */
+    protected ResolvingCursorIterator(
+            MeshBase                                  mb,
+            ArrayCursorIterator<MeshObjectIdentifier> delegate )
+    {
+        super( MeshObject.class );
+
+        theMeshBase = mb;
+        theDelegate = delegate;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the iteration has at least N more elements in the forward direction.
+     *
+     * @param n the number of elements for which to check
+     * @return <tt>true</tt> if the iterator has at least N more elements in the forward direction.
+     */
+    public boolean hasNext(
+            int n )
+    {
+        return theDelegate.hasNext( n );
+    }
+
+    /**
+     * Returns <tt>true</tt> if the iteration has at least N more elements in the backward direction.
+     *
+     * @param n the number of elements for which to check
+     * @return <tt>true</tt> if the iterator has at least N more elements in the backward direction.
+     */
+    public boolean hasPrevious(
+            int n )
+    {
+        return theDelegate.hasPrevious( n );
+    }
+
+    /**
+     * Returns the next element in the iteration.
+     *
+     * @return the next element in the iteration.
+     * @throws NoSuchElementException iteration has no more elements.
+     */
+    public MeshObject next()
+        throws
+            NoSuchElementException
+    {
+        return theMeshBase.findMeshObjectByIdentifier( theDelegate.next() );
+    }
+
+    /**
+     * Obtain the next N elements. If fewer than N elements are available, return
+     * as many elements are available in a shorter array.
+     *
+     * @param n the number of elements to return
+     * @return the next no more than N elements
+     */
+    @Override
+    public MeshObject [] next(
+            int n )
+    {
+        return theMeshBase.findMeshObjectsByIdentifier( theDelegate.next( n ));
+    }
+
+    /**
+     * Returns the previous element in the iteration.
+     *
+     * @return the previous element in the iteration.
+     * @throws NoSuchElementException iteration has no more elements.
+     */
+    public MeshObject previous()
+        throws
+            NoSuchElementException
+    {
+        return theMeshBase.findMeshObjectByIdentifier( theDelegate.previous() );
+    }
+
+    /**
+     * Obtain the previous N elements. If fewer than N elements are available, return
+     * as many elements are available in a shorter array.
+     *
+     * @param n the number of elements to return
+     * @return the previous no more than N elements
+     */
+    @Override
+    public MeshObject [] previous(
+            int n )
+    {
+        return theMeshBase.findMeshObjectsByIdentifier( theDelegate.previous( n ));
+    }
+
+    /**
+     * Move the cursor by N positions, without finding the MeshObjects passed over.
+     *
+     * @param n the number of positions to move
+     * @throws NoSuchElementException thrown if the position does not exist
+     */
+    @Override
+    public void moveBy(
+            int n )
+        throws
+            NoSuchElementException
+    {
+        theDelegate.moveBy( n );
+    }
+
+    /**
+     * Move the cursor to just before this element.
+     *
+     * @param pos the element to move the cursor to
+     * @return the number of steps that were taken to move. Positive number means
+     *         forward, negative backward
+     * @throws NoSuchElementException thrown if this element is not actually part
+     *         of the iteration
+     */
+    @Override
+    public int moveToBefore(
+            MeshObject pos )
+        throws
+            NoSuchElementException
+    {
+        return theDelegate.moveToBefore( pos.getIdentifier() );
+    }
+
+    /**
+     * Move the cursor to just after this element.
+     *
+     * @param pos the element to move the cursor to
+     * @return the number of steps that were taken to move. Positive number means
+     *         forward, negative backward
+     * @throws NoSuchElementException thrown if this element is not actually part
+     *         of the iteration
+     */
+    @Override
+    public int moveToAfter(
+            MeshObject pos )
+        throws
+            NoSuchElementException
+    {
+        return theDelegate.moveToAfter( pos.getIdentifier() );
+    }
+
+    /**
+     * Move the cursor to just before the first element.
+     *
+     * @return the number of steps that were taken to move. Positive number means
+     *         forward, negative backward
+     */
+    public int moveToBeforeFirst()
+    {
+        return theDelegate.moveToBeforeFirst();
+    }
+
+    /**
+     * Move the cursor to just after the last element.
+     *
+     * @return the number of steps that were taken to move. Positive number means
+     *         forward, negative backward
+     */
+    public int moveToAfterLast()
+    {
+        return theDelegate.moveToAfterLast();
+    }
+
+    /**
+     * Clone this position.
+     *
+     * @return identical new instance
+     */
+    public ResolvingCursorIterator createCopy()
+    {
+        return new ResolvingCursorIterator( theMeshBase, theDelegate.createCopy() );
+    }
+
+    /**
+     * Set this CursorIterator to the position represented by the provided CursorIterator.
+     *
+     * @param position the position to set this CursorIterator to
+     * @throws IllegalArgumentException thrown if the provided CursorIterator did not work on the same
+     *         identifiers, or the implementations were incompatible.
+     */
+    public void setPositionTo(
+            CursorIterator<MeshObject> position )
+        throws
+            IllegalArgumentException
+    {
+        if( !( position instanceof ResolvingCursorIterator )) {
+            throw new IllegalArgumentException( "Wrong type of CursorIterator: " + position );
+        }
+        ResolvingCursorIterator realPosition = (ResolvingCursorIterator) position;
+
+        if( theMeshBase != realPosition.theMeshBase ) {
+            throw new IllegalArgumentException( "Not the same MeshBase" );
+        }
+        theDelegate.setPositionTo( realPosition.theDelegate );
+    }
+
+    /**
+     * The MeshBase in which the MeshObjects are found.
+     */
+    protected MeshBase theMeshBase;
+
+    /**
+     * Iterates over the identifiers of the MeshObjects.
+     */
+    protected ArrayCursorIterator<MeshObjectIdentifier> theDelegate;
+}
@@ -0,0 +1,60 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2010 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.index;
+
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.model.primitives.PropertyValue;
+
+/**
+ * A PropertyValueIndex that keeps the values in sequence, so it can also find the
+ * MeshObjects whose value lies within an interval. This is the indexed counterpart
+ * to the ByPropertyValueIntervalSelector.
+ */
+public interface SortedPropertyValueIndex
+        extends
+            PropertyValueIndex
+{
+    /**
+     * Find the MeshObjects whose value for the PropertyType lies within an interval.
+     *
+     * @param lowerValue the lower bound of the interval, or null if unbounded
+     * @param upperValue the upper bound of the interval, or null if unbounded
+     * @param lowerMayEqual if true, the value may equal the lower bound to be found
+     * @param upperMayEqual if true, the value may equal the upper bound to be found
+     * @return the found MeshObjects, in the sequence of their values
+     */
+    public MeshObjectSet find(
+            PropertyValue lowerValue,
+            PropertyValue upperValue,
+            boolean       lowerMayEqual,
+            boolean       upperMayEqual );
+
+    /**
+     * Find the identifiers of the MeshObjects whose value for the PropertyType lies
+     * within an interval. This does not load the MeshObjects.
+     *
+     * @param lowerValue the lower bound of the interval, or null if unbounded
+     * @param upperValue the upper bound of the interval, or null if unbounded
+     * @param lowerMayEqual if true, the value may equal the lower bound to be found
+     * @param upperMayEqual if true, the value may equal the upper bound to be found
+     * @return the identifiers of the found MeshObjects, in the sequence of their values
+     */
+    public MeshObjectIdentifier [] findIdentifiers(
+            PropertyValue lowerValue,
+            PropertyValue upperValue,
+            boolean       lowerMayEqual,
+            boolean       upperMayEqual );
+}
@@ -0,0 +1,133 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2010 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.index;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.PropertyType;
+import org.infogrid.model.primitives.PropertyValue;
+
+/**
+ * A SortedPropertyValueIndex that keeps its entries in a balanced tree. It finds
+ * MeshObjects with a given value, or with a value within an interval, in
+ * logarithmic time.
+ */
+public class TreePropertyValueIndex
+        extends
+            AbstractPropertyValueIndex
+        implements
+            SortedPropertyValueIndex
+{
+    /**
+     * Factory method.
+     *
+     * @param mb the MeshBase whose MeshObjects this index indexes
+     * @param entityType the EntityType whose instances this index indexes
+     * @param propertyType the PropertyType whose values this index indexes
+     * @return the created TreePropertyValueIndex
+     */
+    public static TreePropertyValueIndex create(
+            MeshBase     mb,
+            EntityType   entityType,
+            PropertyType propertyType )
+    {
+        return new TreePropertyValueIndex( mb, entityType, propertyType, new TreeMap<PropertyValue,LinkedHashSet<MeshObjectIdentifier>>() );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param mb the MeshBase whose MeshObjects this index indexes
+     * @param entityType the EntityType whose instances this index indexes
+     * @param propertyType the PropertyType whose values this index indexes
+     * @param entries the TreeMap that holds the entries of this index
+     */
+    protected TreePropertyValueIndex(
+            MeshBase                                                   mb,
+            EntityType                                                 entityType,
+            PropertyType                                               propertyType,
+            TreeMap<PropertyValue,LinkedHashSet<MeshObjectIdentifier>> entries )
+    {
+        super( mb, entityType, propertyType, entries );
+
+        theSortedEntries = entries;
+    }
+
+    /**
+     * Find the MeshObjects whose value for the PropertyType lies within an interval.
+     *
+     * @param lowerValue the lower bound of the interval, or null if unbounded
+     * @param upperValue the upper bound of the interval, or null if unbounded
+     * @param lowerMayEqual if true, the value may equal the lower bound to be found
+     * @param upperMayEqual if true, the value may equal the upper bound to be found
+     * @return the found MeshObjects
+     */
+    public MeshObjectSet find(
+            PropertyValue lowerValue,
+            PropertyValue upperValue,
+            boolean       lowerMayEqual,
+            boolean       upperMayEqual )
+    {
+        return resolve( findIdentifiers( lowerValue, upperValue, lowerMayEqual, upperMayEqual ));
+    }
+
+    /**
+     * Find the identifiers of the MeshObjects whose value for the PropertyType lies
+     * within an interval. This does not load the MeshObjects.
+     *
+     * @param lowerValue the lower bound of the interval, or null if unbounded
+     * @param upperValue the upper bound of the interval, or null if unbounded
+     * @param lowerMayEqual if true, the value may equal the lower bound to be found
+     * @param upperMayEqual if true, the value may equal the upper bound to be found
+     * @return the identifiers of the found MeshObjects, in the sequence of their values
+     */
+    public synchronized MeshObjectIdentifier [] findIdentifiers(
+            PropertyValue lowerValue,
+            PropertyValue upperValue,
+            boolean       lowerMayEqual,
+            boolean       upperMayEqual )
+    {
+        if( lowerValue != null && upperValue != null ) {
+            int comparison = lowerValue.compareTo( upperValue );
+            if( comparison > 0 || ( comparison == 0 && !( lowerMayEqual && upperMayEqual ))) {
+                return new MeshObjectIdentifier[0]; // empty interval; TreeMap throws if lower > upper
+            }
+        }
+
+        NavigableMap<PropertyValue,LinkedHashSet<MeshObjectIdentifier>> range = theSortedEntries;
+        if( lowerValue != null ) {
+            range = range.tailMap( lowerValue, lowerMayEqual );
+        }
+        if( upperValue != null ) {
+            range = range.headMap( upperValue, upperMayEqual );
+        }
+
+        ArrayList<MeshObjectIdentifier> ret = new ArrayList<MeshObjectIdentifier>();
+        addIdentifiers( range.values(), ret );
+
+        return ret.toArray( new MeshObjectIdentifier[ ret.size() ] );
+    }
+
+    /**
+     * The entries, as a TreeMap.
+     */
+    protected TreeMap<PropertyValue,LinkedHashSet<MeshObjectIdentifier>> theSortedEntries;
+}
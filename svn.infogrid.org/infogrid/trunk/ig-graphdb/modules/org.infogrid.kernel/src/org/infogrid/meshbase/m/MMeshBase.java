@@ -14,7 +14,6 @@
 
 package org.infogrid.meshbase.m;
 
-import java.util.HashMap;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.set.MeshObjectSetFactory;
@@ -30,8 +29,7 @@ import org.infogrid.modelbase.ModelBase;
 import org.infogrid.modelbase.m.MModelBase;
 import org.infogrid.util.CachingMap;
 import org.infogrid.util.CursorIterator;
-import org.infogrid.util.MCachingHashMap;
-import org.infogrid.util.MapCursorIterator;
+import org.infogrid.util.MConcurrentCachingHashMap;
 import org.infogrid.util.context.Context;
 import org.infogrid.util.context.SimpleContext;
 import org.infogrid.util.logging.Log;
@@ -107,7 +105,7 @@ public class MMeshBase
             AccessManager               accessMgr,
             Context                     c )
     {
-        MCachingHashMap<MeshObjectIdentifier,MeshObject> cache = MCachingHashMap.create();
+        MConcurrentCachingHashMap<MeshObjectIdentifier,MeshObject> cache = MConcurrentCachingHashMap.create();
 
         AMeshBaseLifecycleManager      life       = AMeshBaseLifecycleManager.create();
         ImmutableMMeshObjectSetFactory setFactory = ImmutableMMeshObjectSetFactory.create( MeshObject.class, MeshObjectIdentifier.class );
@@ -165,9 +163,7 @@ public class MMeshBase
      */
     public CursorIterator<MeshObject> iterator()
     {
-        // not sure why these type casts are needed, they should not be
-        MapCursorIterator.Values<MeshObjectIdentifier,MeshObject> ret = MapCursorIterator.createForValues(
-                (HashMap<MeshObjectIdentifier,MeshObject>) theCache,
+        CursorIterator<MeshObject> ret = theCache.valuesIterator(
                 MeshObjectIdentifier.class,
                 MeshObject.class );
         return ret;
@@ -0,0 +1,616 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.transaction;
+
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.infogrid.util.FlexibleListenerSet;
+import org.infogrid.util.NamedThreadFactory;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Delivers committed Transactions to TransactionBatchListeners on a separate
+ * ExecutorService, so that slow listeners do not add to the latency of the committing
+ * Thread. Set it on a MeshBase with <code>AbstractMeshBase.setAsyncTransactionDispatcher</code>.</p>
+ * <p>Transactions are delivered in commit order. Transactions that were committed while
+ * an earlier batch was being delivered are delivered together in the next batch, up to
+ * a maximum batch size. At most <code>capacity</code> committed Transactions may be pending
+ * delivery; if that many are pending, committing Threads block until the listeners
+ * have caught up.</p>
+ * <p>Synchronous TransactionListeners registered with the MeshBase are not affected.</p>
+ */
+public class AsyncTransactionDispatcher
+        implements
+            CanBeDumped
+{
+    private static final Log log = Log.getLogInstance( AsyncTransactionDispatcher.class ); // our own, private logger
+
+    /**
+     * Factory method with its own, single delivery Thread and default parameters.
+     *
+     * @return the created AsyncTransactionDispatcher
+     */
+    public static AsyncTransactionDispatcher create()
+    {
+        return create( DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE );
+    }
+
+    /**
+     * Factory method with its own, single delivery Thread.
+     *
+     * @param capacity the maximum number of Transactions pending delivery
+     * @param maxBatchSize the maximum number of Transactions delivered in one batch
+     * @return the created AsyncTransactionDispatcher
+     */
+    public static AsyncTransactionDispatcher create(
+            int capacity,
+            int maxBatchSize )
+    {
+        ExecutorService exec = Executors.newSingleThreadExecutor( new NamedThreadFactory( AsyncTransactionDispatcher.class.getName() ));
+
+        return new AsyncTransactionDispatcher( exec, true, capacity, maxBatchSize );
+    }
+
+    /**
+     * Factory method using a provided ExecutorService. The ExecutorService will not be
+     * shut down by this AsyncTransactionDispatcher.
+     *
+     * @param exec the ExecutorService on which to deliver
+     * @param capacity the maximum number of Transactions pending delivery
+     * @param maxBatchSize the maximum number of Transactions delivered in one batch
+     * @return the created AsyncTransactionDispatcher
+     */
+    public static AsyncTransactionDispatcher create(
+            ExecutorService exec,
+            int             capacity,
+            int             maxBatchSize )
+    {
+        return new AsyncTransactionDispatcher( exec, false, capacity, maxBatchSize );
+    }
+
+    /**
+     * Constructor for subclasses only, use factory method.
+     *
+     * @param exec the ExecutorService on which to deliver
+     * @param ownsExecutor if true, this AsyncTransactionDispatcher shuts down the ExecutorService in shutdown()
+     * @param capacity the maximum number of Transactions pending delivery
+     * @param maxBatchSize the maximum number of Transactions delivered in one batch
+     */
+    protected AsyncTransactionDispatcher(
+            ExecutorService exec,
+            boolean         ownsExecutor,
+            int             capacity,
+            int             maxBatchSize )
+    {
+        if( capacity <= 0 ) {
+            throw new IllegalArgumentException( "Capacity must be positive: " + capacity );
+        }
+        if( maxBatchSize <= 0 ) {
+            throw new IllegalArgumentException( "Maximum batch size must be positive: " + maxBatchSize );
+        }
+        theExecutor     = exec;
+        theOwnsExecutor = ownsExecutor;
+        theCapacity     = capacity;
+        theMaxBatchSize = maxBatchSize;
+        thePermits      = new Semaphore( capacity );
+    }
+
+    /**
+     * Add a TransactionBatchListener, without using a Reference.
+     *
+     * @param newListener the to-be-added TransactionBatchListener
+     */
+    public synchronized void addDirectTransactionBatchListener(
+            TransactionBatchListener newListener )
+    {
+        theListeners.addDirect( newListener );
+    }
+
+    /**
+     * Add a TransactionBatchListener, using a WeakReference.
+     *
+     * @param newListener the to-be-added TransactionBatchListener
+     */
+    public synchronized void addWeakTransactionBatchListener(
+            TransactionBatchListener newListener )
+    {
+        theListeners.addWeak( newListener );
+    }
+
+    /**
+     * Add a TransactionBatchListener, using a SoftReference.
+     *
+     * @param newListener the to-be-added TransactionBatchListener
+     */
+    public synchronized void addSoftTransactionBatchListener(
+            TransactionBatchListener newListener )
+    {
+        theListeners.addSoft( newListener );
+    }
+
+    /**
+     * Remove a TransactionBatchListener.
+     *
+     * @param oldListener the to-be-removed TransactionBatchListener
+     */
+    public synchronized void removeTransactionBatchListener(
+            TransactionBatchListener oldListener )
+    {
+        theListeners.remove( oldListener );
+    }
+
+    /**
+     * Enqueue a committed Transaction for delivery. This is invoked by the MeshBase, not
+     * the application programmer. Blocks if the maximum number of Transactions are pending
+     * already, unless invoked from within a TransactionBatchListener.
+     *
+     * @param tx the committed Transaction
+     */
+    public void transactionCommitted(
+            Transaction tx )
+    {
+        boolean holdsPermit;
+        if( theDeliveryThread == Thread.currentThread() ) {
+            // a listener committed a Transaction itself; blocking would deadlock
+            holdsPermit = false;
+        } else {
+            thePermits.acquireUninterruptibly();
+            holdsPermit = true;
+        }
+        theQueue.add( new Entry( tx, holdsPermit ));
+        theEnqueued.incrementAndGet();
+
+        scheduleDelivery();
+    }
+
+    /**
+     * Make sure a delivery task is scheduled, unless one is running already.
+     */
+    protected void scheduleDelivery()
+    {
+        if( theDeliveryScheduled.compareAndSet( false, true )) {
+            try {
+                theExecutor.execute( theDeliveryTask );
+
+            } catch( RejectedExecutionException ex ) {
+                theDeliveryScheduled.set( false );
+                log.error( ex );
+            }
+        }
+    }
+
+    /**
+     * Deliver all pending Transactions, in batches. Only one Thread at a time executes this.
+     */
+    protected void deliver()
+    {
+        theDeliveryThread = Thread.currentThread();
+        try {
+            while( true ) {
+                ArrayList<Entry> batch = new ArrayList<Entry>();
+                Entry current;
+                while( batch.size() < theMaxBatchSize && ( current = theQueue.poll() ) != null ) {
+                    batch.add( current );
+                }
+                if( batch.isEmpty() ) {
+                    theDeliveryScheduled.set( false );
+
+                    // an enqueue may have happened between poll() and set( false )
+                    if( theQueue.isEmpty() || !theDeliveryScheduled.compareAndSet( false, true )) {
+                        return;
+                    }
+                    continue;
+                }
+
+                Transaction [] txs = new Transaction[ batch.size() ];
+                for( int i=0 ; i<txs.length ; ++i ) {
+                    txs[i] = batch.get( i ).theTransaction;
+                }
+
+                theListeners.fireEvent( txs, null ); // resolves Weak/SoftReferences once per batch
+
+                int released = 0;
+                for( Entry e : batch ) {
+                    if( e.theHoldsPermit ) {
+                        ++released;
+                    }
+                }
+                thePermits.release( released );
+                theBatches.incrementAndGet();
+                theDelivered.addAndGet( txs.length );
+
+                synchronized( this ) {
+                    notifyAll(); // for awaitDelivered
+                }
+            }
+        } finally {
+            theDeliveryThread = null;
+        }
+    }
+
+    /**
+     * Wait until all Transactions enqueued so far have been delivered.
+     *
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return true if all were delivered, false if the timeout elapsed
+     * @throws InterruptedException thrown if the current Thread was interrupted while waiting
+     */
+    public boolean awaitDelivered(
+            long timeout )
+        throws
+            InterruptedException
+    {
+        long target   = theEnqueued.get();
+        long deadline = System.currentTimeMillis() + timeout;
+
+        synchronized( this ) {
+            while( theDelivered.get() < target ) {
+                long remaining = deadline - System.currentTimeMillis();
+                if( remaining <= 0 ) {
+                    return false;
+                }
+                wait( remaining );
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shut down the ExecutorService, if it was created by this AsyncTransactionDispatcher.
+     * Transactions pending delivery are still delivered.
+     */
+    public void shutdown()
+    {
+        if( theOwnsExecutor ) {
+            theExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Obtain the maximum number of Transactions pending delivery.
+     *
+     * @return the capacity
+     */
+    public int getCapacity()
+    {
+        return theCapacity;
+    }
+
+    /**
+     * Obtain the maximum number of Transactions delivered in one batch.
+     *
+     * @return the maximum batch size
+     */
+    public int getMaxBatchSize()
+    {
+        return theMaxBatchSize;
+    }
+
+    /**
+     * Obtain the number of Transactions currently pending delivery.
+     *
+     * @return the number of Transactions
+     */
+    public long getPending()
+    {
+        return theEnqueued.get() - theDelivered.get();
+    }
+
+    /**
+     * Obtain the number of Transactions delivered so far.
+     *
+     * @return the number of Transactions
+     */
+    public long getDelivered()
+    {
+        return theDelivered.get();
+    }
+
+    /**
+     * Obtain the number of batches delivered so far.
+     *
+     * @return the number of batches
+     */
+    public long getBatches()
+    {
+        return theBatches.get();
+    }
+
+    /**
+     * Obtain the latency statistics for a TransactionBatchListener.
+     *
+     * @param listener the TransactionBatchListener
+     * @return the ListenerStatistics, or null if nothing was delivered to this listener so far
+     */
+    public ListenerStatistics getListenerStatistics(
+            TransactionBatchListener listener )
+    {
+        synchronized( theStatistics ) {
+            return theStatistics.get( listener );
+        }
+    }
+
+    /**
+     * Record the time it took a TransactionBatchListener to process a batch.
+     *
+     * @param listener the TransactionBatchListener
+     * @param nanos the time, in nanoseconds
+     */
+    protected void recordLatency(
+            TransactionBatchListener listener,
+            long                     nanos )
+    {
+        ListenerStatistics stats;
+        synchronized( theStatistics ) {
+            stats = theStatistics.get( listener );
+            if( stats == null ) {
+                stats = new ListenerStatistics();
+                theStatistics.put( listener, stats );
+            }
+        }
+        stats.record( nanos );
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "theCapacity",
+                    "theMaxBatchSize",
+                    "pending",
+                    "theDelivered",
+                    "theBatches"
+                },
+                new Object[] {
+                    theCapacity,
+                    theMaxBatchSize,
+                    getPending(),
+                    theDelivered.get(),
+                    theBatches.get()
+                });
+    }
+
+    /**
+     * The ExecutorService on which to deliver.
+     */
+    protected final ExecutorService theExecutor;
+
+    /**
+     * If true, shutdown() shuts down theExecutor.
+     */
+    protected final boolean theOwnsExecutor;
+
+    /**
+     * The maximum number of Transactions pending delivery.
+     */
+    protected final int theCapacity;
+
+    /**
+     * The maximum number of Transactions delivered in one batch.
+     */
+    protected final int theMaxBatchSize;
+
+    /**
+     * Limits the number of Transactions pending delivery.
+     */
+    protected final Semaphore thePermits;
+
+    /**
+     * The Transactions pending delivery, in commit order.
+     */
+    protected final ConcurrentLinkedQueue<Entry> theQueue = new ConcurrentLinkedQueue<Entry>();
+
+    /**
+     * True if a delivery task has been scheduled or is running.
+     */
+    protected final AtomicBoolean theDeliveryScheduled = new AtomicBoolean( false );
+
+    /**
+     * The Thread currently delivering, if any.
+     */
+    protected volatile Thread theDeliveryThread;
+
+    /**
+     * Number of Transactions enqueued so far.
+     */
+    protected final AtomicLong theEnqueued = new AtomicLong();
+
+    /**
+     * Number of Transactions delivered so far.
+     */
+    protected final AtomicLong theDelivered = new AtomicLong();
+
+    /**
+     * Number of batches delivered so far.
+     */
+    protected final AtomicLong theBatches = new AtomicLong();
+
+    /**
+     * Latency statistics per TransactionBatchListener.
+     */
+    protected final WeakHashMap<TransactionBatchListener,ListenerStatistics> theStatistics
+            = new WeakHashMap<TransactionBatchListener,ListenerStatistics>();
+
+    /**
+     * The delivery task.
+     */
+    protected final Runnable theDeliveryTask = new Runnable() {
+            public void run()
+            {
+                deliver();
+            }
+    };
+
+    /**
+     * The TransactionBatchListeners.
+     */
+    protected final FlexibleListenerSet<TransactionBatchListener,Transaction[],Object> theListeners
+            = new FlexibleListenerSet<TransactionBatchListener,Transaction[],Object>() {
+                    protected void fireEventToListener(
+                            TransactionBatchListener listener,
+                            Transaction []           event,
+                            Object                   parameter )
+                    {
+                        long start = System.nanoTime();
+                        try {
+                            listener.transactionsCommitted( event );
+                        } finally {
+                            recordLatency( listener, System.nanoTime() - start );
+                        }
+                    }
+    };
+
+    /**
+     * The default maximum number of Transactions pending delivery.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The default maximum number of Transactions delivered in one batch.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    /**
+     * A Transaction pending delivery.
+     */
+    protected static class Entry
+    {
+        /**
+         * Constructor.
+         *
+         * @param tx the Transaction
+         * @param holdsPermit if true, a permit needs to be released after delivery
+         */
+        protected Entry(
+                Transaction tx,
+                boolean     holdsPermit )
+        {
+            theTransaction = tx;
+            theHoldsPermit = holdsPermit;
+        }
+
+        /**
+         * The Transaction.
+         */
+        protected final Transaction theTransaction;
+
+        /**
+         * If true, a permit needs to be released after delivery.
+         */
+        protected final boolean theHoldsPermit;
+    }
+
+    /**
+     * Collects the time a TransactionBatchListener took to process its batches.
+     */
+    public static class ListenerStatistics
+    {
+        /**
+         * Record the time it took to process one batch.
+         *
+         * @param nanos the time, in nanoseconds
+         */
+        protected synchronized void record(
+                long nanos )
+        {
+            ++theCount;
+            theTotalNanos += nanos;
+            if( nanos > theMaxNanos ) {
+                theMaxNanos = nanos;
+            }
+        }
+
+        /**
+         * Obtain the number of batches processed.
+         *
+         * @return the number of batches
+         */
+        public synchronized long getCount()
+        {
+            return theCount;
+        }
+
+        /**
+         * Obtain the total time spent processing batches, in nanoseconds.
+         *
+         * @return the total time
+         */
+        public synchronized long getTotalNanos()
+        {
+            return theTotalNanos;
+        }
+
+        /**
+         * Obtain the longest time spent processing a batch, in nanoseconds.
+         *
+         * @return the longest time
+         */
+        public synchronized long getMaxNanos()
+        {
+            return theMaxNanos;
+        }
+
+        /**
+         * Obtain the average time spent processing a batch, in nanoseconds.
+         *
+         * @return the average time
+         */
+        public synchronized long getAverageNanos()
+        {
+            return theCount > 0 ? theTotalNanos / theCount : 0L;
+        }
+
+        /**
+         * Convert to String, for debugging.
+         *
+         * @return String form
+         */
+        @Override
+        public synchronized String toString()
+        {
+            return "ListenerStatistics: count=" + theCount + ", avg=" + getAverageNanos() + "ns, max=" + theMaxNanos + "ns";
+        }
+
+        /**
+         * Number of batches processed.
+         */
+        protected long theCount;
+
+        /**
+         * Total time spent, in nanoseconds.
+         */
+        protected long theTotalNanos;
+
+        /**
+         * Longest time spent on one batch, in nanoseconds.
+         */
+        protected long theMaxNanos;
+    }
+}
@@ -0,0 +1,112 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.transaction;
+
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.MeshBase;
+
+/**
+  * <p>This TransactionException is thrown to indicate that a Transaction could not obtain
+  * the write lock on a MeshObject, because another, concurrently active Transaction held it
+  * for too long, or because waiting for it would have caused a deadlock. This can only occur
+  * if the MeshBase allows concurrent Transactions.</p>
+  * <p>The Transaction should be rolled back, which releases the write locks it holds, and
+  * may then be retried.</p>
+  */
+public class MeshObjectWriteLockException
+        extends
+            TransactionException
+{
+    private static final long serialVersionUID = 1L; // helps with serialization
+
+    /**
+     * Constructor.
+     *
+     * @param trans the MeshBase that was affected
+     * @param tx the Transaction that could not obtain the write lock
+     * @param locked the identifier of the MeshObject whose write lock could not be obtained
+     * @param owner the Transaction that held the write lock
+     * @param isDeadlock if true, waiting for the write lock would have caused a deadlock
+     */
+    public MeshObjectWriteLockException(
+            MeshBase             trans,
+            Transaction          tx,
+            MeshObjectIdentifier locked,
+            Transaction          owner,
+            boolean              isDeadlock )
+    {
+        super( trans, tx );
+
+        theLockedIdentifier = locked;
+        theOwner            = owner;
+        theIsDeadlock       = isDeadlock;
+    }
+
+    /**
+     * Obtain the identifier of the MeshObject whose write lock could not be obtained.
+     *
+     * @return the identifier of the MeshObject
+     */
+    public MeshObjectIdentifier getLockedMeshObjectIdentifier()
+    {
+        return theLockedIdentifier;
+    }
+
+    /**
+     * Obtain the Transaction that held the write lock.
+     *
+     * @return the Transaction
+     */
+    public Transaction getOwningTransaction()
+    {
+        return theOwner;
+    }
+
+    /**
+     * Determine whether waiting for the write lock would have caused a deadlock.
+     *
+     * @return true if waiting would have caused a deadlock, false if waiting timed out
+     */
+    public boolean isDeadlock()
+    {
+        return theIsDeadlock;
+    }
+
+    /**
+     * Convert this into a string, for debugging.
+     *
+     * @return this instance as a string
+     */
+    @Override
+    public String toString()
+    {
+        return super.toString() + ", locked: " + theLockedIdentifier + ", owner: " + theOwner + ", deadlock: " + theIsDeadlock;
+    }
+
+    /**
+     * The identifier of the MeshObject whose write lock could not be obtained.
+     */
+    protected MeshObjectIdentifier theLockedIdentifier;
+
+    /**
+     * The Transaction that held the write lock.
+     */
+    protected transient Transaction theOwner;
+
+    /**
+     * If true, waiting for the write lock would have caused a deadlock.
+     */
+    protected boolean theIsDeadlock;
+}
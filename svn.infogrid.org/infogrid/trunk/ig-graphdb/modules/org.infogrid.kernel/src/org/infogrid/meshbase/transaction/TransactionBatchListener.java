@@ -0,0 +1,31 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.transaction;
+
+/**
+ * This interface is implemented by objects that wish to be notified of committed
+ * Transactions asynchronously, in batches, by an AsyncTransactionDispatcher.
+ */
+public interface TransactionBatchListener
+{
+    /**
+     * Indicates that one or more Transactions have been committed. The Transactions
+     * are given in the order in which they were committed.
+     *
+     * @param committed the committed Transactions
+     */
+    public abstract void transactionsCommitted(
+            Transaction [] committed );
+}
@@ -108,6 +108,14 @@ public interface AttributableMeshType
      */
     public PropertyTypeOrGroup [] getAllPropertyTypeOrGroupsInSequence();
 
+    /**
+     * Obtain the PropertySlotLayout used by MeshObjects blessed with this AttributableMeshType
+     * to store their PropertyValues.
+     *
+     * @return the PropertySlotLayout
+     */
+    public PropertySlotLayout getPropertySlotLayout();
+
     /**
      * Obtain the direct supertypes for this AttributableMeshType.
      *
@@ -0,0 +1,240 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.model.primitives;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Assigns each PropertyType that a MeshObject may carry to a slot, so the MeshObject
+ *    can keep its PropertyValues in an array instead of a map. A PropertySlotLayout is
+ *    immutable and shared by all MeshObjects blessed with the same EntityTypes.</p>
+ * <p>The layout of an AttributableMeshType contains the PropertyTypes of the
+ *    AttributableMeshType and all of its supertypes, including overridden ones, because
+ *    a MeshObject may be accessed with any of them. The layout for several
+ *    AttributableMeshTypes is created by {@link #combineWith}; it keeps the slots of the
+ *    first layout, so the PropertyValues of a MeshObject do not move when it is blessed
+ *    with an additional EntityType.</p>
+ */
+public final class PropertySlotLayout
+{
+    /**
+     * Factory method to create the layout for an AttributableMeshType.
+     * Use {@link AttributableMeshType#getPropertySlotLayout} instead of invoking this directly.
+     *
+     * @param type the AttributableMeshType
+     * @return the created PropertySlotLayout
+     */
+    public static PropertySlotLayout create(
+            AttributableMeshType type )
+    {
+        ArrayList<PropertyType> slots = new ArrayList<PropertyType>();
+        addAll( slots, type.getAllPropertyTypes() );
+
+        for( AttributableMeshType current : type.getAllSupertypes() ) {
+            addAll( slots, current.getAllPropertyTypes() );
+        }
+        return new PropertySlotLayout( slots.toArray( new PropertyType[ slots.size() ] ));
+    }
+
+    /**
+     * Obtain the layout for a MeshObject blessed with these EntityTypes.
+     *
+     * @param types the EntityTypes
+     * @return the PropertySlotLayout, or null if there are no EntityTypes
+     */
+    public static PropertySlotLayout obtain(
+            EntityType [] types )
+    {
+        if( types == null || types.length == 0 ) {
+            return null;
+        }
+        PropertySlotLayout ret = types[0].getPropertySlotLayout();
+        for( int i=1 ; i<types.length ; ++i ) {
+            ret = ret.combineWith( types[i].getPropertySlotLayout() );
+        }
+        return ret;
+    }
+
+    /**
+     * Private constructor, use factory method.
+     *
+     * @param slots the PropertyTypes, in sequence of their slots
+     */
+    private PropertySlotLayout(
+            PropertyType [] slots )
+    {
+        theSlots = slots;
+
+        if( slots.length > LINEAR_SEARCH_LIMIT ) {
+            theSlotIndex = new HashMap<PropertyType,Integer>( slots.length * 2 );
+            for( int i=0 ; i<slots.length ; ++i ) {
+                theSlotIndex.put( slots[i], i );
+            }
+        } else {
+            theSlotIndex = null;
+        }
+    }
+
+    /**
+     * Obtain the layout that contains the slots of this and another layout. The slots
+     * of this layout keep their positions.
+     *
+     * @param other the other PropertySlotLayout
+     * @return the combined PropertySlotLayout
+     */
+    public PropertySlotLayout combineWith(
+            PropertySlotLayout other )
+    {
+        if( other == this ) {
+            return this;
+        }
+        ConcurrentHashMap<PropertySlotLayout,PropertySlotLayout> combinations = theCombinations;
+        if( combinations == null ) {
+            synchronized( this ) {
+                combinations = theCombinations;
+                if( combinations == null ) {
+                    combinations = theCombinations = new ConcurrentHashMap<PropertySlotLayout,PropertySlotLayout>( 4 );
+                }
+            }
+        }
+
+        PropertySlotLayout ret = combinations.get( other );
+        if( ret == null ) {
+            ArrayList<PropertyType> slots = new ArrayList<PropertyType>( theSlots.length + other.theSlots.length );
+            addAll( slots, theSlots );
+            addAll( slots, other.theSlots );
+
+            if( slots.size() == theSlots.length ) {
+                ret = this;
+            } else {
+                ret = new PropertySlotLayout( slots.toArray( new PropertyType[ slots.size() ] ));
+            }
+            PropertySlotLayout already = combinations.putIfAbsent( other, ret );
+            if( already != null ) {
+                ret = already;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Determine the slot of a PropertyType.
+     *
+     * @param type the PropertyType
+     * @return the slot, or -1 if the PropertyType does not have a slot in this layout
+     */
+    public int getSlot(
+            PropertyType type )
+    {
+        if( theSlotIndex != null ) {
+            Integer found = theSlotIndex.get( type );
+            return found != null ? found : -1;
+        }
+        for( int i=0 ; i<theSlots.length ; ++i ) {
+            if( theSlots[i] == type ) {
+                return i;
+            }
+        }
+        // PropertyTypes are usually identical, but we need to do what a HashMap would do
+        for( int i=0 ; i<theSlots.length ; ++i ) {
+            if( theSlots[i].equals( type )) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Obtain the PropertyType in a slot.
+     *
+     * @param slot the slot
+     * @return the PropertyType
+     */
+    public PropertyType getPropertyType(
+            int slot )
+    {
+        return theSlots[ slot ];
+    }
+
+    /**
+     * Obtain the number of slots.
+     *
+     * @return the number of slots
+     */
+    public int size()
+    {
+        return theSlots.length;
+    }
+
+    /**
+     * Convert to String, for debugging.
+     *
+     * @return String
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder ret = new StringBuilder();
+        ret.append( getClass().getName() );
+        ret.append( "{ " );
+        for( int i=0 ; i<theSlots.length ; ++i ) {
+            if( i > 0 ) {
+                ret.append( ", " );
+            }
+            ret.append( theSlots[i].getIdentifier().toExternalForm() );
+        }
+        ret.append( " }" );
+        return ret.toString();
+    }
+
+    /**
+     * Helper to append those PropertyTypes to a list that are not in the list yet.
+     *
+     * @param list the list
+     * @param toAdd the PropertyTypes to add
+     */
+    private static void addAll(
+            ArrayList<PropertyType> list,
+            PropertyType []         toAdd )
+    {
+        for( PropertyType current : toAdd ) {
+            if( !list.contains( current )) {
+                list.add( current );
+            }
+        }
+    }
+
+    /**
+     * The PropertyTypes, in sequence of their slots.
+     */
+    private final PropertyType [] theSlots;
+
+    /**
+     * Maps PropertyTypes to their slots, if there are too many slots for a linear search.
+     */
+    private final HashMap<PropertyType,Integer> theSlotIndex;
+
+    /**
+     * The layouts combined with this one so far, keyed by the other layout. Allocated as needed.
+     */
+    private volatile ConcurrentHashMap<PropertySlotLayout,PropertySlotLayout> theCombinations;
+
+    /**
+     * Up to this number of slots, PropertyTypes are found by a linear search.
+     */
+    private static final int LINEAR_SEARCH_LIMIT = 8;
+}
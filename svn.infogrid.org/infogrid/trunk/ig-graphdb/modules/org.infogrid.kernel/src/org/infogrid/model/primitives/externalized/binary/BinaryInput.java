@@ -0,0 +1,292 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.model.primitives.externalized.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.util.StreamUtils;
+
+/**
+ * Reads what a {@link BinaryOutput} wrote, directly from a byte array.
+ * An instance must only be used by one Thread at a time.
+ */
+public class BinaryInput
+{
+    /**
+     * Factory method.
+     *
+     * @param data the bytes to read
+     * @return the created BinaryInput
+     */
+    public static BinaryInput create(
+            byte [] data )
+    {
+        return new BinaryInput( data, 0, data.length );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param data the bytes to read
+     * @param offset the first byte to read
+     * @param length the number of bytes to read
+     * @return the created BinaryInput
+     */
+    public static BinaryInput create(
+            byte [] data,
+            int     offset,
+            int     length )
+    {
+        return new BinaryInput( data, offset, length );
+    }
+
+    /**
+     * Factory method, reading the InputStream until EOF.
+     *
+     * @param in the InputStream
+     * @return the created BinaryInput
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public static BinaryInput create(
+            InputStream in )
+        throws
+            IOException
+    {
+        byte [] data = StreamUtils.slurp( in );
+
+        return new BinaryInput( data, 0, data.length );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param data the bytes to read
+     * @param offset the first byte to read
+     * @param length the number of bytes to read
+     */
+    protected BinaryInput(
+            byte [] data,
+            int     offset,
+            int     length )
+    {
+        theData     = data;
+        thePosition = offset;
+        theEnd      = offset + length;
+    }
+
+    /**
+     * Read a single byte.
+     *
+     * @return the byte, as an unsigned value
+     * @throws DecodingException thrown if the data ended prematurely
+     */
+    public int readByte()
+        throws
+            DecodingException
+    {
+        if( thePosition >= theEnd ) {
+            throw new DecodingException( "Unexpected end of data at position " + thePosition );
+        }
+        return theData[ thePosition++ ] & 0xff;
+    }
+
+    /**
+     * Read a non-negative int written as a variable-length quantity.
+     *
+     * @return the value
+     * @throws DecodingException thrown if the data ended prematurely or was invalid
+     */
+    public int readVarInt()
+        throws
+            DecodingException
+    {
+        long ret = readVarLong();
+        if( ret < 0 || ret > Integer.MAX_VALUE ) {
+            throw new DecodingException( "Invalid int value " + ret + " before position " + thePosition );
+        }
+        return (int) ret;
+    }
+
+    /**
+     * Read a long written as a variable-length quantity.
+     *
+     * @return the value
+     * @throws DecodingException thrown if the data ended prematurely or was invalid
+     */
+    public long readVarLong()
+        throws
+            DecodingException
+    {
+        long ret   = 0;
+        int  shift = 0;
+        while( true ) {
+            int b = readByte();
+            ret |= ((long) ( b & 0x7f )) << shift;
+            if( ( b & 0x80 ) == 0 ) {
+                return ret;
+            }
+            shift += 7;
+            if( shift > 63 ) {
+                throw new DecodingException( "Variable-length quantity too long before position " + thePosition );
+            }
+        }
+    }
+
+    /**
+     * Read a signed long written as a zig-zag encoded, variable-length quantity.
+     *
+     * @return the value
+     * @throws DecodingException thrown if the data ended prematurely or was invalid
+     */
+    public long readSignedVarLong()
+        throws
+            DecodingException
+    {
+        long raw = readVarLong();
+        return ( raw >>> 1 ) ^ -( raw & 1 );
+    }
+
+    /**
+     * Read an int written with all 32 bits.
+     *
+     * @return the value
+     * @throws DecodingException thrown if the data ended prematurely
+     */
+    public int readFixedInt()
+        throws
+            DecodingException
+    {
+        if( thePosition + 4 > theEnd ) {
+            throw new DecodingException( "Unexpected end of data at position " + thePosition );
+        }
+        int ret =   (( theData[ thePosition   ] & 0xff ) << 24 )
+                  | (( theData[ thePosition+1 ] & 0xff ) << 16 )
+                  | (( theData[ thePosition+2 ] & 0xff ) <<  8 )
+                  |  ( theData[ thePosition+3 ] & 0xff );
+        thePosition += 4;
+        return ret;
+    }
+
+    /**
+     * Read a float.
+     *
+     * @return the value
+     * @throws DecodingException thrown if the data ended prematurely
+     */
+    public float readFloat()
+        throws
+            DecodingException
+    {
+        return Float.intBitsToFloat( readFixedInt() );
+    }
+
+    /**
+     * Read a double.
+     *
+     * @return the value
+     * @throws DecodingException thrown if the data ended prematurely
+     */
+    public double readDouble()
+        throws
+            DecodingException
+    {
+        long high = readFixedInt() & 0xffffffffL;
+        long low  = readFixedInt() & 0xffffffffL;
+        return Double.longBitsToDouble( ( high << 32 ) | low );
+    }
+
+    /**
+     * Read a length-prefixed byte array.
+     *
+     * @return the bytes, or null
+     * @throws DecodingException thrown if the data ended prematurely or was invalid
+     */
+    public byte [] readByteArray()
+        throws
+            DecodingException
+    {
+        int length = readLength();
+        if( length < 0 ) {
+            return null;
+        }
+        byte [] ret = new byte[ length ];
+        System.arraycopy( theData, thePosition, ret, 0, length );
+        thePosition += length;
+        return ret;
+    }
+
+    /**
+     * Read a length-prefixed String in UTF-8. This decodes directly from the
+     * underlying byte array.
+     *
+     * @return the String, or null
+     * @throws DecodingException thrown if the data ended prematurely or was invalid
+     */
+    public String readString()
+        throws
+            DecodingException
+    {
+        int length = readLength();
+        if( length < 0 ) {
+            return null;
+        }
+        String ret = new String( theData, thePosition, length, BinaryOutput.UTF8 );
+        thePosition += length;
+        return ret;
+    }
+
+    /**
+     * Determine whether all data has been read.
+     *
+     * @return true if all data has been read
+     */
+    public boolean isAtEnd()
+    {
+        return thePosition >= theEnd;
+    }
+
+    /**
+     * Read the length prefix of a byte array or String, and make sure that many bytes are available.
+     *
+     * @return the length, or -1 for null
+     * @throws DecodingException thrown if the data ended prematurely or was invalid
+     */
+    protected int readLength()
+        throws
+            DecodingException
+    {
+        int ret = readVarInt() - 1;
+        if( ret > theEnd - thePosition ) {
+            throw new DecodingException( "Length " + ret + " exceeds available data at position " + thePosition );
+        }
+        return ret;
+    }
+
+    /**
+     * The data.
+     */
+    protected final byte [] theData;
+
+    /**
+     * The position of the next byte to read.
+     */
+    protected int thePosition;
+
+    /**
+     * The position after the last byte to read.
+     */
+    protected final int theEnd;
+}
@@ -0,0 +1,261 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.model.primitives.externalized.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * A growable, unsynchronized byte buffer into which the binary encoders write.
+ * Integers are written as variable-length quantities of 7 bits per byte,
+ * signed integers are zig-zag encoded first, so small negative values stay short.
+ * An instance must only be used by one Thread at a time.
+ */
+public class BinaryOutput
+{
+    /**
+     * Factory method.
+     *
+     * @return the created BinaryOutput
+     */
+    public static BinaryOutput create()
+    {
+        return new BinaryOutput( 256 );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param initialSize the initial size of the buffer
+     * @return the created BinaryOutput
+     */
+    public static BinaryOutput create(
+            int initialSize )
+    {
+        return new BinaryOutput( initialSize );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param initialSize the initial size of the buffer
+     */
+    protected BinaryOutput(
+            int initialSize )
+    {
+        theBuffer = new byte[ Math.max( 16, initialSize ) ];
+    }
+
+    /**
+     * Write a single byte.
+     *
+     * @param b the byte
+     */
+    public void writeByte(
+            int b )
+    {
+        ensureCapacity( 1 );
+        theBuffer[ theSize++ ] = (byte) b;
+    }
+
+    /**
+     * Write a number of bytes.
+     *
+     * @param data the bytes
+     */
+    public void writeBytes(
+            byte [] data )
+    {
+        ensureCapacity( data.length );
+        System.arraycopy( data, 0, theBuffer, theSize, data.length );
+        theSize += data.length;
+    }
+
+    /**
+     * Write a non-negative int as a variable-length quantity.
+     *
+     * @param value the value
+     */
+    public void writeVarInt(
+            int value )
+    {
+        writeVarLong( value & 0xffffffffL );
+    }
+
+    /**
+     * Write a long that is expected to be non-negative as a variable-length quantity.
+     *
+     * @param value the value
+     */
+    public void writeVarLong(
+            long value )
+    {
+        ensureCapacity( 10 );
+        while( ( value & ~0x7fL ) != 0 ) {
+            theBuffer[ theSize++ ] = (byte) (( value & 0x7f ) | 0x80 );
+            value >>>= 7;
+        }
+        theBuffer[ theSize++ ] = (byte) value;
+    }
+
+    /**
+     * Write a signed long as a zig-zag encoded, variable-length quantity.
+     *
+     * @param value the value
+     */
+    public void writeSignedVarLong(
+            long value )
+    {
+        writeVarLong( ( value << 1 ) ^ ( value >> 63 ));
+    }
+
+    /**
+     * Write an int with all 32 bits.
+     *
+     * @param value the value
+     */
+    public void writeFixedInt(
+            int value )
+    {
+        ensureCapacity( 4 );
+        theBuffer[ theSize++ ] = (byte) ( value >>> 24 );
+        theBuffer[ theSize++ ] = (byte) ( value >>> 16 );
+        theBuffer[ theSize++ ] = (byte) ( value >>>  8 );
+        theBuffer[ theSize++ ] = (byte) value;
+    }
+
+    /**
+     * Write a float.
+     *
+     * @param value the value
+     */
+    public void writeFloat(
+            float value )
+    {
+        writeFixedInt( Float.floatToIntBits( value ));
+    }
+
+    /**
+     * Write a double.
+     *
+     * @param value the value
+     */
+    public void writeDouble(
+            double value )
+    {
+        long bits = Double.doubleToLongBits( value );
+        writeFixedInt( (int) ( bits >>> 32 ));
+        writeFixedInt( (int) bits );
+    }
+
+    /**
+     * Write a length-prefixed byte array, which may be null.
+     *
+     * @param data the bytes, or null
+     */
+    public void writeByteArray(
+            byte [] data )
+    {
+        if( data == null ) {
+            writeVarInt( 0 );
+        } else {
+            writeVarInt( data.length + 1 );
+            writeBytes( data );
+        }
+    }
+
+    /**
+     * Write a length-prefixed String in UTF-8, which may be null.
+     *
+     * @param s the String, or null
+     */
+    public void writeString(
+            String s )
+    {
+        if( s == null ) {
+            writeVarInt( 0 );
+        } else {
+            writeByteArray( s.getBytes( UTF8 ));
+        }
+    }
+
+    /**
+     * Obtain the number of bytes written so far.
+     *
+     * @return the number of bytes
+     */
+    public int size()
+    {
+        return theSize;
+    }
+
+    /**
+     * Obtain the bytes written so far as a new array.
+     *
+     * @return the bytes
+     */
+    public byte [] toByteArray()
+    {
+        byte [] ret = new byte[ theSize ];
+        System.arraycopy( theBuffer, 0, ret, 0, theSize );
+        return ret;
+    }
+
+    /**
+     * Write the bytes written so far to an OutputStream.
+     *
+     * @param out the OutputStream
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void writeTo(
+            OutputStream out )
+        throws
+            IOException
+    {
+        out.write( theBuffer, 0, theSize );
+    }
+
+    /**
+     * Make sure the buffer can take a certain number of additional bytes.
+     *
+     * @param additional the number of additional bytes
+     */
+    protected void ensureCapacity(
+            int additional )
+    {
+        int needed = theSize + additional;
+        if( needed > theBuffer.length ) {
+            byte [] newBuffer = new byte[ Math.max( needed, theBuffer.length * 2 ) ];
+            System.arraycopy( theBuffer, 0, newBuffer, 0, theSize );
+            theBuffer = newBuffer;
+        }
+    }
+
+    /**
+     * The buffer.
+     */
+    protected byte [] theBuffer;
+
+    /**
+     * The number of bytes used in the buffer.
+     */
+    protected int theSize;
+
+    /**
+     * The character set used for Strings.
+     */
+    public static final Charset UTF8 = Charset.forName( "UTF-8" );
+}
@@ -0,0 +1,427 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.model.primitives.externalized.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import org.infogrid.model.primitives.BlobDataType;
+import org.infogrid.model.primitives.BlobValue;
+import org.infogrid.model.primitives.BooleanValue;
+import org.infogrid.model.primitives.ColorValue;
+import org.infogrid.model.primitives.CurrencyValue;
+import org.infogrid.model.primitives.EnumeratedValue;
+import org.infogrid.model.primitives.ExtentValue;
+import org.infogrid.model.primitives.FloatValue;
+import org.infogrid.model.primitives.IntegerValue;
+import org.infogrid.model.primitives.MultiplicityValue;
+import org.infogrid.model.primitives.PointValue;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.model.primitives.TimePeriodValue;
+import org.infogrid.model.primitives.TimeStampValue;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+
+/**
+ * <p>Encodes and decodes PropertyValues in a compact binary representation. Each
+ *    PropertyValue is written as a one-byte tag identifying its type, followed by
+ *    the value in a type-specific form.</p>
+ * <p>As with the XML representation, units are not supported, and EnumeratedValues and
+ *    BlobValues are decoded without their DataType, which needs to be patched later.</p>
+ * <p>Instances hold no parsing state, so the same instance may be used by any number
+ *    of Threads at the same time.</p>
+ */
+public class PropertyValueBinaryEncoder
+{
+    /**
+     * Constructor.
+     */
+    public PropertyValueBinaryEncoder()
+    {
+        // no op
+    }
+
+    /**
+     * Serialize a PropertyValue to an OutputStream.
+     *
+     * @param value the PropertyValue
+     * @param out the OutputStream to which to append the PropertyValue
+     * @throws EncodingException thrown if a problem occurred during encoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void encodePropertyValue(
+            PropertyValue value,
+            OutputStream  out )
+        throws
+            EncodingException,
+            IOException
+    {
+        BinaryOutput buf = BinaryOutput.create();
+
+        appendPropertyValue( value, buf );
+
+        buf.writeTo( out );
+    }
+
+    /**
+     * Serialize a PropertyValue to a BinaryOutput.
+     *
+     * @param value the PropertyValue
+     * @param buf the BinaryOutput to which to append the PropertyValue
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    public void appendPropertyValue(
+            PropertyValue value,
+            BinaryOutput  buf )
+        throws
+            EncodingException
+    {
+        if( value == null ) {
+            buf.writeByte( NULL_VALUE_TAG );
+
+        } else if( value instanceof BlobValue ) {
+            BlobValue realValue = (BlobValue) value;
+            String    mt        = realValue.getMimeType();
+            if( mt == null ) {
+                mt = "?/?";
+            }
+
+            if( realValue.delayedLoadingFrom() != null ) {
+                buf.writeByte( BLOB_VALUE_LOAD_TAG );
+                buf.writeString( mt );
+                buf.writeString( realValue.delayedLoadingFrom() );
+
+            } else if( mt.startsWith( "text/" )) {
+                buf.writeByte( BLOB_VALUE_TEXT_TAG );
+                buf.writeString( mt );
+                buf.writeString( realValue.getAsString() );
+
+            } else {
+                buf.writeByte( BLOB_VALUE_BYTES_TAG );
+                buf.writeString( mt );
+                buf.writeByteArray( realValue.value() );
+            }
+
+        } else if( value instanceof BooleanValue ) {
+            if( ((BooleanValue)value).value() ) {
+                buf.writeByte( BOOLEAN_VALUE_TRUE_TAG );
+            } else {
+                buf.writeByte( BOOLEAN_VALUE_FALSE_TAG );
+            }
+
+        } else if( value instanceof ColorValue ) {
+            buf.writeByte( COLOR_VALUE_TAG );
+            buf.writeFixedInt( ((ColorValue)value).getRGB() );
+
+        } else if( value instanceof CurrencyValue ) {
+            buf.writeByte( CURRENCY_VALUE_TAG );
+            buf.writeString( ((CurrencyValue)value).value() );
+
+        } else if( value instanceof EnumeratedValue ) {
+            buf.writeByte( ENUMERATED_VALUE_TAG );
+            buf.writeString( ((EnumeratedValue)value).value() );
+
+        } else if( value instanceof ExtentValue ) {
+            ExtentValue realValue = (ExtentValue) value;
+            buf.writeByte( EXTENT_VALUE_TAG );
+            buf.writeDouble( realValue.getWidth() );
+            buf.writeDouble( realValue.getHeight() );
+
+        } else if( value instanceof FloatValue ) {
+            buf.writeByte( FLOAT_VALUE_TAG );
+            buf.writeDouble( ((FloatValue)value).value() );
+
+        } else if( value instanceof IntegerValue ) {
+            buf.writeByte( INTEGER_VALUE_TAG );
+            buf.writeSignedVarLong( ((IntegerValue)value).value() );
+
+        } else if( value instanceof MultiplicityValue ) {
+            MultiplicityValue realValue = (MultiplicityValue) value;
+            buf.writeByte( MULTIPLICITY_VALUE_TAG );
+            buf.writeSignedVarLong( realValue.getMinimum() );
+            buf.writeSignedVarLong( realValue.getMaximum() );
+
+        } else if( value instanceof PointValue ) {
+            PointValue realValue = (PointValue) value;
+            buf.writeByte( POINT_VALUE_TAG );
+            buf.writeDouble( realValue.getX() );
+            buf.writeDouble( realValue.getY() );
+
+        } else if( value instanceof StringValue ) {
+            buf.writeByte( STRING_VALUE_TAG );
+            buf.writeString( ((StringValue)value).value() );
+
+        } else if( value instanceof TimePeriodValue ) {
+            TimePeriodValue realValue = (TimePeriodValue) value;
+            buf.writeByte( TIME_PERIOD_TAG );
+            buf.writeSignedVarLong( realValue.getYear() );
+            buf.writeSignedVarLong( realValue.getMonth() );
+            buf.writeSignedVarLong( realValue.getDay() );
+            buf.writeSignedVarLong( realValue.getHour() );
+            buf.writeSignedVarLong( realValue.getMinute() );
+            buf.writeFloat( realValue.getSecond() );
+
+        } else if( value instanceof TimeStampValue ) {
+            buf.writeByte( TIME_STAMP_TAG );
+            buf.writeSignedVarLong( ((TimeStampValue)value).getAsMillis() );
+
+        } else {
+            throw new EncodingException( "Cannot encode PropertyValue of type " + value.getClass().getName() );
+        }
+    }
+
+    /**
+     * Deserialize a PropertyValue from a stream.
+     *
+     * @param contentAsStream the byte [] stream in which the PropertyValue is encoded
+     * @return return the just-instantiated PropertyValue
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public PropertyValue decodePropertyValue(
+            InputStream contentAsStream )
+        throws
+            DecodingException,
+            IOException
+    {
+        BinaryInput in = BinaryInput.create( contentAsStream );
+
+        return readPropertyValue( in );
+    }
+
+    /**
+     * Read a PropertyValue from a BinaryInput.
+     *
+     * @param in the BinaryInput
+     * @return the PropertyValue
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    public PropertyValue readPropertyValue(
+            BinaryInput in )
+        throws
+            DecodingException
+    {
+        int           tag = in.readByte();
+        PropertyValue ret;
+
+        switch( tag ) {
+            case NULL_VALUE_TAG:
+                ret = null;
+                break;
+
+            case BLOB_VALUE_BYTES_TAG: {
+                String  mt   = in.readString();
+                byte [] data = in.readByteArray();
+                ret = BlobDataType.theAnyType.createBlobValue( data != null ? data : new byte[0], mt );
+                    // This needs to be patched later once we have the instance of BlobDataType
+                break;
+            }
+
+            case BLOB_VALUE_TEXT_TAG: {
+                String mt   = in.readString();
+                String text = in.readString();
+                ret = BlobDataType.theAnyType.createBlobValue( text != null ? text : "", mt );
+                    // This needs to be patched later once we have the instance of BlobDataType
+                break;
+            }
+
+            case BLOB_VALUE_LOAD_TAG: {
+                String mt       = in.readString();
+                String loadFrom = in.readString();
+                ret = BlobDataType.theAnyType.createBlobValueByLoadingFrom( loadFrom, mt );
+                break;
+            }
+
+            case BOOLEAN_VALUE_FALSE_TAG:
+                ret = BooleanValue.FALSE;
+                break;
+
+            case BOOLEAN_VALUE_TRUE_TAG:
+                ret = BooleanValue.TRUE;
+                break;
+
+            case COLOR_VALUE_TAG:
+                ret = ColorValue.create( in.readFixedInt() );
+                break;
+
+            case CURRENCY_VALUE_TAG: {
+                String s = in.readString();
+                try {
+                    ret = CurrencyValue.parseCurrencyValue( s );
+                } catch( ParseException ex ) {
+                    throw new DecodingException( "Failed to parse CurrencyValue " + s, ex );
+                }
+                break;
+            }
+
+            case ENUMERATED_VALUE_TAG:
+                ret = EnumeratedValue.create( null, in.readString(), null, null );
+                    // This needs to be patched later once we have the instance of EnumeratedDataType
+                break;
+
+            case EXTENT_VALUE_TAG: {
+                double width  = in.readDouble();
+                double height = in.readDouble();
+                ret = ExtentValue.create( width, height );
+                break;
+            }
+
+            case FLOAT_VALUE_TAG:
+                ret = FloatValue.create( in.readDouble() );
+                break;
+
+            case INTEGER_VALUE_TAG:
+                ret = IntegerValue.create( in.readSignedVarLong() );
+                break;
+
+            case MULTIPLICITY_VALUE_TAG: {
+                int min = (int) in.readSignedVarLong();
+                int max = (int) in.readSignedVarLong();
+                ret = MultiplicityValue.create( min, max );
+                break;
+            }
+
+            case POINT_VALUE_TAG: {
+                double x = in.readDouble();
+                double y = in.readDouble();
+                ret = PointValue.create( x, y );
+                break;
+            }
+
+            case STRING_VALUE_TAG: {
+                String s = in.readString();
+                ret = StringValue.create( s != null ? s : "" );
+                break;
+            }
+
+            case TIME_PERIOD_TAG: {
+                short year   = (short) in.readSignedVarLong();
+                short month  = (short) in.readSignedVarLong();
+                short day    = (short) in.readSignedVarLong();
+                short hour   = (short) in.readSignedVarLong();
+                short minute = (short) in.readSignedVarLong();
+                float second = in.readFloat();
+                ret = TimePeriodValue.create( year, month, day, hour, minute, second );
+                break;
+            }
+
+            case TIME_STAMP_TAG:
+                ret = TimeStampValue.create( in.readSignedVarLong() );
+                break;
+
+            default:
+                throw new DecodingException( "Unknown PropertyValue tag " + tag );
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the identifier for the encoding performed by this PropertyValueBinaryEncoder.
+     * This also works for all subclasses.
+     *
+     * @return the encodingId.
+     */
+    public String getEncodingId()
+    {
+        return getClass().getName();
+    }
+
+    /**
+     * Tag for a null value.
+     */
+    public static final int NULL_VALUE_TAG = 0;
+
+    /**
+     * Tag for a BlobValue with binary content.
+     */
+    public static final int BLOB_VALUE_BYTES_TAG = 1;
+
+    /**
+     * Tag for a BlobValue with text content.
+     */
+    public static final int BLOB_VALUE_TEXT_TAG = 2;
+
+    /**
+     * Tag for a BlobValue whose content is loaded when needed.
+     */
+    public static final int BLOB_VALUE_LOAD_TAG = 3;
+
+    /**
+     * Tag for BooleanValue.FALSE.
+     */
+    public static final int BOOLEAN_VALUE_FALSE_TAG = 4;
+
+    /**
+     * Tag for BooleanValue.TRUE.
+     */
+    public static final int BOOLEAN_VALUE_TRUE_TAG = 5;
+
+    /**
+     * Tag for a ColorValue.
+     */
+    public static final int COLOR_VALUE_TAG = 6;
+
+    /**
+     * Tag for a CurrencyValue.
+     */
+    public static final int CURRENCY_VALUE_TAG = 7;
+
+    /**
+     * Tag for an EnumeratedValue.
+     */
+    public static final int ENUMERATED_VALUE_TAG = 8;
+
+    /**
+     * Tag for an ExtentValue.
+     */
+    public static final int EXTENT_VALUE_TAG = 9;
+
+    /**
+     * Tag for a FloatValue.
+     */
+    public static final int FLOAT_VALUE_TAG = 10;
+
+    /**
+     * Tag for an IntegerValue.
+     */
+    public static final int INTEGER_VALUE_TAG = 11;
+
+    /**
+     * Tag for a MultiplicityValue.
+     */
+    public static final int MULTIPLICITY_VALUE_TAG = 12;
+
+    /**
+     * Tag for a PointValue.
+     */
+    public static final int POINT_VALUE_TAG = 13;
+
+    /**
+     * Tag for a StringValue.
+     */
+    public static final int STRING_VALUE_TAG = 14;
+
+    /**
+     * Tag for a TimePeriodValue.
+     */
+    public static final int TIME_PERIOD_TAG = 15;
+
+    /**
+     * Tag for a TimeStampValue.
+     */
+    public static final int TIME_STAMP_TAG = 16;
+}
@@ -19,6 +19,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Stack;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -247,6 +248,30 @@ public class PropertyValueXmlEncoder
         throws
             DecodingException,
             IOException
+    {
+        PropertyValueXmlEncoder decoder = obtainDecoder();
+        try {
+            return decoder.internalDecodePropertyValue( contentAsStream );
+
+        } finally {
+            releaseDecoder( decoder );
+        }
+    }
+
+    /**
+     * Deserialize a PropertyValue from a stream, using this instance as the parse handler.
+     * This must only be invoked on an instance obtained through {@link #obtainDecoder}.
+     *
+     * @param contentAsStream the byte [] stream in which the PropertyValue is encoded
+     * @return return the just-instantiated PropertyValue
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected PropertyValue internalDecodePropertyValue(
+            InputStream contentAsStream )
+        throws
+            DecodingException,
+            IOException
     {
         try {
             synchronized( theParser ) {
@@ -262,6 +287,61 @@ public class PropertyValueXmlEncoder
         }
     }
 
+    /**
+     * <p>Obtain an instance of this class to decode with. As the parse state is held in
+     *    instance variables, an instance can only decode one stream at a time. So rather than
+     *    parsing with this instance, the decode methods parse with an instance obtained from
+     *    here, and hand it back with {@link #releaseDecoder} when done. That way, any number
+     *    of Threads can decode with the same encoder at the same time.</p>
+     *
+     * @return the instance to decode with
+     */
+    protected PropertyValueXmlEncoder obtainDecoder()
+    {
+        synchronized( theDecoderPool ) {
+            int size = theDecoderPool.size();
+            if( size > 0 ) {
+                return theDecoderPool.remove( size-1 );
+            }
+        }
+        return createDecoder();
+    }
+
+    /**
+     * Hand back an instance obtained through {@link #obtainDecoder} after decoding is done.
+     *
+     * @param decoder the instance
+     */
+    protected void releaseDecoder(
+            PropertyValueXmlEncoder decoder )
+    {
+        synchronized( theDecoderPool ) {
+            if( theDecoderPool.size() < MAX_POOLED_DECODERS ) {
+                theDecoderPool.add( decoder );
+            }
+        }
+    }
+
+    /**
+     * Factory method for a new instance of this class to decode with. This implementation
+     * instantiates the same class as this instance through its public, no-argument constructor;
+     * subclasses that do not have one need to override this method.
+     *
+     * @return the new instance
+     */
+    protected PropertyValueXmlEncoder createDecoder()
+    {
+        try {
+            return getClass().newInstance();
+
+        } catch( InstantiationException ex ) {
+            throw new IllegalStateException( "Cannot instantiate decoder " + getClass().getName(), ex );
+
+        } catch( IllegalAccessException ex ) {
+            throw new IllegalStateException( "Cannot instantiate decoder " + getClass().getName(), ex );
+        }
+    }
+
     /**
      * Override locator method so we know what we are parsing.
      *
@@ -766,6 +846,16 @@ public class PropertyValueXmlEncoder
      * Our SAX parser. All calls to it must be synchronized to it.
      */
     protected final SAXParser theParser = createSaxParser();
+
+    /**
+     * The maximum number of instances kept in the pool of instances to decode with.
+     */
+    public static final int MAX_POOLED_DECODERS = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The instances to decode with that are currently not in use.
+     */
+    protected final ArrayList<PropertyValueXmlEncoder> theDecoderPool = new ArrayList<PropertyValueXmlEncoder>();
     
     /**
      * The error message prefix in case we need it.
@@ -21,6 +21,7 @@ import org.infogrid.model.primitives.BlobValue;
 import org.infogrid.model.primitives.BooleanValue;
 import org.infogrid.model.primitives.MeshTypeIdentifier;
 import org.infogrid.model.primitives.ProjectedPropertyType;
+import org.infogrid.model.primitives.PropertySlotLayout;
 import org.infogrid.model.primitives.PropertyType;
 import org.infogrid.model.primitives.PropertyTypeGroup;
 import org.infogrid.model.primitives.PropertyTypeOrGroup;
@@ -143,6 +144,21 @@ public abstract class MAttributableMeshType
         return allPropertyTypes;
     }
 
+    /**
+     * Obtain the PropertySlotLayout used by MeshObjects blessed with this AttributableMeshType
+     * to store their PropertyValues.
+     *
+     * @return the PropertySlotLayout
+     */
+    public final PropertySlotLayout getPropertySlotLayout()
+    {
+        PropertySlotLayout ret = thePropertySlotLayout;
+        if( ret == null ) {
+            ret = thePropertySlotLayout = PropertySlotLayout.create( this );
+        }
+        return ret;
+    }
+
     /**
      * Obtain the transitive closure of all local and inherited PropertyTypes of this
      * AttributableMeshType and its supertypes that are
@@ -877,8 +893,9 @@ public abstract class MAttributableMeshType
      */
     protected final void zeroCaches()
     {
-        allPropertyTypes = null;
-        allSupertypes    = null;
+        allPropertyTypes      = null;
+        allSupertypes         = null;
+        thePropertySlotLayout = null;
 
         for( int i=0 ; i<theSubtypes.length ; ++i ) {
             theSubtypes[i].zeroCaches();
@@ -931,6 +948,11 @@ public abstract class MAttributableMeshType
      */
     private transient AttributableMeshType [] allSupertypes = null;
 
+    /**
+     * This caches the PropertySlotLayout. This goes with method zeroCaches().
+     */
+    private transient volatile PropertySlotLayout thePropertySlotLayout = null;
+
     /**
       * The value of the IsAbstract property.
       */
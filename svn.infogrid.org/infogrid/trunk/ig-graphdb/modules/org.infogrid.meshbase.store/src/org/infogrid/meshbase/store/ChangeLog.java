@@ -0,0 +1,512 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.transaction.ChangeSet;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+import org.infogrid.model.primitives.externalized.binary.BinaryInput;
+import org.infogrid.model.primitives.externalized.binary.BinaryOutput;
+import org.infogrid.store.Store;
+import org.infogrid.store.StoreKeyDoesNotExistException;
+import org.infogrid.store.StoreValue;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>A sequential log of the ChangeSets of committed Transactions, kept in a Store. Each
+ *    ChangeSet is one StoreValue, keyed by its sequence number. Sequence numbers start at 1
+ *    and increase by one with each appended ChangeSet, so consumers such as replicas, search
+ *    indexers and caches can {@link #read read} the log from the last sequence number they
+ *    processed, instead of re-reading and comparing all MeshObjects.</p>
+ * <p>Consumers may record how far they got as a named checkpoint. Entries that all consumers
+ *    have processed can be removed with {@link #truncateBefore} or {@link #truncateToCheckpoints}.</p>
+ * <p>The Store should only be used by this ChangeLog; use a PrefixingStore to share a Store
+ *    with other data. When a ChangeLog is created on a Store that already contains entries,
+ *    it continues with the next sequence number.</p>
+ */
+public class ChangeLog
+{
+    private static final Log log = Log.getLogInstance( ChangeLog.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param store the Store in which to keep the ChangeLog
+     * @return the created ChangeLog
+     * @throws IOException thrown if the existing entries in the Store could not be determined
+     */
+    public static ChangeLog create(
+            Store store )
+        throws
+            IOException
+    {
+        return create( store, new ChangeLogEncoder() );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param store the Store in which to keep the ChangeLog
+     * @param encoder the encoder to use for the ChangeSets
+     * @return the created ChangeLog
+     * @throws IOException thrown if the existing entries in the Store could not be determined
+     */
+    public static ChangeLog create(
+            Store            store,
+            ChangeLogEncoder encoder )
+        throws
+            IOException
+    {
+        ChangeLog ret = new ChangeLog( store, encoder );
+        ret.recover();
+        return ret;
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param store the Store in which to keep the ChangeLog
+     * @param encoder the encoder to use for the ChangeSets
+     */
+    protected ChangeLog(
+            Store            store,
+            ChangeLogEncoder encoder )
+    {
+        theStore   = store;
+        theEncoder = encoder;
+    }
+
+    /**
+     * Determine the first and last sequence numbers from the entries in the Store.
+     * Entries are contiguous, so the last one can be found by probing with
+     * exponentially increasing steps, followed by a binary search.
+     *
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected synchronized void recover()
+        throws
+            IOException
+    {
+        long first = readLong( FIRST_KEY, 1L );
+
+        if( !exists( first )) {
+            theFirstSequenceNumber = first;
+            theLastSequenceNumber  = first - 1;
+            return;
+        }
+
+        long known = first; // exists
+        long step  = 1;
+        while( exists( known + step )) {
+            known += step;
+            step  *= 2;
+        }
+        long missing = known + step; // does not exist
+
+        while( missing - known > 1 ) {
+            long middle = known + ( missing - known ) / 2;
+            if( exists( middle )) {
+                known = middle;
+            } else {
+                missing = middle;
+            }
+        }
+        theFirstSequenceNumber = first;
+        theLastSequenceNumber  = known;
+
+        if( log.isDebugEnabled() ) {
+            log.debug( "Recovered " + this );
+        }
+    }
+
+    /**
+     * Append the ChangeSet of a committed Transaction.
+     *
+     * @param tx the committed Transaction
+     * @return the sequence number of the new entry
+     * @throws EncodingException thrown if the ChangeSet could not be encoded
+     * @throws IOException thrown if the entry could not be written
+     */
+    public long append(
+            Transaction tx )
+        throws
+            EncodingException,
+            IOException
+    {
+        byte [] data = theEncoder.encodeChangeSet( tx.getChangeSet() );
+        long    now  = System.currentTimeMillis();
+
+        synchronized( this ) {
+            long seq = theLastSequenceNumber + 1;
+
+            theStore.putOrUpdate( keyFor( seq ), theEncoder.getEncodingId(), now, now, now, -1L, data );
+
+            theLastSequenceNumber = seq;
+            notifyAll();
+
+            return seq;
+        }
+    }
+
+    /**
+     * Read entries from the ChangeLog.
+     *
+     * @param from the sequence number of the first entry to read. If this entry has been truncated already,
+     *        reading starts with the first entry that is still available
+     * @param max the maximum number of entries to read
+     * @param resolver the MeshBase against which the ChangeSets are resolved
+     * @return the entries, in sequence; empty if there are no entries at or after from
+     * @throws DecodingException thrown if an entry could not be decoded
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public ChangeLogEntry [] read(
+            long     from,
+            int      max,
+            MeshBase resolver )
+        throws
+            DecodingException,
+            IOException
+    {
+        long first;
+        long last;
+        synchronized( this ) {
+            first = Math.max( from, theFirstSequenceNumber );
+            last  = Math.min( theLastSequenceNumber, first + max - 1 );
+        }
+        if( last < first ) {
+            return new ChangeLogEntry[0];
+        }
+
+        String [] keys = new String[ (int) ( last - first + 1 ) ];
+        for( int i=0 ; i<keys.length ; ++i ) {
+            keys[i] = keyFor( first + i );
+        }
+        StoreValue [] values = theStore.getMultiple( keys );
+
+        ArrayList<ChangeLogEntry> ret = new ArrayList<ChangeLogEntry>( values.length );
+        for( int i=0 ; i<values.length ; ++i ) {
+            if( values[i] == null ) {
+                continue; // truncated in the meantime
+            }
+            ChangeSet changes = theEncoder.decodeChangeSet( values[i].getData(), resolver );
+            ret.add( new ChangeLogEntry( first + i, values[i].getTimeCreated(), changes ));
+        }
+        return ret.toArray( new ChangeLogEntry[ ret.size() ] );
+    }
+
+    /**
+     * Wait until an entry with this sequence number has been appended.
+     *
+     * @param seq the sequence number
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return true if the entry has been appended
+     * @throws InterruptedException thrown if the thread was interrupted while waiting
+     */
+    public synchronized boolean awaitSequenceNumber(
+            long seq,
+            long timeout )
+        throws
+            InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+        while( theLastSequenceNumber < seq ) {
+            long remaining = deadline - System.currentTimeMillis();
+            if( remaining <= 0 ) {
+                return false;
+            }
+            wait( remaining );
+        }
+        return true;
+    }
+
+    /**
+     * Obtain the sequence number of the first entry that has not been truncated.
+     *
+     * @return the sequence number. If the ChangeLog is empty, this is one more than the last sequence number
+     */
+    public synchronized long getFirstSequenceNumber()
+    {
+        return theFirstSequenceNumber;
+    }
+
+    /**
+     * Obtain the sequence number of the last appended entry.
+     *
+     * @return the sequence number, or 0 if no entry has ever been appended
+     */
+    public synchronized long getLastSequenceNumber()
+    {
+        return theLastSequenceNumber;
+    }
+
+    /**
+     * Record the sequence number of the last entry that a consumer has processed.
+     *
+     * @param name the name of the consumer
+     * @param seq the sequence number
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void setCheckpoint(
+            String name,
+            long   seq )
+        throws
+            IOException
+    {
+        writeLong( CHECKPOINT_KEY_PREFIX + name, seq );
+    }
+
+    /**
+     * Obtain the sequence number of the last entry that a consumer has processed.
+     *
+     * @param name the name of the consumer
+     * @return the sequence number, or 0 if the consumer has not recorded a checkpoint
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public long getCheckpoint(
+            String name )
+        throws
+            IOException
+    {
+        return readLong( CHECKPOINT_KEY_PREFIX + name, 0L );
+    }
+
+    /**
+     * Remove the checkpoint of a consumer.
+     *
+     * @param name the name of the consumer
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void removeCheckpoint(
+            String name )
+        throws
+            IOException
+    {
+        try {
+            theStore.delete( CHECKPOINT_KEY_PREFIX + name );
+        } catch( StoreKeyDoesNotExistException ex ) {
+            // that's fine
+        }
+    }
+
+    /**
+     * Remove all entries before this sequence number.
+     *
+     * @param seq the sequence number of the first entry to keep
+     * @return the number of removed entries
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public synchronized int truncateBefore(
+            long seq )
+        throws
+            IOException
+    {
+        seq = Math.min( seq, theLastSequenceNumber + 1 );
+        if( seq <= theFirstSequenceNumber ) {
+            return 0;
+        }
+        long oldFirst = theFirstSequenceNumber;
+
+        // written first, so entries left over by an interrupted truncation are ignored
+        writeLong( FIRST_KEY, seq );
+        theFirstSequenceNumber = seq;
+
+        int ret = 0;
+        for( long start = oldFirst ; start < seq ; start += TRUNCATE_BATCH_SIZE ) {
+            String [] keys = new String[ (int) Math.min( TRUNCATE_BATCH_SIZE, seq - start ) ];
+            for( int i=0 ; i<keys.length ; ++i ) {
+                keys[i] = keyFor( start + i );
+            }
+            theStore.deleteMultiple( keys );
+            ret += keys.length;
+        }
+        return ret;
+    }
+
+    /**
+     * Remove all entries that have been processed by all of these consumers.
+     *
+     * @param names the names of the consumers
+     * @return the number of removed entries
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public synchronized int truncateToCheckpoints(
+            String [] names )
+        throws
+            IOException
+    {
+        long min = theLastSequenceNumber;
+        for( String current : names ) {
+            min = Math.min( min, getCheckpoint( current ));
+        }
+        return truncateBefore( min + 1 );
+    }
+
+    /**
+     * Obtain the Store in which the ChangeLog is kept.
+     *
+     * @return the Store
+     */
+    public Store getStore()
+    {
+        return theStore;
+    }
+
+    /**
+     * Determine the key for the entry with this sequence number. Keys are zero-padded,
+     * so they sort in sequence.
+     *
+     * @param seq the sequence number
+     * @return the key
+     */
+    protected String keyFor(
+            long seq )
+    {
+        StringBuilder ret = new StringBuilder( ENTRY_KEY_PREFIX.length() + KEY_DIGITS );
+        ret.append( ENTRY_KEY_PREFIX );
+
+        String digits = String.valueOf( seq );
+        for( int i=digits.length() ; i<KEY_DIGITS ; ++i ) {
+            ret.append( '0' );
+        }
+        ret.append( digits );
+        return ret.toString();
+    }
+
+    /**
+     * Determine whether the entry with this sequence number exists in the Store.
+     *
+     * @param seq the sequence number
+     * @return true if it exists
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected boolean exists(
+            long seq )
+        throws
+            IOException
+    {
+        try {
+            theStore.get( keyFor( seq ));
+            return true;
+
+        } catch( StoreKeyDoesNotExistException ex ) {
+            return false;
+        }
+    }
+
+    /**
+     * Read a number kept in the Store.
+     *
+     * @param key the key
+     * @param defaultValue the value if there is none in the Store
+     * @return the value
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected long readLong(
+            String key,
+            long   defaultValue )
+        throws
+            IOException
+    {
+        try {
+            return BinaryInput.create( theStore.get( key ).getData() ).readSignedVarLong();
+
+        } catch( StoreKeyDoesNotExistException ex ) {
+            return defaultValue;
+
+        } catch( DecodingException ex ) {
+            throw new IOException( ex );
+        }
+    }
+
+    /**
+     * Write a number to the Store.
+     *
+     * @param key the key
+     * @param value the value
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void writeLong(
+            String key,
+            long   value )
+        throws
+            IOException
+    {
+        BinaryOutput buf = BinaryOutput.create();
+        buf.writeSignedVarLong( value );
+
+        long now = System.currentTimeMillis();
+        theStore.putOrUpdate( key, theEncoder.getEncodingId(), now, now, now, -1L, buf.toByteArray() );
+    }
+
+    /**
+     * Convert to String, for debugging.
+     *
+     * @return String
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return getClass().getName() + "{ first: " + theFirstSequenceNumber + ", last: " + theLastSequenceNumber + " }";
+    }
+
+    /**
+     * The Store in which the ChangeLog is kept.
+     */
+    protected final Store theStore;
+
+    /**
+     * Encodes and decodes the ChangeSets.
+     */
+    protected final ChangeLogEncoder theEncoder;
+
+    /**
+     * The sequence number of the first entry that has not been truncated.
+     */
+    protected long theFirstSequenceNumber;
+
+    /**
+     * The sequence number of the last appended entry.
+     */
+    protected long theLastSequenceNumber;
+
+    /**
+     * Prefix of the keys of the entries.
+     */
+    public static final String ENTRY_KEY_PREFIX = "entry-";
+
+    /**
+     * Prefix of the keys of the checkpoints.
+     */
+    public static final String CHECKPOINT_KEY_PREFIX = "checkpoint-";
+
+    /**
+     * Key of the sequence number of the first entry that has not been truncated.
+     */
+    public static final String FIRST_KEY = "first";
+
+    /**
+     * Number of digits in the keys of the entries.
+     */
+    protected static final int KEY_DIGITS = 19;
+
+    /**
+     * Number of entries removed from the Store at a time when truncating.
+     */
+    protected static final int TRUNCATE_BATCH_SIZE = 256;
+}
@@ -0,0 +1,576 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.externalized.ExternalizedMeshObject;
+import org.infogrid.mesh.externalized.binary.ExternalizedMeshObjectBinaryEncoder;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.transaction.AbstractMeshObjectNeighborChangeEvent;
+import org.infogrid.meshbase.transaction.AbstractMeshObjectRoleChangeEvent;
+import org.infogrid.meshbase.transaction.AbstractMeshObjectTypeChangeEvent;
+import org.infogrid.meshbase.transaction.Change;
+import org.infogrid.meshbase.transaction.ChangeSet;
+import org.infogrid.meshbase.transaction.MeshObjectBecameDeadStateEvent;
+import org.infogrid.meshbase.transaction.MeshObjectCreatedEvent;
+import org.infogrid.meshbase.transaction.MeshObjectDeletedEvent;
+import org.infogrid.meshbase.transaction.MeshObjectNeighborAddedEvent;
+import org.infogrid.meshbase.transaction.MeshObjectNeighborRemovedEvent;
+import org.infogrid.meshbase.transaction.MeshObjectPropertyChangeEvent;
+import org.infogrid.meshbase.transaction.MeshObjectRoleAddedEvent;
+import org.infogrid.meshbase.transaction.MeshObjectRoleRemovedEvent;
+import org.infogrid.meshbase.transaction.MeshObjectTypeAddedEvent;
+import org.infogrid.meshbase.transaction.MeshObjectTypeRemovedEvent;
+import org.infogrid.model.primitives.DataType;
+import org.infogrid.model.primitives.EnumeratedDataType;
+import org.infogrid.model.primitives.EnumeratedValue;
+import org.infogrid.model.primitives.MeshTypeIdentifier;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.UnknownEnumeratedValueException;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+import org.infogrid.model.primitives.externalized.binary.BinaryInput;
+import org.infogrid.model.primitives.externalized.binary.BinaryOutput;
+import org.infogrid.modelbase.MeshTypeWithIdentifierNotFoundException;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Encodes the ChangeSet of a committed Transaction for the {@link ChangeLog}, and decodes it again.</p>
+ * <p>Each Change is written as a one-byte tag followed by its identifiers and values. Created and
+ *    deleted MeshObjects are written in the binary ExternalizedMeshObject encoding. Identifiers of
+ *    MeshObjects and MeshTypes are written only the first time they occur in a ChangeSet, and
+ *    by index afterwards, because the same few identifiers tend to occur over and over.</p>
+ * <p>Changes to equivalents are not encoded; StoreMeshBase does not store them either.</p>
+ */
+public class ChangeLogEncoder
+        extends
+            ExternalizedMeshObjectBinaryEncoder
+{
+    private static final Log log = Log.getLogInstance( ChangeLogEncoder.class ); // our own, private logger
+
+    /**
+     * Constructor.
+     */
+    public ChangeLogEncoder()
+    {
+        // no op
+    }
+
+    /**
+     * Encode a ChangeSet.
+     *
+     * @param changes the ChangeSet
+     * @return the encoded ChangeSet
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    public byte [] encodeChangeSet(
+            ChangeSet changes )
+        throws
+            EncodingException
+    {
+        BinaryOutput            buf   = BinaryOutput.create();
+        HashMap<String,Integer> table = new HashMap<String,Integer>();
+
+        ArrayList<Change<?,?,?,?>> toEncode = new ArrayList<Change<?,?,?,?>>( changes.size() );
+        for( Change<?,?,?,?> current : changes ) {
+            if( current instanceof MeshObjectBecameDeadStateEvent ) {
+                continue; // implied by MeshObjectDeletedEvent
+            }
+            if( tagFor( current ) < 0 ) {
+                log.warn( "Cannot encode change, skipping: " + current );
+                continue;
+            }
+            toEncode.add( current );
+        }
+
+        buf.writeByte( FORMAT_VERSION );
+        buf.writeVarInt( toEncode.size() );
+
+        for( Change<?,?,?,?> current : toEncode ) {
+            int tag = tagFor( current );
+            buf.writeByte( tag );
+
+            switch( tag ) {
+                case CREATED_TAG: {
+                    MeshObjectCreatedEvent realCurrent = (MeshObjectCreatedEvent) current;
+                    appendExternalizedMeshObject( realCurrent.getExternalizedMeshObject(), buf );
+                    buf.writeSignedVarLong( realCurrent.getTimeEventOccurred() );
+                    break;
+                }
+                case DELETED_TAG: {
+                    MeshObjectDeletedEvent realCurrent = (MeshObjectDeletedEvent) current;
+                    appendExternalizedMeshObject( realCurrent.getExternalizedMeshObject(), buf );
+                    buf.writeSignedVarLong( realCurrent.getTimeEventOccurred() );
+                    break;
+                }
+                case PROPERTY_TAG: {
+                    MeshObjectPropertyChangeEvent realCurrent = (MeshObjectPropertyChangeEvent) current;
+                    writeReference( realCurrent.getSourceIdentifier().toExternalForm(),   table, buf );
+                    writeReference( realCurrent.getPropertyIdentifier().toExternalForm(), table, buf );
+                    appendPropertyValue( realCurrent.getOldValue(), buf );
+                    appendPropertyValue( realCurrent.getNewValue(), buf );
+                    buf.writeSignedVarLong( realCurrent.getTimeEventOccurred() );
+                    break;
+                }
+                case TYPE_ADDED_TAG:
+                case TYPE_REMOVED_TAG: {
+                    AbstractMeshObjectTypeChangeEvent realCurrent = (AbstractMeshObjectTypeChangeEvent) current;
+                    writeReference(  realCurrent.getSourceIdentifier().toExternalForm(), table, buf );
+                    writeReferences( realCurrent.getOldValueIdentifier(),   table, buf );
+                    writeReferences( realCurrent.getDeltaValueIdentifier(), table, buf );
+                    writeReferences( realCurrent.getNewValueIdentifier(),   table, buf );
+                    buf.writeSignedVarLong( realCurrent.getTimeEventOccurred() );
+                    break;
+                }
+                case ROLE_ADDED_TAG:
+                case ROLE_REMOVED_TAG: {
+                    AbstractMeshObjectRoleChangeEvent realCurrent = (AbstractMeshObjectRoleChangeEvent) current;
+                    writeReference(  realCurrent.getSourceIdentifier().toExternalForm(), table, buf );
+                    writeReferences( realCurrent.getOldValueIdentifier(),   table, buf );
+                    writeReferences( realCurrent.getDeltaValueIdentifier(), table, buf );
+                    writeReferences( realCurrent.getNewValueIdentifier(),   table, buf );
+                    writeReference(  realCurrent.getNeighborMeshObjectIdentifier().toExternalForm(), table, buf );
+                    buf.writeSignedVarLong( realCurrent.getTimeEventOccurred() );
+                    break;
+                }
+                case NEIGHBOR_ADDED_TAG:
+                case NEIGHBOR_REMOVED_TAG: {
+                    AbstractMeshObjectNeighborChangeEvent realCurrent = (AbstractMeshObjectNeighborChangeEvent) current;
+                    writeReference(  realCurrent.getSourceIdentifier().toExternalForm(), table, buf );
+                    if( tag == NEIGHBOR_ADDED_TAG ) {
+                        writeReferences( realCurrent.getAffectedRoleTypeIdentifiers(), table, buf );
+                    }
+                    writeReferences( realCurrent.getOldValueIdentifier(), table, buf );
+                    writeReference(  realCurrent.getNeighborMeshObjectIdentifier().toExternalForm(), table, buf );
+                    writeReferences( realCurrent.getNewValueIdentifier(), table, buf );
+                    buf.writeSignedVarLong( realCurrent.getTimeEventOccurred() );
+                    break;
+                }
+            }
+        }
+        return buf.toByteArray();
+    }
+
+    /**
+     * Decode a ChangeSet. The Changes are resolved against the provided MeshBase.
+     *
+     * @param data the encoded ChangeSet
+     * @param mb the MeshBase against which to resolve
+     * @return the decoded ChangeSet
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    public ChangeSet decodeChangeSet(
+            byte []  data,
+            MeshBase mb )
+        throws
+            DecodingException
+    {
+        BinaryInput       in    = BinaryInput.create( data );
+        ArrayList<String> table = new ArrayList<String>();
+
+        int version = in.readByte();
+        if( version != FORMAT_VERSION ) {
+            throw new DecodingException( "Unsupported change log format version " + version + ", expected " + FORMAT_VERSION );
+        }
+
+        ChangeSet ret = ChangeSet.create();
+        int       n   = in.readVarInt();
+
+        for( int i=0 ; i<n ; ++i ) {
+            int             tag = in.readByte();
+            Change<?,?,?,?> change;
+
+            switch( tag ) {
+                case CREATED_TAG:
+                    change = new MeshObjectCreatedEvent(
+                            mb,
+                            mb.getIdentifier(),
+                            readExternalizedMeshObject( in, mb ),
+                            in.readSignedVarLong() );
+                    break;
+
+                case DELETED_TAG: {
+                    ExternalizedMeshObject externalized = readExternalizedMeshObject( in, mb );
+                    change = new MeshObjectDeletedEvent(
+                            mb,
+                            mb.getIdentifier(),
+                            null,
+                            externalized.getIdentifier(),
+                            externalized,
+                            in.readSignedVarLong() );
+                    break;
+                }
+                case PROPERTY_TAG: {
+                    MeshObjectIdentifier source       = readMeshObjectReference( in, table, mb );
+                    MeshTypeIdentifier   propertyType = readMeshTypeReference( in, table, mb );
+                    PropertyValue        oldValue     = patch( readPropertyValue( in ), propertyType, mb );
+                    PropertyValue        newValue     = patch( readPropertyValue( in ), propertyType, mb );
+
+                    change = new MeshObjectPropertyChangeEvent(
+                            source,
+                            propertyType,
+                            oldValue,
+                            newValue,
+                            in.readSignedVarLong(),
+                            mb );
+                    break;
+                }
+                case TYPE_ADDED_TAG:
+                case TYPE_REMOVED_TAG: {
+                    MeshObjectIdentifier  source   = readMeshObjectReference( in, table, mb );
+                    MeshTypeIdentifier [] oldTypes = readMeshTypeReferences( in, table, mb );
+                    MeshTypeIdentifier [] delta    = readMeshTypeReferences( in, table, mb );
+                    MeshTypeIdentifier [] newTypes = readMeshTypeReferences( in, table, mb );
+                    long                  time     = in.readSignedVarLong();
+
+                    if( tag == TYPE_ADDED_TAG ) {
+                        change = new MeshObjectTypeAddedEvent( source, oldTypes, delta, newTypes, time, mb );
+                    } else {
+                        change = new MeshObjectTypeRemovedEvent( source, oldTypes, delta, newTypes, time, mb );
+                    }
+                    break;
+                }
+                case ROLE_ADDED_TAG:
+                case ROLE_REMOVED_TAG: {
+                    MeshObjectIdentifier  source   = readMeshObjectReference( in, table, mb );
+                    MeshTypeIdentifier [] oldTypes = readMeshTypeReferences( in, table, mb );
+                    MeshTypeIdentifier [] delta    = readMeshTypeReferences( in, table, mb );
+                    MeshTypeIdentifier [] newTypes = readMeshTypeReferences( in, table, mb );
+                    MeshObjectIdentifier  neighbor = readMeshObjectReference( in, table, mb );
+                    long                  time     = in.readSignedVarLong();
+
+                    if( tag == ROLE_ADDED_TAG ) {
+                        change = new MeshObjectRoleAddedEvent( source, oldTypes, delta, newTypes, neighbor, time, mb );
+                    } else {
+                        change = new MeshObjectRoleRemovedEvent( source, oldTypes, delta, newTypes, neighbor, time, mb );
+                    }
+                    break;
+                }
+                case NEIGHBOR_ADDED_TAG: {
+                    MeshObjectIdentifier    source       = readMeshObjectReference( in, table, mb );
+                    MeshTypeIdentifier []   roleTypes    = readMeshTypeReferences( in, table, mb );
+                    MeshObjectIdentifier [] oldNeighbors = readMeshObjectReferences( in, table, mb );
+                    MeshObjectIdentifier    neighbor     = readMeshObjectReference( in, table, mb );
+                    MeshObjectIdentifier [] newNeighbors = readMeshObjectReferences( in, table, mb );
+
+                    change = new MeshObjectNeighborAddedEvent( source, roleTypes, oldNeighbors, neighbor, newNeighbors, in.readSignedVarLong(), mb );
+                    break;
+                }
+                case NEIGHBOR_REMOVED_TAG: {
+                    MeshObjectIdentifier    source       = readMeshObjectReference( in, table, mb );
+                    MeshObjectIdentifier [] oldNeighbors = readMeshObjectReferences( in, table, mb );
+                    MeshObjectIdentifier    neighbor     = readMeshObjectReference( in, table, mb );
+                    MeshObjectIdentifier [] newNeighbors = readMeshObjectReferences( in, table, mb );
+
+                    change = new MeshObjectNeighborRemovedEvent( source, oldNeighbors, neighbor, newNeighbors, in.readSignedVarLong(), mb );
+                    break;
+                }
+                default:
+                    throw new DecodingException( "Unknown change tag " + tag );
+            }
+            ret.addChange( change );
+        }
+        ret.freeze();
+
+        return ret;
+    }
+
+    /**
+     * Determine the tag for a Change.
+     *
+     * @param change the Change
+     * @return the tag, or -1 if this Change cannot be encoded
+     */
+    protected int tagFor(
+            Change<?,?,?,?> change )
+    {
+        if( change instanceof MeshObjectCreatedEvent ) {
+            return CREATED_TAG;
+        } else if( change instanceof MeshObjectDeletedEvent ) {
+            return DELETED_TAG;
+        } else if( change instanceof MeshObjectPropertyChangeEvent ) {
+            return PROPERTY_TAG;
+        } else if( change instanceof MeshObjectTypeAddedEvent ) {
+            return TYPE_ADDED_TAG;
+        } else if( change instanceof MeshObjectTypeRemovedEvent ) {
+            return TYPE_REMOVED_TAG;
+        } else if( change instanceof MeshObjectRoleAddedEvent ) {
+            return ROLE_ADDED_TAG;
+        } else if( change instanceof MeshObjectRoleRemovedEvent ) {
+            return ROLE_REMOVED_TAG;
+        } else if( change instanceof MeshObjectNeighborAddedEvent ) {
+            return NEIGHBOR_ADDED_TAG;
+        } else if( change instanceof MeshObjectNeighborRemovedEvent ) {
+            return NEIGHBOR_REMOVED_TAG;
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Write an identifier, or its index if it has been written before.
+     *
+     * @param externalForm external form of the identifier
+     * @param table the identifiers written so far, and their indices
+     * @param buf the BinaryOutput to write to
+     */
+    protected void writeReference(
+            String                  externalForm,
+            HashMap<String,Integer> table,
+            BinaryOutput            buf )
+    {
+        Integer found = table.get( externalForm );
+        if( found != null ) {
+            buf.writeVarInt( found );
+        } else {
+            int index = table.size();
+            table.put( externalForm, index );
+            buf.writeVarInt( index );
+            buf.writeString( externalForm );
+        }
+    }
+
+    /**
+     * Write an array of identifiers.
+     *
+     * @param identifiers the identifiers, may be null
+     * @param table the identifiers written so far, and their indices
+     * @param buf the BinaryOutput to write to
+     */
+    protected void writeReferences(
+            Object []               identifiers,
+            HashMap<String,Integer> table,
+            BinaryOutput            buf )
+    {
+        if( identifiers == null ) {
+            buf.writeVarInt( 0 );
+            return;
+        }
+        buf.writeVarInt( identifiers.length );
+        for( int i=0 ; i<identifiers.length ; ++i ) {
+            String externalForm;
+            if( identifiers[i] instanceof MeshObjectIdentifier ) {
+                externalForm = ((MeshObjectIdentifier) identifiers[i]).toExternalForm();
+            } else {
+                externalForm = ((MeshTypeIdentifier) identifiers[i]).toExternalForm();
+            }
+            writeReference( externalForm, table, buf );
+        }
+    }
+
+    /**
+     * Read an identifier written by writeReference.
+     *
+     * @param in the BinaryInput
+     * @param table the identifiers read so far
+     * @return the external form of the identifier
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected String readReference(
+            BinaryInput       in,
+            ArrayList<String> table )
+        throws
+            DecodingException
+    {
+        int index = in.readVarInt();
+        if( index < table.size() ) {
+            return table.get( index );
+        }
+        if( index > table.size() ) {
+            throw new DecodingException( "Invalid reference " + index + ", have " + table.size() );
+        }
+        String ret = in.readString();
+        table.add( ret );
+        return ret;
+    }
+
+    /**
+     * Read a MeshObjectIdentifier written by writeReference.
+     *
+     * @param in the BinaryInput
+     * @param table the identifiers read so far
+     * @param mb the MeshBase against which to resolve
+     * @return the MeshObjectIdentifier
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected MeshObjectIdentifier readMeshObjectReference(
+            BinaryInput       in,
+            ArrayList<String> table,
+            MeshBase          mb )
+        throws
+            DecodingException
+    {
+        String externalForm = readReference( in, table );
+        try {
+            return mb.getMeshObjectIdentifierFactory().guessFromExternalForm( externalForm );
+
+        } catch( ParseException ex ) {
+            throw new DecodingException( ex );
+        }
+    }
+
+    /**
+     * Read an array of MeshObjectIdentifiers written by writeReferences.
+     *
+     * @param in the BinaryInput
+     * @param table the identifiers read so far
+     * @param mb the MeshBase against which to resolve
+     * @return the MeshObjectIdentifiers
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected MeshObjectIdentifier [] readMeshObjectReferences(
+            BinaryInput       in,
+            ArrayList<String> table,
+            MeshBase          mb )
+        throws
+            DecodingException
+    {
+        MeshObjectIdentifier [] ret = new MeshObjectIdentifier[ in.readVarInt() ];
+        for( int i=0 ; i<ret.length ; ++i ) {
+            ret[i] = readMeshObjectReference( in, table, mb );
+        }
+        return ret;
+    }
+
+    /**
+     * Read a MeshTypeIdentifier written by writeReference.
+     *
+     * @param in the BinaryInput
+     * @param table the identifiers read so far
+     * @param mb the MeshBase whose ModelBase to use
+     * @return the MeshTypeIdentifier
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected MeshTypeIdentifier readMeshTypeReference(
+            BinaryInput       in,
+            ArrayList<String> table,
+            MeshBase          mb )
+        throws
+            DecodingException
+    {
+        return mb.getModelBase().getMeshTypeIdentifierFactory().fromExternalForm( readReference( in, table ));
+    }
+
+    /**
+     * Read an array of MeshTypeIdentifiers written by writeReferences.
+     *
+     * @param in the BinaryInput
+     * @param table the identifiers read so far
+     * @param mb the MeshBase whose ModelBase to use
+     * @return the MeshTypeIdentifiers
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected MeshTypeIdentifier [] readMeshTypeReferences(
+            BinaryInput       in,
+            ArrayList<String> table,
+            MeshBase          mb )
+        throws
+            DecodingException
+    {
+        MeshTypeIdentifier [] ret = new MeshTypeIdentifier[ in.readVarInt() ];
+        for( int i=0 ; i<ret.length ; ++i ) {
+            ret[i] = readMeshTypeReference( in, table, mb );
+        }
+        return ret;
+    }
+
+    /**
+     * EnumeratedValues are decoded without their DataType; look it up from the PropertyType.
+     *
+     * @param value the decoded PropertyValue
+     * @param propertyTypeIdentifier identifies the PropertyType
+     * @param mb the MeshBase whose ModelBase to use
+     * @return the PropertyValue, with the correct DataType
+     * @throws DecodingException thrown if the PropertyType or the EnumeratedValue is not known any more
+     */
+    protected PropertyValue patch(
+            PropertyValue      value,
+            MeshTypeIdentifier propertyTypeIdentifier,
+            MeshBase           mb )
+        throws
+            DecodingException
+    {
+        if( !( value instanceof EnumeratedValue )) {
+            return value;
+        }
+        try {
+            DataType type = mb.getModelBase().findPropertyTypeByIdentifier( propertyTypeIdentifier ).getDataType();
+
+            if( type instanceof EnumeratedDataType ) {
+                return ((EnumeratedDataType) type).select( ((EnumeratedValue) value).value() );
+            }
+            return value;
+
+        } catch( MeshTypeWithIdentifierNotFoundException ex ) {
+            throw new DecodingException( ex );
+
+        } catch( UnknownEnumeratedValueException ex ) {
+            throw new DecodingException( ex );
+        }
+    }
+
+    /**
+     * The version of the change log format.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Tag for MeshObjectCreatedEvent.
+     */
+    protected static final int CREATED_TAG = 1;
+
+    /**
+     * Tag for MeshObjectDeletedEvent.
+     */
+    protected static final int DELETED_TAG = 2;
+
+    /**
+     * Tag for MeshObjectPropertyChangeEvent.
+     */
+    protected static final int PROPERTY_TAG = 3;
+
+    /**
+     * Tag for MeshObjectTypeAddedEvent.
+     */
+    protected static final int TYPE_ADDED_TAG = 4;
+
+    /**
+     * Tag for MeshObjectTypeRemovedEvent.
+     */
+    protected static final int TYPE_REMOVED_TAG = 5;
+
+    /**
+     * Tag for MeshObjectRoleAddedEvent.
+     */
+    protected static final int ROLE_ADDED_TAG = 6;
+
+    /**
+     * Tag for MeshObjectRoleRemovedEvent.
+     */
+    protected static final int ROLE_REMOVED_TAG = 7;
+
+    /**
+     * Tag for MeshObjectNeighborAddedEvent.
+     */
+    protected static final int NEIGHBOR_ADDED_TAG = 8;
+
+    /**
+     * Tag for MeshObjectNeighborRemovedEvent.
+     */
+    protected static final int NEIGHBOR_REMOVED_TAG = 9;
+}
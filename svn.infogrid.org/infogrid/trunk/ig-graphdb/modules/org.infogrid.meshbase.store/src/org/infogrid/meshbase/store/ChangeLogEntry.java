@@ -0,0 +1,96 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store;
+
+import org.infogrid.meshbase.transaction.ChangeSet;
+
+/**
+ * One entry read from a {@link ChangeLog}: the ChangeSet of one committed Transaction.
+ */
+public class ChangeLogEntry
+{
+    /**
+     * Constructor.
+     *
+     * @param sequenceNumber the sequence number of the entry in the ChangeLog
+     * @param timeCommitted the time the Transaction was committed, in System.currentTimeMillis() format
+     * @param changes the ChangeSet of the Transaction
+     */
+    public ChangeLogEntry(
+            long      sequenceNumber,
+            long      timeCommitted,
+            ChangeSet changes )
+    {
+        theSequenceNumber = sequenceNumber;
+        theTimeCommitted  = timeCommitted;
+        theChangeSet      = changes;
+    }
+
+    /**
+     * Obtain the sequence number of the entry in the ChangeLog.
+     *
+     * @return the sequence number
+     */
+    public long getSequenceNumber()
+    {
+        return theSequenceNumber;
+    }
+
+    /**
+     * Obtain the time the Transaction was committed.
+     *
+     * @return the time, in System.currentTimeMillis() format
+     */
+    public long getTimeCommitted()
+    {
+        return theTimeCommitted;
+    }
+
+    /**
+     * Obtain the ChangeSet of the Transaction.
+     *
+     * @return the ChangeSet
+     */
+    public ChangeSet getChangeSet()
+    {
+        return theChangeSet;
+    }
+
+    /**
+     * Convert to String, for debugging.
+     *
+     * @return String
+     */
+    @Override
+    public String toString()
+    {
+        return getClass().getName() + "{ seq: " + theSequenceNumber + ", time: " + theTimeCommitted + ", changes: " + theChangeSet.size() + " }";
+    }
+
+    /**
+     * The sequence number of the entry.
+     */
+    protected long theSequenceNumber;
+
+    /**
+     * The time the Transaction was committed.
+     */
+    protected long theTimeCommitted;
+
+    /**
+     * The ChangeSet of the Transaction.
+     */
+    protected ChangeSet theChangeSet;
+}
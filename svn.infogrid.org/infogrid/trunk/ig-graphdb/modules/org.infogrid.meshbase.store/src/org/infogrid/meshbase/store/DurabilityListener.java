@@ -0,0 +1,49 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store;
+
+import java.io.IOException;
+import org.infogrid.meshbase.transaction.Transaction;
+
+/**
+ * Classes supporting this interface can be notified by a {@link GroupCommitter} when
+ * the changes made by committed Transactions have been written to the Store.
+ */
+public interface DurabilityListener
+{
+    /**
+     * The changes made by a Transaction have been written to the Store.
+     *
+     * @param committer the GroupCommitter that wrote the changes
+     * @param tx the Transaction
+     */
+    public void transactionDurable(
+            GroupCommitter committer,
+            Transaction    tx );
+
+    /**
+     * The changes made by a Transaction could not be written to the Store. The GroupCommitter
+     * will attempt to write them again with its next write; if that succeeds,
+     * {@link #transactionDurable} is invoked for the Transaction.
+     *
+     * @param committer the GroupCommitter that attempted to write the changes
+     * @param tx the Transaction
+     * @param cause the reason why the changes could not be written
+     */
+    public void transactionFailed(
+            GroupCommitter committer,
+            Transaction    tx,
+            IOException    cause );
+}
@@ -0,0 +1,612 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.store.Store;
+import org.infogrid.store.StoreValue;
+import org.infogrid.util.FlexibleListenerSet;
+import org.infogrid.util.Pair;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Collects the changes made by committed Transactions, and writes them to the Store
+ *    in groups. All changes collected since the last write are written with a single
+ *    invocation of {@link Store#putOrUpdateAndDeleteMultiple}, which is atomic if the Store
+ *    supports transactions. If the same key was changed by several Transactions,
+ *    only the most recent value is written.</p>
+ * <p>A write is performed when the number of collected keys reaches the maximum batch size,
+ *    or when the maximum flush delay has passed since the first change was collected,
+ *    whichever comes first. If no ScheduledExecutorService is given, or the maximum flush
+ *    delay is not positive, the write is performed right away by the committing thread; changes
+ *    from Transactions committed while a write is in progress are still grouped into the next write.</p>
+ * <p>Until written, the collected changes are visible through {@link #getMultiple}, so values that
+ *    have been swapped out of memory can be swapped back in correctly.</p>
+ * <p>{@link DurabilityListener}s are notified when the changes made by a Transaction have
+ *    been written. If a write fails, they are notified of the failure, and the changes and their
+ *    Transactions remain collected and will be written again with the next write; when that
+ *    succeeds, the DurabilityListeners are notified that the changes are durable after all.</p>
+ */
+public class GroupCommitter
+        implements
+            CanBeDumped
+{
+    private static final Log log = Log.getLogInstance( GroupCommitter.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param store the Store to write to
+     * @param exec the ScheduledExecutorService to schedule delayed writes, if any
+     * @param maxFlushDelay the maximum time, in milliseconds, that collected changes wait before they are written
+     * @param maxBatchSize the number of collected keys that causes a write right away
+     * @return the created GroupCommitter
+     */
+    public static GroupCommitter create(
+            Store                    store,
+            ScheduledExecutorService exec,
+            long                     maxFlushDelay,
+            int                      maxBatchSize )
+    {
+        return new GroupCommitter( store, exec, maxFlushDelay, maxBatchSize );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param store the Store to write to
+     * @param exec the ScheduledExecutorService to schedule delayed writes, if any
+     * @param maxFlushDelay the maximum time, in milliseconds, that collected changes wait before they are written
+     * @param maxBatchSize the number of collected keys that causes a write right away
+     */
+    protected GroupCommitter(
+            Store                    store,
+            ScheduledExecutorService exec,
+            long                     maxFlushDelay,
+            int                      maxBatchSize )
+    {
+        if( maxBatchSize <= 0 ) {
+            throw new IllegalArgumentException( "maxBatchSize must be positive: " + maxBatchSize );
+        }
+        theStore         = store;
+        theExecutor      = exec;
+        theMaxFlushDelay = maxFlushDelay;
+        theMaxBatchSize  = maxBatchSize;
+    }
+
+    /**
+     * Obtain the Store that this GroupCommitter writes to.
+     *
+     * @return the Store
+     */
+    public Store getStore()
+    {
+        return theStore;
+    }
+
+    /**
+     * Obtain the maximum time, in milliseconds, that collected changes wait before they are written.
+     *
+     * @return the maximum flush delay
+     */
+    public long getMaxFlushDelay()
+    {
+        return theMaxFlushDelay;
+    }
+
+    /**
+     * Obtain the number of collected keys that causes a write right away.
+     *
+     * @return the maximum batch size
+     */
+    public int getMaxBatchSize()
+    {
+        return theMaxBatchSize;
+    }
+
+    /**
+     * Collect the changes made by a committed Transaction.
+     *
+     * @param tx the Transaction, if any
+     * @param toSave the values to put or update
+     * @param toDelete the keys of the values to delete
+     */
+    public void enqueue(
+            Transaction   tx,
+            StoreValue [] toSave,
+            String []     toDelete )
+    {
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "enqueue", tx, toSave, toDelete );
+        }
+
+        boolean flushNow;
+        synchronized( this ) {
+            for( int i=0 ; i<toSave.length ; ++i ) {
+                if( thePending.containsKey( toSave[i].getKey() )) {
+                    ++theCoalescedCount;
+                }
+                thePending.put( toSave[i].getKey(), toSave[i] );
+            }
+            for( int i=0 ; i<toDelete.length ; ++i ) {
+                if( thePending.containsKey( toDelete[i] )) {
+                    ++theCoalescedCount;
+                }
+                thePending.put( toDelete[i], null );
+            }
+            if( tx != null ) {
+                thePendingTransactions.add( tx );
+            }
+            ++theTransactionCount;
+
+            flushNow =    theExecutor == null
+                       || theMaxFlushDelay <= 0
+                       || thePending.size() >= theMaxBatchSize;
+
+            if( !flushNow && theScheduledFlush == null ) {
+                theScheduledFlush = theExecutor.schedule( theFlushTask, theMaxFlushDelay, TimeUnit.MILLISECONDS );
+            }
+        }
+        if( flushNow ) {
+            flush();
+        }
+    }
+
+    /**
+     * Write all collected changes to the Store now. Returns when they have been written,
+     * or when writing them failed.
+     */
+    public void flush()
+    {
+        synchronized( theFlushLock ) {
+            Map<String,StoreValue> batch;
+            ArrayList<Transaction> transactions;
+            Set<String>            retriedDeletes;
+
+            synchronized( this ) {
+                if( theScheduledFlush != null ) {
+                    theScheduledFlush.cancel( false );
+                    theScheduledFlush = null;
+                }
+                if( thePending.isEmpty() && thePendingTransactions.isEmpty() ) {
+                    return;
+                }
+                batch          = thePending;
+                transactions   = thePendingTransactions;
+                retriedDeletes = theRetriedDeletes;
+
+                thePending             = new LinkedHashMap<String,StoreValue>();
+                thePendingTransactions = new ArrayList<Transaction>();
+                theRetriedDeletes      = new HashSet<String>();
+                theWriting             = batch;
+            }
+
+            IOException problem = null;
+            try {
+                write( batch, retriedDeletes );
+
+            } catch( IOException ex ) {
+                log.error( this + " failed to write " + batch.size() + " values", ex );
+                problem = ex;
+            }
+
+            synchronized( this ) {
+                theWriting = null;
+                ++theFlushCount;
+
+                if( problem == null ) {
+                    theWriteCount += batch.size();
+
+                } else {
+                    ++theFailedFlushCount;
+
+                    // keep what has not been superseded in the meantime, and try again next time. Keep the
+                    // earlier entries and Transactions in front of those collected during the failed write
+                    LinkedHashMap<String,StoreValue> pending = new LinkedHashMap<String,StoreValue>( batch );
+                    pending.putAll( thePending );
+
+                    for( Map.Entry<String,StoreValue> current : batch.entrySet() ) {
+                        if( current.getValue() == null ) {
+                            // with a Store that is not atomic, the deletion may have happened already
+                            theRetriedDeletes.add( current.getKey() );
+                        }
+                    }
+                    theRetriedDeletes.addAll( retriedDeletes );
+                    thePending = pending;
+
+                    ArrayList<Transaction> requeued = new ArrayList<Transaction>( transactions );
+                    requeued.addAll( thePendingTransactions );
+                    thePendingTransactions = requeued;
+
+                    if( !thePending.isEmpty() && theScheduledFlush == null && theExecutor != null && theMaxFlushDelay > 0 ) {
+                        theScheduledFlush = theExecutor.schedule( theFlushTask, theMaxFlushDelay, TimeUnit.MILLISECONDS );
+                    }
+                }
+            }
+
+            if( problem == null ) {
+                for( Transaction tx : transactions ) {
+                    theDurabilityListeners.fireEvent( new Pair<Transaction,IOException>( tx, null ), 0 );
+                }
+            } else {
+                for( Transaction tx : transactions ) {
+                    theDurabilityListeners.fireEvent( new Pair<Transaction,IOException>( tx, problem ), 1 );
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a batch of changes to the Store, as a single operation.
+     *
+     * @param batch the keys, mapped to the values to put or update, or to null if the value is to be deleted
+     * @param retriedDeletes the keys of the values to be deleted that were part of an earlier, failed write
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void write(
+            Map<String,StoreValue> batch,
+            Set<String>            retriedDeletes )
+        throws
+            IOException
+    {
+        ArrayList<StoreValue> toSave   = new ArrayList<StoreValue>( batch.size() );
+        ArrayList<String>     toDelete = new ArrayList<String>();
+
+        for( Map.Entry<String,StoreValue> current : batch.entrySet() ) {
+            if( current.getValue() != null ) {
+                toSave.add( current.getValue() );
+            } else {
+                toDelete.add( current.getKey() );
+            }
+        }
+        String []  keys    = toDelete.toArray( new String[ toDelete.size() ] );
+        boolean [] results = theStore.putOrUpdateAndDeleteMultiple( toSave.toArray( new StoreValue[ toSave.size() ] ), keys );
+
+        for( int i=0 ; i<keys.length ; ++i ) {
+            if( !results[ toSave.size() + i ] && !retriedDeletes.contains( keys[i] )) {
+                log.error( "Cannot delete from store, key does not exist: " + keys[i] );
+            }
+        }
+    }
+
+    /**
+     * Obtain several values, taking into account the changes that have been collected but not
+     * written yet.
+     *
+     * @param keys the keys
+     * @return the values, in the same sequence as the keys. If there is no value for a key, or the value
+     *         is going to be deleted, the corresponding entry is null
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public StoreValue [] getMultiple(
+            String [] keys )
+        throws
+            IOException
+    {
+        StoreValue [] ret     = new StoreValue[ keys.length ];
+        int []        indices = new int[ keys.length ];
+        int           count   = 0;
+
+        synchronized( this ) {
+            for( int i=0 ; i<keys.length ; ++i ) {
+                if( thePending.containsKey( keys[i] )) {
+                    ret[i] = thePending.get( keys[i] );
+
+                } else if( theWriting != null && theWriting.containsKey( keys[i] )) {
+                    ret[i] = theWriting.get( keys[i] );
+
+                } else {
+                    indices[ count++ ] = i;
+                }
+            }
+        }
+        if( count > 0 ) {
+            String [] storeKeys = new String[ count ];
+            for( int i=0 ; i<count ; ++i ) {
+                storeKeys[i] = keys[ indices[i] ];
+            }
+            StoreValue [] found = theStore.getMultiple( storeKeys );
+
+            for( int i=0 ; i<count ; ++i ) {
+                ret[ indices[i] ] = found[i];
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the number of keys whose changes have been collected but not written yet.
+     *
+     * @return the number of keys
+     */
+    public synchronized int getPendingCount()
+    {
+        return thePending.size() + ( theWriting != null ? theWriting.size() : 0 );
+    }
+
+    /**
+     * Obtain the number of Transactions whose changes have been collected so far.
+     *
+     * @return the number of Transactions
+     */
+    public synchronized long getTransactionCount()
+    {
+        return theTransactionCount;
+    }
+
+    /**
+     * Obtain the number of writes to the Store performed so far.
+     *
+     * @return the number of writes
+     */
+    public synchronized long getFlushCount()
+    {
+        return theFlushCount;
+    }
+
+    /**
+     * Obtain the number of writes to the Store that failed so far.
+     *
+     * @return the number of failed writes
+     */
+    public synchronized long getFailedFlushCount()
+    {
+        return theFailedFlushCount;
+    }
+
+    /**
+     * Obtain the number of values successfully put, updated or deleted so far.
+     *
+     * @return the number of values
+     */
+    public synchronized long getWriteCount()
+    {
+        return theWriteCount;
+    }
+
+    /**
+     * Obtain the number of changes that did not need to be written because a more
+     * recent change to the same key was collected before they were written.
+     *
+     * @return the number of changes
+     */
+    public synchronized long getCoalescedCount()
+    {
+        return theCoalescedCount;
+    }
+
+    /**
+      * Add a listener.
+      * This listener is added directly to the listener list, which prevents the
+      * listener from being garbage-collected before this Object is being garbage-collected.
+      *
+      * @param newListener the to-be-added listener
+      * @see #addSoftDurabilityListener
+      * @see #addWeakDurabilityListener
+      * @see #removeDurabilityListener
+      */
+    public void addDirectDurabilityListener(
+            DurabilityListener newListener )
+    {
+        theDurabilityListeners.addDirect( newListener );
+    }
+
+    /**
+      * Add a listener.
+      * This listener is added to the listener list using a <code>java.lang.ref.SoftReference</code>,
+      * which allows the listener to be garbage-collected before this Object is being garbage-collected
+      * according to the semantics of Java references.
+      *
+      * @param newListener the to-be-added listener
+      * @see #addDirectDurabilityListener
+      * @see #addWeakDurabilityListener
+      * @see #removeDurabilityListener
+      */
+    public void addSoftDurabilityListener(
+            DurabilityListener newListener )
+    {
+        theDurabilityListeners.addSoft( newListener );
+    }
+
+    /**
+      * Add a listener.
+      * This listener is added to the listener list using a <code>java.lang.ref.WeakReference</code>,
+      * which allows the listener to be garbage-collected before this Object is being garbage-collected
+      * according to the semantics of Java references.
+      *
+      * @param newListener the to-be-added listener
+      * @see #addDirectDurabilityListener
+      * @see #addSoftDurabilityListener
+      * @see #removeDurabilityListener
+      */
+    public void addWeakDurabilityListener(
+            DurabilityListener newListener )
+    {
+        theDurabilityListeners.addWeak( newListener );
+    }
+
+    /**
+      * Remove a listener.
+      * This method is the same regardless how the listener was subscribed to events.
+      *
+      * @param oldListener the to-be-removed listener
+      * @see #addDirectDurabilityListener
+      * @see #addSoftDurabilityListener
+      * @see #addWeakDurabilityListener
+      */
+    public void removeDurabilityListener(
+            DurabilityListener oldListener )
+    {
+        theDurabilityListeners.remove( oldListener );
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "store",
+                    "maxFlushDelay",
+                    "maxBatchSize",
+                    "pendingCount",
+                    "transactionCount",
+                    "flushCount",
+                    "failedFlushCount",
+                    "writeCount",
+                    "coalescedCount"
+                },
+                new Object[] {
+                    theStore,
+                    theMaxFlushDelay,
+                    theMaxBatchSize,
+                    getPendingCount(),
+                    getTransactionCount(),
+                    getFlushCount(),
+                    getFailedFlushCount(),
+                    getWriteCount(),
+                    getCoalescedCount()
+                });
+    }
+
+    /**
+     * The Store to write to.
+     */
+    protected Store theStore;
+
+    /**
+     * The ScheduledExecutorService to schedule delayed writes, if any.
+     */
+    protected ScheduledExecutorService theExecutor;
+
+    /**
+     * The maximum time, in milliseconds, that collected changes wait before they are written.
+     */
+    protected long theMaxFlushDelay;
+
+    /**
+     * The number of collected keys that causes a write right away.
+     */
+    protected int theMaxBatchSize;
+
+    /**
+     * The collected changes that have not been written yet, in sequence. A null value
+     * indicates that the value with this key is to be deleted.
+     */
+    protected LinkedHashMap<String,StoreValue> thePending = new LinkedHashMap<String,StoreValue>();
+
+    /**
+     * The Transactions whose changes have been collected but not written yet.
+     */
+    protected ArrayList<Transaction> thePendingTransactions = new ArrayList<Transaction>();
+
+    /**
+     * The keys of the values to be deleted that were part of a failed write, and have not been
+     * written since. Depending on the Store, they may have been deleted already.
+     */
+    protected HashSet<String> theRetriedDeletes = new HashSet<String>();
+
+    /**
+     * The changes currently being written, if any.
+     */
+    protected Map<String,StoreValue> theWriting;
+
+    /**
+     * The scheduled delayed write, if any.
+     */
+    protected ScheduledFuture<?> theScheduledFlush;
+
+    /**
+     * Makes sure only one write is performed at a time.
+     */
+    protected final Object theFlushLock = new Object();
+
+    /**
+     * Number of Transactions whose changes have been collected.
+     */
+    protected long theTransactionCount;
+
+    /**
+     * Number of writes to the Store performed.
+     */
+    protected long theFlushCount;
+
+    /**
+     * Number of writes to the Store that failed.
+     */
+    protected long theFailedFlushCount;
+
+    /**
+     * Number of values successfully put, updated or deleted.
+     */
+    protected long theWriteCount;
+
+    /**
+     * Number of changes that were superseded before they were written.
+     */
+    protected long theCoalescedCount;
+
+    /**
+     * The task that performs delayed writes.
+     */
+    protected final Runnable theFlushTask = new Runnable() {
+            public void run()
+            {
+                try {
+                    flush();
+                } catch( Throwable ex ) {
+                    log.error( ex );
+                }
+            }
+    };
+
+    /**
+     * The DurabilityListeners.
+     */
+    private FlexibleListenerSet<DurabilityListener,Pair<Transaction,IOException>,Integer> theDurabilityListeners
+            = new FlexibleListenerSet<DurabilityListener,Pair<Transaction,IOException>,Integer>() {
+                    protected void fireEventToListener(
+                            DurabilityListener              l,
+                            Pair<Transaction,IOException> e,
+                            Integer                         p )
+                    {
+                        switch( p.intValue() ) {
+                            case 0:
+                                l.transactionDurable( GroupCommitter.this, e.getName() );
+                                break;
+
+                            case 1:
+                                l.transactionFailed( GroupCommitter.this, e.getName(), e.getValue() );
+                                break;
+                        }
+                    }
+    };
+}
@@ -27,10 +27,12 @@ import org.infogrid.meshbase.MeshBaseIdentifier;
 import org.infogrid.meshbase.MeshObjectIdentifierFactory;
 import org.infogrid.meshbase.a.AMeshBaseLifecycleManager;
 import org.infogrid.meshbase.security.AccessManager;
+import org.infogrid.model.primitives.EntityType;
 import org.infogrid.modelbase.ModelBase;
 import org.infogrid.modelbase.m.MModelBase;
 import org.infogrid.store.IterableStore;
 import org.infogrid.util.CursorIterator;
+import org.infogrid.util.FilteringCursorIterator;
 import org.infogrid.util.context.Context;
 import org.infogrid.util.context.SimpleContext;
 import org.infogrid.util.logging.Log;
@@ -278,4 +280,27 @@ public class IterableStoreMeshBase
     {
         return new IterableMeshBaseDifferencer( this );
     }
+
+    /**
+     * Obtain a CursorIterator over all MeshObjects in this MeshBase that are blessed with
+     * an EntityType, or one of its subtypes, by iterating over the content of this MeshBase.
+     *
+     * @param type the EntityType
+     * @return the CursorIterator
+     */
+    @Override
+    protected CursorIterator<MeshObject> meshObjectsByTypeIteratorWithoutIndex(
+            final EntityType type )
+    {
+        return FilteringCursorIterator.create(
+                iterator(),
+                new FilteringCursorIterator.Filter<MeshObject>() {
+                    public boolean accept(
+                            MeshObject candidate )
+                    {
+                        return candidate.isBlessedBy( type, true );
+                    }
+                },
+                MeshObject.class );
+    }
 }
@@ -0,0 +1,66 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store;
+
+import org.infogrid.mesh.AbstractMeshObject;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.util.CacheWeigher;
+
+/**
+ * Estimates the memory used by a MeshObject, in bytes, so that the
+ * {@link org.infogrid.util.BoundedWorkingSet BoundedWorkingSet} of a StoreMeshBase
+ * can be bounded by memory use instead of by number of MeshObjects.
+ */
+public class MeshObjectWeigher
+        implements
+            CacheWeigher<MeshObjectIdentifier,MeshObject>
+{
+    /**
+     * Constructor, use singleton.
+     */
+    protected MeshObjectWeigher()
+    {
+        // nothing
+    }
+
+    /**
+     * Estimate the weight of this MeshObject.
+     *
+     * @param key the MeshObjectIdentifier of the MeshObject
+     * @param value the MeshObject
+     * @return the weight, in bytes
+     */
+    public int weigh(
+            MeshObjectIdentifier key,
+            MeshObject           value )
+    {
+        if( value instanceof AbstractMeshObject ) {
+            return ((AbstractMeshObject) value).estimateWeight();
+        } else {
+            return DEFAULT_WEIGHT;
+        }
+    }
+
+    /**
+     * Singleton instance.
+     */
+    public static final MeshObjectWeigher SINGLETON = new MeshObjectWeigher();
+
+    /**
+     * The weight assumed for MeshObjects that cannot estimate their own weight.
+     */
+    public static final int DEFAULT_WEIGHT = 512;
+}
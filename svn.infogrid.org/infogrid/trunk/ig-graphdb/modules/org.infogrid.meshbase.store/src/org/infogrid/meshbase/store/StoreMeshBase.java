@@ -14,6 +14,7 @@
 
 package org.infogrid.meshbase.store;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import org.infogrid.mesh.MeshObject;
@@ -36,10 +37,12 @@ import org.infogrid.meshbase.transaction.MeshObjectCreatedEvent;
 import org.infogrid.meshbase.transaction.MeshObjectDeletedEvent;
 import org.infogrid.meshbase.transaction.MeshObjectPropertyChangeEvent;
 import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.primitives.externalized.EncodingException;
 import org.infogrid.modelbase.ModelBase;
 import org.infogrid.modelbase.m.MModelBase;
 import org.infogrid.store.Store;
 import org.infogrid.store.util.StoreBackedSwappingHashMap;
+import org.infogrid.util.BoundedWorkingSet;
 import org.infogrid.util.context.Context;
 import org.infogrid.util.context.SimpleContext;
 import org.infogrid.util.logging.Log;
@@ -235,6 +238,94 @@ public class StoreMeshBase
     {
         return (StoreBackedSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache;
     }
+
+    /**
+     * Set the GroupCommitter through which the changes made by committed Transactions are
+     * written to the Store. If null, changes are written when each Transaction is committed.
+     *
+     * @param newValue the new GroupCommitter, or null
+     */
+    @SuppressWarnings(value={"unchecked"})
+    public void setGroupCommitter(
+            GroupCommitter newValue )
+    {
+        ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).setGroupCommitter( newValue );
+    }
+
+    /**
+     * Obtain the GroupCommitter through which the changes made by committed Transactions are
+     * written to the Store, if any.
+     *
+     * @return the GroupCommitter, or null
+     */
+    @SuppressWarnings(value={"unchecked"})
+    public GroupCommitter getGroupCommitter()
+    {
+        return ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).getGroupCommitter();
+    }
+
+    /**
+     * Set the BoundedWorkingSet that keeps the most valuable MeshObjects in memory. If null,
+     * MeshObjects are only held by WeakReferences, and may be swapped out whenever the
+     * garbage collector runs. Use {@link MeshObjectWeigher} to bound the working set by
+     * the estimated memory use of the MeshObjects.
+     *
+     * @param newValue the new BoundedWorkingSet, or null
+     */
+    @SuppressWarnings(value={"unchecked"})
+    public void setWorkingSet(
+            BoundedWorkingSet<MeshObjectIdentifier,MeshObject> newValue )
+    {
+        ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).setWorkingSet( newValue );
+    }
+
+    /**
+     * Obtain the BoundedWorkingSet that keeps the most valuable MeshObjects in memory, if any.
+     *
+     * @return the BoundedWorkingSet, or null
+     */
+    @SuppressWarnings(value={"unchecked"})
+    public BoundedWorkingSet<MeshObjectIdentifier,MeshObject> getWorkingSet()
+    {
+        return ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).getWorkingSet();
+    }
+
+    /**
+     * Set the ChangeLog to which the ChangeSet of each committed Transaction is appended,
+     * after the changed MeshObjects have been written to the Store.
+     *
+     * @param newValue the new ChangeLog, or null
+     */
+    public void setChangeLog(
+            ChangeLog newValue )
+    {
+        theChangeLog = newValue;
+    }
+
+    /**
+     * Obtain the ChangeLog to which the ChangeSet of each committed Transaction is appended, if any.
+     *
+     * @return the ChangeLog, or null
+     */
+    public ChangeLog getChangeLog()
+    {
+        return theChangeLog;
+    }
+
+    /**
+     * Write all changes that have been committed, but not written to the Store yet.
+     *
+     * @param isPermanent if true, this MeshBase will go away permanmently; if false, it may come alive again some time later
+     */
+    @Override
+    @SuppressWarnings(value={"unchecked"})
+    protected void internalDie(
+            boolean isPermanent )
+    {
+        super.internalDie( isPermanent );
+
+        ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).flushPendingWrites();
+    }
     
     /**
      * Update the cache when Transactions are committed.
@@ -250,14 +341,23 @@ public class StoreMeshBase
         Map<MeshObjectIdentifier,MeshObject>                          toWrite = determineObjectsToWriteFromTransaction( tx );
         StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject> map     = (StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache;
         
-        for( Map.Entry<MeshObjectIdentifier,MeshObject> current : toWrite.entrySet() ) {
-            if( current.getValue() != null ) {
-                map.saveValueToStorageUponCommit( current.getKey(), current.getValue() );
-            } else {
-                map.removeValueFromStorageUponCommit( current.getKey() );
+        map.saveValuesToStorageUponCommit( toWrite, tx );
+
+        ChangeLog changeLog = theChangeLog;
+        if( changeLog != null ) {
+            try {
+                changeLog.append( tx );
+
+            } catch( EncodingException ex ) {
+                log.error( ex );
+            } catch( IOException ex ) {
+                log.error( ex );
             }
         }
-        map.transactionDone();
+        if( !hasActiveTransactions() ) {
+            // other, concurrent Transactions may still have removed values pending
+            map.transactionDone();
+        }
     }
     
     /**
@@ -319,4 +419,9 @@ public class StoreMeshBase
         }
         return ret;
     }
+
+    /**
+     * The ChangeLog to which committed ChangeSets are appended, if any.
+     */
+    protected ChangeLog theChangeLog;
 }
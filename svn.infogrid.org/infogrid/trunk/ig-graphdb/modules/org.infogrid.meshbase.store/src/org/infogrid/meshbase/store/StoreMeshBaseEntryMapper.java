@@ -15,6 +15,7 @@
 package org.infogrid.meshbase.store;
 
 import org.infogrid.mesh.externalized.ExternalizedMeshObjectEncoder;
+import org.infogrid.mesh.externalized.binary.ExternalizedMeshObjectBinaryEncoder;
 import org.infogrid.mesh.externalized.xml.ExternalizedMeshObjectXmlEncoder;
 
 /**
@@ -61,9 +62,11 @@ public class StoreMeshBaseEntryMapper
     }
 
     /**
-     * The set of encoders / decoders currently known.
+     * The set of encoders / decoders currently known. The XML encoder remains, so
+     * StoreValues written before the binary encoder was introduced can still be decoded.
      */
     protected static final ExternalizedMeshObjectEncoder[] theEncoders = {
+            new ExternalizedMeshObjectBinaryEncoder(),
             new ExternalizedMeshObjectXmlEncoder()
     };
 
@@ -14,13 +14,21 @@
 
 package org.infogrid.meshbase.store;
 
+import java.io.IOException;
 import java.lang.ref.Reference;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.infogrid.meshbase.transaction.Transaction;
 import org.infogrid.store.IterableStore;
 import org.infogrid.store.IterableStoreCursor;
 import org.infogrid.store.Store;
 import org.infogrid.store.StoreEntryMapper;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.StoreValueEncodingException;
 import org.infogrid.store.util.IterableStoreBackedSwappingHashMap;
 import org.infogrid.store.util.StoreBackedSwappingHashMap;
 import org.infogrid.store.util.StoreBackedSwappingHashMapKeysIterator;
@@ -31,6 +39,7 @@ import org.infogrid.util.logging.Log;
 
 /**
  * Modifies StoredBasedSwappingHashMap to only write to storage upon commit of a Transaction.
+ * Optionally, the writes can be performed through a {@link GroupCommitter}.
  */
 public class StoreMeshBaseSwappingHashMap<K,V>
     extends
@@ -50,6 +59,41 @@ public class StoreMeshBaseSwappingHashMap<K,V>
     {
         super( DEFAULT_INITIAL_CAPACITY, mapper, store );
     }
+
+    /**
+     * Set the GroupCommitter through which changes are written to the Store. If null,
+     * changes are written to the Store directly when a Transaction is committed.
+     *
+     * @param newValue the new GroupCommitter, or null
+     */
+    public void setGroupCommitter(
+            GroupCommitter newValue )
+    {
+        if( theGroupCommitter != null && theGroupCommitter != newValue ) {
+            theGroupCommitter.flush();
+        }
+        theGroupCommitter = newValue;
+    }
+
+    /**
+     * Obtain the GroupCommitter through which changes are written to the Store, if any.
+     *
+     * @return the GroupCommitter, or null
+     */
+    public GroupCommitter getGroupCommitter()
+    {
+        return theGroupCommitter;
+    }
+
+    /**
+     * Write all changes that have been committed, but not written to the Store yet.
+     */
+    public void flushPendingWrites()
+    {
+        if( theGroupCommitter != null ) {
+            theGroupCommitter.flush();
+        }
+    }
     
     /**
      * Create the right kind of Reference.
@@ -73,15 +117,69 @@ public class StoreMeshBaseSwappingHashMap<K,V>
      * @return the value that was loaded, or null if none.
      */
     @Override
+    @SuppressWarnings(value={"unchecked"})
     protected V loadValueFromStorage(
             Object key )
     {
         if( theRemoved.contains( key )) {
             return null;
         }
+        if( theGroupCommitter != null ) {
+            // go through the GroupCommitter, which knows about values not written yet
+            K [] keys   = (K []) new Object[] { key };
+            V [] values = (V []) new Object[ 1 ];
+
+            super.loadValuesFromStorage( keys, values );
+            return values[0];
+        }
         return super.loadValueFromStorage( key );
     }
 
+    /**
+     * Do not load anything that has been removed.
+     *
+     * @param keys the keys
+     * @param values the values; only those entries that are null shall be loaded
+     */
+    @Override
+    protected void loadValuesFromStorage(
+            K [] keys,
+            V [] values )
+    {
+        if( theRemoved.isEmpty() ) {
+            super.loadValuesFromStorage( keys, values );
+            return;
+        }
+        V [] loaded = values.clone();
+        super.loadValuesFromStorage( keys, loaded );
+
+        for( int i=0 ; i<keys.length ; ++i ) {
+            if( values[i] == null && !theRemoved.contains( keys[i] )) {
+                values[i] = loaded[i];
+            }
+        }
+    }
+
+    /**
+     * Take into account the values that have been committed, but not written to the Store yet.
+     *
+     * @param stringKeys the keys
+     * @return the found values, in the same sequence as the keys, or null for keys that were not found
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    protected StoreValue [] getMultipleFromStore(
+            String [] stringKeys )
+        throws
+            IOException
+    {
+        if( theGroupCommitter != null ) {
+            return theGroupCommitter.getMultiple( stringKeys );
+        } else {
+            return super.getMultipleFromStore( stringKeys );
+        }
+    }
+
     /**
      * Don't do anything. Saving occurs only when a Transaction is committed.
      *
@@ -111,6 +209,12 @@ public class StoreMeshBaseSwappingHashMap<K,V>
         if( log.isTraceEnabled() ) {
             log.traceMethodCallEntry( this, "saveValueToStorageUponCommit", key, newValue );
         }
+        if( theGroupCommitter != null ) {
+            Map<K,V> changes = new HashMap<K,V>( 1 );
+            changes.put( key, newValue );
+            saveValuesToStorageUponCommit( changes );
+            return;
+        }
         super.saveValueToStorage( key, newValue );
         
         theRemoved.remove( key ); // happens if the object was created during the transaction.
@@ -131,6 +235,9 @@ public class StoreMeshBaseSwappingHashMap<K,V>
         }
 
         theDelegate.remove( key );
+        if( theWorkingSet != null ) {
+            theWorkingSet.remove( key );
+        }
         theRemoved.add( key );
     }
     
@@ -139,19 +246,110 @@ public class StoreMeshBaseSwappingHashMap<K,V>
      *
      * @param key the key whose value has been removed
      */
-
+    @SuppressWarnings(value={"unchecked"})
     public void removeValueFromStorageUponCommit(
             Object key )
     {
         if( log.isTraceEnabled() ) {
             log.traceMethodCallEntry( this, "removeValueFromStorageUponCommit", key );
         }
+        if( theGroupCommitter != null ) {
+            Map<K,V> changes = new HashMap<K,V>( 1 );
+            changes.put( (K) key, null );
+            saveValuesToStorageUponCommit( changes );
+            return;
+        }
     
         super.removeValueFromStorage( key );
         
         theRemoved.remove( key );
     }
     
+    /**
+     * Save and remove several values to and from storage at the same time. Invoked by
+     * Transaction commit. This writes and removes all values with a single invocation of
+     * {@link Store#putOrUpdateAndDeleteMultiple}.
+     *
+     * @param changes the keys whose values were updated, mapped to their new values, or to null if removed
+     */
+    public void saveValuesToStorageUponCommit(
+            Map<K,V> changes )
+    {
+        saveValuesToStorageUponCommit( changes, null );
+    }
+
+    /**
+     * Save and remove several values to and from storage at the same time. Invoked by
+     * Transaction commit. If a GroupCommitter has been set, the changes are handed to the
+     * GroupCommitter, which may write them together with the changes of other Transactions.
+     * Otherwise, this writes and removes all values with a single invocation of
+     * {@link Store#putOrUpdateAndDeleteMultiple}, which is atomic if the Store supports
+     * transactions.
+     *
+     * @param changes the keys whose values were updated, mapped to their new values, or to null if removed
+     * @param tx the Transaction that was committed, if any
+     */
+    public void saveValuesToStorageUponCommit(
+            Map<K,V>    changes,
+            Transaction tx )
+    {
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "saveValuesToStorageUponCommit", changes, tx );
+        }
+
+        ArrayList<StoreValue> toSave   = new ArrayList<StoreValue>( changes.size() );
+        ArrayList<String>     toRemove = new ArrayList<String>();
+
+        for( Map.Entry<K,V> current : changes.entrySet() ) {
+            K key      = current.getKey();
+            V newValue = current.getValue();
+
+            if( newValue != null ) {
+                try {
+                    toSave.add( new StoreValue(
+                            theMapper.keyToString( key ),
+                            theMapper.getPreferredEncodingId(),
+                            theMapper.getTimeCreated( newValue ),
+                            theMapper.getTimeUpdated( newValue ),
+                            theMapper.getTimeRead( newValue ),
+                            theMapper.getTimeExpires( newValue ),
+                            theMapper.asBytes( newValue )));
+
+                } catch( StoreValueEncodingException ex ) {
+                    log.error( ex );
+                }
+            } else {
+                toRemove.add( theMapper.keyToString( key ));
+            }
+            theRemoved.remove( key );
+        }
+
+        if( theGroupCommitter != null ) {
+            theGroupCommitter.enqueue(
+                    tx,
+                    toSave.toArray( new StoreValue[ toSave.size() ] ),
+                    toRemove.toArray( new String[ toRemove.size() ] ));
+            return;
+        }
+
+        if( toSave.isEmpty() && toRemove.isEmpty() ) {
+            return;
+        }
+        try {
+            String []  keys    = toRemove.toArray( new String[ toRemove.size() ] );
+            boolean [] results = theStore.putOrUpdateAndDeleteMultiple( toSave.toArray( new StoreValue[ toSave.size() ] ), keys );
+
+            for( int i=0 ; i<keys.length ; ++i ) {
+                if( !results[ toSave.size() + i ] ) {
+                    log.error( "Cannot delete from store, key does not exist: " + keys[i] );
+                }
+            }
+
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+    }
+
     /**
      * Returns a set view of the keys contained in this map.
      *
@@ -161,6 +359,7 @@ public class StoreMeshBaseSwappingHashMap<K,V>
     public Set<K> keySet()
     {
         cleanup();
+        flushPendingWrites();
 
         if( theKeySet == null ) {
             theKeySet = new IterableStoreBackedSwappingHashMap.MyKeySet<K,V>( (IterableStore) theStore, theMapper );
@@ -180,6 +379,8 @@ public class StoreMeshBaseSwappingHashMap<K,V>
             Class<K> keyArrayComponentType,
             Class<V> valueArrayComponentType )
     {
+        flushPendingWrites();
+
         IterableStoreCursor delegate = ((IterableStore)theStore).iterator();
         
         CursorIterator<K> ret = new StoreBackedSwappingHashMapKeysIterator<K,V>( delegate, this, theMapper, keyArrayComponentType );
@@ -198,6 +399,8 @@ public class StoreMeshBaseSwappingHashMap<K,V>
             Class<K> keyArrayComponentType,
             Class<V> valueArrayComponentType )
     {
+        flushPendingWrites();
+
         IterableStoreCursor delegate = ((IterableStore)theStore).iterator();
         
         CursorIterator<V> ret = new StoreBackedSwappingHashMapValuesIterator<K,V>( delegate, this, theMapper, keyArrayComponentType, valueArrayComponentType );
@@ -207,7 +410,7 @@ public class StoreMeshBaseSwappingHashMap<K,V>
     /**
      * The transaction is done. Whatever is still in theRemoved is a programming error.
      */
-    public void transactionDone()
+    public synchronized void transactionDone()
     {
         if( !theRemoved.isEmpty() ) {
             log.error( "theRemoved not empty", theRemoved );
@@ -222,7 +425,12 @@ public class StoreMeshBaseSwappingHashMap<K,V>
     
     /**
      * Keep track of MeshObjects that were removed during a Transaction, to avoid recreating them from the storage
-     * although they were deleted during a transaction.
+     * although they were deleted during a transaction. This is read without locking when values are loaded.
+     */
+    protected Set<Object> theRemoved = Collections.newSetFromMap( new ConcurrentHashMap<Object,Boolean>() );
+
+    /**
+     * The GroupCommitter through which changes are written to the Store, if any.
      */
-    protected HashSet<Object> theRemoved = new HashSet<Object>();
+    protected GroupCommitter theGroupCommitter;
 }
@@ -0,0 +1,554 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2010 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.IterableMeshBase;
+import org.infogrid.meshbase.MeshObjectIdentifierFactory;
+import org.infogrid.meshbase.index.AbstractPropertyValueIndex;
+import org.infogrid.meshbase.index.DefaultExtentIndex;
+import org.infogrid.meshbase.index.DefaultPropertyValueIndexer;
+import org.infogrid.model.primitives.DataType;
+import org.infogrid.model.primitives.EnumeratedDataType;
+import org.infogrid.model.primitives.EnumeratedValue;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.UnknownEnumeratedValueException;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+import org.infogrid.model.primitives.externalized.binary.BinaryInput;
+import org.infogrid.model.primitives.externalized.binary.BinaryOutput;
+import org.infogrid.model.primitives.externalized.binary.PropertyValueBinaryEncoder;
+import org.infogrid.store.IterableStore;
+import org.infogrid.store.IterableStoreCursor;
+import org.infogrid.store.Store;
+import org.infogrid.store.StoreKeyDoesNotExistException;
+import org.infogrid.store.StoreValue;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>A PropertyValueIndexer that persists its PropertyValueIndexes and ExtentIndexes in a
+ *    Store, so they do not need to be rebuilt by iterating over the entire MeshBase when
+ *    the MeshBase is restarted. Each indexed MeshObject is one StoreValue, whose key is
+ *    composed of the identifiers of the EntityType, the PropertyType and the MeshObject,
+ *    and whose data is the indexed value. Another StoreValue, keyed by the identifiers of
+ *    the EntityType and the PropertyType only, marks that the PropertyValueIndex is
+ *    complete. ExtentIndexes are persisted the same way, with an empty PropertyType
+ *    identifier and without data.</p>
+ * <p>The index Store should be separate from the Store holding the MeshObjects, and it must
+ *    be an IterableStore for existing PropertyValueIndexes to be loaded. Loading a
+ *    PropertyValueIndex iterates over the index Store. The index Store is updated when a
+ *    Transaction is committed, after the PropertyValueIndexes in memory have been updated.
+ *    Persisted PropertyValueIndexes are only correct if the StorePropertyValueIndexer has
+ *    been set on the MeshBase every time the MeshBase was modified.</p>
+ */
+public class StorePropertyValueIndexer
+        extends
+            DefaultPropertyValueIndexer
+{
+    private static final Log log = Log.getLogInstance( StorePropertyValueIndexer.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param mb the IterableMeshBase whose MeshObjects this PropertyValueIndexer indexes
+     * @param indexStore the Store in which the PropertyValueIndexes are persisted
+     * @return the created StorePropertyValueIndexer
+     */
+    public static StorePropertyValueIndexer create(
+            IterableMeshBase mb,
+            Store            indexStore )
+    {
+        return new StorePropertyValueIndexer( mb, indexStore );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param mb the IterableMeshBase whose MeshObjects this PropertyValueIndexer indexes
+     * @param indexStore the Store in which the PropertyValueIndexes are persisted
+     */
+    protected StorePropertyValueIndexer(
+            IterableMeshBase mb,
+            Store            indexStore )
+    {
+        super( mb );
+
+        theIndexStore = indexStore;
+    }
+
+    /**
+     * Obtain the Store in which the PropertyValueIndexes are persisted.
+     *
+     * @return the Store
+     */
+    public Store getIndexStore()
+    {
+        return theIndexStore;
+    }
+
+    /**
+     * Populate a newly created PropertyValueIndex from the index Store if it has been
+     * persisted before, or by iterating over the MeshBase otherwise.
+     *
+     * @param index the PropertyValueIndex
+     */
+    @Override
+    protected void populate(
+            AbstractPropertyValueIndex index )
+    {
+        if( loadIndex( index )) {
+            return;
+        }
+
+        super.populate( index );
+
+        String prefix = determineKeyPrefix( index );
+        long   now    = System.currentTimeMillis();
+        try {
+            theIndexStore.deleteAll( prefix + SEPARATOR ); // left over from an incomplete earlier attempt
+
+            ArrayList<StoreValue> toPut = new ArrayList<StoreValue>();
+            for( MeshObjectIdentifier current : index.getIndexedIdentifiers() ) {
+                toPut.add( createStoreValue( prefix, current, index.getIndexedValue( current ), now ));
+
+                if( toPut.size() >= WRITE_BATCH_SIZE ) {
+                    theIndexStore.putOrUpdateMultiple( toPut.toArray( new StoreValue[ toPut.size() ] ));
+                    toPut.clear();
+                }
+            }
+            if( !toPut.isEmpty() ) {
+                theIndexStore.putOrUpdateMultiple( toPut.toArray( new StoreValue[ toPut.size() ] ));
+            }
+
+            // written last, so an index that was not completely written is rebuilt next time
+            theIndexStore.putOrUpdate( prefix, ENCODING_ID, now, now, now, -1L, new byte[0] );
+
+        } catch( EncodingException ex ) {
+            log.error( ex );
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+    }
+
+    /**
+     * Attempt to load a PropertyValueIndex from the index Store.
+     *
+     * @param index the PropertyValueIndex
+     * @return true if the PropertyValueIndex was loaded
+     */
+    protected boolean loadIndex(
+            AbstractPropertyValueIndex index )
+    {
+        if( !( theIndexStore instanceof IterableStore )) {
+            return false;
+        }
+        String prefix = determineKeyPrefix( index );
+        try {
+            theIndexStore.get( prefix );
+
+        } catch( StoreKeyDoesNotExistException ex ) {
+            return false; // has not been persisted
+        } catch( IOException ex ) {
+            log.error( ex );
+            return false;
+        }
+
+        MeshObjectIdentifierFactory idFact      = theMeshBase.getMeshObjectIdentifierFactory();
+        String                      entryPrefix = prefix + SEPARATOR;
+
+        try {
+            IterableStoreCursor iter = ((IterableStore) theIndexStore).iterator();
+            while( iter.hasNext() ) {
+                StoreValue current = iter.next();
+                String     key     = current.getKey();
+
+                if( !key.startsWith( entryPrefix )) {
+                    continue;
+                }
+                MeshObjectIdentifier id    = idFact.fromExternalForm( key.substring( entryPrefix.length() ));
+                PropertyValue        value = decodeValue( index, current.getData() );
+
+                index.put( id, value );
+            }
+            return true;
+
+        } catch( ParseException ex ) {
+            log.error( ex );
+        } catch( DecodingException ex ) {
+            log.error( ex );
+        } catch( UnknownEnumeratedValueException ex ) {
+            log.error( ex );
+        }
+
+        // could not load all of it, start over
+        index.clear();
+        return false;
+    }
+
+    /**
+     * Write the changes to a PropertyValueIndex to the index Store.
+     *
+     * @param index the PropertyValueIndex
+     * @param changes the new values, keyed by the identifiers of the affected MeshObjects;
+     *        null values indicate MeshObjects that are not indexed any more
+     */
+    @Override
+    protected void indexChanged(
+            AbstractPropertyValueIndex              index,
+            Map<MeshObjectIdentifier,PropertyValue> changes )
+    {
+        String prefix = determineKeyPrefix( index );
+        long   now    = System.currentTimeMillis();
+
+        ArrayList<StoreValue> toPut    = new ArrayList<StoreValue>();
+        ArrayList<String>     toDelete = new ArrayList<String>();
+
+        try {
+            for( Map.Entry<MeshObjectIdentifier,PropertyValue> current : changes.entrySet() ) {
+                if( current.getValue() != null ) {
+                    toPut.add( createStoreValue( prefix, current.getKey(), current.getValue(), now ));
+                } else {
+                    toDelete.add( prefix + SEPARATOR + current.getKey().toExternalForm() );
+                }
+            }
+            if( !toPut.isEmpty() ) {
+                theIndexStore.putOrUpdateMultiple( toPut.toArray( new StoreValue[ toPut.size() ] ));
+            }
+            if( !toDelete.isEmpty() ) {
+                theIndexStore.deleteMultiple( toDelete.toArray( new String[ toDelete.size() ] ));
+            }
+
+        } catch( EncodingException ex ) {
+            log.error( ex );
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+    }
+
+    /**
+     * Remove a PropertyValueIndex that has been removed or replaced from the index Store.
+     *
+     * @param index the PropertyValueIndex
+     */
+    @Override
+    protected void indexRemoved(
+            AbstractPropertyValueIndex index )
+    {
+        String prefix = determineKeyPrefix( index );
+        try {
+            theIndexStore.delete( prefix );
+            theIndexStore.deleteAll( prefix + SEPARATOR );
+
+        } catch( StoreKeyDoesNotExistException ex ) {
+            // not persisted, that's fine
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+    }
+
+    /**
+     * Populate a newly created ExtentIndex from the index Store if it has been
+     * persisted before, or by iterating over the MeshBase otherwise.
+     *
+     * @param index the ExtentIndex
+     */
+    @Override
+    protected void populate(
+            DefaultExtentIndex index )
+    {
+        if( loadExtent( index )) {
+            return;
+        }
+
+        super.populate( index );
+
+        String prefix = determineKeyPrefix( index );
+        long   now    = System.currentTimeMillis();
+        try {
+            theIndexStore.deleteAll( prefix + SEPARATOR ); // left over from an incomplete earlier attempt
+
+            ArrayList<StoreValue> toPut = new ArrayList<StoreValue>();
+            for( MeshObjectIdentifier current : index.findIdentifiers() ) {
+                toPut.add( createStoreValue( prefix, current, now ));
+
+                if( toPut.size() >= WRITE_BATCH_SIZE ) {
+                    theIndexStore.putOrUpdateMultiple( toPut.toArray( new StoreValue[ toPut.size() ] ));
+                    toPut.clear();
+                }
+            }
+            if( !toPut.isEmpty() ) {
+                theIndexStore.putOrUpdateMultiple( toPut.toArray( new StoreValue[ toPut.size() ] ));
+            }
+
+            // written last, so an extent that was not completely written is rebuilt next time
+            theIndexStore.putOrUpdate( prefix, ENCODING_ID, now, now, now, -1L, new byte[0] );
+
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+    }
+
+    /**
+     * Attempt to load an ExtentIndex from the index Store.
+     *
+     * @param index the ExtentIndex
+     * @return true if the ExtentIndex was loaded
+     */
+    protected boolean loadExtent(
+            DefaultExtentIndex index )
+    {
+        if( !( theIndexStore instanceof IterableStore )) {
+            return false;
+        }
+        String prefix = determineKeyPrefix( index );
+        try {
+            theIndexStore.get( prefix );
+
+        } catch( StoreKeyDoesNotExistException ex ) {
+            return false; // has not been persisted
+        } catch( IOException ex ) {
+            log.error( ex );
+            return false;
+        }
+
+        MeshObjectIdentifierFactory idFact      = theMeshBase.getMeshObjectIdentifierFactory();
+        String                      entryPrefix = prefix + SEPARATOR;
+
+        try {
+            IterableStoreCursor iter = ((IterableStore) theIndexStore).iterator();
+            while( iter.hasNext() ) {
+                String key = iter.next().getKey();
+
+                if( key.startsWith( entryPrefix )) {
+                    index.put( idFact.fromExternalForm( key.substring( entryPrefix.length() )), true );
+                }
+            }
+            return true;
+
+        } catch( ParseException ex ) {
+            log.error( ex );
+        }
+
+        // could not load all of it, start over
+        index.clear();
+        return false;
+    }
+
+    /**
+     * Write the changes to an ExtentIndex to the index Store.
+     *
+     * @param index the ExtentIndex
+     * @param added the identifiers of the MeshObjects that were added to the extent
+     * @param removed the identifiers of the MeshObjects that were removed from the extent
+     */
+    @Override
+    protected void extentChanged(
+            DefaultExtentIndex        index,
+            Set<MeshObjectIdentifier> added,
+            Set<MeshObjectIdentifier> removed )
+    {
+        String prefix = determineKeyPrefix( index );
+        long   now    = System.currentTimeMillis();
+
+        try {
+            if( !added.isEmpty() ) {
+                StoreValue [] toPut = new StoreValue[ added.size() ];
+                int           i     = 0;
+                for( MeshObjectIdentifier current : added ) {
+                    toPut[i++] = createStoreValue( prefix, current, now );
+                }
+                theIndexStore.putOrUpdateMultiple( toPut );
+            }
+            if( !removed.isEmpty() ) {
+                String [] toDelete = new String[ removed.size() ];
+                int       i        = 0;
+                for( MeshObjectIdentifier current : removed ) {
+                    toDelete[i++] = prefix + SEPARATOR + current.toExternalForm();
+                }
+                theIndexStore.deleteMultiple( toDelete );
+            }
+
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+    }
+
+    /**
+     * Remove an ExtentIndex that has been removed from the index Store.
+     *
+     * @param index the ExtentIndex
+     */
+    @Override
+    protected void extentRemoved(
+            DefaultExtentIndex index )
+    {
+        String prefix = determineKeyPrefix( index );
+        try {
+            theIndexStore.delete( prefix );
+            theIndexStore.deleteAll( prefix + SEPARATOR );
+
+        } catch( StoreKeyDoesNotExistException ex ) {
+            // not persisted, that's fine
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+    }
+
+    /**
+     * Determine the key of the StoreValue that marks a PropertyValueIndex as complete.
+     * The keys of its entries start with this key, followed by the SEPARATOR.
+     *
+     * @param index the PropertyValueIndex
+     * @return the key
+     */
+    protected String determineKeyPrefix(
+            AbstractPropertyValueIndex index )
+    {
+        StringBuilder ret = new StringBuilder();
+        ret.append( index.getEntityType().getIdentifier().toExternalForm() );
+        ret.append( SEPARATOR );
+        ret.append( index.getPropertyType().getIdentifier().toExternalForm() );
+        return ret.toString();
+    }
+
+    /**
+     * Determine the key of the StoreValue that marks an ExtentIndex as complete.
+     * The keys of its members start with this key, followed by the SEPARATOR. Because
+     * the identifier of a PropertyType is never empty, these keys are distinct from those
+     * of the PropertyValueIndexes of the same EntityType.
+     *
+     * @param index the ExtentIndex
+     * @return the key
+     */
+    protected String determineKeyPrefix(
+            DefaultExtentIndex index )
+    {
+        StringBuilder ret = new StringBuilder();
+        ret.append( index.getEntityType().getIdentifier().toExternalForm() );
+        ret.append( SEPARATOR );
+        return ret.toString();
+    }
+
+    /**
+     * Create the StoreValue for an entry of a PropertyValueIndex.
+     *
+     * @param prefix the key prefix of the PropertyValueIndex
+     * @param identifier the identifier of the indexed MeshObject
+     * @param value the indexed value
+     * @param now the current time
+     * @return the StoreValue
+     * @throws EncodingException thrown if the value could not be encoded
+     */
+    protected StoreValue createStoreValue(
+            String               prefix,
+            MeshObjectIdentifier identifier,
+            PropertyValue        value,
+            long                 now )
+        throws
+            EncodingException
+    {
+        BinaryOutput buf = BinaryOutput.create();
+        theValueEncoder.appendPropertyValue( value, buf );
+
+        return new StoreValue(
+                prefix + SEPARATOR + identifier.toExternalForm(),
+                ENCODING_ID,
+                now,
+                now,
+                now,
+                -1L,
+                buf.toByteArray() );
+    }
+
+    /**
+     * Create the StoreValue for a member of an ExtentIndex. It does not carry any data.
+     *
+     * @param prefix the key prefix of the ExtentIndex
+     * @param identifier the identifier of the member MeshObject
+     * @param now the current time
+     * @return the StoreValue
+     */
+    protected StoreValue createStoreValue(
+            String               prefix,
+            MeshObjectIdentifier identifier,
+            long                 now )
+    {
+        return new StoreValue(
+                prefix + SEPARATOR + identifier.toExternalForm(),
+                ENCODING_ID,
+                now,
+                now,
+                now,
+                -1L,
+                new byte[0] );
+    }
+
+    /**
+     * Decode an indexed value.
+     *
+     * @param index the PropertyValueIndex
+     * @param data the encoded value
+     * @return the value
+     * @throws DecodingException thrown if the value could not be decoded
+     * @throws UnknownEnumeratedValueException thrown if an EnumeratedValue is not known any more
+     */
+    protected PropertyValue decodeValue(
+            AbstractPropertyValueIndex index,
+            byte []                    data )
+        throws
+            DecodingException,
+            UnknownEnumeratedValueException
+    {
+        PropertyValue ret = theValueEncoder.readPropertyValue( BinaryInput.create( data ));
+
+        // EnumeratedValues are decoded without their DataType
+        DataType type = index.getPropertyType().getDataType();
+        if( type instanceof EnumeratedDataType && ret instanceof EnumeratedValue ) {
+            ret = ((EnumeratedDataType) type).select( ((EnumeratedValue) ret).value() );
+        }
+        return ret;
+    }
+
+    /**
+     * The Store in which the PropertyValueIndexes are persisted.
+     */
+    protected Store theIndexStore;
+
+    /**
+     * Encodes and decodes the indexed values.
+     */
+    protected PropertyValueBinaryEncoder theValueEncoder = new PropertyValueBinaryEncoder();
+
+    /**
+     * The encoding id of the StoreValues written by this class.
+     */
+    public static final String ENCODING_ID = StorePropertyValueIndexer.class.getName();
+
+    /**
+     * Separates the parts of the keys of the StoreValues.
+     */
+    public static final char SEPARATOR = '|';
+
+    /**
+     * The maximum number of StoreValues written at a time when a new PropertyValueIndex
+     * is persisted.
+     */
+    protected static final int WRITE_BATCH_SIZE = 256;
+}
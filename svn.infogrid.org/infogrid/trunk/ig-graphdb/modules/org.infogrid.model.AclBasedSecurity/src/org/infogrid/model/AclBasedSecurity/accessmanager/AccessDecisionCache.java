@@ -0,0 +1,674 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.model.AclBasedSecurity.accessmanager;
+
+import java.util.Iterator;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.MeshBaseIdentifier;
+import org.infogrid.meshbase.transaction.AbstractMeshObjectRoleChangeEvent;
+import org.infogrid.meshbase.transaction.AbstractMeshObjectTypeChangeEvent;
+import org.infogrid.meshbase.transaction.Change;
+import org.infogrid.meshbase.transaction.MeshObjectDeletedEvent;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.meshbase.transaction.TransactionListener;
+import org.infogrid.model.AclBasedSecurity.AclBasedSecuritySubjectArea;
+import org.infogrid.model.primitives.MeshType;
+import org.infogrid.model.primitives.RoleType;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Caches the read-only access checks that were permitted by the {@link AclBasedAccessManager},
+ * keyed by caller, MeshObject, operation, and (for traversals) neighbor.</p>
+ * <p>Cached decisions are only valid as long as the ACL relationships they were derived from
+ * do not change. To that end, this cache registers itself as a TransactionListener with
+ * each MeshBase whose MeshObjects it has seen, and discards all decisions whenever a
+ * committed or rolled-back Transaction touched a relationship from the AclBasedSecurity Subject Area,
+ * blessed or unblessed a MeshObject, or deleted a MeshObject. A Thread that has its own Transaction
+ * open on the MeshBase bypasses the cache, as the outcome may depend on its uncommitted changes;
+ * other Threads keep using it.</p>
+ * <p>Denials are not cached: they are evaluated again every time, so that each caller receives
+ * its own NotPermittedException.</p>
+ * <p>For testing, the cache can be put into verification mode, in which every hit is
+ * also evaluated fresh, and mismatches are counted and logged.</p>
+ */
+public class AccessDecisionCache
+        implements
+            TransactionListener
+{
+    private static final Log log = Log.getLogInstance( AccessDecisionCache.class ); // our own, private logger
+
+    /**
+     * Factory method with the default maximum size.
+     *
+     * @return the created AccessDecisionCache
+     */
+    public static AccessDecisionCache create()
+    {
+        return new AccessDecisionCache( DEFAULT_MAX_SIZE );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param maxSize the maximum number of decisions to cache
+     * @return the created AccessDecisionCache
+     */
+    public static AccessDecisionCache create(
+            int maxSize )
+    {
+        if( maxSize <= 0 ) {
+            throw new IllegalArgumentException( "Maximum size must be positive: " + maxSize );
+        }
+        return new AccessDecisionCache( maxSize );
+    }
+
+    /**
+     * Constructor for subclasses only, use factory method.
+     *
+     * @param maxSize the maximum number of decisions to cache
+     */
+    protected AccessDecisionCache(
+            int maxSize )
+    {
+        theMaxSize = maxSize;
+    }
+
+    /**
+     * Determine the maximum number of decisions to cache.
+     *
+     * @return the maximum number
+     */
+    public int getMaxSize()
+    {
+        return theMaxSize;
+    }
+
+    /**
+     * Determine the number of decisions currently cached.
+     *
+     * @return the number of decisions
+     */
+    public int size()
+    {
+        return theDecisions.size();
+    }
+
+    /**
+     * Specify whether cached decisions shall be verified against a fresh evaluation.
+     * This is expensive and meant for tests.
+     *
+     * @param newValue if true, verify
+     */
+    public void setVerify(
+            boolean newValue )
+    {
+        theVerify = newValue;
+    }
+
+    /**
+     * Determine whether cached decisions are verified against a fresh evaluation.
+     *
+     * @return true if they are verified
+     */
+    public boolean getVerify()
+    {
+        return theVerify;
+    }
+
+    /**
+     * Create the key for a decision. Returns null if no decision may be cached or looked up
+     * at this time, i.e. if the calling Thread has a Transaction open on the MeshBase.
+     *
+     * @param obj the MeshObject on which the operation is performed
+     * @param operation the PropertyType, EntityType or RoleType identifying the operation
+     * @param neighborIdentifier identifier of the neighbor, for traversals
+     * @param caller the caller, if any
+     * @return the Key, or null
+     */
+    public Key createKey(
+            MeshObject           obj,
+            MeshType             operation,
+            MeshObjectIdentifier neighborIdentifier,
+            MeshObject           caller )
+    {
+        MeshBase mb = obj.getMeshBase();
+        if( mb == null ) {
+            return null;
+        }
+        observe( mb );
+
+        if( mb.getCurrentTransaction() != null ) {
+            return null;
+        }
+
+        return new Key(
+                mb.getIdentifier(),
+                obj.getIdentifier(),
+                operation,
+                neighborIdentifier,
+                caller != null ? caller.getIdentifier() : null );
+    }
+
+    /**
+     * Look up a cached decision.
+     *
+     * @param key the Key
+     * @return the cached Decision, or null if none
+     */
+    public Decision get(
+            Key key )
+    {
+        Decision ret = theDecisions.get( key );
+        if( ret != null ) {
+            theHits.incrementAndGet();
+        } else {
+            theMisses.incrementAndGet();
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the current generation. This must be obtained prior to evaluating
+     * a decision that will later be put into the cache.
+     *
+     * @return the current generation
+     */
+    public long getGeneration()
+    {
+        return theGeneration.get();
+    }
+
+    /**
+     * Cache a freshly evaluated decision that permitted the operation.
+     *
+     * @param key the Key
+     * @param generation the generation obtained prior to evaluating the decision
+     */
+    public void put(
+            Key  key,
+            long generation )
+    {
+        if( theDecisions.size() >= theMaxSize ) {
+            evict();
+        }
+        theDecisions.put( key, Decision.PERMITTED );
+
+        if( theGeneration.get() != generation ) {
+            // the cache was invalidated in the meantime; our evaluation may be stale
+            theDecisions.remove( key, Decision.PERMITTED );
+        }
+    }
+
+    /**
+     * Compare a cached decision with a fresh evaluation, in verification mode.
+     *
+     * @param key the Key
+     * @param cached the cached Decision
+     * @param permitted true if the fresh evaluation permitted the operation
+     * @return true if the decisions agree
+     */
+    public boolean verify(
+            Key      key,
+            Decision cached,
+            boolean  permitted )
+    {
+        if( cached.isPermitted() == permitted ) {
+            return true;
+        }
+        theVerificationFailures.incrementAndGet();
+        log.error( "Cached access decision is stale: ", key, cached );
+
+        theDecisions.remove( key, cached );
+        return false;
+    }
+
+    /**
+     * Discard all cached decisions.
+     */
+    public void clear()
+    {
+        theGeneration.incrementAndGet();
+        theDecisions.clear();
+        theInvalidations.incrementAndGet();
+    }
+
+    /**
+     * Make room for new decisions by discarding a tenth of the cached ones. As lookups are
+     * spread evenly over the keys, we simply discard those the iterator returns first.
+     */
+    protected void evict()
+    {
+        int toRemove = Math.max( 1, theMaxSize / 10 );
+
+        Iterator<Key> iter = theDecisions.keySet().iterator();
+        while( toRemove > 0 && iter.hasNext() ) {
+            iter.next();
+            iter.remove();
+            --toRemove;
+        }
+        theEvictions.incrementAndGet();
+    }
+
+    /**
+     * Obtain the number of cache hits so far.
+     *
+     * @return the number of hits
+     */
+    public long getHits()
+    {
+        return theHits.get();
+    }
+
+    /**
+     * Obtain the number of cache misses so far.
+     *
+     * @return the number of misses
+     */
+    public long getMisses()
+    {
+        return theMisses.get();
+    }
+
+    /**
+     * Obtain the fraction of lookups that were hits, between 0 and 1.
+     *
+     * @return the hit rate
+     */
+    public double getHitRate()
+    {
+        long hits  = theHits.get();
+        long total = hits + theMisses.get();
+
+        return total > 0 ? ((double) hits) / total : 0.;
+    }
+
+    /**
+     * Obtain the number of times the cache was invalidated so far.
+     *
+     * @return the number of invalidations
+     */
+    public long getInvalidations()
+    {
+        return theInvalidations.get();
+    }
+
+    /**
+     * Obtain the number of times decisions were evicted to make room so far.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions()
+    {
+        return theEvictions.get();
+    }
+
+    /**
+     * Obtain the number of cached decisions that did not agree with a fresh evaluation
+     * so far. Only counted in verification mode.
+     *
+     * @return the number of verification failures
+     */
+    public long getVerificationFailures()
+    {
+        return theVerificationFailures.get();
+    }
+
+    /**
+     * Indicates that a Transaction has been started.
+     *
+     * @param tx the Transaction that was started
+     */
+    public void transactionStarted(
+            Transaction tx )
+    {
+        // nothing until we know what it changed
+    }
+
+    /**
+     * Indicates that a Transaction has been committed.
+     *
+     * @param tx the Transaction that was committed
+     */
+    public void transactionCommitted(
+            Transaction tx )
+    {
+        clearIfAffected( tx );
+    }
+
+    /**
+     * Indicates that a Transaction has been rolled back.
+     *
+     * @param tx the Transaction that was rolled back
+     */
+    public void transactionRolledback(
+            Transaction tx )
+    {
+        // another Thread may have cached a decision based on the changes now undone
+        clearIfAffected( tx );
+    }
+
+    /**
+     * Discard all cached decisions if this Transaction made a Change that may affect them.
+     *
+     * @param tx the Transaction
+     */
+    protected void clearIfAffected(
+            Transaction tx )
+    {
+        for( Change<?,?,?,?> current : tx.getChangeSet() ) {
+            if( affectsDecisions( current )) {
+                clear();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Determine whether this Change may affect cached decisions.
+     *
+     * @param change the Change
+     * @return true if it may
+     */
+    protected boolean affectsDecisions(
+            Change<?,?,?,?> change )
+    {
+        if( change instanceof MeshObjectDeletedEvent ) {
+            return true;
+        }
+        if( change instanceof AbstractMeshObjectTypeChangeEvent ) {
+            return true; // blessing or unblessing changes which guards apply
+        }
+        if( change instanceof AbstractMeshObjectRoleChangeEvent ) {
+            RoleType [] delta = ((AbstractMeshObjectRoleChangeEvent) change).getDeltaValue();
+            if( delta == null ) {
+                return true; // be safe
+            }
+            for( RoleType current : delta ) {
+                if( isAclRoleType( current )) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine whether this RoleType, or any of its supertypes, belongs to the
+     * AclBasedSecurity Subject Area.
+     *
+     * @param type the RoleType
+     * @return true if it does
+     */
+    protected boolean isAclRoleType(
+            RoleType type )
+    {
+        if( type.getRelationshipType().getSubjectArea() == AclBasedSecuritySubjectArea._SA ) {
+            return true;
+        }
+        for( RoleType current : type.getDirectSuperRoleTypes() ) {
+            if( isAclRoleType( current )) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Make sure we listen to Transactions on this MeshBase.
+     *
+     * @param mb the MeshBase
+     */
+    protected void observe(
+            MeshBase mb )
+    {
+        synchronized( theObservedMeshBases ) {
+            if( theObservedMeshBases.containsKey( mb )) {
+                return;
+            }
+            theObservedMeshBases.put( mb, Boolean.TRUE );
+        }
+        mb.addWeakTransactionListener( this );
+    }
+
+    /**
+     * The maximum number of cached decisions. If reached, some decisions are evicted.
+     */
+    protected final int theMaxSize;
+
+    /**
+     * The cached decisions.
+     */
+    protected final ConcurrentMap<Key,Decision> theDecisions = new ConcurrentHashMap<Key,Decision>();
+
+    /**
+     * The MeshBases with which we have registered as TransactionListener.
+     */
+    protected final WeakHashMap<MeshBase,Boolean> theObservedMeshBases = new WeakHashMap<MeshBase,Boolean>();
+
+    /**
+     * Incremented every time the cache is cleared.
+     */
+    protected final AtomicLong theGeneration = new AtomicLong();
+
+    /**
+     * Number of hits.
+     */
+    protected final AtomicLong theHits = new AtomicLong();
+
+    /**
+     * Number of misses.
+     */
+    protected final AtomicLong theMisses = new AtomicLong();
+
+    /**
+     * Number of invalidations.
+     */
+    protected final AtomicLong theInvalidations = new AtomicLong();
+
+    /**
+     * Number of evictions.
+     */
+    protected final AtomicLong theEvictions = new AtomicLong();
+
+    /**
+     * Number of verification failures.
+     */
+    protected final AtomicLong theVerificationFailures = new AtomicLong();
+
+    /**
+     * If true, verify cached decisions against fresh evaluations.
+     */
+    protected volatile boolean theVerify;
+
+    /**
+     * The default maximum number of cached decisions.
+     */
+    public static final int DEFAULT_MAX_SIZE = 100000;
+
+    /**
+     * Identifies a cached decision.
+     */
+    public static final class Key
+    {
+        /**
+         * Constructor.
+         *
+         * @param meshBaseIdentifier identifier of the MeshBase
+         * @param objIdentifier identifier of the MeshObject on which the operation is performed
+         * @param operation the MeshType identifying the operation
+         * @param neighborIdentifier identifier of the neighbor, if any
+         * @param callerIdentifier identifier of the caller, if any
+         */
+        protected Key(
+                MeshBaseIdentifier   meshBaseIdentifier,
+                MeshObjectIdentifier objIdentifier,
+                MeshType             operation,
+                MeshObjectIdentifier neighborIdentifier,
+                MeshObjectIdentifier callerIdentifier )
+        {
+            theMeshBaseIdentifier = meshBaseIdentifier;
+            theObjIdentifier      = objIdentifier;
+            theOperation          = operation;
+            theNeighborIdentifier = neighborIdentifier;
+            theCallerIdentifier   = callerIdentifier;
+
+            int hash = objIdentifier.hashCode();
+            hash = 31 * hash + System.identityHashCode( operation );
+            hash = 31 * hash + ( neighborIdentifier != null ? neighborIdentifier.hashCode() : 0 );
+            hash = 31 * hash + ( callerIdentifier   != null ? callerIdentifier.hashCode()   : 0 );
+            theHashCode = hash;
+        }
+
+        /**
+         * Determine equality.
+         *
+         * @param other the Object to compare with
+         * @return true if the objects are equal
+         */
+        @Override
+        public boolean equals(
+                Object other )
+        {
+            if( !( other instanceof Key )) {
+                return false;
+            }
+            Key realOther = (Key) other;
+
+            return theHashCode == realOther.theHashCode
+                    && theOperation == realOther.theOperation
+                    && theObjIdentifier.equals( realOther.theObjIdentifier )
+                    && equalsOrNull( theNeighborIdentifier, realOther.theNeighborIdentifier )
+                    && equalsOrNull( theCallerIdentifier,   realOther.theCallerIdentifier )
+                    && equalsOrNull( theMeshBaseIdentifier, realOther.theMeshBaseIdentifier );
+        }
+
+        /**
+         * Hash code.
+         *
+         * @return hash code
+         */
+        @Override
+        public int hashCode()
+        {
+            return theHashCode;
+        }
+
+        /**
+         * Convert to String, for debugging.
+         *
+         * @return String form
+         */
+        @Override
+        public String toString()
+        {
+            return "Key: " + theCallerIdentifier + " -> " + theObjIdentifier + " / " + theOperation
+                    + ( theNeighborIdentifier != null ? ( " / " + theNeighborIdentifier ) : "" );
+        }
+
+        /**
+         * Helper to compare two possibly null objects.
+         *
+         * @param one the first object
+         * @param two the second object
+         * @return true if they are equal
+         */
+        protected static boolean equalsOrNull(
+                Object one,
+                Object two )
+        {
+            if( one == null ) {
+                return two == null;
+            } else {
+                return one.equals( two );
+            }
+        }
+
+        /**
+         * Identifier of the MeshBase.
+         */
+        protected final MeshBaseIdentifier theMeshBaseIdentifier;
+
+        /**
+         * Identifier of the MeshObject on which the operation is performed.
+         */
+        protected final MeshObjectIdentifier theObjIdentifier;
+
+        /**
+         * The MeshType identifying the operation.
+         */
+        protected final MeshType theOperation;
+
+        /**
+         * Identifier of the neighbor, if any.
+         */
+        protected final MeshObjectIdentifier theNeighborIdentifier;
+
+        /**
+         * Identifier of the caller, if any.
+         */
+        protected final MeshObjectIdentifier theCallerIdentifier;
+
+        /**
+         * Pre-calculated hash code.
+         */
+        protected final int theHashCode;
+    }
+
+    /**
+     * A cached decision. Only permitted decisions are cached.
+     */
+    public static final class Decision
+    {
+        /**
+         * Private constructor, use singleton.
+         */
+        private Decision()
+        {
+            // nothing
+        }
+
+        /**
+         * Determine whether the operation is permitted.
+         *
+         * @return true if permitted
+         */
+        public boolean isPermitted()
+        {
+            return true;
+        }
+
+        /**
+         * Convert to String, for debugging.
+         *
+         * @return String form
+         */
+        @Override
+        public String toString()
+        {
+            return "Decision: permitted";
+        }
+
+        /**
+         * Singleton for permitted decisions.
+         */
+        public static final Decision PERMITTED = new Decision();
+    }
+}
@@ -26,6 +26,7 @@ import org.infogrid.meshbase.MeshObjectAccessException;
 import org.infogrid.meshbase.security.AccessManager;
 import org.infogrid.meshbase.transaction.TransactionException;
 import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.MeshType;
 import org.infogrid.model.primitives.PropertyType;
 import org.infogrid.model.primitives.PropertyValue;
 import org.infogrid.model.primitives.Role;
@@ -51,15 +52,41 @@ public class AclBasedAccessManager
      */
     public static AclBasedAccessManager create()
     {
-        return new AclBasedAccessManager();
+        return new AclBasedAccessManager( null );
+    }
+
+    /**
+     * Factory method for an AclBasedAccessManager that caches the outcome of read-only
+     * access checks.
+     *
+     * @param decisionCache the AccessDecisionCache to use
+     * @return the created SimpleAccessManager
+     */
+    public static AclBasedAccessManager create(
+            AccessDecisionCache decisionCache )
+    {
+        return new AclBasedAccessManager( decisionCache );
     }
 
     /**
      * Constructor for subclasses only, use factory method.
+     *
+     * @param decisionCache the AccessDecisionCache to use, if any
      */
-    protected AclBasedAccessManager()
+    protected AclBasedAccessManager(
+            AccessDecisionCache decisionCache )
     {
-        // noop
+        theDecisionCache = decisionCache;
+    }
+
+    /**
+     * Obtain the AccessDecisionCache, if any.
+     *
+     * @return the AccessDecisionCache, or null
+     */
+    public AccessDecisionCache getDecisionCache()
+    {
+        return theDecisionCache;
     }
 
     /**
@@ -197,18 +224,10 @@ public class AclBasedAccessManager
         if( ThreadIdentityManager.isSu() ) {
             return; // root many do anything
         }
-
-        try {
-            ThreadIdentityManager.sudo();
-            
-            MeshObject caller = ThreadIdentityManager.getCaller();
-
-            thePropertyType.checkPermittedGetProperty(
-                    obj,
-                    caller );
-        
-        } finally {
-            ThreadIdentityManager.sudone();
+        if( theDecisionCache != null ) {
+            checkPermittedWithCache( obj, thePropertyType, null, null );
+        } else {
+            evaluatePermitted( obj, thePropertyType, null, null );
         }
     }
 
@@ -229,18 +248,10 @@ public class AclBasedAccessManager
         if( ThreadIdentityManager.isSu() ) {
             return; // root many do anything
         }
-
-        try {
-            ThreadIdentityManager.sudo();
-            
-            MeshObject caller = ThreadIdentityManager.getCaller();
-
-            type.checkPermittedBlessedBy(
-                    obj,
-                    caller );
-        
-        } finally {
-            ThreadIdentityManager.sudone();
+        if( theDecisionCache != null ) {
+            checkPermittedWithCache( obj, type, null, null );
+        } else {
+            evaluatePermitted( obj, type, null, null );
         }
     }
 
@@ -534,17 +545,103 @@ public class AclBasedAccessManager
         if( ThreadIdentityManager.isSu() ) {
             return; // root many do anything
         }
+        if( theDecisionCache != null ) {
+            checkPermittedWithCache( obj, toTraverse, neighborIdentifier, neighbor );
+        } else {
+            evaluatePermitted( obj, toTraverse, neighborIdentifier, neighbor );
+        }
+    }
 
+    /**
+     * Check a read-only operation, consulting the AccessDecisionCache first.
+     *
+     * @param obj the MeshObject
+     * @param operation the PropertyType to read, the EntityType whose blessing to check, or the RoleType to traverse
+     * @param neighborIdentifier identifier of the neighbor to which the traversal leads, if a traversal
+     * @param neighbor neighbor to which the traversal leads, if a traversal
+     * @throws NotPermittedException thrown if it is not permitted
+     */
+    protected void checkPermittedWithCache(
+            MeshObject           obj,
+            MeshType             operation,
+            MeshObjectIdentifier neighborIdentifier,
+            MeshObject           neighbor )
+        throws
+            NotPermittedException
+    {
+        long generation = theDecisionCache.getGeneration(); // before evaluating
+
+        AccessDecisionCache.Key key = theDecisionCache.createKey(
+                obj,
+                operation,
+                neighborIdentifier,
+                ThreadIdentityManager.getCaller() );
+
+        if( key == null ) {
+            evaluatePermitted( obj, operation, neighborIdentifier, neighbor );
+            return;
+        }
+
+        AccessDecisionCache.Decision cached = theDecisionCache.get( key );
+        if( cached != null && !theDecisionCache.getVerify() ) {
+            return;
+        }
+
+        NotPermittedException thrown = null;
+        try {
+            evaluatePermitted( obj, operation, neighborIdentifier, neighbor );
+
+        } catch( NotPermittedException ex ) {
+            thrown = ex; // fresh for every denial, never shared between callers
+        }
+
+        if( cached != null ) {
+            theDecisionCache.verify( key, cached, thrown == null );
+        } else if( thrown == null ) {
+            theDecisionCache.put( key, generation ); // denials are not cached
+        }
+        if( thrown != null ) {
+            throw thrown;
+        }
+    }
+
+    /**
+     * Evaluate the guards for a read-only operation.
+     *
+     * @param obj the MeshObject
+     * @param operation the PropertyType to read, the EntityType whose blessing to check, or the RoleType to traverse
+     * @param neighborIdentifier identifier of the neighbor to which the traversal leads, if a traversal
+     * @param neighbor neighbor to which the traversal leads, if a traversal
+     * @throws NotPermittedException thrown if it is not permitted
+     */
+    protected void evaluatePermitted(
+            MeshObject           obj,
+            MeshType             operation,
+            MeshObjectIdentifier neighborIdentifier,
+            MeshObject           neighbor )
+        throws
+            NotPermittedException
+    {
         try {
             ThreadIdentityManager.sudo();
             
             MeshObject caller = ThreadIdentityManager.getCaller();
 
-            toTraverse.checkPermittedTraversal( obj, neighborIdentifier, neighbor, caller );
+            if( operation instanceof PropertyType ) {
+                ((PropertyType) operation).checkPermittedGetProperty( obj, caller );
+
+            } else if( operation instanceof EntityType ) {
+                ((EntityType) operation).checkPermittedBlessedBy( obj, caller );
 
+            } else if( operation instanceof RoleType ) {
+                ((RoleType) operation).checkPermittedTraversal( obj, neighborIdentifier, neighbor, caller );
+
+            } else {
+                throw new IllegalArgumentException( "Unexpected operation: " + operation );
+            }
         } finally {
             ThreadIdentityManager.sudone();
-        }        
+        }
     }
 
 //    /**
@@ -807,4 +904,9 @@ public class AclBasedAccessManager
             ThreadIdentityManager.sudone();
         }        
     }
+
+    /**
+     * Caches the outcome of read-only access checks, if any.
+     */
+    protected final AccessDecisionCache theDecisionCache;
 }
@@ -41,6 +41,7 @@ public class AllTests
                 new TestSpec( DifferencerTest7.class ),
                 new TestSpec( DifferencerTest8.class ),
                 new TestSpec( DifferencerTest9.class ),
+                new TestSpec( DifferencerTest10.class ),
         };
 
         runTests( tests );
@@ -0,0 +1,216 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.differencer;
+
+import java.util.concurrent.ForkJoinPool;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.meshbase.IterableMeshBase;
+import org.infogrid.meshbase.IterableMeshBaseDifferencer;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.MeshObjectIdentifierFactory;
+import org.infogrid.meshbase.transaction.Change;
+import org.infogrid.meshbase.transaction.ChangeSet;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that the differencer finds the same Changes, in the same sequence, whether or not
+ * it compares the MeshObjects of large MeshBases on the Threads of a ForkJoinPool.
+ */
+public class DifferencerTest10
+        extends
+            AbstractDifferencerTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    public void run()
+        throws
+            Exception
+    {
+        long now = 1122334455L;
+
+        //
+
+        log.info( "Creating MeshObjects in MeshBase1 and MeshBase2" );
+
+        populate( theMeshBase1, false, now );
+        populate( theMeshBase2, true,  now );
+
+        //
+
+        log.info( "now differencing, with and without ForkJoinPool" );
+
+        ForkJoinPool pool = new ForkJoinPool( N_THREADS );
+        try {
+            IterableMeshBaseDifferencer sequentialDiff = new IterableMeshBaseDifferencer( theMeshBase1 );
+            IterableMeshBaseDifferencer parallelDiff   = new IterableMeshBaseDifferencer( theMeshBase1, pool );
+
+            startClock();
+            ChangeSet sequential     = sequentialDiff.determineChangeSet( theMeshBase2 );
+            long      sequentialTime = getRelativeTime();
+
+            startClock();
+            ChangeSet parallel     = parallelDiff.determineChangeSet( theMeshBase2 );
+            long      parallelTime = getRelativeTime();
+
+            log.info( "Found " + sequential.size() + " changes: " + sequentialTime + " msec sequential, " + parallelTime + " msec parallel" );
+
+            Change [] sequentialChanges = sequential.getChanges();
+            Change [] parallelChanges   = parallel.getChanges();
+
+            checkCondition( sequentialChanges.length > 0, "no changes found" );
+            checkEquals( parallelChanges.length, sequentialChanges.length, "different number of changes" );
+
+            for( int i=0 ; i<Math.min( parallelChanges.length, sequentialChanges.length ) ; ++i ) {
+                checkEquals( parallelChanges[i].getClass(),                       sequentialChanges[i].getClass(),                       "different type of change at " + i );
+                checkEquals( parallelChanges[i].getAffectedMeshObjectIdentifier(), sequentialChanges[i].getAffectedMeshObjectIdentifier(), "different MeshObject affected at " + i );
+            }
+
+            //
+
+            log.info( "now applying changes" );
+
+            Transaction tx = parallelDiff.getBaselineMeshBase().createTransactionNow();
+            parallelDiff.applyChangeSet( parallel );
+            tx.commitTransaction();
+
+            ChangeSet theEmptyChangeSet = parallelDiff.determineChangeSet( theMeshBase2 );
+
+            checkEquals( theEmptyChangeSet.size(), 0, "Change set not empty after applying differences" );
+            printChangeSet( log, theEmptyChangeSet );
+
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Create the MeshObjects in a MeshBase: pairs of AA and B related by R. In the changed
+     * version, some MeshObjects are missing or new, and some properties and relationships differ.
+     *
+     * @param mb the MeshBase
+     * @param changed if true, create the changed version
+     * @param now the creation time
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    protected void populate(
+            IterableMeshBase mb,
+            boolean          changed,
+            long             now )
+        throws
+            Exception
+    {
+        MeshBaseLifecycleManager    life   = mb.getMeshBaseLifecycleManager();
+        MeshObjectIdentifierFactory idFact = mb.getMeshObjectIdentifierFactory();
+
+        Transaction tx = mb.createTransactionNow();
+
+        MeshObject previous = null;
+        for( int i=0 ; i<N ; ++i ) {
+            if( changed && i % 97 == 5 ) {
+                continue; // deleted
+            }
+            MeshObject a = createMeshObject( life, idFact.fromExternalForm( "a" + i ), typeAA, now );
+            MeshObject b = createMeshObject( life, idFact.fromExternalForm( "b" + i ), typeB,  now );
+
+            a.setPropertyValue( typeX, StringValue.create( ( changed && i % 31 == 0 ) ? "changed" + i : "x" + i ));
+
+            if( changed && i % 53 == 7 ) {
+                a.relate( b ); // lost its RoleTypes
+            } else if( changed && i % 59 == 11 ) {
+                a.relateAndBless( typeRR.getSource(), b ); // gained a RoleType
+            } else {
+                a.relateAndBless( typeR.getSource(), b );
+            }
+
+            if( previous != null && !( changed && i % 43 == 3 )) {
+                previous.relate( a ); // chain, with some links missing in the changed version
+            }
+            previous = a;
+        }
+        if( changed ) {
+            for( int i=0 ; i<N/100 ; ++i ) {
+                createMeshObject( life, idFact.fromExternalForm( "new" + i ), typeAA, now );
+            }
+        }
+
+        tx.commitTransaction();
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        DifferencerTest10 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new DifferencerTest10( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    public DifferencerTest10(
+            String [] args )
+        throws
+            Exception
+    {
+        super( DifferencerTest10.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( DifferencerTest10.class );
+
+    /**
+     * The number of pairs of MeshObjects.
+     */
+    protected static final int N = 5000;
+
+    /**
+     * The number of Threads in the ForkJoinPool.
+     */
+    protected static final int N_THREADS = 4;
+}
@@ -33,6 +33,8 @@ public abstract class AllTests
     {
         TestSpec [] tests = {
                 new TestSpec( SerializerTest1.class ),
+                new TestSpec( SerializerTest2.class ),
+                new TestSpec( SerializerPerformanceTest1.class ),
         };
 
         runTests( tests );
@@ -0,0 +1,210 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.mesh.externalized;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.externalized.xml.PropertyValueXmlEncoder;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Measures the throughput of decoding with a single, shared encoder from an increasing
+ * number of Threads.
+ */
+public class SerializerPerformanceTest1
+        extends
+            AbstractSerializerTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    public void run()
+            throws
+                Exception
+    {
+        log.info( "Encoding test data" );
+
+        final List<PropertyValue> originals = new ArrayList<PropertyValue>();
+        final List<byte []>       encoded   = new ArrayList<byte []>();
+
+        for( int i=0 ; i<theTestData.length ; ++i ) {
+            for( int j=0 ; j<theTestData[i].length ; ++j ) {
+                for( int k=0 ; k<theTestData[i][j].theValues.length ; ++k ) {
+                    PropertyValue original = theTestData[i][j].theValues[k];
+
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    theSerializer.encodePropertyValue( original, out );
+                    out.close();
+
+                    originals.add( original );
+                    encoded.add( out.toByteArray() );
+                }
+            }
+        }
+
+        //
+
+        for( int t=0 ; t<theThreadCounts.length ; ++t ) {
+            final int nThreads = theThreadCounts[t];
+
+            log.info( "Decoding from " + nThreads + " Threads" );
+
+            final CountDownLatch start    = new CountDownLatch( 1 );
+            final List<Throwable> problems = new ArrayList<Throwable>();
+            final int [] mismatches        = new int[ nThreads ];
+
+            Thread [] threads = new Thread[ nThreads ];
+            for( int n=0 ; n<nThreads ; ++n ) {
+                final int index = n;
+
+                threads[n] = new Thread( "SerializerPerformanceTest1-" + n ) {
+                    @Override
+                    public void run()
+                    {
+                        try {
+                            start.await();
+
+                            for( int r=0 ; r<ROUNDS_PER_THREAD ; ++r ) {
+                                for( int i=0 ; i<encoded.size() ; ++i ) {
+                                    PropertyValue decoded = theSerializer.decodePropertyValue( new ByteArrayInputStream( encoded.get( i )));
+
+                                    if( !originals.get( i ).equals( decoded )) {
+                                        ++mismatches[index];
+                                    }
+                                }
+                            }
+                        } catch( Throwable ex ) {
+                            synchronized( problems ) {
+                                problems.add( ex );
+                            }
+                        }
+                    }
+                };
+                threads[n].start();
+            }
+
+            long startTime = System.currentTimeMillis();
+            start.countDown();
+
+            for( int n=0 ; n<nThreads ; ++n ) {
+                threads[n].join();
+            }
+            long duration = System.currentTimeMillis() - startTime;
+
+            checkEquals( problems.size(), 0, "Problems decoding from " + nThreads + " Threads: " + problems );
+            for( int n=0 ; n<nThreads ; ++n ) {
+                checkEquals( mismatches[n], 0, "Incorrect deserialization in Thread " + n + " of " + nThreads );
+            }
+
+            long decodes = ((long) nThreads) * ROUNDS_PER_THREAD * encoded.size();
+            log.info(
+                    "Threads: " + nThreads
+                    + ", decodes: " + decodes
+                    + ", time: " + duration + " msec"
+                    + ", throughput: " + ( decodes * 1000L / Math.max( 1L, duration )) + " decodes/sec" );
+        }
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        SerializerPerformanceTest1 test = null;
+        try {
+            if( args.length > 0 ) {
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new SerializerPerformanceTest1( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    public SerializerPerformanceTest1(
+            String [] args )
+        throws
+            Exception
+    {
+        super( SerializerPerformanceTest1.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( SerializerPerformanceTest1.class );
+
+    /**
+     * The number of times each Thread decodes all of the test data.
+     */
+    protected static final int ROUNDS_PER_THREAD = 50;
+
+    /**
+     * The numbers of Threads to decode from.
+     */
+    protected static final int [] theThreadCounts = { 1, 2, 4, 8 };
+
+    /**
+     * The test cases, borrowed from SerializerTest1. EnumeratedValues are not included, as they
+     * do not decode into values equal to the original.
+     */
+    protected static SerializerTest1.TestCase [][] theTestData = {
+            SerializerTest1.blobValueTestData,
+            SerializerTest1.booleanValueTestData,
+            SerializerTest1.colorValueTestData,
+            SerializerTest1.currencyValueTestData,
+            SerializerTest1.extentValueTestData,
+            SerializerTest1.floatValueTestData,
+            SerializerTest1.integerValueTestData,
+            SerializerTest1.multiplicityValueTestData,
+            SerializerTest1.pointValueTestData,
+            SerializerTest1.stringValueTestData,
+            SerializerTest1.timeStampValueTestData,
+            SerializerTest1.timePeriodValueTestData
+    };
+
+    /**
+     * The encoder shared by all Threads.
+     */
+    protected final PropertyValueXmlEncoder theSerializer = new PropertyValueXmlEncoder();
+}
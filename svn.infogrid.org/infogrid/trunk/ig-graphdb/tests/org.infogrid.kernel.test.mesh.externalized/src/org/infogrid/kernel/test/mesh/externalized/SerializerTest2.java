@@ -0,0 +1,252 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.mesh.externalized;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.externalized.ExternalizedMeshObject;
+import org.infogrid.mesh.externalized.binary.ExternalizedMeshObjectBinaryEncoder;
+import org.infogrid.mesh.externalized.xml.ExternalizedMeshObjectXmlEncoder;
+import org.infogrid.meshbase.DefaultMeshBaseIdentifierFactory;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.a.AMeshBaseLifecycleManager;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.BooleanValue;
+import org.infogrid.model.primitives.ColorValue;
+import org.infogrid.model.primitives.CurrencyValue;
+import org.infogrid.model.primitives.EnumeratedDataType;
+import org.infogrid.model.primitives.EnumeratedValue;
+import org.infogrid.model.primitives.ExtentValue;
+import org.infogrid.model.primitives.FloatValue;
+import org.infogrid.model.primitives.IntegerValue;
+import org.infogrid.model.primitives.MultiplicityValue;
+import org.infogrid.model.primitives.PointValue;
+import org.infogrid.model.primitives.PropertyType;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.model.primitives.TimePeriodValue;
+import org.infogrid.model.primitives.TimeStampValue;
+import org.infogrid.model.primitives.externalized.binary.PropertyValueBinaryEncoder;
+import org.infogrid.modelbase.ModelBaseSingleton;
+import org.infogrid.util.context.SimpleContext;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests the binary encoding of PropertyValues and ExternalizedMeshObjects.
+ */
+public class SerializerTest2
+        extends
+            AbstractSerializerTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    public void run()
+            throws
+                Exception
+    {
+        log.info( "PropertyValues" );
+
+        PropertyValueBinaryEncoder valueEncoder = new PropertyValueBinaryEncoder();
+
+        for( int i=0 ; i<SerializerTest1.testData.length ; ++i ) {
+            for( int j=0 ; j<SerializerTest1.testData[i].length ; ++j ) {
+                for( int k=0 ; k<SerializerTest1.testData[i][j].theValues.length ; ++k ) {
+                    PropertyValue original = SerializerTest1.testData[i][j].theValues[k];
+
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    valueEncoder.encodePropertyValue( original, out );
+
+                    PropertyValue decoded = valueEncoder.decodePropertyValue( new ByteArrayInputStream( out.toByteArray() ));
+                    if( decoded instanceof EnumeratedValue ) {
+                        decoded = ((EnumeratedDataType) SerializerTest1.testData[i][j].theType).select( ((EnumeratedValue) decoded).value() );
+                    }
+                    checkEquals( original, decoded, "incorrect deserialization at index " + i + "/" + j + "/" + k );
+                }
+            }
+        }
+
+        //
+
+        log.info( "Creating MeshObjects" );
+
+        MeshBase mb = MMeshBase.create(
+                DefaultMeshBaseIdentifierFactory.create().fromExternalForm( "MeshBase" ),
+                ModelBaseSingleton.getSingleton(),
+                null,
+                SimpleContext.createRoot( "root-context" ));
+
+        MeshBaseLifecycleManager life = mb.getMeshBaseLifecycleManager();
+
+        Transaction tx = mb.createTransactionNow();
+
+        MeshObject a = life.createMeshObject( TestSubjectArea.AA );
+        MeshObject b = life.createMeshObject( TestSubjectArea.AA );
+        MeshObject c = life.createMeshObject( TestSubjectArea.OPTIONALPROPERTIES );
+
+        a.relateAndBless( TestSubjectArea.AR1A.getSource(), b );
+        a.relate( c );
+
+        for( int i=0 ; i<theTestProperties.length ; ++i ) {
+            c.setPropertyValue( theTestProperties[i], theTestValues[i] );
+        }
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Round-tripping ExternalizedMeshObjects" );
+
+        ExternalizedMeshObjectBinaryEncoder binaryEncoder = new ExternalizedMeshObjectBinaryEncoder();
+        ExternalizedMeshObjectXmlEncoder    xmlEncoder    = new ExternalizedMeshObjectXmlEncoder();
+
+        for( MeshObject original : new MeshObject[] { a, b, c } ) {
+            ExternalizedMeshObject externalized = original.asExternalized();
+
+            ByteArrayOutputStream binaryOut = new ByteArrayOutputStream();
+            binaryEncoder.encodeExternalizedMeshObject( externalized, binaryOut );
+
+            ByteArrayOutputStream xmlOut = new ByteArrayOutputStream();
+            xmlEncoder.encodeExternalizedMeshObject( externalized, xmlOut );
+
+            log.info( "Size of " + original.getIdentifier() + ": binary " + binaryOut.size() + ", XML " + xmlOut.size() );
+            checkCondition( binaryOut.size() < xmlOut.size(), "binary encoding not smaller than XML for " + original.getIdentifier() );
+
+            ExternalizedMeshObject decoded = binaryEncoder.decodeExternalizedMeshObject(
+                    new ByteArrayInputStream( binaryOut.toByteArray() ),
+                    mb );
+
+            checkEquals( decoded.getIdentifier(),  externalized.getIdentifier(),  "wrong identifier" );
+            checkEquals( decoded.getTimeCreated(), externalized.getTimeCreated(), "wrong timeCreated" );
+            checkEquals( decoded.getTimeUpdated(), externalized.getTimeUpdated(), "wrong timeUpdated" );
+            checkEquals( decoded.getTimeRead(),    externalized.getTimeRead(),    "wrong timeRead" );
+            checkEquals( decoded.getTimeExpires(), externalized.getTimeExpires(), "wrong timeExpires" );
+
+            checkEqualsOutOfSequence( decoded.getExternalTypeIdentifiers(), externalized.getExternalTypeIdentifiers(), "wrong types" );
+            checkEqualsInSequence(    decoded.getPropertyTypes(),            externalized.getPropertyTypes(),            "wrong property types" );
+            checkEqualsOutOfSequence( decoded.getNeighbors(),                externalized.getNeighbors(),                "wrong neighbors" );
+
+            for( int i=0 ; i<externalized.getNeighbors().length ; ++i ) {
+                checkEqualsOutOfSequence(
+                        decoded.getRoleTypesFor( externalized.getNeighbors()[i] ),
+                        externalized.getRoleTypesFor( externalized.getNeighbors()[i] ),
+                        "wrong role types for " + externalized.getNeighbors()[i] );
+            }
+
+            MeshObject recreated = ((AMeshBaseLifecycleManager) life).recreateMeshObject( decoded );
+
+            checkEqualsOutOfSequence( recreated.getTypes(), original.getTypes(), "wrong types on recreated" );
+            for( PropertyType current : original.getAllPropertyTypes() ) {
+                checkEquals( recreated.getPropertyValue( current ), original.getPropertyValue( current ), "wrong value for " + current );
+            }
+        }
+
+        mb.die();
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        SerializerTest2 test = null;
+        try {
+            if( args.length > 0 ) {
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new SerializerTest2( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    public SerializerTest2(
+            String [] args )
+        throws
+            Exception
+    {
+        super( SerializerTest2.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( SerializerTest2.class );
+
+    /**
+     * The PropertyTypes to set on the test MeshObject.
+     */
+    protected static final PropertyType [] theTestProperties = {
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALBLOBDATATYPEANY,
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALBOOLEANDATATYPE,
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALCOLORDATATYPE,
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALCURRENCYDATATYPE,
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALENUMERATEDDATATYPE,
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALEXTENTDATATYPE,
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALFLOATDATATYPE,
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALINTEGERDATATYPE,
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALMULTIPLICITYDATATYPE,
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALPOINTDATATYPE,
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALSTRINGDATATYPE,
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALTIMEPERIODDATATYPE,
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALTIMESTAMPDATATYPE
+    };
+
+    /**
+     * The PropertyValues to set on the test MeshObject.
+     */
+    protected static final PropertyValue [] theTestValues = {
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALBLOBDATATYPEANY_type.createBlobValue( "test1", "text/plain" ),
+            BooleanValue.TRUE,
+            ColorValue.create( 0x202020 ),
+            CurrencyValue.create( 1.23, "USD" ),
+            TestSubjectArea.OPTIONALPROPERTIES_OPTIONALENUMERATEDDATATYPE_type.select( "Value3" ),
+            ExtentValue.create( 1.2, 3.4 ),
+            FloatValue.create( 56.78 ),
+            IntegerValue.create( -99 ),
+            MultiplicityValue.create( 2, 7 ),
+            PointValue.create( 9.8, 7.6 ),
+            StringValue.create( "some string with \u00fcml\u00e4uts" ),
+            TimePeriodValue.create( (short) 1, (short) 2, (short) 3, (short)  4, (short)  5, (float)  6. ),
+            TimeStampValue.create(  (short) 7, (short) 8, (short) 9, (short) 10, (short) 11, (float) 12. )
+    };
+}
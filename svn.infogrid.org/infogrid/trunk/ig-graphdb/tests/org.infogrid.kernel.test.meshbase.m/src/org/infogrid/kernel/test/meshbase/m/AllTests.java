@@ -53,12 +53,21 @@ public abstract class AllTests
                 new TestSpec( MeshBaseTest16.class ),
                 new TestSpec( MeshBaseTest17.class ),
                 new TestSpec( MeshBaseTest18.class ),
+                new TestSpec( MeshBaseTest19.class ),
+                new TestSpec( MeshBaseTest20.class ),
+                new TestSpec( MeshBaseTest21.class ),
+                new TestSpec( MeshBaseTest22.class ),
+                new TestSpec( MeshBaseTest23.class ),
+                new TestSpec( MeshBaseTest24.class ),
 
                 new TestSpec( GarbageCollectionTest1.class ),
 
                 new TestSpec( SweeperTest1.class ),
                 new TestSpec( SweeperTest2.class ),
 
+                new TestSpec( PropertyValueIndexTest1.class ),
+                new TestSpec( ExtentIndexTest1.class ),
+
                 new TestSpec( RollbackTest1.class ),
                 new TestSpec( RollbackTest2.class ),
                 new TestSpec( RollbackTest3.class )
@@ -0,0 +1,265 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.index.DefaultPropertyValueIndexer;
+import org.infogrid.meshbase.index.ExtentIndex;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.util.CursorIterator;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that ExtentIndexes find all instances of an EntityType, including instances of
+ * subtypes, that MeshBase.findMeshObjectsByType finds the same MeshObjects with and
+ * without an ExtentIndex, and that the MeshObjects can be paged through.
+ */
+public class ExtentIndexTest1
+        extends
+            AbstractMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public void run()
+        throws
+            Exception
+    {
+        MMeshBase                mb   = MMeshBase.create( theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ), theModelBase, null, rootContext );
+        MeshBaseLifecycleManager life = mb.getMeshBaseLifecycleManager();
+
+        //
+
+        log.info( "Creating MeshObjects" );
+
+        Transaction tx = mb.createTransactionNow();
+
+        MeshObject [] aas = new MeshObject[ N ];
+        MeshObject [] bs  = new MeshObject[ N ];
+        for( int i=0 ; i<N ; ++i ) {
+            aas[i] = life.createMeshObject( TestSubjectArea.AA );
+            bs[i]  = life.createMeshObject( TestSubjectArea.B );
+        }
+
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Finding without ExtentIndex" );
+
+        MeshObjectSet scannedA = mb.findMeshObjectsByType( TestSubjectArea.A );
+        MeshObjectSet scannedB = mb.findMeshObjectsByType( TestSubjectArea.B );
+
+        checkEqualsOutOfSequence( scannedA.getMeshObjects(), aas, "wrong instances of A found by scanning" );
+        checkEqualsOutOfSequence( scannedB.getMeshObjects(), bs,  "wrong instances of B found by scanning" );
+        checkEquals( count( mb.meshObjectsByTypeIterator( TestSubjectArea.AA )), N, "wrong number of AA iterated over by scanning" );
+
+        //
+
+        log.info( "Creating ExtentIndexes" );
+
+        DefaultPropertyValueIndexer indexer = DefaultPropertyValueIndexer.create( mb );
+        mb.setPropertyValueIndexer( indexer );
+
+        ExtentIndex aExtent = indexer.addExtentIndex( TestSubjectArea.A );
+        ExtentIndex bExtent = indexer.addExtentIndex( TestSubjectArea.B );
+
+        checkEquals( aExtent.size(), N, "wrong size of A extent" );
+        checkEquals( bExtent.size(), N, "wrong size of B extent" );
+        checkCondition( indexer.addExtentIndex( TestSubjectArea.A ) == aExtent, "ExtentIndex created twice" );
+        checkCondition( indexer.getExtentIndex( TestSubjectArea.AA ) == null, "ExtentIndex found that was not created" );
+        checkEquals( indexer.getExtentIndexes().length, 2, "wrong number of ExtentIndexes" );
+
+        checkEqualsOutOfSequence( mb.findMeshObjectsByType( TestSubjectArea.A ).getMeshObjects(), aas, "wrong instances of A found with index" );
+        checkEqualsOutOfSequence( mb.findMeshObjectsByType( TestSubjectArea.B ).getMeshObjects(), bs,  "wrong instances of B found with index" );
+
+        //
+
+        log.info( "Paging" );
+
+        CursorIterator<MeshObject> iter  = mb.meshObjectsByTypeIterator( TestSubjectArea.B );
+        int                        count = 0;
+        while( iter.hasNext() ) {
+            MeshObject [] page = iter.next( PAGE_LENGTH );
+            checkCondition( page.length == PAGE_LENGTH || !iter.hasNext(), "short page in the middle" );
+
+            for( int i=0 ; i<page.length ; ++i ) {
+                checkCondition( page[i] != null, "null MeshObject in page" );
+                checkCondition( page[i].isBlessedBy( TestSubjectArea.B ), "wrong type in page" );
+            }
+            count += page.length;
+        }
+        checkEquals( count, N, "wrong number of MeshObjects paged through" );
+
+        iter.moveToBeforeFirst();
+        iter.moveBy( PAGE_LENGTH );
+        MeshObject [] secondPage = iter.next( PAGE_LENGTH );
+        iter.moveToBefore( secondPage[0] );
+        checkEquals( iter.next(), secondPage[0], "wrong MeshObject after moving" );
+        checkEquals( iter.previous(), secondPage[0], "wrong MeshObject after moving back" );
+
+        //
+
+        log.info( "Blessing, unblessing, creating and deleting" );
+
+        tx = mb.createTransactionNow();
+
+        aas[0].unbless( TestSubjectArea.AA );
+        aas[0].bless( TestSubjectArea.B );
+        life.deleteMeshObject( bs[0] );
+        MeshObject newAa = life.createMeshObject( TestSubjectArea.AA );
+
+        // not visible before the Transaction is committed
+        checkCondition( aExtent.contains( aas[0].getIdentifier() ), "uncommitted unbless visible" );
+        checkCondition( !aExtent.contains( newAa.getIdentifier() ), "uncommitted creation visible" );
+
+        tx.commitTransaction();
+
+        checkCondition( !aExtent.contains( aas[0].getIdentifier() ), "still in A extent after unblessing" );
+        checkCondition( bExtent.contains( aas[0].getIdentifier() ), "not in B extent after blessing" );
+        checkCondition( !bExtent.contains( bs[0].getIdentifier() ), "still in B extent after deleting" );
+        checkCondition( aExtent.contains( newAa.getIdentifier() ), "not in A extent after creating" );
+        checkEquals( aExtent.size(), N, "wrong size of A extent after changes" );
+        checkEquals( bExtent.size(), N, "wrong size of B extent after changes" );
+
+        //
+
+        log.info( "Rolling back" );
+
+        tx = mb.createTransactionNow();
+
+        MeshObject rolledBack = life.createMeshObject( TestSubjectArea.AA );
+        MeshObjectIdentifier rolledBackId = rolledBack.getIdentifier();
+        life.deleteMeshObject( aas[1] );
+
+        tx.rollbackTransaction( null );
+
+        checkCondition( !aExtent.contains( rolledBackId ), "rolled-back creation visible" );
+        checkCondition( aExtent.contains( aas[1].getIdentifier() ), "rolled-back deletion visible" );
+        checkEquals( aExtent.size(), N, "wrong size of A extent after rollback" );
+
+        //
+
+        log.info( "Deleting while iterating" );
+
+        iter = mb.meshObjectsByTypeIterator( TestSubjectArea.A );
+        MeshObject first = iter.peekNext();
+
+        tx = mb.createTransactionNow();
+        life.deleteMeshObject( first );
+        tx.commitTransaction();
+
+        checkCondition( iter.next() == null, "deleted MeshObject returned" );
+        checkEquals( count( iter ), N-1, "wrong number of remaining MeshObjects" );
+
+        //
+
+        log.info( "Removing ExtentIndex" );
+
+        MeshObject [] indexedA = mb.findMeshObjectsByType( TestSubjectArea.A ).getMeshObjects();
+
+        checkCondition( indexer.removeExtentIndex( TestSubjectArea.A ), "ExtentIndex not removed" );
+        checkCondition( !indexer.removeExtentIndex( TestSubjectArea.A ), "ExtentIndex removed twice" );
+
+        checkEqualsOutOfSequence( mb.findMeshObjectsByType( TestSubjectArea.A ).getMeshObjects(), indexedA, "different instances of A found after removing index" );
+
+        mb.die();
+    }
+
+    /**
+     * Count the remaining elements of a CursorIterator.
+     *
+     * @param iter the CursorIterator
+     * @return the number of elements
+     */
+    protected static int count(
+            CursorIterator<MeshObject> iter )
+    {
+        int ret = 0;
+        while( iter.hasNext() ) {
+            iter.next();
+            ++ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        ExtentIndexTest1 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new ExtentIndexTest1( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public ExtentIndexTest1(
+            String [] args )
+        throws
+            Exception
+    {
+        super( ExtentIndexTest1.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( ExtentIndexTest1.class );
+
+    /**
+     * The number of MeshObjects per EntityType.
+     */
+    protected static final int N = 100;
+
+    /**
+     * The length of a page. This is chosen so it does not divide N.
+     */
+    protected static final int PAGE_LENGTH = 7;
+}
@@ -0,0 +1,270 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.MeshObjectWriteLockException;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.meshbase.transaction.TransactionActiveAlreadyException;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests concurrent Transactions.
+ */
+public class MeshBaseTest19
+        extends
+            AbstractMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public void run()
+        throws
+            Exception
+    {
+        final MMeshBase theMeshBase = MMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                rootContext );
+
+        theMeshBase.setAllowsConcurrentTransactions( true );
+
+        final MeshBaseLifecycleManager life = theMeshBase.getMeshBaseLifecycleManager();
+
+        Transaction tx = theMeshBase.createTransactionNow();
+
+        final MeshObject a = life.createMeshObject();
+        final MeshObject b = life.createMeshObject();
+
+        try {
+            theMeshBase.createTransactionNow();
+            reportError( "Second Transaction on the same Thread" );
+        } catch( TransactionActiveAlreadyException ex ) {
+            // noop
+        }
+        tx.commitTransaction();
+
+        final List<Throwable> problems = new ArrayList<Throwable>();
+
+        //
+
+        log.info( "Disjoint Transactions run in parallel" );
+
+        final CountDownLatch bothOpen = new CountDownLatch( 2 );
+
+        Thread [] threads = new Thread[ 2 ];
+        for( int t=0 ; t<threads.length ; ++t ) {
+            final MeshObject mine = t == 0 ? a : b;
+
+            threads[t] = new Thread( "MeshBaseTest19-" + t ) {
+                @Override
+                public void run()
+                {
+                    try {
+                        Transaction myTx = theMeshBase.createTransactionNow();
+
+                        mine.relate( life.createMeshObject() );
+
+                        bothOpen.countDown();
+                        if( !bothOpen.await( 5, TimeUnit.SECONDS )) {
+                            throw new RuntimeException( "Transactions did not run in parallel" );
+                        }
+                        myTx.commitTransaction();
+
+                    } catch( Throwable ex ) {
+                        synchronized( problems ) {
+                            problems.add( ex );
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for( int t=0 ; t<threads.length ; ++t ) {
+            threads[t].join();
+        }
+        checkEquals( problems.size(), 0, "Problems: " + problems );
+        checkEquals( a.traverseToNeighborMeshObjects().size(), 1, "wrong number of neighbors of a" );
+        checkEquals( b.traverseToNeighborMeshObjects().size(), 1, "wrong number of neighbors of b" );
+        checkEquals( theMeshBase.getWriteLockWaitCount(), 0L, "Should not have waited" );
+        checkCondition( !theMeshBase.hasActiveTransactions(), "Transactions still active" );
+
+        //
+
+        log.info( "Conflicting Transaction waits for the write lock" );
+
+        tx = theMeshBase.createTransactionNow();
+        a.relate( life.createMeshObject() );
+
+        Thread waiter = new Thread( "MeshBaseTest19-waiter" ) {
+            @Override
+            public void run()
+            {
+                try {
+                    Transaction myTx = theMeshBase.createTransactionNow();
+
+                    a.relate( life.createMeshObject() );
+
+                    myTx.commitTransaction();
+
+                } catch( Throwable ex ) {
+                    synchronized( problems ) {
+                        problems.add( ex );
+                    }
+                }
+            }
+        };
+        waiter.start();
+
+        waitForWriteLockWaits( theMeshBase, 1 );
+        checkEquals( a.traverseToNeighborMeshObjects().size(), 2, "waiting Transaction modified a" );
+
+        tx.commitTransaction();
+        waiter.join();
+
+        checkEquals( problems.size(), 0, "Problems: " + problems );
+        checkEquals( a.traverseToNeighborMeshObjects().size(), 3, "wrong number of neighbors of a" );
+
+        //
+
+        log.info( "Deadlock is detected" );
+
+        tx = theMeshBase.createTransactionNow();
+        a.relate( life.createMeshObject() );
+
+        waiter = new Thread( "MeshBaseTest19-waiter2" ) {
+            @Override
+            public void run()
+            {
+                try {
+                    Transaction myTx = theMeshBase.createTransactionNow();
+
+                    b.relate( life.createMeshObject() );
+                    a.relate( life.createMeshObject() );
+
+                    myTx.commitTransaction();
+
+                } catch( Throwable ex ) {
+                    synchronized( problems ) {
+                        problems.add( ex );
+                    }
+                }
+            }
+        };
+        waiter.start();
+
+        waitForWriteLockWaits( theMeshBase, 2 );
+
+        try {
+            b.relate( life.createMeshObject() );
+            reportError( "Deadlock not detected" );
+
+        } catch( MeshObjectWriteLockException ex ) {
+            checkCondition( ex.isDeadlock(), "Not reported as deadlock" );
+            checkEquals( ex.getLockedMeshObjectIdentifier(), b.getIdentifier(), "wrong locked MeshObject" );
+        }
+        tx.rollbackTransaction( null );
+        waiter.join();
+
+        checkEquals( problems.size(), 0, "Problems: " + problems );
+        checkEquals( a.traverseToNeighborMeshObjects().size(), 4, "wrong number of neighbors of a" );
+        checkEquals( b.traverseToNeighborMeshObjects().size(), 2, "wrong number of neighbors of b" );
+        checkEquals( theMeshBase.getWriteLockFailureCount(), 1L, "wrong number of write lock failures" );
+
+        //
+
+        theMeshBase.die();
+    }
+
+    /**
+     * Wait until the MeshBase has seen a certain number of Transactions waiting for a write lock.
+     *
+     * @param mb the MeshBase
+     * @param count the number of waits
+     * @throws InterruptedException thrown if interrupted
+     */
+    protected void waitForWriteLockWaits(
+            MMeshBase mb,
+            long      count )
+        throws
+            InterruptedException
+    {
+        for( int i=0 ; i<100 && mb.getWriteLockWaitCount() < count ; ++i ) {
+            Thread.sleep( 20L );
+        }
+        checkEquals( mb.getWriteLockWaitCount(), count, "wrong number of write lock waits" );
+        Thread.sleep( 20L ); // make sure it is actually waiting
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        MeshBaseTest19 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new MeshBaseTest19( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public MeshBaseTest19(
+            String [] args )
+        throws
+            Exception
+    {
+        super( MeshBaseTest19.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( MeshBaseTest19.class );
+}
@@ -0,0 +1,368 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.RoleType;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests MeshObjects with many neighbors: that neighbors are found, traversed by RoleType
+ * and removed correctly once the MeshObject indexes its neighbors, and how long relating,
+ * finding, traversing and unrelating take for different numbers of neighbors.
+ */
+public class MeshBaseTest20
+        extends
+            AbstractMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public void run()
+        throws
+            Exception
+    {
+        MeshBase                 theMeshBase = MMeshBase.create( theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ), theModelBase, null, rootContext );
+        MeshBaseLifecycleManager life        = theMeshBase.getMeshBaseLifecycleManager();
+
+        RoleType rS  = TestSubjectArea.R.getSource();
+        RoleType rD  = TestSubjectArea.R.getDestination();
+        RoleType rrS = TestSubjectArea.RR.getSource();
+
+        //
+
+        log.info( "Relating a hub with many neighbors" );
+
+        Transaction tx = theMeshBase.createTransactionNow();
+
+        MeshObject    hub       = life.createMeshObject( TestSubjectArea.AA );
+        MeshObject [] neighbors = new MeshObject[ N ];
+
+        for( int i=0 ; i<N ; ++i ) {
+            neighbors[i] = life.createMeshObject( TestSubjectArea.B );
+            switch( i % 3 ) {
+                case 0:
+                    hub.relateAndBless( rS, neighbors[i] );
+                    break;
+                case 1:
+                    hub.relateAndBless( rrS, neighbors[i] );
+                    break;
+                default:
+                    hub.relate( neighbors[i] );
+                    break;
+            }
+        }
+
+        tx.commitTransaction();
+
+        checkNeighbors( hub, neighbors );
+
+        //
+
+        log.info( "Changing the RoleTypes of some relationships" );
+
+        tx = theMeshBase.createTransactionNow();
+
+        for( int i=2 ; i<N ; i+=3 ) {
+            hub.blessRelationship( rS, neighbors[i] );
+        }
+        for( int i=2 ; i<N ; i+=3 ) {
+            hub.unblessRelationship( rS, neighbors[i] );
+        }
+
+        tx.commitTransaction();
+
+        checkNeighbors( hub, neighbors );
+
+        //
+
+        log.info( "Unrelating most neighbors, in an order different from the one they were related in" );
+
+        tx = theMeshBase.createTransactionNow();
+
+        int remaining = 10;
+        for( int i=N-1 ; i>=remaining ; i-=2 ) {
+            hub.unrelate( neighbors[i] );
+        }
+        for( int i=N-2 ; i>=remaining ; i-=2 ) {
+            hub.unrelate( neighbors[i] );
+        }
+
+        tx.commitTransaction();
+
+        for( int i=remaining ; i<N ; ++i ) {
+            checkCondition( !hub.isRelated( neighbors[i] ), "still related: " + i );
+            checkEquals( neighbors[i].traverseToNeighborMeshObjects().size(), 0, "neighbor still has neighbors: " + i );
+        }
+        MeshObject [] remainingNeighbors = new MeshObject[ remaining ];
+        System.arraycopy( neighbors, 0, remainingNeighbors, 0, remaining );
+
+        checkNeighbors( hub, remainingNeighbors );
+
+        //
+
+        log.info( "Relating again after having unrelated" );
+
+        tx = theMeshBase.createTransactionNow();
+
+        for( int i=remaining ; i<N ; ++i ) {
+            neighbors[i] = life.createMeshObject( TestSubjectArea.B );
+            switch( i % 3 ) {
+                case 0:
+                    hub.relateAndBless( rS, neighbors[i] );
+                    break;
+                case 1:
+                    hub.relateAndBless( rrS, neighbors[i] );
+                    break;
+                default:
+                    hub.relate( neighbors[i] );
+                    break;
+            }
+        }
+
+        tx.commitTransaction();
+
+        checkNeighbors( hub, neighbors );
+        checkEquals( neighbors[0].traverse( rD ).getSingleMember(), hub, "wrong traversal from neighbor" );
+
+        theMeshBase.die();
+
+        //
+
+        for( int i=0 ; i<DEGREES.length ; ++i ) {
+            measure( DEGREES[i] );
+        }
+    }
+
+    /**
+     * Check that a hub is related to exactly the given neighbors, blessed as they were
+     * blessed in the run method.
+     *
+     * @param hub the hub
+     * @param neighbors the neighbors
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    protected void checkNeighbors(
+            MeshObject    hub,
+            MeshObject [] neighbors )
+        throws
+            Exception
+    {
+        RoleType rS  = TestSubjectArea.R.getSource();
+        RoleType rrS = TestSubjectArea.RR.getSource();
+
+        int nR  = 0;
+        int nRR = 0;
+
+        for( int i=0 ; i<neighbors.length ; ++i ) {
+            checkCondition( hub.isRelated( neighbors[i] ), "not related: " + i );
+
+            RoleType [] found = hub.getRoleTypes( neighbors[i] );
+            switch( i % 3 ) {
+                case 0:
+                    checkEquals( found.length, 1, "wrong number of RoleTypes: " + i );
+                    checkEquals( found.length > 0 ? found[0] : null, rS, "wrong RoleType: " + i );
+                    ++nR;
+                    break;
+                case 1:
+                    checkEquals( found.length, 1, "wrong number of RoleTypes: " + i );
+                    checkEquals( found.length > 0 ? found[0] : null, rrS, "wrong RoleType: " + i );
+                    ++nRR;
+                    break;
+                default:
+                    checkEquals( found.length, 0, "wrong number of RoleTypes: " + i );
+                    break;
+            }
+        }
+        checkEquals( hub.traverseToNeighborMeshObjects().size(), neighbors.length, "wrong number of neighbors" );
+
+        MeshObjectSet viaR  = hub.traverse( rS );
+        MeshObjectSet viaRR = hub.traverse( rrS );
+
+        checkEquals( viaR.size(),  nR + nRR, "wrong number of neighbors via R" );
+        checkEquals( viaRR.size(), nRR,      "wrong number of neighbors via RR" );
+
+        for( int i=0 ; i<neighbors.length ; ++i ) {
+            switch( i % 3 ) {
+                case 0:
+                    checkCondition(  viaR.contains( neighbors[i] ),  "not found via R: " + i );
+                    checkCondition( !viaRR.contains( neighbors[i] ), "found via RR: " + i );
+                    break;
+                case 1:
+                    checkCondition(  viaR.contains( neighbors[i] ),  "not found via R: " + i );
+                    checkCondition(  viaRR.contains( neighbors[i] ), "not found via RR: " + i );
+                    break;
+                default:
+                    checkCondition( !viaR.contains( neighbors[i] ),  "found via R: " + i );
+                    checkCondition( !viaRR.contains( neighbors[i] ), "found via RR: " + i );
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Measure how long operations on a hub with a given number of neighbors take.
+     *
+     * @param degree the number of neighbors
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    protected void measure(
+            int degree )
+        throws
+            Exception
+    {
+        collectGarbage();
+
+        log.info( "Measuring with " + degree + " neighbors" );
+
+        MeshBase                 mb   = MMeshBase.create( theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ), theModelBase, null, rootContext );
+        MeshBaseLifecycleManager life = mb.getMeshBaseLifecycleManager();
+
+        RoleType rS = TestSubjectArea.R.getSource();
+
+        Transaction tx = mb.createTransactionNow();
+
+        MeshObject    hub       = life.createMeshObject( TestSubjectArea.AA );
+        MeshObject [] neighbors = new MeshObject[ degree ];
+        for( int i=0 ; i<degree ; ++i ) {
+            neighbors[i] = life.createMeshObject( TestSubjectArea.B );
+        }
+
+        startClock();
+        for( int i=0 ; i<degree ; ++i ) {
+            if( i % 2 == 0 ) {
+                hub.relateAndBless( rS, neighbors[i] );
+            } else {
+                hub.relate( neighbors[i] );
+            }
+        }
+        long relateTime = getRelativeTime();
+
+        tx.commitTransaction();
+
+        startClock();
+        int nRelated = 0;
+        for( int i=0 ; i<degree ; ++i ) {
+            if( hub.isRelated( neighbors[i] )) {
+                ++nRelated;
+            }
+        }
+        long isRelatedTime = getRelativeTime();
+
+        startClock();
+        int nTraversed = 0;
+        for( int i=0 ; i<N_TRAVERSALS ; ++i ) {
+            nTraversed += hub.traverse( rS ).size();
+        }
+        long traverseTime = getRelativeTime();
+
+        tx = mb.createTransactionNow();
+
+        startClock();
+        for( int i=degree-1 ; i>=0 ; --i ) {
+            hub.unrelate( neighbors[i] );
+        }
+        long unrelateTime = getRelativeTime();
+
+        tx.commitTransaction();
+
+        checkEquals( nRelated,   degree,                              "wrong number of related neighbors" );
+        checkEquals( nTraversed, N_TRAVERSALS * (( degree + 1 ) / 2 ), "wrong number of traversed neighbors" );
+        checkEquals( hub.traverseToNeighborMeshObjects().size(), 0,   "still has neighbors" );
+
+        log.info(
+                degree + " neighbors: "
+                + ( relateTime    * 1000L / degree )       + " usec per relate, "
+                + ( isRelatedTime * 1000L / degree )       + " usec per isRelated, "
+                + ( traverseTime  * 1000L / N_TRAVERSALS ) + " usec per traverse, "
+                + ( unrelateTime  * 1000L / degree )       + " usec per unrelate" );
+
+        mb.die();
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        MeshBaseTest20 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new MeshBaseTest20( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public MeshBaseTest20(
+            String [] args )
+        throws
+            Exception
+    {
+        super( MeshBaseTest20.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( MeshBaseTest20.class );
+
+    /**
+     * The number of neighbors of the hub in the correctness part of the test.
+     */
+    protected static final int N = 200;
+
+    /**
+     * The numbers of neighbors to measure with.
+     */
+    protected static final int [] DEGREES = { 10, 100, 1000, 10000 };
+
+    /**
+     * The number of traversals to measure.
+     */
+    protected static final int N_TRAVERSALS = 100;
+}
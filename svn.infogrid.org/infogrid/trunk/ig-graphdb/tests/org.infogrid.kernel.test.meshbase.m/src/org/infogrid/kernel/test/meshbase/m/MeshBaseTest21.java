@@ -0,0 +1,462 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import java.util.Comparator;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.set.DefaultTraversalPathSorter;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.mesh.set.MeshObjectSetFactory;
+import org.infogrid.mesh.set.OrderedMeshObjectSet;
+import org.infogrid.mesh.set.OrderedTraversalPathSet;
+import org.infogrid.mesh.set.TraversalPathSet;
+import org.infogrid.mesh.set.TraversalPathSorter;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.RoleType;
+import org.infogrid.model.traversal.TraversalPath;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests constructing, unifying, intersecting and subtracting large MeshObjectSets and
+ * TraversalPathSets, and compares how long this takes with the sequential algorithms
+ * previously used, for different numbers of members.
+ */
+public class MeshBaseTest21
+        extends
+            AbstractMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public void run()
+        throws
+            Exception
+    {
+        MeshBase                 theMeshBase = MMeshBase.create( theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ), theModelBase, null, rootContext );
+        MeshBaseLifecycleManager life        = theMeshBase.getMeshBaseLifecycleManager();
+        MeshObjectSetFactory     factory     = theMeshBase.getMeshObjectSetFactory();
+
+        RoleType rS = TestSubjectArea.R.getSource();
+        RoleType rD = TestSubjectArea.R.getDestination();
+
+        //
+
+        log.info( "Creating MeshObjects" );
+
+        Transaction tx = theMeshBase.createTransactionNow();
+
+        MeshObject    hub  = life.createMeshObject( TestSubjectArea.AA );
+        MeshObject [] objs = new MeshObject[ N ];
+        for( int i=0 ; i<N ; ++i ) {
+            objs[i] = life.createMeshObject( TestSubjectArea.B );
+            if( i % 2 == 0 ) {
+                hub.relateAndBless( rS, objs[i] );
+            }
+        }
+
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Rejecting duplicates" );
+
+        MeshObject [] withDuplicate = new MeshObject[ N ];
+        System.arraycopy( objs, 0, withDuplicate, 0, N );
+        withDuplicate[ N-1 ] = objs[ N/2 ];
+
+        try {
+            factory.createImmutableMeshObjectSet( withDuplicate );
+            reportError( "duplicates not rejected" );
+        } catch( IllegalArgumentException ex ) {
+            // expected
+        }
+        try {
+            factory.createOrderedImmutableMeshObjectSet( withDuplicate );
+            reportError( "duplicates not rejected in ordered set" );
+        } catch( IllegalArgumentException ex ) {
+            // expected
+        }
+
+        //
+
+        log.info( "Set algebra" );
+
+        MeshObjectSet one = factory.createImmutableMeshObjectSet( range( objs, 0, 3*N/4 ));
+        MeshObjectSet two = factory.createImmutableMeshObjectSet( reverse( range( objs, N/4, N )));
+
+        checkEquals( one.size(), 3*N/4, "wrong size of one" );
+        checkCondition(  one.contains( objs[0] ),     "one does not contain first" );
+        checkCondition( !one.contains( objs[N-1] ),   "one contains last" );
+        checkCondition(  two.containsAll( factory.createImmutableMeshObjectSet( range( objs, N/2, N ))), "two does not contain second half" );
+        checkCondition( !two.containsAll( one ), "two contains all of one" );
+
+        MeshObjectSet unification  = factory.createImmutableMeshObjectSetUnification( one, two );
+        MeshObjectSet intersection = factory.createImmutableMeshObjectSetIntersection( one, two );
+        MeshObjectSet minus        = factory.createImmutableMeshObjectSetMinus( one, two );
+
+        checkEqualsOutOfSequence( unification.getMeshObjects(),  objs,                          "wrong unification" );
+        checkEqualsOutOfSequence( intersection.getMeshObjects(), range( objs, N/4, 3*N/4 ),     "wrong intersection" );
+        checkEqualsOutOfSequence( minus.getMeshObjects(),        range( objs, 0, N/4 ),         "wrong minus" );
+
+        OrderedMeshObjectSet ordered = factory.createOrderedImmutableMeshObjectSet( reverse( objs ));
+        for( int i=0 ; i<N ; ++i ) {
+            checkEquals( ordered.findIndexOf( objs[i] ), N-1-i, "wrong index: " + i );
+        }
+        checkEquals( ordered.findIndexOf( hub ), -1, "found hub" );
+
+        //
+
+        log.info( "TraversalPathSets" );
+
+        TraversalPathSet firstStep = factory.createImmutableTraversalPathSet( hub, rS );
+        checkEquals( firstStep.size(), N/2, "wrong number of paths" );
+        checkEquals( firstStep.getDestinationsAsSet().size(), N/2, "wrong number of destinations" );
+
+        TraversalPathSet secondStep = factory.createImmutableTraversalPathSet( firstStep, rD );
+        checkEquals( secondStep.size(), N/2, "wrong number of paths after second step" );
+        checkEquals( secondStep.getDestinationsAsSet().size(), 1, "wrong number of destinations after second step" );
+        checkEquals( secondStep.getDestinationsAsSet().getSingleMember(), hub, "wrong destination after second step" );
+        checkEquals( secondStep.getStepAsSet( 0 ).size(), N/2, "wrong number of first steps" );
+
+        TraversalPath [] paths = secondStep.getTraversalPaths();
+        for( int i=0 ; i<paths.length ; ++i ) {
+            checkEquals( paths[i].getSize(), 2, "wrong path length: " + i );
+            checkCondition( secondStep.contains( paths[i] ), "does not contain path: " + i );
+        }
+
+        TraversalPathSorter sorter = new DefaultTraversalPathSorter( new Comparator<TraversalPath>() {
+                public int compare(
+                        TraversalPath one,
+                        TraversalPath two )
+                {
+                    return one.getFirstMeshObjectIdentifier().toExternalForm().compareTo(
+                            two.getFirstMeshObjectIdentifier().toExternalForm() );
+                }
+        });
+        OrderedTraversalPathSet orderedPaths = factory.createOrderedImmutableTraversalPathSet( secondStep, sorter );
+        for( int i=0 ; i<orderedPaths.size() ; ++i ) {
+            checkEquals( orderedPaths.findIndexOf( orderedPaths.getTraversalPath( i )), i, "wrong path index: " + i );
+        }
+
+        theMeshBase.die();
+
+        //
+
+        for( int i=0 ; i<SIZES.length ; ++i ) {
+            measure( SIZES[i] );
+        }
+    }
+
+    /**
+     * Measure how long set operations with a given number of members take.
+     *
+     * @param size the number of members
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    protected void measure(
+            int size )
+        throws
+            Exception
+    {
+        collectGarbage();
+
+        log.info( "Measuring with " + size + " members" );
+
+        MeshBase                 mb      = MMeshBase.create( theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ), theModelBase, null, rootContext );
+        MeshBaseLifecycleManager life    = mb.getMeshBaseLifecycleManager();
+        MeshObjectSetFactory     factory = mb.getMeshObjectSetFactory();
+
+        Transaction tx = mb.createTransactionNow();
+
+        MeshObject [] objs = new MeshObject[ size ];
+        for( int i=0 ; i<size ; ++i ) {
+            objs[i] = life.createMeshObject( TestSubjectArea.B );
+        }
+
+        tx.commitTransaction();
+
+        MeshObject [] oneContent = range( objs, 0, 3*size/4 );
+        MeshObject [] twoContent = reverse( range( objs, size/4, size ));
+
+        startClock();
+        MeshObjectSet one = factory.createImmutableMeshObjectSet( oneContent );
+        MeshObjectSet two = factory.createImmutableMeshObjectSet( twoContent );
+        long createTime = getRelativeTime();
+
+        startClock();
+        int nUnified = factory.createImmutableMeshObjectSetUnification( one, two ).size();
+        long unifyTime = getRelativeTime();
+
+        startClock();
+        int nIntersected = factory.createImmutableMeshObjectSetIntersection( one, two ).size();
+        long intersectTime = getRelativeTime();
+
+        startClock();
+        int nSubtracted = factory.createImmutableMeshObjectSetMinus( one, two ).size();
+        long minusTime = getRelativeTime();
+
+        checkEquals( nUnified,    size,                    "wrong unification size" );
+        checkEquals( nIntersected, 3*size/4 - size/4,      "wrong intersection size" );
+        checkEquals( nSubtracted,  size/4,                 "wrong minus size" );
+
+        String msg = size + " members: "
+                + createTime    + " msec create, "
+                + unifyTime     + " msec unify, "
+                + intersectTime + " msec intersect, "
+                + minusTime     + " msec minus";
+
+        if( size <= MAX_SEQUENTIAL_SIZE ) {
+            startClock();
+            sequentialCheckDuplicates( oneContent );
+            sequentialCheckDuplicates( twoContent );
+            long seqCreateTime = getRelativeTime();
+
+            startClock();
+            int seqUnified = sequentialUnify( oneContent, twoContent );
+            long seqUnifyTime = getRelativeTime();
+
+            startClock();
+            int seqIntersected = sequentialIntersect( oneContent, twoContent );
+            long seqIntersectTime = getRelativeTime();
+
+            startClock();
+            int seqSubtracted = sequentialMinus( oneContent, twoContent );
+            long seqMinusTime = getRelativeTime();
+
+            checkEquals( seqUnified,     nUnified,     "sequential unification differs" );
+            checkEquals( seqIntersected, nIntersected, "sequential intersection differs" );
+            checkEquals( seqSubtracted,  nSubtracted,  "sequential minus differs" );
+
+            msg += "; sequentially: "
+                    + seqCreateTime    + " msec create, "
+                    + seqUnifyTime     + " msec unify, "
+                    + seqIntersectTime + " msec intersect, "
+                    + seqMinusTime     + " msec minus";
+        }
+        log.info( msg );
+
+        mb.die();
+    }
+
+    /**
+     * The sequential duplicate check previously used when creating a MeshObjectSet.
+     *
+     * @param candidates the candidate members
+     */
+    protected void sequentialCheckDuplicates(
+            MeshObject [] candidates )
+    {
+        for( int i=0 ; i<candidates.length ; ++i ) {
+            for( int j=0 ; j<i ; ++j ) {
+                if( candidates[i] == candidates[j] ) {
+                    reportError( "duplicate found: " + i );
+                }
+            }
+        }
+    }
+
+    /**
+     * The sequential unification previously used.
+     *
+     * @param one the first operand
+     * @param two the second operand
+     * @return the number of members in the unification
+     */
+    protected int sequentialUnify(
+            MeshObject [] one,
+            MeshObject [] two )
+    {
+        MeshObject [] objs  = new MeshObject[ one.length + two.length ];
+        int           count = 0;
+
+        MeshObject [][] operands = { one, two };
+        for( int i=0 ; i<operands.length ; ++i ) {
+            for( int j=0 ; j<operands[i].length ; ++j ) {
+                if( sequentialIndexOf( operands[i][j], objs, count ) < 0 ) {
+                    objs[ count++ ] = operands[i][j];
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The sequential intersection previously used.
+     *
+     * @param one the first operand
+     * @param two the second operand
+     * @return the number of members in the intersection
+     */
+    protected int sequentialIntersect(
+            MeshObject [] one,
+            MeshObject [] two )
+    {
+        int count = 0;
+        for( int i=0 ; i<one.length ; ++i ) {
+            if( sequentialIndexOf( one[i], two, two.length ) >= 0 ) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The sequential minus previously used.
+     *
+     * @param one the first operand
+     * @param two the second operand
+     * @return the number of members in the result
+     */
+    protected int sequentialMinus(
+            MeshObject [] one,
+            MeshObject [] two )
+    {
+        int count = 0;
+        for( int i=0 ; i<one.length ; ++i ) {
+            if( sequentialIndexOf( one[i], two, two.length ) < 0 ) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Search an array sequentially.
+     *
+     * @param candidate the MeshObject to look for
+     * @param array the array
+     * @param max the number of elements in the array to consider
+     * @return the index, or -1 if not found
+     */
+    protected static int sequentialIndexOf(
+            MeshObject    candidate,
+            MeshObject [] array,
+            int           max )
+    {
+        for( int i=0 ; i<max ; ++i ) {
+            if( candidate == array[i] ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Obtain a range of an array.
+     *
+     * @param array the array
+     * @param start the first index
+     * @param end the index after the last
+     * @return the range
+     */
+    protected static MeshObject [] range(
+            MeshObject [] array,
+            int           start,
+            int           end )
+    {
+        MeshObject [] ret = new MeshObject[ end - start ];
+        System.arraycopy( array, start, ret, 0, ret.length );
+        return ret;
+    }
+
+    /**
+     * Obtain an array in reverse order.
+     *
+     * @param array the array
+     * @return the reversed array
+     */
+    protected static MeshObject [] reverse(
+            MeshObject [] array )
+    {
+        MeshObject [] ret = new MeshObject[ array.length ];
+        for( int i=0 ; i<array.length ; ++i ) {
+            ret[i] = array[ array.length-1-i ];
+        }
+        return ret;
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        MeshBaseTest21 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new MeshBaseTest21( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public MeshBaseTest21(
+            String [] args )
+        throws
+            Exception
+    {
+        super( MeshBaseTest21.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( MeshBaseTest21.class );
+
+    /**
+     * The number of MeshObjects in the correctness part of the test.
+     */
+    protected static final int N = 200;
+
+    /**
+     * The numbers of members to measure with.
+     */
+    protected static final int [] SIZES = { 100, 1000, 10000, 100000, 1000000 };
+
+    /**
+     * The largest number of members for which the sequential algorithms are measured, too.
+     * Beyond that, they take too long.
+     */
+    protected static final int MAX_SEQUENTIAL_SIZE = 10000;
+}
@@ -0,0 +1,274 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.set.MeshObjectBreadthFirstIterator;
+import org.infogrid.mesh.set.MeshObjectBreadthFirstTraversal;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.mesh.set.RightInstanceMeshObjectSelector;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.RoleType;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests MeshObjectBreadthFirstTraversal on a tree whose inner nodes are both A and B: the levels found, the limits, and that traversing
+ * with a ForkJoinPool finds the same MeshObjects in the same sequence as traversing without.
+ */
+public class MeshBaseTest22
+        extends
+            AbstractMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public void run()
+        throws
+            Exception
+    {
+        MeshBase                 theMeshBase = MMeshBase.create( theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ), theModelBase, null, rootContext );
+        MeshBaseLifecycleManager life        = theMeshBase.getMeshBaseLifecycleManager();
+
+        RoleType rS = TestSubjectArea.R.getSource();
+
+        //
+
+        log.info( "Creating a tree with some additional, unblessed relationships" );
+
+        Transaction tx = theMeshBase.createTransactionNow();
+
+        MeshObject    root          = life.createMeshObject( TestSubjectArea.AA );
+        MeshObject [] children      = new MeshObject[ N_CHILDREN ];
+        MeshObject [] grandChildren = new MeshObject[ N_CHILDREN * N_GRANDCHILDREN ];
+
+        for( int i=0 ; i<N_CHILDREN ; ++i ) {
+            children[i] = life.createMeshObject( new EntityType[] { TestSubjectArea.AA, TestSubjectArea.B } );
+            root.relateAndBless( rS, children[i] );
+
+            for( int j=0 ; j<N_GRANDCHILDREN ; ++j ) {
+                MeshObject current = life.createMeshObject( TestSubjectArea.B );
+                grandChildren[ i*N_GRANDCHILDREN + j ] = current;
+                children[i].relateAndBless( rS, current );
+            }
+        }
+        // a cycle back to the root, and a shortcut between the first and the last grandchild
+        grandChildren[0].relate( root );
+        grandChildren[0].relate( grandChildren[ grandChildren.length-1 ] );
+
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Traversing along R" );
+
+        MeshObject [][] levels = MeshObjectBreadthFirstTraversal.create( rS ).traverse( root );
+
+        checkEquals( levels.length,       3,                    "wrong number of levels" );
+        checkEquals( levels[0].length,    1,                    "wrong number of MeshObjects at level 0" );
+        checkEquals( levels[0][0],        root,                 "wrong start MeshObject" );
+        checkEqualsOutOfSequence( levels[1], children,      "wrong MeshObjects at level 1" );
+        checkEqualsOutOfSequence( levels[2], grandChildren, "wrong MeshObjects at level 2" );
+
+        //
+
+        log.info( "Traversing to all neighbors" );
+
+        levels = MeshObjectBreadthFirstTraversal.create( null ).traverse( grandChildren[0] );
+
+        checkEquals( levels.length,    4, "wrong number of levels" );
+        checkEquals( levels[1].length, 3, "wrong number of MeshObjects at level 1" );
+        checkEquals( count( levels ), 1 + N_CHILDREN + N_CHILDREN * N_GRANDCHILDREN, "wrong number of MeshObjects found" );
+
+        //
+
+        log.info( "Traversing with limits" );
+
+        levels = MeshObjectBreadthFirstTraversal.create( rS, 1, MeshObjectBreadthFirstTraversal.UNLIMITED, null, null ).traverse( root );
+        checkEquals( levels.length,   2,              "maxSteps: wrong number of levels" );
+        checkEquals( count( levels ), 1 + N_CHILDREN, "maxSteps: wrong number of MeshObjects found" );
+
+        levels = MeshObjectBreadthFirstTraversal.create( rS, 0, MeshObjectBreadthFirstTraversal.UNLIMITED, null, null ).traverse( root );
+        checkEquals( count( levels ), 1, "maxSteps 0: wrong number of MeshObjects found" );
+
+        levels = MeshObjectBreadthFirstTraversal.create( rS, MeshObjectBreadthFirstTraversal.UNLIMITED, N_CHILDREN + 10, null, null ).traverse( root );
+        checkEquals( levels.length,     3,              "maxFound: wrong number of levels" );
+        checkEquals( count( levels ),   N_CHILDREN + 10, "maxFound: wrong number of MeshObjects found" );
+        checkEquals( levels[2].length,  9,              "maxFound: wrong number of MeshObjects at level 2" );
+
+        MeshObject target = grandChildren[ N_GRANDCHILDREN * 5 + 1 ];
+        levels = MeshObjectBreadthFirstTraversal.create(
+                rS,
+                MeshObjectBreadthFirstTraversal.UNLIMITED,
+                MeshObjectBreadthFirstTraversal.UNLIMITED,
+                RightInstanceMeshObjectSelector.create( target ),
+                null ).traverse( root );
+        checkEquals( levels.length,                       3,      "stopWhenFound: wrong number of levels" );
+        checkEquals( levels[2][ levels[2].length-1 ], target, "stopWhenFound: wrong last MeshObject" );
+
+        //
+
+        log.info( "Comparing traversals with and without ForkJoinPool" );
+
+        ForkJoinPool pool = new ForkJoinPool( N_THREADS );
+        try {
+            MeshObject [] sequential = MeshObjectBreadthFirstTraversal.create( null ).traverseToArray( grandChildren[1] );
+            MeshObject [] parallel   = MeshObjectBreadthFirstTraversal.create(
+                    null,
+                    MeshObjectBreadthFirstTraversal.UNLIMITED,
+                    MeshObjectBreadthFirstTraversal.UNLIMITED,
+                    null,
+                    pool ).traverseToArray( grandChildren[1] );
+
+            checkEquals( parallel.length, sequential.length, "parallel: wrong number of MeshObjects found" );
+            for( int i=0 ; i<Math.min( parallel.length, sequential.length ) ; ++i ) {
+                checkEquals( parallel[i], sequential[i], "parallel: different MeshObject at " + i );
+            }
+
+            // the same, with a Transaction open on this Thread
+            tx = theMeshBase.createTransactionNow();
+
+            MeshObject [] inTx = MeshObjectBreadthFirstTraversal.create(
+                    null,
+                    MeshObjectBreadthFirstTraversal.UNLIMITED,
+                    MeshObjectBreadthFirstTraversal.UNLIMITED,
+                    null,
+                    pool ).traverseToArray( grandChildren[1] );
+
+            tx.commitTransaction();
+
+            checkEquals( inTx.length, sequential.length, "in Transaction: wrong number of MeshObjects found" );
+
+            //
+
+            log.info( "Comparing MeshObjectBreadthFirstIterator with and without ForkJoinPool" );
+
+            ArrayList<MeshObject> iterSequential = new ArrayList<MeshObject>();
+            for( MeshObjectBreadthFirstIterator iter = MeshObjectBreadthFirstIterator.create( root, rS, 3 ) ; iter.hasNext() ; ) {
+                iterSequential.add( iter.next() );
+            }
+            ArrayList<MeshObject> iterParallel = new ArrayList<MeshObject>();
+            for( MeshObjectBreadthFirstIterator iter = MeshObjectBreadthFirstIterator.create( root, rS, 3, pool ) ; iter.hasNext() ; ) {
+                iterParallel.add( iter.next() );
+            }
+            checkEquals( iterSequential.size(), 1 + N_CHILDREN + N_CHILDREN * N_GRANDCHILDREN, "iterator: wrong number of MeshObjects" );
+            checkEquals( iterParallel, iterSequential, "iterator: different sequence" );
+
+        } finally {
+            pool.shutdown();
+        }
+
+        //
+
+        log.info( "Transitive closure" );
+
+        MeshObjectSet closure = theMeshBase.getMeshObjectSetFactory().createTransitiveClosureImmutableMeshObjectSet( root, rS );
+        checkEquals( closure.size(), 1 + N_CHILDREN + N_CHILDREN * N_GRANDCHILDREN, "wrong size of transitive closure" );
+        checkCondition( closure.contains( grandChildren[ grandChildren.length-1 ] ), "transitive closure misses grandchild" );
+
+        theMeshBase.die();
+    }
+
+    /**
+     * Count the MeshObjects in all levels.
+     *
+     * @param levels the levels
+     * @return the number of MeshObjects
+     */
+    protected static int count(
+            MeshObject [][] levels )
+    {
+        int ret = 0;
+        for( int i=0 ; i<levels.length ; ++i ) {
+            ret += levels[i].length;
+        }
+        return ret;
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        MeshBaseTest22 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new MeshBaseTest22( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public MeshBaseTest22(
+            String [] args )
+        throws
+            Exception
+    {
+        super( MeshBaseTest22.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( MeshBaseTest22.class );
+
+    /**
+     * The number of children of the root. This is more than MeshObjectBreadthFirstTraversal.CHUNK_SIZE,
+     * so the ForkJoinPool gets used.
+     */
+    protected static final int N_CHILDREN = 150;
+
+    /**
+     * The number of children of each child.
+     */
+    protected static final int N_GRANDCHILDREN = 3;
+
+    /**
+     * The number of Threads in the ForkJoinPool.
+     */
+    protected static final int N_THREADS = 4;
+}
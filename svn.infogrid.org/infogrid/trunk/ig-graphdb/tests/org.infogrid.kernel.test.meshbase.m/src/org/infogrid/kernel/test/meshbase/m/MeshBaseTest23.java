@@ -0,0 +1,276 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.AbstractTransactionListener;
+import org.infogrid.meshbase.transaction.AsyncTransactionDispatcher;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.meshbase.transaction.TransactionBatchListener;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests AsyncTransactionDispatcher: commit order, batching, back-pressure and the
+ * per-listener statistics.
+ */
+public class MeshBaseTest23
+        extends
+            AbstractMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public void run()
+        throws
+            Exception
+    {
+        final MMeshBase theMeshBase = MMeshBase.create( theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ), theModelBase, null, rootContext );
+
+        //
+
+        log.info( "Committing Transactions with a slow asynchronous listener" );
+
+        AsyncTransactionDispatcher dispatcher = AsyncTransactionDispatcher.create( 100, MAX_BATCH_SIZE );
+        theMeshBase.setAsyncTransactionDispatcher( dispatcher );
+
+        final ArrayList<Transaction> syncCommitted = new ArrayList<Transaction>();
+        AbstractTransactionListener syncListener = new AbstractTransactionListener() {
+                @Override
+                public void transactionCommitted(
+                        Transaction tx )
+                {
+                    syncCommitted.add( tx );
+                }
+        };
+        theMeshBase.addDirectTransactionListener( syncListener );
+
+        RecordingListener slowListener = new RecordingListener( SLOW_MILLIS, null );
+        dispatcher.addDirectTransactionBatchListener( slowListener );
+
+        for( int i=0 ; i<N_TRANSACTIONS ; ++i ) {
+            Transaction tx = theMeshBase.createTransactionNow();
+            theMeshBase.getMeshBaseLifecycleManager().createMeshObject( TestSubjectArea.AA );
+            tx.commitTransaction();
+        }
+
+        checkCondition( dispatcher.awaitDelivered( 10000L ), "Not delivered in time" );
+        checkEquals( dispatcher.getDelivered(), (long) N_TRANSACTIONS, "Wrong number of Transactions delivered" );
+        checkEquals( slowListener.theCommitted.size(), N_TRANSACTIONS, "Wrong number of Transactions received" );
+        for( int i=0 ; i<N_TRANSACTIONS ; ++i ) {
+            checkIdentity( slowListener.theCommitted.get( i ), syncCommitted.get( i ), "Not in commit order at " + i );
+        }
+        for( Integer size : slowListener.theBatchSizes ) {
+            checkCondition( size <= MAX_BATCH_SIZE, "Batch too large: " + size );
+        }
+        checkCondition( slowListener.theBatchSizes.size() < N_TRANSACTIONS, "No batching happened" );
+        checkEquals( (long) slowListener.theBatchSizes.size(), dispatcher.getBatches(), "Wrong number of batches" );
+
+        AsyncTransactionDispatcher.ListenerStatistics stats = dispatcher.getListenerStatistics( slowListener );
+        checkObject( stats, "No statistics" );
+        checkEquals( stats.getCount(), dispatcher.getBatches(), "Wrong count in statistics" );
+        checkCondition( stats.getAverageNanos() >= SLOW_MILLIS * 1000000L, "Average latency too low: " + stats );
+        checkCondition( stats.getMaxNanos() >= stats.getAverageNanos(), "Max latency lower than average: " + stats );
+
+        log.info( "Delivered " + N_TRANSACTIONS + " Transactions in " + dispatcher.getBatches() + " batches, " + stats );
+
+        dispatcher.removeTransactionBatchListener( slowListener );
+        dispatcher.shutdown();
+
+        //
+
+        log.info( "Blocking the listener to check back-pressure" );
+
+        dispatcher = AsyncTransactionDispatcher.create( CAPACITY, MAX_BATCH_SIZE );
+        theMeshBase.setAsyncTransactionDispatcher( dispatcher );
+
+        CountDownLatch    latch           = new CountDownLatch( 1 );
+        RecordingListener blockedListener = new RecordingListener( 0L, latch );
+        dispatcher.addDirectTransactionBatchListener( blockedListener );
+
+        Thread committer = new Thread( "Committer" ) {
+                @Override
+                public void run()
+                {
+                    try {
+                        for( int i=0 ; i<N_TRANSACTIONS ; ++i ) {
+                            Transaction tx = theMeshBase.createTransactionNow();
+                            theMeshBase.getMeshBaseLifecycleManager().createMeshObject( TestSubjectArea.AA );
+                            tx.commitTransaction();
+                        }
+                    } catch( Exception ex ) {
+                        reportError( "Could not commit", ex );
+                    }
+                }
+        };
+        committer.start();
+        committer.join( 500L );
+
+        checkCondition( committer.isAlive(), "Committer was not held back" );
+        checkCondition( dispatcher.getPending() <= CAPACITY, "Too many pending: " + dispatcher.getPending() );
+
+        latch.countDown();
+        committer.join( 10000L );
+
+        checkCondition( !committer.isAlive(), "Committer still blocked" );
+        checkCondition( dispatcher.awaitDelivered( 10000L ), "Not delivered in time" );
+        checkEquals( blockedListener.theCommitted.size(), N_TRANSACTIONS, "Wrong number of Transactions received" );
+        checkEquals( dispatcher.getPending(), 0L, "Still pending" );
+
+        dispatcher.shutdown();
+        theMeshBase.die();
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        MeshBaseTest23 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new MeshBaseTest23( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public MeshBaseTest23(
+            String [] args )
+        throws
+            Exception
+    {
+        super( MeshBaseTest23.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( MeshBaseTest23.class );
+
+    /**
+     * The number of Transactions to commit.
+     */
+    protected static final int N_TRANSACTIONS = 50;
+
+    /**
+     * The maximum batch size.
+     */
+    protected static final int MAX_BATCH_SIZE = 10;
+
+    /**
+     * The capacity in the back-pressure test.
+     */
+    protected static final int CAPACITY = 4;
+
+    /**
+     * How long the slow listener takes per batch, in milliseconds.
+     */
+    protected static final long SLOW_MILLIS = 5L;
+
+    /**
+     * Records the Transactions and batches it receives.
+     */
+    static class RecordingListener
+            implements
+                TransactionBatchListener
+    {
+        /**
+         * Constructor.
+         *
+         * @param delay the time to sleep for each batch, in milliseconds
+         * @param latch if given, wait for this latch before processing a batch
+         */
+        public RecordingListener(
+                long           delay,
+                CountDownLatch latch )
+        {
+            theDelay = delay;
+            theLatch = latch;
+        }
+
+        /**
+         * Indicates that one or more Transactions have been committed.
+         *
+         * @param committed the committed Transactions
+         */
+        public void transactionsCommitted(
+                Transaction [] committed )
+        {
+            try {
+                if( theLatch != null ) {
+                    theLatch.await();
+                }
+                if( theDelay > 0 ) {
+                    Thread.sleep( theDelay );
+                }
+            } catch( InterruptedException ex ) {
+                log.error( ex );
+            }
+            theBatchSizes.add( committed.length );
+            for( Transaction current : committed ) {
+                theCommitted.add( current );
+            }
+        }
+
+        /**
+         * The time to sleep for each batch.
+         */
+        protected long theDelay;
+
+        /**
+         * The latch to wait for, if any.
+         */
+        protected CountDownLatch theLatch;
+
+        /**
+         * The received Transactions, in sequence.
+         */
+        protected ArrayList<Transaction> theCommitted = new ArrayList<Transaction>();
+
+        /**
+         * The sizes of the received batches.
+         */
+        protected ArrayList<Integer> theBatchSizes = new ArrayList<Integer>();
+    }
+}
@@ -0,0 +1,283 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.TypedMeshObjectFacade;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.FloatValue;
+import org.infogrid.model.primitives.PropertySlotLayout;
+import org.infogrid.model.primitives.PropertyType;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that PropertyValues are kept in the slots laid out by the EntityTypes across blessing
+ * and unblessing, and measures the bytes per MeshObject. The property storage of a MeshObject
+ * is compared with the HashMaps that were used before PropertySlotLayout.
+ */
+public class MeshBaseTest24
+        extends
+            AbstractMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public void run()
+        throws
+            Exception
+    {
+        MMeshBase theMeshBase = MMeshBase.create( theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ), theModelBase, null, rootContext );
+
+        //
+
+        log.info( "Checking the slot layouts" );
+
+        PropertySlotLayout aaLayout = TestSubjectArea.AA.getPropertySlotLayout();
+        checkIdentity( aaLayout, TestSubjectArea.AA.getPropertySlotLayout(), "Layout not cached" );
+        for( PropertyType current : TestSubjectArea.AA.getAllPropertyTypes() ) {
+            checkCondition( aaLayout.getSlot( current ) >= 0, "No slot for " + current );
+        }
+        checkEquals( aaLayout.getSlot( TestSubjectArea.B_U ), -1, "Slot for PropertyType of another EntityType" );
+
+        PropertySlotLayout combined = PropertySlotLayout.obtain( new EntityType[] { TestSubjectArea.AA, TestSubjectArea.B } );
+        checkIdentity( combined, PropertySlotLayout.obtain( new EntityType[] { TestSubjectArea.AA, TestSubjectArea.B } ), "Combined layout not cached" );
+        for( int i=0 ; i<aaLayout.size() ; ++i ) {
+            checkIdentity( combined.getPropertyType( i ), aaLayout.getPropertyType( i ), "Slot moved in combined layout: " + i );
+        }
+        checkCondition( combined.getSlot( TestSubjectArea.B_U ) >= aaLayout.size(), "No slot for B_U in combined layout" );
+
+        //
+
+        log.info( "Blessing and unblessing" );
+
+        Transaction tx = theMeshBase.createTransactionNow();
+
+        MeshObject obj = theMeshBase.getMeshBaseLifecycleManager().createMeshObject( TestSubjectArea.AA );
+        obj.setPropertyValue( TestSubjectArea.A_X,  StringValue.create( "x" ));
+        obj.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( 1.5 ));
+
+        obj.bless( TestSubjectArea.B );
+        obj.setPropertyValue( TestSubjectArea.B_U, StringValue.create( "z" ));
+
+        checkEquals( obj.getPropertyValue( TestSubjectArea.A_X ),  StringValue.create( "x" ), "A_X lost when blessing" );
+        checkEquals( obj.getPropertyValue( TestSubjectArea.AA_Y ), FloatValue.create( 1.5 ),  "AA_Y lost when blessing" );
+        checkEquals( obj.getPropertyValue( TestSubjectArea.B_U ),  StringValue.create( "z" ), "B_U not set" );
+
+        obj.unbless( TestSubjectArea.AA );
+
+        checkCondition( !obj.isBlessedBy( TestSubjectArea.AA ), "Still blessed with AA" );
+        checkEquals( obj.getPropertyValue( TestSubjectArea.B_U ), StringValue.create( "z" ), "B_U lost when unblessing" );
+        checkEquals( obj.getAllPropertyTypes().length, TestSubjectArea.B.getAllPropertyTypes().length, "Wrong number of PropertyTypes after unblessing" );
+
+        obj.bless( TestSubjectArea.AA );
+        checkEquals( obj.getPropertyValue( TestSubjectArea.A_X ), TestSubjectArea.A_X.getDefaultValue(), "A_X not reset after unblessing" );
+
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Measuring bytes per MeshObject" );
+
+        final StringValue xValue = StringValue.create( "x" );
+        final FloatValue  yValue = FloatValue.create( 2.5 );
+
+        final MMeshBase mb = theMeshBase;
+        long perMeshObject = bytesPerObject( new Allocator() {
+                public Object allocate()
+                    throws
+                        Exception
+                {
+                    MeshObject ret = mb.getMeshBaseLifecycleManager().createMeshObject( TestSubjectArea.AA );
+                    ret.setPropertyValue( TestSubjectArea.A_X,  xValue );
+                    ret.setPropertyValue( TestSubjectArea.AA_Y, yValue );
+                    return ret;
+                }
+        }, theMeshBase );
+
+        // what the MeshObjects keep their types and PropertyValues in now
+        final PropertySlotLayout layout = aaLayout;
+        long perSlots = bytesPerObject( new Allocator() {
+                public Object allocate()
+                {
+                    PropertyValue [] values = new PropertyValue[ layout.size() ];
+                    values[ layout.getSlot( TestSubjectArea.A_X ) ]  = xValue;
+                    values[ layout.getSlot( TestSubjectArea.AA_Y ) ] = yValue;
+                    return new Object[] { new EntityType[] { TestSubjectArea.AA }, values };
+                }
+        }, null );
+
+        // what the MeshObjects kept their types and PropertyValues in before
+        long perMaps = bytesPerObject( new Allocator() {
+                public Object allocate()
+                {
+                    HashMap<EntityType,WeakReference<TypedMeshObjectFacade>> types = new HashMap<EntityType,WeakReference<TypedMeshObjectFacade>>();
+                    types.put( TestSubjectArea.AA, null );
+
+                    HashMap<PropertyType,PropertyValue> values = new HashMap<PropertyType,PropertyValue>();
+                    for( PropertyType current : TestSubjectArea.AA.getAllPropertyTypes() ) {
+                        values.put( current, current.getDefaultValue() );
+                    }
+                    values.put( TestSubjectArea.A_X,  xValue );
+                    values.put( TestSubjectArea.AA_Y, yValue );
+                    return new Object[] { types, values };
+                }
+        }, null );
+
+        log.info(
+                "Bytes per MeshObject: " + perMeshObject
+                + ", of which types and properties in slots: " + perSlots
+                + ", would have been in HashMaps: " + perMaps
+                + ", bytes per MeshObject before: " + ( perMeshObject - perSlots + perMaps ));
+
+        checkCondition( perSlots > 0 && perMaps > 0, "Could not measure: " + perSlots + " vs. " + perMaps );
+        checkCondition( perSlots < perMaps, "Slots not smaller than HashMaps: " + perSlots + " vs. " + perMaps );
+
+        theMeshBase.die();
+    }
+
+    /**
+     * Determine the average number of bytes on the heap taken by objects.
+     *
+     * @param allocator allocates one object
+     * @param mb if given, allocate the objects within a Transaction on this MeshBase
+     * @return the number of bytes per object
+     * @throws Exception thrown if the allocator threw an Exception
+     */
+    protected long bytesPerObject(
+            Allocator allocator,
+            MMeshBase mb )
+        throws
+            Exception
+    {
+        long before = usedMemory();
+
+        theRetained = new Object[ N_OBJECTS ];
+        Transaction tx = mb != null ? mb.createTransactionNow() : null;
+        for( int i=0 ; i<N_OBJECTS ; ++i ) {
+            theRetained[i] = allocator.allocate();
+        }
+        if( tx != null ) {
+            tx.commitTransaction();
+        }
+        long ret = ( usedMemory() - before ) / N_OBJECTS;
+
+        theRetained = null;
+        return ret;
+    }
+
+    /**
+     * Determine the heap currently in use, after collecting garbage.
+     *
+     * @return the number of bytes in use
+     * @throws InterruptedException thrown if interrupted while waiting for the garbage collector
+     */
+    protected long usedMemory()
+        throws
+            InterruptedException
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for( int i=0 ; i<4 ; ++i ) {
+            System.gc();
+            Thread.sleep( 50L );
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        MeshBaseTest24 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new MeshBaseTest24( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public MeshBaseTest24(
+            String [] args )
+        throws
+            Exception
+    {
+        super( MeshBaseTest24.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( MeshBaseTest24.class );
+
+    /**
+     * The number of MeshObjects to measure.
+     */
+    protected static final int N_OBJECTS = 20000;
+
+    /**
+     * Keeps the measured objects reachable until they have been measured.
+     */
+    protected Object [] theRetained;
+
+    /**
+     * Allocates one of the objects to be measured.
+     */
+    protected static interface Allocator
+    {
+        /**
+         * Allocate.
+         *
+         * @return the allocated object
+         * @throws Exception thrown if the object could not be allocated
+         */
+        public abstract Object allocate()
+            throws
+                Exception;
+    }
+}
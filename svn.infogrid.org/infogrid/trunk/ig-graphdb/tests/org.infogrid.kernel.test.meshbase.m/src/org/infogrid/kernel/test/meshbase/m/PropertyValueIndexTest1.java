@@ -0,0 +1,290 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.ByPropertyValueIntervalSelector;
+import org.infogrid.mesh.set.ByTypeMeshObjectSelector;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.index.DefaultPropertyValueIndexer;
+import org.infogrid.meshbase.index.PropertyValueIndex;
+import org.infogrid.meshbase.index.SortedPropertyValueIndex;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.FloatValue;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.util.ArrayHelper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that PropertyValueIndexes find the right MeshObjects, including instances of
+ * subtypes, and are updated when Transactions are committed but not when they are
+ * rolled back.
+ */
+public class PropertyValueIndexTest1
+        extends
+            AbstractMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public void run()
+        throws
+            Exception
+    {
+        MMeshBase                mb   = MMeshBase.create( theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ), theModelBase, null, rootContext );
+        MeshBaseLifecycleManager life = mb.getMeshBaseLifecycleManager();
+
+        //
+
+        log.info( "Creating MeshObjects before there is an index" );
+
+        Transaction tx = mb.createTransactionNow();
+
+        MeshObject [] aas = new MeshObject[ N ];
+        for( int i=0 ; i<N ; ++i ) {
+            aas[i] = life.createMeshObject( TestSubjectArea.AA );
+            aas[i].setPropertyValue( TestSubjectArea.A_X,  StringValue.create( "x" + ( i % 10 )));
+            aas[i].setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( i ));
+        }
+        MeshObject unindexed = life.createMeshObject( TestSubjectArea.AA ); // A_X is null
+        unindexed.setPropertyValue( TestSubjectArea.AA_Y, null );
+        life.createMeshObject( TestSubjectArea.B );
+
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Creating indexes" );
+
+        DefaultPropertyValueIndexer indexer = DefaultPropertyValueIndexer.create( mb );
+        mb.setPropertyValueIndexer( indexer );
+
+        PropertyValueIndex       xIndex = indexer.addIndex( TestSubjectArea.A, TestSubjectArea.A_X );
+        SortedPropertyValueIndex yIndex = indexer.addSortedIndex( TestSubjectArea.AA, TestSubjectArea.AA_Y );
+
+        checkEquals( xIndex.size(),             N,   "wrong size of x index" );
+        checkEquals( xIndex.getNumberOfValues(), 10, "wrong number of values in x index" );
+        checkEquals( yIndex.size(),               N, "wrong size of y index" );
+        checkCondition( indexer.addIndex( TestSubjectArea.A, TestSubjectArea.A_X ) == xIndex, "index created twice" );
+        checkCondition( indexer.getIndex( TestSubjectArea.AA, TestSubjectArea.AA_Y ) == yIndex, "index not found" );
+        checkEquals( indexer.getIndexes().length, 2, "wrong number of indexes" );
+
+        try {
+            indexer.addIndex( TestSubjectArea.B, TestSubjectArea.A_X );
+            reportError( "PropertyType of other EntityType accepted" );
+        } catch( IllegalArgumentException ex ) {
+            // good
+        }
+
+        //
+
+        log.info( "Finding by value" );
+
+        MeshObjectSet found = xIndex.find( StringValue.create( "x3" ));
+        checkEquals( found.size(), N/10, "wrong number found for x3" );
+        for( int i=3 ; i<N ; i+=10 ) {
+            checkCondition( found.contains( aas[i] ), "not found: " + i );
+        }
+        checkEquals( xIndex.find( StringValue.create( "nothing" )).size(), 0, "found nonexisting value" );
+        checkEquals( xIndex.find( null ).size(), 0, "found null" );
+        checkCondition( xIndex.getIndexedValue( unindexed.getIdentifier() ) == null, "null value indexed" );
+
+        //
+
+        log.info( "Finding by interval" );
+
+        checkInterval( mb, yIndex, 10, 20, true,  false );
+        checkInterval( mb, yIndex, 10, 20, false, true );
+        checkInterval( mb, yIndex, 10, 10, true,  true );
+        checkInterval( mb, yIndex, 10, 10, true,  false );
+        checkInterval( mb, yIndex, 20, 10, true,  true );
+        checkInterval( mb, yIndex, -5, N+5, true, true );
+
+        checkEquals( yIndex.find( null, FloatValue.create( 5 ), true, false ).size(), 5, "wrong number found below 5" );
+        checkEquals( yIndex.find( FloatValue.create( N-5 ), null, true, false ).size(), 5, "wrong number found from N-5" );
+
+        MeshObjectIdentifier [] sorted = yIndex.findIdentifiers( null, null, true, true );
+        checkEquals( sorted.length, N, "wrong number of sorted identifiers" );
+        for( int i=0 ; i<N ; ++i ) {
+            checkEquals( sorted[i], aas[i].getIdentifier(), "wrong sequence at " + i );
+        }
+
+        //
+
+        log.info( "Changing values, blessing, unblessing and deleting" );
+
+        tx = mb.createTransactionNow();
+
+        aas[0].setPropertyValue( TestSubjectArea.A_X, StringValue.create( "changed" ));
+        aas[1].setPropertyValue( TestSubjectArea.A_X, null );
+        aas[2].unbless( TestSubjectArea.AA );
+        life.deleteMeshObject( aas[3] );
+
+        MeshObject newAa = life.createMeshObject( TestSubjectArea.AA );
+        newAa.setPropertyValue( TestSubjectArea.A_X,  StringValue.create( "changed" ));
+        newAa.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( 1000 ));
+
+        // not visible before the Transaction is committed
+        checkEquals( xIndex.find( StringValue.create( "changed" )).size(), 0, "uncommitted change visible" );
+
+        tx.commitTransaction();
+
+        checkEquals( xIndex.find( StringValue.create( "changed" )).size(), 2, "wrong number found for changed value" );
+        checkCondition( !xIndex.find( StringValue.create( "x0" )).contains( aas[0] ), "still found with old value" );
+        checkCondition( !xIndex.find( StringValue.create( "x1" )).contains( aas[1] ), "still found with null value" );
+        checkCondition( !xIndex.find( StringValue.create( "x2" )).contains( aas[2] ), "still found in supertype index after unblessing" );
+        checkCondition( !yIndex.find( FloatValue.create( 2 )).contains( aas[2] ), "still found after unblessing" );
+        checkEquals( xIndex.findIdentifiers( StringValue.create( "x3" )).length, N/10 - 1, "still found after deleting" );
+        checkEquals( yIndex.find( FloatValue.create( 3 )).size(), 0, "still found after deleting" );
+        checkEquals( yIndex.find( FloatValue.create( 1000 )).getSingleMember(), newAa, "new MeshObject not found" );
+        checkEquals( xIndex.size(), N-2, "wrong size of x index after changes" );
+        checkEquals( yIndex.size(), N-1, "wrong size of y index after changes" );
+
+        //
+
+        log.info( "Rolling back" );
+
+        tx = mb.createTransactionNow();
+
+        aas[4].setPropertyValue( TestSubjectArea.A_X, StringValue.create( "rolledback" ));
+        MeshObject rolledBack = life.createMeshObject( TestSubjectArea.AA );
+        rolledBack.setPropertyValue( TestSubjectArea.A_X, StringValue.create( "rolledback" ));
+
+        tx.rollbackTransaction( null );
+
+        checkEquals( xIndex.find( StringValue.create( "rolledback" )).size(), 0, "rolled-back change visible" );
+        checkCondition( xIndex.find( StringValue.create( "x4" )).contains( aas[4] ), "rolled-back change lost old value" );
+
+        //
+
+        log.info( "Replacing and removing indexes" );
+
+        SortedPropertyValueIndex xSorted = indexer.addSortedIndex( TestSubjectArea.A, TestSubjectArea.A_X );
+        checkCondition( xSorted != xIndex, "hash index not replaced" );
+        checkEquals( xSorted.size(), xIndex.size(), "wrong size of sorted x index" );
+        checkEquals( indexer.getIndexes().length, 2, "wrong number of indexes after replacing" );
+        checkEquals(
+                xSorted.find( StringValue.create( "x1" ), StringValue.create( "x3" ), true, false ).size(),
+                xIndex.find( StringValue.create( "x1" )).size() + xIndex.find( StringValue.create( "x2" )).size(),
+                "wrong number found in sorted x index" );
+
+        checkCondition( indexer.removeIndex( TestSubjectArea.AA, TestSubjectArea.AA_Y ), "index not removed" );
+        checkCondition( !indexer.removeIndex( TestSubjectArea.AA, TestSubjectArea.AA_Y ), "index removed twice" );
+        checkEquals( indexer.getIndexes().length, 1, "wrong number of indexes after removing" );
+
+        mb.die();
+    }
+
+    /**
+     * Check that a SortedPropertyValueIndex finds the same MeshObjects in an interval as
+     * the ByPropertyValueIntervalSelector.
+     *
+     * @param mb the MeshBase
+     * @param index the SortedPropertyValueIndex
+     * @param lower the lower bound
+     * @param upper the upper bound
+     * @param lowerMayEqual if true, the value may equal the lower bound
+     * @param upperMayEqual if true, the value may equal the upper bound
+     */
+    protected void checkInterval(
+            MMeshBase                mb,
+            SortedPropertyValueIndex index,
+            double                   lower,
+            double                   upper,
+            boolean                  lowerMayEqual,
+            boolean                  upperMayEqual )
+    {
+        MeshObjectSet found = index.find(
+                FloatValue.create( lower ),
+                FloatValue.create( upper ),
+                lowerMayEqual,
+                upperMayEqual );
+
+        MeshObjectSet expected = mb.getMeshObjectSetFactory().createImmutableMeshObjectSet(
+                mb.getMeshObjectSetFactory().createImmutableMeshObjectSet(
+                        ArrayHelper.copyIntoNewArray( mb.iterator(), MeshObject.class ),
+                        ByTypeMeshObjectSelector.create( TestSubjectArea.AA, true )),
+                ByPropertyValueIntervalSelector.create(
+                        TestSubjectArea.AA_Y,
+                        FloatValue.create( lower ),
+                        FloatValue.create( upper ),
+                        lowerMayEqual,
+                        upperMayEqual ));
+
+        checkEqualsOutOfSequence( found.getMeshObjects(), expected.getMeshObjects(), "wrong MeshObjects in interval " + lower + " - " + upper );
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        PropertyValueIndexTest1 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new PropertyValueIndexTest1( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public PropertyValueIndexTest1(
+            String [] args )
+        throws
+            Exception
+    {
+        super( PropertyValueIndexTest1.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( PropertyValueIndexTest1.class );
+
+    /**
+     * The number of MeshObjects per EntityType.
+     */
+    protected static final int N = 100;
+}
@@ -0,0 +1,406 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.security.aclbased.test;
+
+import org.infogrid.mesh.IllegalPropertyTypeException;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.NotPermittedException;
+import org.infogrid.mesh.security.CallerHasInsufficientPermissionsException;
+import org.infogrid.mesh.security.ThreadIdentityManager;
+import org.infogrid.meshbase.DefaultMeshBaseIdentifierFactory;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.AclBasedSecurity.AclBasedSecuritySubjectArea;
+import org.infogrid.model.AclBasedSecurity.accessmanager.AccessDecisionCache;
+import org.infogrid.model.AclBasedSecurity.accessmanager.AclBasedAccessManager;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.MeshType;
+import org.infogrid.model.primitives.PropertyType;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.modelbase.ModelBase;
+import org.infogrid.modelbase.ModelBaseSingleton;
+import org.infogrid.testharness.AbstractTest;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that the AccessDecisionCache of the AclBasedAccessManager never returns a stale
+ * decision, and is invalidated when ACL relationships, blessings or unblessings change.
+ * The cache runs in verification mode throughout.
+ */
+public class AclbasedSecurityTest6
+        extends
+            AbstractTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Setting up objects to test with" );
+
+        Transaction tx = theMeshBase.createTransactionNow();
+
+        MeshObject reader   = life.createMeshObject();
+        MeshObject stranger = life.createMeshObject();
+        MeshObject owner    = life.createMeshObject();
+
+        ThreadIdentityManager.setCaller( owner );
+        MeshObject dataObject = life.createMeshObject( TestSubjectArea.AA );
+        MeshObject domain     = life.createMeshObject( AclBasedSecuritySubjectArea.PROTECTIONDOMAIN );
+
+        dataObject.setPropertyValue( TestSubjectArea.A_X, StringValue.create( "some value" ));
+        domain.relateAndBless( AclBasedSecuritySubjectArea.PROTECTIONDOMAIN_GOVERNS_MESHOBJECT.getSource(), dataObject );
+
+        tx.commitTransaction();
+        ThreadIdentityManager.unsetCaller();
+
+        //
+
+        log.info( "Without rights, reader cannot read, and gets a new exception every time" );
+
+        NotPermittedException first  = checkRead( reader, dataObject, false, "reader before grant" );
+        NotPermittedException second = checkRead( reader, dataObject, false, "reader before grant, cached" );
+
+        checkCondition( first != null && second != null && first != second, "NotPermittedException was shared" );
+        checkCondition( theCache.get( theCache.createKey( dataObject, TestSubjectArea.A_X, null, reader )) == null, "denial was cached" );
+        checkRead( owner, dataObject, true, "owner" );
+        checkRead( owner, dataObject, true, "owner, cached" );
+        checkCondition( theCache.getHits() > 0, "no cache hits" );
+
+        //
+
+        log.info( "Unrelated change does not invalidate" );
+
+        long invalidations = theCache.getInvalidations();
+
+        ThreadIdentityManager.setCaller( owner );
+        tx = theMeshBase.createTransactionNow();
+        dataObject.setPropertyValue( TestSubjectArea.A_X, StringValue.create( "other value" ));
+        tx.commitTransaction();
+        ThreadIdentityManager.unsetCaller();
+
+        checkEquals( theCache.getInvalidations(), invalidations, "invalidated by property change" );
+
+        //
+
+        log.info( "Granting read access invalidates" );
+
+        ThreadIdentityManager.setCaller( owner );
+        tx = theMeshBase.createTransactionNow();
+        reader.relateAndBless( AclBasedSecuritySubjectArea.MESHOBJECT_HASREADACCESSTO_PROTECTIONDOMAIN.getSource(), domain );
+        tx.commitTransaction();
+        ThreadIdentityManager.unsetCaller();
+
+        checkCondition( theCache.getInvalidations() > invalidations, "not invalidated by grant" );
+        checkRead( reader,   dataObject, true,  "reader after grant" );
+        checkRead( reader,   dataObject, true,  "reader after grant, cached" );
+        checkRead( stranger, dataObject, false, "stranger" );
+        checkRead( stranger, dataObject, false, "stranger, cached" );
+
+        //
+
+        log.info( "Blessing invalidates" );
+
+        invalidations = theCache.getInvalidations();
+
+        ThreadIdentityManager.setCaller( owner );
+        tx = theMeshBase.createTransactionNow();
+        dataObject.bless( TestSubjectArea.B );
+        tx.commitTransaction();
+        ThreadIdentityManager.unsetCaller();
+
+        checkCondition( theCache.getInvalidations() > invalidations, "not invalidated by bless" );
+        checkRead( stranger, dataObject, true, "stranger after bless" );
+        checkRead( stranger, dataObject, true, "stranger after bless, cached" );
+
+        //
+
+        log.info( "Unblessing invalidates" );
+
+        invalidations = theCache.getInvalidations();
+
+        ThreadIdentityManager.setCaller( owner );
+        tx = theMeshBase.createTransactionNow();
+        dataObject.unbless( TestSubjectArea.B );
+        tx.commitTransaction();
+        ThreadIdentityManager.unsetCaller();
+
+        checkCondition( theCache.getInvalidations() > invalidations, "not invalidated by unbless" );
+        checkRead( stranger, dataObject, false, "stranger after unbless" );
+        checkRead( stranger, dataObject, false, "stranger after unbless, cached" );
+
+        //
+
+        log.info( "Own Transaction bypasses the cache" );
+
+        long lookups = theCache.getHits() + theCache.getMisses();
+
+        ThreadIdentityManager.setCaller( reader );
+        tx = theMeshBase.createTransactionNow();
+        dataObject.getPropertyValue( TestSubjectArea.A_X );
+        tx.commitTransaction();
+        ThreadIdentityManager.unsetCaller();
+
+        checkEquals( theCache.getHits() + theCache.getMisses(), lookups, "cache consulted within own Transaction" );
+
+        //
+
+        log.info( "Revoking read access invalidates" );
+
+        invalidations = theCache.getInvalidations();
+
+        ThreadIdentityManager.setCaller( owner );
+        tx = theMeshBase.createTransactionNow();
+        reader.unrelate( domain );
+        tx.commitTransaction();
+        ThreadIdentityManager.unsetCaller();
+
+        checkCondition( theCache.getInvalidations() > invalidations, "not invalidated by revocation" );
+        checkRead( reader, dataObject, false, "reader after revocation" );
+        checkRead( reader, dataObject, false, "reader after revocation, cached" );
+
+        //
+
+        log.info( "Full cache evicts some decisions only" );
+
+        AccessDecisionCache small = AccessDecisionCache.create( 10 );
+        AccessDecisionCache.Key lastKey = null;
+
+        tx = theMeshBase.createTransactionNow();
+        MeshObject [] callers = new MeshObject[ 25 ];
+        for( int i=0 ; i<callers.length ; ++i ) {
+            callers[i] = life.createMeshObject();
+        }
+        tx.commitTransaction();
+
+        for( int i=0 ; i<callers.length ; ++i ) {
+            lastKey = small.createKey( dataObject, TestSubjectArea.A_X, null, callers[i] );
+            small.put( lastKey, small.getGeneration() );
+
+            checkCondition( small.size() <= small.getMaxSize(), "cache too large: " + small.size() );
+        }
+        checkCondition( small.getEvictions() > 0, "no evictions" );
+        checkCondition( small.size() > small.getMaxSize() / 2, "evicted too much: " + small.size() );
+        checkObject( small.get( lastKey ), "latest decision was evicted" );
+
+        //
+
+        log.info( "No stale decisions" );
+
+        checkEquals( theCache.getVerificationFailures(), 0L, "stale cached decisions" );
+    }
+
+    /**
+     * Read the data MeshObject's property as the given caller, and check the outcome.
+     *
+     * @param caller the caller
+     * @param dataObject the MeshObject to read
+     * @param expectPermitted if true, reading should succeed
+     * @param msg the message to report if the outcome is not as expected
+     * @return the NotPermittedException thrown, if any
+     * @throws IllegalPropertyTypeException should not happen
+     */
+    protected NotPermittedException checkRead(
+            MeshObject caller,
+            MeshObject dataObject,
+            boolean    expectPermitted,
+            String     msg )
+        throws
+            IllegalPropertyTypeException
+    {
+        NotPermittedException ret = null;
+
+        ThreadIdentityManager.setCaller( caller );
+        try {
+            dataObject.getPropertyValue( TestSubjectArea.A_X );
+
+        } catch( NotPermittedException ex ) {
+            ret = ex;
+
+        } finally {
+            ThreadIdentityManager.unsetCaller();
+        }
+        if( expectPermitted ) {
+            checkCondition( ret == null, "Not permitted: " + msg );
+        } else {
+            checkCondition( ret != null, "Permitted: " + msg );
+        }
+        return ret;
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        AclbasedSecurityTest6 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new AclbasedSecurityTest6( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    public AclbasedSecurityTest6(
+            String [] args )
+        throws
+            Exception
+    {
+        super( localFileName( AclbasedSecurityTest6.class, "/ResourceHelper" ));
+
+        theCache = AccessDecisionCache.create();
+        theCache.setVerify( true );
+
+        theMeshBase = MMeshBase.create(
+                DefaultMeshBaseIdentifierFactory.create().fromExternalForm( "MeshBase" ),
+                theModelBase,
+                new ReadRuleAccessManager( theCache ),
+                AbstractAclbasedSecurityTest.rootContext );
+
+        life = theMeshBase.getMeshBaseLifecycleManager();
+    }
+
+    /**
+     * Clean up after the test.
+     */
+    @Override
+    public void cleanup()
+    {
+        theMeshBase.die();
+    }
+
+    /**
+     * The ModelBase.
+     */
+    protected ModelBase theModelBase = ModelBaseSingleton.getSingleton();
+
+    /**
+     * The MeshBase for the test.
+     */
+    protected MeshBase theMeshBase;
+
+    /**
+     * The MeshBaseLifecycleManager that goes with the MeshBase.
+     */
+    protected MeshBaseLifecycleManager life;
+
+    /**
+     * The cache under test.
+     */
+    protected AccessDecisionCache theCache;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( AclbasedSecurityTest6.class );
+
+    /**
+     * The AclBasedSecurity model does not guard property reads, so this test adds a read rule
+     * that depends on ACL relationships and on blessings: owners may always read; others may read
+     * if the MeshObject is blessed with <code>B</code>, or if they have read access to the
+     * ProtectionDomain governing the MeshObject.
+     */
+    protected static class ReadRuleAccessManager
+            extends
+                AclBasedAccessManager
+    {
+        /**
+         * Constructor.
+         *
+         * @param decisionCache the AccessDecisionCache to use
+         */
+        protected ReadRuleAccessManager(
+                AccessDecisionCache decisionCache )
+        {
+            super( decisionCache );
+        }
+
+        /**
+         * Evaluate the guards, and our read rule.
+         *
+         * @param obj the MeshObject
+         * @param operation the PropertyType to read, the EntityType whose blessing to check, or the RoleType to traverse
+         * @param neighborIdentifier identifier of the neighbor to which the traversal leads, if a traversal
+         * @param neighbor neighbor to which the traversal leads, if a traversal
+         * @throws NotPermittedException thrown if it is not permitted
+         */
+        @Override
+        protected void evaluatePermitted(
+                MeshObject           obj,
+                MeshType             operation,
+                MeshObjectIdentifier neighborIdentifier,
+                MeshObject           neighbor )
+            throws
+                NotPermittedException
+        {
+            super.evaluatePermitted( obj, operation, neighborIdentifier, neighbor );
+
+            if( !( operation instanceof PropertyType )) {
+                return;
+            }
+            MeshObject caller = ThreadIdentityManager.getCaller();
+            try {
+                ThreadIdentityManager.sudo();
+
+                MeshObject owner = obj.traverse( AclBasedSecuritySubjectArea.MESHOBJECT_HASOWNER_MESHOBJECT.getSource() ).getSingleMember();
+                if( owner == null || owner.equals( caller )) {
+                    return;
+                }
+                if( obj.isBlessedBy( TestSubjectArea.B )) {
+                    return;
+                }
+                MeshObject domain = obj.traverse( AclBasedSecuritySubjectArea.PROTECTIONDOMAIN_GOVERNS_MESHOBJECT.getDestination() ).getSingleMember();
+                if( domain != null && domain.traverse( AclBasedSecuritySubjectArea.MESHOBJECT_HASREADACCESSTO_PROTECTIONDOMAIN.getDestination() ).contains( caller )) {
+                    return;
+                }
+            } finally {
+                ThreadIdentityManager.sudone();
+            }
+            throw new CallerHasInsufficientPermissionsException( obj, caller );
+        }
+    }
+}
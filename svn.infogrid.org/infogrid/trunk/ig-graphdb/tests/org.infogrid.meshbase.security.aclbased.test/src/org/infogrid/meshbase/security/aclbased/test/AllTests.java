@@ -37,6 +37,7 @@ public abstract class AllTests
                 new TestSpec( AclbasedSecurityTest3.class ),
                 new TestSpec( AclbasedSecurityTest4.class ),
                 new TestSpec( AclbasedSecurityTest5.class ),
+                new TestSpec( AclbasedSecurityTest6.class ),
         };
 
         runTests( tests );
@@ -43,6 +43,12 @@ public abstract class AllTests
                 new TestSpec( StoreMeshBaseTest7.class ),
                 new TestSpec( StoreMeshBaseTest8.class ),
                 new TestSpec( StoreMeshBaseTest9.class ),
+                new TestSpec( StoreMeshBaseTest10.class ),
+                new TestSpec( StoreMeshBaseTest11.class ),
+                new TestSpec( StoreMeshBaseTest12.class ),
+                new TestSpec( StoreMeshBaseTest13.class ),
+                new TestSpec( StoreMeshBaseTest14.class ),
+                new TestSpec( StoreMeshBaseTest15.class ),
 
                 new TestSpec( StoreBulkLoaderTest1.class ),
 
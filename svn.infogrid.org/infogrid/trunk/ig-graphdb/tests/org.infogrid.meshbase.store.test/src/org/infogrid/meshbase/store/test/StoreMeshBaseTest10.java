@@ -0,0 +1,212 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.test;
+
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.MeshObjectIdentifierFactory;
+import org.infogrid.meshbase.index.PropertyValueIndex;
+import org.infogrid.meshbase.store.IterableStoreMeshBase;
+import org.infogrid.meshbase.store.StorePropertyValueIndexer;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.EnumeratedValue;
+import org.infogrid.store.m.MStore;
+import org.infogrid.util.ArrayHelper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that the StorePropertyValueIndexer persists PropertyValueIndexes, and loads
+ * them instead of rebuilding them when the MeshBase is restarted.
+ */
+public class StoreMeshBaseTest10
+        extends
+            AbstractStoreMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Override
+    public void run()
+        throws
+            Exception
+    {
+        MStore meshObjectStore = MStore.create();
+        MStore indexStore      = MStore.create();
+
+        EnumeratedValue [] values = {
+            TestSubjectArea.B_Z_type_VALUE1,
+            TestSubjectArea.B_Z_type_VALUE2,
+            TestSubjectArea.B_Z_type_VALUE3
+        };
+
+        //
+
+        log.info( "Creating MeshBase and MeshObjects" );
+
+        IterableStoreMeshBase mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                meshObjectStore,
+                rootContext );
+
+        MeshBaseLifecycleManager    life   = mb.getMeshBaseLifecycleManager();
+        MeshObjectIdentifierFactory idFact = mb.getMeshObjectIdentifierFactory();
+
+        Transaction tx = mb.createTransactionNow();
+
+        for( int i=0 ; i<N ; ++i ) {
+            MeshObject current = life.createMeshObject( idFact.fromExternalForm( "b-" + i ), TestSubjectArea.B );
+            current.setPropertyValue( TestSubjectArea.B_Z, values[ i % values.length ] );
+        }
+
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Creating and persisting index" );
+
+        StorePropertyValueIndexer indexer = StorePropertyValueIndexer.create( mb, indexStore );
+        mb.setPropertyValueIndexer( indexer );
+
+        PropertyValueIndex index = indexer.addIndex( TestSubjectArea.B, TestSubjectArea.B_Z );
+
+        checkEquals( index.size(), N, "wrong size of index" );
+        checkEquals( indexStore.size(), N+1, "wrong number of StoreValues in index Store" );
+
+        tx = mb.createTransactionNow();
+
+        mb.findMeshObjectByIdentifier( idFact.fromExternalForm( "b-0" )).setPropertyValue( TestSubjectArea.B_Z, TestSubjectArea.B_Z_type_VALUE3 );
+        life.deleteMeshObject( mb.findMeshObjectByIdentifier( idFact.fromExternalForm( "b-2" )));
+
+        tx.commitTransaction();
+
+        checkEquals( indexStore.size(), N, "wrong number of StoreValues in index Store after changes" );
+
+        mb.die();
+
+        //
+
+        log.info( "Removing a MeshObject behind the back of the index" );
+
+        MeshObjectIdentifier removedId = idFact.fromExternalForm( "b-1" );
+        meshObjectStore.delete( removedId.toExternalForm() );
+
+        //
+
+        log.info( "Restarting and loading index" );
+
+        mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                meshObjectStore,
+                rootContext );
+
+        idFact  = mb.getMeshObjectIdentifierFactory();
+        indexer = StorePropertyValueIndexer.create( mb, indexStore );
+        mb.setPropertyValueIndexer( indexer );
+
+        index = indexer.addIndex( TestSubjectArea.B, TestSubjectArea.B_Z );
+
+        checkEquals( index.size(), N-1, "wrong size of loaded index" );
+        checkCondition(
+                ArrayHelper.isIn( removedId, index.findIdentifiers( TestSubjectArea.B_Z_type_VALUE2 ), true ),
+                "index was rebuilt, not loaded" );
+        checkEquals( index.getIndexedValue( idFact.fromExternalForm( "b-0" )), TestSubjectArea.B_Z_type_VALUE3, "change not persisted" );
+        checkCondition( index.getIndexedValue( idFact.fromExternalForm( "b-2" )) == null, "deletion not persisted" );
+
+        MeshObject [] found = index.find( TestSubjectArea.B_Z_type_VALUE1 ).getMeshObjects();
+        checkEquals( found.length, N/3 - 1, "wrong number found" ); // b-0 changed its value
+        for( int i=0 ; i<found.length ; ++i ) {
+            checkEquals( found[i].getPropertyValue( TestSubjectArea.B_Z ), TestSubjectArea.B_Z_type_VALUE1, "wrong value found" );
+        }
+
+        //
+
+        log.info( "Removing and rebuilding index" );
+
+        checkCondition( indexer.removeIndex( TestSubjectArea.B, TestSubjectArea.B_Z ), "index not removed" );
+        checkEquals( indexStore.size(), 0, "index Store not empty" );
+
+        index = indexer.addIndex( TestSubjectArea.B, TestSubjectArea.B_Z );
+
+        checkEquals( index.size(), N-2, "wrong size of rebuilt index" );
+        checkCondition( index.getIndexedValue( removedId ) == null, "rebuilt index has removed MeshObject" );
+        checkEquals( indexStore.size(), N-1, "wrong number of StoreValues in index Store after rebuilding" );
+
+        mb.die();
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        StoreMeshBaseTest10 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new StoreMeshBaseTest10( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception anything can go wrong in a test
+     */
+    public StoreMeshBaseTest10(
+            String [] args )
+        throws
+            Exception
+    {
+        super( StoreMeshBaseTest10.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( StoreMeshBaseTest10.class );
+
+    /**
+     * The number of MeshObjects to test with. This must be divisible by 3.
+     */
+    protected static final int N = 99;
+}
@@ -0,0 +1,198 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.test;
+
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.MeshObjectIdentifierFactory;
+import org.infogrid.meshbase.index.ExtentIndex;
+import org.infogrid.meshbase.store.IterableStoreMeshBase;
+import org.infogrid.meshbase.store.StorePropertyValueIndexer;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.store.m.MStore;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that the StorePropertyValueIndexer persists ExtentIndexes next to the
+ * PropertyValueIndexes of the same EntityType, and loads them instead of rebuilding
+ * them when the MeshBase is restarted.
+ */
+public class StoreMeshBaseTest11
+        extends
+            AbstractStoreMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Override
+    public void run()
+        throws
+            Exception
+    {
+        MStore meshObjectStore = MStore.create();
+        MStore indexStore      = MStore.create();
+
+        //
+
+        log.info( "Creating MeshBase and MeshObjects" );
+
+        IterableStoreMeshBase mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                meshObjectStore,
+                rootContext );
+
+        MeshBaseLifecycleManager    life   = mb.getMeshBaseLifecycleManager();
+        MeshObjectIdentifierFactory idFact = mb.getMeshObjectIdentifierFactory();
+
+        Transaction tx = mb.createTransactionNow();
+
+        for( int i=0 ; i<N ; ++i ) {
+            MeshObject current = life.createMeshObject( idFact.fromExternalForm( "aa-" + i ), TestSubjectArea.AA );
+            current.setPropertyValue( TestSubjectArea.A_X, StringValue.create( "x" + i ));
+
+            life.createMeshObject( idFact.fromExternalForm( "b-" + i ), TestSubjectArea.B );
+        }
+
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Creating and persisting indexes" );
+
+        StorePropertyValueIndexer indexer = StorePropertyValueIndexer.create( mb, indexStore );
+        mb.setPropertyValueIndexer( indexer );
+
+        ExtentIndex extent = indexer.addExtentIndex( TestSubjectArea.A );
+        indexer.addIndex( TestSubjectArea.A, TestSubjectArea.A_X );
+
+        checkEquals( extent.size(), N, "wrong size of extent" );
+        checkEquals( indexStore.size(), 2*N+2, "wrong number of StoreValues in index Store" );
+
+        tx = mb.createTransactionNow();
+
+        life.deleteMeshObject( mb.findMeshObjectByIdentifier( idFact.fromExternalForm( "aa-0" )));
+        life.createMeshObject( idFact.fromExternalForm( "aa-new" ), TestSubjectArea.AA );
+
+        tx.commitTransaction();
+
+        checkEquals( indexStore.size(), 2*N+1, "wrong number of StoreValues in index Store after changes" );
+
+        mb.die();
+
+        //
+
+        log.info( "Removing a MeshObject behind the back of the index" );
+
+        MeshObjectIdentifier removedId = idFact.fromExternalForm( "aa-1" );
+        meshObjectStore.delete( removedId.toExternalForm() );
+
+        //
+
+        log.info( "Restarting and loading extent" );
+
+        mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                meshObjectStore,
+                rootContext );
+
+        idFact  = mb.getMeshObjectIdentifierFactory();
+        indexer = StorePropertyValueIndexer.create( mb, indexStore );
+        mb.setPropertyValueIndexer( indexer );
+
+        extent = indexer.addExtentIndex( TestSubjectArea.A );
+
+        checkEquals( extent.size(), N, "wrong size of loaded extent" );
+        checkCondition( extent.contains( removedId ), "extent was rebuilt, not loaded" );
+        checkCondition( extent.contains( idFact.fromExternalForm( "aa-new" )), "creation not persisted" );
+        checkCondition( !extent.contains( idFact.fromExternalForm( "aa-0" )), "deletion not persisted" );
+        checkEquals( mb.findMeshObjectsByType( TestSubjectArea.A ).size(), N-1, "wrong number of MeshObjects found" );
+
+        //
+
+        log.info( "Removing extent without affecting the PropertyValueIndex" );
+
+        checkCondition( indexer.removeExtentIndex( TestSubjectArea.A ), "extent not removed" );
+        checkEquals( indexStore.size(), N, "wrong number of StoreValues after removing extent" );
+
+        checkEquals( indexer.addIndex( TestSubjectArea.A, TestSubjectArea.A_X ).size(), N-1, "PropertyValueIndex not loaded" ); // aa-new has no value
+
+        mb.die();
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        StoreMeshBaseTest11 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new StoreMeshBaseTest11( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception anything can go wrong in a test
+     */
+    public StoreMeshBaseTest11(
+            String [] args )
+        throws
+            Exception
+    {
+        super( StoreMeshBaseTest11.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( StoreMeshBaseTest11.class );
+
+    /**
+     * The number of MeshObjects per EntityType to test with.
+     */
+    protected static final int N = 50;
+}
@@ -0,0 +1,289 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.MeshObjectBreadthFirstTraversal;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.MeshObjectIdentifierFactory;
+import org.infogrid.meshbase.store.IterableStoreMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.RoleType;
+import org.infogrid.store.StoreKeyDoesNotExistException;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.m.MStore;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that MeshObjectBreadthFirstTraversal loads the MeshObjects of each level of a
+ * traversal from the Store with few round trips, instead of one per traversed MeshObject.
+ */
+public class StoreMeshBaseTest12
+        extends
+            AbstractStoreMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Override
+    public void run()
+        throws
+            Exception
+    {
+        CountingMStore store = new CountingMStore();
+
+        RoleType rS = TestSubjectArea.R.getSource();
+
+        //
+
+        log.info( "Creating MeshBase and a tree of MeshObjects" );
+
+        IterableStoreMeshBase mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                store,
+                rootContext );
+
+        MeshBaseLifecycleManager    life   = mb.getMeshBaseLifecycleManager();
+        MeshObjectIdentifierFactory idFact = mb.getMeshObjectIdentifierFactory();
+        MeshObjectIdentifier        rootId = idFact.fromExternalForm( "root" );
+
+        Transaction tx = mb.createTransactionNow();
+
+        EntityType [] types = { TestSubjectArea.AA, TestSubjectArea.B };
+
+        ArrayList<MeshObject> frontier = new ArrayList<MeshObject>();
+        frontier.add( life.createMeshObject( rootId, TestSubjectArea.AA ));
+
+        int nMeshObjects = 1;
+        for( int level=1 ; level<N_LEVELS ; ++level ) {
+            ArrayList<MeshObject> next = new ArrayList<MeshObject>();
+            for( MeshObject parent : frontier ) {
+                for( int i=0 ; i<FAN_OUT ; ++i ) {
+                    MeshObject child = life.createMeshObject( types );
+                    parent.relateAndBless( rS, child );
+                    next.add( child );
+                }
+            }
+            nMeshObjects += next.size();
+            frontier = next;
+        }
+
+        tx.commitTransaction();
+
+        mb.die();
+
+        //
+
+        log.info( "Traversing one MeshObject at a time" );
+
+        mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                store,
+                rootContext );
+
+        MeshObject root = mb.accessLocally( rootId );
+        store.reset();
+
+        HashSet<MeshObject>   found = new HashSet<MeshObject>();
+        ArrayList<MeshObject> todo  = new ArrayList<MeshObject>();
+        found.add( root );
+        todo.add( root );
+        while( !todo.isEmpty() ) {
+            MeshObject [] reached = todo.remove( todo.size()-1 ).traverse( rS ).getMeshObjects();
+            for( MeshObject current : reached ) {
+                if( found.add( current )) {
+                    todo.add( current );
+                }
+            }
+        }
+        int oneAtATime = store.getRoundTrips();
+
+        checkEquals( found.size(), nMeshObjects, "one at a time: wrong number of MeshObjects found" );
+
+        mb.die();
+
+        //
+
+        log.info( "Traversing with MeshObjectBreadthFirstTraversal" );
+
+        mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                store,
+                rootContext );
+
+        root = mb.accessLocally( rootId );
+        store.reset();
+
+        MeshObject [][] levels  = MeshObjectBreadthFirstTraversal.create( rS ).traverse( root );
+        int             batched = store.getRoundTrips();
+
+        int count = 0;
+        for( int i=0 ; i<levels.length ; ++i ) {
+            count += levels[i].length;
+        }
+        checkEquals( levels.length, N_LEVELS,     "batched: wrong number of levels" );
+        checkEquals( count,         nMeshObjects, "batched: wrong number of MeshObjects found" );
+
+        log.info( "Store round trips: " + oneAtATime + " one at a time, " + batched + " batched" );
+
+        // one or a few round trips per level, depending on the number of chunks
+        checkCondition( batched <= 2 * N_LEVELS, "too many round trips: " + batched );
+        checkCondition( batched < oneAtATime,    "not fewer round trips: " + batched + " vs. " + oneAtATime );
+
+        mb.die();
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        StoreMeshBaseTest12 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new StoreMeshBaseTest12( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception anything can go wrong in a test
+     */
+    public StoreMeshBaseTest12(
+            String [] args )
+        throws
+            Exception
+    {
+        super( StoreMeshBaseTest12.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( StoreMeshBaseTest12.class );
+
+    /**
+     * The number of levels of the tree, including the root.
+     */
+    protected static final int N_LEVELS = 4;
+
+    /**
+     * The number of children of each non-leaf MeshObject in the tree.
+     */
+    protected static final int FAN_OUT = 5;
+
+    /**
+     * An MStore that counts the round trips made to it.
+     */
+    protected static class CountingMStore
+            extends
+                MStore
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized StoreValue get(
+                String key )
+            throws
+                StoreKeyDoesNotExistException,
+                IOException
+        {
+            ++theRoundTrips;
+            return super.get( key );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized StoreValue [] getMultiple(
+                String [] keys )
+            throws
+                IOException
+        {
+            ++theRoundTrips;
+
+            StoreValue [] ret = new StoreValue[ keys.length ];
+            for( int i=0 ; i<keys.length ; ++i ) {
+                try {
+                    ret[i] = super.get( keys[i] );
+                } catch( StoreKeyDoesNotExistException ex ) {
+                    ret[i] = null;
+                }
+            }
+            return ret;
+        }
+
+        /**
+         * Obtain the number of round trips since the last reset.
+         *
+         * @return the number of round trips
+         */
+        public synchronized int getRoundTrips()
+        {
+            return theRoundTrips;
+        }
+
+        /**
+         * Reset the number of round trips.
+         */
+        public synchronized void reset()
+        {
+            theRoundTrips = 0;
+        }
+
+        /**
+         * The number of round trips.
+         */
+        protected int theRoundTrips;
+    }
+}
@@ -0,0 +1,290 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.test;
+
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.RelatedAlreadyException;
+import org.infogrid.mesh.RoleTypeBlessedAlreadyException;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.MeshObjectIdentifierFactory;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.store.ChangeLog;
+import org.infogrid.meshbase.store.ChangeLogEntry;
+import org.infogrid.meshbase.store.StoreMeshBase;
+import org.infogrid.meshbase.transaction.CannotApplyChangeException;
+import org.infogrid.meshbase.transaction.Change;
+import org.infogrid.meshbase.transaction.MeshObjectPropertyChangeEvent;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.EnumeratedDataType;
+import org.infogrid.model.primitives.EnumeratedValue;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.store.m.MStore;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests the ChangeLog of StoreMeshBase: sequence numbers, replaying the log into another
+ * MeshBase, reading from an offset, checkpoints, truncation and recovery.
+ */
+public class StoreMeshBaseTest13
+        extends
+            AbstractStoreMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Override
+    public void run()
+        throws
+            Exception
+    {
+        MStore    logStore  = MStore.create();
+        ChangeLog changeLog = ChangeLog.create( logStore );
+
+        checkEquals( changeLog.getFirstSequenceNumber(), 1L, "wrong first sequence number of empty log" );
+        checkEquals( changeLog.getLastSequenceNumber(),  0L, "wrong last sequence number of empty log" );
+
+        //
+
+        log.info( "Creating MeshBase and committing Transactions" );
+
+        StoreMeshBase mb = StoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                MStore.create(),
+                rootContext );
+        mb.setChangeLog( changeLog );
+
+        MeshBaseLifecycleManager    life   = mb.getMeshBaseLifecycleManager();
+        MeshObjectIdentifierFactory idFact = mb.getMeshObjectIdentifierFactory();
+
+        MeshObjectIdentifier aId = idFact.fromExternalForm( "obj-a" );
+        MeshObjectIdentifier bId = idFact.fromExternalForm( "obj-b" );
+        MeshObjectIdentifier cId = idFact.fromExternalForm( "obj-c" );
+
+        EnumeratedDataType enumType  = (EnumeratedDataType) TestSubjectArea.OPTIONALPROPERTIES_OPTIONALENUMERATEDDATATYPE.getDataType();
+        EnumeratedValue    enumValue = enumType.getDomain()[1];
+
+        Transaction tx = mb.createTransactionNow();
+        MeshObject a = life.createMeshObject( aId, TestSubjectArea.AA );
+        MeshObject b = life.createMeshObject( bId, TestSubjectArea.B );
+        MeshObject c = life.createMeshObject( cId, TestSubjectArea.OPTIONALPROPERTIES );
+        a.setPropertyValue( TestSubjectArea.A_X, StringValue.create( "first" ));
+        tx.commitTransaction();
+
+        tx = mb.createTransactionNow();
+        a.relateAndBless( TestSubjectArea.R.getSource(), b );
+        a.setPropertyValue( TestSubjectArea.A_X, StringValue.create( "second" ));
+        c.setPropertyValue( TestSubjectArea.OPTIONALPROPERTIES_OPTIONALENUMERATEDDATATYPE, enumValue );
+        tx.commitTransaction();
+
+        tx = mb.createTransactionNow();
+        b.bless( new EntityType[] { TestSubjectArea.OPTIONALPROPERTIES } );
+        life.deleteMeshObject( c );
+        tx.commitTransaction();
+
+        checkEquals( changeLog.getFirstSequenceNumber(), 1L,                        "wrong first sequence number" );
+        checkEquals( changeLog.getLastSequenceNumber(),  (long) N_TRANSACTIONS,     "wrong last sequence number" );
+        checkCondition( changeLog.awaitSequenceNumber( N_TRANSACTIONS, 0L ),        "not appended" );
+        checkCondition( !changeLog.awaitSequenceNumber( N_TRANSACTIONS + 1, 10L ),  "appended too much" );
+
+        //
+
+        log.info( "Replaying the ChangeLog into another MeshBase" );
+
+        MMeshBase replica = MMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "Replica" ),
+                theModelBase,
+                null,
+                rootContext );
+
+        ChangeLogEntry [] entries = changeLog.read( 1L, 100, replica );
+        checkEquals( entries.length, N_TRANSACTIONS, "wrong number of entries" );
+        for( int i=0 ; i<entries.length ; ++i ) {
+            checkEquals( entries[i].getSequenceNumber(), (long) ( i+1 ), "wrong sequence number" );
+        }
+        replay( entries, replica );
+
+        MeshObject replicaA = replica.findMeshObjectByIdentifier( aId );
+        MeshObject replicaB = replica.findMeshObjectByIdentifier( bId );
+
+        checkObject( replicaA, "a not replicated" );
+        checkObject( replicaB, "b not replicated" );
+        checkEquals( replicaA.getPropertyValue( TestSubjectArea.A_X ), StringValue.create( "second" ), "wrong property value" );
+        checkEquals( replicaA.traverse( TestSubjectArea.R.getSource() ).size(), 1, "not related" );
+        checkIdentity( replicaA.traverse( TestSubjectArea.R.getSource() ).getSingleMember(), replicaB, "wrong neighbor" );
+        checkCondition( replicaB.isBlessedBy( TestSubjectArea.OPTIONALPROPERTIES ), "b not blessed" );
+        checkCondition( replica.findMeshObjectByIdentifier( cId ) == null, "c not deleted" );
+
+        // the EnumeratedValue of c must have been decoded with its DataType
+        MeshObjectPropertyChangeEvent enumChange = null;
+        for( Change current : entries[1].getChangeSet() ) {
+            if( current instanceof MeshObjectPropertyChangeEvent && current.getAffectedMeshObjectIdentifier().equals( cId )) {
+                enumChange = (MeshObjectPropertyChangeEvent) current;
+            }
+        }
+        checkObject( enumChange, "no change to c" );
+        checkIdentity( enumChange.getNewValue(), enumValue, "EnumeratedValue not decoded with its DataType" );
+
+        //
+
+        log.info( "Reading from an offset" );
+
+        ChangeLogEntry [] tail = changeLog.read( 2L, 1, replica );
+        checkEquals( tail.length, 1, "wrong number of entries from offset" );
+        checkEquals( tail[0].getSequenceNumber(), 2L, "wrong sequence number from offset" );
+
+        tail = changeLog.read( N_TRANSACTIONS + 1, 100, replica );
+        checkEquals( tail.length, 0, "entries after the end" );
+
+        //
+
+        log.info( "Checkpointing and truncating" );
+
+        checkEquals( changeLog.getCheckpoint( "replica" ), 0L, "checkpoint already there" );
+        changeLog.setCheckpoint( "replica", 2L );
+        changeLog.setCheckpoint( "indexer", N_TRANSACTIONS );
+        checkEquals( changeLog.getCheckpoint( "replica" ), 2L, "wrong checkpoint" );
+
+        int removed = changeLog.truncateToCheckpoints( new String[] { "replica", "indexer" } );
+        checkEquals( removed, 2, "wrong number of entries removed" );
+        checkEquals( changeLog.getFirstSequenceNumber(), 3L, "wrong first sequence number after truncation" );
+
+        entries = changeLog.read( 1L, 100, replica );
+        checkEquals( entries.length, 1, "wrong number of entries after truncation" );
+        checkEquals( entries[0].getSequenceNumber(), 3L, "wrong sequence number after truncation" );
+
+        //
+
+        log.info( "Recovering the ChangeLog from its Store" );
+
+        changeLog = ChangeLog.create( logStore );
+        checkEquals( changeLog.getFirstSequenceNumber(), 3L,                    "wrong first sequence number after recovery" );
+        checkEquals( changeLog.getLastSequenceNumber(),  (long) N_TRANSACTIONS, "wrong last sequence number after recovery" );
+        checkEquals( changeLog.getCheckpoint( "replica" ), 2L,                  "checkpoint lost" );
+
+        mb.setChangeLog( changeLog );
+
+        tx = mb.createTransactionNow();
+        a.setPropertyValue( TestSubjectArea.A_X, StringValue.create( "third" ));
+        tx.commitTransaction();
+
+        checkEquals( changeLog.getLastSequenceNumber(), (long) N_TRANSACTIONS + 1, "not continued after recovery" );
+
+        replay( changeLog.read( N_TRANSACTIONS + 1, 100, replica ), replica );
+        checkEquals( replicaA.getPropertyValue( TestSubjectArea.A_X ), StringValue.create( "third" ), "wrong property value after recovery" );
+
+        changeLog.truncateBefore( Long.MAX_VALUE );
+        checkEquals( ChangeLog.create( logStore ).getFirstSequenceNumber(), (long) N_TRANSACTIONS + 2, "wrong first sequence number of truncated log" );
+        checkEquals( ChangeLog.create( logStore ).getLastSequenceNumber(),  (long) N_TRANSACTIONS + 1, "wrong last sequence number of truncated log" );
+
+        mb.die();
+        replica.die();
+    }
+
+    /**
+     * Apply the Changes in the entries to a MeshBase.
+     *
+     * @param entries the entries
+     * @param mb the MeshBase
+     * @throws Exception thrown if a Change could not be applied
+     */
+    protected void replay(
+            ChangeLogEntry [] entries,
+            MeshBase          mb )
+        throws
+            Exception
+    {
+        for( ChangeLogEntry entry : entries ) {
+            Transaction tx = mb.createTransactionNow();
+            for( Change current : entry.getChangeSet() ) {
+                try {
+                    current.applyTo( mb );
+
+                } catch( CannotApplyChangeException ex ) {
+                    // each relationship change is recorded for both MeshObjects, the second one is a no-op
+                    if(    !( ex.getCause() instanceof RelatedAlreadyException )
+                        && !( ex.getCause() instanceof RoleTypeBlessedAlreadyException ))
+                    {
+                        reportError( "Could not apply " + current, ex );
+                    }
+                }
+            }
+            tx.commitTransaction();
+        }
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        StoreMeshBaseTest13 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new StoreMeshBaseTest13( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception anything can go wrong in a test
+     */
+    public StoreMeshBaseTest13(
+            String [] args )
+        throws
+            Exception
+    {
+        super( StoreMeshBaseTest13.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( StoreMeshBaseTest13.class );
+
+    /**
+     * The number of Transactions committed at the beginning of the test.
+     */
+    protected static final int N_TRANSACTIONS = 3;
+}
@@ -0,0 +1,215 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.MeshObjectIdentifierFactory;
+import org.infogrid.meshbase.store.StoreMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.m.MStore;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that looking up the same MeshObjectIdentifier more than once in the same batched
+ * lookup loads the MeshObject from the Store only once, and returns the same instance.
+ */
+public class StoreMeshBaseTest14
+        extends
+            AbstractStoreMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Override
+    public void run()
+        throws
+            Exception
+    {
+        KeyCheckingMStore store = new KeyCheckingMStore();
+
+        //
+
+        log.info( "Creating MeshBase and MeshObjects" );
+
+        StoreMeshBase mb = StoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                store,
+                rootContext );
+
+        MeshBaseLifecycleManager    life   = mb.getMeshBaseLifecycleManager();
+        MeshObjectIdentifierFactory idFact = mb.getMeshObjectIdentifierFactory();
+
+        MeshObjectIdentifier aId = idFact.fromExternalForm( "obj-a" );
+        MeshObjectIdentifier bId = idFact.fromExternalForm( "obj-b" );
+        MeshObjectIdentifier cId = idFact.fromExternalForm( "obj-c" ); // does not exist
+
+        Transaction tx = mb.createTransactionNow();
+        life.createMeshObject( aId, TestSubjectArea.AA );
+        life.createMeshObject( bId, TestSubjectArea.B );
+        tx.commitTransaction();
+
+        mb.die();
+
+        //
+
+        log.info( "Finding with duplicate identifiers" );
+
+        mb = StoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                store,
+                rootContext );
+
+        MeshObject [] found = mb.findMeshObjectsByIdentifier( new MeshObjectIdentifier[] { aId, bId, aId, cId, aId, cId } );
+
+        checkObject(   found[0],           "a not found" );
+        checkObject(   found[1],           "b not found" );
+        checkIdentity( found[2], found[0], "a loaded twice" );
+        checkIdentity( found[4], found[0], "a loaded three times" );
+        checkCondition( found[3] == null,  "c found" );
+        checkCondition( found[5] == null,  "c found the second time" );
+
+        checkIdentity( mb.findMeshObjectByIdentifier( aId ), found[0], "different a in cache" );
+        checkIdentity( mb.findMeshObjectByIdentifier( bId ), found[1], "different b in cache" );
+
+        checkEquals( store.getDuplicateKeys(), 0, "duplicate keys requested from Store" );
+
+        mb.die();
+
+        //
+
+        log.info( "Accessing locally with duplicate identifiers" );
+
+        mb = StoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                store,
+                rootContext );
+
+        found = mb.accessLocally( new MeshObjectIdentifier[] { bId, bId } );
+
+        checkObject(   found[0],           "b not accessed" );
+        checkIdentity( found[1], found[0], "b loaded twice" );
+        checkIdentity( mb.findMeshObjectByIdentifier( bId ), found[0], "different b in cache" );
+
+        checkEquals( store.getDuplicateKeys(), 0, "duplicate keys requested from Store" );
+
+        mb.die();
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        StoreMeshBaseTest14 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new StoreMeshBaseTest14( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception anything can go wrong in a test
+     */
+    public StoreMeshBaseTest14(
+            String [] args )
+        throws
+            Exception
+    {
+        super( StoreMeshBaseTest14.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( StoreMeshBaseTest14.class );
+
+    /**
+     * An MStore that counts the keys that were requested more than once in the same getMultiple call.
+     */
+    protected static class KeyCheckingMStore
+            extends
+                MStore
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized StoreValue [] getMultiple(
+                String [] keys )
+            throws
+                IOException
+        {
+            HashSet<String> seen = new HashSet<String>();
+            for( String key : keys ) {
+                if( !seen.add( key )) {
+                    ++theDuplicateKeys;
+                }
+            }
+            return super.getMultiple( keys );
+        }
+
+        /**
+         * Obtain the number of keys that were requested more than once.
+         *
+         * @return the number of keys
+         */
+        public synchronized int getDuplicateKeys()
+        {
+            return theDuplicateKeys;
+        }
+
+        /**
+         * The number of keys that were requested more than once.
+         */
+        protected int theDuplicateKeys;
+    }
+}
@@ -0,0 +1,409 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.store.DurabilityListener;
+import org.infogrid.meshbase.store.GroupCommitter;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.store.StoreKeyDoesNotExistException;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.m.MStore;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests the GroupCommitter: batching by size and by time, reading values that have not been
+ * written yet, DurabilityListener notifications, and retrying a failed write.
+ */
+public class StoreMeshBaseTest15
+        extends
+            AbstractStoreMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Override
+    public void run()
+        throws
+            Exception
+    {
+        FailingMStore            store    = new FailingMStore();
+        RecordingListener        listener = new RecordingListener();
+        ScheduledExecutorService exec     = Executors.newSingleThreadScheduledExecutor();
+
+        store.put( createValue( "x", "x0" ));
+
+        MMeshBase mb = MMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                rootContext );
+
+        Transaction tx1 = createTransaction( mb );
+        Transaction tx2 = createTransaction( mb );
+        Transaction tx3 = createTransaction( mb );
+        Transaction tx4 = createTransaction( mb );
+        Transaction tx5 = createTransaction( mb );
+
+        //
+
+        log.info( "Batching up to the maximum batch size" );
+
+        GroupCommitter committer = GroupCommitter.create( store, exec, 60000L, 3 );
+        committer.addDirectDurabilityListener( listener );
+
+        committer.enqueue( tx1, new StoreValue[] { createValue( "a", "a1" ), createValue( "b", "b1" ) }, new String[0] );
+
+        checkEquals( store.getWriteCalls(),        0, "written too early" );
+        checkEquals( committer.getPendingCount(),  2, "wrong number of pending keys" );
+        checkEquals( listener.getDurable().size(), 0, "durable too early" );
+
+        StoreValue [] found = committer.getMultiple( new String[] { "a", "b", "x", "y" } );
+        checkEquals( data( found[0] ), "a1", "pending a not found" );
+        checkEquals( data( found[1] ), "b1", "pending b not found" );
+        checkEquals( data( found[2] ), "x0", "stored x not found" );
+        checkCondition( found[3] == null,    "y found" );
+        checkCondition( !store.has( "a" ),   "a in store too early" );
+
+        committer.enqueue( tx2, new StoreValue[] { createValue( "b", "b2" ) }, new String[] { "x" } );
+
+        checkEquals( store.getWriteCalls(),         1,  "not written at maximum batch size" );
+        checkEquals( committer.getPendingCount(),   0,  "still pending" );
+        checkEquals( committer.getFlushCount(),     1L, "wrong flush count" );
+        checkEquals( committer.getWriteCount(),     3L, "wrong write count" );
+        checkEquals( committer.getCoalescedCount(), 1L, "wrong coalesced count" );
+        checkEqualsInSequence( listener.getDurable().toArray(), new Object[] { tx1, tx2 }, "wrong durable Transactions" );
+
+        checkEquals( data( store.get( "a" )), "a1", "wrong a in store" );
+        checkEquals( data( store.get( "b" )), "b2", "wrong b in store" );
+        checkCondition( !store.has( "x" ),          "x not deleted" );
+
+        committer.removeDurabilityListener( listener );
+        listener.clear();
+
+        //
+
+        log.info( "Writing after the maximum flush delay" );
+
+        committer = GroupCommitter.create( store, exec, 200L, 1000 );
+        committer.addDirectDurabilityListener( listener );
+
+        committer.enqueue( tx3, new StoreValue[] { createValue( "c", "c3" ) }, new String[0] );
+
+        checkEquals( store.getWriteCalls(),        1, "written too early" );
+        checkEquals( committer.getPendingCount(),  1, "wrong number of pending keys" );
+        checkEquals( listener.getDurable().size(), 0, "durable too early" );
+
+        sleepFor( 1000L );
+
+        checkEquals( store.getWriteCalls(),        2,  "not written after the maximum flush delay" );
+        checkEquals( committer.getPendingCount(),  0,  "still pending" );
+        checkEquals( committer.getFlushCount(),    1L, "wrong flush count" );
+        checkEqualsInSequence( listener.getDurable().toArray(), new Object[] { tx3 }, "wrong durable Transactions" );
+        checkEquals( data( store.get( "c" )), "c3", "wrong c in store" );
+
+        committer.flush(); // nothing to do
+        checkEquals( store.getWriteCalls(), 2, "empty write" );
+
+        committer.removeDurabilityListener( listener );
+        listener.clear();
+
+        //
+
+        log.info( "Retrying a failed write" );
+
+        committer = GroupCommitter.create( store, null, 0L, 1000 );
+        committer.addDirectDurabilityListener( listener );
+
+        store.failNextWrites( 1 );
+
+        committer.enqueue( tx4, new StoreValue[] { createValue( "d", "d4" ) }, new String[] { "a" } );
+
+        checkEquals( store.getWriteCalls(),          3,  "not attempted to write" );
+        checkEquals( committer.getFailedFlushCount(), 1L, "wrong failed flush count" );
+        checkEquals( committer.getPendingCount(),    2,  "failed changes not kept" );
+        checkEquals( listener.getDurable().size(),   0,  "durable despite failure" );
+        checkEqualsInSequence( listener.getFailed().toArray(), new Object[] { tx4 }, "wrong failed Transactions" );
+
+        found = committer.getMultiple( new String[] { "d", "a" } );
+        checkEquals( data( found[0] ), "d4", "pending d not found after failure" );
+        checkCondition( found[1] == null,    "a found despite pending deletion" );
+        checkCondition( !store.has( "d" ),   "d in store despite failure" );
+        checkCondition( store.has( "a" ),    "a deleted despite failure" );
+
+        committer.enqueue( tx5, new StoreValue[] { createValue( "e", "e5" ) }, new String[0] );
+
+        checkEquals( store.getWriteCalls(),          4,  "not written again" );
+        checkEquals( committer.getPendingCount(),    0,  "still pending" );
+        checkEquals( committer.getFailedFlushCount(), 1L, "wrong failed flush count" );
+        checkEqualsInSequence( listener.getDurable().toArray(), new Object[] { tx4, tx5 }, "retried Transaction not durable" );
+        checkEqualsInSequence( listener.getFailed().toArray(),  new Object[] { tx4 },      "wrong failed Transactions" );
+
+        checkEquals( data( store.get( "d" )), "d4", "wrong d in store" );
+        checkEquals( data( store.get( "e" )), "e5", "wrong e in store" );
+        checkCondition( !store.has( "a" ),          "a not deleted" );
+
+        exec.shutdown();
+        mb.die();
+    }
+
+    /**
+     * Create and commit an empty Transaction, so it can be handed to the GroupCommitter.
+     *
+     * @param mb the MeshBase on which to create the Transaction
+     * @return the Transaction
+     * @throws Exception thrown if the Transaction could not be created
+     */
+    protected static Transaction createTransaction(
+            MMeshBase mb )
+        throws
+            Exception
+    {
+        Transaction ret = mb.createTransactionNow();
+        ret.commitTransaction();
+        return ret;
+    }
+
+    /**
+     * Create a StoreValue.
+     *
+     * @param key the key
+     * @param data the data, as a String
+     * @return the StoreValue
+     */
+    protected static StoreValue createValue(
+            String key,
+            String data )
+    {
+        long now = System.currentTimeMillis();
+        return new StoreValue( key, "test", now, now, now, -1L, data.getBytes() );
+    }
+
+    /**
+     * Obtain the data of a StoreValue as a String.
+     *
+     * @param value the StoreValue, or null
+     * @return the data, or null
+     */
+    protected static String data(
+            StoreValue value )
+    {
+        return value != null ? new String( value.getData() ) : null;
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        StoreMeshBaseTest15 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new StoreMeshBaseTest15( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception anything can go wrong in a test
+     */
+    public StoreMeshBaseTest15(
+            String [] args )
+        throws
+            Exception
+    {
+        super( StoreMeshBaseTest15.class );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( StoreMeshBaseTest15.class );
+
+    /**
+     * An MStore that counts the writes performed through putOrUpdateAndDeleteMultiple,
+     * and can be told to fail them.
+     */
+    protected static class FailingMStore
+            extends
+                MStore
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized boolean [] putOrUpdateAndDeleteMultiple(
+                StoreValue [] toStoreOrUpdate,
+                String []     toDelete )
+            throws
+                IOException
+        {
+            ++theWriteCalls;
+            if( theFailuresLeft > 0 ) {
+                --theFailuresLeft;
+                throw new IOException( "Failing as instructed" );
+            }
+            return super.putOrUpdateAndDeleteMultiple( toStoreOrUpdate, toDelete );
+        }
+
+        /**
+         * Make the next writes fail.
+         *
+         * @param n the number of writes to fail
+         */
+        public synchronized void failNextWrites(
+                int n )
+        {
+            theFailuresLeft = n;
+        }
+
+        /**
+         * Obtain the number of writes attempted so far.
+         *
+         * @return the number of writes
+         */
+        public synchronized int getWriteCalls()
+        {
+            return theWriteCalls;
+        }
+
+        /**
+         * Determine whether there is a data element with this key.
+         *
+         * @param key the key
+         * @return true if there is
+         * @throws IOException thrown if an I/O error occurred
+         */
+        public boolean has(
+                String key )
+            throws
+                IOException
+        {
+            try {
+                get( key );
+                return true;
+
+            } catch( StoreKeyDoesNotExistException ex ) {
+                return false;
+            }
+        }
+
+        /**
+         * The number of writes attempted.
+         */
+        protected int theWriteCalls;
+
+        /**
+         * The number of writes still to fail.
+         */
+        protected int theFailuresLeft;
+    }
+
+    /**
+     * Records the DurabilityListener notifications.
+     */
+    protected static class RecordingListener
+            implements
+                DurabilityListener
+    {
+        /**
+         * {@inheritDoc}
+         */
+        public synchronized void transactionDurable(
+                GroupCommitter committer,
+                Transaction    tx )
+        {
+            theDurable.add( tx );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public synchronized void transactionFailed(
+                GroupCommitter committer,
+                Transaction    tx,
+                IOException    cause )
+        {
+            theFailed.add( tx );
+        }
+
+        /**
+         * Obtain the Transactions reported durable so far.
+         *
+         * @return the Transactions, in sequence
+         */
+        public synchronized ArrayList<Transaction> getDurable()
+        {
+            return new ArrayList<Transaction>( theDurable );
+        }
+
+        /**
+         * Obtain the Transactions reported failed so far.
+         *
+         * @return the Transactions, in sequence
+         */
+        public synchronized ArrayList<Transaction> getFailed()
+        {
+            return new ArrayList<Transaction>( theFailed );
+        }
+
+        /**
+         * Forget the notifications recorded so far.
+         */
+        public synchronized void clear()
+        {
+            theDurable.clear();
+            theFailed.clear();
+        }
+
+        /**
+         * The Transactions reported durable.
+         */
+        protected ArrayList<Transaction> theDurable = new ArrayList<Transaction>();
+
+        /**
+         * The Transactions reported failed.
+         */
+        protected ArrayList<Transaction> theFailed = new ArrayList<Transaction>();
+    }
+}
@@ -40,6 +40,7 @@ import org.infogrid.meshbase.net.proxy.ProxyMessageEndpointFactory;
 import org.infogrid.meshbase.net.proxy.ProxyPolicyFactory;
 import org.infogrid.meshbase.net.proxy.m.MPingPongNetMessageEndpointFactory;
 import org.infogrid.meshbase.net.security.NetAccessManager;
+import org.infogrid.meshbase.store.GroupCommitter;
 import org.infogrid.meshbase.store.StoreMeshBase;
 import org.infogrid.meshbase.store.StoreMeshBaseSwappingHashMap;
 import org.infogrid.meshbase.store.net.NetStoreMeshBaseEntryMapper;
@@ -55,6 +56,7 @@ import org.infogrid.store.IterableStore;
 import org.infogrid.store.Store;
 import org.infogrid.store.util.IterableStoreBackedSwappingHashMap;
 import org.infogrid.store.util.StoreBackedSwappingHashMap;
+import org.infogrid.util.BoundedWorkingSet;
 import org.infogrid.util.context.Context;
 import org.infogrid.util.logging.Log;
 
@@ -445,6 +447,72 @@ public class LocalNetStoreMeshBase
                 context );
     }
 
+    /**
+     * Set the GroupCommitter through which the changes made by committed Transactions are
+     * written to the Store. If null, changes are written when each Transaction is committed.
+     *
+     * @param newValue the new GroupCommitter, or null
+     */
+    @SuppressWarnings(value={"unchecked"})
+    public void setGroupCommitter(
+            GroupCommitter newValue )
+    {
+        ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).setGroupCommitter( newValue );
+    }
+
+    /**
+     * Obtain the GroupCommitter through which the changes made by committed Transactions are
+     * written to the Store, if any.
+     *
+     * @return the GroupCommitter, or null
+     */
+    @SuppressWarnings(value={"unchecked"})
+    public GroupCommitter getGroupCommitter()
+    {
+        return ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).getGroupCommitter();
+    }
+
+    /**
+     * Set the BoundedWorkingSet that keeps the most valuable MeshObjects in memory. If null,
+     * MeshObjects are only held by WeakReferences, and may be swapped out whenever the
+     * garbage collector runs. Use {@link org.infogrid.meshbase.store.MeshObjectWeigher MeshObjectWeigher} to bound the working set by
+     * the estimated memory use of the MeshObjects.
+     *
+     * @param newValue the new BoundedWorkingSet, or null
+     */
+    @SuppressWarnings(value={"unchecked"})
+    public void setWorkingSet(
+            BoundedWorkingSet<MeshObjectIdentifier,MeshObject> newValue )
+    {
+        ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).setWorkingSet( newValue );
+    }
+
+    /**
+     * Obtain the BoundedWorkingSet that keeps the most valuable MeshObjects in memory, if any.
+     *
+     * @return the BoundedWorkingSet, or null
+     */
+    @SuppressWarnings(value={"unchecked"})
+    public BoundedWorkingSet<MeshObjectIdentifier,MeshObject> getWorkingSet()
+    {
+        return ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).getWorkingSet();
+    }
+
+    /**
+     * Write all changes that have been committed, but not written to the Store yet.
+     *
+     * @param isPermanent if true, this MeshBase will go away permanmently; if false, it may come alive again some time later
+     */
+    @Override
+    @SuppressWarnings(value={"unchecked"})
+    protected void internalDie(
+            boolean isPermanent )
+    {
+        super.internalDie( isPermanent );
+
+        ((StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache).flushPendingWrites();
+    }
+
     /**
      * Update the cache when Transactions are committed.
      *
@@ -467,14 +535,11 @@ public class LocalNetStoreMeshBase
         }
         theReplicationChangedObjectsToBeStored.clear();
         
-        for( Map.Entry<MeshObjectIdentifier,MeshObject> current : toWrite.entrySet() ) {
-            if( current.getValue() != null ) {
-                map.saveValueToStorageUponCommit( current.getKey(), current.getValue() );
-            } else {
-                map.removeValueFromStorageUponCommit( current.getKey() );
-            }
+        map.saveValuesToStorageUponCommit( toWrite, tx );
+        if( !hasActiveTransactions() ) {
+            // other, concurrent Transactions may still have removed values pending
+            map.transactionDone();
         }
-        map.transactionDone();
     }
 
     /**
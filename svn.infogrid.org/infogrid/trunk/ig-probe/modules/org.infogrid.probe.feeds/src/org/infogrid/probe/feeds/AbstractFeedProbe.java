@@ -5,7 +5,7 @@
 // have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
 // or you do not consent to all aspects of the license and the disclaimers,
 // no license is granted; do not use this file.
-// 
+//
 // For more information about InfoGrid go to http://infogrid.org/
 //
 // Copyright 1998-2010 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
@@ -15,6 +15,10 @@
 package org.infogrid.probe.feeds;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.infogrid.mesh.EntityBlessedAlreadyException;
 import org.infogrid.mesh.EntityNotBlessedException;
 import org.infogrid.mesh.IllegalPropertyTypeException;
@@ -54,19 +58,19 @@ import org.infogrid.modelbase.ModelBase;
 import org.infogrid.probe.ProbeException;
 import org.infogrid.probe.StagingMeshBase;
 import org.infogrid.probe.xml.MeshObjectSetProbeTags;
-import org.infogrid.probe.xml.XmlDOMProbe;
+import org.infogrid.probe.xml.XmlStreamProbe;
+import org.infogrid.probe.xml.XmlStreamProbeUtils;
 import org.infogrid.util.logging.Log;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * Factors out common functionality for Web feed probes, such as Atom and RSS probes.
+ * The feeds are read as a stream: InfoGrid-specific extensions on the feed itself are
+ * instantiated as they are encountered, those on a feed entry are collected in an
+ * {@link InfoGridFeedExtensions} until the entry is complete.
  */
 public abstract class AbstractFeedProbe
         implements
-            XmlDOMProbe
+            XmlStreamProbe
 {
     private static final Log log = Log.getLogInstance( AbstractFeedProbe.class );
 
@@ -76,15 +80,26 @@ public abstract class AbstractFeedProbe
     protected AbstractFeedProbe()
     {
     }
-    
+
+    /**
+     * Determine whether the current element is an InfoGrid-specific extension.
+     *
+     * @param reader the XMLStreamReader, positioned on a START_ELEMENT
+     * @return true if this is an InfoGrid-specific extension
+     */
+    protected boolean isInfoGridFeedExtension(
+            XMLStreamReader reader )
+    {
+        return MeshObjectSetProbeTags.INFOGRID_NAMESPACE.equals( reader.getNamespaceURI() );
+    }
+
     /**
-     * Invoked by subclasses to instantiate the InfoGrid-specific extensions on either the RSS/Atom feeds themselves
-     * or the feed elements.
+     * Invoked by subclasses to instantiate an InfoGrid-specific extension on a NetMeshObject that exists
+     * already, such as the home object representing the RSS/Atom feed itself.
      *
      * @param dataSourceIdentifier identifier of the data source being read
-     * @param theDocument the XML document being read
-     * @param here the current Element
-     * @param current the NetMeshObject for which the InfoGrid-specific extensions are instantiated
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the extension
+     * @param current the NetMeshObject for which the InfoGrid-specific extension is instantiated
      * @throws TransactionException should never be thrown
      * @throws NotPermittedException should never be thrown
      * @throws org.infogrid.probe.ProbeException.SyntaxError a syntax error was found
@@ -97,11 +112,11 @@ public abstract class AbstractFeedProbe
      * @throws NotRelatedException thrown if a two NetMeshObjects were not related
      * @throws IllegalPropertyTypeException thrown if a PropertyType could not be used with a NetMeshObject
      * @throws IllegalPropertyValueException thrown if a PropertyValue could not be used with a NetMeshObject and a PropertyType
+     * @throws XMLStreamException thrown if the XML was not well-formed
      */
-    protected void handleInfoGridFeedExtensions(
+    protected void handleInfoGridFeedExtension(
             NetMeshBaseIdentifier dataSourceIdentifier,
-            Document              theDocument,
-            Element               here,
+            XMLStreamReader       reader,
             NetMeshObject         current )
         throws
             TransactionException,
@@ -115,98 +130,148 @@ public abstract class AbstractFeedProbe
             RoleTypeBlessedAlreadyException,
             NotRelatedException,
             IllegalPropertyTypeException,
-            IllegalPropertyValueException
+            IllegalPropertyValueException,
+            XMLStreamException
     {
-        if( here == null ) {
-            return;
-        }
-        if( current == null ) {
-            return;
-        }
-        
-        ModelBase modelBase = current.getMeshBase().getModelBase();
+        InfoGridFeedExtensions extensions = new InfoGridFeedExtensions();
 
-        NodeList children = here.getChildNodes();
-        for( int i=0 ; i<children.getLength() ; ++i ) {
-            Node child = children.item( i );
+        parseInfoGridFeedExtension( dataSourceIdentifier, reader, current.getMeshBase().getModelBase(), extensions );
 
-            if( !( child instanceof Element )) {
-                continue;
+        applyInfoGridFeedExtensions( extensions, current );
+    }
+
+    /**
+     * Invoked by subclasses to read an InfoGrid-specific extension into an InfoGridFeedExtensions,
+     * to be instantiated later.
+     *
+     * @param dataSourceIdentifier identifier of the data source being read
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the extension. Leaves it positioned on its END_ELEMENT
+     * @param modelBase the ModelBase in which to look up MeshTypes
+     * @param extensions the InfoGridFeedExtensions to add to
+     * @throws org.infogrid.probe.ProbeException.SyntaxError a syntax error was found
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    protected void parseInfoGridFeedExtension(
+            NetMeshBaseIdentifier  dataSourceIdentifier,
+            XMLStreamReader        reader,
+            ModelBase              modelBase,
+            InfoGridFeedExtensions extensions )
+        throws
+            ProbeException.SyntaxError,
+            XMLStreamException
+    {
+        String localName = reader.getLocalName();
+
+        if( MeshObjectSetProbeTags.MESH_TYPE_TAG.equals( localName )) {
+            String typeString = XmlStreamProbeUtils.getTextContent( reader ).trim();
+            if( typeString.length() == 0 ) {
+                log.warn( "Empty type given" );
+            } else {
+                try {
+                    EntityType type = modelBase.findEntityTypeByIdentifier(
+                            modelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeString ));
+                    extensions.theEntityTypes.add( type );
+
+                } catch( MeshTypeWithIdentifierNotFoundException ex ) {
+                    log.warn( ex );
+                }
             }
-            Element realChild = (Element) child;
-            if( !MeshObjectSetProbeTags.INFOGRID_NAMESPACE.equals( realChild.getNamespaceURI() )) {
-                continue;
+
+        } else if( MeshObjectSetProbeTags.PROPERTY_TYPE_TAG.equals( localName )) {
+            String typeString = reader.getAttributeValue( null, MeshObjectSetProbeTags.TYPE_TAG );
+            if( typeString != null ) {
+                typeString = typeString.trim();
             }
-            
-            if( MeshObjectSetProbeTags.MESH_TYPE_TAG.equals( realChild.getLocalName())) {
-                String typeString = realChild.getTextContent();
-                if( typeString != null ) {
-                    typeString = typeString.trim();
-                }
-                if( typeString == null || typeString.length() == 0 ) {
-                    log.warn( "Empty type given for " + current );
-                } else {
-                    try {
-                        EntityType type = modelBase.findEntityTypeByIdentifier(
-                                modelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeString ));
-                        current.bless( type );
-                    } catch( MeshTypeWithIdentifierNotFoundException ex ) {
-                        log.warn( ex );
-                    }
-                }
+            if( typeString == null || typeString.length() == 0 ) {
+                log.warn( "Empty type given for property" );
+                XmlStreamProbeUtils.skipElement( reader );
+            } else {
+                try {
+                    PropertyType type = modelBase.findPropertyTypeByIdentifier(
+                            modelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeString ));
 
-            } else if( MeshObjectSetProbeTags.PROPERTY_TYPE_TAG.equals( realChild.getLocalName())) {
-                String typeString = realChild.getAttribute( MeshObjectSetProbeTags.TYPE_TAG );
-                if( typeString != null ) {
-                    typeString = typeString.trim();
-                }
-                if( typeString == null || typeString.length() == 0 ) {
-                    log.warn( "Empty type given for property on " + current );
-                } else {
-                    try {
-                        PropertyType type = modelBase.findPropertyTypeByIdentifier(
-                                modelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeString ));
+                    PropertyValue value = determinePropertyValue( dataSourceIdentifier, type, reader );
 
-                        PropertyValue value = determinePropertyValue( dataSourceIdentifier, type, realChild );
-                        
-                        current.setPropertyValue( type, value );
-                        
-                    } catch( MeshTypeWithIdentifierNotFoundException ex ) {
-                        throw new ProbeException.SyntaxError( dataSourceIdentifier, ex );
-                    }
-                }
+                    extensions.thePropertyTypes.add( type );
+                    extensions.thePropertyValues.add( value );
 
-            } else if( MeshObjectSetProbeTags.RELATIONSHIP_TAG.equals( realChild.getLocalName())) {
-                String idString = realChild.getAttribute( MeshObjectSetProbeTags.IDENTIFIER_TAG );
-                if( idString != null ) {
-                    idString = idString.trim();
-                }
-                if( idString == null) {
-                    log.warn( "No ID given for relationship on " + current );
-                } else {
-                    establishRelationship( current, idString, realChild );
+                } catch( MeshTypeWithIdentifierNotFoundException ex ) {
+                    throw new ProbeException.SyntaxError( dataSourceIdentifier, ex );
                 }
+            }
+
+        } else if( MeshObjectSetProbeTags.RELATIONSHIP_TAG.equals( localName )) {
+            String idString = reader.getAttributeValue( null, MeshObjectSetProbeTags.IDENTIFIER_TAG );
+            if( idString == null ) {
+                log.warn( "No ID given for relationship" );
+                XmlStreamProbeUtils.skipElement( reader );
             } else {
-                log.warn( "unexpected tag: " + realChild.getLocalName() );
+                extensions.thePartnerIdentifiers.add( idString.trim() );
+                extensions.thePartnerRoleTypes.add( determineRoleTypes( reader, modelBase ));
             }
+
+        } else {
+            log.warn( "unexpected tag: " + localName );
+            XmlStreamProbeUtils.skipElement( reader );
+        }
+    }
+
+    /**
+     * Invoked by subclasses to instantiate the collected InfoGrid-specific extensions on a NetMeshObject.
+     *
+     * @param extensions the collected InfoGrid-specific extensions
+     * @param current the NetMeshObject for which the InfoGrid-specific extensions are instantiated
+     * @throws TransactionException should never be thrown
+     * @throws NotPermittedException should never be thrown
+     * @throws ParseException thrown if parsing failed
+     * @throws IsAbstractException a MeshType was agstract and could not be instantiated
+     * @throws EntityBlessedAlreadyException thrown if a NetMeshObject was blessed with an EntityType already
+     * @throws EntityNotBlessedException thrown if a NetMeshObject needed to be blessed with an EntityType but was not
+     * @throws RelatedAlreadyException thrown if two NetMeshObjects were related already
+     * @throws RoleTypeBlessedAlreadyException thrown if a relationship between two NetMeshObject was already blessed with a RoleType
+     * @throws NotRelatedException thrown if a two NetMeshObjects were not related
+     * @throws IllegalPropertyTypeException thrown if a PropertyType could not be used with a NetMeshObject
+     * @throws IllegalPropertyValueException thrown if a PropertyValue could not be used with a NetMeshObject and a PropertyType
+     */
+    protected void applyInfoGridFeedExtensions(
+            InfoGridFeedExtensions extensions,
+            NetMeshObject          current )
+        throws
+            TransactionException,
+            NotPermittedException,
+            ParseException,
+            IsAbstractException,
+            EntityBlessedAlreadyException,
+            EntityNotBlessedException,
+            RelatedAlreadyException,
+            RoleTypeBlessedAlreadyException,
+            NotRelatedException,
+            IllegalPropertyTypeException,
+            IllegalPropertyValueException
+    {
+        for( EntityType type : extensions.theEntityTypes ) {
+            current.bless( type );
+        }
+        for( int i=0 ; i<extensions.thePropertyTypes.size() ; ++i ) {
+            current.setPropertyValue( extensions.thePropertyTypes.get( i ), extensions.thePropertyValues.get( i ));
+        }
+        for( int i=0 ; i<extensions.thePartnerIdentifiers.size() ; ++i ) {
+            establishRelationship( current, extensions.thePartnerIdentifiers.get( i ), extensions.thePartnerRoleTypes.get( i ));
         }
     }
-    
+
     /**
      * Invoked by subclasses to instantiate a feed object including any InfoGrid-specific extensions on the
      * feed objects.
-     * 
-     * @param dataSourceIdentifier identifier of the data source, for error reporting
-     * @param theDocument the XML Document that is being parsed
-     * @param here the current XML Element
+     *
      * @param identifier identifier of the NetMeshObject that needs to be created
      * @param type the primary EntityType with which the new NetMeshObject shall be blessed
+     * @param extensions the InfoGrid-specific extensions collected for this feed object
      * @param freshMeshBase the StagingMeshBase in which to instantiate the NetMeshObject
      * @return the newly instantiated feed object
      * @throws TransactionException should never be thrown
      * @throws NotPermittedException should never be thrown
      * @throws MeshObjectIdentifierNotUniqueException thrown if the identifier for the new NetMeshObject was not unique
-     * @throws org.infogrid.probe.ProbeException.SyntaxError a syntax error was found
      * @throws ParseException thrown if parsing failed
      * @throws IsAbstractException a MeshType was agstract and could not be instantiated
      * @throws EntityBlessedAlreadyException thrown if a NetMeshObject was blessed with an EntityType already
@@ -218,11 +283,9 @@ public abstract class AbstractFeedProbe
      * @throws IllegalPropertyValueException thrown if a PropertyValue could not be used with a NetMeshObject and a PropertyType
      */
     protected NetMeshObject createExtendedInfoGridFeedEntryObject(
-            NetMeshBaseIdentifier   dataSourceIdentifier,
-            Document                theDocument,
-            Element                 here,
             NetMeshObjectIdentifier identifier,
             EntityType              type,
+            InfoGridFeedExtensions  extensions,
             StagingMeshBase         freshMeshBase )
         throws
             TransactionException,
@@ -232,7 +295,6 @@ public abstract class AbstractFeedProbe
             NotRelatedException,
             NotPermittedException,
             MeshObjectIdentifierNotUniqueException,
-            ProbeException.SyntaxError,
             ParseException,
             IsAbstractException,
             EntityBlessedAlreadyException,
@@ -240,9 +302,9 @@ public abstract class AbstractFeedProbe
             IllegalPropertyValueException
     {
         NetMeshObject ret = freshMeshBase.getMeshBaseLifecycleManager().createMeshObject( identifier, type );
-        
-        handleInfoGridFeedExtensions( dataSourceIdentifier, theDocument, here, ret );
-        
+
+        applyInfoGridFeedExtensions( extensions, ret );
+
         return ret;
     }
 
@@ -251,45 +313,45 @@ public abstract class AbstractFeedProbe
      *
      * @param dataSourceIdentifier the dataSourceIdentifier of the data source, for error reporting
      * @param type the PropertyType one of whose values is being read
-     * @param here the enclosing DOM element
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the enclosing element.
+     *         Leaves it positioned on its END_ELEMENT
      * @return the instantiated PropertyValue
      * @throws org.infogrid.probe.ProbeException.SyntaxError thrown if a PropertyValue was formatted incorrectly
+     * @throws XMLStreamException thrown if the XML was not well-formed
      */
     protected PropertyValue determinePropertyValue(
             NetMeshBaseIdentifier dataSourceIdentifier,
             PropertyType          type,
-            Element               here )
+            XMLStreamReader       reader )
         throws
-            ProbeException.SyntaxError
+            ProbeException.SyntaxError,
+            XMLStreamException
     {
-        NodeList children = here.getChildNodes();
-        for( int i=0 ; i<children.getLength() ; ++i ) {
-            Node child = children.item( i );
+        PropertyValue ret   = null;
+        boolean       found = false;
 
-            if( !( child instanceof Element )) {
-                continue;
-            }
-            Element realChild = (Element) child;
-            if( !MeshObjectSetProbeTags.INFOGRID_NAMESPACE.equals( realChild.getNamespaceURI() )) {
+        while( XmlStreamProbeUtils.nextChildElement( reader )) {
+            if( found || !isInfoGridFeedExtension( reader )) {
+                XmlStreamProbeUtils.skipElement( reader );
                 continue;
             }
-            
-            String localName = realChild.getLocalName();
+
+            String localName = reader.getLocalName();
             if( MeshObjectSetProbeTags.BLOB_VALUE_TAG.equals( localName )) {
-                String mime     = realChild.getAttribute( MeshObjectSetProbeTags.BLOB_VALUE_MIME_TAG );
-                String loadFrom = realChild.getAttribute( MeshObjectSetProbeTags.BLOB_VALUE_LOAD_TAG );
+                String mime     = reader.getAttributeValue( null, MeshObjectSetProbeTags.BLOB_VALUE_MIME_TAG );
+                String loadFrom = reader.getAttributeValue( null, MeshObjectSetProbeTags.BLOB_VALUE_LOAD_TAG );
 
                 BlobDataType dataType = (BlobDataType) type.getDataType();
 
                 if( loadFrom != null ) {
-                    PropertyValue ret = dataType.createBlobValueByLoadingFrom( loadFrom, mime );
-                    return ret;
+                    XmlStreamProbeUtils.skipElement( reader );
+
+                    ret = dataType.createBlobValueByLoadingFrom( loadFrom, mime );
 
-                } else {                
-                    String content = realChild.getTextContent();
+                } else {
+                    String content = XmlStreamProbeUtils.getTextContent( reader );
 
-                    PropertyValue ret;
-                    if( mime.startsWith( "text/" )) {
+                    if( mime != null && mime.startsWith( "text/" )) {
 
                         ret = dataType.createBlobValue( content, mime );
                     } else {
@@ -299,38 +361,39 @@ public abstract class AbstractFeedProbe
                         content = content.substring( 2, content.length()-1 );
                         ret = dataType.createBlobValue( BlobValue.decodeHex( content ), mime );
                     }
-                    return ret;
                 }
-                
+                found = true;
+
             } else if( MeshObjectSetProbeTags.BOOLEAN_VALUE_TAG.equals( localName )) {
-                String content = realChild.getTextContent();
+                String content = XmlStreamProbeUtils.getTextContent( reader );
 
                 if( MeshObjectSetProbeTags.BOOLEAN_VALUE_TRUE_TAG.equals( content )) {
-                    PropertyValue ret = BooleanValue.TRUE;
-                    return ret;
+                    ret   = BooleanValue.TRUE;
+                    found = true;
 
                 } else if( MeshObjectSetProbeTags.BOOLEAN_VALUE_FALSE_TAG.equals( content )) {
-                    PropertyValue ret = BooleanValue.TRUE;
-                    return ret;
+                    ret   = BooleanValue.FALSE;
+                    found = true;
                 } else {
                     log.error( "Wrong value for tag " + localName );
                 }
-                
+
             } else if( MeshObjectSetProbeTags.COLOR_VALUE_TAG.equals( localName )) {
-                String red   = realChild.getAttribute( MeshObjectSetProbeTags.COLOR_VALUE_RED_TAG );
-                String green = realChild.getAttribute( MeshObjectSetProbeTags.COLOR_VALUE_GREEN_TAG );
-                String blue  = realChild.getAttribute( MeshObjectSetProbeTags.COLOR_VALUE_BLUE_TAG );
-                String alpha = realChild.getAttribute( MeshObjectSetProbeTags.COLOR_VALUE_ALPHA_TAG );
-
-                PropertyValue ret = ColorValue.create( Integer.parseInt( red ), Integer.parseInt( green ), Integer.parseInt( blue ), Integer.parseInt( alpha ));
-                return ret;
-                
+                String red   = reader.getAttributeValue( null, MeshObjectSetProbeTags.COLOR_VALUE_RED_TAG );
+                String green = reader.getAttributeValue( null, MeshObjectSetProbeTags.COLOR_VALUE_GREEN_TAG );
+                String blue  = reader.getAttributeValue( null, MeshObjectSetProbeTags.COLOR_VALUE_BLUE_TAG );
+                String alpha = reader.getAttributeValue( null, MeshObjectSetProbeTags.COLOR_VALUE_ALPHA_TAG );
+                XmlStreamProbeUtils.skipElement( reader );
+
+                ret   = ColorValue.create( Integer.parseInt( red ), Integer.parseInt( green ), Integer.parseInt( blue ), Integer.parseInt( alpha ));
+                found = true;
+
             } else if( MeshObjectSetProbeTags.CURRENCY_VALUE_TAG.equals( localName )) {
-                String content = realChild.getTextContent();
+                String content = XmlStreamProbeUtils.getTextContent( reader );
 
                 try {
-                    PropertyValue ret = CurrencyValue.parseCurrencyValue( content );
-                    return ret;
+                    ret   = CurrencyValue.parseCurrencyValue( content );
+                    found = true;
                 } catch( ParseException ex ) {
                     throw new ProbeException.SyntaxError(  dataSourceIdentifier, "Failed to parse CurrencyValue " + content );
                 }
@@ -340,38 +403,40 @@ public abstract class AbstractFeedProbe
                     throw new ProbeException.SyntaxError( dataSourceIdentifier, "Data type not an EnumeratedDataType: " + type, null    );
                 }
                 EnumeratedDataType realType = (EnumeratedDataType) type.getDataType();
-                
-                String content = realChild.getTextContent();
+
+                String content = XmlStreamProbeUtils.getTextContent( reader );
 
                 try {
-                    PropertyValue ret = realType.select( content );
-                    return ret;
+                    ret   = realType.select( content );
+                    found = true;
                 } catch( UnknownEnumeratedValueException ex ) {
                     throw new ProbeException.SyntaxError( dataSourceIdentifier, "Invalid key " + content + " for EnumeratedDataType on PropertyType " + type.getIdentifier(), ex );
                 }
-                            
+
             } else if( MeshObjectSetProbeTags.EXTENT_VALUE_TAG.equals( localName )) {
-                String w = realChild.getAttribute( MeshObjectSetProbeTags.EXTENT_VALUE_WIDTH_TAG );
-                String h = realChild.getAttribute( MeshObjectSetProbeTags.EXTENT_VALUE_HEIGHT_TAG );
+                String w = reader.getAttributeValue( null, MeshObjectSetProbeTags.EXTENT_VALUE_WIDTH_TAG );
+                String h = reader.getAttributeValue( null, MeshObjectSetProbeTags.EXTENT_VALUE_HEIGHT_TAG );
+                XmlStreamProbeUtils.skipElement( reader );
+
+                ret   = ExtentValue.create( Double.parseDouble( w ), Double.parseDouble( h ));
+                found = true;
 
-                PropertyValue ret = ExtentValue.create( Double.parseDouble( w ), Double.parseDouble( h ));
-                return ret;
-                
             } else if( MeshObjectSetProbeTags.INTEGER_VALUE_TAG.equals( localName )) {
-                String content = realChild.getTextContent();
-                
-                PropertyValue ret = IntegerValue.create( Integer.parseInt( content ) );
-                return ret;
-    
+                String content = XmlStreamProbeUtils.getTextContent( reader );
+
+                ret   = IntegerValue.create( Integer.parseInt( content ) );
+                found = true;
+
             } else if( MeshObjectSetProbeTags.FLOAT_VALUE_TAG.equals( localName )) {
-                String content = realChild.getTextContent();
-                
-                PropertyValue ret = FloatValue.create( Double.parseDouble( content ) );
-                return ret;
-    
+                String content = XmlStreamProbeUtils.getTextContent( reader );
+
+                ret   = FloatValue.create( Double.parseDouble( content ) );
+                found = true;
+
             } else if( MeshObjectSetProbeTags.MULTIPLICITY_VALUE_TAG.equals( localName )) {
-                String minString = realChild.getAttribute( MeshObjectSetProbeTags.MULTIPLICITY_VALUE_MIN_TAG );
-                String maxString = realChild.getAttribute( MeshObjectSetProbeTags.MULTIPLICITY_VALUE_MAX_TAG );
+                String minString = reader.getAttributeValue( null, MeshObjectSetProbeTags.MULTIPLICITY_VALUE_MIN_TAG );
+                String maxString = reader.getAttributeValue( null, MeshObjectSetProbeTags.MULTIPLICITY_VALUE_MAX_TAG );
+                XmlStreamProbeUtils.skipElement( reader );
 
                 int min;
                 int max;
@@ -386,47 +451,50 @@ public abstract class AbstractFeedProbe
                 } else {
                     max = Integer.parseInt( maxString );
                 }
-                
-                PropertyValue ret = MultiplicityValue.create( min, max );
-                return ret;
-                
+
+                ret   = MultiplicityValue.create( min, max );
+                found = true;
+
             } else if( MeshObjectSetProbeTags.POINT_VALUE_TAG.equals( localName )) {
-                String x = realChild.getAttribute( MeshObjectSetProbeTags.POINT_VALUE_X_TAG );
-                String y = realChild.getAttribute( MeshObjectSetProbeTags.POINT_VALUE_Y_TAG );
+                String x = reader.getAttributeValue( null, MeshObjectSetProbeTags.POINT_VALUE_X_TAG );
+                String y = reader.getAttributeValue( null, MeshObjectSetProbeTags.POINT_VALUE_Y_TAG );
+                XmlStreamProbeUtils.skipElement( reader );
+
+                ret   = PointValue.create( Double.parseDouble( x ), Double.parseDouble( y ));
+                found = true;
 
-                PropertyValue ret = PointValue.create( Double.parseDouble( x ), Double.parseDouble( y ));
-                return ret;
-                
             } else if( MeshObjectSetProbeTags.STRING_VALUE_TAG.equals( localName )) {
-                String content = realChild.getTextContent();
-                
-                PropertyValue ret = StringValue.create( content );
-                return ret;
-                
+                String content = XmlStreamProbeUtils.getTextContent( reader );
+
+                ret   = StringValue.create( content );
+                found = true;
+
             } else if( MeshObjectSetProbeTags.TIME_PERIOD_TAG.equals( localName )) {
-                String year   = realChild.getAttribute( MeshObjectSetProbeTags.TIME_PERIOD_YEAR_TAG );
-                String month  = realChild.getAttribute( MeshObjectSetProbeTags.TIME_PERIOD_MONTH_TAG );
-                String day    = realChild.getAttribute( MeshObjectSetProbeTags.TIME_PERIOD_DAY_TAG );
-                String hour   = realChild.getAttribute( MeshObjectSetProbeTags.TIME_PERIOD_HOUR_TAG );
-                String minute = realChild.getAttribute( MeshObjectSetProbeTags.TIME_PERIOD_MINUTE_TAG );
-                String second = realChild.getAttribute( MeshObjectSetProbeTags.TIME_PERIOD_SECOND_TAG );
-
-                PropertyValue ret = TimePeriodValue.create(
+                String year   = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_PERIOD_YEAR_TAG );
+                String month  = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_PERIOD_MONTH_TAG );
+                String day    = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_PERIOD_DAY_TAG );
+                String hour   = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_PERIOD_HOUR_TAG );
+                String minute = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_PERIOD_MINUTE_TAG );
+                String second = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_PERIOD_SECOND_TAG );
+                XmlStreamProbeUtils.skipElement( reader );
+
+                ret = TimePeriodValue.create(
                         Short.parseShort( year ),
                         Short.parseShort( month ),
                         Short.parseShort( day ),
                         Short.parseShort( hour ),
                         Short.parseShort( minute ),
                         Float.parseFloat( second ));
-                return ret;
-                
+                found = true;
+
             } else if( MeshObjectSetProbeTags.TIME_STAMP_TAG.equals( localName )) {
-                String year   = realChild.getAttribute( MeshObjectSetProbeTags.TIME_STAMP_YEAR_TAG );
-                String month  = realChild.getAttribute( MeshObjectSetProbeTags.TIME_STAMP_MONTH_TAG );
-                String day    = realChild.getAttribute( MeshObjectSetProbeTags.TIME_STAMP_DAY_TAG );
-                String hour   = realChild.getAttribute( MeshObjectSetProbeTags.TIME_STAMP_HOUR_TAG );
-                String minute = realChild.getAttribute( MeshObjectSetProbeTags.TIME_STAMP_MINUTE_TAG );
-                String second = realChild.getAttribute( MeshObjectSetProbeTags.TIME_STAMP_SECOND_TAG );
+                String year   = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_STAMP_YEAR_TAG );
+                String month  = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_STAMP_MONTH_TAG );
+                String day    = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_STAMP_DAY_TAG );
+                String hour   = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_STAMP_HOUR_TAG );
+                String minute = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_STAMP_MINUTE_TAG );
+                String second = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_STAMP_SECOND_TAG );
+                String content = XmlStreamProbeUtils.getTextContent( reader );
 
                 if(    year   != null && year.length()   > 0
                     && month  != null && month.length()  > 0
@@ -435,38 +503,85 @@ public abstract class AbstractFeedProbe
                     && minute != null && minute.length() > 0
                     && second != null && second.length() > 0 )
                 {
-                    PropertyValue ret = TimeStampValue.create(
+                    ret = TimeStampValue.create(
                             Short.parseShort( year ),
                             Short.parseShort( month ),
                             Short.parseShort( day ),
                             Short.parseShort( hour ),
                             Short.parseShort( minute ),
                             Float.parseFloat( second ));
-                    return ret;
                 } else {
-                    String content = realChild.getTextContent();
                     try {
-                        PropertyValue ret = TimeStampValue.createFromRfc3339( content );
-                        return ret;
+                        ret = TimeStampValue.createFromRfc3339( content );
                     } catch( ParseException ex ) {
                         throw new ProbeException.SyntaxError( dataSourceIdentifier, "Invalid RFC 3339 date " + content, ex );
                     }
                 }
+                found = true;
 
             } else {
                 log.error( "Unexpected tag: " + localName );
+                XmlStreamProbeUtils.skipElement( reader );
+            }
+        }
+        if( !found ) {
+            throw new IllegalArgumentException( "Invalid Property statement" );
+        }
+        return ret;
+    }
+
+    /**
+     * Helper method to read the RoleTypes with which a relationship shall be blessed.
+     *
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the element containing the description
+     *         of the relationship. Leaves it positioned on its END_ELEMENT
+     * @param modelBase the ModelBase in which to look up the RoleTypes
+     * @return the found RoleTypes
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    protected List<RoleType> determineRoleTypes(
+            XMLStreamReader reader,
+            ModelBase       modelBase )
+        throws
+            XMLStreamException
+    {
+        List<RoleType> ret = new ArrayList<RoleType>();
+
+        while( XmlStreamProbeUtils.nextChildElement( reader )) {
+            if( !isInfoGridFeedExtension( reader )) {
+                log.warn( "Infogrid XML data must only contain InfoGrid tags" );
+
+            } else if( MeshObjectSetProbeTags.ROLE_TYPE_TAG.equals( reader.getLocalName())) {
+                String typeString = reader.getAttributeValue( null, MeshObjectSetProbeTags.TYPE_TAG );
+                if( typeString != null ) {
+                    typeString = typeString.trim();
+                }
+                if( typeString == null || typeString.length() == 0 ) {
+                    log.warn( "Empty type given for relationship" );
+                } else {
+                    try {
+                        ret.add( modelBase.findRoleTypeByIdentifier(
+                                modelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeString )));
+
+                    } catch( MeshTypeWithIdentifierNotFoundException ex ) {
+                        log.warn( ex );
+                    }
+                }
+            } else {
+                log.warn( "unexpected tag: " + reader.getLocalName() );
             }
+            XmlStreamProbeUtils.skipElement( reader );
         }
-        throw new IllegalArgumentException( "Invalid Property statement" );
+        return ret;
     }
 
     /**
      * Establish a relationship between a current NetMeshObject with a partner NetMeshObject, blessed with the appropriate
      * RoleTypes.
-     * 
+     *
      * @param current the current NetMeshObject
      * @param partnerId String form of the Identifier for the partner NetMeshObject
-     * @param here the XML DOM element containing the description of the relationship
+     * @param roleTypes the RoleTypes with which to bless the relationship
      * @throws TransactionException should never be thrown
      * @throws ParseException thrown if parsing failed
      * @throws RelatedAlreadyException thrown if the two NetMeshObjects were related already
@@ -478,9 +593,9 @@ public abstract class AbstractFeedProbe
      * @throws NotPermittedException should never be thrown
      */
     protected void establishRelationship(
-            NetMeshObject current,
-            String        partnerId,
-            Element       here )
+            NetMeshObject  current,
+            String         partnerId,
+            List<RoleType> roleTypes )
         throws
             TransactionException,
             ParseException,
@@ -492,7 +607,7 @@ public abstract class AbstractFeedProbe
             NotPermittedException
     {
         NetMeshBase base = current.getMeshBase();
-        
+
         NetMeshObject partner = base.findMeshObjectByIdentifier( base.getMeshObjectIdentifierFactory().guessFromExternalForm( partnerId ));
         if( partner == null ) {
             // don't have it (yet?), ignore
@@ -500,109 +615,45 @@ public abstract class AbstractFeedProbe
         }
 
         current.relate( partner );
-        
-        ModelBase modelBase = current.getMeshBase().getModelBase();
-
-        NodeList children = here.getChildNodes();
-        for( int i=0 ; i<children.getLength() ; ++i ) {
-            Node child = children.item( i );
-            
-            if( !( child instanceof Element )) {
-                continue;
-            }
-            
-            Element realChild = (Element) child;
-            if( !MeshObjectSetProbeTags.INFOGRID_NAMESPACE.equals( realChild.getNamespaceURI() )) {
-                log.warn( "Infogrid XML data must only contain InfoGrid tags" );
-                continue;
-            }
-            
-            if( MeshObjectSetProbeTags.ROLE_TYPE_TAG.equals( realChild.getLocalName())) {
-                String typeString = realChild.getAttribute( MeshObjectSetProbeTags.TYPE_TAG );
-                if( typeString != null ) {
-                    typeString = typeString.trim();
-                }
-                if( typeString == null || typeString.length() == 0 ) {
-                    log.warn( "Empty type given for " + current );
-                } else {
-                    try {
-                        RoleType type = modelBase.findRoleTypeByIdentifier(
-                                modelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeString ));
-                        current.blessRelationship( type, partner );
 
-                    } catch( MeshTypeWithIdentifierNotFoundException ex ) {
-                        log.warn( ex );
-                    }
-                }
-            } else {
-                log.warn( "unexpected tag: " + realChild.getLocalName() );
-            }
+        for( RoleType type : roleTypes ) {
+            current.blessRelationship( type, partner );
         }
-        
     }
 
     /**
-     * Helper method to obtain the text contained in a child tag with a particular tag name.
+     * Helper method to determine whether the current element is a feed element with a particular tag name,
+     * in the default namespace or none.
      *
-     * @param node the DOM node
-     * @param tag the tag name of the child node
-     * @return the found String content, or null if none found
+     * @param reader the XMLStreamReader, positioned on a START_ELEMENT
+     * @param tag the tag name
+     * @return true if the current element has this tag name
      */
-    protected String getChildNodeValue(
-            Element node,
-            String  tag )
+    protected boolean isTag(
+            XMLStreamReader reader,
+            String          tag )
     {
-        if( node == null ) {
-            return null;
-        }
-        NodeList children = node.getChildNodes();
-        for( int i=0 ; i<children.getLength() ; ++i ) {
-            Node child = children.item( i );
-            
-            if( tag == null || tag.equals( child.getNodeName() )) {
-                String ret = child.getTextContent();
-                if( ret != null && ret.length() > 0 ) {
-                    return ret;
-                }
-            }
-        }
-        return null;
+        String prefix = reader.getPrefix();
+
+        return ( prefix == null || prefix.length() == 0 ) && tag.equals( reader.getLocalName() );
     }
- 
+
     /**
-     * Helper method to obtain an attribute value in a child tag with a particular tag name.
-     * This uses the same algorithm as {@link #getChildNodeValue} to find the respective node.
+     * Helper method to keep the first non-empty text found for a tag that may occur more than once.
      *
-     * @param node the DOM node
-     * @param tag the tag name of the child node
-     * @param att the attribute name of the child node
+     * @param found the text found so far, if any
+     * @param candidate the text of the current occurrence
      * @return the found String content, or null if none found
-     * @see #getChildNodeValue
      */
-    protected String getChildNodeAttribute(
-            Element node,
-            String  tag,
-            String  att )
+    protected String firstNonEmpty(
+            String found,
+            String candidate )
     {
-        if( node == null ) {
-            return null;
+        if( found != null ) {
+            return found;
         }
-        NodeList children = node.getChildNodes();
-        for( int i=0 ; i<children.getLength() ; ++i ) {
-            Node child = children.item( i );
-            
-            if( tag == null || tag.equals( child.getNodeName() )) {
-                String found = child.getTextContent();
-                if( found != null && found.length() > 0 ) {
-                    Node foundAttNode = child.getAttributes().getNamedItem( att );
-                    if( foundAttNode != null ) {
-                        String ret = foundAttNode.getTextContent();
-                        return ret;
-                    } else {
-                        return null;
-                    }
-                }
-            }
+        if( candidate != null && candidate.length() > 0 ) {
+            return candidate;
         }
         return null;
     }
@@ -641,4 +692,43 @@ public abstract class AbstractFeedProbe
         }
         return ret.toString();
     }
+
+    /**
+     * Collects the InfoGrid-specific extensions of a feed entry while the entry is being read,
+     * so they can be instantiated once the feed entry's NetMeshObject has been created.
+     */
+    protected static class InfoGridFeedExtensions
+    {
+        /**
+         * Constructor.
+         */
+        public InfoGridFeedExtensions()
+        {
+        }
+
+        /**
+         * The EntityTypes to bless the feed entry with.
+         */
+        protected List<EntityType> theEntityTypes = new ArrayList<EntityType>();
+
+        /**
+         * The PropertyTypes whose values to set, in the same sequence as thePropertyValues.
+         */
+        protected List<PropertyType> thePropertyTypes = new ArrayList<PropertyType>();
+
+        /**
+         * The PropertyValues to set, in the same sequence as thePropertyTypes.
+         */
+        protected List<PropertyValue> thePropertyValues = new ArrayList<PropertyValue>();
+
+        /**
+         * The String forms of the identifiers of the relationship partners, in the same sequence as thePartnerRoleTypes.
+         */
+        protected List<String> thePartnerIdentifiers = new ArrayList<String>();
+
+        /**
+         * The RoleTypes to bless the relationships with, in the same sequence as thePartnerIdentifiers.
+         */
+        protected List<List<RoleType>> thePartnerRoleTypes = new ArrayList<List<RoleType>>();
+    }
 }
@@ -17,6 +17,8 @@ package org.infogrid.probe.feeds.atom;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.text.ParseException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.infogrid.mesh.EntityBlessedAlreadyException;
 import org.infogrid.mesh.EntityNotBlessedException;
 import org.infogrid.mesh.IllegalPropertyTypeException;
@@ -36,11 +38,8 @@ import org.infogrid.module.ModuleException;
 import org.infogrid.probe.ProbeException;
 import org.infogrid.probe.StagingMeshBase;
 import org.infogrid.probe.feeds.AbstractFeedProbe;
+import org.infogrid.probe.xml.XmlStreamProbeUtils;
 import org.infogrid.util.logging.Log;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * A Probe for the Atom file format, with optional InfoGrid extensions.
@@ -59,7 +58,7 @@ public class AtomProbe
     }
 
     /**
-     * <p>Read from the DOM and instantiate corresponding MeshObjects.</p>
+     * <p>Read from the XMLStreamReader and instantiate corresponding MeshObjects.</p>
      * <p>This method declares
      * many different types of Exceptions; that enables the Probe Framework to handle many
      * possible error conditions out of the box, thereby making Probe programming easier.
@@ -75,9 +74,8 @@ public class AtomProbe
      *         Probe must bless the Probe's HomeObject with a subtype of <code>ProbeUpdateSpecification</code> (defined
      *         in the <code>org.infogrid.model.Probe</code> Subject Area) and suitable Property
      *         values that reflect the policy.
-     * @param documentBytes the raw form of the Document, provided if available only
      * @param documentMime the MIME type of the Document, provided if available only
-     * @param theDocument the DOM document to be interpreted
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the top-level element
      * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated by the Probe.
      *         This StagingMeshBase is empty when passed into this call, except for the home object which always exists
      * @throws EntityBlessedAlreadyException thrown if a MeshObject was incorrectly blessed twice with the same
@@ -106,13 +104,13 @@ public class AtomProbe
      * @throws TransactionException a Transaction problem occurred. Throwing this typically indicates a programming error.
      * @throws URISyntaxException thrown if a URI was constructed in an invalid way
      * @throws ParseException thrown if parsing failed
+     * @throws XMLStreamException thrown if the XML was not well-formed
      */
     public void parseDocument(
             NetMeshBaseIdentifier  dataSourceIdentifier,
             CoherenceSpecification coherenceSpecification,
-            byte []                documentBytes,
             String                 documentMime,
-            Document               theDocument,
+            XMLStreamReader        reader,
             StagingMeshBase        freshMeshBase )
         throws
             EntityBlessedAlreadyException,
@@ -130,84 +128,158 @@ public class AtomProbe
             RoleTypeBlessedAlreadyException,
             TransactionException,
             URISyntaxException,
-            ParseException
+            ParseException,
+            XMLStreamException
     {
-        Element atomNode = theDocument.getDocumentElement();
-        if ( !"feed".equals( atomNode.getLocalName())) {
+        if ( !"feed".equals( reader.getLocalName())) {
             throw new ProbeException.SyntaxError( dataSourceIdentifier, "Not an Atom file", null );
         }
 
         NetMeshObject home = freshMeshBase.getHomeObject();
         home.bless( FeedsSubjectArea.ATOMFEED ); // this is an Atpm feed
 
-        String feedTitle       = getChildNodeValue( atomNode, "title" );
-        String feedDescription = getChildNodeValue( atomNode, "description" );
-        
+        String feedTitle       = null;
+        String feedDescription = null;
+        int    j               = 0;
+
+        while( XmlStreamProbeUtils.nextChildElement( reader )) {
+            if( isInfoGridFeedExtension( reader )) {
+                handleInfoGridFeedExtension( dataSourceIdentifier, reader, home );
+
+            } else if( isTag( reader, "title" )) {
+                feedTitle = firstNonEmpty( feedTitle, XmlStreamProbeUtils.getTextContent( reader ));
+
+            } else if( isTag( reader, "description" )) {
+                feedDescription = firstNonEmpty( feedDescription, XmlStreamProbeUtils.getTextContent( reader ));
+
+            } else if( "entry".equals( reader.getLocalName() )) {
+                // not all Atom will be well-formatted, so do not insist on the name space
+                parseEntry( dataSourceIdentifier, reader, j++, home, freshMeshBase );
+
+            } else {
+                XmlStreamProbeUtils.skipElement( reader );
+            }
+        }
+
         home.setPropertyValue( FeedsSubjectArea.FEED_TITLE,       FeedsSubjectArea.FEED_TITLE_type.createBlobValueOrNull(       feedTitle,       "text/plain" ));
         home.setPropertyValue( FeedsSubjectArea.FEED_DESCRIPTION, FeedsSubjectArea.FEED_DESCRIPTION_type.createBlobValueOrNull( feedDescription, "text/plain" ));
+    }
 
-        handleInfoGridFeedExtensions( dataSourceIdentifier, theDocument, atomNode, home );
-        
-        NodeList entryNodes = atomNode.getElementsByTagNameNS( "http://purl.org/atom/ns#", "entry" );
-        if( entryNodes.getLength() == 0 ) {
-            // try without the name space, not all Atom will be well-formatted
-            entryNodes = atomNode.getElementsByTagName( "entry" );
-        }
-        for ( int j=0 ; j<entryNodes.getLength() ; j++ ) {
-            Node entryNode = entryNodes.item( j );
+    /**
+     * Read an entry and instantiate it once it is complete.
+     *
+     * @param dataSourceIdentifier identifies the data source that is being accessed
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the entry. Leaves it positioned on its END_ELEMENT
+     * @param index the index of the entry in the feed
+     * @param home the home object, representing the feed
+     * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated
+     * @throws EntityBlessedAlreadyException thrown if a MeshObject was incorrectly blessed twice with the same EntityType
+     * @throws EntityNotBlessedException thrown if a MeshObject was not blessed with a required EntityType
+     * @throws IllegalPropertyTypeException thrown if a MeshObject did not carry a PropertyType that it needed to carry
+     * @throws IllegalPropertyValueException thrown if a PropertyValue was assigned to a property that was outside of the allowed range
+     * @throws IsAbstractException thrown if an EntityType or a Relationship could not be instantiated because it was abstract
+     * @throws MeshObjectIdentifierNotUniqueException thrown if the entry's identifier was not unique
+     * @throws NotPermittedException thrown if an operation was not permitted
+     * @throws NotRelatedException thrown if a relationship was supposed to become blessed, but the relationship did not exist
+     * @throws ProbeException a Probe error occurred per the possible subclasses defined in ProbeException
+     * @throws RelatedAlreadyException thrown if two already-related MeshObjects were related again
+     * @throws RoleTypeBlessedAlreadyException thrown if a relationship was incorrectly blessed twice with the same RelationshipType
+     * @throws TransactionException a Transaction problem occurred
+     * @throws ParseException thrown if parsing failed
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    protected void parseEntry(
+            NetMeshBaseIdentifier dataSourceIdentifier,
+            XMLStreamReader       reader,
+            int                   index,
+            NetMeshObject         home,
+            StagingMeshBase       freshMeshBase )
+        throws
+            EntityBlessedAlreadyException,
+            EntityNotBlessedException,
+            IllegalPropertyTypeException,
+            IllegalPropertyValueException,
+            IsAbstractException,
+            MeshObjectIdentifierNotUniqueException,
+            NotPermittedException,
+            NotRelatedException,
+            ProbeException,
+            RelatedAlreadyException,
+            RoleTypeBlessedAlreadyException,
+            TransactionException,
+            ParseException,
+            XMLStreamException
+    {
+        String                 entryGuid        = null;
+        String                 entryTitle       = null;
+        String                 entryContent     = null;
+        String                 entryContentMime = null;
+        InfoGridFeedExtensions extensions       = new InfoGridFeedExtensions();
 
-            if( !( entryNode instanceof Element )) {
-                continue;
-            }
+        while( XmlStreamProbeUtils.nextChildElement( reader )) {
+            if( isInfoGridFeedExtension( reader )) {
+                parseInfoGridFeedExtension( dataSourceIdentifier, reader, freshMeshBase.getModelBase(), extensions );
 
-            Element realItemNode = (Element) entryNode;
+            } else if( isTag( reader, "id" )) {
+                entryGuid = firstNonEmpty( entryGuid, XmlStreamProbeUtils.getTextContent( reader ));
 
-            String entryGuid        = getChildNodeValue(     realItemNode, "id" );
-            String entryTitle       = getChildNodeValue(     realItemNode, "title" );
-            String entryContent     = getChildNodeValue(     realItemNode, "content" );
-            String entryContentMime = getChildNodeAttribute( realItemNode, "content", "type" );
+            } else if( isTag( reader, "title" )) {
+                entryTitle = firstNonEmpty( entryTitle, XmlStreamProbeUtils.getTextContent( reader ));
 
-            if( entryGuid == null ) {
-                entryGuid = String.valueOf( j ); // FIXME? Is this a good default?
-            }
-            entryGuid = ensureLocalGuid( entryGuid );
-
-            if( entryContentMime == null || entryContentMime.length() == 0 ) {
-                entryContentMime = "text/plain";
-            } else if( "text".equals( entryContentMime )) {
-                entryContentMime = "text/plain";
-            } else if( "html".equals( entryContentMime )) {
-                entryContentMime = "text/html";
-            } else if( "xhtml".equals( entryContentMime )) {
-                entryContentMime = "application/xhtml+xml";
-            }
-            
-            NetMeshObject item = createExtendedInfoGridFeedEntryObject(
-                    dataSourceIdentifier,
-                    theDocument,
-                    realItemNode,
-                    freshMeshBase.getMeshObjectIdentifierFactory().guessFromExternalForm( entryGuid ),
-                    FeedsSubjectArea.ATOMFEEDITEM,
-                    freshMeshBase );
-
-            item.setPropertyValue( FeedsSubjectArea.FEEDITEM_TITLE,   FeedsSubjectArea.FEEDITEM_TITLE_type.createBlobValueOrNull(   entryTitle,   "text/plain" ));
-            item.setPropertyValue( FeedsSubjectArea.FEEDITEM_CONTENT, FeedsSubjectArea.FEEDITEM_CONTENT_type.createBlobValueOrNull( entryContent, "text/plain" ));
-            
-            try {
-                home.relate( item );
-            } catch( RelatedAlreadyException ex ) {
-                // ignore
-                if( log.isDebugEnabled() ) {
-                    log.info( ex );
+            } else if( isTag( reader, "content" )) {
+                String mime = reader.getAttributeValue( null, "type" );
+                if( entryContent == null ) {
+                    entryContent = firstNonEmpty( null, XmlStreamProbeUtils.getTextContent( reader ));
+                    if( entryContent != null ) {
+                        entryContentMime = mime;
+                    }
+                } else {
+                    XmlStreamProbeUtils.skipElement( reader );
                 }
+
+            } else {
+                XmlStreamProbeUtils.skipElement( reader );
             }
-            try {
-                home.blessRelationship( FeedsSubjectArea.FEED_CONTAINS_FEEDITEM.getSource(), item );
-            } catch( RoleTypeBlessedAlreadyException ex ) {
-                // ignore
-                if( log.isDebugEnabled() ) {
-                    log.info( ex );
-                }
+        }
+
+        if( entryGuid == null ) {
+            entryGuid = String.valueOf( index ); // FIXME? Is this a good default?
+        }
+        entryGuid = ensureLocalGuid( entryGuid );
+
+        if( entryContentMime == null || entryContentMime.length() == 0 ) {
+            entryContentMime = "text/plain";
+        } else if( "text".equals( entryContentMime )) {
+            entryContentMime = "text/plain";
+        } else if( "html".equals( entryContentMime )) {
+            entryContentMime = "text/html";
+        } else if( "xhtml".equals( entryContentMime )) {
+            entryContentMime = "application/xhtml+xml";
+        }
+
+        NetMeshObject item = createExtendedInfoGridFeedEntryObject(
+                freshMeshBase.getMeshObjectIdentifierFactory().guessFromExternalForm( entryGuid ),
+                FeedsSubjectArea.ATOMFEEDITEM,
+                extensions,
+                freshMeshBase );
+
+        item.setPropertyValue( FeedsSubjectArea.FEEDITEM_TITLE,   FeedsSubjectArea.FEEDITEM_TITLE_type.createBlobValueOrNull(   entryTitle,   "text/plain" ));
+        item.setPropertyValue( FeedsSubjectArea.FEEDITEM_CONTENT, FeedsSubjectArea.FEEDITEM_CONTENT_type.createBlobValueOrNull( entryContent, "text/plain" ));
+
+        try {
+            home.relate( item );
+        } catch( RelatedAlreadyException ex ) {
+            // ignore
+            if( log.isDebugEnabled() ) {
+                log.info( ex );
+            }
+        }
+        try {
+            home.blessRelationship( FeedsSubjectArea.FEED_CONTAINS_FEEDITEM.getSource(), item );
+        } catch( RoleTypeBlessedAlreadyException ex ) {
+            // ignore
+            if( log.isDebugEnabled() ) {
+                log.info( ex );
             }
         }
     }
@@ -17,6 +17,8 @@ package org.infogrid.probe.feeds.rss;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.text.ParseException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.infogrid.mesh.EntityBlessedAlreadyException;
 import org.infogrid.mesh.EntityNotBlessedException;
 import org.infogrid.mesh.IllegalPropertyTypeException;
@@ -36,11 +38,8 @@ import org.infogrid.module.ModuleException;
 import org.infogrid.probe.ProbeException;
 import org.infogrid.probe.StagingMeshBase;
 import org.infogrid.probe.feeds.AbstractFeedProbe;
+import org.infogrid.probe.xml.XmlStreamProbeUtils;
 import org.infogrid.util.logging.Log;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * A Probe for the RSS file format, with optional InfoGrid extensions.
@@ -59,7 +58,7 @@ public class RssProbe
     }
 
     /**
-     * <p>Read from the DOM and instantiate corresponding MeshObjects.</p>
+     * <p>Read from the XMLStreamReader and instantiate corresponding MeshObjects.</p>
      * <p>This method declares
      * many different types of Exceptions; that enables the Probe Framework to handle many
      * possible error conditions out of the box, thereby making Probe programming easier.
@@ -75,9 +74,8 @@ public class RssProbe
      *         Probe must bless the Probe's HomeObject with a subtype of <code>ProbeUpdateSpecification</code> (defined
      *         in the <code>org.infogrid.model.Probe</code> Subject Area) and suitable Property
      *         values that reflect the policy.
-     * @param documentBytes the raw form of the Document, provided if available only
      * @param documentMime the MIME type of the Document, provided if available only
-     * @param theDocument the DOM document to be interpreted
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the top-level element
      * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated by the Probe.
      *         This StagingMeshBase is empty when passed into this call, except for the home object which always exists
      * @throws EntityBlessedAlreadyException thrown if a MeshObject was incorrectly blessed twice with the same
@@ -106,13 +104,13 @@ public class RssProbe
      * @throws TransactionException a Transaction problem occurred. Throwing this typically indicates a programming error.
      * @throws URISyntaxException thrown if a URI was constructed in an invalid way
      * @throws ParseException thrown if parsing failed
+     * @throws XMLStreamException thrown if the XML was not well-formed
      */
     public void parseDocument(
             NetMeshBaseIdentifier  dataSourceIdentifier,
             CoherenceSpecification coherenceSpecification,
-            byte []                documentBytes,
             String                 documentMime,
-            Document               theDocument,
+            XMLStreamReader        reader,
             StagingMeshBase        freshMeshBase )
         throws
             EntityBlessedAlreadyException,
@@ -130,15 +128,16 @@ public class RssProbe
             RoleTypeBlessedAlreadyException,
             TransactionException,
             URISyntaxException,
-            ParseException
+            ParseException,
+            XMLStreamException
     {
-        Element rssNode = theDocument.getDocumentElement();
-        if ( !"rss".equals( rssNode.getLocalName())) {
+        if ( !"rss".equals( reader.getLocalName())) {
             throw new ProbeException.SyntaxError( dataSourceIdentifier, "Not an RSS file", null );
         }
 
-        if (    !"0.91".equals( rssNode.getAttribute( "version" ))
-             && !"2.0".equals( rssNode.getAttribute( "version" )) )
+        String version = reader.getAttributeValue( null, "version" );
+        if(    !"0.91".equals( version )
+            && !"2.0".equals( version ) )
         {
             log.warn( "RssProbe.parseDocument() failed version check, continuing anyway" );
         }
@@ -146,73 +145,184 @@ public class RssProbe
         NetMeshObject home = freshMeshBase.getHomeObject();
         home.bless( FeedsSubjectArea.RSSFEED ); // this is an RSS feed
 
-        NodeList channelNodes = rssNode.getElementsByTagName( "channel" );
-        
-        for ( int i=0 ; i<channelNodes.getLength() ; i++ ) {
-            Node channelNode = channelNodes.item( i );
+        boolean foundChannel = false;
+        while( XmlStreamProbeUtils.nextChildElement( reader )) {
+            if( !foundChannel && isTag( reader, "channel" )) {
+                parseChannel( dataSourceIdentifier, reader, home, freshMeshBase );
+                foundChannel = true; // only do first channel in the feed for now
 
-            if( !( channelNode instanceof Element )) {
-                continue;
+            } else {
+                XmlStreamProbeUtils.skipElement( reader );
             }
-            
-            Element realChannelNode = (Element) channelNode;
-
-            handleInfoGridFeedExtensions( dataSourceIdentifier, theDocument, realChannelNode, home );
-
-            String channelTitleTitle  = getChildNodeValue( realChannelNode, "title" );
-            String channelDescription = getChildNodeValue( realChannelNode, "description" );
-
-            home.setPropertyValue( FeedsSubjectArea.FEED_TITLE,       FeedsSubjectArea.FEED_TITLE_type.createBlobValueOrNull(       channelTitleTitle,       "text/plain" ));
-            home.setPropertyValue( FeedsSubjectArea.FEED_DESCRIPTION, FeedsSubjectArea.FEED_DESCRIPTION_type.createBlobValueOrNull( channelDescription, "text/plain" ));
-            
-            NodeList itemNodes = realChannelNode.getElementsByTagName( "item" );
-            for ( int j=0 ; j<itemNodes.getLength() ; j++ ) {
-                Node itemNode = itemNodes.item( j );
-
-                if( !( itemNode instanceof Element )) {
-                    continue;
-                }
-
-                Element realItemNode = (Element) itemNode;
-
-                String itemGuid        = getChildNodeValue(     realItemNode, "guid" );
-                String itemTitle       = getChildNodeValue(     realItemNode, "title" );
-                String itemDescription = getChildNodeValue(     realItemNode, "description" );
-                
-                if( itemGuid == null || itemGuid.length() == 0 ) {
-                    itemGuid = String.valueOf( i ) + "-" + String.valueOf( j ); // FIXME? Is this a good default?
-                }
-                itemGuid = ensureLocalGuid( itemGuid );
-
-                NetMeshObject item = createExtendedInfoGridFeedEntryObject(
-                        dataSourceIdentifier,
-                        theDocument,
-                        realItemNode,
-                        freshMeshBase.getMeshObjectIdentifierFactory().guessFromExternalForm( itemGuid ),
-                        FeedsSubjectArea.RSSFEEDITEM,
-                        freshMeshBase );
-                
-                item.setPropertyValue( FeedsSubjectArea.FEEDITEM_TITLE,   FeedsSubjectArea.FEEDITEM_TITLE_type.createBlobValueOrNull(   itemTitle,       "text/plain" ));
-                item.setPropertyValue( FeedsSubjectArea.FEEDITEM_CONTENT, FeedsSubjectArea.FEEDITEM_CONTENT_type.createBlobValueOrNull( itemDescription, "text/plain" ));
-
-                try {
-                    home.relate( item );
-                } catch( RelatedAlreadyException ex ) {
-                    // ignore
-                    if( log.isDebugEnabled() ) {
-                        log.info( ex );
-                    }
-                }
-                try {
-                    home.blessRelationship( FeedsSubjectArea.FEED_CONTAINS_FEEDITEM.getSource(), item );
-                } catch( RoleTypeBlessedAlreadyException ex ) {
-                    // ignore
-                    if( log.isDebugEnabled() ) {
-                        log.info( ex );
-                    }
-                }
+        }
+    }
+
+    /**
+     * Read a channel and instantiate its items.
+     *
+     * @param dataSourceIdentifier identifies the data source that is being accessed
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the channel. Leaves it positioned on its END_ELEMENT
+     * @param home the home object, representing the feed
+     * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated
+     * @throws EntityBlessedAlreadyException thrown if a MeshObject was incorrectly blessed twice with the same EntityType
+     * @throws EntityNotBlessedException thrown if a MeshObject was not blessed with a required EntityType
+     * @throws IllegalPropertyTypeException thrown if a MeshObject did not carry a PropertyType that it needed to carry
+     * @throws IllegalPropertyValueException thrown if a PropertyValue was assigned to a property that was outside of the allowed range
+     * @throws IsAbstractException thrown if an EntityType or a Relationship could not be instantiated because it was abstract
+     * @throws MeshObjectIdentifierNotUniqueException thrown if an item's identifier was not unique
+     * @throws NotPermittedException thrown if an operation was not permitted
+     * @throws NotRelatedException thrown if a relationship was supposed to become blessed, but the relationship did not exist
+     * @throws ProbeException a Probe error occurred per the possible subclasses defined in ProbeException
+     * @throws RelatedAlreadyException thrown if two already-related MeshObjects were related again
+     * @throws RoleTypeBlessedAlreadyException thrown if a relationship was incorrectly blessed twice with the same RelationshipType
+     * @throws TransactionException a Transaction problem occurred
+     * @throws ParseException thrown if parsing failed
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    protected void parseChannel(
+            NetMeshBaseIdentifier dataSourceIdentifier,
+            XMLStreamReader       reader,
+            NetMeshObject         home,
+            StagingMeshBase       freshMeshBase )
+        throws
+            EntityBlessedAlreadyException,
+            EntityNotBlessedException,
+            IllegalPropertyTypeException,
+            IllegalPropertyValueException,
+            IsAbstractException,
+            MeshObjectIdentifierNotUniqueException,
+            NotPermittedException,
+            NotRelatedException,
+            ProbeException,
+            RelatedAlreadyException,
+            RoleTypeBlessedAlreadyException,
+            TransactionException,
+            ParseException,
+            XMLStreamException
+    {
+        String channelTitle       = null;
+        String channelDescription = null;
+        int    j                  = 0;
+
+        while( XmlStreamProbeUtils.nextChildElement( reader )) {
+            if( isInfoGridFeedExtension( reader )) {
+                handleInfoGridFeedExtension( dataSourceIdentifier, reader, home );
+
+            } else if( isTag( reader, "title" )) {
+                channelTitle = firstNonEmpty( channelTitle, XmlStreamProbeUtils.getTextContent( reader ));
+
+            } else if( isTag( reader, "description" )) {
+                channelDescription = firstNonEmpty( channelDescription, XmlStreamProbeUtils.getTextContent( reader ));
+
+            } else if( isTag( reader, "item" )) {
+                parseItem( dataSourceIdentifier, reader, j++, home, freshMeshBase );
+
+            } else {
+                XmlStreamProbeUtils.skipElement( reader );
+            }
+        }
+
+        home.setPropertyValue( FeedsSubjectArea.FEED_TITLE,       FeedsSubjectArea.FEED_TITLE_type.createBlobValueOrNull(       channelTitle,       "text/plain" ));
+        home.setPropertyValue( FeedsSubjectArea.FEED_DESCRIPTION, FeedsSubjectArea.FEED_DESCRIPTION_type.createBlobValueOrNull( channelDescription, "text/plain" ));
+    }
+
+    /**
+     * Read an item and instantiate it once it is complete.
+     *
+     * @param dataSourceIdentifier identifies the data source that is being accessed
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the item. Leaves it positioned on its END_ELEMENT
+     * @param index the index of the item in the channel
+     * @param home the home object, representing the feed
+     * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated
+     * @throws EntityBlessedAlreadyException thrown if a MeshObject was incorrectly blessed twice with the same EntityType
+     * @throws EntityNotBlessedException thrown if a MeshObject was not blessed with a required EntityType
+     * @throws IllegalPropertyTypeException thrown if a MeshObject did not carry a PropertyType that it needed to carry
+     * @throws IllegalPropertyValueException thrown if a PropertyValue was assigned to a property that was outside of the allowed range
+     * @throws IsAbstractException thrown if an EntityType or a Relationship could not be instantiated because it was abstract
+     * @throws MeshObjectIdentifierNotUniqueException thrown if the item's identifier was not unique
+     * @throws NotPermittedException thrown if an operation was not permitted
+     * @throws NotRelatedException thrown if a relationship was supposed to become blessed, but the relationship did not exist
+     * @throws ProbeException a Probe error occurred per the possible subclasses defined in ProbeException
+     * @throws RelatedAlreadyException thrown if two already-related MeshObjects were related again
+     * @throws RoleTypeBlessedAlreadyException thrown if a relationship was incorrectly blessed twice with the same RelationshipType
+     * @throws TransactionException a Transaction problem occurred
+     * @throws ParseException thrown if parsing failed
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    protected void parseItem(
+            NetMeshBaseIdentifier dataSourceIdentifier,
+            XMLStreamReader       reader,
+            int                   index,
+            NetMeshObject         home,
+            StagingMeshBase       freshMeshBase )
+        throws
+            EntityBlessedAlreadyException,
+            EntityNotBlessedException,
+            IllegalPropertyTypeException,
+            IllegalPropertyValueException,
+            IsAbstractException,
+            MeshObjectIdentifierNotUniqueException,
+            NotPermittedException,
+            NotRelatedException,
+            ProbeException,
+            RelatedAlreadyException,
+            RoleTypeBlessedAlreadyException,
+            TransactionException,
+            ParseException,
+            XMLStreamException
+    {
+        String                 itemGuid        = null;
+        String                 itemTitle       = null;
+        String                 itemDescription = null;
+        InfoGridFeedExtensions extensions      = new InfoGridFeedExtensions();
+
+        while( XmlStreamProbeUtils.nextChildElement( reader )) {
+            if( isInfoGridFeedExtension( reader )) {
+                parseInfoGridFeedExtension( dataSourceIdentifier, reader, freshMeshBase.getModelBase(), extensions );
+
+            } else if( isTag( reader, "guid" )) {
+                itemGuid = firstNonEmpty( itemGuid, XmlStreamProbeUtils.getTextContent( reader ));
+
+            } else if( isTag( reader, "title" )) {
+                itemTitle = firstNonEmpty( itemTitle, XmlStreamProbeUtils.getTextContent( reader ));
+
+            } else if( isTag( reader, "description" )) {
+                itemDescription = firstNonEmpty( itemDescription, XmlStreamProbeUtils.getTextContent( reader ));
+
+            } else {
+                XmlStreamProbeUtils.skipElement( reader );
+            }
+        }
+
+        if( itemGuid == null ) {
+            itemGuid = "0-" + String.valueOf( index ); // FIXME? Is this a good default?
+        }
+        itemGuid = ensureLocalGuid( itemGuid );
+
+        NetMeshObject item = createExtendedInfoGridFeedEntryObject(
+                freshMeshBase.getMeshObjectIdentifierFactory().guessFromExternalForm( itemGuid ),
+                FeedsSubjectArea.RSSFEEDITEM,
+                extensions,
+                freshMeshBase );
+
+        item.setPropertyValue( FeedsSubjectArea.FEEDITEM_TITLE,   FeedsSubjectArea.FEEDITEM_TITLE_type.createBlobValueOrNull(   itemTitle,       "text/plain" ));
+        item.setPropertyValue( FeedsSubjectArea.FEEDITEM_CONTENT, FeedsSubjectArea.FEEDITEM_CONTENT_type.createBlobValueOrNull( itemDescription, "text/plain" ));
+
+        try {
+            home.relate( item );
+        } catch( RelatedAlreadyException ex ) {
+            // ignore
+            if( log.isDebugEnabled() ) {
+                log.info( ex );
+            }
+        }
+        try {
+            home.blessRelationship( FeedsSubjectArea.FEED_CONTAINS_FEEDITEM.getSource(), item );
+        } catch( RoleTypeBlessedAlreadyException ex ) {
+            // ignore
+            if( log.isDebugEnabled() ) {
+                log.info( ex );
             }
-            break; // only do first channel in the feed for now
         }
     }
 }
@@ -14,6 +14,7 @@
 
 package org.infogrid.probe;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import org.infogrid.probe.httpmapping.HttpMappingPolicy;
 import org.infogrid.util.StringHelper;
@@ -129,13 +130,34 @@ public abstract class AbstractProbeDirectory
         throws
             IllegalArgumentException
     {
-        // check the XML Dom probes
-        for( XmlDomProbeDescriptor current : theXmlDomProbes ) {
+        ensureNoXmlOverlap( docTypes, namespaces, localNames, theXmlDomProbes );
+        ensureNoXmlOverlap( docTypes, namespaces, localNames, theXmlStreamProbes );
+    }
+
+    /**
+     * Internal helper to check that there is no overlap in handling XML
+     * document types with one set of XML Probes.
+     *
+     * @param docTypes the potential new XML document types
+     * @param namespaces the namespaces of the potential new XML root tags
+     * @param localNames the local names of the potential new XML root tags
+     * @param probes the XML Probes to check against
+     * @throws IllegalArgumentException thrown if an XML document type is handled already
+     */
+    private void ensureNoXmlOverlap(
+            String []                                docTypes,
+            String []                                namespaces,
+            String []                                localNames,
+            Collection<? extends XmlProbeDescriptor> probes )
+        throws
+            IllegalArgumentException
+    {
+        for( XmlProbeDescriptor current : probes ) {
 
             // check the document types
             for( int j=current.theDocumentTypes.length-1 ; j>=0 ; --j ) {
                 for( int k=docTypes.length-1 ; k>=0 ; --k ) {
-                    if( current.theDocumentTypes[j].equals( docTypes[k] )) {
+                    if( docTypes[k] != null && docTypes[k].equals( current.theDocumentTypes[j] )) { // null: matched by tag only
                         throw new IllegalArgumentException( "XML document type " + docTypes[k] + " handled already" );
                     }
                 }
@@ -169,6 +191,22 @@ public abstract class AbstractProbeDirectory
         theXmlDomProbes.add( desc );
     }
 
+    /**
+     * Add a Probe to this ProbeDirectory that reads XML as a stream of StAX events.
+     *
+     * @param desc the descriptor describing the Probe
+     * @throws IllegalArgumentException thrown if an XML document type is handled already
+     */
+    public synchronized void addXmlStreamProbe(
+            XmlStreamProbeDescriptor desc )
+        throws
+            IllegalArgumentException
+    {
+        ensureNoXmlOverlap( desc.theDocumentTypes, desc.theToplevelElementNamespaces, desc.theToplevelElementLocalNames );
+
+        theXmlStreamProbes.add( desc );
+    }
+
     /**
      * Add a Probe to this ProbeDirectory that will access an API to determine its input.
      *
@@ -262,6 +300,42 @@ public abstract class AbstractProbeDirectory
         return null;
     }
 
+    /**
+     * Find an XML stream Probe by document type.
+     *
+     * @param documentType the found XML document type
+     * @return the descriptor for the Probe that can parse this document type
+     */
+    public XmlStreamProbeDescriptor getXmlStreamProbeDescriptorByDocumentType(
+            String documentType )
+    {
+        for( XmlStreamProbeDescriptor current : theXmlStreamProbes ) {
+            if( current.canProcessDocumentType( documentType )) {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find an XML stream Probe by tag type.
+     *
+     * @param toplevelElementNamespace namespace URI of the top-level tag, if any
+     * @param toplevelElementLocalName local name of the top-level tag
+     * @return the descriptor for the Probe that can parse this tag type
+     */
+    public XmlStreamProbeDescriptor getXmlStreamProbeDescriptorByTagType(
+            String toplevelElementNamespace,
+            String toplevelElementLocalName )
+    {
+        for( XmlStreamProbeDescriptor current : theXmlStreamProbes ) {
+            if( current.canProcessTagType( toplevelElementNamespace, toplevelElementLocalName )) {
+                return current;
+            }
+        }
+        return null;
+    }
+
     /**
      * Find an XML DOM Probe class name by document type.
      *
@@ -465,6 +539,18 @@ public abstract class AbstractProbeDirectory
         return isIn( className, theXmlDomProbes );
     }
 
+    /**
+     * Determine whether a Probe class by this name is an XmlStreamProbe.
+     *
+     * @param className name of the class
+     * @return return true if this is an XmlStreamProbe
+     */
+    public boolean isXmlStreamProbe(
+            String className )
+    {
+        return isIn( className, theXmlStreamProbes );
+    }
+
     /**
      * Internal helper method to look up a Probe by its class name in an ArrayList.
      *
@@ -499,6 +585,11 @@ public abstract class AbstractProbeDirectory
       */
     protected Collection<XmlDomProbeDescriptor> theXmlDomProbes;
 
+    /**
+      * The Probes that we know of that are based on XML and read a stream of StAX events.
+      */
+    protected Collection<XmlStreamProbeDescriptor> theXmlStreamProbes = new ArrayList<XmlStreamProbeDescriptor>();
+
     /**
       * The Probes that we know of that are not based on XML but read a stream.
       */
@@ -21,6 +21,7 @@ import java.util.regex.Pattern;
 import org.infogrid.probe.httpmapping.HttpMappingPolicy;
 import org.infogrid.probe.xml.XmlProbe;
 import org.infogrid.probe.xml.XmlDOMProbe;
+import org.infogrid.probe.xml.XmlStreamProbe;
 import org.infogrid.util.StringHelper;
 import org.infogrid.util.logging.CanBeDumped;
 import org.infogrid.util.logging.Dumper;
@@ -74,6 +75,26 @@ public interface ProbeDirectory
             String toplevelElementNamespace,
             String toplevelElementLocalName );
 
+    /**
+     * Find an XML stream Probe by document type.
+     *
+     * @param documentType the found XML document type
+     * @return the descriptor for the Probe that can parse this document type
+     */
+    public XmlStreamProbeDescriptor getXmlStreamProbeDescriptorByDocumentType(
+            String documentType );
+
+    /**
+     * Find an XML stream Probe by the type of top-level tag.
+     *
+     * @param toplevelElementNamespace namespace URI of the top-level tag, if any
+     * @param toplevelElementLocalName local name of the top-level tag
+     * @return the descriptor for the Probe that can parse this tag type
+     */
+    public XmlStreamProbeDescriptor getXmlStreamProbeDescriptorByTagType(
+            String toplevelElementNamespace,
+            String toplevelElementLocalName );
+
     /**
      * Find an XML DOM Probe class name by document type.
      *
@@ -498,6 +519,115 @@ public interface ProbeDirectory
         }
     }
 
+    /**
+     * This is an entry in the set of XML stream Probes.
+     */
+    public static class XmlStreamProbeDescriptor
+            extends
+                XmlProbeDescriptor
+    {
+        private static final long serialVersionUID = 1L; // helps with serialization
+
+        /**
+         * Convenience constructor.
+         *
+         * @param documentType the XML document type that this Probe can access
+         * @param toplevelElementNamespace the namespace component of the top-level element that this Probe can access. Same sequence as toplevelElementLocalName.
+         * @param toplevelElementLocalName the local name component of the top-level element that this Probe can access. Same sequence as toplevelElementNamespace.
+         * @param className name of the Probe class
+         */
+        public XmlStreamProbeDescriptor(
+                String                          documentType,
+                String                          toplevelElementNamespace,
+                String                          toplevelElementLocalName,
+                String                          className )
+        {
+            this(   new String[] { documentType },
+                    new String[] { toplevelElementNamespace },
+                    new String[] { toplevelElementLocalName },
+                    className,
+                    null,
+                    null );
+        }
+
+        /**
+         * Convenience constructor.
+         *
+         * @param documentTypes the XML document types that this Probe can access
+         * @param toplevelElementNamespaces the namespace components of the top-level element that this Probe can access. Same sequence as toplevelElementLocalNames.
+         * @param toplevelElementLocalNames the local name components of the top-level element that this Probe can access. Same sequence as toplevelElementNamespaces.
+         * @param className name of the Probe class
+         */
+        public XmlStreamProbeDescriptor(
+                String []                       documentTypes,
+                String []                       toplevelElementNamespaces,
+                String []                       toplevelElementLocalNames,
+                String                          className )
+        {
+            this( documentTypes, toplevelElementNamespaces, toplevelElementLocalNames, className, null, null );
+        }
+
+        /**
+         * Convenience constructor.
+         *
+         * @param documentType the XML document type that this Probe can access
+         * @param toplevelElementNamespace the namespace component of the top-level element that this Probe can access. Same sequence as toplevelElementLocalName.
+         * @param toplevelElementLocalName the local name component of the top-level element that this Probe can access. Same sequence as toplevelElementNamespace.
+         * @param clazz the actual Probe class
+         */
+        public XmlStreamProbeDescriptor(
+                String                          documentType,
+                String                          toplevelElementNamespace,
+                String                          toplevelElementLocalName,
+                Class<? extends XmlStreamProbe> clazz )
+        {
+            this(   new String[] { documentType },
+                    new String[] { toplevelElementNamespace },
+                    new String[] { toplevelElementLocalName },
+                    clazz.getName(),
+                    clazz,
+                    null );
+        }
+
+        /**
+         * Convenience constructor.
+         *
+         * @param documentTypes the XML document types that this Probe can access
+         * @param toplevelElementNamespaces the namespace components of the top-level element that this Probe can access. Same sequence as toplevelElementLocalNames.
+         * @param toplevelElementLocalNames the local name components of the top-level element that this Probe can access. Same sequence as toplevelElementNamespaces.
+         * @param clazz the actual Probe class
+         */
+        public XmlStreamProbeDescriptor(
+                String []                       documentTypes,
+                String []                       toplevelElementNamespaces,
+                String []                       toplevelElementLocalNames,
+                Class<? extends XmlStreamProbe> clazz )
+        {
+            this( documentTypes, toplevelElementNamespaces, toplevelElementLocalNames, clazz.getName(), clazz, null );
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param documentTypes the XML document types that this Probe can access
+         * @param toplevelElementNamespaces the namespace components of the top-level element that this Probe can access. Same sequence as toplevelElementLocalNames.
+         * @param toplevelElementLocalNames the local name components of the top-level element that this Probe can access. Same sequence as toplevelElementNamespaces.
+         * @param className name of the Probe class
+         * @param clazz the actual Probe class (optional)
+         * @param parameters the parameters for the Probe, if any
+         */
+        public XmlStreamProbeDescriptor(
+                String []                       documentTypes,
+                String []                       toplevelElementNamespaces,
+                String []                       toplevelElementLocalNames,
+                String                          className,
+                Class<? extends XmlStreamProbe> clazz,
+                Map<String,Object>              parameters )
+        {
+            super( documentTypes, toplevelElementNamespaces, toplevelElementLocalNames, className, clazz, parameters );
+        }
+    }
+
     /**
      * An entry in the list of Non-XML Probes reading from a stream.
      */
@@ -28,9 +28,15 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.infogrid.lid.model.yadis.YadisSubjectArea;
 import org.infogrid.lid.yadis.YadisPipelineStage;
 import org.infogrid.mesh.EntityBlessedAlreadyException;
@@ -81,9 +87,11 @@ import org.infogrid.probe.httpmapping.HttpMappingPolicy;
 import org.infogrid.probe.shadow.m.MStagingMeshBase;
 import org.infogrid.probe.xml.DomMeshObjectSetProbe;
 import org.infogrid.probe.xml.MeshObjectSetProbeTags;
+import org.infogrid.probe.xml.StaxMeshObjectSetProbe;
 import org.infogrid.probe.xml.XmlDOMProbe;
 import org.infogrid.probe.xml.XmlErrorHandler;
 import org.infogrid.probe.xml.XmlProbeException;
+import org.infogrid.probe.xml.XmlStreamProbe;
 import org.infogrid.probe.yadis.YadisServiceFactory;
 import org.infogrid.util.ArrayHelper;
 import org.infogrid.util.FlexibleListenerSet;
@@ -895,7 +903,10 @@ public class ProbeDispatcher
     }
     
     /**
-     * The data source refers to an XML file or stream, parse the XML.
+     * The data source refers to an XML file or stream, parse the XML. We first read
+     * up to the top-level element with StAX only. If the document is in InfoGrid native format,
+     * or if an XmlStreamProbe has been registered for it, it continues reading from there,
+     * instantiating MeshObjects as it goes. Only for XmlDOMProbes, a DOM is built.
      *
      * @param oldBase the StagingMeshBase after the most recent successful run, if any
      * @param newBase the new StagingMeshBase into which to instantiate the data
@@ -926,7 +937,64 @@ public class ProbeDispatcher
         }
 
         NetMeshBaseIdentifier sourceIdentifier = theShadowMeshBase.getIdentifier();
-        XmlErrorHandler       errorListener    = new XmlErrorHandler( sourceIdentifier, log );
+
+        XMLStreamReader reader = null;
+        try {
+            reader = getXmlInputFactory().createXMLStreamReader( inStream );
+
+            String docTypeName = null;
+            while( reader.getEventType() != XMLStreamConstants.START_ELEMENT ) {
+                if( reader.getEventType() == XMLStreamConstants.DTD ) {
+                    Matcher m = DOCTYPE_PATTERN.matcher( reader.getText() );
+                    if( m.find() ) {
+                        docTypeName = m.group( 1 );
+                    }
+                }
+                reader.next(); // throws at the end of the document
+            }
+            String namespace = reader.getNamespaceURI();
+            String localName = reader.getLocalName();
+
+            if( namespace != null && namespace.length() == 0 ) {
+                namespace = null; // same as the DOM
+            }
+
+            if( log.isDebugEnabled() ) {
+                log.debug( this + ": found XML document type \"" + docTypeName + "\", namespace " + namespace + ", localName " + localName );
+            }
+
+            ProbeDirectory.XmlStreamProbeDescriptor desc;
+            if( docTypeName != null ) {
+                if( MeshObjectSetProbeTags.MESHOBJECT_SET_TAG.equalsIgnoreCase( docTypeName )) {
+                    Probe ret = handleNativeFormat( newBase, coherence, reader );
+                    return ret;
+                }
+                desc = theProbeDirectory.getXmlStreamProbeDescriptorByDocumentType( docTypeName );
+            } else {
+                desc = theProbeDirectory.getXmlStreamProbeDescriptorByTagType( namespace, localName );
+            }
+            if( desc != null ) {
+                Probe ret = handleXmlStream( oldBase, newBase, coherence, contentType, reader, desc, docTypeName, namespace, localName );
+                return ret;
+            }
+
+        } catch( XMLStreamException ex ) {
+            throw new ProbeException.SyntaxError( sourceIdentifier, ex );
+
+        } finally {
+            if( reader != null ) {
+                try {
+                    reader.close();
+                } catch( XMLStreamException ex ) {
+                    log.error( ex );
+                }
+            }
+        }
+
+        // no XmlStreamProbe: need a DOM
+        inStream = new ByteArrayInputStream( content );
+
+        XmlErrorHandler errorListener = new XmlErrorHandler( sourceIdentifier, log );
 
         DocumentBuilder theDocumentBuilder = getDocumentBuilder();
         
@@ -1120,6 +1188,157 @@ public class ProbeDispatcher
         return probe;
     }
 
+    /**
+     * An XmlStreamProbe has been found for the XML file or stream, run it.
+     *
+     * @param oldBase the StagingMeshBase after the most recent successful run, if any
+     * @param newBase the new StagingMeshBase into which to instantiate the data
+     * @param coherence the CoherenceSpecification specified by the client, if any
+     * @param contentType the MIME type of the incoming data stream
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the top-level element
+     * @param desc the descriptor of the found XmlStreamProbe
+     * @param docTypeName the found XML document type, if any
+     * @param namespace the namespace of the top-level element, if any
+     * @param localName the local name of the top-level element
+     * @return the used Probe instance
+     * @throws ProbeException thrown if unable to compute a result
+     * @throws TransactionException thrown if invoked outside of proper Transaction boundaries
+     * @throws IOException thrown if an I/O error occurred
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    @SuppressWarnings( "unchecked" )
+    protected XmlStreamProbe handleXmlStream(
+            StagingMeshBase                        oldBase,
+            StagingMeshBase                        newBase,
+            CoherenceSpecification                 coherence,
+            String                                 contentType,
+            XMLStreamReader                        reader,
+            ProbeDirectory.XmlStreamProbeDescriptor desc,
+            String                                 docTypeName,
+            String                                 namespace,
+            String                                 localName )
+        throws
+            ProbeException,
+            TransactionException,
+            IOException,
+            XMLStreamException
+    {
+        NetMeshBaseIdentifier  sourceIdentifier = theShadowMeshBase.getIdentifier();
+        String                 foundClassName   = desc.getProbeClassName();
+        Class<? extends Probe> foundClass       = desc.getProbeClass();
+        ClassLoader            foundClassLoader = null;
+
+        if( log.isDebugEnabled() ) {
+            log.debug( this + ": found name for XML stream probe class: " + foundClassName );
+        }
+
+        if( foundClass == null ) {
+            if( theModuleRegistry != null ) {
+                // we take the first module that supports this interface/class
+                StandardModuleAdvertisement [] candidates = theModuleRegistry.findAdvertisementsForInterface( foundClassName, Integer.MAX_VALUE );
+                for( int i=0 ; i<candidates.length ; ++i ) {
+                    ModuleCapability [] caps = candidates[i].findCapabilitiesByInterface( foundClassName );
+                    if( caps != null && caps.length > 0 ) {
+                        try {
+                            Module foundModule = theModuleRegistry.resolve( candidates[i], true );
+                            foundClassLoader = foundModule.getClassLoader();
+                            break;
+                        } catch( ModuleResolutionException ex ) {
+                            log.warn( "Module could not be resolved for adv: " + candidates[i], ex );
+                        } catch( ModuleNotFoundException ex ) {
+                            log.warn( "Module not found for adv: " + candidates[i], ex );
+                        }
+                    }
+                }
+            }
+            if( foundClassLoader == null ) { // attempt default loader
+                foundClassLoader = getClass().getClassLoader();
+            }
+
+            try {
+                foundClass = (Class<? extends Probe>) Class.forName( foundClassName, true, foundClassLoader );
+
+            } catch( ClassNotFoundException ex ) {
+                throw new ProbeException.DontHaveXmlStreamProbe( sourceIdentifier, docTypeName, namespace, localName, ex );
+            }
+        }
+
+        XmlStreamProbe probe;
+        try {
+            probe = (XmlStreamProbe) foundClass.newInstance();
+
+        } catch( IllegalAccessException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+        } catch( InstantiationException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+        }
+
+        if( log.isDebugEnabled() ) {
+            log.debug( this + ": invoking the probe" );
+        }
+
+        ChangeSet changesToWriteBack;
+        synchronized( this ) {
+            changesToWriteBack    = theChangesToWriteBack;
+            theChangesToWriteBack = null;
+        }
+
+        try {
+            if( probe instanceof WritableProbe ) {
+                ((WritableProbe) probe).write( sourceIdentifier, changesToWriteBack, oldBase );
+            }
+
+            probe.parseDocument( sourceIdentifier, coherence, contentType, reader, newBase );
+
+        } catch( IsAbstractException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( EntityBlessedAlreadyException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( EntityNotBlessedException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( NotPermittedException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( MeshObjectIdentifierNotUniqueException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( RelatedAlreadyException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( NotRelatedException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( RoleTypeBlessedAlreadyException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( IllegalPropertyTypeException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( IllegalPropertyValueException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( URISyntaxException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( ParseException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( ModuleException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+
+        } catch( RuntimeException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+        }
+        if( log.isDebugEnabled() ) {
+            log.debug( this + ": probe came back without exception" );
+        }
+
+        return probe;
+    }
+
     /**
      * The data source refers to a non-XML file or stream, parse it.
      *
@@ -1325,6 +1544,47 @@ public class ProbeDispatcher
         return theProbe;
     }
     
+    /**
+     * The data source refers to InfoGrid native format, parse it as a stream.
+     *
+     * @param newBase the new StagingMeshBase into which to instantiate the data
+     * @param coherence the CoherenceSpecification specified by the client, if any
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the top-level element
+     * @return the used Probe instance
+     * @throws ProbeException thrown if unable to compute a result
+     * @throws TransactionException thrown if invoked outside of proper Transaction boundaries
+     * @throws IOException thrown if an I/O error occurred
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    protected StaxMeshObjectSetProbe handleNativeFormat(
+            StagingMeshBase        newBase,
+            CoherenceSpecification coherence,
+            XMLStreamReader        reader )
+        throws
+            ProbeException,
+            TransactionException,
+            IOException,
+            XMLStreamException
+    {
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "handleNativeFormat", newBase, coherence, reader );
+        }
+
+        NetMeshBaseIdentifier  sourceIdentifier = theShadowMeshBase.getIdentifier();
+        StaxMeshObjectSetProbe theProbe         = new StaxMeshObjectSetProbe();
+
+        try {
+            theProbe.parseDocument( sourceIdentifier, coherence, reader, newBase );
+
+        } catch( NotPermittedException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, StaxMeshObjectSetProbe.class );
+        } catch( MeshObjectIdentifierNotUniqueException ex ) {
+            throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, StaxMeshObjectSetProbe.class );
+        }
+
+        return theProbe;
+    }
+
     /**
      * Helper method to determine a CoherenceSpecification from a MeshObject, if it is suitably blessed.
      *
@@ -1807,6 +2067,18 @@ public class ProbeDispatcher
         theShadowListeners.remove( oldListener );
     }
 
+    /**
+     * Obtain the XMLInputFactory for the current Thread. The StAX specification does not
+     * require XMLInputFactory implementations to be thread-safe, so each Thread configures
+     * and keeps its own instead of sharing one behind a lock.
+     *
+     * @return the XMLInputFactory
+     */
+    protected static XMLInputFactory getXmlInputFactory()
+    {
+        return theXmlInputFactory.get();
+    }
+
     /**
      * Obtain an XML DocumentBuilder.
      * 
@@ -2092,6 +2364,46 @@ public class ProbeDispatcher
      */
     protected WeakReference<DocumentBuilder> theDocumentBuilderRef;
 
+    /**
+     * The XMLInputFactory for XML parsing, one per Thread.
+     */
+    protected static final ThreadLocal<XMLInputFactory> theXmlInputFactory = new ThreadLocal<XMLInputFactory>() {
+            @Override
+            protected XMLInputFactory initialValue()
+            {
+                // same context ClassLoader workaround as in getDocumentBuilder
+
+                ClassLoader ctxt = Thread.currentThread().getContextClassLoader();
+
+                try {
+                    Thread.currentThread().setContextClassLoader( ProbeDispatcher.class.getClassLoader() );
+
+                    XMLInputFactory ret = XMLInputFactory.newInstance();
+                    ret.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE,               Boolean.TRUE );
+                    ret.setProperty( XMLInputFactory.IS_COALESCING,                    Boolean.TRUE );
+                    ret.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+
+                    // Probes read untrusted content. We need the DOCTYPE to dispatch, but
+                    // never fetch an external DTD or entity it refers to.
+                    ret.setXMLResolver( new XMLResolver() {
+                            public Object resolveEntity(
+                                    String publicID,
+                                    String systemID,
+                                    String baseURI,
+                                    String namespace )
+                            {
+                                return new ByteArrayInputStream( new byte[0] );
+                            }
+                    });
+
+                    return ret;
+
+                } finally {
+                    Thread.currentThread().setContextClassLoader( ctxt );
+                }
+            }
+    };
+
     /**
      * Time, in System.currentTimeMillis() format, when the current (or most recent)
      * Probe run started. We need this to make sure our MeshBaseLifecycleManager uses
@@ -2130,6 +2442,11 @@ public class ProbeDispatcher
      */
     public static final Pattern XML_MIME_TYPE_PATTERN = Pattern.compile( ".*application/(.+\\+)?xml.*" );
 
+    /**
+     * Finds the name of the document type in an XML document type declaration.
+     */
+    public static final Pattern DOCTYPE_PATTERN = Pattern.compile( "<!DOCTYPE\\s+([^\\s\\[>]+)" );
+
     /**
      * This MIME type indicates that a stream is unknown.
      */
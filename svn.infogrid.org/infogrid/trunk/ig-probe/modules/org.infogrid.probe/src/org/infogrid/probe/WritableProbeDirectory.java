@@ -50,6 +50,17 @@ public interface WritableProbeDirectory
         throws
             IllegalArgumentException;
 
+    /**
+     * Add a Probe to this ProbeDirectory that reads XML as a stream of StAX events.
+     *
+     * @param desc the descriptor describing the Probe
+     * @throws IllegalArgumentException thrown if an XML document type is handled already
+     */
+    public void addXmlStreamProbe(
+            XmlStreamProbeDescriptor desc )
+        throws
+            IllegalArgumentException;
+
     /**
      * Add a Probe to this ProbeDirectory that will access an API to determine its input.
      *
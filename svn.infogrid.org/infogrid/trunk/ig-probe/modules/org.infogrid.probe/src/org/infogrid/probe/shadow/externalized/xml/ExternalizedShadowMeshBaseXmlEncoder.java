@@ -152,6 +152,32 @@ public class ExternalizedShadowMeshBaseXmlEncoder
         throws
             DecodingException,
             IOException
+    {
+        ExternalizedShadowMeshBaseXmlEncoder decoder = (ExternalizedShadowMeshBaseXmlEncoder) obtainDecoder();
+        try {
+            return decoder.internalDecodeShadowMeshBase( contentAsStream, shadow );
+
+        } finally {
+            releaseDecoder( decoder );
+        }
+    }
+
+    /**
+     * Deserialize an ExternalizedShadowMeshBase from a stream, using this instance as the parse handler.
+     * This must only be invoked on an instance obtained through {@link #obtainDecoder}.
+     * 
+     * @param contentAsStream the byte [] stream in which the ExternalizedProxy is encoded
+     * @param shadow the ShadowMeshBase on whose behalf the decoding is performed
+     * @return return the just-instantiated ExternalizedShadowMeshBase
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected ExternalizedShadowMeshBase internalDecodeShadowMeshBase(
+            InputStream    contentAsStream,
+            ShadowMeshBase shadow )
+        throws
+            DecodingException,
+            IOException
     {
         theMeshBase = shadow;
 
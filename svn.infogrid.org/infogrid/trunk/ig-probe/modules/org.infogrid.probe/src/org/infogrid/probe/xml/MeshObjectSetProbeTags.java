@@ -106,7 +106,7 @@ public interface MeshObjectSetProbeTags
     public static final String EXTENT_VALUE_WIDTH_TAG = "w";
 
     /** Tag indicating that this is the Height component of an ExtentValue. */
-    public static final String EXTENT_VALUE_HEIGHT_TAG = "w";
+    public static final String EXTENT_VALUE_HEIGHT_TAG = "h";
 
     /** Tag indicating that this is an IntegerValue. */
     public static final String INTEGER_VALUE_TAG = "IntegerValue";
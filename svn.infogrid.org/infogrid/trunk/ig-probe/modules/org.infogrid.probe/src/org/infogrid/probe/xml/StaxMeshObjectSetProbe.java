@@ -0,0 +1,681 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.xml;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.infogrid.mesh.BlessedAlreadyException;
+import org.infogrid.mesh.EntityBlessedAlreadyException;
+import org.infogrid.mesh.EntityNotBlessedException;
+import org.infogrid.mesh.IllegalPropertyTypeException;
+import org.infogrid.mesh.IllegalPropertyValueException;
+import org.infogrid.mesh.IsAbstractException;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifierNotUniqueException;
+import org.infogrid.mesh.NotPermittedException;
+import org.infogrid.mesh.NotRelatedException;
+import org.infogrid.mesh.RelatedAlreadyException;
+import org.infogrid.mesh.net.NetMeshObjectIdentifier;
+import org.infogrid.meshbase.net.CoherenceSpecification;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifierFactory;
+import org.infogrid.meshbase.net.NetMeshObjectIdentifierFactory;
+import org.infogrid.meshbase.transaction.TransactionException;
+import org.infogrid.model.primitives.BlobDataType;
+import org.infogrid.model.primitives.BooleanValue;
+import org.infogrid.model.primitives.ColorValue;
+import org.infogrid.model.primitives.CurrencyValue;
+import org.infogrid.model.primitives.EnumeratedDataType;
+import org.infogrid.model.primitives.ExtentValue;
+import org.infogrid.model.primitives.FloatValue;
+import org.infogrid.model.primitives.IntegerValue;
+import org.infogrid.model.primitives.MeshType;
+import org.infogrid.model.primitives.MultiplicityValue;
+import org.infogrid.model.primitives.PointValue;
+import org.infogrid.model.primitives.PropertyType;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.model.primitives.TimePeriodValue;
+import org.infogrid.model.primitives.TimeStampValue;
+import org.infogrid.model.primitives.UnknownEnumeratedValueException;
+import org.infogrid.modelbase.MeshTypeNotFoundException;
+import org.infogrid.modelbase.MeshTypeWithIdentifierNotFoundException;
+import org.infogrid.modelbase.ModelBase;
+import org.infogrid.probe.Probe;
+import org.infogrid.probe.ProbeException;
+import org.infogrid.probe.StagingMeshBase;
+import org.infogrid.probe.StagingMeshBaseLifecycleManager;
+import org.infogrid.util.Base64;
+import org.infogrid.util.logging.Log;
+
+/**
+ * The NetMesh Xml Probe, reading a stream of StAX events instead of a DOM. Each MeshObject
+ * is instantiated as soon as its element has been read; only the relationships are
+ * buffered until the end of the document, because they may refer to MeshObjects further down.
+ * Understands the same format as DomMeshObjectSetProbe.
+ */
+public class StaxMeshObjectSetProbe
+        implements
+            Probe,
+            MeshObjectSetProbeTags
+{
+    private static final Log log = Log.getLogInstance( StaxMeshObjectSetProbe.class ); // our own, private logger
+
+    /**
+     * Constructor.
+     */
+    public StaxMeshObjectSetProbe()
+    {
+        // no op
+    }
+
+    /**
+     * Read from an XMLStreamReader and instantiate corresponding MeshObjects.
+     *
+     * @param dataSourceIdentifier identifies the data source that is being accessed
+     * @param coherenceSpecification the type of data coherence that is requested by the application. Probe
+     *         implementors may ignore this parameter, letting the Probe framework choose its own policy.
+     *         If the Probe chooses to define its own policy (considering or ignoring this parameter), the
+     *         Probe must bless the Probe's HomeObject with a subtype of <code>ProbeUpdateSpecification</code> (defined
+     *         in the <code>org.infogrid.model.Probe</code> Subject Area) and suitable Property
+     *         values that reflect the policy.
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the top-level element
+     * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated by the Probe.
+     *         This StagingMeshBase is empty when passed into this call, except for the home object which always exists
+     * @throws IOException an input/output error occurred during execution of the Probe
+     * @throws MeshObjectIdentifierNotUniqueException thrown if the Probe developer incorrectly
+     *         assigned duplicate MeshObjectsIdentifiers to created MeshObjects.
+     *         Throwing this typically indicates a programming error.
+     * @throws NotPermittedException thrown if an operation performed by the Probe was not permitted
+     * @throws ProbeException a Probe error occurred per the possible subclasses defined in ProbeException
+     * @throws TransactionException a Transaction problem occurred. Throwing this typically indicates a programming error.
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    public void parseDocument(
+            NetMeshBaseIdentifier  dataSourceIdentifier,
+            CoherenceSpecification coherenceSpecification,
+            XMLStreamReader        reader,
+            StagingMeshBase        freshMeshBase )
+        throws
+            IOException,
+            MeshObjectIdentifierNotUniqueException,
+            NotPermittedException,
+            ProbeException,
+            TransactionException,
+            XMLStreamException
+    {
+        ModelBase theModelBase = freshMeshBase.getModelBase();
+
+        if( !MESHOBJECT_SET_TAG.equals( reader.getLocalName() )) {
+            throw new ProbeException.EmptyDataSource( dataSourceIdentifier );
+        }
+
+        ArrayList<ExternalizedMeshObject> deferredObjects = new ArrayList<ExternalizedMeshObject>(); // refer to variables not known yet
+        ArrayList<ExternalizedMeshObject> relatedObjects  = new ArrayList<ExternalizedMeshObject>(); // have relationships
+
+        try {
+            while( XmlStreamProbeUtils.nextChildElement( reader )) {
+                ExternalizedMeshObject currentObject = parseMeshObject( dataSourceIdentifier, reader, freshMeshBase, theModelBase );
+
+                if( canConstructIdentifier( currentObject.getIdentifier() )) {
+                    instantiateMeshObject( dataSourceIdentifier, currentObject, freshMeshBase, theModelBase );
+                } else {
+                    deferredObjects.add( currentObject );
+                }
+                if( !currentObject.theRelationships.isEmpty() ) {
+                    relatedObjects.add( currentObject );
+                }
+            }
+
+            for( ExternalizedMeshObject currentObject : deferredObjects ) {
+                instantiateMeshObject( dataSourceIdentifier, currentObject, freshMeshBase, theModelBase );
+            }
+
+            // finally relate MeshObjects
+
+            for( ExternalizedMeshObject currentObject : relatedObjects ) {
+                NetMeshObjectIdentifier currentObjectName = constructIdentifier(
+                        dataSourceIdentifier,
+                        currentObject.getIdentifier(),
+                        freshMeshBase.getMeshObjectIdentifierFactory());
+                MeshObject realCurrentObject = freshMeshBase.findMeshObjectByIdentifier( currentObjectName );
+
+                for( ExternalizedMeshObject.ExternalizedRelationship currentRelationship : currentObject.theRelationships ) {
+                    NetMeshObjectIdentifier otherSideName = constructIdentifier(
+                            dataSourceIdentifier,
+                            currentRelationship.getIdentifier(),
+                            freshMeshBase.getMeshObjectIdentifierFactory());
+                    MeshObject otherSide = freshMeshBase.findMeshObjectByIdentifier( otherSideName );
+
+                    if( otherSide == null ) {
+                        throw new ProbeException.SyntaxError( dataSourceIdentifier, "Referenced MeshObject could not be found: " + otherSideName, null );
+                    }
+                    try {
+                        realCurrentObject.relate( otherSide );
+                    } catch( RelatedAlreadyException ex ) {
+                        // this must be the other side of what we related already
+                    }
+                    try {
+                        realCurrentObject.blessRelationship( MeshObjectSetProbeUtils.lookupRoleTypes( currentRelationship.theRoleTypes, theModelBase ), otherSide );
+                    } catch( BlessedAlreadyException ex ) {
+                        // this must be the other side of what we related already
+                    } catch( EntityNotBlessedException ex ) {
+                        log.error( ex );
+                    } catch( NotRelatedException ex ) {
+                        log.error( ex );
+                    } catch( IsAbstractException ex ) {
+                        log.error( ex );
+                    }
+                }
+            }
+
+        } catch( NotPermittedException ex ) {
+            throw new ProbeException.Other( dataSourceIdentifier, ex );
+
+        } catch( MeshObjectIdentifierNotUniqueException ex ) {
+            throw new ProbeException.SyntaxError( dataSourceIdentifier, ex );
+
+        } catch( MeshTypeNotFoundException ex ) {
+            throw new ProbeException.SyntaxError( dataSourceIdentifier, ex );
+        }
+    }
+
+    /**
+     * Read one MeshObject element.
+     *
+     * @param dataSourceIdentifier identifies the data source that is being accessed
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the MeshObject. Will be
+     *         positioned on its END_ELEMENT upon return
+     * @param freshMeshBase the StagingMeshBase in which the MeshObjects are instantiated
+     * @param theModelBase the ModelBase with the MeshTypes
+     * @return the read MeshObject
+     * @throws ProbeException a Probe error occurred per the possible subclasses defined in ProbeException
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    protected ExternalizedMeshObject parseMeshObject(
+            NetMeshBaseIdentifier dataSourceIdentifier,
+            XMLStreamReader       reader,
+            StagingMeshBase       freshMeshBase,
+            ModelBase             theModelBase )
+        throws
+            ProbeException,
+            XMLStreamException
+    {
+        String identifier       = reader.getAttributeValue( null, IDENTIFIER_TAG );
+        String timeCreated      = reader.getAttributeValue( null, TIME_CREATED_TAG );
+        String timeUpdated      = reader.getAttributeValue( null, TIME_UPDATED_TAG );
+        String timeRead         = reader.getAttributeValue( null, TIME_READ_TAG );
+        String timeAutoDeletes  = reader.getAttributeValue( null, TIME_AUTO_DELETES_TAG );
+        String giveUpLock       = reader.getAttributeValue( null, GIVE_UP_LOCK_TAG );
+        String giveUpHome       = reader.getAttributeValue( null, GIVE_UP_HOME_TAG );
+        String proxyTowardsHome = reader.getAttributeValue( null, PROXY_TOWARDS_HOME_TAG );
+
+        ExternalizedMeshObject ret = new ExternalizedMeshObject();
+
+        if( identifier != null ) { // need to support "" for Home Object
+            ret.setIdentifier( identifier );
+        }
+        if( timeCreated != null && timeCreated.length() > 0 ) {
+            ret.setTimeCreated( MeshObjectSetProbeUtils.parseTime( timeCreated ));
+        }
+        if( timeUpdated != null && timeUpdated.length() > 0 ) {
+            ret.setTimeUpdated( MeshObjectSetProbeUtils.parseTime( timeUpdated ));
+        }
+        if( timeRead != null && timeRead.length() > 0 ) {
+            ret.setTimeRead( MeshObjectSetProbeUtils.parseTime( timeRead ));
+        }
+        if( timeAutoDeletes != null && timeAutoDeletes.length() > 0 ) {
+            ret.setTimeAutoDeletes( MeshObjectSetProbeUtils.parseTime( timeAutoDeletes ));
+        }
+        if( YES_TAG.equals( giveUpLock )) {
+            ret.setGiveUpLock( true );
+        }
+        if( YES_TAG.equals( giveUpHome )) {
+            ret.setGiveUpHome( true );
+        }
+        if( proxyTowardsHome != null && proxyTowardsHome.length() > 0 ) {
+            ret.setProxyTowardsHome(
+                    constructNetworkIdentifier(
+                            dataSourceIdentifier,
+                            proxyTowardsHome,
+                            freshMeshBase.getMeshBaseIdentifierFactory() ));
+        }
+
+        while( XmlStreamProbeUtils.nextChildElement( reader )) {
+            String childName = reader.getLocalName();
+
+            if( MESH_TYPE_TAG.equals( childName )) {
+                String typeIdentifier = XmlStreamProbeUtils.getTextContent( reader );
+                ret.addMeshType( theModelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeIdentifier ));
+
+            } else if( PROPERTY_TYPE_TAG.equals( childName )) {
+                String propertyIdentifier = reader.getAttributeValue( null, TYPE_TAG );
+                ret.addPropertyType( theModelBase.getMeshTypeIdentifierFactory().fromExternalForm( propertyIdentifier ));
+
+                boolean foundValue = false;
+                while( XmlStreamProbeUtils.nextChildElement( reader )) {
+                    ret.addPropertyValue( parsePropertyValue( dataSourceIdentifier, reader, propertyIdentifier, theModelBase ));
+                    foundValue = true;
+                }
+                if( !foundValue ) {
+                    ret.addPropertyValue( null ); // keep PropertyTypes and PropertyValues aligned
+                }
+
+            } else if( RELATIONSHIP_TAG.equals( childName )) {
+                String otherSideIdentifier = reader.getAttributeValue( null, IDENTIFIER_TAG );
+
+                ret.addRelationship( otherSideIdentifier );
+
+                while( XmlStreamProbeUtils.nextChildElement( reader )) {
+                    String typeIdentifier = reader.getAttributeValue( null, TYPE_TAG );
+
+                    ret.getCurrentRelationship().addRoleType( theModelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeIdentifier ));
+
+                    XmlStreamProbeUtils.skipElement( reader );
+                }
+
+            } else {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier, "Unknown XML tag: " + childName, null );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Read one PropertyValue element.
+     *
+     * @param dataSourceIdentifier identifies the data source that is being accessed
+     * @param reader the XMLStreamReader, positioned on the START_ELEMENT of the PropertyValue. Will be
+     *         positioned on its END_ELEMENT upon return
+     * @param propertyIdentifier external form of the identifier of the PropertyType
+     * @param theModelBase the ModelBase with the MeshTypes
+     * @return the read PropertyValue
+     * @throws ProbeException a Probe error occurred per the possible subclasses defined in ProbeException
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    protected PropertyValue parsePropertyValue(
+            NetMeshBaseIdentifier dataSourceIdentifier,
+            XMLStreamReader       reader,
+            String                propertyIdentifier,
+            ModelBase             theModelBase )
+        throws
+            ProbeException,
+            XMLStreamException
+    {
+        String        valueName = reader.getLocalName();
+        PropertyValue ret;
+
+        if( BLOB_VALUE_TAG.equals( valueName )) {
+            String mime     = reader.getAttributeValue( null, BLOB_VALUE_MIME_TAG );
+            String loadFrom = reader.getAttributeValue( null, BLOB_VALUE_LOAD_TAG );
+            String content  = XmlStreamProbeUtils.getTextContent( reader );
+
+            if( mime != null && mime.length() > 0 ) {
+                if( loadFrom != null && loadFrom.length() > 0 ) {
+                    ret = BlobDataType.theAnyType.createBlobValueByLoadingFrom( loadFrom, mime );
+                } else if( mime.startsWith( "text/" )) {
+                    ret = BlobDataType.theAnyType.createBlobValue( Base64.base64decode( content.trim() ), mime );
+                } else {
+                    ret = BlobDataType.theAnyType.createBlobValue( content.trim(), mime );
+                }
+            } else {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier, "empty '" + BLOB_VALUE_MIME_TAG + "' on '" + BLOB_VALUE_TAG + "'", null );
+            }
+
+        } else if( BOOLEAN_VALUE_TAG.equals( valueName )) {
+            String content = XmlStreamProbeUtils.getTextContent( reader );
+
+            ret = BooleanValue.create( BOOLEAN_VALUE_TRUE_TAG.equals( content.trim() ));
+
+        } else if( COLOR_VALUE_TAG.equals( valueName )) {
+            String red   = reader.getAttributeValue( null, COLOR_VALUE_RED_TAG );
+            String green = reader.getAttributeValue( null, COLOR_VALUE_GREEN_TAG );
+            String blue  = reader.getAttributeValue( null, COLOR_VALUE_BLUE_TAG );
+            String alpha = reader.getAttributeValue( null, COLOR_VALUE_ALPHA_TAG );
+
+            XmlStreamProbeUtils.skipElement( reader );
+
+            ret = ColorValue.create(
+                    Float.parseFloat( red ),
+                    Float.parseFloat( green ),
+                    Float.parseFloat( blue ),
+                    Float.parseFloat( alpha ));
+
+        } else if( CURRENCY_VALUE_TAG.equals( valueName )) {
+            String content = XmlStreamProbeUtils.getTextContent( reader );
+            try {
+                ret = CurrencyValue.parseCurrencyValue( content );
+            } catch( ParseException ex ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier, "Failed to parse CurrencyValue " + content );
+            }
+
+        } else if( ENUMERATED_VALUE_TAG.equals( valueName )) {
+            String content = XmlStreamProbeUtils.getTextContent( reader );
+            try {
+                MeshType mt = theModelBase.findMeshTypeByIdentifier( theModelBase.getMeshTypeIdentifierFactory().fromExternalForm( propertyIdentifier ));
+                if( ( mt instanceof PropertyType ) && ((PropertyType)mt).getDataType() instanceof EnumeratedDataType ) {
+                    EnumeratedDataType realPt = (EnumeratedDataType) ((PropertyType)mt).getDataType();
+                    ret = realPt.select( content.trim() );
+                } else {
+                    throw new ProbeException.SyntaxError( dataSourceIdentifier, "MeshType with " + propertyIdentifier + " is not a PropertyType", null );
+                }
+            } catch( MeshTypeWithIdentifierNotFoundException ex ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier, "Cannot find PropertyType with " + propertyIdentifier, ex );
+            } catch( UnknownEnumeratedValueException ex ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier, "Invalid key " + content.trim() + " for EnumeratedDataType on PropertyType " + propertyIdentifier, ex );
+            }
+
+        } else if( EXTENT_VALUE_TAG.equals( valueName )) {
+            String width  = reader.getAttributeValue( null, EXTENT_VALUE_WIDTH_TAG );
+            String height = reader.getAttributeValue( null, EXTENT_VALUE_HEIGHT_TAG );
+
+            XmlStreamProbeUtils.skipElement( reader );
+
+            if( width == null || width.length() == 0 ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier,  "empty '" + EXTENT_VALUE_WIDTH_TAG + "' on '" + EXTENT_VALUE_TAG + "'", null );
+            }
+            if( height == null || height.length() == 0 ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier,  "empty '" + EXTENT_VALUE_HEIGHT_TAG + "' on '" + EXTENT_VALUE_TAG + "'", null );
+            }
+            ret = ExtentValue.create( Double.parseDouble( width ), Double.parseDouble( height ));
+
+        } else if( INTEGER_VALUE_TAG.equals( valueName )) {
+            ret = IntegerValue.parseIntegerValue( XmlStreamProbeUtils.getTextContent( reader ));
+
+        } else if( FLOAT_VALUE_TAG.equals( valueName )) {
+            ret = FloatValue.parseFloatValue( XmlStreamProbeUtils.getTextContent( reader ));
+
+        } else if( MULTIPLICITY_VALUE_TAG.equals( valueName )) {
+            String min = reader.getAttributeValue( null, MULTIPLICITY_VALUE_MIN_TAG );
+            String max = reader.getAttributeValue( null, MULTIPLICITY_VALUE_MAX_TAG );
+
+            XmlStreamProbeUtils.skipElement( reader );
+
+            ret = MultiplicityValue.create(
+                    ( min != null && min.length() > 0 ) ? Integer.parseInt( min ) : MultiplicityValue.N,
+                    ( max != null && max.length() > 0 ) ? Integer.parseInt( max ) : MultiplicityValue.N );
+
+        } else if( POINT_VALUE_TAG.equals( valueName )) {
+            String x = reader.getAttributeValue( null, POINT_VALUE_X_TAG );
+            String y = reader.getAttributeValue( null, POINT_VALUE_Y_TAG );
+
+            XmlStreamProbeUtils.skipElement( reader );
+
+            if( x == null || x.length() == 0 ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier,  "empty '" + POINT_VALUE_X_TAG + "' on '" + POINT_VALUE_TAG + "'", null );
+            }
+            if( y == null || y.length() == 0 ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier,  "empty '" + POINT_VALUE_Y_TAG + "' on '" + POINT_VALUE_TAG + "'", null );
+            }
+            ret = PointValue.create( Double.parseDouble( x ), Double.parseDouble( y ));
+
+        } else if( STRING_VALUE_TAG.equals( valueName )) {
+            ret = StringValue.create( XmlStreamProbeUtils.getTextContent( reader ));
+
+        } else if( TIME_PERIOD_TAG.equals( valueName )) {
+            String yr  = reader.getAttributeValue( null, TIME_PERIOD_YEAR_TAG );
+            String mon = reader.getAttributeValue( null, TIME_PERIOD_MONTH_TAG );
+            String day = reader.getAttributeValue( null, TIME_PERIOD_DAY_TAG );
+            String hr  = reader.getAttributeValue( null, TIME_PERIOD_HOUR_TAG );
+            String min = reader.getAttributeValue( null, TIME_PERIOD_MINUTE_TAG );
+            String sec = reader.getAttributeValue( null, TIME_PERIOD_SECOND_TAG );
+
+            XmlStreamProbeUtils.skipElement( reader );
+
+            if( yr == null || yr.length() == 0 ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier,  "empty '" + TIME_PERIOD_YEAR_TAG + "' on '" + TIME_PERIOD_TAG + "'", null );
+            }
+            if( mon == null || mon.length() == 0 ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier,  "empty '" + TIME_PERIOD_MONTH_TAG + "' on '" + TIME_PERIOD_TAG + "'", null );
+            }
+            if( day == null || day.length() == 0 ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier,  "empty '" + TIME_PERIOD_DAY_TAG + "' on '" + TIME_PERIOD_TAG + "'", null );
+            }
+            if( hr == null || hr.length() == 0 ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier,  "empty '" + TIME_PERIOD_HOUR_TAG + "' on '" + TIME_PERIOD_TAG + "'", null );
+            }
+            if( min == null || min.length() == 0 ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier,  "empty '" + TIME_PERIOD_MINUTE_TAG + "' on '" + TIME_PERIOD_TAG + "'", null );
+            }
+            if( sec == null || sec.length() == 0 ) {
+                throw new ProbeException.SyntaxError( dataSourceIdentifier,  "empty '" + TIME_PERIOD_SECOND_TAG + "' on '" + TIME_PERIOD_TAG + "'", null );
+            }
+
+            ret = TimePeriodValue.create(
+                    Short.parseShort( yr ),
+                    Short.parseShort( mon ),
+                    Short.parseShort( day ),
+                    Short.parseShort( hr ),
+                    Short.parseShort( min ),
+                    Float.parseFloat( sec ));
+
+        } else if( TIME_STAMP_TAG.equals( valueName )) {
+            String yr  = reader.getAttributeValue( null, TIME_STAMP_YEAR_TAG );
+            String mon = reader.getAttributeValue( null, TIME_STAMP_MONTH_TAG );
+            String day = reader.getAttributeValue( null, TIME_STAMP_DAY_TAG );
+            String hr  = reader.getAttributeValue( null, TIME_STAMP_HOUR_TAG );
+            String min = reader.getAttributeValue( null, TIME_STAMP_MINUTE_TAG );
+            String sec = reader.getAttributeValue( null, TIME_STAMP_SECOND_TAG );
+
+            String content = XmlStreamProbeUtils.getTextContent( reader );
+
+            if(    yr  != null && yr.length()  > 0
+                && mon != null && mon.length() > 0
+                && day != null && day.length() > 0
+                && hr  != null && hr.length()  > 0
+                && min != null && min.length() > 0
+                && sec != null && sec.length() > 0 )
+            {
+                ret = TimeStampValue.create(
+                        Short.parseShort( yr ),
+                        Short.parseShort( mon ),
+                        Short.parseShort( day ),
+                        Short.parseShort( hr ),
+                        Short.parseShort( min ),
+                        Float.parseFloat( sec ));
+            } else {
+                try {
+                    ret = TimeStampValue.createFromRfc3339( content.trim() );
+
+                } catch( ParseException ex ) {
+                    throw new ProbeException.SyntaxError( dataSourceIdentifier, ex );
+                }
+            }
+
+        } else {
+            throw new ProbeException.SyntaxError( dataSourceIdentifier,  "Unknown XML tag: " + valueName, null );
+        }
+        return ret;
+    }
+
+    /**
+     * Instantiate a MeshObject that has been read, and set its properties. Its relationships
+     * are not instantiated yet.
+     *
+     * @param dataSourceIdentifier identifies the data source that is being accessed
+     * @param currentObject the read MeshObject
+     * @param freshMeshBase the StagingMeshBase in which the MeshObjects are instantiated
+     * @param theModelBase the ModelBase with the MeshTypes
+     * @throws MeshObjectIdentifierNotUniqueException thrown if the MeshObjectIdentifier was used already
+     * @throws MeshTypeNotFoundException thrown if a MeshType could not be found
+     * @throws NotPermittedException thrown if an operation was not permitted
+     * @throws ProbeException a Probe error occurred per the possible subclasses defined in ProbeException
+     * @throws TransactionException a Transaction problem occurred
+     */
+    protected void instantiateMeshObject(
+            NetMeshBaseIdentifier  dataSourceIdentifier,
+            ExternalizedMeshObject currentObject,
+            StagingMeshBase        freshMeshBase,
+            ModelBase              theModelBase )
+        throws
+            MeshObjectIdentifierNotUniqueException,
+            MeshTypeNotFoundException,
+            NotPermittedException,
+            ProbeException,
+            TransactionException
+    {
+        StagingMeshBaseLifecycleManager life = freshMeshBase.getMeshBaseLifecycleManager();
+
+        try {
+            MeshObject            realCurrentObject;
+            NetMeshBaseIdentifier proxy             = currentObject.getProxyTowardsHome();
+            String                currentIdentifier = currentObject.getIdentifier();
+
+            if( currentIdentifier.indexOf( '#' ) < 0 && proxy == null ) {
+                realCurrentObject = freshMeshBase.getHomeObject();
+
+                realCurrentObject.bless( MeshObjectSetProbeUtils.lookupEntityTypes( currentObject.getMeshTypes(), theModelBase ));
+
+            } else if( proxy == null ) {
+                realCurrentObject = life.createMeshObject(
+                        constructIdentifier(
+                                dataSourceIdentifier,
+                                currentIdentifier,
+                                freshMeshBase.getMeshObjectIdentifierFactory() ),
+                        MeshObjectSetProbeUtils.lookupEntityTypes( currentObject.getMeshTypes(), theModelBase ),
+                        currentObject.getTimeCreated(),
+                        currentObject.getTimeUpdated(),
+                        currentObject.getTimeRead(),
+                        currentObject.getTimeAutoDeletes());
+
+            } else {
+                // ForwardReference
+
+                NetMeshObjectIdentifier fwdRefName = constructIdentifier(
+                        dataSourceIdentifier,
+                        currentIdentifier,
+                        freshMeshBase.getMeshObjectIdentifierFactory() );
+
+                realCurrentObject = life.createForwardReference(
+                        proxy,
+                        fwdRefName,
+                        MeshObjectSetProbeUtils.lookupEntityTypes( currentObject.getMeshTypes(), theModelBase ));
+            }
+
+            for( int i=currentObject.thePropertyTypes.size()-1 ; i>=0 ; --i ) {
+                PropertyType  type  = MeshObjectSetProbeUtils.lookupPropertyType( currentObject.thePropertyTypes.get( i ), theModelBase );
+                PropertyValue value = currentObject.thePropertyValues.get( i );
+                realCurrentObject.setPropertyValue( type, value );
+            }
+        } catch( IsAbstractException ex ) {
+            log.error( ex );
+        } catch( EntityBlessedAlreadyException ex ) {
+            log.error( ex );
+        } catch( IllegalPropertyTypeException ex ) {
+            log.error( ex );
+        } catch( IllegalPropertyValueException ex ) {
+            log.error( ex );
+        }
+
+        // the values live in the MeshObject now; only the relationships are still needed
+        currentObject.thePropertyTypes.clear();
+        currentObject.thePropertyValues.clear();
+    }
+
+    /**
+     * Determine whether all variables in the external form of a NetMeshObjectIdentifier
+     * can be resolved already.
+     *
+     * @param externalForm the external form of the NetMeshObjectIdentifier
+     * @return true if the NetMeshObjectIdentifier can be constructed
+     */
+    protected boolean canConstructIdentifier(
+            String externalForm )
+    {
+        Matcher m = DomMeshObjectSetProbe.VARIABLE_PATTERN.matcher( externalForm );
+        if( m.find() ) {
+            return theVariableReplacements.containsKey( m.group( 1 ));
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to construct a fully-qualified NetMeshObjectIdentifier, given a String
+     * in the XML file that represents the Identifier, and a NetMeshBaseIdentifier as context.
+     *
+     * @param dataSourceIdentifier identifies the data source
+     * @param externalForm the external form of the NetNeshBaseIdentifier
+     * @param meshObjectIdentifierFactory factory for MeshObjectIdentifiers
+     * @return the created NetMeshObjectIdentifier
+     * @throws org.infogrid.probe.ProbeException.SyntaxError thrown if a syntax error was discovered
+     */
+    protected NetMeshObjectIdentifier constructIdentifier(
+            NetMeshBaseIdentifier          dataSourceIdentifier,
+            String                         externalForm,
+            NetMeshObjectIdentifierFactory meshObjectIdentifierFactory )
+        throws
+            ProbeException.SyntaxError
+    {
+        try {
+            NetMeshObjectIdentifier ret;
+
+            Matcher m = DomMeshObjectSetProbe.VARIABLE_PATTERN.matcher( externalForm );
+            if( m.find() ) {
+                String variable = m.group( 1 );
+                String replacement = theVariableReplacements.get( variable );
+                if( replacement == null ) {
+                    throw new ProbeException.SyntaxError( dataSourceIdentifier, "Cannot resolve variable " + variable, null );
+                }
+                String newExternalForm = externalForm.replaceAll( DomMeshObjectSetProbe.VARIABLE_PATTERN.pattern(), replacement );
+                ret = meshObjectIdentifierFactory.fromExternalForm( dataSourceIdentifier, newExternalForm );
+            } else {
+                ret = meshObjectIdentifierFactory.fromExternalForm( dataSourceIdentifier, externalForm );
+            }
+            return ret;
+
+        } catch( ParseException ex ) {
+            throw new ProbeException.SyntaxError( dataSourceIdentifier, ex );
+        }
+    }
+
+    /**
+     * Helper method to construct a fully-qualified NetNeshBaseIdentifier, given a String
+     * in the XML file that represents the Identifier, and a NetMeshBaseIdentifier as context.
+     *
+     * @param dataSourceIdentifier identifies the data source
+     * @param externalForm the external form of the NetNeshBaseIdentifier
+     * @param meshBaseIdentifierFactory factory for MeshBaseIdentifiers
+     * @return the created NetNeshBaseIdentifier
+     * @throws org.infogrid.probe.ProbeException.SyntaxError thrown if a syntax error was discovered
+     */
+    protected NetMeshBaseIdentifier constructNetworkIdentifier(
+            NetMeshBaseIdentifier        dataSourceIdentifier,
+            String                       externalForm,
+            NetMeshBaseIdentifierFactory meshBaseIdentifierFactory )
+        throws
+            ProbeException.SyntaxError
+    {
+        try {
+            NetMeshBaseIdentifier ret = meshBaseIdentifierFactory.guessFromExternalForm( dataSourceIdentifier, externalForm );
+
+            theVariableReplacements.put( externalForm, ret.toExternalForm() );
+
+            return ret;
+
+        } catch( ParseException ex ) {
+            throw new ProbeException.SyntaxError( dataSourceIdentifier, ex );
+        }
+    }
+
+    /**
+     * The table of variables and their replacements.
+     */
+    protected HashMap<String,String> theVariableReplacements = new HashMap<String,String>();
+}
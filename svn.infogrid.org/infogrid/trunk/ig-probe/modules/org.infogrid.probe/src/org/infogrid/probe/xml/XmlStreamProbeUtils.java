@@ -0,0 +1,147 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.xml;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Utility functions for XmlStreamProbes. They all expect the XMLStreamReader to be
+ * positioned on a START_ELEMENT or END_ELEMENT, and leave it on one.
+ */
+public abstract class XmlStreamProbeUtils
+{
+    /**
+     * Keep this class abstract.
+     */
+    private XmlStreamProbeUtils() {}
+
+    /**
+     * Advance to the next child element of the current element. Call this with the
+     * reader positioned on the START_ELEMENT of the parent, or on the END_ELEMENT of the
+     * previous child. Typical use:
+     * <pre>
+     * while( XmlStreamProbeUtils.nextChildElement( reader )) {
+     *     // process the child, leaving the reader on its END_ELEMENT
+     * }
+     * </pre>
+     *
+     * @param reader the XMLStreamReader
+     * @return true if the reader is now positioned on the START_ELEMENT of a child,
+     *         false if it is positioned on the END_ELEMENT of the parent
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    public static boolean nextChildElement(
+            XMLStreamReader reader )
+        throws
+            XMLStreamException
+    {
+        while( true ) {
+            switch( reader.next() ) {
+                case XMLStreamConstants.START_ELEMENT:
+                    return true;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    return false;
+
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException( "Unexpected end of document", reader.getLocation() );
+
+                default:
+                    // text, comments and the like
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Obtain the concatenated text of the current element and all of its descendants,
+     * like the DOM's <code>Node.getTextContent()</code>. Leaves the reader positioned on
+     * the END_ELEMENT of the current element.
+     *
+     * @param reader the XMLStreamReader, positioned on a START_ELEMENT
+     * @return the text
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    public static String getTextContent(
+            XMLStreamReader reader )
+        throws
+            XMLStreamException
+    {
+        StringBuilder buf   = new StringBuilder();
+        int           depth = 1;
+
+        while( depth > 0 ) {
+            switch( reader.next() ) {
+                case XMLStreamConstants.START_ELEMENT:
+                    ++depth;
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    --depth;
+                    break;
+
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    buf.append( reader.getText() );
+                    break;
+
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException( "Unexpected end of document", reader.getLocation() );
+
+                default:
+                    // comments and the like
+                    break;
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Skip the current element and all of its descendants. Leaves the reader positioned on
+     * the END_ELEMENT of the current element.
+     *
+     * @param reader the XMLStreamReader, positioned on a START_ELEMENT
+     * @throws XMLStreamException thrown if the XML was not well-formed
+     */
+    public static void skipElement(
+            XMLStreamReader reader )
+        throws
+            XMLStreamException
+    {
+        int depth = 1;
+
+        while( depth > 0 ) {
+            switch( reader.next() ) {
+                case XMLStreamConstants.START_ELEMENT:
+                    ++depth;
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    --depth;
+                    break;
+
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException( "Unexpected end of document", reader.getLocation() );
+
+                default:
+                    break;
+            }
+        }
+    }
+}
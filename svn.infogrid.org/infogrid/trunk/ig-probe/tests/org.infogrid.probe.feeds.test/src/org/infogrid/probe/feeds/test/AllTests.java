@@ -16,6 +16,7 @@ package org.infogrid.probe.feeds.test;
 
 import org.infogrid.probe.feeds.test.atom.AtomTest1;
 import org.infogrid.probe.feeds.test.atom.AtomTest2;
+import org.infogrid.probe.feeds.test.atom.AtomTest3;
 import org.infogrid.probe.feeds.test.rss.RssTest1;
 import org.infogrid.probe.feeds.test.rss.RssTest2;
 import org.infogrid.testharness.AbstractTest;
@@ -46,6 +47,10 @@ public class AllTests
                         AtomTest2.class,
                         AbstractTest.fileSystemFileName( AtomTest2.class, "AtomTest2.xml" )),
 
+                new TestSpec(
+                        AtomTest3.class,
+                        AbstractTest.fileSystemFileName( AtomTest3.class, "AtomTest3.xml" )),
+
                 new TestSpec(
                         RssTest1.class,
                         AbstractTest.fileSystemFileName( RssTest1.class, "RssTest1.xml" )),
@@ -127,7 +127,7 @@ public class AtomTest1
         testFile1   = args[0];
         testFile1Id = theMeshBaseIdentifierFactory.obtain( new File( testFile1 ) );
 
-        theProbeDirectory.addXmlDomProbe( new ProbeDirectory.XmlDomProbeDescriptor( null, "http://www.w3.org/2005/Atom", "feed", AtomProbe.class ));
+        theProbeDirectory.addXmlStreamProbe( new ProbeDirectory.XmlStreamProbeDescriptor( null, "http://www.w3.org/2005/Atom", "feed", AtomProbe.class ));
     }
 
     // Our Logger
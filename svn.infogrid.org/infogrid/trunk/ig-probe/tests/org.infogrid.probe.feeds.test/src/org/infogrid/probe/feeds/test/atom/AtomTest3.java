@@ -0,0 +1,178 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.feeds.test.atom;
+
+import java.io.File;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.set.MeshObjectSelector;
+import org.infogrid.meshbase.net.CoherenceSpecification;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.BooleanValue;
+import org.infogrid.model.primitives.ExtentValue;
+import org.infogrid.model.primitives.PointValue;
+import org.infogrid.probe.ProbeDirectory;
+import org.infogrid.probe.feeds.atom.AtomProbe;
+import org.infogrid.probe.feeds.test.AbstractFeedTest;
+import org.infogrid.probe.shadow.ShadowMeshBase;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that the Atom Probe reads the PropertyValues in InfoGrid extensions correctly with AtomTest3.xml.
+ */
+public class AtomTest3
+        extends
+            AbstractFeedTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "accessing test file with meshBase" );
+
+        ShadowMeshBase meshBase1 = theProbeManager1.obtainFor( testFile1Id, CoherenceSpecification.ONE_TIME_ONLY );
+
+        checkObject( meshBase1, "could not find meshBase1" );
+        dumpMeshBase( meshBase1, "meshBase1", log );
+
+        MeshObject home1 = meshBase1.getHomeObject();
+
+        checkEquals( home1.traverseToNeighborMeshObjects().size(), 2, "wrong number of neighbors for home object" );
+
+        //
+
+        log.info( "checking PropertyValues of abc" );
+
+        MeshObject abc = findEntry( home1, "abc" );
+        if( checkObject( abc, "no abc object found" )) {
+            checkCondition( abc.isBlessedBy( TestSubjectArea.OPTIONALPROPERTIES ), "abc not blessed" );
+            checkEquals( abc.getPropertyValue( TestSubjectArea.OPTIONALPROPERTIES_OPTIONALENUMERATEDDATATYPE ),
+                    TestSubjectArea.OPTIONALPROPERTIES_OPTIONALENUMERATEDDATATYPE_type_VALUE2,
+                    "wrong EnumeratedValue" );
+            checkEquals( abc.getPropertyValue( TestSubjectArea.OPTIONALPROPERTIES_OPTIONALBOOLEANDATATYPE ),
+                    BooleanValue.FALSE,
+                    "wrong BooleanValue" );
+            checkEquals( abc.getPropertyValue( TestSubjectArea.OPTIONALPROPERTIES_OPTIONALPOINTDATATYPE ),
+                    PointValue.create( 1.5, 2.5 ),
+                    "wrong PointValue" );
+            checkEquals( abc.getPropertyValue( TestSubjectArea.OPTIONALPROPERTIES_OPTIONALEXTENTDATATYPE ),
+                    ExtentValue.create( 3.0, 4.0 ),
+                    "wrong ExtentValue" );
+        }
+
+        //
+
+        log.info( "checking PropertyValues of def" );
+
+        MeshObject def = findEntry( home1, "def" );
+        if( checkObject( def, "no def object found" )) {
+            checkEquals( def.getPropertyValue( TestSubjectArea.OPTIONALPROPERTIES_OPTIONALBOOLEANDATATYPE ),
+                    BooleanValue.TRUE,
+                    "wrong BooleanValue" );
+        }
+    }
+
+    /**
+     * Find the MeshObject for the feed entry with a given id.
+     *
+     * @param home the home object of the feed
+     * @param id the id of the entry
+     * @return the found MeshObject, or null
+     */
+    protected MeshObject findEntry(
+            MeshObject   home,
+            final String id )
+    {
+        MeshObject ret = home.traverseToNeighborMeshObjects().find( new MeshObjectSelector() {
+                public boolean accepts(
+                        MeshObject candidate )
+                {
+                    return candidate.getIdentifier().toExternalForm().endsWith( id );
+                }
+        });
+        return ret;
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        AtomTest3 test = null;
+        try {
+            if( args.length != 1 ) {
+                System.err.println( "Synopsis: <test file>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new AtomTest3( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args the command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    public AtomTest3(
+            String [] args )
+        throws
+            Exception
+    {
+        super( AtomTest3.class );
+
+        testFile1   = args[0];
+        testFile1Id = theMeshBaseIdentifierFactory.obtain( new File( testFile1 ) );
+
+        theProbeDirectory.addXmlStreamProbe( new ProbeDirectory.XmlStreamProbeDescriptor( null, "http://www.w3.org/2005/Atom", "feed", AtomProbe.class ));
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( AtomTest3.class);
+
+    /**
+     * File name of the first test file.
+     */
+    protected String testFile1;
+
+    /**
+     * The NetworkIdentifer of the first test file.
+     */
+    protected NetMeshBaseIdentifier testFile1Id;
+}
@@ -128,7 +128,7 @@ public class RssTest1
         testFile1   = args[0];
         testFile1Id = theMeshBaseIdentifierFactory.obtain( new File( testFile1 ) );
 
-        theProbeDirectory.addXmlDomProbe( new ProbeDirectory.XmlDomProbeDescriptor( null, null, "rss", RssProbe.class ));
+        theProbeDirectory.addXmlStreamProbe( new ProbeDirectory.XmlStreamProbeDescriptor( null, null, "rss", RssProbe.class ));
     }
 
     // Our Logger
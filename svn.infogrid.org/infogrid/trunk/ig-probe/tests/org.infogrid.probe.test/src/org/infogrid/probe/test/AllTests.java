@@ -75,6 +75,25 @@ public class AllTests
 //                       ProbeTest9a.class ),
 //               new TestSpec(
 //                       ProbeTest9b.class )
+
+                new TestSpec(
+                        ProbeTest10.class,
+                        AbstractTest.fileSystemFileName( ProbeTest10.class, "ProbeTest10.xml" )),
+
+                new TestSpec(
+                        ProbeTest11.class,
+                        AbstractTest.fileSystemFileName( ProbeTest11.class, "ProbeTest11_1.xml" ),
+                        AbstractTest.fileSystemFileName( ProbeTest11.class, "ProbeTest11_2.xml" )),
+
+                new TestSpec(
+                        ProbeTest12.class,
+                        AbstractTest.fileSystemFileName( ProbeTest12.class, "ProbeTest12_1.xml" ),
+                        AbstractTest.fileSystemFileName( ProbeTest12.class, "ProbeTest12_2.xml" ),
+                        AbstractTest.fileSystemFileName( ProbeTest12.class, "ProbeTest12_3.xml" )),
+
+                new TestSpec(
+                        ProbeTest13.class,
+                        AbstractTest.fileSystemFileName( ProbeTest13.class, "ProbeTest13.xml" ))
         };
 
         runTests( tests );
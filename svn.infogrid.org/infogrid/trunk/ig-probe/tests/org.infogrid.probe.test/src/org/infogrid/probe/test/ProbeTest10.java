@@ -0,0 +1,192 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.test;
+
+import java.io.File;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.meshbase.net.CoherenceSpecification;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.proxy.m.MPingPongNetMessageEndpointFactory;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.probe.m.MProbeDirectory;
+import org.infogrid.probe.manager.PassiveProbeManager;
+import org.infogrid.probe.manager.m.MPassiveProbeManager;
+import org.infogrid.probe.shadow.ShadowMeshBase;
+import org.infogrid.probe.shadow.m.MShadowMeshBaseFactory;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that the native MeshObjectSet format, read as a stream, resolves variables and
+ * relationships that refer to MeshObjects further down in the file.
+ */
+public class ProbeTest10
+        extends
+            AbstractProbeTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may happen during a test
+     */
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "accessing test file with meshBase" );
+
+        ShadowMeshBase meshBase1 = theProbeManager1.obtainFor( testFile1Id, CoherenceSpecification.ONE_TIME_ONLY );
+
+        checkObject( meshBase1, "could not find meshBase1" );
+        dumpMeshBase( meshBase1, "meshBase1", log );
+
+        //
+
+        log.info( "checking MeshObjects" );
+
+        String otherPrefix = theMeshBaseIdentifierFactory.obtain( new File( new File( testFile1 ).getParentFile(), "ProbeTest1.xml" )).getCanonicalForm();
+
+        MeshObject home = meshBase1.getHomeObject();
+        MeshObject late = meshBase1.findMeshObjectByIdentifier(
+                meshBase1.getMeshObjectIdentifierFactory().fromExternalForm( testFile1Id.getCanonicalForm() + "#late" ));
+        MeshObject def  = meshBase1.findMeshObjectByIdentifier(
+                meshBase1.getMeshObjectIdentifierFactory().fromExternalForm( otherPrefix + "#def" ));
+        MeshObject ghi  = meshBase1.findMeshObjectByIdentifier(
+                meshBase1.getMeshObjectIdentifierFactory().fromExternalForm( otherPrefix + "#ghi" ));
+
+        checkEquals( meshBase1.size(), 4, "wrong number of MeshObjects" );
+        checkObject( late, "MeshObject after its relationship not found" );
+        checkObject( def,  "MeshObject with variable not found" );
+        checkObject( ghi,  "MeshObject with variable defined further down not found" );
+
+        //
+
+        log.info( "checking relationships" );
+
+        if( late != null ) {
+            checkEquals( late.getPropertyValue( TestSubjectArea.A_X ), "late", "wrong property value" );
+            checkCondition( home.isRelated( TestSubjectArea.AR1A.getSource(), late ), "not related to MeshObject further down" );
+        }
+        if( def != null ) {
+            checkCondition( home.isRelated( TestSubjectArea.AR1A.getSource(), def ), "not related to MeshObject with variable" );
+        }
+        if( ghi != null ) {
+            checkCondition( ghi.isBlessedBy( TestSubjectArea.B ), "not blessed" );
+            checkEquals( ghi.traverseToNeighborMeshObjects().size(), 0, "wrong number of neighbors" );
+        }
+        checkEquals( home.traverseToNeighborMeshObjects().size(), 2, "wrong number of neighbors of home object" );
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        ProbeTest10 test = null;
+        try {
+            if( args.length != 1 ) {
+                System.err.println( "Synopsis: <test file>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new ProbeTest10( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args the command-line arguments
+     * @throws Exception all sorts of things may happen during a test
+     */
+    public ProbeTest10(
+            String [] args )
+        throws
+            Exception
+    {
+        super( ProbeTest10.class );
+
+        testFile1   = args[0];
+        testFile1Id = theMeshBaseIdentifierFactory.obtain( new File( testFile1 ) );
+
+        MPingPongNetMessageEndpointFactory shadowEndpointFactory = MPingPongNetMessageEndpointFactory.create( exec );
+
+        MShadowMeshBaseFactory theShadowFactory = MShadowMeshBaseFactory.create(
+                theMeshBaseIdentifierFactory,
+                shadowEndpointFactory,
+                theModelBase,
+                rootContext );
+
+        theProbeManager1 = MPassiveProbeManager.create( theShadowFactory, theProbeDirectory );
+        shadowEndpointFactory.setNameServer( theProbeManager1.getNetMeshBaseNameServer() );
+        theShadowFactory.setProbeManager( theProbeManager1 );
+    }
+
+    /**
+     * Clean up after the test.
+     */
+    @Override
+    public void cleanup()
+    {
+        theProbeManager1 = null;
+        exec.shutdown();
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( ProbeTest10.class);
+
+    /**
+     * Our ThreadPool.
+     */
+    protected ScheduledExecutorService exec = createThreadPool( 1 );
+
+    /**
+     * File name of the test file.
+     */
+    protected String testFile1;
+
+    /**
+     * The NetworkIdentifer of the test file.
+     */
+    protected NetMeshBaseIdentifier testFile1Id;
+
+    /**
+     * The ProbeManager that we use.
+     */
+    protected PassiveProbeManager theProbeManager1;
+
+    /**
+     * The ProbeDirectory to use.
+     */
+    protected MProbeDirectory theProbeDirectory = MProbeDirectory.create();
+}
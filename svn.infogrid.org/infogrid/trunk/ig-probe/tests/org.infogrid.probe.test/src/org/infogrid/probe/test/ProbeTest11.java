@@ -0,0 +1,276 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.test;
+
+import java.io.File;
+import java.util.concurrent.ScheduledExecutorService;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.infogrid.mesh.EntityBlessedAlreadyException;
+import org.infogrid.mesh.IllegalPropertyTypeException;
+import org.infogrid.mesh.IllegalPropertyValueException;
+import org.infogrid.mesh.IsAbstractException;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.NotPermittedException;
+import org.infogrid.meshbase.net.CoherenceSpecification;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.proxy.m.MPingPongNetMessageEndpointFactory;
+import org.infogrid.meshbase.transaction.TransactionException;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.probe.ProbeDirectory;
+import org.infogrid.probe.StagingMeshBase;
+import org.infogrid.probe.m.MProbeDirectory;
+import org.infogrid.probe.manager.PassiveProbeManager;
+import org.infogrid.probe.manager.m.MPassiveProbeManager;
+import org.infogrid.probe.shadow.ShadowMeshBase;
+import org.infogrid.probe.shadow.m.MShadowMeshBaseFactory;
+import org.infogrid.probe.xml.XmlDOMProbe;
+import org.infogrid.probe.xml.XmlStreamProbe;
+import org.infogrid.probe.xml.XmlStreamProbeUtils;
+import org.infogrid.util.logging.Log;
+import org.w3c.dom.Document;
+
+/**
+ * Tests that XML is handed to an XmlStreamProbe if one has been registered for it, and
+ * that a DOM is built for an XmlDOMProbe if no XmlStreamProbe matches.
+ */
+public class ProbeTest11
+        extends
+            AbstractProbeTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may happen during a test
+     */
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "accessing file for which only an XmlDOMProbe is registered" );
+
+        ShadowMeshBase meshBase1 = theProbeManager1.obtainFor( testFile1Id, CoherenceSpecification.ONE_TIME_ONLY );
+
+        checkObject( meshBase1, "could not find meshBase1" );
+        dumpMeshBase( meshBase1, "meshBase1", log );
+
+        MeshObject home1 = meshBase1.getHomeObject();
+        checkCondition( home1.isBlessedBy( TestSubjectArea.AA ), "home object not blessed" );
+        checkEquals( home1.getPropertyValue( TestSubjectArea.A_X ), "dom: Hello", "wrong Probe or content" );
+
+        //
+
+        log.info( "accessing file for which an XmlStreamProbe is registered" );
+
+        ShadowMeshBase meshBase2 = theProbeManager1.obtainFor( testFile2Id, CoherenceSpecification.ONE_TIME_ONLY );
+
+        checkObject( meshBase2, "could not find meshBase2" );
+        dumpMeshBase( meshBase2, "meshBase2", log );
+
+        MeshObject home2 = meshBase2.getHomeObject();
+        checkCondition( home2.isBlessedBy( TestSubjectArea.AA ), "home object not blessed" );
+        checkEquals( home2.getPropertyValue( TestSubjectArea.A_X ), "stream: Bye", "wrong Probe or content" );
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        ProbeTest11 test = null;
+        try {
+            if( args.length != 2 ) {
+                System.err.println( "Synopsis: <test file for DOM> <test file for stream>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new ProbeTest11( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args the command-line arguments
+     * @throws Exception all sorts of things may happen during a test
+     */
+    public ProbeTest11(
+            String [] args )
+        throws
+            Exception
+    {
+        super( ProbeTest11.class );
+
+        testFile1Id = theMeshBaseIdentifierFactory.obtain( new File( args[0] ) );
+        testFile2Id = theMeshBaseIdentifierFactory.obtain( new File( args[1] ) );
+
+        theProbeDirectory.addXmlDomProbe(    new ProbeDirectory.XmlDomProbeDescriptor(    null, NAMESPACE, "Greeting", TestDomProbe.class ));
+        theProbeDirectory.addXmlStreamProbe( new ProbeDirectory.XmlStreamProbeDescriptor( null, NAMESPACE, "Farewell", TestStreamProbe.class ));
+
+        MPingPongNetMessageEndpointFactory shadowEndpointFactory = MPingPongNetMessageEndpointFactory.create( exec );
+
+        MShadowMeshBaseFactory theShadowFactory = MShadowMeshBaseFactory.create(
+                theMeshBaseIdentifierFactory,
+                shadowEndpointFactory,
+                theModelBase,
+                rootContext );
+
+        theProbeManager1 = MPassiveProbeManager.create( theShadowFactory, theProbeDirectory );
+        shadowEndpointFactory.setNameServer( theProbeManager1.getNetMeshBaseNameServer() );
+        theShadowFactory.setProbeManager( theProbeManager1 );
+    }
+
+    /**
+     * Clean up after the test.
+     */
+    @Override
+    public void cleanup()
+    {
+        theProbeManager1 = null;
+        exec.shutdown();
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( ProbeTest11.class);
+
+    /**
+     * Our ThreadPool.
+     */
+    protected ScheduledExecutorService exec = createThreadPool( 1 );
+
+    /**
+     * The NetworkIdentifer of the test file for the XmlDOMProbe.
+     */
+    protected NetMeshBaseIdentifier testFile1Id;
+
+    /**
+     * The NetworkIdentifer of the test file for the XmlStreamProbe.
+     */
+    protected NetMeshBaseIdentifier testFile2Id;
+
+    /**
+     * The ProbeManager that we use.
+     */
+    protected PassiveProbeManager theProbeManager1;
+
+    /**
+     * The ProbeDirectory to use.
+     */
+    protected MProbeDirectory theProbeDirectory = MProbeDirectory.create();
+
+    /**
+     * XML namespace of the test files.
+     */
+    public static final String NAMESPACE = "http://infogrid.org/test/ProbeTest11";
+
+    /**
+     * Helper to bless the home object and record which Probe ran.
+     *
+     * @param freshMeshBase the StagingMeshBase
+     * @param value the value to record
+     * @throws EntityBlessedAlreadyException should not happen
+     * @throws IllegalPropertyTypeException should not happen
+     * @throws IllegalPropertyValueException should not happen
+     * @throws IsAbstractException should not happen
+     * @throws NotPermittedException should not happen
+     * @throws TransactionException should not happen
+     */
+    protected static void record(
+            StagingMeshBase freshMeshBase,
+            String          value )
+        throws
+            EntityBlessedAlreadyException,
+            IllegalPropertyTypeException,
+            IllegalPropertyValueException,
+            IsAbstractException,
+            NotPermittedException,
+            TransactionException
+    {
+        MeshObject home = freshMeshBase.getHomeObject();
+        home.bless( TestSubjectArea.AA );
+        home.setPropertyValue( TestSubjectArea.A_X, StringValue.create( value ));
+    }
+
+    /**
+     * The test XmlDOMProbe.
+     */
+    public static class TestDomProbe
+            implements
+                XmlDOMProbe
+    {
+        public void parseDocument(
+                NetMeshBaseIdentifier  dataSourceIdentifier,
+                CoherenceSpecification coherenceSpecification,
+                byte []                documentBytes,
+                String                 documentMime,
+                Document               theDocument,
+                StagingMeshBase        freshMeshBase )
+            throws
+                EntityBlessedAlreadyException,
+                IllegalPropertyTypeException,
+                IllegalPropertyValueException,
+                IsAbstractException,
+                NotPermittedException,
+                TransactionException
+        {
+            record( freshMeshBase, "dom: " + theDocument.getDocumentElement().getTextContent() );
+        }
+    }
+
+    /**
+     * The test XmlStreamProbe.
+     */
+    public static class TestStreamProbe
+            implements
+                XmlStreamProbe
+    {
+        public void parseDocument(
+                NetMeshBaseIdentifier  dataSourceIdentifier,
+                CoherenceSpecification coherenceSpecification,
+                String                 documentMime,
+                XMLStreamReader        reader,
+                StagingMeshBase        freshMeshBase )
+            throws
+                EntityBlessedAlreadyException,
+                IllegalPropertyTypeException,
+                IllegalPropertyValueException,
+                IsAbstractException,
+                NotPermittedException,
+                TransactionException,
+                XMLStreamException
+        {
+            record( freshMeshBase, "stream: " + XmlStreamProbeUtils.getTextContent( reader ));
+        }
+    }
+}
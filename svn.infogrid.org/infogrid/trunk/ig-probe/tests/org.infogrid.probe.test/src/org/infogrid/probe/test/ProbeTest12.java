@@ -0,0 +1,219 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.test;
+
+import java.io.File;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.meshbase.net.CoherenceSpecification;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.proxy.m.MPingPongNetMessageEndpointFactory;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.BooleanValue;
+import org.infogrid.model.primitives.ExtentValue;
+import org.infogrid.model.primitives.IntegerValue;
+import org.infogrid.model.primitives.PointValue;
+import org.infogrid.probe.ProbeException;
+import org.infogrid.probe.m.MProbeDirectory;
+import org.infogrid.probe.manager.PassiveProbeManager;
+import org.infogrid.probe.manager.m.MPassiveProbeManager;
+import org.infogrid.probe.shadow.ShadowMeshBase;
+import org.infogrid.probe.shadow.m.MShadowMeshBaseFactory;
+import org.infogrid.util.FactoryException;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that the native MeshObjectSet format reads BooleanValues, EnumeratedValues, PointValues
+ * and ExtentValues correctly, and rejects incomplete PointValues and ExtentValues.
+ */
+public class ProbeTest12
+        extends
+            AbstractProbeTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may happen during a test
+     */
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "accessing test file with PropertyValues" );
+
+        ShadowMeshBase meshBase1 = theProbeManager1.obtainFor( testFile1Id, CoherenceSpecification.ONE_TIME_ONLY );
+
+        checkObject( meshBase1, "could not find meshBase1" );
+        dumpMeshBase( meshBase1, "meshBase1", log );
+
+        MeshObject home = meshBase1.getHomeObject();
+
+        checkCondition( home.isBlessedBy( TestSubjectArea.OPTIONALPROPERTIES ), "home object not blessed" );
+        checkEquals( home.getPropertyValue( TestSubjectArea.OPTIONALPROPERTIES_OPTIONALENUMERATEDDATATYPE ),
+                TestSubjectArea.OPTIONALPROPERTIES_OPTIONALENUMERATEDDATATYPE_type_VALUE2,
+                "wrong EnumeratedValue" );
+        checkEquals( home.getPropertyValue( TestSubjectArea.OPTIONALPROPERTIES_OPTIONALBOOLEANDATATYPE ),
+                BooleanValue.FALSE,
+                "wrong BooleanValue" );
+        checkEquals( home.getPropertyValue( TestSubjectArea.OPTIONALPROPERTIES_OPTIONALPOINTDATATYPE ),
+                PointValue.create( 1.5, 2.5 ),
+                "wrong PointValue" );
+        checkEquals( home.getPropertyValue( TestSubjectArea.OPTIONALPROPERTIES_OPTIONALEXTENTDATATYPE ),
+                ExtentValue.create( 3.0, 4.0 ),
+                "wrong ExtentValue" );
+        checkEquals( home.getPropertyValue( TestSubjectArea.OPTIONALPROPERTIES_OPTIONALINTEGERDATATYPE ),
+                IntegerValue.create( 42 ),
+                "wrong IntegerValue" );
+
+        //
+
+        log.info( "accessing test file with PointValue without y" );
+
+        checkSyntaxError( testFile2Id, "PointValue without y not detected" );
+
+        //
+
+        log.info( "accessing test file with ExtentValue without height" );
+
+        checkSyntaxError( testFile3Id, "ExtentValue without height not detected" );
+    }
+
+    /**
+     * Access a data source, and check that reading it failed with a syntax error.
+     *
+     * @param id identifies the data source
+     * @param msg the message to emit if there was no syntax error
+     */
+    protected void checkSyntaxError(
+            NetMeshBaseIdentifier id,
+            String                msg )
+    {
+        try {
+            theProbeManager1.obtainFor( id, CoherenceSpecification.ONE_TIME_ONLY );
+
+            checkCondition( false, msg );
+
+        } catch( FactoryException ex ) {
+            checkCondition( ex.getCause() instanceof ProbeException.SyntaxError, msg + ": " + ex.getCause() );
+        }
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        ProbeTest12 test = null;
+        try {
+            if( args.length != 3 ) {
+                System.err.println( "Synopsis: <test file> <test file without y> <test file without height>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new ProbeTest12( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args the command-line arguments
+     * @throws Exception all sorts of things may happen during a test
+     */
+    public ProbeTest12(
+            String [] args )
+        throws
+            Exception
+    {
+        super( ProbeTest12.class );
+
+        testFile1Id = theMeshBaseIdentifierFactory.obtain( new File( args[0] ) );
+        testFile2Id = theMeshBaseIdentifierFactory.obtain( new File( args[1] ) );
+        testFile3Id = theMeshBaseIdentifierFactory.obtain( new File( args[2] ) );
+
+        MPingPongNetMessageEndpointFactory shadowEndpointFactory = MPingPongNetMessageEndpointFactory.create( exec );
+
+        MShadowMeshBaseFactory theShadowFactory = MShadowMeshBaseFactory.create(
+                theMeshBaseIdentifierFactory,
+                shadowEndpointFactory,
+                theModelBase,
+                rootContext );
+
+        theProbeManager1 = MPassiveProbeManager.create( theShadowFactory, theProbeDirectory );
+        shadowEndpointFactory.setNameServer( theProbeManager1.getNetMeshBaseNameServer() );
+        theShadowFactory.setProbeManager( theProbeManager1 );
+    }
+
+    /**
+     * Clean up after the test.
+     */
+    @Override
+    public void cleanup()
+    {
+        theProbeManager1 = null;
+        exec.shutdown();
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( ProbeTest12.class);
+
+    /**
+     * Our ThreadPool.
+     */
+    protected ScheduledExecutorService exec = createThreadPool( 1 );
+
+    /**
+     * The NetworkIdentifer of the test file with the PropertyValues.
+     */
+    protected NetMeshBaseIdentifier testFile1Id;
+
+    /**
+     * The NetworkIdentifer of the test file with the PointValue without y.
+     */
+    protected NetMeshBaseIdentifier testFile2Id;
+
+    /**
+     * The NetworkIdentifer of the test file with the ExtentValue without height.
+     */
+    protected NetMeshBaseIdentifier testFile3Id;
+
+    /**
+     * The ProbeManager that we use.
+     */
+    protected PassiveProbeManager theProbeManager1;
+
+    /**
+     * The ProbeDirectory to use.
+     */
+    protected MProbeDirectory theProbeDirectory = MProbeDirectory.create();
+}
@@ -19,7 +19,12 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import org.infogrid.store.AbstractIterableStore;
 import org.infogrid.store.StoreKeyDoesNotExistException;
 import org.infogrid.store.StoreKeyExistsAlreadyException;
@@ -57,7 +62,8 @@ public class FilesystemStore
         return new FilesystemStore(
                 subDir,
                 SubdirectoryKeyFileMapper.create( subDir ),
-                SimpleStoreValueMapper.create() );
+                SimpleStoreValueMapper.create(),
+                null );
     }
 
     /**
@@ -73,7 +79,25 @@ public class FilesystemStore
             KeyFileMapper    keyMapper,
             StoreValueMapper storeValueMapper )
     {
-        return new FilesystemStore( subDir, keyMapper, storeValueMapper );
+        return new FilesystemStore( subDir, keyMapper, storeValueMapper, null );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param subDir the subdirectory in the file system that becomes the top mapping directory
+     * @param keyMapper maps Store keys into file system paths
+     * @param storeValueMapper maps StoreValues to file content, and vice versa
+     * @param readExecutor reads files in parallel when several data elements are obtained at the same time
+     * @return the created FilesystemStore
+     */
+    public static FilesystemStore create(
+            File             subDir,
+            KeyFileMapper    keyMapper,
+            StoreValueMapper storeValueMapper,
+            ExecutorService  readExecutor )
+    {
+        return new FilesystemStore( subDir, keyMapper, storeValueMapper, readExecutor );
     }
 
     /**
@@ -82,15 +106,18 @@ public class FilesystemStore
      * @param subDir the subdirectory in the file system that becomes the top mapping directory
      * @param keyMapper maps Store keys into file system paths
      * @param storeValueMapper maps StoreValues to file content, and vice versa
+     * @param readExecutor reads files in parallel when several data elements are obtained at the same time, if any
      */
     protected FilesystemStore(
             File             subDir,
             KeyFileMapper    keyMapper,
-            StoreValueMapper storeValueMapper )
+            StoreValueMapper storeValueMapper,
+            ExecutorService  readExecutor )
     {
         theSubDir           = subDir;
         theKeyMapper        = keyMapper;
         theStoreValueMapper = storeValueMapper;
+        theReadExecutor     = readExecutor;
         
         if( log.isTraceEnabled() ) {
             log.traceMethodCallEntry( this, "constructor" );
@@ -275,6 +302,7 @@ public class FilesystemStore
             ret = file.exists();
             
             if( !ret ) {
+                file.getParentFile().mkdirs();
                 file.createNewFile();
             }
             OutputStream stream = new FileOutputStream( file );
@@ -333,6 +361,86 @@ public class FilesystemStore
         }
     }
     
+    /**
+     * Obtain several data elements and associated meta-data from the Store at the same time,
+     * given their keys. If this FilesystemStore has a read executor, the files are read in parallel.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @return the StoreValues stored in the Store for these keys, in the same sequence as the keys.
+     *         If there is no data element in the Store for a key, the corresponding entry is null
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public StoreValue [] getMultiple(
+            String [] keys )
+        throws
+            IOException
+    {
+        if( theReadExecutor == null || keys.length < 2 ) {
+            return super.getMultiple( keys );
+        }
+        if( log.isInfoEnabled() ) {
+            log.info( this + ".getMultiple( " + keys.length + " keys )" );
+        }
+
+        @SuppressWarnings( "unchecked" )
+        Future<StoreValue> [] futures = (Future<StoreValue> []) new Future<?>[ keys.length ];
+
+        for( int i=0 ; i<keys.length ; ++i ) {
+            final File file = theKeyMapper.keyToFile( keys[i] );
+
+            futures[i] = theReadExecutor.submit( new Callable<StoreValue>() {
+                    public StoreValue call()
+                        throws
+                            IOException
+                    {
+                        if( !file.exists()) {
+                            return null;
+                        }
+                        InputStream stream = new FileInputStream( file );
+                        try {
+                            return theStoreValueMapper.readStoreValue( stream );
+                        } finally {
+                            stream.close();
+                        }
+                    }
+            });
+        }
+
+        StoreValue [] ret = new StoreValue[ keys.length ];
+        try {
+            for( int i=0 ; i<keys.length ; ++i ) {
+                ret[i] = futures[i].get();
+            }
+
+        } catch( InterruptedException ex ) {
+            for( int i=0 ; i<futures.length ; ++i ) {
+                futures[i].cancel( true );
+            }
+            InterruptedIOException ex2 = new InterruptedIOException();
+            ex2.initCause( ex );
+            throw ex2;
+
+        } catch( ExecutionException ex ) {
+            for( int i=0 ; i<futures.length ; ++i ) {
+                futures[i].cancel( true );
+            }
+            if( ex.getCause() instanceof IOException ) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException( ex.getCause() );
+        }
+
+        for( int i=0 ; i<keys.length ; ++i ) {
+            if( ret[i] != null ) {
+                fireGetPerformed( ret[i] );
+            } else {
+                fireGetFailed( keys[i] );
+            }
+        }
+        return ret;
+    }
+
     /**
      * Delete the StoreValue that is stored using this key.
      *
@@ -362,6 +470,35 @@ public class FilesystemStore
         }
     }
 
+    /**
+     * Delete several data elements at the same time, given their keys.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @return for each key, in the same sequence: true if a data element was deleted, false if none existed
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public boolean [] deleteMultiple(
+            String [] keys )
+        throws
+            IOException
+    {
+        if( log.isInfoEnabled() ) {
+            log.info( this + ".deleteMultiple( " + keys.length + " keys )" );
+        }
+
+        boolean [] ret = new boolean[ keys.length ];
+        for( int i=0 ; i<keys.length ; ++i ) {
+            File file = theKeyMapper.keyToFile( keys[i] );
+
+            ret[i] = file.exists() && file.delete();
+            if( ret[i] ) {
+                fireDeletePerformed( keys[i] );
+            }
+        }
+        return ret;
+    }
+
     /**
      * Remove all data in this Store whose key starts with this string.
      *
@@ -491,4 +628,9 @@ public class FilesystemStore
      * Maps StoreValues to file content, and vice versa.
      */
     protected StoreValueMapper theStoreValueMapper;
+
+    /**
+     * Reads files in parallel when several data elements are obtained at the same time, if any.
+     */
+    protected ExecutorService theReadExecutor;
 }
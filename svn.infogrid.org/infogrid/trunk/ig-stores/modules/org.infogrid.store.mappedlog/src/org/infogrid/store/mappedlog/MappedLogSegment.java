@@ -0,0 +1,396 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.mappedlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+
+/**
+ * <p>One file of the log kept by a {@link MappedLogStore}. The file has a fixed size and
+ *    is mapped into memory in its entirety. Records are appended one after the other, and
+ *    never modified afterwards. Each record consists of the length of its body, a CRC32
+ *    checksum of its body, and the body itself. The unused remainder of the file is zero,
+ *    so a body length of zero marks the end of the log in this segment.</p>
+ * <p>Appending requires external synchronization. Reading does not, as it only uses
+ *    absolute positions in the mapped buffer.</p>
+ */
+public class MappedLogSegment
+        implements
+            CanBeDumped
+{
+    /**
+     * Factory method to create a new, empty segment file.
+     *
+     * @param file the file to create
+     * @param number the sequence number of this segment in the log
+     * @param capacity the size of the file
+     * @return the created MappedLogSegment
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public static MappedLogSegment create(
+            File file,
+            int  number,
+            int  capacity )
+        throws
+            IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try {
+            raf.setLength( capacity );
+
+            MappedByteBuffer buffer = raf.getChannel().map( FileChannel.MapMode.READ_WRITE, 0, capacity );
+            return new MappedLogSegment( file, number, buffer );
+
+        } finally {
+            raf.close(); // the mapping stays valid
+        }
+    }
+
+    /**
+     * Factory method to open an existing segment file.
+     *
+     * @param file the file to open
+     * @param number the sequence number of this segment in the log
+     * @return the created MappedLogSegment
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public static MappedLogSegment open(
+            File file,
+            int  number )
+        throws
+            IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try {
+            long length = raf.length();
+            if( length > Integer.MAX_VALUE ) {
+                throw new IOException( "Segment file too large: " + file.getAbsolutePath() );
+            }
+
+            MappedByteBuffer buffer = raf.getChannel().map( FileChannel.MapMode.READ_WRITE, 0, length );
+            return new MappedLogSegment( file, number, buffer );
+
+        } finally {
+            raf.close(); // the mapping stays valid
+        }
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param file the segment file
+     * @param number the sequence number of this segment in the log
+     * @param buffer the buffer into which the file has been mapped
+     */
+    protected MappedLogSegment(
+            File             file,
+            int              number,
+            MappedByteBuffer buffer )
+    {
+        theFile     = file;
+        theNumber   = number;
+        theBuffer   = buffer;
+        theCapacity = buffer.capacity();
+    }
+
+    /**
+     * Obtain the segment file.
+     *
+     * @return the file
+     */
+    public File getFile()
+    {
+        return theFile;
+    }
+
+    /**
+     * Obtain the sequence number of this segment in the log.
+     *
+     * @return the sequence number
+     */
+    public int getNumber()
+    {
+        return theNumber;
+    }
+
+    /**
+     * Obtain the size of the segment file.
+     *
+     * @return the size, in bytes
+     */
+    public int getCapacity()
+    {
+        return theCapacity;
+    }
+
+    /**
+     * Obtain the position after the last record in this segment.
+     *
+     * @return the position
+     */
+    public int getEnd()
+    {
+        return theEnd;
+    }
+
+    /**
+     * Set the position after the last record in this segment. This is only used during recovery.
+     *
+     * @param newValue the new position
+     */
+    void setEnd(
+            int newValue )
+    {
+        theEnd = newValue;
+    }
+
+    /**
+     * Obtain the number of bytes in this segment that hold records still referenced by the index.
+     *
+     * @return the number of bytes
+     */
+    public int getLiveBytes()
+    {
+        return theLiveBytes;
+    }
+
+    /**
+     * Adjust the number of bytes in this segment that hold records still referenced by the index.
+     *
+     * @param delta the number of bytes to add, or subtract if negative
+     */
+    void addLiveBytes(
+            int delta )
+    {
+        theLiveBytes += delta;
+    }
+
+    /**
+     * Determine whether a record of this length can still be appended to this segment.
+     *
+     * @param length the length of the record, including its header
+     * @return true if it fits
+     */
+    public boolean canAppend(
+            int length )
+    {
+        return theEnd + length <= theCapacity;
+    }
+
+    /**
+     * Append a record, including its header, at the end of this segment.
+     *
+     * @param record the record
+     * @return the position of the record in this segment
+     */
+    public int append(
+            byte [] record )
+    {
+        int ret = theEnd;
+
+        ByteBuffer target = theBuffer.duplicate();
+        target.position( ret );
+        target.put( record );
+
+        theEnd += record.length;
+        return ret;
+    }
+
+    /**
+     * Check whether there is a valid record at this position.
+     *
+     * @param offset the position
+     * @return the length of the record, including its header, if it is valid; 0 if the log
+     *         ends at this position; -1 if the data at this position is incomplete or corrupted
+     */
+    public int checkRecord(
+            int offset )
+    {
+        if( offset + HEADER_LENGTH > theCapacity ) {
+            return 0;
+        }
+        int bodyLength = theBuffer.getInt( offset );
+        if( bodyLength == 0 ) {
+            return 0;
+        }
+        if( bodyLength < 0 || bodyLength > theCapacity - offset - HEADER_LENGTH ) {
+            return -1;
+        }
+        byte [] body = readBytes( offset + HEADER_LENGTH, bodyLength );
+
+        CRC32 crc = new CRC32();
+        crc.update( body, 0, body.length );
+
+        if( (int) crc.getValue() != theBuffer.getInt( offset + 4 )) {
+            return -1;
+        }
+        return HEADER_LENGTH + bodyLength;
+    }
+
+    /**
+     * Obtain the length of the record at this position, including its header.
+     *
+     * @param offset the position of the record
+     * @return the length
+     */
+    public int getRecordLength(
+            int offset )
+    {
+        return HEADER_LENGTH + theBuffer.getInt( offset );
+    }
+
+    /**
+     * Read the body of the record at this position.
+     *
+     * @param offset the position of the record
+     * @return the body
+     * @throws IOException thrown if the position does not hold a record
+     */
+    public byte [] readBody(
+            int offset )
+        throws
+            IOException
+    {
+        int bodyLength = theBuffer.getInt( offset );
+        if( bodyLength <= 0 || bodyLength > theCapacity - offset - HEADER_LENGTH ) {
+            throw new IOException( "No record at position " + offset + " in " + theFile.getAbsolutePath() );
+        }
+        return readBytes( offset + HEADER_LENGTH, bodyLength );
+    }
+
+    /**
+     * Read the record at this position, including its header.
+     *
+     * @param offset the position of the record
+     * @return the record
+     */
+    public byte [] readRecord(
+            int offset )
+    {
+        return readBytes( offset, getRecordLength( offset ));
+    }
+
+    /**
+     * Overwrite the rest of this segment with zeros, starting at this position. This is used
+     * during recovery to get rid of an incompletely written record.
+     *
+     * @param offset the position
+     */
+    void clearFrom(
+            int offset )
+    {
+        byte [] zeros = new byte[ Math.min( 8192, theCapacity - offset ) ];
+
+        ByteBuffer target = theBuffer.duplicate();
+        target.position( offset );
+        while( target.hasRemaining() ) {
+            target.put( zeros, 0, Math.min( zeros.length, target.remaining() ));
+        }
+    }
+
+    /**
+     * Write changes to this segment to the storage device.
+     */
+    public void force()
+    {
+        theBuffer.force();
+    }
+
+    /**
+     * Read a number of bytes at this position.
+     *
+     * @param offset the position
+     * @param length the number of bytes
+     * @return the bytes
+     */
+    protected byte [] readBytes(
+            int offset,
+            int length )
+    {
+        byte [] ret = new byte[ length ];
+
+        ByteBuffer source = theBuffer.duplicate();
+        source.position( offset );
+        source.get( ret );
+
+        return ret;
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "file",
+                    "capacity",
+                    "end",
+                    "liveBytes"
+                },
+                new Object[] {
+                    theFile,
+                    theCapacity,
+                    theEnd,
+                    theLiveBytes
+                });
+    }
+
+    /**
+     * The segment file.
+     */
+    protected final File theFile;
+
+    /**
+     * The sequence number of this segment in the log.
+     */
+    protected final int theNumber;
+
+    /**
+     * The buffer into which the file has been mapped.
+     */
+    protected final MappedByteBuffer theBuffer;
+
+    /**
+     * The size of the segment file.
+     */
+    protected final int theCapacity;
+
+    /**
+     * The position after the last record. Guarded by the write lock of the MappedLogStore.
+     */
+    protected int theEnd;
+
+    /**
+     * The number of bytes that hold records still referenced by the index. Guarded by the
+     * write lock of the MappedLogStore.
+     */
+    protected int theLiveBytes;
+
+    /**
+     * The length of the header in front of each record: body length and checksum.
+     */
+    public static final int HEADER_LENGTH = 8;
+}
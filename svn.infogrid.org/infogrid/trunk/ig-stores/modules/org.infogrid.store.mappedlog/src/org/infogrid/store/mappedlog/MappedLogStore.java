@@ -0,0 +1,1185 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.mappedlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import org.infogrid.store.AbstractIterableStore;
+import org.infogrid.store.StoreKeyDoesNotExistException;
+import org.infogrid.store.StoreKeyExistsAlreadyException;
+import org.infogrid.store.StoreValue;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Implementation of the Store interface as an append-only log in the local file system.
+ *    The log consists of a sequence of {@link MappedLogSegment MappedLogSegments} of
+ *    fixed size, each of which is mapped into memory. Puts, updates and deletes append a
+ *    record to the current segment; nothing is ever overwritten. An in-memory index
+ *    maps each key to the position of its most recent record, so reads do not touch the
+ *    file system and do not need to obtain any lock.</p>
+ * <p>Segments that mostly contain records that have been superseded are compacted: the
+ *    records still referenced by the index are appended again to the current segment,
+ *    and the old segment file is deleted. If a compaction ExecutorService is given, this
+ *    happens in the background whenever a new segment is started; otherwise only when
+ *    {@link #compact} is invoked.</p>
+ * <p>When the MappedLogStore is first used, the index is rebuilt by replaying all
+ *    segments in sequence. Each record carries a checksum, so a record that was written
+ *    incompletely because of a crash is detected and discarded.</p>
+ * <p>Written records are visible to the operating system immediately, so they survive
+ *    the process terminating. To make sure they survive the operating system terminating,
+ *    invoke {@link #flush}.</p>
+ */
+public class MappedLogStore
+        extends
+            AbstractIterableStore
+        implements
+            CanBeDumped
+{
+    private static final Log log = Log.getLogInstance( MappedLogStore.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param subDir the directory in the file system that holds the segment files
+     * @return the created MappedLogStore
+     */
+    public static MappedLogStore create(
+            File subDir )
+    {
+        return new MappedLogStore( subDir, DEFAULT_SEGMENT_SIZE, null );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param subDir the directory in the file system that holds the segment files
+     * @param segmentSize the size of each segment file, in bytes
+     * @param compactionExecutor compacts segments in the background, if given
+     * @return the created MappedLogStore
+     */
+    public static MappedLogStore create(
+            File            subDir,
+            int             segmentSize,
+            ExecutorService compactionExecutor )
+    {
+        if( segmentSize <= MappedLogSegment.HEADER_LENGTH ) {
+            throw new IllegalArgumentException( "Segment size too small: " + segmentSize );
+        }
+        return new MappedLogStore( subDir, segmentSize, compactionExecutor );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param subDir the directory in the file system that holds the segment files
+     * @param segmentSize the size of each segment file, in bytes
+     * @param compactionExecutor compacts segments in the background, if any
+     */
+    protected MappedLogStore(
+            File            subDir,
+            int             segmentSize,
+            ExecutorService compactionExecutor )
+    {
+        theSubDir             = subDir;
+        theSegmentSize        = segmentSize;
+        theCompactionExecutor = compactionExecutor;
+
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "constructor" );
+        }
+    }
+
+    /**
+     * Initialize the Store. If the Store was initialized earlier, this will delete all
+     * contained information. This operation is similar to unconditionally formatting a hard drive.
+     *
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void initializeHard()
+            throws
+                IOException
+    {
+        synchronized( theWriteLock ) {
+            theIndex.clear();
+            theSegments.clear();
+            theActiveSegment = null;
+            theIsOpen        = false;
+
+            if( !theSubDir.exists() ) {
+                theSubDir.mkdirs();
+
+            } else if( !theSubDir.isDirectory() ) {
+                throw new IOException( "Cannot initialize MappedLogStore at " + theSubDir.getAbsolutePath() + ": file is in the way" );
+
+            } else {
+                for( File current : findSegmentFiles().values() ) {
+                    if( !current.delete() ) {
+                        throw new IOException( "Unable to delete file " + current );
+                    }
+                }
+            }
+            theActiveSegment = createSegment( 1, theSegmentSize );
+            theIsOpen        = true;
+        }
+    }
+
+    /**
+     * Initialize the Store if needed. If the Store was initialized earlier, this will do
+     * nothing. This operation is equivalent to {@link #initializeHard} if and only if
+     * the Store had not been initialized earlier.
+     *
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void initializeIfNecessary()
+            throws
+                IOException
+    {
+        ensureOpen();
+    }
+
+    /**
+     * Obtain the directory in which the segment files are kept.
+     *
+     * @return the directory
+     */
+    public File getTopDirectory()
+    {
+        return theSubDir;
+    }
+
+    /**
+     * Put a data element into the Store for the first time. Throw an Exception if a data
+     * element has already been store using the same key.
+     *
+     * @param toStore the StoreValue to store
+     * @throws StoreKeyExistsAlreadyException thrown if a data element is already stored in the Store using this key
+     * @throws IOException thrown if an I/O error occurred
+     *
+     * @see #update if a data element with this key exists already
+     * @see #putOrUpdate if a data element with this key may exist already
+     */
+    public void put(
+            StoreValue toStore )
+        throws
+            StoreKeyExistsAlreadyException,
+            IOException
+    {
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "put", toStore );
+        }
+        ensureOpen();
+
+        try {
+            byte [] record = encodePut( toStore );
+
+            synchronized( theWriteLock ) {
+                if( theIndex.containsKey( toStore.getKey() )) {
+                    throw new StoreKeyExistsAlreadyException( this, toStore.getKey() );
+                }
+                appendPut( toStore.getKey(), record );
+            }
+
+        } finally {
+            firePutPerformed( toStore );
+        }
+    }
+
+    /**
+     * Update a data element that already exists in the Store, by overwriting it with a new value. Throw an
+     * Exception if a data element with this key does not exist already.
+     *
+     * @param toUpdate the StoreValue to update
+     * @throws StoreKeyDoesNotExistException thrown if no data element exists in the Store using this key
+     * @throws IOException thrown if an I/O error occurred
+     *
+     * @see #put if a data element with this key does not exist already
+     * @see #putOrUpdate if a data element with this key may exist already
+     */
+    public void update(
+            StoreValue toUpdate )
+        throws
+            StoreKeyDoesNotExistException,
+            IOException
+    {
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "update", toUpdate );
+        }
+        ensureOpen();
+
+        try {
+            byte [] record = encodePut( toUpdate );
+
+            synchronized( theWriteLock ) {
+                if( !theIndex.containsKey( toUpdate.getKey() )) {
+                    throw new StoreKeyDoesNotExistException( this, toUpdate.getKey() );
+                }
+                appendPut( toUpdate.getKey(), record );
+            }
+
+        } finally {
+            fireUpdatePerformed( toUpdate );
+        }
+    }
+
+    /**
+     * Put (if does not exist already) or update (if it does exist) a data element in the Store.
+     *
+     * @param toStoreOrUpdate the StoreValue to store or update
+     * @return true if the value was updated, false if it was put
+     * @throws IOException thrown if an I/O error occurred
+     *
+     * @see #put if a data element with this key does not exist already
+     * @see #update if a data element with this key exists already
+     */
+    public boolean putOrUpdate(
+            StoreValue toStoreOrUpdate )
+        throws
+            IOException
+    {
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "putOrUpdate", toStoreOrUpdate );
+        }
+        ensureOpen();
+
+        byte [] record = encodePut( toStoreOrUpdate );
+        boolean ret;
+
+        synchronized( theWriteLock ) {
+            ret = appendPut( toStoreOrUpdate.getKey(), record );
+        }
+
+        if( ret ) {
+            fireUpdatePerformed( toStoreOrUpdate );
+        } else {
+            firePutPerformed( toStoreOrUpdate );
+        }
+        return ret;
+    }
+
+    /**
+     * Put (if does not exist already) or update (if it does exist) several data elements in the
+     * Store at the same time. All records are appended while holding the write lock only once.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @return for each StoreValue, in the same sequence: true if the value was updated, false if it was put
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public boolean [] putOrUpdateMultiple(
+            StoreValue [] toStoreOrUpdate )
+        throws
+            IOException
+    {
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "putOrUpdateMultiple", toStoreOrUpdate.length );
+        }
+        ensureOpen();
+
+        byte [][] records = new byte[ toStoreOrUpdate.length ][];
+        for( int i=0 ; i<toStoreOrUpdate.length ; ++i ) {
+            records[i] = encodePut( toStoreOrUpdate[i] );
+        }
+
+        boolean [] ret = new boolean[ toStoreOrUpdate.length ];
+        synchronized( theWriteLock ) {
+            for( int i=0 ; i<toStoreOrUpdate.length ; ++i ) {
+                ret[i] = appendPut( toStoreOrUpdate[i].getKey(), records[i] );
+            }
+        }
+
+        for( int i=0 ; i<toStoreOrUpdate.length ; ++i ) {
+            if( ret[i] ) {
+                fireUpdatePerformed( toStoreOrUpdate[i] );
+            } else {
+                firePutPerformed( toStoreOrUpdate[i] );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain a data element and associated meta-data from the Store, given a key.
+     *
+     * @param key the key to the data element in the Store
+     * @return the StoreValue stored in the Store for this key; this encapsulates data element and meta-data
+     * @throws StoreKeyDoesNotExistException thrown if currently there is no data element in the Store using this key
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public StoreValue get(
+            String key )
+        throws
+            StoreKeyDoesNotExistException,
+            IOException
+    {
+        checkKey( key );
+        ensureOpen();
+
+        StoreValue ret = null;
+        try {
+            ret = findValue( key );
+
+            if( ret == null ) {
+                throw new StoreKeyDoesNotExistException( this, key );
+            }
+            return ret;
+
+        } finally {
+            if( ret != null ) {
+                fireGetPerformed( ret );
+            } else {
+                fireGetFailed( key );
+            }
+        }
+    }
+
+    /**
+     * Delete the StoreValue that is stored using this key.
+     *
+     * @param key the key to the data element in the Store
+     * @throws StoreKeyDoesNotExistException thrown if currently there is no data element in the Store using this key
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void delete(
+            String key )
+        throws
+            StoreKeyDoesNotExistException,
+            IOException
+    {
+        checkKey( key );
+
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "delete", key );
+        }
+        ensureOpen();
+
+        try {
+            byte [] record = encodeDelete( key );
+
+            synchronized( theWriteLock ) {
+                if( !theIndex.containsKey( key )) {
+                    throw new StoreKeyDoesNotExistException( this, key );
+                }
+                appendDelete( key, record );
+            }
+
+        } finally {
+            fireDeletePerformed( key );
+        }
+    }
+
+    /**
+     * Delete several data elements at the same time, given their keys. All records are appended
+     * while holding the write lock only once.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @return for each key, in the same sequence: true if a data element was deleted, false if none existed
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public boolean [] deleteMultiple(
+            String [] keys )
+        throws
+            IOException
+    {
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "deleteMultiple", keys.length );
+        }
+        ensureOpen();
+
+        boolean [] ret = new boolean[ keys.length ];
+        synchronized( theWriteLock ) {
+            for( int i=0 ; i<keys.length ; ++i ) {
+                if( theIndex.containsKey( keys[i] )) {
+                    appendDelete( keys[i], encodeDelete( keys[i] ));
+                    ret[i] = true;
+                }
+            }
+        }
+        for( int i=0 ; i<keys.length ; ++i ) {
+            if( ret[i] ) {
+                fireDeletePerformed( keys[i] );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Remove all data in this Store whose key starts with this string.
+     *
+     * @param startsWith the String the key starts with
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void deleteAll(
+            String startsWith )
+        throws
+            IOException
+    {
+        checkKey( startsWith );
+
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "deleteAll", startsWith );
+        }
+        ensureOpen();
+
+        synchronized( theWriteLock ) {
+            for( String key : findKeys( startsWith )) {
+                appendDelete( key, encodeDelete( key ));
+            }
+        }
+        fireDeleteAllPerformed( startsWith );
+    }
+
+    /**
+     * Obtain an Iterator over the content of this Store. The Iterator iterates over the
+     * keys that existed at the time it was created, in the sequence of the keys.
+     *
+     * @return the Iterator
+     */
+    public MappedLogStoreIterator iterator()
+    {
+        try {
+            ensureOpen();
+
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+        return MappedLogStoreIterator.create( this, findKeys( "" ));
+    }
+
+    /**
+     * Determine the number of StoreValues in this Store.
+     *
+     * @return the number of StoreValues in this Store
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public int size()
+        throws
+            IOException
+    {
+        ensureOpen();
+
+        return theIndex.size();
+    }
+
+    /**
+     * Determine the number of StoreValues in this Store whose key starts with this String.
+     *
+     * @param startsWith the String the key starts with
+     * @return the number of StoreValues in this Store whose key starts with this String
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public int size(
+            String startsWith )
+        throws
+            IOException
+    {
+        ensureOpen();
+
+        if( startsWith.length() == 0 ) {
+            return theIndex.size();
+        }
+        int ret = 0;
+        for( String key : theIndex.tailMap( startsWith ).keySet() ) {
+            if( !key.startsWith( startsWith )) {
+                break;
+            }
+            ++ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Write all changes to the storage device.
+     *
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void flush()
+        throws
+            IOException
+    {
+        ensureOpen();
+
+        for( MappedLogSegment current : theSegments.values() ) {
+            current.force();
+        }
+    }
+
+    /**
+     * Compact all segments that mostly contain records that have been superseded.
+     *
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void compact()
+        throws
+            IOException
+    {
+        ensureOpen();
+
+        synchronized( theCompactionLock ) {
+            for( MappedLogSegment current : findCompactionCandidates() ) {
+                compactSegment( current );
+            }
+        }
+    }
+
+    /**
+     * Obtain the number of segments currently in the log.
+     *
+     * @return the number of segments
+     */
+    public int getSegmentCount()
+    {
+        return theSegments.size();
+    }
+
+    /**
+     * Obtain the StoreValue for a key, without firing any events.
+     *
+     * @param key the key
+     * @return the StoreValue, or null if there is none
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected StoreValue findValue(
+            String key )
+        throws
+            IOException
+    {
+        while( true ) {
+            Long location = theIndex.get( key );
+            if( location == null ) {
+                return null;
+            }
+            MappedLogSegment segment = theSegments.get( segmentOf( location ));
+            if( segment != null ) {
+                return decodeStoreValue( key, segment.readBody( offsetOf( location )));
+            }
+            // the segment was compacted since we looked at the index, so look again
+        }
+    }
+
+    /**
+     * Obtain the keys currently in the Store that start with this String, in sequence.
+     *
+     * @param startsWith the String the key starts with
+     * @return the keys
+     */
+    protected String [] findKeys(
+            String startsWith )
+    {
+        ArrayList<String> ret = new ArrayList<String>();
+        for( String key : theIndex.tailMap( startsWith ).keySet() ) {
+            if( !key.startsWith( startsWith )) {
+                break;
+            }
+            ret.add( key );
+        }
+        return ret.toArray( new String[ ret.size() ] );
+    }
+
+    /**
+     * Make sure the segments have been opened and the index has been rebuilt.
+     *
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void ensureOpen()
+        throws
+            IOException
+    {
+        if( theIsOpen ) {
+            return;
+        }
+        synchronized( theWriteLock ) {
+            if( !theIsOpen ) {
+                recover();
+                theIsOpen = true;
+            }
+        }
+    }
+
+    /**
+     * Open all existing segments in sequence, and rebuild the index by replaying their records.
+     * An incomplete or corrupted record ends the replay of its segment.
+     *
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void recover()
+        throws
+            IOException
+    {
+        if( !theSubDir.exists() ) {
+            theSubDir.mkdirs();
+
+        } else if( !theSubDir.isDirectory() ) {
+            throw new IOException( "Cannot initialize MappedLogStore at " + theSubDir.getAbsolutePath() + ": file is in the way" );
+        }
+
+        TreeMap<Integer,File> files = findSegmentFiles();
+        for( Map.Entry<Integer,File> current : files.entrySet() ) {
+            int              number  = current.getKey();
+            MappedLogSegment segment = MappedLogSegment.open( current.getValue(), number );
+
+            theSegments.put( number, segment );
+
+            int offset = 0;
+            int length;
+            while( ( length = segment.checkRecord( offset )) > 0 ) {
+                byte [] body = segment.readBody( offset );
+                String  key  = decodeKey( body );
+                Long    old;
+
+                if( body[0] == DELETE_RECORD ) {
+                    old = theIndex.remove( key );
+                } else {
+                    old = theIndex.put( key, locationOf( number, offset ));
+                    segment.addLiveBytes( length );
+                }
+                release( old );
+                offset += length;
+            }
+            segment.setEnd( offset );
+
+            if( length < 0 ) {
+                log.warn( "Discarding incomplete or corrupted data in " + current.getValue().getAbsolutePath() + " at position " + offset );
+
+                if( number == files.lastKey() ) {
+                    segment.clearFrom( offset );
+                }
+            }
+        }
+
+        if( theSegments.isEmpty() ) {
+            theActiveSegment = createSegment( 1, theSegmentSize );
+        } else {
+            theActiveSegment = theSegments.lastEntry().getValue();
+        }
+    }
+
+    /**
+     * Find the segment files in the directory, keyed by their sequence number.
+     *
+     * @return the segment files
+     */
+    protected TreeMap<Integer,File> findSegmentFiles()
+    {
+        TreeMap<Integer,File> ret   = new TreeMap<Integer,File>();
+        File []               found = theSubDir.listFiles();
+
+        if( found != null ) {
+            for( File current : found ) {
+                Matcher m = SEGMENT_FILE_PATTERN.matcher( current.getName() );
+                if( m.matches() ) {
+                    ret.put( Integer.parseInt( m.group( 1 )), current );
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Create a new segment, and make it known.
+     *
+     * @param number the sequence number of the new segment
+     * @param capacity the size of the new segment
+     * @return the new segment
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected MappedLogSegment createSegment(
+            int number,
+            int capacity )
+        throws
+            IOException
+    {
+        File             file = new File( theSubDir, String.format( SEGMENT_FILE_FORMAT, number ));
+        MappedLogSegment ret  = MappedLogSegment.create( file, number, capacity );
+
+        theSegments.put( number, ret );
+        return ret;
+    }
+
+    /**
+     * Append a put record for a key, and update the index. The write lock must be held.
+     *
+     * @param key the key
+     * @param record the record, including its header
+     * @return true if the key had a value before
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected boolean appendPut(
+            String  key,
+            byte [] record )
+        throws
+            IOException
+    {
+        long location = appendRecord( record );
+        Long old      = theIndex.put( key, location );
+
+        theActiveSegment.addLiveBytes( record.length );
+        release( old );
+
+        return old != null;
+    }
+
+    /**
+     * Append a delete record for a key, and update the index. The write lock must be held.
+     *
+     * @param key the key
+     * @param record the record, including its header
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void appendDelete(
+            String  key,
+            byte [] record )
+        throws
+            IOException
+    {
+        appendRecord( record );
+        release( theIndex.remove( key ));
+    }
+
+    /**
+     * Append a record to the current segment, starting a new segment if it is full.
+     * The write lock must be held.
+     *
+     * @param record the record, including its header
+     * @return the location of the record
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected long appendRecord(
+            byte [] record )
+        throws
+            IOException
+    {
+        if( !theActiveSegment.canAppend( record.length )) {
+            theActiveSegment = createSegment(
+                    theActiveSegment.getNumber() + 1,
+                    Math.max( theSegmentSize, record.length ));
+
+            scheduleCompactionIfNeeded();
+        }
+        int offset = theActiveSegment.append( record );
+
+        return locationOf( theActiveSegment.getNumber(), offset );
+    }
+
+    /**
+     * A record is not referenced by the index any more. The write lock must be held.
+     *
+     * @param location the location of the record, if any
+     */
+    protected void release(
+            Long location )
+    {
+        if( location == null ) {
+            return;
+        }
+        MappedLogSegment segment = theSegments.get( segmentOf( location ));
+        if( segment != null ) {
+            segment.addLiveBytes( -segment.getRecordLength( offsetOf( location )));
+        }
+    }
+
+    /**
+     * Find the segments that should be compacted. These are all segments other than the
+     * current one in which less than a certain fraction of the bytes is still referenced.
+     *
+     * @return the segments, in sequence
+     */
+    protected List<MappedLogSegment> findCompactionCandidates()
+    {
+        ArrayList<MappedLogSegment> ret = new ArrayList<MappedLogSegment>();
+
+        synchronized( theWriteLock ) {
+            for( MappedLogSegment current : theSegments.values() ) {
+                if( current != theActiveSegment && current.getLiveBytes() <= current.getEnd() * COMPACTION_THRESHOLD ) {
+                    ret.add( current );
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Have the compaction ExecutorService compact segments, if there is one and there is anything
+     * to compact.
+     */
+    protected void scheduleCompactionIfNeeded()
+    {
+        if( theCompactionExecutor == null || findCompactionCandidates().isEmpty() ) {
+            return;
+        }
+        if( !theCompactionScheduled.compareAndSet( false, true )) {
+            return; // will happen anyway
+        }
+        theCompactionExecutor.submit( new Runnable() {
+                public void run()
+                {
+                    try {
+                        compact();
+
+                    } catch( Throwable ex ) {
+                        log.error( ex );
+
+                    } finally {
+                        theCompactionScheduled.set( false );
+                    }
+                }
+        });
+    }
+
+    /**
+     * Compact a segment. Each record that is still referenced by the index is appended again,
+     * and then the segment file is deleted. A delete record is appended again if the key might
+     * still be found in an older segment. Only the write lock for each record is held, so other
+     * operations can proceed in between.
+     *
+     * @param segment the segment
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void compactSegment(
+            MappedLogSegment segment )
+        throws
+            IOException
+    {
+        int number = segment.getNumber();
+        int end    = segment.getEnd();
+        int offset = 0;
+
+        while( offset < end ) {
+            int     length = segment.getRecordLength( offset );
+            byte [] body   = segment.readBody( offset );
+            String  key    = decodeKey( body );
+
+            synchronized( theWriteLock ) {
+                if( theSegments.get( number ) != segment ) {
+                    return; // the Store was initialized in the meantime
+                }
+                Long current = theIndex.get( key );
+
+                if( body[0] == DELETE_RECORD ) {
+                    if( current == null && theSegments.firstKey() < number ) {
+                        appendRecord( segment.readRecord( offset ));
+                    }
+                } else if( current != null && current == locationOf( number, offset )) {
+                    appendPut( key, segment.readRecord( offset ));
+                }
+            }
+            offset += length;
+        }
+
+        synchronized( theWriteLock ) {
+            if( theSegments.get( number ) != segment ) {
+                return;
+            }
+            theSegments.remove( number );
+        }
+        if( !segment.getFile().delete() ) {
+            log.warn( "Could not delete compacted segment file " + segment.getFile().getAbsolutePath() );
+        }
+    }
+
+    /**
+     * Encode a put record.
+     *
+     * @param value the StoreValue to put
+     * @return the record, including its header
+     */
+    protected static byte [] encodePut(
+            StoreValue value )
+    {
+        byte [] key        = value.getKey().getBytes( UTF8 );
+        byte [] encodingId = value.getEncodingId().getBytes( UTF8 );
+        byte [] data       = value.getData();
+
+        ByteBuffer buf = startRecord( PUT_RECORD, key, 4 + encodingId.length + 4*8 + 4 + data.length );
+        buf.putInt(  encodingId.length );
+        buf.put(     encodingId );
+        buf.putLong( value.getTimeCreated() );
+        buf.putLong( value.getTimeUpdated() );
+        buf.putLong( value.getTimeRead() );
+        buf.putLong( value.getTimeExpires() );
+        buf.putInt(  data.length );
+        buf.put(     data );
+
+        return finishRecord( buf );
+    }
+
+    /**
+     * Encode a delete record.
+     *
+     * @param key the key to delete
+     * @return the record, including its header
+     */
+    protected static byte [] encodeDelete(
+            String key )
+    {
+        ByteBuffer buf = startRecord( DELETE_RECORD, key.getBytes( UTF8 ), 0 );
+
+        return finishRecord( buf );
+    }
+
+    /**
+     * Allocate a record, and write the parts of the body that all records have in common.
+     *
+     * @param type the type of record
+     * @param key the key, in UTF-8
+     * @param remaining the number of bytes in the body after the key
+     * @return the buffer, positioned after the key
+     */
+    protected static ByteBuffer startRecord(
+            byte    type,
+            byte [] key,
+            int     remaining )
+    {
+        int bodyLength = 1 + 4 + key.length + remaining;
+
+        ByteBuffer ret = ByteBuffer.allocate( MappedLogSegment.HEADER_LENGTH + bodyLength );
+        ret.putInt( bodyLength );
+        ret.putInt( 0 ); // checksum comes last
+        ret.put(    type );
+        ret.putInt( key.length );
+        ret.put(    key );
+
+        return ret;
+    }
+
+    /**
+     * Fill in the checksum of a record.
+     *
+     * @param buf the buffer holding the record
+     * @return the record
+     */
+    protected static byte [] finishRecord(
+            ByteBuffer buf )
+    {
+        byte [] ret = buf.array();
+
+        CRC32 crc = new CRC32();
+        crc.update( ret, MappedLogSegment.HEADER_LENGTH, ret.length - MappedLogSegment.HEADER_LENGTH );
+        buf.putInt( 4, (int) crc.getValue() );
+
+        return ret;
+    }
+
+    /**
+     * Decode the key from the body of a record.
+     *
+     * @param body the body
+     * @return the key
+     */
+    protected static String decodeKey(
+            byte [] body )
+    {
+        ByteBuffer buf = ByteBuffer.wrap( body );
+        int keyLength  = buf.getInt( 1 );
+
+        return new String( body, 5, keyLength, UTF8 );
+    }
+
+    /**
+     * Decode a StoreValue from the body of a put record.
+     *
+     * @param key the key, which is known already
+     * @param body the body
+     * @return the StoreValue
+     * @throws IOException thrown if the body is not a put record
+     */
+    protected static StoreValue decodeStoreValue(
+            String  key,
+            byte [] body )
+        throws
+            IOException
+    {
+        if( body[0] != PUT_RECORD ) {
+            throw new IOException( "Not a put record for key " + key );
+        }
+        ByteBuffer buf = ByteBuffer.wrap( body );
+        buf.position( 5 + buf.getInt( 1 ));
+
+        int    encodingIdLength = buf.getInt();
+        String encodingId       = new String( body, buf.position(), encodingIdLength, UTF8 );
+        buf.position( buf.position() + encodingIdLength );
+
+        long timeCreated = buf.getLong();
+        long timeUpdated = buf.getLong();
+        long timeRead    = buf.getLong();
+        long timeExpires = buf.getLong();
+
+        byte [] data = new byte[ buf.getInt() ];
+        buf.get( data );
+
+        return new StoreValue( key, encodingId, timeCreated, timeUpdated, timeRead, timeExpires, data );
+    }
+
+    /**
+     * Combine segment number and position into a location.
+     *
+     * @param segment the segment number
+     * @param offset the position in the segment
+     * @return the location
+     */
+    protected static long locationOf(
+            int segment,
+            int offset )
+    {
+        return ( ((long) segment ) << 32 ) | ( offset & 0xffffffffL );
+    }
+
+    /**
+     * Obtain the segment number from a location.
+     *
+     * @param location the location
+     * @return the segment number
+     */
+    protected static int segmentOf(
+            long location )
+    {
+        return (int) ( location >>> 32 );
+    }
+
+    /**
+     * Obtain the position in the segment from a location.
+     *
+     * @param location the location
+     * @return the position
+     */
+    protected static int offsetOf(
+            long location )
+    {
+        return (int) location;
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "subDir",
+                    "segmentSize",
+                    "index.size",
+                    "segments"
+                },
+                new Object[] {
+                    theSubDir,
+                    theSegmentSize,
+                    theIndex.size(),
+                    theSegments.values()
+                });
+    }
+
+    /**
+     * The directory that holds the segment files.
+     */
+    protected File theSubDir;
+
+    /**
+     * The size of each new segment file, unless a single record is larger.
+     */
+    protected int theSegmentSize;
+
+    /**
+     * Compacts segments in the background, if any.
+     */
+    protected ExecutorService theCompactionExecutor;
+
+    /**
+     * Maps each key to the location of its most recent put record.
+     */
+    protected final ConcurrentSkipListMap<String,Long> theIndex = new ConcurrentSkipListMap<String,Long>();
+
+    /**
+     * The segments of the log, keyed by their sequence number.
+     */
+    protected final ConcurrentSkipListMap<Integer,MappedLogSegment> theSegments = new ConcurrentSkipListMap<Integer,MappedLogSegment>();
+
+    /**
+     * The segment to which records are currently appended. Guarded by the write lock.
+     */
+    protected MappedLogSegment theActiveSegment;
+
+    /**
+     * True once the segments have been opened and the index has been rebuilt.
+     */
+    protected volatile boolean theIsOpen;
+
+    /**
+     * Held while appending to the log and updating the index.
+     */
+    protected final Object theWriteLock = new Object();
+
+    /**
+     * Held while compacting, so only one compaction runs at a time.
+     */
+    protected final Object theCompactionLock = new Object();
+
+    /**
+     * True while a compaction has been submitted to the compaction ExecutorService but not completed.
+     */
+    protected final AtomicBoolean theCompactionScheduled = new AtomicBoolean( false );
+
+    /**
+     * The default size of each segment file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * A segment is compacted once no more than this fraction of its bytes is still referenced.
+     */
+    public static final double COMPACTION_THRESHOLD = 0.5;
+
+    /**
+     * The type of record that puts or updates a value.
+     */
+    protected static final byte PUT_RECORD = 1;
+
+    /**
+     * The type of record that deletes a value.
+     */
+    protected static final byte DELETE_RECORD = 2;
+
+    /**
+     * The format of the names of segment files.
+     */
+    protected static final String SEGMENT_FILE_FORMAT = "segment-%08d.log";
+
+    /**
+     * Recognizes the names of segment files.
+     */
+    protected static final Pattern SEGMENT_FILE_PATTERN = Pattern.compile( "segment-(\\d+)\\.log" );
+
+    /**
+     * The character set used for keys and encoding ids.
+     */
+    protected static final Charset UTF8 = Charset.forName( "UTF-8" );
+}
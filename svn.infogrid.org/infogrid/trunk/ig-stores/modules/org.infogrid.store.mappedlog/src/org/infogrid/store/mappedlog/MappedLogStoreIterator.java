@@ -0,0 +1,362 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.mappedlog;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import org.infogrid.store.IterableStoreCursor;
+import org.infogrid.store.StoreKeyDoesNotExistException;
+import org.infogrid.store.StoreValue;
+import org.infogrid.util.AbstractCursorIterator;
+import org.infogrid.util.CursorIterator;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Iterates over the content of a MappedLogStore. The keys are determined when the
+ * iterator is created, in sequence; the values are read when they are returned.
+ * If a data element has been deleted in the meantime, null is returned in its place.
+ */
+public class MappedLogStoreIterator
+        extends
+            AbstractCursorIterator<StoreValue>
+        implements
+            IterableStoreCursor
+{
+    private static final Log log = Log.getLogInstance( MappedLogStoreIterator.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param store the MappedLogStore to iterate over
+     * @param keys the keys to iterate over, in sequence
+     * @return the created MappedLogStoreIterator
+     */
+    public static MappedLogStoreIterator create(
+            MappedLogStore store,
+            String []      keys )
+    {
+        return new MappedLogStoreIterator( store, keys, 0 );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param store the MappedLogStore to iterate over
+     * @param keys the keys to iterate over, in sequence
+     * @param position the index of the key that is returned by the next invocation of {@link #next}
+     */
+    protected MappedLogStoreIterator(
+            MappedLogStore store,
+            String []      keys,
+            int            position )
+    {
+        super( StoreValue.class );
+
+        theStore    = store;
+        theKeys     = keys;
+        thePosition = position;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the iteration has at least N more elements in the forward direction.
+     *
+     * @param n the number of elements for which to check
+     * @return <tt>true</tt> if the iterator has at least N more elements in the forward direction.
+     * @see #hasNext()
+     * @see #hasPrevious()
+     * @see #hasPrevious(int)
+     */
+    public boolean hasNext(
+            int n )
+    {
+        return thePosition + n <= theKeys.length;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the iteration has at least N more elements in the backward direction.
+     *
+     * @param n the number of elements for which to check
+     * @return <tt>true</tt> if the iterator has at least N more elements in the backward direction.
+     * @see #hasNext()
+     * @see #hasPrevious()
+     * @see #hasNext(int)
+     */
+    public boolean hasPrevious(
+            int n )
+    {
+        return thePosition - n >= 0;
+    }
+
+    /**
+     * Returns the next element in the iteration.
+     *
+     * @return the next element in the iteration.
+     * @throws NoSuchElementException iteration has no more elements.
+     * @see #previous()
+     */
+    public StoreValue next()
+        throws
+            NoSuchElementException
+    {
+        if( thePosition >= theKeys.length ) {
+            throw new NoSuchElementException();
+        }
+        return findValue( theKeys[ thePosition++ ] );
+    }
+
+    /**
+     * Returns the previous element in the iteration.
+     *
+     * @return the previous element in the iteration.
+     * @throws NoSuchElementException iteration has no more elements.
+     * @see #next()
+     */
+    public StoreValue previous()
+        throws
+            NoSuchElementException
+    {
+        if( thePosition <= 0 ) {
+            throw new NoSuchElementException();
+        }
+        return findValue( theKeys[ --thePosition ] );
+    }
+
+    /**
+     * Move the cursor by N positions. Positive numbers indicate forward movemement;
+     * negative numbers indicate backward movement. This can move all the way forward
+     * to the position "past last" and all the way backward to the position "before first".
+     *
+     * @param n the number of positions to move
+     * @throws NoSuchElementException thrown if the position does not exist
+     */
+    @Override
+    public void moveBy(
+            int n )
+        throws
+            NoSuchElementException
+    {
+        int newPosition = thePosition + n;
+        if( newPosition < 0 || newPosition > theKeys.length ) {
+            throw new NoSuchElementException();
+        }
+        thePosition = newPosition;
+    }
+
+    /**
+     * Move the cursor to just before this element, i.e. return this element when
+     * {@link #next next} is invoked right afterwards.
+     *
+     * @param pos the element to move the cursor to
+     * @return the number of steps that were taken to move. Positive number means
+     *         forward, negative backward
+     * @throws NoSuchElementException thrown if this element is not actually part
+     *         of the underlying <code>CursorIterable</code>
+     */
+    @Override
+    public int moveToBefore(
+            StoreValue pos )
+        throws
+            NoSuchElementException
+    {
+        return moveToBefore( pos.getKey() );
+    }
+
+    /**
+     * Move the cursor to just after this element, i.e. return this element when
+     * {@link #previous previous} is invoked right afterwards.
+     *
+     * @param pos the element to move the cursor to
+     * @return the number of steps that were taken to move. Positive number means
+     *         forward, negative backward
+     * @throws NoSuchElementException thrown if this element is not actually part
+     *         of the underlying <code>CursorIterable</code>
+     */
+    @Override
+    public int moveToAfter(
+            StoreValue pos )
+        throws
+            NoSuchElementException
+    {
+        return moveToAfter( pos.getKey() );
+    }
+
+    /**
+     * Move the cursor to this element, i.e. return this element when {@link #next next} is invoked
+     * right afterwards.
+     *
+     * @param key the key of the element to move the cursor to
+     * @return the number of steps that were taken to move. Positive number means forward, negative backward
+     * @throws NoSuchElementException thrown if this element is not actually part of the collection to iterate over
+     */
+    public int moveToBefore(
+            String key )
+        throws
+            NoSuchElementException
+    {
+        int newPosition = Arrays.binarySearch( theKeys, key );
+        if( newPosition < 0 ) {
+            throw new NoSuchElementException( "No such element: " + key );
+        }
+        int ret = newPosition - thePosition;
+        thePosition = newPosition;
+        return ret;
+    }
+
+    /**
+     * Move the cursor to this element, i.e. return this element when {@link #previous previous} is invoked
+     * right afterwards.
+     *
+     * @param key the key of the element to move the cursor to
+     * @return the number of steps that were taken to move. Positive number means forward, negative backward
+     * @throws NoSuchElementException thrown if this element is not actually part of the collection to iterate over
+     */
+    public int moveToAfter(
+            String key )
+        throws
+            NoSuchElementException
+    {
+        int newPosition = Arrays.binarySearch( theKeys, key );
+        if( newPosition < 0 ) {
+            throw new NoSuchElementException( "No such element: " + key );
+        }
+        ++newPosition;
+
+        int ret = newPosition - thePosition;
+        thePosition = newPosition;
+        return ret;
+    }
+
+    /**
+     * Move the cursor to just before the first element, i.e. return the first element when
+     * {@link #next next} is invoked right afterwards.
+     *
+     * @return the number of steps that were taken to move. Positive number means
+     *         forward, negative backward
+     */
+    public int moveToBeforeFirst()
+    {
+        int ret = -thePosition;
+        thePosition = 0;
+        return ret;
+    }
+
+    /**
+     * Move the cursor to just after the last element, i.e. return the last element when
+     * {@link #previous previous} is invoked right afterwards.
+     *
+     * @return the number of steps that were taken to move. Positive number means
+     *         forward, negative backward
+     */
+    public int moveToAfterLast()
+    {
+        int ret = theKeys.length - thePosition;
+        thePosition = theKeys.length;
+        return ret;
+    }
+
+    /**
+     * Removes from the underlying collection the last element returned by the
+     * iterator. Because the cursor does not know in which direction it moved
+     * last, this removes the element that was returned by the most recent invocation
+     * of {@link #next next}.
+     *
+     * @throws IllegalStateException if there is no such element
+     */
+    @Override
+    public void remove()
+        throws
+            IllegalStateException
+    {
+        if( thePosition <= 0 ) {
+            throw new IllegalStateException();
+        }
+        try {
+            theStore.delete( theKeys[ thePosition-1 ] );
+
+        } catch( StoreKeyDoesNotExistException ex ) {
+            log.warn( ex );
+
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+    }
+
+    /**
+     * Clone this position.
+     *
+     * @return identical new instance
+     */
+    public MappedLogStoreIterator createCopy()
+    {
+        return new MappedLogStoreIterator( theStore, theKeys, thePosition );
+    }
+
+    /**
+     * Set this CursorIterator to the position represented by the provided CursorIterator.
+     *
+     * @param position the position to set this CursorIterator to
+     * @throws IllegalArgumentException thrown if the provided CursorIterator does
+     *         not work on the same CursorIterable, or the implementations were incompatible.
+     */
+    public void setPositionTo(
+            CursorIterator<StoreValue> position )
+        throws
+            IllegalArgumentException
+    {
+        if( !( position instanceof MappedLogStoreIterator )) {
+            throw new IllegalArgumentException( "Wrong type of CursorIterator: " + position );
+        }
+        MappedLogStoreIterator realPosition = (MappedLogStoreIterator) position;
+
+        if( theKeys != realPosition.theKeys ) {
+            throw new IllegalArgumentException( "Not the same instance of MappedLogStoreIterator, or a copy" );
+        }
+        thePosition = realPosition.thePosition;
+    }
+
+    /**
+     * Read the value for a key.
+     *
+     * @param key the key
+     * @return the value, or null if it could not be read
+     */
+    protected StoreValue findValue(
+            String key )
+    {
+        try {
+            return theStore.findValue( key );
+
+        } catch( IOException ex ) {
+            log.error( ex );
+            return null;
+        }
+    }
+
+    /**
+     * The MappedLogStore to iterate over.
+     */
+    protected MappedLogStore theStore;
+
+    /**
+     * The keys to iterate over, in sequence.
+     */
+    protected String [] theKeys;
+
+    /**
+     * The index of the key that is returned by the next invocation of {@link #next}.
+     */
+    protected int thePosition;
+}
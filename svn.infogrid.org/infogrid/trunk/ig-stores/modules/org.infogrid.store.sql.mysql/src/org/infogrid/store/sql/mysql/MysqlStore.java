@@ -19,6 +19,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.NoSuchElementException;
@@ -30,6 +31,7 @@ import org.infogrid.store.sql.AbstractSqlStore;
 import org.infogrid.store.sql.SqlStoreIOException;
 import org.infogrid.util.ArrayHelper;
 import org.infogrid.util.logging.Log;
+import org.infogrid.util.sql.PooledSqlDatabase;
 import org.infogrid.util.sql.SqlDatabase;
 import org.infogrid.util.sql.SqlExecutionAction;
 import org.infogrid.util.sql.SqlPreparedStatement;
@@ -73,6 +75,25 @@ public class MysqlStore
         return new MysqlStore( db, tableName );
     }
 
+    /**
+     * Factory method for a MysqlStore that accesses the database through a pool of Connections,
+     * so that several threads can access it at the same time.
+     *
+     * @param ds the SQL DataSource
+     * @param tableName the name of the table in the SQL DataSource in which the data will be stored
+     * @param maxConnections the maximum number of Connections open at the same time
+     * @return the created AbstractSqlStore
+     */
+    public static MysqlStore create(
+            DataSource ds,
+            String     tableName,
+            int        maxConnections )
+    {
+        PooledSqlDatabase db = PooledSqlDatabase.create( "MysqlStore of " + ds.toString() + ", table " + tableName, ds, maxConnections );
+
+        return new MysqlStore( db, tableName );
+    }
+
     /**
      * Constructor for subclasses only, use factory method.
      *
@@ -677,6 +698,302 @@ public class MysqlStore
         }
     }
 
+    /**
+     * Put (if does not exist already) or update (if it does exist) several data elements in the
+     * Store at the same time. This sends the data elements to the database in JDBC batches of
+     * up to MULTIPLE_CHUNK_SIZE, all in the same transaction, which is committed only if all
+     * of them succeeded.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @return for each StoreValue, in the same sequence: true if the value was updated, false if it was put
+     * @throws SqlStoreIOException thrown if an I/O error occurred
+     */
+    @Override
+    public boolean [] putOrUpdateMultiple(
+            final StoreValue [] toStoreOrUpdate )
+        throws
+            SqlStoreIOException
+    {
+        if( log.isInfoEnabled() ) {
+            log.info( this + ".putOrUpdateMultiple( " + toStoreOrUpdate.length + " values )" );
+        }
+
+        for( int i=0 ; i<toStoreOrUpdate.length ; ++i ) {
+            checkKey(      toStoreOrUpdate[i].getKey() );
+            checkEncoding( toStoreOrUpdate[i].getEncodingId() );
+            checkData(     toStoreOrUpdate[i].getData() );
+        }
+
+        final boolean [] ret = new boolean[ toStoreOrUpdate.length ];
+        boolean success = false;
+        try {
+            new SqlExecutionAction<Object>( thePutOrUpdatePreparedStatement ) {
+                protected Object perform(
+                        PreparedStatement stm,
+                        Connection        conn )
+                    throws
+                        SQLException
+                {
+                    boolean autoCommit = beginTransaction( conn );
+                    boolean done       = false;
+                    try {
+                        putOrUpdateBatches( stm, toStoreOrUpdate, ret, 0 );
+                        done = true;
+
+                    } finally {
+                        endTransaction( conn, done, autoCommit );
+                    }
+                    return null;
+                }
+            }.execute();
+
+            success = true;
+            return ret;
+
+        } catch( SQLException ex ) {
+            throw new SqlStoreIOException( this, "putOrUpdateMultiple", ex );
+
+        } finally {
+            if( success ) {
+                for( int i=0 ; i<toStoreOrUpdate.length ; ++i ) {
+                    if( ret[i] ) {
+                        fireUpdatePerformed( toStoreOrUpdate[i] );
+                    } else {
+                        firePutPerformed( toStoreOrUpdate[i] );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete several data elements at the same time, given their keys. This sends the
+     * deletions to the database in JDBC batches of up to MULTIPLE_CHUNK_SIZE, all in the
+     * same transaction, which is committed only if all of them succeeded.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @return for each key, in the same sequence: true if a data element was deleted, false if none existed
+     * @throws SqlStoreIOException thrown if the database could not be written
+     */
+    @Override
+    public boolean [] deleteMultiple(
+            final String [] keys )
+        throws
+            SqlStoreIOException
+    {
+        if( log.isInfoEnabled() ) {
+            log.info( this + ".deleteMultiple( " + keys.length + " keys )" );
+        }
+
+        for( int i=0 ; i<keys.length ; ++i ) {
+            checkKey( keys[i] );
+        }
+
+        final boolean [] ret = new boolean[ keys.length ];
+        boolean success = false;
+        try {
+            new SqlExecutionAction<Object>( theDeletePreparedStatement ) {
+                protected Object perform(
+                        PreparedStatement stm,
+                        Connection        conn )
+                    throws
+                        SQLException
+                {
+                    boolean autoCommit = beginTransaction( conn );
+                    boolean done       = false;
+                    try {
+                        deleteBatches( stm, keys, ret, 0 );
+                        done = true;
+
+                    } finally {
+                        endTransaction( conn, done, autoCommit );
+                    }
+                    return null;
+                }
+            }.execute();
+
+            success = true;
+            return ret;
+
+        } catch( SQLException ex ) {
+            throw new SqlStoreIOException( this, "deleteMultiple", ex );
+
+        } finally {
+            if( success ) {
+                for( int i=0 ; i<keys.length ; ++i ) {
+                    if( ret[i] ) {
+                        fireDeletePerformed( keys[i] );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Put or update several data elements, and delete several other data elements, as a single
+     * operation. This sends JDBC batches of up to MULTIPLE_CHUNK_SIZE puts or updates, followed by
+     * JDBC batches of up to MULTIPLE_CHUNK_SIZE deletions, all in the same transaction, which is
+     * committed only if all of them succeeded.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @param toDelete the keys to the data elements to delete
+     * @return first, for each StoreValue, in the same sequence: true if the value was updated, false if it was put;
+     *         then, for each key to delete, in the same sequence: true if a data element was deleted, false if none existed
+     * @throws SqlStoreIOException thrown if an I/O error occurred; none of the changes have been made
+     */
+    @Override
+    public boolean [] putOrUpdateAndDeleteMultiple(
+            final StoreValue [] toStoreOrUpdate,
+            final String []     toDelete )
+        throws
+            SqlStoreIOException
+    {
+        if( log.isInfoEnabled() ) {
+            log.info( this + ".putOrUpdateAndDeleteMultiple( " + toStoreOrUpdate.length + " values, " + toDelete.length + " keys )" );
+        }
+
+        for( int i=0 ; i<toStoreOrUpdate.length ; ++i ) {
+            checkKey(      toStoreOrUpdate[i].getKey() );
+            checkEncoding( toStoreOrUpdate[i].getEncodingId() );
+            checkData(     toStoreOrUpdate[i].getData() );
+        }
+        for( int i=0 ; i<toDelete.length ; ++i ) {
+            checkKey( toDelete[i] );
+        }
+
+        final boolean [] ret = new boolean[ toStoreOrUpdate.length + toDelete.length ];
+        boolean success = false;
+        try {
+            new SqlExecutionAction<Object>( thePutOrUpdatePreparedStatement ) {
+                protected Object perform(
+                        PreparedStatement stm,
+                        Connection        conn )
+                    throws
+                        SQLException
+                {
+                    boolean autoCommit = beginTransaction( conn );
+                    boolean done       = false;
+                    try {
+                        putOrUpdateBatches( stm, toStoreOrUpdate, ret, 0 );
+                        if( toDelete.length > 0 ) {
+                            deleteBatches( theDeletePreparedStatement.obtain( conn ), toDelete, ret, toStoreOrUpdate.length );
+                        }
+                        done = true;
+
+                    } finally {
+                        endTransaction( conn, done, autoCommit );
+                    }
+                    return null;
+                }
+            }.execute();
+
+            success = true;
+            return ret;
+
+        } catch( SQLException ex ) {
+            throw new SqlStoreIOException( this, "putOrUpdateAndDeleteMultiple", ex );
+
+        } finally {
+            if( success ) {
+                for( int i=0 ; i<toStoreOrUpdate.length ; ++i ) {
+                    if( ret[i] ) {
+                        fireUpdatePerformed( toStoreOrUpdate[i] );
+                    } else {
+                        firePutPerformed( toStoreOrUpdate[i] );
+                    }
+                }
+                for( int i=0 ; i<toDelete.length ; ++i ) {
+                    if( ret[ toStoreOrUpdate.length + i ] ) {
+                        fireDeletePerformed( toDelete[i] );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Send the puts or updates of several data elements to the database in JDBC batches of
+     * up to MULTIPLE_CHUNK_SIZE.
+     *
+     * @param stm the PreparedStatement to put or update, obtained from thePutOrUpdatePreparedStatement
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @param ret for each StoreValue, in the same sequence starting at offset, set to true if the value was updated
+     * @param offset the index in ret corresponding to the first StoreValue
+     * @throws SQLException thrown if a SQL error occurred
+     */
+    protected void putOrUpdateBatches(
+            PreparedStatement stm,
+            StoreValue []     toStoreOrUpdate,
+            boolean []        ret,
+            int               offset )
+        throws
+            SQLException
+    {
+        for( int start=0 ; start<toStoreOrUpdate.length ; start += MULTIPLE_CHUNK_SIZE ) {
+            int end = Math.min( start + MULTIPLE_CHUNK_SIZE, toStoreOrUpdate.length );
+
+            for( int i=start ; i<end ; ++i ) {
+                StoreValue current = toStoreOrUpdate[i];
+
+                stm.setString(  1, current.getKey() );
+                stm.setString(  2, current.getEncodingId() );
+                stm.setString( 12, current.getEncodingId() );
+                setTime( stm,   3, current.getTimeCreated() );
+                setTime( stm,  13, current.getTimeCreated() );
+                setTime( stm,   5, current.getTimeUpdated() );
+                setTime( stm,  15, current.getTimeUpdated() );
+                setTime( stm,   7, current.getTimeRead() );
+                setTime( stm,  17, current.getTimeRead() );
+                setTime( stm,   9, current.getTimeExpires() );
+                setTime( stm,  19, current.getTimeExpires() );
+                stm.setBytes(  11, current.getData() );
+                stm.setBytes(  21, current.getData() );
+
+                stm.addBatch();
+            }
+            int [] counts = stm.executeBatch();
+
+            for( int i=0 ; i<counts.length ; ++i ) {
+                // as in putOrUpdate, the "duplicate key" triggers two instead of one. If the driver
+                // rewrote the batch, we cannot tell, and assume update
+                ret[ offset + start + i ] = counts[i] > 1 || counts[i] == Statement.SUCCESS_NO_INFO;
+            }
+        }
+    }
+
+    /**
+     * Send the deletions of several data elements to the database in JDBC batches of
+     * up to MULTIPLE_CHUNK_SIZE.
+     *
+     * @param stm the PreparedStatement to delete, obtained from theDeletePreparedStatement
+     * @param keys the keys to the data elements to delete
+     * @param ret for each key, in the same sequence starting at offset, set to true if a data element was deleted
+     * @param offset the index in ret corresponding to the first key
+     * @throws SQLException thrown if a SQL error occurred
+     */
+    protected void deleteBatches(
+            PreparedStatement stm,
+            String []         keys,
+            boolean []        ret,
+            int               offset )
+        throws
+            SQLException
+    {
+        for( int start=0 ; start<keys.length ; start += MULTIPLE_CHUNK_SIZE ) {
+            int end = Math.min( start + MULTIPLE_CHUNK_SIZE, keys.length );
+
+            for( int i=start ; i<end ; ++i ) {
+                stm.setString( 1, keys[i] );
+                stm.addBatch();
+            }
+            int [] counts = stm.executeBatch();
+
+            for( int i=0 ; i<counts.length ; ++i ) {
+                ret[ offset + start + i ] = counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO;
+            }
+        }
+    }
+
     /**
      * Remove all data in this Store whose key starts with this string.
      *
@@ -746,10 +1063,10 @@ public class MysqlStore
             return findValues( theFindPreviousExcludingPreparedStatement, key, n );
         }
         
-        StoreValue [] ret = new StoreValue[ n ];
+        StoreValue [] ret = new StoreValue[0];
         try {
-            ResultSet set = new SqlExecutionAction<ResultSet>( theFindLastValuesPreparedStatement ) {
-                protected ResultSet perform(
+            ret = new SqlExecutionAction<StoreValue[]>( theFindLastValuesPreparedStatement ) {
+                protected StoreValue [] perform(
                         PreparedStatement stm,
                         Connection        conn )
                     throws
@@ -758,41 +1075,44 @@ public class MysqlStore
                     stm.setInt(    1, n );
 
                     stm.execute();
-                    return stm.getResultSet();
+                    ResultSet set = stm.getResultSet();
+
+                    // This needs to be performed in here to be within the same synchronized statement
+
+                    StoreValue [] temp = new StoreValue[ n ];
+                    int count = 0;
+                    while( set.next() ) {
+                        String    foundKey          = set.getString(    "id" );
+                        String    encodingId        = set.getString(    "encodingId" );
+                        Timestamp timeCreated       = set.getTimestamp( "timeCreated" );
+                        int       timeCreatedMillis = set.getInt(       "timeCreatedMillis" );
+                        Timestamp timeUpdated       = set.getTimestamp( "timeUpdated" );
+                        int       timeUpdatedMillis = set.getInt(       "timeUpdatedMillis" );
+                        Timestamp timeRead          = set.getTimestamp( "timeRead" );
+                        int       timeReadMillis    = set.getInt(       "timeReadMillis" );
+                        Timestamp timeExpires       = set.getTimestamp( "timeExpires" );
+                        int       timeExpiresMillis = set.getInt(       "timeExpiresMillis" );
+                        byte []   data              = set.getBytes(     "content" );
+
+                        // this is different from the get() method -- we find the one after, not the same one
+                        temp[count++] = new StoreValue(
+                                foundKey,
+                                encodingId,
+                                reconstructTime( timeCreated, timeCreatedMillis ),
+                                reconstructTime( timeUpdated, timeUpdatedMillis ),
+                                reconstructTime( timeRead,    timeReadMillis ),
+                                reconstructTime( timeExpires, timeExpiresMillis ),
+                                data );
+                    }
+                    set.close();
+
+                    if( count < temp.length ) {
+                        temp = ArrayHelper.copyIntoNewArray( temp, 0, count, StoreValue.class );
+                    }
+                    return temp;
                 }
             }.execute();
 
-            int count = 0;
-            while( set.next() ) {
-                String    foundKey          = set.getString(    "id" );
-                String    encodingId        = set.getString(    "encodingId" );
-                Timestamp timeCreated       = set.getTimestamp( "timeCreated" );
-                int       timeCreatedMillis = set.getInt(       "timeCreatedMillis" );
-                Timestamp timeUpdated       = set.getTimestamp( "timeUpdated" );
-                int       timeUpdatedMillis = set.getInt(       "timeUpdatedMillis" );
-                Timestamp timeRead          = set.getTimestamp( "timeRead" );
-                int       timeReadMillis    = set.getInt(       "timeReadMillis" );
-                Timestamp timeExpires       = set.getTimestamp( "timeExpires" );
-                int       timeExpiresMillis = set.getInt(       "timeExpiresMillis" );
-                byte []   data              = set.getBytes(     "content" );
-
-                // this is different from the get() method -- we find the one after, not the same one
-                ret[count++] = new StoreValue(
-                        foundKey,
-                        encodingId,
-                        reconstructTime( timeCreated, timeCreatedMillis ),
-                        reconstructTime( timeUpdated, timeUpdatedMillis ),
-                        reconstructTime( timeRead,    timeReadMillis ),
-                        reconstructTime( timeExpires, timeExpiresMillis ),
-                        data );
-            }
-            
-            set.close();
-
-            if( count < ret.length ) {
-                ret = ArrayHelper.copyIntoNewArray( ret, 0, count, StoreValue.class );
-            }
-            
         } catch( SQLException ex ) {
             log.error( ex );
         }
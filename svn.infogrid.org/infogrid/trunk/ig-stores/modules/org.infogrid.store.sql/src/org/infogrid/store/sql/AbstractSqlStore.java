@@ -15,7 +15,13 @@
 package org.infogrid.store.sql;
 
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
 import java.util.NoSuchElementException;
 import org.infogrid.store.AbstractIterableStore;
 import org.infogrid.store.IterableStoreCursor;
@@ -26,6 +32,8 @@ import org.infogrid.util.logging.CanBeDumped;
 import org.infogrid.util.logging.Dumper;
 import org.infogrid.util.logging.Log;
 import org.infogrid.util.sql.SqlDatabase;
+import org.infogrid.util.sql.SqlExecutionAction;
+import org.infogrid.util.sql.SqlPreparedStatement;
 
 /**
  * SQL implementation of the Store interface.
@@ -50,6 +58,8 @@ public abstract class AbstractSqlStore
     {
         theDatabase  = db;
         theTableName = tableName;
+
+        theGetMultiplePreparedStatement = new SqlPreparedStatement( theDatabase, GET_MULTIPLE_SQL, tableName, createPlaceholderList( MULTIPLE_CHUNK_SIZE ));
     }
 
     /**
@@ -199,22 +209,133 @@ public abstract class AbstractSqlStore
                 toStoreOrUpdate.getData() );
     }
     
+    /**
+     * Obtain several data elements and associated meta-data from the Store at the same time,
+     * given their keys. This issues one SQL statement with an IN-list for every
+     * MULTIPLE_CHUNK_SIZE keys, instead of one SQL statement per key.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @return the StoreValues stored in the Store for these keys, in the same sequence as the keys.
+     *         If there is no data element in the Store for a key, the corresponding entry is null
+     * @throws SqlStoreIOException thrown if the database could not be read
+     */
+    @Override
+    public StoreValue [] getMultiple(
+            final String [] keys )
+        throws
+            SqlStoreIOException
+    {
+        if( log.isInfoEnabled() ) {
+            log.info( this + ".getMultiple( " + keys.length + " keys )" );
+        }
+
+        for( int i=0 ; i<keys.length ; ++i ) {
+            checkKey( keys[i] );
+        }
+
+        final HashMap<String,StoreValue> found = new HashMap<String,StoreValue>( keys.length * 2 );
+
+        try {
+            for( int start=0 ; start<keys.length ; start += MULTIPLE_CHUNK_SIZE ) {
+                final int chunkStart = start;
+                final int chunkEnd   = Math.min( start + MULTIPLE_CHUNK_SIZE, keys.length );
+
+                new SqlExecutionAction<Object>( theGetMultiplePreparedStatement ) {
+                    protected Object perform(
+                            PreparedStatement stm,
+                            Connection        conn )
+                        throws
+                            SQLException
+                    {
+                        // the statement always has MULTIPLE_CHUNK_SIZE parameters; pad with a key we are looking for anyway
+                        for( int i=0 ; i<MULTIPLE_CHUNK_SIZE ; ++i ) {
+                            int index = chunkStart + i;
+                            stm.setString( i+1, keys[ index < chunkEnd ? index : chunkStart ] );
+                        }
+                        stm.execute();
+
+                        ResultSet set = stm.getResultSet();
+                        while( set.next() ) {
+                            StoreValue current = readStoreValue( set );
+                            found.put( current.getKey(), current );
+                        }
+                        set.close();
+                        return null;
+                    }
+                }.execute();
+            }
+
+        } catch( SQLException ex ) {
+            throw new SqlStoreIOException( this, "getMultiple", ex );
+        }
+
+        StoreValue [] ret = new StoreValue[ keys.length ];
+        for( int i=0 ; i<keys.length ; ++i ) {
+            ret[i] = found.get( keys[i] );
+
+            if( ret[i] != null ) {
+                fireGetPerformed( ret[i] );
+            } else {
+                fireGetFailed( keys[i] );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Set the number of StoreValues that Iterators over the content of this Store read
+     * from the database at a time when iterating forward. This only affects Iterators
+     * created after this call.
+     *
+     * @param newValue the new batch size
+     * @see #getIteratorBatchSize
+     */
+    public void setIteratorBatchSize(
+            int newValue )
+    {
+        if( newValue < 1 ) {
+            throw new IllegalArgumentException( "Batch size must be positive: " + newValue );
+        }
+        theIteratorBatchSize = newValue;
+    }
+
+    /**
+     * Obtain the number of StoreValues that Iterators over the content of this Store read
+     * from the database at a time when iterating forward.
+     *
+     * @return the batch size
+     * @see #setIteratorBatchSize
+     */
+    public int getIteratorBatchSize()
+    {
+        return theIteratorBatchSize;
+    }
+
     /**
      * Obtain an Iterator over the content of this Store.
      *
      * @return the Iterator
      */
     public IterableStoreCursor iterator()
+    {
+        return iterator( theIteratorBatchSize );
+    }
+
+    /**
+     * Obtain an Iterator over the content of this Store that reads the given number
+     * of StoreValues from the database at a time when iterating forward.
+     *
+     * @param batchSize the batch size
+     * @return the Iterator
+     */
+    public IterableStoreCursor iterator(
+            int batchSize )
     {
         try {
-            if( isEmpty() ) {
-                return new SqlStoreIterator( this, null ); // past last position
-            } else {
-                return new SqlStoreIterator( this, findFirstKey() );
-            }
-        } catch( IOException ex ) {
-            log.error( ex );
-            return new SqlStoreIterator( this, null ); // gotta be somewhere
+            return new SqlStoreIterator( this, findFirstKey(), batchSize );
+
+        } catch( NoSuchElementException ex ) {
+            return new SqlStoreIterator( this, null, batchSize ); // empty Store: past last position
         }
     }
 
@@ -256,7 +377,7 @@ public abstract class AbstractSqlStore
     {
         // FIXME, this can be made more efficient
         StoreValue [] values = findNextIncluding( key, n );
-        String     [] ret    = new String[0];
+        String     [] ret    = new String[ values.length ];
         for( int i=0 ; i<values.length ; ++i ) {
             ret[i] = values[i].getKey();
         }
@@ -289,7 +410,7 @@ public abstract class AbstractSqlStore
     {
         // FIXME, this can be made more efficient
         StoreValue [] values = findPreviousExcluding( key, n );
-        String     [] ret    = new String[0];
+        String     [] ret    = new String[ values.length ];
         for( int i=0 ; i<values.length ; ++i ) {
             ret[i] = values[i].getKey();
         }
@@ -355,6 +476,139 @@ public abstract class AbstractSqlStore
         return ret;
     }
 
+    /**
+     * Helper method to convert the current row of a ResultSet into a StoreValue.
+     *
+     * @param set the ResultSet, positioned on the row to convert
+     * @return the StoreValue
+     * @throws SQLException thrown if the ResultSet could not be read
+     */
+    protected static StoreValue readStoreValue(
+            ResultSet set )
+        throws
+            SQLException
+    {
+        String    key               = set.getString(    "id" );
+        String    encodingId        = set.getString(    "encodingId" );
+        Timestamp timeCreated       = set.getTimestamp( "timeCreated" );
+        int       timeCreatedMillis = set.getInt(       "timeCreatedMillis" );
+        Timestamp timeUpdated       = set.getTimestamp( "timeUpdated" );
+        int       timeUpdatedMillis = set.getInt(       "timeUpdatedMillis" );
+        Timestamp timeRead          = set.getTimestamp( "timeRead" );
+        int       timeReadMillis    = set.getInt(       "timeReadMillis" );
+        Timestamp timeExpires       = set.getTimestamp( "timeExpires" );
+        int       timeExpiresMillis = set.getInt(       "timeExpiresMillis" );
+        byte []   data              = set.getBytes(     "content" );
+
+        StoreValue ret = new StoreValue(
+                key,
+                encodingId,
+                reconstructTime( timeCreated, timeCreatedMillis ),
+                reconstructTime( timeUpdated, timeUpdatedMillis ),
+                reconstructTime( timeRead,    timeReadMillis ),
+                reconstructTime( timeExpires, timeExpiresMillis ),
+                data );
+        return ret;
+    }
+
+    /**
+     * Helper method to set a System.currentTimeMillis()-format time as a pair of SQL
+     * timestamp and milli-seconds parameters.
+     *
+     * @param stm the PreparedStatement
+     * @param index the index of the timestamp parameter; the milli-seconds go into the next one
+     * @param time the time, or a negative number if not given
+     * @throws SQLException thrown if the parameters could not be set
+     */
+    protected static void setTime(
+            PreparedStatement stm,
+            int               index,
+            long              time )
+        throws
+            SQLException
+    {
+        if( time >= 0 ) {
+            int millis = (int) ( time % 1000 );
+            stm.setTimestamp( index,   new Timestamp( time - millis ));
+            stm.setInt(       index+1, millis );
+        } else {
+            stm.setNull(      index,   Types.TIMESTAMP );
+            stm.setNull(      index+1, Types.INTEGER );
+        }
+    }
+
+    /**
+     * Helper method to create a comma-separated list of SQL parameter placeholders.
+     *
+     * @param n the number of placeholders
+     * @return the list
+     */
+    protected static String createPlaceholderList(
+            int n )
+    {
+        StringBuilder ret = new StringBuilder( 3*n );
+        String        sep = "";
+        for( int i=0 ; i<n ; ++i ) {
+            ret.append( sep );
+            ret.append( '?' );
+            sep = ", ";
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Helper method to turn off auto-commit on a Connection, if it is on, so that
+     * several statements sent on it are committed or rolled back together.
+     *
+     * @param conn the Connection
+     * @return the previous auto-commit setting, to be passed to endTransaction
+     * @throws SQLException thrown if auto-commit could not be turned off
+     */
+    protected static boolean beginTransaction(
+            Connection conn )
+        throws
+            SQLException
+    {
+        boolean ret = conn.getAutoCommit();
+        if( ret ) {
+            conn.setAutoCommit( false );
+        }
+        return ret;
+    }
+
+    /**
+     * Helper method to commit or roll back what has been sent on a Connection since
+     * beginTransaction, and to restore the previous auto-commit setting.
+     *
+     * @param conn the Connection
+     * @param success if true, commit; otherwise roll back
+     * @param autoCommit the previous auto-commit setting, as returned by beginTransaction
+     * @throws SQLException thrown if the commit failed
+     */
+    protected static void endTransaction(
+            Connection conn,
+            boolean    success,
+            boolean    autoCommit )
+        throws
+            SQLException
+    {
+        try {
+            if( success ) {
+                conn.commit();
+            } else {
+                try {
+                    conn.rollback();
+                } catch( SQLException ex ) {
+                    // do nothing, we are already failing
+                }
+            }
+        } finally {
+            if( autoCommit ) {
+                conn.setAutoCommit( true );
+            }
+        }
+    }
+
     /**
      * Dump this object.
      *
@@ -384,4 +638,32 @@ public abstract class AbstractSqlStore
      * very useful in debugging.
      */
     protected String theTableName;
+
+    /**
+     * The prepared statement to obtain several StoreValues at the same time.
+     */
+    protected SqlPreparedStatement theGetMultiplePreparedStatement;
+
+    /**
+     * The number of StoreValues that Iterators read from the database at a time.
+     */
+    protected int theIteratorBatchSize = DEFAULT_ITERATOR_BATCH_SIZE;
+
+    /**
+     * The maximum number of keys handled by a single SQL statement by the methods
+     * that operate on several data elements at the same time.
+     */
+    public static final int MULTIPLE_CHUNK_SIZE = 64;
+
+    /**
+     * The default number of StoreValues that Iterators read from the database at a time.
+     */
+    public static final int DEFAULT_ITERATOR_BATCH_SIZE = 256;
+
+    /**
+     * The SQL to obtain several StoreValues at the same time. The second argument is the
+     * list of placeholders for the keys.
+     */
+    protected static final String GET_MULTIPLE_SQL
+            = "SELECT * from {0} WHERE id IN ( {1} )";
 }
@@ -17,10 +17,21 @@ package org.infogrid.store.sql;
 import java.util.NoSuchElementException;
 import org.infogrid.store.AbstractKeyBasedIterableStoreCursor;
 import org.infogrid.store.StoreValue;
+import org.infogrid.util.ArrayHelper;
+import org.infogrid.util.CursorIterator;
 import org.infogrid.util.logging.Log;
 
 /**
- * Iterator implementation for the StoreValues in the AbstractSqlStore.
+ * <p>Iterator implementation for the StoreValues in the AbstractSqlStore.</p>
+ * <p>When iterating forward, this iterator reads ahead in batches of <code>batchSize</code>
+ *    StoreValues, using keyset pagination: each batch is obtained with a single
+ *    <code>id &gt;= ? ORDER BY id LIMIT ?</code> query starting at the current key, and
+ *    {@link #hasNext} and {@link #next} are answered from the batch without
+ *    going to the database. No database connection or cursor is held between batches, so
+ *    walking the entire Store takes time proportional to its size, instead of issuing a
+ *    counting query for every step.</p>
+ * <p>StoreValues written by others while a batch is being consumed become visible with the next
+ *    batch. Any movement other than forward iteration discards the batch.</p>
  * FIXME: This currently does not deal very well with moving to the very beginning or the very end of the Store.
  */
 class SqlStoreIterator
@@ -34,12 +45,188 @@ class SqlStoreIterator
      *
      * @param store the AbstractSqlStore to iterate over
      * @param position the key of the current position
+     * @param batchSize the number of StoreValues to read ahead when iterating forward
      */
     protected SqlStoreIterator(
             AbstractSqlStore store,
-            String           position )
+            String           position,
+            int              batchSize )
     {
         super( store, position );
+
+        if( batchSize < 1 ) {
+            throw new IllegalArgumentException( "Batch size must be positive: " + batchSize );
+        }
+        theBatchSize = batchSize;
+    }
+
+    /**
+     * Obtain the number of StoreValues that this iterator reads ahead when iterating forward.
+     *
+     * @return the batch size
+     */
+    public int getBatchSize()
+    {
+        return theBatchSize;
+    }
+
+    /**
+     * Obtain the next element, without iterating forward.
+     *
+     * @return the next element
+     * @throws NoSuchElementException iteration has no current element (e.g. because the end of the iteration was reached)
+     */
+    @Override
+    public StoreValue peekNext()
+    {
+        if( ensureBuffered( 1 ) < 1 ) {
+            throw new NoSuchElementException();
+        }
+        return theBuffer[ theBufferIndex ];
+    }
+
+    /**
+     * Obtain the next key, without iterating forward.
+     *
+     * @return the next key
+     * @throws NoSuchElementException iteration has no current element (e.g. because the end of the iteration was reached)
+     */
+    @Override
+    public String peekNextKey()
+    {
+        return peekNext().getKey();
+    }
+
+    /**
+     * Returns <tt>true</tt> if the iteration has at least N more elements in the forward direction.
+     *
+     * @param n the number of elements for which to check
+     * @return <tt>true</tt> if the iterator has at least N more elements in the forward direction.
+     */
+    @Override
+    public boolean hasNext(
+            int n )
+    {
+        return ensureBuffered( n ) >= n;
+    }
+
+    /**
+     * <p>Obtain the next N elements. If fewer than N elements are available, return
+     * as many elements are available in a shorter array.</p>
+     *
+     * @param n the number of elements to obtain
+     * @return the next no more than N elements
+     */
+    @Override
+    public StoreValue [] next(
+            int n )
+    {
+        // we need to look one further, so we can set the new position right after what's returned here
+        int available = ensureBuffered( n+1 );
+        if( available == 0 ) {
+            thePosition = getAfterLastPosition();
+            return new StoreValue[0];
+        }
+        int count = Math.min( n, available );
+
+        StoreValue [] ret = ArrayHelper.copyIntoNewArray( theBuffer, theBufferIndex, theBufferIndex + count, StoreValue.class );
+
+        theBufferIndex += count;
+        if( theBufferIndex < theBuffer.length ) {
+            thePosition = theBuffer[ theBufferIndex ].getKey();
+        } else {
+            thePosition = getAfterLastPosition(); // the batch reaches the end, no need to ask the database again
+        }
+        return ret;
+    }
+
+    /**
+     * <p>Obtain the next N keys. If fewer than N elements are available, return
+     * as many keys are available in a shorter array.</p>
+     *
+     * @param n the number of keys to obtain
+     * @return the next no more than N keys
+     */
+    @Override
+    public String [] nextKey(
+            int n )
+    {
+        StoreValue [] values = next( n );
+        String     [] ret    = new String[ values.length ];
+
+        for( int i=0 ; i<values.length ; ++i ) {
+            ret[i] = values[i].getKey();
+        }
+        return ret;
+    }
+
+    /**
+     * Removes from the underlying collection the last element returned by the
+     * iterator.
+     */
+    @Override
+    public void remove()
+    {
+        theBuffer = null;
+
+        super.remove();
+    }
+
+    /**
+     * Set this CursorIterator to the position represented by the provided CursorIterator.
+     *
+     * @param position the position to set this CursorIterator to
+     * @throws ClassCastException thrown if the provided CursorIterator did not work on the same CursorIterable,
+     *         or the implementations were incompatible.
+     */
+    @Override
+    public void setPositionTo(
+            CursorIterator<StoreValue> position )
+        throws
+            ClassCastException
+    {
+        theBuffer = null;
+
+        super.setPositionTo( position );
+    }
+
+    /**
+     * Make sure that at least n StoreValues starting at the current position have been
+     * read ahead, unless the end of the Store comes first. Reads a new batch if the
+     * current batch does not start at the current position any more, or is too short.
+     *
+     * @param n the number of StoreValues needed
+     * @return the number of StoreValues available in the current batch, starting at the current position
+     */
+    protected int ensureBuffered(
+            int n )
+    {
+        if( thePosition == null ) {
+            return 0; // after last
+        }
+        if( theBuffer != null ) {
+            if(    theBufferIndex >= theBuffer.length
+                || !thePosition.equals( theBuffer[ theBufferIndex ].getKey() ))
+            {
+                theBuffer = null; // somebody moved the cursor
+            } else {
+                int available = theBuffer.length - theBufferIndex;
+                if( available >= n || theBufferReachesEnd ) {
+                    return available;
+                }
+            }
+        }
+
+        int wanted = Math.max( n, theBatchSize );
+
+        theBuffer           = findNextIncluding( thePosition, wanted );
+        theBufferIndex      = 0;
+        theBufferReachesEnd = theBuffer.length < wanted;
+
+        if( log.isDebugEnabled() ) {
+            log.debug( this + ".ensureBuffered( " + n + " ): read " + theBuffer.length + " values" );
+        }
+        return theBuffer.length;
     }
 
     /**
@@ -196,6 +383,27 @@ class SqlStoreIterator
      */
     public SqlStoreIterator createCopy()
     {
-        return new SqlStoreIterator( (AbstractSqlStore) theStore, thePosition );
+        return new SqlStoreIterator( (AbstractSqlStore) theStore, thePosition, theBatchSize );
     }
+
+    /**
+     * The number of StoreValues to read ahead when iterating forward.
+     */
+    protected int theBatchSize;
+
+    /**
+     * The StoreValues read ahead, if any. The StoreValue at theBufferIndex is the one
+     * at the current position, unless the cursor has been moved in the meantime.
+     */
+    protected StoreValue [] theBuffer;
+
+    /**
+     * Index of the StoreValue at the current position in theBuffer.
+     */
+    protected int theBufferIndex;
+
+    /**
+     * True if theBuffer contains all StoreValues until the end of the Store.
+     */
+    protected boolean theBufferReachesEnd;
 }
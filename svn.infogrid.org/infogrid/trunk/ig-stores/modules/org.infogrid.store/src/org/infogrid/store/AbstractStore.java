@@ -139,6 +139,105 @@ public abstract class AbstractStore
         return ret;
     }
     
+    /**
+     * Obtain several data elements and associated meta-data from the Store at the same time,
+     * given their keys. This default implementation invokes {@link #get} once for each key;
+     * subclasses that can do better should override.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @return the StoreValues stored in the Store for these keys, in the same sequence as the keys.
+     *         If there is no data element in the Store for a key, the corresponding entry is null
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public StoreValue [] getMultiple(
+            String [] keys )
+        throws
+            IOException
+    {
+        StoreValue [] ret = new StoreValue[ keys.length ];
+        for( int i=0 ; i<keys.length ; ++i ) {
+            try {
+                ret[i] = get( keys[i] );
+            } catch( StoreKeyDoesNotExistException ex ) {
+                ret[i] = null;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Put (if does not exist already) or update (if it does exist) several data elements in the
+     * Store at the same time. This default implementation invokes {@link #putOrUpdate} once for each
+     * data element; subclasses that can do better should override.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @return for each StoreValue, in the same sequence: true if the value was updated, false if it was put
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public boolean [] putOrUpdateMultiple(
+            StoreValue [] toStoreOrUpdate )
+        throws
+            IOException
+    {
+        boolean [] ret = new boolean[ toStoreOrUpdate.length ];
+        for( int i=0 ; i<toStoreOrUpdate.length ; ++i ) {
+            ret[i] = putOrUpdate( toStoreOrUpdate[i] );
+        }
+        return ret;
+    }
+
+    /**
+     * Delete several data elements at the same time, given their keys. This default implementation
+     * invokes {@link #delete} once for each key; subclasses that can do better should override.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @return for each key, in the same sequence: true if a data element was deleted, false if none existed
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public boolean [] deleteMultiple(
+            String [] keys )
+        throws
+            IOException
+    {
+        boolean [] ret = new boolean[ keys.length ];
+        for( int i=0 ; i<keys.length ; ++i ) {
+            try {
+                delete( keys[i] );
+                ret[i] = true;
+            } catch( StoreKeyDoesNotExistException ex ) {
+                ret[i] = false;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Put or update several data elements, and delete several other data elements, as a single
+     * operation. This default implementation invokes {@link #putOrUpdateMultiple} and then
+     * {@link #deleteMultiple}, and thus is not atomic; subclasses that support transactions
+     * should override.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @param toDelete the keys to the data elements to delete
+     * @return first, for each StoreValue, in the same sequence: true if the value was updated, false if it was put;
+     *         then, for each key to delete, in the same sequence: true if a data element was deleted, false if none existed
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public boolean [] putOrUpdateAndDeleteMultiple(
+            StoreValue [] toStoreOrUpdate,
+            String []     toDelete )
+        throws
+            IOException
+    {
+        boolean [] updated = putOrUpdateMultiple( toStoreOrUpdate );
+        boolean [] deleted = deleteMultiple( toDelete );
+
+        boolean [] ret = new boolean[ updated.length + deleted.length ];
+        System.arraycopy( updated, 0, ret, 0,              updated.length );
+        System.arraycopy( deleted, 0, ret, updated.length, deleted.length );
+        return ret;
+    }
+
     /**
      * Remove all data in this Store.
      *
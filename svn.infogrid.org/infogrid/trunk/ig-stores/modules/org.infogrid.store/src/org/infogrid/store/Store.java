@@ -248,6 +248,75 @@ public interface Store
             StoreKeyDoesNotExistException,
             IOException;
 
+    /**
+     * Obtain several data elements and associated meta-data from the Store at the same time,
+     * given their keys. Depending on the implementation, this may be considerably faster than
+     * invoking {@link #get} once for each key.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @return the StoreValues stored in the Store for these keys, in the same sequence as the keys.
+     *         If there is no data element in the Store for a key, the corresponding entry is null
+     * @throws IOException thrown if an I/O error occurred
+     *
+     * @see #get to obtain a single data element
+     */
+    public StoreValue [] getMultiple(
+            String [] keys )
+        throws
+            IOException;
+
+    /**
+     * Put (if does not exist already) or update (if it does exist) several data elements in the
+     * Store at the same time. Depending on the implementation, this may be considerably faster than
+     * invoking {@link #putOrUpdate} once for each data element.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @return for each StoreValue, in the same sequence: true if the value was updated, false if it was put
+     * @throws IOException thrown if an I/O error occurred
+     *
+     * @see #putOrUpdate to put or update a single data element
+     */
+    public boolean [] putOrUpdateMultiple(
+            StoreValue [] toStoreOrUpdate )
+        throws
+            IOException;
+
+    /**
+     * Delete several data elements at the same time, given their keys. Unlike {@link #delete},
+     * this does not throw an Exception if there is no data element for one of the keys.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @return for each key, in the same sequence: true if a data element was deleted, false if none existed
+     * @throws IOException thrown if an I/O error occurred
+     *
+     * @see #delete to delete a single data element
+     */
+    public boolean [] deleteMultiple(
+            String [] keys )
+        throws
+            IOException;
+
+    /**
+     * Put or update several data elements, and delete several other data elements, as a single
+     * operation. Stores that support transactions perform this atomically: either all changes are
+     * made, or, if an IOException is thrown, none of them are. Like {@link #deleteMultiple},
+     * this does not throw an Exception if there is no data element for one of the keys to be deleted.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @param toDelete the keys to the data elements to delete
+     * @return first, for each StoreValue, in the same sequence: true if the value was updated, false if it was put;
+     *         then, for each key to delete, in the same sequence: true if a data element was deleted, false if none existed
+     * @throws IOException thrown if an I/O error occurred
+     *
+     * @see #putOrUpdateMultiple
+     * @see #deleteMultiple
+     */
+    public boolean [] putOrUpdateAndDeleteMultiple(
+            StoreValue [] toStoreOrUpdate,
+            String []     toDelete )
+        throws
+            IOException;
+
     /**
      * Remove all data elements in this Store.
      *
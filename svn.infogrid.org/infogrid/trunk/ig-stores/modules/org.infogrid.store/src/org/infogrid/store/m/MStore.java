@@ -16,6 +16,7 @@ package org.infogrid.store.m;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
@@ -356,6 +357,26 @@ public class MStore
         // otherwise no harm done
     }
 
+    /**
+     * Put or update several data elements, and delete several other data elements, as a single
+     * operation. No other thread can access this Store while this is in progress.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @param toDelete the keys to the data elements to delete
+     * @return first, for each StoreValue, in the same sequence: true if the value was updated, false if it was put;
+     *         then, for each key to delete, in the same sequence: true if a data element was deleted, false if none existed
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public synchronized boolean [] putOrUpdateAndDeleteMultiple(
+            StoreValue [] toStoreOrUpdate,
+            String []     toDelete )
+        throws
+            IOException
+    {
+        return super.putOrUpdateAndDeleteMultiple( toStoreOrUpdate, toDelete );
+    }
+
     /**
      * Remove all data elements in this Store.
      *
@@ -390,9 +411,10 @@ public class MStore
         if( log.isTraceEnabled() ) {
             log.traceMethodCallEntry( this, "deleteAll", startsWith );
         }
-        for( String key : theDelegate.keySet() ) {
-            if( key.startsWith( startsWith )) {
-                theDelegate.remove( key );
+        Iterator<String> iter = theDelegate.keySet().iterator();
+        while( iter.hasNext() ) {
+            if( iter.next().startsWith( startsWith )) {
+                iter.remove();
             }
         }
         fireDeleteAllPerformed( startsWith );
@@ -395,6 +395,142 @@ public class PrefixingStore
         }
     }
 
+    /**
+     * Obtain several data elements and associated meta-data from the Store at the same time,
+     * given their keys.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @return the StoreValues stored in the Store for these keys, in the same sequence as the keys.
+     *         If there is no data element in the Store for a key, the corresponding entry is null
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public StoreValue [] getMultiple(
+            String [] keys )
+        throws
+            IOException
+    {
+        String [] delegatedKeys = new String[ keys.length ];
+        for( int i=0 ; i<keys.length ; ++i ) {
+            delegatedKeys[i] = constructDelegatedKey( keys[i] );
+        }
+
+        StoreValue [] delegateValues = theDelegate.getMultiple( delegatedKeys );
+        StoreValue [] ret            = new StoreValue[ delegateValues.length ];
+
+        for( int i=0 ; i<delegateValues.length ; ++i ) {
+            if( delegateValues[i] != null ) {
+                ret[i] = translateDelegateStoreValue( delegateValues[i] );
+                fireGetPerformed( ret[i] );
+            } else {
+                fireGetFailed( keys[i] );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Put (if does not exist already) or update (if it does exist) several data elements in the
+     * Store at the same time.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @return for each StoreValue, in the same sequence: true if the value was updated, false if it was put
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public boolean [] putOrUpdateMultiple(
+            StoreValue [] toStoreOrUpdate )
+        throws
+            IOException
+    {
+        StoreValue [] delegateValues = new StoreValue[ toStoreOrUpdate.length ];
+        for( int i=0 ; i<toStoreOrUpdate.length ; ++i ) {
+            delegateValues[i] = translateToDelegateStoreValue( toStoreOrUpdate[i] );
+        }
+
+        boolean [] ret = theDelegate.putOrUpdateMultiple( delegateValues );
+
+        for( int i=0 ; i<ret.length ; ++i ) {
+            if( !ret[i] ) {
+                firePutPerformed( toStoreOrUpdate[i] );
+            } else {
+                fireUpdatePerformed( toStoreOrUpdate[i] );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Delete several data elements at the same time, given their keys.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @return for each key, in the same sequence: true if a data element was deleted, false if none existed
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public boolean [] deleteMultiple(
+            String [] keys )
+        throws
+            IOException
+    {
+        String [] delegatedKeys = new String[ keys.length ];
+        for( int i=0 ; i<keys.length ; ++i ) {
+            delegatedKeys[i] = constructDelegatedKey( keys[i] );
+        }
+
+        boolean [] ret = theDelegate.deleteMultiple( delegatedKeys );
+
+        for( int i=0 ; i<ret.length ; ++i ) {
+            if( ret[i] ) {
+                fireDeletePerformed( keys[i] );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Put or update several data elements, and delete several other data elements, as a single
+     * operation. This is as atomic as the delegate Store.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @param toDelete the keys to the data elements to delete
+     * @return first, for each StoreValue, in the same sequence: true if the value was updated, false if it was put;
+     *         then, for each key to delete, in the same sequence: true if a data element was deleted, false if none existed
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public boolean [] putOrUpdateAndDeleteMultiple(
+            StoreValue [] toStoreOrUpdate,
+            String []     toDelete )
+        throws
+            IOException
+    {
+        StoreValue [] delegateValues = new StoreValue[ toStoreOrUpdate.length ];
+        for( int i=0 ; i<toStoreOrUpdate.length ; ++i ) {
+            delegateValues[i] = translateToDelegateStoreValue( toStoreOrUpdate[i] );
+        }
+        String [] delegatedKeys = new String[ toDelete.length ];
+        for( int i=0 ; i<toDelete.length ; ++i ) {
+            delegatedKeys[i] = constructDelegatedKey( toDelete[i] );
+        }
+
+        boolean [] ret = theDelegate.putOrUpdateAndDeleteMultiple( delegateValues, delegatedKeys );
+
+        for( int i=0 ; i<toStoreOrUpdate.length ; ++i ) {
+            if( !ret[i] ) {
+                firePutPerformed( toStoreOrUpdate[i] );
+            } else {
+                fireUpdatePerformed( toStoreOrUpdate[i] );
+            }
+        }
+        for( int i=0 ; i<toDelete.length ; ++i ) {
+            if( ret[ toStoreOrUpdate.length + i ] ) {
+                fireDeletePerformed( toDelete[i] );
+            }
+        }
+        return ret;
+    }
+
     /**
      * Remove all data elements in this Store.
      *
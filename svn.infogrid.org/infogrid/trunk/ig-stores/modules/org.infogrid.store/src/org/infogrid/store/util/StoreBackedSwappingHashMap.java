@@ -16,6 +16,8 @@ package org.infogrid.store.util;
 
 import java.io.IOException;
 import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import org.infogrid.store.IterableStore;
 import org.infogrid.store.Store;
 import org.infogrid.store.StoreEntryMapper;
@@ -23,6 +25,7 @@ import org.infogrid.store.StoreKeyDoesNotExistException;
 import org.infogrid.store.StoreValue;
 import org.infogrid.store.StoreValueDecodingException;
 import org.infogrid.store.StoreValueEncodingException;
+import org.infogrid.util.BoundedWorkingSet;
 import org.infogrid.util.CursorIterator;
 import org.infogrid.util.MapCursorIterator;
 import org.infogrid.util.SwappingHashMap;
@@ -186,8 +189,27 @@ public abstract class StoreBackedSwappingHashMap<K,V>
         cleanup();
         Reference<V> found = theDelegate.get( key );
         V ret = found != null ? found.get() : null;
-        
-        if( ret == null ) {
+
+        BoundedWorkingSet<K,V> workingSet = theWorkingSet;
+        if( ret != null ) {
+            if( workingSet != null ) {
+                workingSet.recordHit( key, ret );
+            }
+            return ret;
+        }
+
+        ReentrantLock lock = lockFor( key );
+        lock.lock();
+        try {
+            found = theDelegate.get( key ); // may have been loaded by another thread in the meantime
+            ret   = found != null ? found.get() : null;
+
+            if( ret != null ) {
+                if( workingSet != null ) {
+                    workingSet.recordHit( key, ret );
+                }
+                return ret;
+            }
             try {
                 ret = theMapper.decodeValue( key, storeValue );
 
@@ -197,8 +219,14 @@ public abstract class StoreBackedSwappingHashMap<K,V>
             if( ret != null ) {
                 theDelegate.put( key, createReference( key, ret ));
             }
+            if( workingSet != null ) {
+                workingSet.recordMiss( key, ret );
+            }
+
+        } finally {
+            lock.unlock();
         }
-        return ret;        
+        return ret;
     }
 
     /**
@@ -304,6 +332,95 @@ public abstract class StoreBackedSwappingHashMap<K,V>
         return null;
     }
 
+    /**
+     * This method is overridden to load all missing values from the Store with a single
+     * invocation of {@link Store#getMultiple}.
+     *
+     * @param keys the keys
+     * @param values the values; only those entries that are null shall be loaded
+     */
+    @Override
+    protected void loadValuesFromStorage(
+            K [] keys,
+            V [] values )
+    {
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "loadValuesFromStorage", keys );
+        }
+
+        // the same key may be given more than once: ask the Store only once, and decode only once,
+        // so all occurrences get the same value
+        HashMap<String,Integer> positions    = new HashMap<String,Integer>();
+        String []               stringKeys   = new String[ keys.length ];
+        int []                  firstIndices = new int[ keys.length ];
+        int []                  keyPositions = new int[ keys.length ];
+        int                     count        = 0;
+
+        for( int i=0 ; i<keys.length ; ++i ) {
+            if( values[i] == null ) {
+                String  stringKey = theMapper.keyToString( keys[i] );
+                Integer position  = positions.get( stringKey );
+                if( position == null ) {
+                    position = count;
+                    positions.put( stringKey, position );
+                    stringKeys[ count ]     = stringKey;
+                    firstIndices[ count++ ] = i;
+                }
+                keyPositions[i] = position;
+            } else {
+                keyPositions[i] = -1;
+            }
+        }
+        if( count == 0 ) {
+            return;
+        }
+        if( count < stringKeys.length ) {
+            String [] temp = new String[ count ];
+            System.arraycopy( stringKeys, 0, temp, 0, count );
+            stringKeys = temp;
+        }
+
+        try {
+            StoreValue [] found = getMultipleFromStore( stringKeys );
+
+            for( int i=0 ; i<count ; ++i ) {
+                if( found[i] == null ) {
+                    continue;
+                }
+                try {
+                    values[ firstIndices[i] ] = theMapper.decodeValue( keys[ firstIndices[i] ], found[i] );
+
+                } catch( StoreValueDecodingException ex ) {
+                    log.error( this, ".loadValuesFromStorage", keys[ firstIndices[i] ], ex );
+                }
+            }
+            for( int i=0 ; i<keys.length ; ++i ) {
+                if( keyPositions[i] >= 0 ) {
+                    values[i] = values[ firstIndices[ keyPositions[i] ]];
+                }
+            }
+
+        } catch( IOException ex ) {
+            log.error( this, ".loadValuesFromStorage", ex );
+        }
+    }
+
+    /**
+     * Obtain several values from the Store. This is a separate method so subclasses can
+     * take into account values that have not been written to the Store yet.
+     *
+     * @param stringKeys the keys
+     * @return the found values, in the same sequence as the keys, or null for keys that were not found
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected StoreValue [] getMultipleFromStore(
+            String [] stringKeys )
+        throws
+            IOException
+    {
+        return theStore.getMultiple( stringKeys );
+    }
+
     /**
      * This method may be overridden by subclasses, to update a value in the external
      * store that has been updated.
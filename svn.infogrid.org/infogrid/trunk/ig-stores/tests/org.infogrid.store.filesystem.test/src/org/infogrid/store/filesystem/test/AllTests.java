@@ -33,6 +33,7 @@ public abstract class AllTests
     {
         TestSpec [] tests = {
                 new TestSpec( FilesystemStoreTest1.class ),
+                new TestSpec( FilesystemStoreTest2.class ),
                 new TestSpec( FilesystemStoreIteratorTest1.class ),
                 new TestSpec( FilesystemStoreIteratorTest2.class ),
                 new TestSpec( FilesystemStoreIteratorTest3.class ),
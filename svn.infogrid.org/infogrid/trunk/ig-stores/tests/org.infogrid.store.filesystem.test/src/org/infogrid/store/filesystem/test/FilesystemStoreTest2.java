@@ -0,0 +1,234 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.filesystem.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.filesystem.FilesystemStore;
+import org.infogrid.store.filesystem.SubdirectoryKeyFileMapper;
+import org.infogrid.store.util.SimpleStoreValueMapper;
+import org.infogrid.util.NamedThreadFactory;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests the operations of the FilesystemStore that work on several data elements at the same time.
+ */
+public class FilesystemStoreTest2
+        extends
+            FilesystemStoreTest1
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Override
+    public void run()
+        throws
+            Exception
+    {
+        //
+
+        log.info( "Deleting old Store and creating new Store" );
+
+        try {
+            theFilesystemStore.deleteAll();
+        } catch( IOException ex ) {
+            // ignore this one
+        }
+
+        MyListener listener = new MyListener();
+        theTestStore.addDirectStoreListener( listener );
+
+        //
+
+        log.info( "Inserting data and checking it's there" );
+
+        StoreValue [] values = new StoreValue[ firstSet.length ];
+        String []     keys   = new String[ firstSet.length + 1 ];
+
+        for( int i=0 ; i<firstSet.length ; ++i ) {
+            TestData current = firstSet[i];
+            values[i] = new StoreValue(
+                    current.theKey,
+                    current.theEncodingId,
+                    current.theTimeCreated,
+                    current.theTimeUpdated,
+                    current.theTimeRead,
+                    current.theTimeExpires,
+                    current.theData );
+            keys[i] = current.theKey;
+        }
+        keys[ firstSet.length ] = "/does/not/exist";
+
+        boolean [] updated = theTestStore.putOrUpdateMultiple( values );
+
+        checkEquals( updated.length, firstSet.length, "Wrong number of results" );
+        for( int i=0 ; i<updated.length ; ++i ) {
+            checkCondition( !updated[i], "Updated rather than put: " + i );
+        }
+        checkEquals( listener.thePuts.size(),    firstSet.length, "Wrong number of puts" );
+        checkEquals( listener.theUpdates.size(), 0,               "Wrong number of updates" );
+        listener.reset();
+
+        StoreValue [] found = theTestStore.getMultiple( keys );
+
+        checkEquals( found.length, keys.length, "Wrong number of results" );
+        for( int i=0 ; i<firstSet.length ; ++i ) {
+            TestData current = firstSet[i];
+
+            if( checkObject( found[i], "not found: " + current.theKey )) {
+                checkEquals(          current.theKey,             found[i].getKey(),          "not the same key" );
+                checkEquals(          current.theEncodingId,      found[i].getEncodingId(),   "not the same encodingId" );
+                checkEquals(          current.theTimeCreated,     found[i].getTimeCreated(),  "not the same timeCreated" );
+                checkEquals(          current.theTimeUpdated,     found[i].getTimeUpdated(),  "not the same timeUpdated" );
+                checkEquals(          current.theTimeRead,        found[i].getTimeRead(),     "not the same timeRead" );
+                checkEquals(          current.theTimeExpires,     found[i].getTimeExpires(),  "not the same timeExpires" );
+                checkEqualByteArrays( current.theData,            found[i].getData(),         "not the same content" );
+            }
+        }
+        checkCondition( found[ firstSet.length ] == null, "found non-existing key" );
+
+        checkEquals( listener.theGets.size(),       firstSet.length, "Wrong number of gets" );
+        checkEquals( listener.theFailedGets.size(), 1,               "Wrong number of failedGets" );
+        listener.reset();
+
+        //
+
+        log.info( "Updating data" );
+
+        updated = theTestStore.putOrUpdateMultiple( values );
+
+        for( int i=0 ; i<updated.length ; ++i ) {
+            checkCondition( updated[i], "Put rather than updated: " + i );
+        }
+        checkEquals( listener.thePuts.size(),    0,               "Wrong number of puts" );
+        checkEquals( listener.theUpdates.size(), firstSet.length, "Wrong number of updates" );
+        listener.reset();
+
+        //
+
+        log.info( "Deleting data and checking it's gone" );
+
+        boolean [] deleted = theTestStore.deleteMultiple( new String[] { thirdSet[0].theKey, "/does/not/exist" } );
+
+        checkCondition(  deleted[0], "not deleted" );
+        checkCondition( !deleted[1], "deleted non-existing key" );
+        checkEquals( listener.theDeletes.size(), 1, "Wrong number of deletes" );
+        listener.reset();
+
+        found = theTestStore.getMultiple( new String[] { thirdSet[0].theKey } );
+        checkCondition( found[0] == null, "delete was unsuccessful" );
+
+        //
+
+        log.info( "Updating and deleting data together" );
+
+        boolean [] results = theTestStore.putOrUpdateAndDeleteMultiple(
+                new StoreValue[] { values[0] },
+                new String[] { firstSet[1].theKey, "/does/not/exist" } );
+
+        checkEquals( results.length, 3, "Wrong number of results" );
+        checkCondition(  results[0], "Put rather than updated" );
+        checkCondition(  results[1], "not deleted" );
+        checkCondition( !results[2], "deleted non-existing key" );
+        checkEquals( listener.theUpdates.size(), 1, "Wrong number of updates" );
+        checkEquals( listener.theDeletes.size(), 1, "Wrong number of deletes" );
+        listener.reset();
+
+        found = theTestStore.getMultiple( new String[] { firstSet[0].theKey, firstSet[1].theKey } );
+        checkObject(    found[0],         "updated data not found" );
+        checkCondition( found[1] == null, "delete was unsuccessful" );
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        FilesystemStoreTest2 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new FilesystemStoreTest2( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    public FilesystemStoreTest2(
+            String [] args )
+        throws
+            Exception
+    {
+        super( FilesystemStoreTest2.class );
+
+        theExecutor = Executors.newFixedThreadPool( 4, new NamedThreadFactory( getClass().getName() ));
+
+        File subdir = new File( test_SUBDIR_NAME );
+
+        theFilesystemStore = FilesystemStore.create(
+                subdir,
+                SubdirectoryKeyFileMapper.create( subdir ),
+                SimpleStoreValueMapper.create(),
+                theExecutor );
+        theTestStore = theFilesystemStore;
+    }
+
+    /**
+     * Clean up after the test.
+     */
+    @Override
+    public void cleanup()
+    {
+        theExecutor.shutdown();
+    }
+
+    /**
+     * The ExecutorService that reads files in parallel.
+     */
+    protected ExecutorService theExecutor;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( FilesystemStoreTest2.class);
+}
@@ -0,0 +1,44 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.mappedlog.test;
+
+import org.infogrid.testharness.AbstractTestGroup;
+
+/**
+ * Tests the memory-mapped log implementation of Store.
+ */
+public abstract class AllTests
+        extends
+            AbstractTestGroup
+{
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        TestSpec [] tests = {
+                new TestSpec( MappedLogStoreTest1.class ),
+                new TestSpec( MappedLogStoreTest2.class ),
+                new TestSpec( MappedLogStoreIteratorTest1.class ),
+                new TestSpec( MappedLogStoreIteratorTest2.class ),
+                new TestSpec( MappedLogStoreIteratorTest3.class ),
+        };
+
+        runTests( tests );
+    }
+}
@@ -0,0 +1,257 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.mappedlog.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.infogrid.store.StoreKeyDoesNotExistException;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.mappedlog.MappedLogStore;
+import org.infogrid.util.NamedThreadFactory;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that a MappedLogStore recovers its content from its segment files, discards
+ * incompletely written records, and compacts its segments.
+ */
+public class MappedLogStoreTest2
+        extends
+            MappedLogStoreTest1
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Override
+    public void run()
+        throws
+            Exception
+    {
+        File subdir = new File( test_SUBDIR_NAME );
+
+        //
+
+        log.info( "Creating new Store with small segments and filling it" );
+
+        MappedLogStore store = MappedLogStore.create( subdir, SEGMENT_SIZE, null );
+        store.initializeHard();
+
+        HashMap<String,byte[]> expected = new HashMap<String,byte[]>();
+
+        for( int i=0 ; i<N ; ++i ) {
+            String key = "/key/" + i;
+            store.put( key, ENCODING_ID, i, i, i, -1L, data( key, 0 ));
+            expected.put( key, data( key, 0 ));
+        }
+        for( int round=1 ; round<=2 ; ++round ) {
+            for( int i=0 ; i<N ; i+=2 ) {
+                String key = "/key/" + i;
+                store.update( key, ENCODING_ID, i, i+round, i, -1L, data( key, round ));
+                expected.put( key, data( key, round ));
+            }
+        }
+        for( int i=0 ; i<N ; i+=5 ) {
+            String key = "/key/" + i;
+            store.delete( key );
+            expected.remove( key );
+        }
+        checkContent( store, expected, "original Store" );
+        checkCondition( store.getSegmentCount() > 1, "Not enough segments: " + store.getSegmentCount() );
+
+        //
+
+        log.info( "Recovering from segment files" );
+
+        store = MappedLogStore.create( subdir, SEGMENT_SIZE, null );
+        checkContent( store, expected, "recovered Store" );
+
+        //
+
+        log.info( "Recovering with incompletely written data at the end" );
+
+        byte [] torn = new byte[ 64 ];
+        torn[3] = 4;  // body length 4
+        torn[8] = 1;  // body that does not match the checksum 0
+        torn[9] = 2;
+
+        FileOutputStream out = new FileOutputStream( new File( subdir, "segment-09999999.log" ));
+        out.write( torn );
+        out.close();
+
+        store = MappedLogStore.create( subdir, SEGMENT_SIZE, null );
+        checkContent( store, expected, "Store with incomplete data" );
+
+        store.put( "/after-torn", ENCODING_ID, 1L, 2L, 3L, -1L, data( "/after-torn", 0 ));
+        expected.put( "/after-torn", data( "/after-torn", 0 ));
+
+        store = MappedLogStore.create( subdir, SEGMENT_SIZE, null );
+        checkContent( store, expected, "Store written after incomplete data" );
+
+        //
+
+        log.info( "Compacting" );
+
+        int before = store.getSegmentCount();
+        store.compact();
+        int after = store.getSegmentCount();
+
+        log.debug( "Segments before compaction: " + before + ", after: " + after );
+        checkCondition( after < before, "Compaction did not reduce number of segments: " + before + " vs. " + after );
+        checkContent( store, expected, "compacted Store" );
+
+        store = MappedLogStore.create( subdir, SEGMENT_SIZE, null );
+        checkContent( store, expected, "Store recovered after compaction" );
+
+        //
+
+        log.info( "Compacting in the background" );
+
+        ExecutorService exec = Executors.newSingleThreadExecutor( new NamedThreadFactory( getClass().getName() ));
+
+        store = MappedLogStore.create( subdir, SEGMENT_SIZE, exec );
+        store.initializeHard();
+
+        for( int round=0 ; round<50 ; ++round ) {
+            store.putOrUpdate( "/hot", ENCODING_ID, 1L, round, 1L, -1L, data( "/hot", round ));
+        }
+        exec.shutdown();
+        exec.awaitTermination( 10, TimeUnit.SECONDS );
+
+        checkCondition( store.getSegmentCount() <= 3, "Background compaction did not happen: " + store.getSegmentCount() );
+        checkEqualByteArrays( store.get( "/hot" ).getData(), data( "/hot", 49 ), "wrong value after background compaction" );
+
+        store = MappedLogStore.create( subdir, SEGMENT_SIZE, null );
+        checkEquals( store.size(), 1, "wrong size after background compaction" );
+        checkEqualByteArrays( store.get( "/hot" ).getData(), data( "/hot", 49 ), "wrong value after recovery" );
+    }
+
+    /**
+     * Check that a Store has the expected content, and nothing else.
+     *
+     * @param store the Store
+     * @param expected the expected data, keyed by key
+     * @param msg the message to emit in case of errors
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    protected void checkContent(
+            MappedLogStore     store,
+            Map<String,byte[]> expected,
+            String             msg )
+        throws
+            Exception
+    {
+        checkEquals( store.size(), expected.size(), msg + ": wrong size" );
+
+        for( Map.Entry<String,byte[]> current : expected.entrySet() ) {
+            StoreValue found = store.get( current.getKey() );
+            checkEqualByteArrays( found.getData(), current.getValue(), msg + ": wrong data for " + current.getKey() );
+        }
+        for( int i=0 ; i<N ; ++i ) {
+            String key = "/key/" + i;
+            if( !expected.containsKey( key )) {
+                try {
+                    store.get( key );
+                    reportError( msg + ": deleted key found", key );
+
+                } catch( StoreKeyDoesNotExistException ex ) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    /**
+     * Construct test data.
+     *
+     * @param key the key
+     * @param round the number of times the data has been updated
+     * @return the data
+     */
+    protected static byte [] data(
+            String key,
+            int    round )
+    {
+        return bytes( "Data for " + key + " in round " + round + ", padded to use up some space in the segments" );
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        MappedLogStoreTest2 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new MappedLogStoreTest2( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    public MappedLogStoreTest2(
+            String [] args )
+        throws
+            Exception
+    {
+        super( MappedLogStoreTest2.class );
+
+        theTestStore = theMappedLogStore;
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( MappedLogStoreTest2.class);
+
+    /**
+     * The number of keys to test with.
+     */
+    protected static final int N = 200;
+
+    /**
+     * The size of the segments to test with, so the test data spans several of them.
+     */
+    protected static final int SEGMENT_SIZE = 4096;
+}
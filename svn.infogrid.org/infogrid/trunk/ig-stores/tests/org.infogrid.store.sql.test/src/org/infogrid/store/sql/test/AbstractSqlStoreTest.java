@@ -16,6 +16,7 @@ package org.infogrid.store.sql.test;
 
 import com.mysql.jdbc.jdbc2.optional.MysqlDataSource;
 import java.sql.SQLException;
+import javax.sql.DataSource;
 import org.infogrid.store.IterableStore;
 import org.infogrid.store.sql.AbstractSqlStore;
 import org.infogrid.store.sql.mysql.MysqlStore;
@@ -45,17 +46,21 @@ public abstract class AbstractSqlStoreTest
     {
         super( localFileName( testClass, "/ResourceHelper" ));
         
+        theDataBaseEngine = dataBaseEngine;
+
         if( "mysql".equalsIgnoreCase( dataBaseEngine ) ) {
-            MysqlDataSource theDataSource = new MysqlDataSource();
-            theDataSource.setDatabaseName( test_DATABASE_NAME );
+            MysqlDataSource mysqlDataSource = new MysqlDataSource();
+            mysqlDataSource.setDatabaseName( test_DATABASE_NAME );
+            theDataSource = mysqlDataSource;
             
             theSqlStore = MysqlStore.create( theDataSource, test_TABLE_NAME );
         
         } else if( "postgresql".equalsIgnoreCase( dataBaseEngine )) {
-            PGSimpleDataSource theDataSource = new PGSimpleDataSource();
-            theDataSource.setDatabaseName( test_DATABASE_NAME );
-            theDataSource.setUser( "test" );
-            theDataSource.setPassword( "" );
+            PGSimpleDataSource pgDataSource = new PGSimpleDataSource();
+            pgDataSource.setDatabaseName( test_DATABASE_NAME );
+            pgDataSource.setUser( "test" );
+            pgDataSource.setPassword( "" );
+            theDataSource = pgDataSource;
             
             theSqlStore = PostgresqlStore.create( theDataSource, test_TABLE_NAME );
             
@@ -64,6 +69,16 @@ public abstract class AbstractSqlStoreTest
         }
     }
 
+    /**
+     * Name of the database engine used for testing.
+     */
+    protected String theDataBaseEngine;
+
+    /**
+     * The DataSource for the database used for testing.
+     */
+    protected DataSource theDataSource;
+
     /**
      * The AbstractSqlStore to be tested.
      */
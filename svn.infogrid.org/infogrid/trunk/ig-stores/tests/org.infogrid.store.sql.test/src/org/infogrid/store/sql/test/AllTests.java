@@ -47,10 +47,12 @@ public abstract class AllTests
                     new TestSpec( SqlStoreTest5.class, dbEngine ),
                     new TestSpec( SqlStoreTest6.class, dbEngine ),
                     new TestSpec( SqlStoreTest7.class, dbEngine ),
+                    new TestSpec( SqlStoreTest8.class, dbEngine ),
 
                     new TestSpec( SqlStoreIteratorTest1.class, dbEngine ),
                     new TestSpec( SqlStoreIteratorTest2.class, dbEngine ),
                     new TestSpec( SqlStoreIteratorTest3.class, dbEngine ),
+                    new TestSpec( SqlStoreIteratorTest4.class, dbEngine ),
 
                     new TestSpec( SqlKeyStoreTest1.class, dbEngine, "test-keystore.key", "asdfgh" ),
                     new TestSpec( SqlStorePerformanceTest1.class, dbEngine ),
@@ -0,0 +1,205 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.sql.test;
+
+import org.infogrid.store.IterableStoreCursor;
+import org.infogrid.store.StoreValue;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that the SqlStoreIterator returns the right StoreValues when reading ahead
+ * in batches, across batch boundaries, and after the cursor was moved.
+ */
+public class SqlStoreIteratorTest4
+        extends
+            AbstractSqlStoreTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    public void run()
+        throws
+            Exception
+    {
+        //
+
+        log.info( "Deleting old database and creating new database" );
+
+        theSqlStore.initializeHard();
+
+        //
+
+        log.info( "Inserting data" );
+
+        for( int i=0 ; i<N ; ++i ) {
+            theSqlStore.put( key( i ), ENCODING_ID, i, i, i, -1L, bytes( key( i )));
+        }
+
+        //
+
+        log.info( "Iterating one by one" );
+
+        IterableStoreCursor iter  = theSqlStore.iterator( BATCH_SIZE );
+        int                 count = 0;
+        while( iter.hasNext() ) {
+            StoreValue peeked = iter.peekNext();
+            StoreValue found  = iter.next();
+
+            checkEquals( peeked.getKey(), key( count ), "wrong peeked key" );
+            checkEquals( found.getKey(),  key( count ), "wrong key" );
+            checkEqualByteArrays( found.getData(), bytes( key( count )), "wrong data" );
+            ++count;
+        }
+        checkEquals( count, N, "wrong number of values" );
+        checkCondition( !iter.hasNext(), "has next at the end" );
+
+        //
+
+        log.info( "Iterating in chunks that do not line up with the batches" );
+
+        iter  = theSqlStore.iterator( BATCH_SIZE );
+        count = 0;
+        while( iter.hasNext( 1 )) {
+            StoreValue [] found = iter.next( CHUNK_SIZE );
+            checkCondition( found.length > 0, "empty chunk" );
+
+            for( int i=0 ; i<found.length ; ++i ) {
+                checkEquals( found[i].getKey(), key( count ), "wrong key in chunk" );
+                ++count;
+            }
+        }
+        checkEquals( count, N, "wrong number of values in chunks" );
+
+        //
+
+        log.info( "Moving around in the middle of a batch" );
+
+        iter = theSqlStore.iterator( BATCH_SIZE );
+        iter.next( BATCH_SIZE / 2 );
+        checkEquals( iter.peekNext().getKey(), key( BATCH_SIZE / 2 ), "wrong key in the middle of batch" );
+
+        iter.moveToBefore( key( 3 ));
+        checkEquals( iter.next().getKey(), key( 3 ), "wrong key after moving back" );
+
+        StoreValue previous = iter.previous();
+        checkEquals( previous.getKey(), key( 3 ), "wrong key after previous" );
+        checkEquals( iter.next().getKey(), key( 3 ), "wrong key after previous and next" );
+
+        iter.moveToBefore( key( N-2 ));
+        checkCondition( iter.hasNext( 2 ), "not two left" );
+        checkCondition( !iter.hasNext( 3 ), "more than two left" );
+        checkEquals( iter.next( 5 ).length, 2, "wrong number of values at the end" );
+        checkCondition( !iter.hasNext(), "has next at the end" );
+        checkEquals( iter.next( 5 ).length, 0, "values beyond the end" );
+
+        //
+
+        log.info( "Seeing values inserted in later batches" );
+
+        iter = theSqlStore.iterator( BATCH_SIZE );
+        iter.next();
+        theSqlStore.put( key( N ), ENCODING_ID, N, N, N, -1L, bytes( key( N )));
+
+        count = 1;
+        while( iter.hasNext() ) {
+            iter.next();
+            ++count;
+        }
+        checkEquals( count, N+1, "did not see value inserted later" );
+    }
+
+    /**
+     * Construct the key for the ith StoreValue, so that the keys sort in the same order
+     * as the numbers.
+     *
+     * @param i the number
+     * @return the key
+     */
+    protected static String key(
+            int i )
+    {
+        return String.format( "key-%05d", i );
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        SqlStoreIteratorTest4 test = null;
+        try {
+            if( args.length != 1 ) {
+                System.err.println( "Synopsis: <database engine>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new SqlStoreIteratorTest4( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    public SqlStoreIteratorTest4(
+            String [] args )
+        throws
+            Exception
+    {
+        super( args[0], SqlStoreIteratorTest4.class );
+
+        theTestStore = theSqlStore;
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( SqlStoreIteratorTest4.class );
+
+    /**
+     * The number of StoreValues to test with.
+     */
+    protected static final int N = 103;
+
+    /**
+     * The batch size to test with. This is chosen so it does not divide N.
+     */
+    protected static final int BATCH_SIZE = 10;
+
+    /**
+     * The number of StoreValues obtained at a time when testing with chunks.
+     */
+    protected static final int CHUNK_SIZE = 7;
+}
@@ -0,0 +1,194 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.sql.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.sql.mysql.MysqlStore;
+import org.infogrid.store.sql.postgresql.PostgresqlStore;
+import org.infogrid.util.logging.Log;
+import org.infogrid.util.sql.PooledSqlDatabase;
+
+/**
+ * Tests concurrent access to a SqlStore through a pool of Connections.
+ */
+public class SqlStoreTest8
+        extends
+            AbstractSqlStoreTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Deleting old database and creating new database" );
+
+        theSqlStore.initializeHard();
+
+        checkEquals( theSqlStore.size(), 0, "Store not empty" );
+
+        //
+
+        log.info( "Inserting data" );
+
+        final long now = System.currentTimeMillis();
+
+        for( int i=0 ; i<N_KEYS ; ++i ) {
+            theTestStore.put( "key-" + i, ENCODING_ID, now, now, now, -1L, bytes( "data-" + i ));
+        }
+        checkEquals( theSqlStore.size(), N_KEYS, "Wrong number of elements in Store" );
+
+        //
+
+        log.info( "Reading and writing concurrently from " + N_THREADS + " threads" );
+
+        final List<Throwable> problems = new ArrayList<Throwable>();
+
+        Thread [] threads = new Thread[ N_THREADS ];
+        for( int t=0 ; t<threads.length ; ++t ) {
+            final int offset = t;
+            threads[t] = new Thread( "SqlStoreTest8-" + t ) {
+                @Override
+                public void run()
+                {
+                    try {
+                        for( int i=0 ; i<N_KEYS ; ++i ) {
+                            int        index = ( i + offset ) % N_KEYS;
+                            StoreValue found = theTestStore.get( "key-" + index );
+
+                            if( !( "data-" + index ).equals( new String( found.getData(), "UTF-8" ))) {
+                                throw new RuntimeException( "Wrong data for key-" + index );
+                            }
+                            if( i % 10 == offset ) {
+                                theTestStore.putOrUpdate( "key-" + index, ENCODING_ID, now, now, now, -1L, found.getData() );
+                            }
+                        }
+                    } catch( Throwable ex ) {
+                        synchronized( problems ) {
+                            problems.add( ex );
+                        }
+                    }
+                }
+            };
+        }
+        startClock();
+        for( int t=0 ; t<threads.length ; ++t ) {
+            threads[t].start();
+        }
+        for( int t=0 ; t<threads.length ; ++t ) {
+            threads[t].join();
+        }
+        long took = getRelativeTime();
+
+        checkEquals( problems.size(), 0, "Problems during concurrent access: " + problems );
+        checkEquals( theSqlStore.size(), N_KEYS, "Wrong number of elements in Store" );
+
+        //
+
+        log.info( "Checking pool" );
+
+        PooledSqlDatabase db = (PooledSqlDatabase) theSqlStore.getDatabase();
+
+        checkCondition( db.getOpenConnectionCount() <= N_CONNECTIONS, "Too many open connections: " + db.getOpenConnectionCount() );
+        checkEquals( db.getCheckedOutConnectionCount(), 0, "Connections not handed back" );
+        checkEquals( db.getTimeoutCount(), 0L, "Timed out waiting for connections" );
+        checkCondition( db.getStatementCacheHitCount() > db.getStatementCacheMissCount(), "PreparedStatements not reused" );
+
+        log.info( "Concurrent access took " + took + " msec, pool: " + db.getCreatedConnectionCount() + " connections, "
+                + db.getWaitCount() + " waits (" + db.getTotalWaitTime() + " msec), "
+                + db.getStatementCacheHitCount() + " statement cache hits, " + db.getStatementCacheMissCount() + " misses" );
+
+        db.close();
+        checkEquals( db.getOpenConnectionCount(), 0, "Connections not closed" );
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        SqlStoreTest8 test = null;
+        try {
+            if( args.length != 1 ) {
+                System.err.println( "Synopsis: <database engine>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new SqlStoreTest8( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong in a test
+     */
+    public SqlStoreTest8(
+            String [] args )
+        throws
+            Exception
+    {
+        super( args[0], SqlStoreTest8.class );
+
+        if( "mysql".equalsIgnoreCase( theDataBaseEngine )) {
+            theSqlStore = MysqlStore.create( theDataSource, test_TABLE_NAME, N_CONNECTIONS );
+        } else {
+            theSqlStore = PostgresqlStore.create( theDataSource, test_TABLE_NAME, N_CONNECTIONS );
+        }
+        theTestStore = theSqlStore;
+    }
+
+    /**
+     * Number of keys in the test.
+     */
+    protected static final int N_KEYS = 200;
+
+    /**
+     * Number of threads in the test.
+     */
+    protected static final int N_THREADS = 10;
+
+    /**
+     * Maximum number of pooled Connections in the test.
+     */
+    protected static final int N_CONNECTIONS = 4;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( SqlStoreTest8.class);
+}
@@ -34,6 +34,8 @@ public abstract class AllTests
         TestSpec [] tests = {
                 new TestSpec( StoreBackedSwappingHashMapTest1.class ),
                 new TestSpec( StoreBackedSwappingHashMapTest2.class ),
+                new TestSpec( StoreBackedSwappingHashMapTest3.class ),
+                new TestSpec( StoreBackedSwappingHashMapTest4.class ),
         };
 
         runTests( tests );
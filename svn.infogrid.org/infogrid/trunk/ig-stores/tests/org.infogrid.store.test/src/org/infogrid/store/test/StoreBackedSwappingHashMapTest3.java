@@ -0,0 +1,205 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.test;
+
+import org.infogrid.store.SerializingStoreEntryMapper;
+import org.infogrid.store.Store;
+import org.infogrid.store.m.MStore;
+import org.infogrid.store.util.StoreBackedSwappingHashMap;
+import org.infogrid.util.BoundedWorkingSet;
+import org.infogrid.util.CacheWeigher;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that a BoundedWorkingSet keeps values of a StoreBackedSwappingHashMap in memory
+ * regardless of garbage collection, evicts them according to its policy, and counts
+ * hits, misses and evictions.
+ */
+public class StoreBackedSwappingHashMapTest3
+        extends
+            AbstractStoreTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    public void run()
+        throws
+            Exception
+    {
+        Store store = MStore.create();
+
+        SerializingStoreEntryMapper<String,Integer> mapper = new SerializingStoreEntryMapper<String,Integer>() {
+            public String stringToKey(
+                    String s )
+            {
+                return s;
+            }
+        };
+
+        StoreBackedSwappingHashMapTest1.MyListener<String,Integer> listener = new StoreBackedSwappingHashMapTest1.MyListener<String,Integer>();
+
+        StoreBackedSwappingHashMap<String,Integer> map = StoreBackedSwappingHashMap.createWeak( mapper, store );
+        map.addSoftSwappingHashMapListener( listener );
+
+        BoundedWorkingSet<String,Integer> workingSet = BoundedWorkingSet.create( 10 );
+        map.setWorkingSet( workingSet );
+
+        //
+
+        log.info( "Inserting and accessing some values repeatedly" );
+
+        for( int i=0 ; i<10 ; ++i ) {
+            map.put( "a" + i, new Integer( i ));
+        }
+        for( int i=0 ; i<6 ; ++i ) {
+            map.get( "a" + i );
+        }
+        checkEquals( workingSet.size(),             10, "wrong working set size" );
+        checkEquals( workingSet.getHitCount(),      6L, "wrong number of hits" );
+        checkEquals( workingSet.getMissCount(),     0L, "wrong number of misses" );
+        checkEquals( workingSet.getEvictionCount(), 0L, "wrong number of evictions" );
+
+        //
+
+        log.info( "Inserting many values only once" );
+
+        for( int i=0 ; i<20 ; ++i ) {
+            map.put( "s" + i, new Integer( 100 + i ));
+        }
+        checkEquals( workingSet.size(),             10,  "wrong working set size" );
+        checkEquals( workingSet.getEvictionCount(), 20L, "wrong number of evictions" );
+
+        //
+
+        log.info( "Checking that repeatedly used values have survived garbage collection" );
+
+        collectGarbage();
+        listener.reset();
+
+        for( int i=0 ; i<6 ; ++i ) {
+            checkCondition( workingSet.contains( "a" + i ), "not in working set: a" + i );
+            Integer found = map.get( "a" + i );
+            checkEquals( found.intValue(), i, "wrong value for a" + i );
+        }
+        checkEquals( listener.loadedEvents.size(),  0,   "values were loaded" );
+        checkEquals( workingSet.getHitCount(),      12L, "wrong number of hits" );
+        checkEquals( workingSet.getMissCount(),     0L,  "wrong number of misses" );
+
+        for( int i=6 ; i<10 ; ++i ) {
+            checkCondition( !workingSet.contains( "a" + i ), "still in working set: a" + i );
+        }
+        checkCondition( !workingSet.contains( "s0" ), "still in working set: s0" );
+        checkCondition( workingSet.contains( "s19" ), "not in working set: s19" );
+
+        //
+
+        log.info( "Loading an evicted value from the Store" );
+
+        Integer found = map.get( "a6" );
+        checkEquals( found.intValue(), 6, "wrong value for a6" );
+        checkEquals( listener.loadedEvents.size(),  1,   "wrong number of loaded values" );
+        checkEquals( workingSet.getMissCount(),     1L,  "wrong number of misses" );
+        checkEquals( workingSet.getEvictionCount(), 21L, "wrong number of evictions" );
+        checkCondition( workingSet.contains( "a6" ), "not in working set: a6" );
+
+        //
+
+        log.info( "Removing" );
+
+        map.remove( "a0" );
+        checkCondition( !workingSet.contains( "a0" ), "still in working set: a0" );
+        checkEquals( workingSet.size(), 9, "wrong working set size after removal" );
+
+        map.clearLocalCache();
+        checkEquals( workingSet.size(), 0, "working set not empty after clearing local cache" );
+
+        //
+
+        log.info( "Bounding by weight" );
+
+        BoundedWorkingSet<String,Integer> weightedWorkingSet = BoundedWorkingSet.create(
+                100,
+                new CacheWeigher<String,Integer>() {
+                        public int weigh(
+                                String  key,
+                                Integer value )
+                        {
+                            return value.intValue();
+                        }
+                });
+        map.setWorkingSet( weightedWorkingSet );
+
+        for( int i=0 ; i<20 ; ++i ) {
+            map.put( "w" + i, new Integer( 30 ));
+            checkCondition( weightedWorkingSet.getWeight() <= 100, "too heavy: " + weightedWorkingSet.getWeight() );
+        }
+        checkEquals( weightedWorkingSet.size(),      3,    "wrong weighted working set size" );
+        checkEquals( weightedWorkingSet.getWeight(), 90L,  "wrong weight" );
+        checkEquals( weightedWorkingSet.getEvictionCount(), 17L, "wrong number of weighted evictions" );
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        StoreBackedSwappingHashMapTest3 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new StoreBackedSwappingHashMapTest3( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    public StoreBackedSwappingHashMapTest3(
+            String [] args )
+        throws
+            Exception
+    {
+        super( StoreBackedSwappingHashMapTest3.class  );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( StoreBackedSwappingHashMapTest3.class  );
+}
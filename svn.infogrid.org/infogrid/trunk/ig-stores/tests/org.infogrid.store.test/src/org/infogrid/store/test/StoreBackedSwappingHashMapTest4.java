@@ -0,0 +1,258 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.infogrid.store.SerializingStoreEntryMapper;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.m.MStore;
+import org.infogrid.store.util.StoreBackedSwappingHashMap;
+import org.infogrid.util.BoundedWorkingSet;
+import org.infogrid.util.CachingMapEvent;
+import org.infogrid.util.CachingMapListener;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that the StoreBackedSwappingHashMap loads each value only once even if many
+ * threads ask for it at the same time, and that CachingMapListeners are still notified.
+ */
+public class StoreBackedSwappingHashMapTest4
+        extends
+            AbstractStoreTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    public void run()
+        throws
+            Exception
+    {
+        MStore store = MStore.create();
+
+        final ConcurrentHashMap<String,AtomicInteger> decodeCounts = new ConcurrentHashMap<String,AtomicInteger>();
+
+        SerializingStoreEntryMapper<String,Integer> mapper = new SerializingStoreEntryMapper<String,Integer>() {
+            public String stringToKey(
+                    String s )
+            {
+                return s;
+            }
+
+            @Override
+            public Integer decodeValue(
+                    String     key,
+                    StoreValue value )
+            {
+                AtomicInteger count = decodeCounts.get( key );
+                if( count == null ) {
+                    AtomicInteger newCount = new AtomicInteger();
+                    count = decodeCounts.putIfAbsent( key, newCount );
+                    if( count == null ) {
+                        count = newCount;
+                    }
+                }
+                count.incrementAndGet();
+                try {
+                    Thread.sleep( 2L ); // make it likely that other threads ask for the same key in the meantime
+                } catch( InterruptedException ex ) {
+                    // ignore
+                }
+                return super.decodeValue( key, value );
+            }
+        };
+
+        //
+
+        log.info( "Filling Store" );
+
+        StoreBackedSwappingHashMap<String,Integer> writeMap = StoreBackedSwappingHashMap.createWeak( mapper, store );
+        for( int i=0 ; i<N_KEYS ; ++i ) {
+            writeMap.put( "key-" + i, new Integer( i ));
+        }
+
+        //
+
+        log.info( "Reading concurrently" );
+
+        final StoreBackedSwappingHashMap<String,Integer> map = StoreBackedSwappingHashMap.createWeak( mapper, store );
+        map.setWorkingSet( BoundedWorkingSet.<String,Integer>create( N_KEYS )); // so nothing gets garbage-collected and reloaded
+
+        final AtomicInteger  wrongValues = new AtomicInteger();
+        final CountDownLatch start       = new CountDownLatch( 1 );
+        final CountDownLatch done        = new CountDownLatch( N_THREADS );
+
+        for( int t=0 ; t<N_THREADS ; ++t ) {
+            final int offset = t;
+            new Thread( getClass().getName() + "-" + t ) {
+                @Override
+                public void run()
+                {
+                    try {
+                        start.await();
+
+                        for( int i=0 ; i<N_KEYS ; ++i ) {
+                            int     index = ( i + offset ) % N_KEYS;
+                            Integer found = map.get( "key-" + index );
+
+                            if( found == null || found.intValue() != index ) {
+                                wrongValues.incrementAndGet();
+                            }
+                        }
+                    } catch( InterruptedException ex ) {
+                        wrongValues.incrementAndGet();
+
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        start.countDown();
+        done.await();
+
+        checkEquals( wrongValues.get(), 0, "wrong values found" );
+        checkEquals( decodeCounts.size(), N_KEYS, "not all keys were loaded" );
+
+        for( Map.Entry<String,AtomicInteger> current : decodeCounts.entrySet() ) {
+            checkEquals( current.getValue().get(), 1, "loaded more than once: " + current.getKey() );
+        }
+        checkEquals( map.getWorkingSet().getMissCount(), (long) N_KEYS,                         "wrong number of misses" );
+        checkEquals( map.getWorkingSet().getHitCount(),  (long) N_KEYS * ( N_THREADS - 1 ),     "wrong number of hits" );
+
+        //
+
+        log.info( "Modifying concurrently" );
+
+        final AtomicInteger added   = new AtomicInteger();
+        final AtomicInteger removed = new AtomicInteger();
+
+        map.addDirectCachingMapListener( new CachingMapListener() {
+                public void mapElementAdded(
+                        CachingMapEvent.Added event )
+                {
+                    added.incrementAndGet();
+                }
+                public void mapElementRemoved(
+                        CachingMapEvent.Removed event )
+                {
+                    removed.incrementAndGet();
+                }
+                public void mapElementExpired(
+                        CachingMapEvent.Expired event )
+                {
+                    // ignore
+                }
+        });
+
+        final CountDownLatch start2 = new CountDownLatch( 1 );
+        final CountDownLatch done2  = new CountDownLatch( N_THREADS );
+
+        for( int t=0 ; t<N_THREADS ; ++t ) {
+            final int thread = t;
+            new Thread( getClass().getName() + "-" + t ) {
+                @Override
+                public void run()
+                {
+                    try {
+                        start2.await();
+
+                        for( int i=thread ; i<N_KEYS ; i+=N_THREADS ) {
+                            map.put( "key-" + i, new Integer( -i ));
+                            map.remove( "key-" + i );
+                        }
+                    } catch( InterruptedException ex ) {
+                        wrongValues.incrementAndGet();
+
+                    } finally {
+                        done2.countDown();
+                    }
+                }
+            }.start();
+        }
+        start2.countDown();
+        done2.await();
+
+        checkEquals( added.get(),   N_KEYS,     "wrong number of added events" );
+        checkEquals( removed.get(), 2 * N_KEYS, "wrong number of removed events" );
+        checkEquals( store.size(),  0,          "Store not empty" );
+        checkEquals( map.getWorkingSet().size(), 0, "working set not empty" );
+    }
+
+    /**
+     * Main program.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(
+            String [] args )
+    {
+        StoreBackedSwappingHashMapTest4 test = null;
+        try {
+            if( args.length < 0 ) { // well, not quite possible but to stay with the general outline
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+
+            test = new StoreBackedSwappingHashMapTest4( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            System.exit(1);
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.info( "FAIL (" + errorCount + " errors)" );
+        }
+        System.exit( errorCount );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param args command-line arguments
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    public StoreBackedSwappingHashMapTest4(
+            String [] args )
+        throws
+            Exception
+    {
+        super( StoreBackedSwappingHashMapTest4.class  );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( StoreBackedSwappingHashMapTest4.class  );
+
+    /**
+     * The number of keys.
+     */
+    protected static final int N_KEYS = 200;
+
+    /**
+     * The number of threads.
+     */
+    protected static final int N_THREADS = 8;
+}
@@ -0,0 +1,151 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.comm.windowed;
+
+import java.util.List;
+
+/**
+ * What a WindowedMessageEndpoint sends to its partner: any number of coalesced messages
+ * under one sequence number, plus the acknowledgements of what has been received from the partner.
+ *
+ * @param <T> the message type
+ */
+public class MessageEnvelope<T>
+{
+    /**
+     * Constructor.
+     *
+     * @param sequenceNumber the sequence number of this MessageEnvelope, or 0 if it only carries acknowledgements
+     * @param lowestUnacknowledged the sender will not send or resend MessageEnvelopes with lower sequence numbers
+     * @param acknowledged all MessageEnvelopes up to and including this sequence number have been received
+     * @param selectivelyAcknowledged sequence numbers of MessageEnvelopes received out of order
+     * @param content the messages, if any
+     */
+    public MessageEnvelope(
+            long    sequenceNumber,
+            long    lowestUnacknowledged,
+            long    acknowledged,
+            long [] selectivelyAcknowledged,
+            List<T> content )
+    {
+        theSequenceNumber          = sequenceNumber;
+        theLowestUnacknowledged    = lowestUnacknowledged;
+        theAcknowledged            = acknowledged;
+        theSelectivelyAcknowledged = selectivelyAcknowledged;
+        theContent                 = content;
+    }
+
+    /**
+     * Obtain the sequence number.
+     *
+     * @return the sequence number, or 0 if this MessageEnvelope only carries acknowledgements
+     */
+    public long getSequenceNumber()
+    {
+        return theSequenceNumber;
+    }
+
+    /**
+     * Obtain the lowest sequence number that the sender may still send or resend. The receiver
+     * does not need to wait for MessageEnvelopes with lower sequence numbers that it has not received.
+     *
+     * @return the sequence number
+     */
+    public long getLowestUnacknowledged()
+    {
+        return theLowestUnacknowledged;
+    }
+
+    /**
+     * Obtain the sequence number up to which all MessageEnvelopes have been received.
+     *
+     * @return the sequence number
+     */
+    public long getAcknowledged()
+    {
+        return theAcknowledged;
+    }
+
+    /**
+     * Obtain the sequence numbers of the MessageEnvelopes received out of order.
+     *
+     * @return the sequence numbers, in ascending order
+     */
+    public long [] getSelectivelyAcknowledged()
+    {
+        return theSelectivelyAcknowledged;
+    }
+
+    /**
+     * Obtain the messages.
+     *
+     * @return the messages, or null if this MessageEnvelope only carries acknowledgements
+     */
+    public List<T> getContent()
+    {
+        return theContent;
+    }
+
+    /**
+     * Convert to String, for debugging.
+     *
+     * @return String
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append( getClass().getName() );
+        buf.append( "{ seq: " ).append( theSequenceNumber );
+        buf.append( ", lowest: " ).append( theLowestUnacknowledged );
+        buf.append( ", ack: " ).append( theAcknowledged );
+        if( theSelectivelyAcknowledged.length > 0 ) {
+            buf.append( ", sack:" );
+            for( long current : theSelectivelyAcknowledged ) {
+                buf.append( ' ' ).append( current );
+            }
+        }
+        if( theContent != null ) {
+            buf.append( ", content: " ).append( theContent );
+        }
+        buf.append( " }" );
+        return buf.toString();
+    }
+
+    /**
+     * The sequence number.
+     */
+    protected long theSequenceNumber;
+
+    /**
+     * The lowest sequence number that the sender may still send or resend.
+     */
+    protected long theLowestUnacknowledged;
+
+    /**
+     * All MessageEnvelopes up to and including this sequence number have been received.
+     */
+    protected long theAcknowledged;
+
+    /**
+     * Sequence numbers of MessageEnvelopes received out of order.
+     */
+    protected long [] theSelectivelyAcknowledged;
+
+    /**
+     * The messages.
+     */
+    protected List<T> theContent;
+}
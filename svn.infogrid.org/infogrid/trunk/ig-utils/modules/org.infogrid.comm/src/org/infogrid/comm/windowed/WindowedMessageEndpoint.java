@@ -0,0 +1,926 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.comm.windowed;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.comm.AbstractSendingMessageEndpoint;
+import org.infogrid.comm.BidirectionalMessageEndpoint;
+import org.infogrid.comm.MessageEndpoint;
+import org.infogrid.comm.MessageEndpointIsDeadException;
+import org.infogrid.comm.MessageEndpointListener;
+import org.infogrid.comm.MessageSendException;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Endpoint for bidirectional communications using a sliding window. Unlike the ping-pong
+ *    protocol, both sides may send at any time, and up to <code>windowSize</code> MessageEnvelopes
+ *    may be on their way before the partner has to acknowledge them.
+ *    This is abstract: subclasses need to implement the actual message transfer mechanism.</p>
+ * <p>Messages enqueued within <code>deltaCoalesce</code> of each other are coalesced into one
+ *    MessageEnvelope. Each MessageEnvelope carries a sequence number, the sequence number up to which
+ *    the sender has received everything from its partner, and the sequence numbers it has received out
+ *    of order. Only MessageEnvelopes that the partner has not acknowledged in either way are resent after
+ *    <code>deltaResend</code>. Received messages are passed to the listeners in the sequence in which
+ *    they were sent, and duplicates are discarded.</p>
+ * <p>Acknowledgements travel with outgoing MessageEnvelopes; if there are none, they are sent by themselves
+ *    after <code>deltaAcknowledge</code>. Nothing is sent while there is nothing to send or acknowledge.</p>
+ * <p>This class supports a regular and a low-level logger, which reflect application-developer
+ *    vs. protocol-developer-centric views of logging.</p>
+ *
+ * @param <T> the message type
+ */
+public abstract class WindowedMessageEndpoint<T>
+        extends
+            AbstractSendingMessageEndpoint<T>
+        implements
+            BidirectionalMessageEndpoint<T>,
+            CanBeDumped
+{
+    private static final Log logHigh = Log.getLogInstance( WindowedMessageEndpoint.class ); // our own, private logger for high-level events
+    private static final Log logLow  = Log.getLogInstance( WindowedMessageEndpoint.class.getName() + "-lowlevel" ); // our own, private logger for low-level events
+
+    /**
+     * Constructor for subclasses only.
+     *
+     * @param name the name of the MessageEndpoint (for debugging only)
+     * @param windowSize the maximum number of MessageEnvelopes sent but not acknowledged yet
+     * @param maxMessagesPerEnvelope the maximum number of messages coalesced into one MessageEnvelope
+     * @param deltaCoalesce the number of milliseconds to wait for more messages before sending an enqueued message
+     * @param deltaAcknowledge the number of milliseconds until received MessageEnvelopes are acknowledged
+     *                         if there is no outgoing MessageEnvelope to carry the acknowledgement
+     * @param deltaResend the number of milliseconds until a MessageEnvelope that has not been acknowledged is resent
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule timed tasks
+     * @param lastSentSequenceNumber the last sequence number sent in a previous instantiation of this BidirectionalMessageEndpoint
+     * @param lastReceivedSequenceNumber the last sequence number received in a previous instantiation of this BidirectionalMessageEndpoint
+     * @param messagesUnacknowledged the Messages that had not been acknowledged in a previous instantiation of this BidirectionalMessageEndpoint
+     * @param messagesToBeSent outgoing message queue (may or may not be empty)
+     */
+    protected WindowedMessageEndpoint(
+            String                   name,
+            int                      windowSize,
+            int                      maxMessagesPerEnvelope,
+            long                     deltaCoalesce,
+            long                     deltaAcknowledge,
+            long                     deltaResend,
+            double                   randomVariation,
+            ScheduledExecutorService exec,
+            long                     lastSentSequenceNumber,
+            long                     lastReceivedSequenceNumber,
+            List<T>                  messagesUnacknowledged,
+            List<T>                  messagesToBeSent )
+    {
+        super( name, randomVariation, exec, messagesToBeSent );
+
+        if( windowSize < 1 ) {
+            throw new IllegalArgumentException( "Window size must be positive: " + windowSize );
+        }
+        if( maxMessagesPerEnvelope < 1 ) {
+            throw new IllegalArgumentException( "Maximum number of messages per envelope must be positive: " + maxMessagesPerEnvelope );
+        }
+
+        theWindowSize             = windowSize;
+        theMaxMessagesPerEnvelope = maxMessagesPerEnvelope;
+        theDeltaCoalesce          = deltaCoalesce;
+        theDeltaAcknowledge       = deltaAcknowledge;
+        theDeltaResend            = deltaResend;
+
+        theLastSentSequenceNumber     = Math.max( 0L, lastSentSequenceNumber );
+        theLastReceivedSequenceNumber = Math.max( 0L, lastReceivedSequenceNumber );
+
+        if( messagesUnacknowledged != null && !messagesUnacknowledged.isEmpty() ) {
+            // We do not know which of them the partner received. We send them again with new sequence numbers,
+            // and the partner stops waiting for the old ones when it sees our lowest unacknowledged sequence number.
+            synchronized( theMessagesToBeSent ) {
+                theMessagesToBeSent.addAll( 0, messagesUnacknowledged );
+            }
+        }
+    }
+
+    /**
+     * Start communicating. This sends the enqueued messages, or an acknowledgement
+     * if there are none, so the partner knows about us.
+     */
+    public void startCommunicating()
+    {
+        synchronized( this ) {
+            if( isCommunicating ) {
+                return;
+            }
+            isCommunicating = true;
+        }
+        doAction( null ); // null indicates startCommunicating()
+    }
+
+    /**
+     * Stop communicating.
+     */
+    public void stopCommunicating()
+    {
+        synchronized( this ) {
+            isCommunicating = false;
+
+            cancel( theSendTask );
+            cancel( theAcknowledgeTask );
+            cancel( theResendTask );
+
+            theSendTask        = null;
+            theAcknowledgeTask = null;
+            theResendTask      = null;
+            theFutureTask      = null;
+        }
+    }
+
+    /**
+     * Invoked when the timer triggers.
+     *
+     * @param task the TimedTask that invokes this handler, or null if invoked by startCommunicating()
+     */
+    protected void doAction(
+            TimedTask task )
+    {
+        if( logLow.isDebugEnabled() ) {
+            logLow.traceMethodCallEntry( this, "doAction", task );
+        }
+
+        synchronized( this ) {
+            if( task == theSendTask ) {
+                theSendTask = null;
+            } else if( task == theAcknowledgeTask ) {
+                theAcknowledgeTask = null;
+            } else if( task == theResendTask ) {
+                theResendTask = null;
+            }
+        }
+
+        if( task instanceof ResendTask ) {
+            resendOverdue();
+        } else {
+            transmit( task == null );
+        }
+    }
+
+    /**
+     * Send as many enqueued messages as the window allows, or an acknowledgement by itself
+     * if one is pending.
+     *
+     * @param force if true, send an acknowledgement even if none is pending
+     */
+    protected void transmit(
+            boolean force )
+    {
+        List<MessageEnvelope<T>> envelopes = new ArrayList<MessageEnvelope<T>>();
+
+        synchronized( this ) {
+            synchronized( theMessagesToBeSent ) {
+                while( theUnacknowledged.size() < theWindowSize && !theMessagesToBeSent.isEmpty() ) {
+                    List<T> head    = theMessagesToBeSent.subList( 0, Math.min( theMaxMessagesPerEnvelope, theMessagesToBeSent.size() ));
+                    List<T> content = new ArrayList<T>( head );
+                    head.clear();
+
+                    long sequenceNumber = ++theLastSentSequenceNumber;
+                    theUnacknowledged.put( sequenceNumber, new Outstanding<T>( content ));
+
+                    envelopes.add( createEnvelope( sequenceNumber, content ));
+                }
+            }
+            if( envelopes.isEmpty() && ( force || theAcknowledgementPending )) {
+                envelopes.add( createEnvelope( 0L, null ));
+            }
+        }
+
+        for( MessageEnvelope<T> current : envelopes ) {
+            send( current );
+        }
+        scheduleResend();
+    }
+
+    /**
+     * Resend the MessageEnvelopes whose acknowledgement is overdue.
+     */
+    protected void resendOverdue()
+    {
+        List<MessageEnvelope<T>> envelopes = new ArrayList<MessageEnvelope<T>>();
+        long                     now       = System.currentTimeMillis();
+
+        synchronized( this ) {
+            for( Map.Entry<Long,Outstanding<T>> entry : theUnacknowledged.entrySet() ) {
+                Outstanding<T> current = entry.getValue();
+
+                if( current.getTimeDue( theDeltaResend ) <= now ) {
+                    current.theTimeSent = now;
+                    envelopes.add( createEnvelope( entry.getKey(), current.theContent ));
+                }
+            }
+            theEnvelopesResent += envelopes.size();
+        }
+
+        if( !envelopes.isEmpty() && logLow.isDebugEnabled() ) {
+            logLow.debug( this + " resending " + envelopes.size() + " envelopes" );
+        }
+        for( MessageEnvelope<T> current : envelopes ) {
+            send( current );
+        }
+        scheduleResend();
+    }
+
+    /**
+     * Create a MessageEnvelope that carries the current acknowledgements. Must be invoked while
+     * synchronized on this object.
+     *
+     * @param sequenceNumber the sequence number of the MessageEnvelope, or 0 if it only carries acknowledgements
+     * @param content the messages, if any
+     * @return the created MessageEnvelope
+     */
+    protected MessageEnvelope<T> createEnvelope(
+            long    sequenceNumber,
+            List<T> content )
+    {
+        long [] selectivelyAcknowledged = new long[ Math.min( theReceivedOutOfOrder.size(), MAX_SELECTIVE_ACKNOWLEDGEMENTS ) ];
+
+        Iterator<Long> iter = theReceivedOutOfOrder.keySet().iterator();
+        for( int i=0 ; i<selectivelyAcknowledged.length ; ++i ) {
+            selectivelyAcknowledged[i] = iter.next();
+        }
+
+        long lowestUnacknowledged = theUnacknowledged.isEmpty() ? theLastSentSequenceNumber + 1 : theUnacknowledged.firstKey();
+
+        theAcknowledgementPending = false;
+
+        return new MessageEnvelope<T>( sequenceNumber, lowestUnacknowledged, theLastReceivedSequenceNumber, selectivelyAcknowledged, content );
+    }
+
+    /**
+     * Send one MessageEnvelope and notify the listeners.
+     *
+     * @param envelope the MessageEnvelope
+     */
+    protected void send(
+            MessageEnvelope<T> envelope )
+    {
+        List<T> content = envelope.getContent();
+
+        try {
+            sendEnvelope( envelope );
+
+        } catch( MessageEndpointIsDeadException ex ) {
+            if( logHigh.isInfoEnabled() ) {
+                logHigh.info( this + " Endpoint is dead: " + envelope, ex );
+            }
+            theListeners.fireEvent( content, ex );
+
+            stopCommunicating();
+            return;
+
+        } catch( MessageSendException ex ) {
+            if( logHigh.isInfoEnabled() ) {
+                logHigh.info( this + " failed to send: " + envelope, ex );
+            }
+            if( content != null ) {
+                // stays unacknowledged, so the ResendTask will try again. Only the first failure is reported.
+                boolean firstFailure = false;
+                synchronized( this ) {
+                    Outstanding<T> found = theUnacknowledged.get( envelope.getSequenceNumber() );
+                    if( found != null && !found.isFailureReported ) {
+                        found.isFailureReported = true;
+                        firstFailure = true;
+                    }
+                }
+                if( firstFailure ) {
+                    for( T current : content ) {
+                        theListeners.fireEvent( current, MESSAGE_SENDING_FAILED );
+                    }
+                }
+            } else {
+                synchronized( this ) {
+                    theAcknowledgementPending = true;
+                }
+                scheduleAcknowledgement( theDeltaResend );
+            }
+            return;
+
+        } catch( Throwable t ) {
+            // catch-all
+            logHigh.error( this, t );
+            return;
+        }
+
+        if( logHigh.isDebugEnabled() ) {
+            logHigh.debug( this + " sent successfully: " + envelope );
+        }
+
+        boolean first = false;
+        synchronized( this ) {
+            ++theEnvelopesSent;
+
+            if( content != null ) {
+                Outstanding<T> found = theUnacknowledged.get( envelope.getSequenceNumber() );
+                if( found != null && !found.isTransmitted ) {
+                    found.isTransmitted = true;
+                    first = true;
+                }
+            }
+        }
+        if( first ) {
+            for( T current : content ) {
+                theListeners.fireEvent( current, MESSAGE_SENT );
+            }
+        }
+    }
+
+    /**
+     * Implemented by subclasses, this performs the actual message send.
+     *
+     * @param envelope the MessageEnvelope to send
+     * @throws MessageEndpointIsDeadException thrown if the partner MessageEndpoint is dead
+     * @throws MessageSendException thrown if the message could not be sent
+     */
+    protected abstract void sendEnvelope(
+            MessageEnvelope<T> envelope )
+        throws
+            MessageEndpointIsDeadException,
+            MessageSendException;
+
+    /**
+     * Invoked by subclasses to provide a received MessageEnvelope.
+     *
+     * @param envelope the received MessageEnvelope
+     * @throws MessageEndpointIsDeadException thrown if the MessageEndpoint is dead
+     * @throws MessageSendException thrown if the message could not be sent
+     */
+    protected void incomingEnvelope(
+            MessageEnvelope<T> envelope )
+        throws
+            MessageEndpointIsDeadException,
+            MessageSendException
+    {
+        if( logHigh.isTraceEnabled() ) {
+            logHigh.traceMethodCallEntry( this, "incomingEnvelope", envelope );
+        }
+
+        long    sequenceNumber = envelope.getSequenceNumber();
+        long    acknowledged   = -1L; // not fired unless set
+        boolean acknowledgeNow = false;
+        boolean moreToSend     = false;
+
+        synchronized( this ) {
+            // what the partner received from us
+            int before = theUnacknowledged.size();
+
+            theUnacknowledged.headMap( envelope.getAcknowledged(), true ).clear();
+            for( long current : envelope.getSelectivelyAcknowledged() ) {
+                Outstanding<T> found = theUnacknowledged.get( current );
+                if( found != null ) {
+                    found.isSelectivelyAcknowledged = true;
+                }
+            }
+            if( theUnacknowledged.size() < before ) {
+                acknowledged = envelope.getAcknowledged();
+                synchronized( theMessagesToBeSent ) {
+                    moreToSend = !theMessagesToBeSent.isEmpty();
+                }
+            }
+
+            // what the partner sent to us
+            if( envelope.getLowestUnacknowledged() - 1 > theLastReceivedSequenceNumber ) {
+                // the partner will not resend what we are waiting for
+                if( logLow.isInfoEnabled() ) {
+                    logLow.info( this + " skipping from " + theLastReceivedSequenceNumber + " to " + ( envelope.getLowestUnacknowledged() - 1 ));
+                }
+                while( theLastReceivedSequenceNumber < envelope.getLowestUnacknowledged() - 1 ) {
+                    List<T> found = theReceivedOutOfOrder.remove( ++theLastReceivedSequenceNumber );
+                    if( found != null ) {
+                        theReceivedInOrder.add( found );
+                    }
+                }
+                acknowledgeNow = true;
+            }
+
+            if( sequenceNumber > 0 ) {
+                if( sequenceNumber <= theLastReceivedSequenceNumber || theReceivedOutOfOrder.containsKey( sequenceNumber )) {
+                    ++theDuplicatesReceived;
+                    acknowledgeNow = true; // our acknowledgement may have been lost
+
+                    if( logLow.isDebugEnabled() ) {
+                        logLow.debug( this + " ignoring duplicate: " + envelope );
+                    }
+
+                } else {
+                    theReceivedOutOfOrder.put( sequenceNumber, envelope.getContent() );
+                    if( sequenceNumber != theLastReceivedSequenceNumber + 1 ) {
+                        acknowledgeNow = true; // tell the partner about the gap right away
+                    }
+                }
+                theAcknowledgementPending = true;
+            }
+
+            List<T> next;
+            while( ( next = theReceivedOutOfOrder.remove( theLastReceivedSequenceNumber + 1 )) != null ) {
+                ++theLastReceivedSequenceNumber;
+                theReceivedInOrder.add( next );
+            }
+        }
+
+        if( acknowledged >= 0 ) {
+            theListeners.fireEvent( acknowledged, MESSAGES_ACKNOWLEDGED );
+        }
+
+        deliver();
+
+        if( sequenceNumber > 0 ) {
+            scheduleAcknowledgement( acknowledgeNow ? 0L : theDeltaAcknowledge );
+        }
+        if( moreToSend ) {
+            scheduleSend( 0L );
+        }
+    }
+
+    /**
+     * Pass the received messages to the listeners, in sequence. Only one Thread does this at a time;
+     * others arriving meanwhile leave their messages to it.
+     */
+    protected void deliver()
+    {
+        synchronized( this ) {
+            if( isDelivering ) {
+                return;
+            }
+            isDelivering = true;
+        }
+        while( true ) {
+            List<T> next;
+            synchronized( this ) {
+                next = theReceivedInOrder.poll();
+                if( next == null ) {
+                    isDelivering = false;
+                    return;
+                }
+            }
+            try {
+                theListeners.fireEvent( next, MESSAGE_RECEIVED );
+
+            } catch( Throwable t ) {
+                logHigh.error( this, t );
+            }
+        }
+    }
+
+    /**
+     * Send a message on the regular schedule, which allows it to be coalesced with
+     * messages enqueued shortly after.
+     *
+     * @param msg the Message to send.
+     */
+    @Override
+    public void enqueueMessageForSend(
+            T msg )
+    {
+        super.enqueueMessageForSend( msg );
+
+        scheduleSend( theDeltaCoalesce );
+    }
+
+    /**
+     * Send a message as quickly as possible.
+     *
+     * @param msg the Message to send.
+     */
+    @Override
+    public void sendMessageAsap(
+            T msg )
+    {
+        super.enqueueMessageForSend( msg );
+
+        scheduleSend( 0L );
+    }
+
+    /**
+     * Schedule sending the enqueued messages, unless scheduled already.
+     *
+     * @param delay the delay in milliseconds
+     */
+    protected synchronized void scheduleSend(
+            long delay )
+    {
+        if( theSendTask != null ) {
+            if( delay > 0 ) {
+                return;
+            }
+            cancel( theSendTask ); // it may have been waiting to coalesce
+        }
+        theSendTask = new SendTask( this );
+        schedule( theSendTask, delay );
+    }
+
+    /**
+     * Schedule sending an acknowledgement, unless scheduled already.
+     *
+     * @param delay the delay in milliseconds
+     */
+    protected synchronized void scheduleAcknowledgement(
+            long delay )
+    {
+        if( theAcknowledgeTask != null ) {
+            if( delay > 0 ) {
+                return;
+            }
+            cancel( theAcknowledgeTask );
+        }
+        theAcknowledgeTask = new AcknowledgeTask( this );
+        schedule( theAcknowledgeTask, delay );
+    }
+
+    /**
+     * Schedule resending for when the first unacknowledged MessageEnvelope becomes overdue,
+     * unless scheduled already.
+     */
+    protected synchronized void scheduleResend()
+    {
+        if( theResendTask != null || theUnacknowledged.isEmpty() ) {
+            return;
+        }
+        long due = Long.MAX_VALUE;
+        for( Outstanding<T> current : theUnacknowledged.values() ) {
+            due = Math.min( due, current.getTimeDue( theDeltaResend ));
+        }
+        theResendTask = new ResendTask( this );
+        schedule( theResendTask, Math.max( 0L, due - System.currentTimeMillis() ));
+    }
+
+    /**
+     * Helper to cancel a TimedTask.
+     *
+     * @param task the TimedTask, or null
+     */
+    protected static void cancel(
+            TimedTask task )
+    {
+        if( task != null ) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Obtain the sequence number that was last sent.
+     *
+     * @return the sequence number
+     */
+    public synchronized long getLastSentSequenceNumber()
+    {
+        return theLastSentSequenceNumber;
+    }
+
+    /**
+     * Obtain the sequence number up to which all MessageEnvelopes have been received.
+     *
+     * @return the sequence number
+     */
+    public synchronized long getLastReceivedSequenceNumber()
+    {
+        return theLastReceivedSequenceNumber;
+    }
+
+    /**
+     * Obtain the messages that were sent, but whose receipt the partner has not acknowledged yet.
+     *
+     * @return the messages, in the sequence they were sent
+     */
+    public synchronized List<T> messagesLastSent()
+    {
+        ArrayList<T> ret = new ArrayList<T>();
+        for( Outstanding<T> current : theUnacknowledged.values() ) {
+            ret.addAll( current.theContent );
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the maximum number of MessageEnvelopes that may be sent but not acknowledged.
+     *
+     * @return the window size
+     */
+    public int getWindowSize()
+    {
+        return theWindowSize;
+    }
+
+    /**
+     * Obtain the number of MessageEnvelopes sent so far, including resent ones.
+     *
+     * @return the number of MessageEnvelopes
+     */
+    public synchronized long getEnvelopesSent()
+    {
+        return theEnvelopesSent;
+    }
+
+    /**
+     * Obtain the number of MessageEnvelopes resent so far.
+     *
+     * @return the number of MessageEnvelopes
+     */
+    public synchronized long getEnvelopesResent()
+    {
+        return theEnvelopesResent;
+    }
+
+    /**
+     * Obtain the number of duplicate MessageEnvelopes received and discarded so far.
+     *
+     * @return the number of MessageEnvelopes
+     */
+    public synchronized long getDuplicatesReceived()
+    {
+        return theDuplicatesReceived;
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "theName",
+                    "theLastReceivedSequenceNumber",
+                    "theLastSentSequenceNumber",
+                    "theUnacknowledged.keySet()",
+                    "theReceivedOutOfOrder.keySet()",
+                    "theMessagesToBeSent"
+                },
+                new Object[] {
+                    theName,
+                    theLastReceivedSequenceNumber,
+                    theLastSentSequenceNumber,
+                    theUnacknowledged.keySet(),
+                    theReceivedOutOfOrder.keySet(),
+                    theMessagesToBeSent
+                });
+    }
+
+    /**
+     * The maximum number of MessageEnvelopes that may be sent but not acknowledged.
+     */
+    protected int theWindowSize;
+
+    /**
+     * The maximum number of messages coalesced into one MessageEnvelope.
+     */
+    protected int theMaxMessagesPerEnvelope;
+
+    /**
+     * The time to wait for more messages before sending an enqueued message.
+     */
+    protected long theDeltaCoalesce;
+
+    /**
+     * The time until received MessageEnvelopes are acknowledged if there is no outgoing
+     * MessageEnvelope to carry the acknowledgement.
+     */
+    protected long theDeltaAcknowledge;
+
+    /**
+     * The time until a MessageEnvelope that has not been acknowledged is resent.
+     */
+    protected long theDeltaResend;
+
+    /**
+     * The sequence number that was sent last.
+     */
+    protected long theLastSentSequenceNumber;
+
+    /**
+     * All MessageEnvelopes up to and including this sequence number have been received.
+     */
+    protected long theLastReceivedSequenceNumber;
+
+    /**
+     * The MessageEnvelopes sent but not acknowledged yet, keyed by sequence number.
+     */
+    protected final TreeMap<Long,Outstanding<T>> theUnacknowledged = new TreeMap<Long,Outstanding<T>>();
+
+    /**
+     * The content of the MessageEnvelopes received ahead of a missing one, keyed by sequence number.
+     */
+    protected final TreeMap<Long,List<T>> theReceivedOutOfOrder = new TreeMap<Long,List<T>>();
+
+    /**
+     * The content of the MessageEnvelopes received in sequence but not passed to the listeners yet.
+     */
+    protected final LinkedList<List<T>> theReceivedInOrder = new LinkedList<List<T>>();
+
+    /**
+     * True if a Thread is currently passing received messages to the listeners.
+     */
+    protected boolean isDelivering;
+
+    /**
+     * True if the partner needs to be told what we have received.
+     */
+    protected boolean theAcknowledgementPending;
+
+    /**
+     * True if startCommunicating() has been invoked, and stopCommunicating() has not.
+     */
+    protected boolean isCommunicating;
+
+    /**
+     * The scheduled SendTask, if any.
+     */
+    protected TimedTask theSendTask;
+
+    /**
+     * The scheduled AcknowledgeTask, if any.
+     */
+    protected TimedTask theAcknowledgeTask;
+
+    /**
+     * The scheduled ResendTask, if any.
+     */
+    protected TimedTask theResendTask;
+
+    /**
+     * Number of MessageEnvelopes sent so far.
+     */
+    protected long theEnvelopesSent;
+
+    /**
+     * Number of MessageEnvelopes resent so far.
+     */
+    protected long theEnvelopesResent;
+
+    /**
+     * Number of duplicate MessageEnvelopes received so far.
+     */
+    protected long theDuplicatesReceived;
+
+    /**
+     * The maximum number of sequence numbers selectively acknowledged in one MessageEnvelope.
+     */
+    public static final int MAX_SELECTIVE_ACKNOWLEDGEMENTS = 64;
+
+    /**
+     * A MessageEnvelope that has been selectively acknowledged is resent only after this many times
+     * the usual resend time, in case the partner has lost it after all.
+     */
+    public static final int SELECTIVELY_ACKNOWLEDGED_RESEND_FACTOR = 8;
+
+    /**
+     * Indicates that the partner acknowledged sent MessageEnvelopes.
+     */
+    protected final EventType<T> MESSAGES_ACKNOWLEDGED = new EventType<T>() {
+            @SuppressWarnings( "unchecked" )
+            public void fireEvent(
+                    MessageEndpoint<T>         sender,
+                    MessageEndpointListener<T> listener,
+                    Object                     event )
+            {
+                if( listener instanceof WindowedMessageEndpointListener ) {
+                    WindowedMessageEndpointListener<T> realListener = (WindowedMessageEndpointListener<T>) listener;
+                    WindowedMessageEndpoint<T>         realSender   = (WindowedMessageEndpoint<T>) sender;
+                    realListener.messagesAcknowledged( realSender, (Long) event );
+                }
+            }
+    };
+
+    /**
+     * A MessageEnvelope that has been sent but not acknowledged.
+     *
+     * @param <T> the message type
+     */
+    protected static class Outstanding<T>
+    {
+        /**
+         * Constructor.
+         *
+         * @param content the messages in the MessageEnvelope
+         */
+        public Outstanding(
+                List<T> content )
+        {
+            theContent  = content;
+            theTimeSent = System.currentTimeMillis();
+        }
+
+        /**
+         * Determine when this MessageEnvelope needs to be resent.
+         *
+         * @param deltaResend the usual resend time
+         * @return the time, in System.currentTimeMillis() format
+         */
+        public long getTimeDue(
+                long deltaResend )
+        {
+            if( isSelectivelyAcknowledged ) {
+                return theTimeSent + SELECTIVELY_ACKNOWLEDGED_RESEND_FACTOR * deltaResend;
+            } else {
+                return theTimeSent + deltaResend;
+            }
+        }
+
+        /**
+         * The messages in the MessageEnvelope.
+         */
+        protected List<T> theContent;
+
+        /**
+         * The time the MessageEnvelope was last sent.
+         */
+        protected long theTimeSent;
+
+        /**
+         * True once the MessageEnvelope has been sent successfully at least once.
+         */
+        protected boolean isTransmitted;
+
+        /**
+         * True once the listeners have been told that sending the MessageEnvelope failed.
+         */
+        protected boolean isFailureReported;
+
+        /**
+         * True if the partner has received the MessageEnvelope out of order.
+         */
+        protected boolean isSelectivelyAcknowledged;
+    }
+
+    /**
+     * The send task.
+     */
+    protected static class SendTask
+            extends
+                TimedTask
+    {
+        /**
+         * Constructor.
+         *
+         * @param ep the endpoint that is supposed to send
+         */
+        public SendTask(
+                WindowedMessageEndpoint<?> ep )
+        {
+            super( ep );
+        }
+    }
+
+    /**
+     * The acknowledge task.
+     */
+    protected static class AcknowledgeTask
+            extends
+                TimedTask
+    {
+        /**
+         * Constructor.
+         *
+         * @param ep the endpoint that is supposed to acknowledge
+         */
+        public AcknowledgeTask(
+                WindowedMessageEndpoint<?> ep )
+        {
+            super( ep );
+        }
+    }
+
+    /**
+     * The resend task.
+     */
+    protected static class ResendTask
+            extends
+                TimedTask
+    {
+        /**
+         * Constructor.
+         *
+         * @param ep the endpoint that is supposed to resend
+         */
+        public ResendTask(
+                WindowedMessageEndpoint<?> ep )
+        {
+            super( ep );
+        }
+    }
+}
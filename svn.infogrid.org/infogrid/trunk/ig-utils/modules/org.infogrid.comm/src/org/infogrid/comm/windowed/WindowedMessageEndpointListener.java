@@ -0,0 +1,38 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.comm.windowed;
+
+import org.infogrid.comm.MessageEndpointListener;
+
+/**
+ * Adds more detail to MessageEndpointListener if it is known that
+ * the windowed protocol is being used.
+ *
+ * @param <T> the message type
+ */
+public interface WindowedMessageEndpointListener<T>
+        extends
+            MessageEndpointListener<T>
+{
+    /**
+     * Called when the partner has acknowledged receipt of sent messages.
+     *
+     * @param endpoint the WindowedMessageEndpoint that sent this event
+     * @param acknowledged the partner has received all MessageEnvelopes up to and including this sequence number
+     */
+    public void messagesAcknowledged(
+            WindowedMessageEndpoint<T> endpoint,
+            long                       acknowledged );
+}
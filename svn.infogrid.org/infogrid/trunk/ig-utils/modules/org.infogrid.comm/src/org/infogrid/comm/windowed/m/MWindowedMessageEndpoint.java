@@ -0,0 +1,369 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.comm.windowed.m;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.comm.MessageEndpointIsDeadException;
+import org.infogrid.comm.MessageSendException;
+import org.infogrid.comm.windowed.MessageEnvelope;
+import org.infogrid.comm.windowed.WindowedMessageEndpoint;
+import org.infogrid.util.ResourceHelper;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * In-memory implementation of WindowedMessageEndpoint. Like MPingPongMessageEndpoint, it can
+ * be restored from a snapshot with a special factory method.
+ *
+ * @param <T> the message type
+ */
+public class MWindowedMessageEndpoint<T>
+        extends
+            WindowedMessageEndpoint<T>
+        implements
+            CanBeDumped
+{
+    private static final Log log = Log.getLogInstance( MWindowedMessageEndpoint.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param exec the ScheduledExecutorService to schedule timed tasks
+     * @return the created MWindowedMessageEndpoint
+     * @param <T> the message type
+     */
+    public static <T> MWindowedMessageEndpoint<T> create(
+            ScheduledExecutorService exec )
+    {
+        String name                   = "MWindowedMessageEndpoint";
+        int    windowSize             = theResourceHelper.getResourceIntegerOrDefault( "WindowSize",              32 );
+        int    maxMessagesPerEnvelope = theResourceHelper.getResourceIntegerOrDefault( "MaxMessagesPerEnvelope",  64 );
+        long   deltaCoalesce          = theResourceHelper.getResourceLongOrDefault(    "DeltaCoalesce",            2L );
+        long   deltaAcknowledge       = theResourceHelper.getResourceLongOrDefault(    "DeltaAcknowledge",        10L );
+        long   deltaResend            = theResourceHelper.getResourceLongOrDefault(    "DeltaResend",            500L );
+        double randomVariation        = theResourceHelper.getResourceDoubleOrDefault(  "RandomVariation",        0.02 ); // 2%
+
+        return create(
+                name,
+                windowSize,
+                maxMessagesPerEnvelope,
+                deltaCoalesce,
+                deltaAcknowledge,
+                deltaResend,
+                randomVariation,
+                exec );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param name the name of the MessageEndpoint (for debugging only)
+     * @param windowSize the maximum number of MessageEnvelopes sent but not acknowledged yet
+     * @param maxMessagesPerEnvelope the maximum number of messages coalesced into one MessageEnvelope
+     * @param deltaCoalesce the number of milliseconds to wait for more messages before sending an enqueued message
+     * @param deltaAcknowledge the number of milliseconds until received MessageEnvelopes are acknowledged
+     *                         if there is no outgoing MessageEnvelope to carry the acknowledgement
+     * @param deltaResend the number of milliseconds until a MessageEnvelope that has not been acknowledged is resent
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule timed tasks
+     * @return the created MWindowedMessageEndpoint
+     * @param <T> the message type
+     */
+    public static <T> MWindowedMessageEndpoint<T> create(
+            String                   name,
+            int                      windowSize,
+            int                      maxMessagesPerEnvelope,
+            long                     deltaCoalesce,
+            long                     deltaAcknowledge,
+            long                     deltaResend,
+            double                   randomVariation,
+            ScheduledExecutorService exec )
+    {
+        MWindowedMessageEndpoint<T> ret = new MWindowedMessageEndpoint<T>(
+                name,
+                windowSize,
+                maxMessagesPerEnvelope,
+                deltaCoalesce,
+                deltaAcknowledge,
+                deltaResend,
+                randomVariation,
+                exec,
+                -1,
+                -1,
+                null,
+                new ArrayList<T>() );
+
+        if( log.isTraceEnabled() ) {
+            log.traceConstructor( ret );
+        }
+        return ret;
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param name the name of the MessageEndpoint (for debugging only)
+     * @param windowSize the maximum number of MessageEnvelopes sent but not acknowledged yet
+     * @param maxMessagesPerEnvelope the maximum number of messages coalesced into one MessageEnvelope
+     * @param deltaCoalesce the number of milliseconds to wait for more messages before sending an enqueued message
+     * @param deltaAcknowledge the number of milliseconds until received MessageEnvelopes are acknowledged
+     *                         if there is no outgoing MessageEnvelope to carry the acknowledgement
+     * @param deltaResend the number of milliseconds until a MessageEnvelope that has not been acknowledged is resent
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule timed tasks
+     * @param lastSentSequenceNumber the last sequence number sent in a previous instantiation of this MessageEndpoint
+     * @param lastReceivedSequenceNumber the last sequence number received in a previous instantiation of this MessageEndpoint
+     * @param messagesUnacknowledged the Messages that had not been acknowledged in a previous instantiation of this MessageEndpoint
+     * @param messagesToBeSent the Messages to be sent from a previous instantiation of this MessageEndpoint
+     * @return the created MWindowedMessageEndpoint
+     * @param <T> the message type
+     */
+    public static <T> MWindowedMessageEndpoint<T> restore(
+            String                   name,
+            int                      windowSize,
+            int                      maxMessagesPerEnvelope,
+            long                     deltaCoalesce,
+            long                     deltaAcknowledge,
+            long                     deltaResend,
+            double                   randomVariation,
+            ScheduledExecutorService exec,
+            long                     lastSentSequenceNumber,
+            long                     lastReceivedSequenceNumber,
+            List<T>                  messagesUnacknowledged,
+            List<T>                  messagesToBeSent )
+    {
+        MWindowedMessageEndpoint<T> ret = new MWindowedMessageEndpoint<T>(
+                name,
+                windowSize,
+                maxMessagesPerEnvelope,
+                deltaCoalesce,
+                deltaAcknowledge,
+                deltaResend,
+                randomVariation,
+                exec,
+                lastSentSequenceNumber,
+                lastReceivedSequenceNumber,
+                messagesUnacknowledged,
+                messagesToBeSent );
+
+        if( log.isTraceEnabled() ) {
+            log.traceConstructor( ret );
+        }
+        return ret;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the MessageEndpoint (for debugging only)
+     * @param windowSize the maximum number of MessageEnvelopes sent but not acknowledged yet
+     * @param maxMessagesPerEnvelope the maximum number of messages coalesced into one MessageEnvelope
+     * @param deltaCoalesce the number of milliseconds to wait for more messages before sending an enqueued message
+     * @param deltaAcknowledge the number of milliseconds until received MessageEnvelopes are acknowledged
+     *                         if there is no outgoing MessageEnvelope to carry the acknowledgement
+     * @param deltaResend the number of milliseconds until a MessageEnvelope that has not been acknowledged is resent
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule timed tasks
+     * @param lastSentSequenceNumber the last sequence number sent in a previous instantiation of this MessageEndpoint
+     * @param lastReceivedSequenceNumber the last sequence number received in a previous instantiation of this MessageEndpoint
+     * @param messagesUnacknowledged the Messages that had not been acknowledged in a previous instantiation of this MessageEndpoint
+     * @param messagesToBeSent outgoing message queue (may or may not be empty)
+     */
+    protected MWindowedMessageEndpoint(
+            String                   name,
+            int                      windowSize,
+            int                      maxMessagesPerEnvelope,
+            long                     deltaCoalesce,
+            long                     deltaAcknowledge,
+            long                     deltaResend,
+            double                   randomVariation,
+            ScheduledExecutorService exec,
+            long                     lastSentSequenceNumber,
+            long                     lastReceivedSequenceNumber,
+            List<T>                  messagesUnacknowledged,
+            List<T>                  messagesToBeSent )
+    {
+        super(  name,
+                windowSize,
+                maxMessagesPerEnvelope,
+                deltaCoalesce,
+                deltaAcknowledge,
+                deltaResend,
+                randomVariation,
+                exec,
+                lastSentSequenceNumber,
+                lastReceivedSequenceNumber,
+                messagesUnacknowledged,
+                messagesToBeSent );
+    }
+
+    /**
+     * Set the partner endpoint and start communicating.
+     *
+     * @param partner the partner
+     */
+    public void setPartnerAndInitiateCommunications(
+            MWindowedMessageEndpoint<T> partner )
+    {
+        setPartner( partner );
+
+        startCommunicating();
+    }
+
+    /**
+     * Set the partner endpoint.
+     *
+     * @param partner the partner
+     */
+    public void setPartner(
+            MWindowedMessageEndpoint<T> partner )
+    {
+        if( thePartner != null ) {
+            throw new IllegalStateException();
+        }
+        if( partner == this ) {
+            throw new IllegalArgumentException( "Cannot communicate with myself" );
+        }
+        thePartner = partner;
+
+        thePartner.thePartner = this; // point back to us
+    }
+
+    /**
+     * Send a message on the regular schedule.
+     *
+     * @param msg the Message to send.
+     */
+    @Override
+    public void enqueueMessageForSend(
+            T msg )
+    {
+        if( isGracefullyDead ) {
+            throw new IllegalStateException( this + " is dead" );
+        }
+        super.enqueueMessageForSend( msg );
+    }
+
+    /**
+     * Do the message send.
+     *
+     * @param envelope the MessageEnvelope to send
+     * @throws MessageEndpointIsDeadException thrown if the partner MessageEndpoint is dead
+     * @throws MessageSendException thrown if the message could not be sent
+     */
+    protected void sendEnvelope(
+            MessageEnvelope<T> envelope )
+        throws
+            MessageEndpointIsDeadException,
+            MessageSendException
+    {
+        if( envelope.getContent() != null && log.isInfoEnabled() ) {
+            log.info( this, "sendEnvelope", envelope );
+        } else if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "sendEnvelope", envelope );
+        }
+
+        MWindowedMessageEndpoint<T> partner = thePartner;
+        if( partner != null ) {
+            partner.incomingEnvelope( envelope );
+        } else {
+            throw new MessageSendException( envelope.getContent(), "No partner MWindowedMessageEndpoint has been set" );
+        }
+    }
+
+    /**
+     * Invoked by the partner to provide a received MessageEnvelope.
+     *
+     * @param envelope the received MessageEnvelope
+     * @throws MessageEndpointIsDeadException thrown if the MessageEndpoint is dead
+     * @throws MessageSendException thrown if the message could not be sent
+     */
+    @Override
+    protected void incomingEnvelope(
+            MessageEnvelope<T> envelope )
+        throws
+            MessageEndpointIsDeadException,
+            MessageSendException
+    {
+        if( isGracefullyDead ) {
+            throw new MessageEndpointIsDeadException();
+        }
+        try {
+            super.incomingEnvelope( envelope );
+
+        } catch( RejectedExecutionException ex ) {
+            throw new MessageEndpointIsDeadException( ex );
+        }
+    }
+
+    /**
+     * Attempt to send the outgoing messages, but stop receiving incoming messages.
+     */
+    public void gracefulDie()
+    {
+        isGracefullyDead = true;
+
+        stopCommunicating();
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    @Override
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "theName",
+                    "isGracefullyDead",
+                    "theLastReceivedSequenceNumber",
+                    "theLastSentSequenceNumber",
+                    "theUnacknowledged.keySet()",
+                    "theMessagesToBeSent",
+                    "thePartner"
+                },
+                new Object[] {
+                    theName,
+                    isGracefullyDead,
+                    theLastReceivedSequenceNumber,
+                    theLastSentSequenceNumber,
+                    theUnacknowledged.keySet(),
+                    theMessagesToBeSent,
+                    thePartner
+                });
+    }
+
+    /**
+     * The partner MWindowedMessageEndpoint.
+     */
+    protected MWindowedMessageEndpoint<T> thePartner;
+
+    /**
+     * If this is true, the MessageEndpoint is dead.
+     */
+    protected boolean isGracefullyDead = false;
+
+    /**
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( MWindowedMessageEndpoint.class );
+}
@@ -0,0 +1,600 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.util.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * A SqlDatabase that keeps a pool of Connections, so that several threads can
+ * access the database at the same time. Each pooled Connection keeps its own cache
+ * of PreparedStatements, keyed by SqlPreparedStatement.
+ */
+public class PooledSqlDatabase
+        extends
+            SqlDatabase
+        implements
+            CanBeDumped
+{
+    private static final Log log = Log.getLogInstance( PooledSqlDatabase.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param name the name of the SqlDatabase, for debugging purposes
+     * @param ds the DataSource to the database
+     * @param maxConnections the maximum number of Connections open at the same time
+     * @return the created PooledSqlDatabase
+     */
+    public static PooledSqlDatabase create(
+            String     name,
+            DataSource ds,
+            int        maxConnections )
+    {
+        return new PooledSqlDatabase( name, ds, null, maxConnections, DEFAULT_MAX_WAIT );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param name the name of the SqlDatabase, for debugging purposes
+     * @param ds the DataSource to the database
+     * @param autoCommit set auto-commit on the Connections, don't set it, or leave default
+     * @param maxConnections the maximum number of Connections open at the same time
+     * @param maxWait the maximum time, in milliseconds, to wait for a Connection to become available
+     * @return the created PooledSqlDatabase
+     */
+    public static PooledSqlDatabase create(
+            String     name,
+            DataSource ds,
+            Boolean    autoCommit,
+            int        maxConnections,
+            long       maxWait )
+    {
+        return new PooledSqlDatabase( name, ds, autoCommit, maxConnections, maxWait );
+    }
+
+    /**
+     * Constructor for subclasses only, use factory method.
+     *
+     * @param name the name of the SqlDatabase, for debugging purposes
+     * @param ds the DataSource to the database
+     * @param autoCommit set auto-commit on the Connections, don't set it, or leave default
+     * @param maxConnections the maximum number of Connections open at the same time
+     * @param maxWait the maximum time, in milliseconds, to wait for a Connection to become available
+     */
+    protected PooledSqlDatabase(
+            String     name,
+            DataSource ds,
+            Boolean    autoCommit,
+            int        maxConnections,
+            long       maxWait )
+    {
+        super( name, ds, autoCommit );
+
+        if( maxConnections <= 0 ) {
+            throw new IllegalArgumentException( "maxConnections must be positive: " + maxConnections );
+        }
+        theMaxConnections = maxConnections;
+        theMaxWait        = maxWait;
+    }
+
+    /**
+     * Obtain the maximum number of Connections open at the same time.
+     *
+     * @return the maximum number of Connections
+     */
+    public int getMaxConnections()
+    {
+        return theMaxConnections;
+    }
+
+    /**
+     * Obtain a Connection from the pool for the exclusive use of the caller until
+     * it is handed back with {@link #checkInConnection}. If all Connections are in use
+     * and no more may be opened, wait until one is handed back.
+     *
+     * @return the Connection
+     * @throws SQLException thrown if the database could not be contacted, or no Connection became available in time
+     */
+    @Override
+    public Connection checkOutConnection()
+        throws
+            SQLException
+    {
+        long start = System.currentTimeMillis();
+
+        synchronized( this ) {
+            ++theCheckOutCount;
+
+            if( theIdleConnections.isEmpty() && theOpenCount >= theMaxConnections ) {
+                ++theWaitCount;
+
+                long deadline = start + theMaxWait;
+                while( theIdleConnections.isEmpty() && theOpenCount >= theMaxConnections ) {
+                    long delta = deadline - System.currentTimeMillis();
+                    if( delta <= 0 ) {
+                        ++theTimeoutCount;
+                        throw new SQLException( "Timed out waiting for a pooled Connection to " + theName + " after " + theMaxWait + " msec" );
+                    }
+                    try {
+                        wait( delta );
+                    } catch( InterruptedException ex ) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException( "Interrupted while waiting for a pooled Connection to " + theName, ex );
+                    }
+                }
+                theTotalWaitTime += System.currentTimeMillis() - start;
+            }
+            if( !theIdleConnections.isEmpty() ) {
+                // most recently used first: most likely to have its PreparedStatements and server-side state warm
+                Connection ret = theIdleConnections.removeFirst();
+                theCheckedOutConnections.put( ret, ret );
+                return ret;
+            }
+            ++theOpenCount; // reserve the slot before we leave the lock
+        }
+
+        Connection ret = null;
+        try {
+            ret = createConnection();
+
+        } finally {
+            synchronized( this ) {
+                if( ret != null ) {
+                    theStatementCaches.put( ret, new HashMap<SqlPreparedStatement,PreparedStatement>() );
+                    theCheckedOutConnections.put( ret, ret );
+                    ++theCreatedCount;
+                } else {
+                    --theOpenCount;
+                    notifyAll();
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Hand back a Connection previously obtained with {@link #checkOutConnection}.
+     *
+     * @param conn the Connection
+     */
+    @Override
+    public void checkInConnection(
+            Connection conn )
+    {
+        boolean close = false;
+        synchronized( this ) {
+            if( theCheckedOutConnections.remove( conn ) == null ) {
+                // not ours, or discarded already
+                return;
+            }
+            if( isClosed ) {
+                close = true;
+                theStatementCaches.remove( conn );
+                --theOpenCount;
+            } else {
+                theIdleConnections.addFirst( conn );
+            }
+            notifyAll();
+        }
+        if( close ) {
+            closeQuietly( conn );
+        }
+    }
+
+    /**
+     * Discard a Connection previously obtained with {@link #checkOutConnection} that
+     * has failed, and obtain a new one in its place.
+     *
+     * @param failed the failed Connection
+     * @return the new Connection
+     * @throws SQLException thrown if the database could not be contacted
+     */
+    @Override
+    public Connection replaceConnection(
+            Connection failed )
+        throws
+            SQLException
+    {
+        synchronized( this ) {
+            if( theCheckedOutConnections.remove( failed ) != null ) {
+                theStatementCaches.remove( failed );
+                --theOpenCount;
+                ++theDiscardedCount;
+                notifyAll();
+            }
+        }
+        closeQuietly( failed );
+
+        return checkOutConnection();
+    }
+
+    /**
+     * Obtain the JDBC PreparedStatement for this SqlPreparedStatement on this Connection,
+     * from the Connection's cache if possible.
+     *
+     * @param stm the SqlPreparedStatement
+     * @param conn the Connection
+     * @return the PreparedStatement
+     * @throws SQLException thrown when a database problem occurs
+     */
+    @Override
+    protected PreparedStatement obtainPreparedStatement(
+            SqlPreparedStatement stm,
+            Connection           conn )
+        throws
+            SQLException
+    {
+        Map<SqlPreparedStatement,PreparedStatement> cache;
+        synchronized( this ) {
+            cache = theStatementCaches.get( conn );
+        }
+        if( cache == null ) {
+            // not one of ours
+            return stm.obtainForMostRecentConnection( conn );
+        }
+
+        // the Connection is checked out to the current thread, so nobody else accesses the cache
+        PreparedStatement ret = cache.get( stm );
+        if( ret == null ) {
+            ret = stm.prepare( conn );
+            cache.put( stm, ret );
+
+            synchronized( this ) {
+                ++theStatementCacheMissCount;
+            }
+        } else {
+            synchronized( this ) {
+                ++theStatementCacheHitCount;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Close the JDBC PreparedStatement for this SqlPreparedStatement on this Connection,
+     * typically after an error.
+     *
+     * @param stm the SqlPreparedStatement
+     * @param conn the Connection
+     * @throws SQLException thrown when a database problem occurs
+     */
+    @Override
+    protected void closePreparedStatement(
+            SqlPreparedStatement stm,
+            Connection           conn )
+        throws
+            SQLException
+    {
+        Map<SqlPreparedStatement,PreparedStatement> cache;
+        synchronized( this ) {
+            cache = theStatementCaches.get( conn );
+        }
+        if( cache == null ) {
+            stm.close();
+            return;
+        }
+        PreparedStatement found = cache.remove( stm );
+        if( found != null ) {
+            found.close();
+        }
+    }
+
+    /**
+     * Close all idle pooled Connections, and the shared Connection if there is one.
+     * Connections currently checked out are closed when they are handed back.
+     */
+    @Override
+    public void closeConnection()
+    {
+        ArrayList<Connection> toClose;
+        synchronized( this ) {
+            toClose = new ArrayList<Connection>( theIdleConnections );
+            for( Connection current : toClose ) {
+                theStatementCaches.remove( current );
+            }
+            theOpenCount -= toClose.size();
+            theIdleConnections.clear();
+            notifyAll();
+        }
+        for( Connection current : toClose ) {
+            closeQuietly( current );
+        }
+        super.closeConnection();
+    }
+
+    /**
+     * Close the pool permanently. Idle Connections are closed right away, Connections
+     * currently checked out are closed when they are handed back.
+     */
+    public void close()
+    {
+        synchronized( this ) {
+            isClosed = true;
+        }
+        closeConnection();
+    }
+
+    /**
+     * Obtain the number of currently open pooled Connections, whether idle or checked out.
+     *
+     * @return the number of open Connections
+     */
+    public synchronized int getOpenConnectionCount()
+    {
+        return theOpenCount;
+    }
+
+    /**
+     * Obtain the number of currently idle pooled Connections.
+     *
+     * @return the number of idle Connections
+     */
+    public synchronized int getIdleConnectionCount()
+    {
+        return theIdleConnections.size();
+    }
+
+    /**
+     * Obtain the number of pooled Connections currently checked out.
+     *
+     * @return the number of checked-out Connections
+     */
+    public synchronized int getCheckedOutConnectionCount()
+    {
+        return theCheckedOutConnections.size();
+    }
+
+    /**
+     * Obtain the total number of times a Connection was checked out.
+     *
+     * @return the number
+     */
+    public synchronized long getCheckOutCount()
+    {
+        return theCheckOutCount;
+    }
+
+    /**
+     * Obtain the total number of times a caller had to wait for a Connection to become available.
+     *
+     * @return the number
+     */
+    public synchronized long getWaitCount()
+    {
+        return theWaitCount;
+    }
+
+    /**
+     * Obtain the total time, in milliseconds, that callers waited for a Connection to become available.
+     *
+     * @return the time in milliseconds
+     */
+    public synchronized long getTotalWaitTime()
+    {
+        return theTotalWaitTime;
+    }
+
+    /**
+     * Obtain the total number of times a caller gave up waiting for a Connection.
+     *
+     * @return the number
+     */
+    public synchronized long getTimeoutCount()
+    {
+        return theTimeoutCount;
+    }
+
+    /**
+     * Obtain the total number of Connections that were created.
+     *
+     * @return the number
+     */
+    public synchronized long getCreatedConnectionCount()
+    {
+        return theCreatedCount;
+    }
+
+    /**
+     * Obtain the total number of Connections that were discarded because they failed.
+     *
+     * @return the number
+     */
+    public synchronized long getDiscardedConnectionCount()
+    {
+        return theDiscardedCount;
+    }
+
+    /**
+     * Obtain the number of times a PreparedStatement was found in a Connection's cache.
+     *
+     * @return the number
+     */
+    public synchronized long getStatementCacheHitCount()
+    {
+        return theStatementCacheHitCount;
+    }
+
+    /**
+     * Obtain the number of times a PreparedStatement had to be prepared because it was not found in a Connection's cache.
+     *
+     * @return the number
+     */
+    public synchronized long getStatementCacheMissCount()
+    {
+        return theStatementCacheMissCount;
+    }
+
+    /**
+     * Create a new Connection to the database.
+     *
+     * @return the Connection
+     * @throws SQLException thrown if the database could not be contacted
+     */
+    protected Connection createConnection()
+        throws
+            SQLException
+    {
+        Connection ret = theDataSource.getConnection();
+
+        if( ret != null && theAutoCommit != null ) {
+            ret.setAutoCommit( theAutoCommit.booleanValue() );
+        }
+        return ret;
+    }
+
+    /**
+     * Helper to close a Connection, ignoring problems.
+     *
+     * @param conn the Connection
+     */
+    protected void closeQuietly(
+            Connection conn )
+    {
+        try {
+            conn.close();
+        } catch( Throwable t ) {
+            // might be closed already -- ignore
+            if( log.isDebugEnabled() ) {
+                log.debug( t );
+            }
+        }
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "name",
+                    "maxConnections",
+                    "open",
+                    "idle",
+                    "checkOuts",
+                    "waits",
+                    "totalWaitTime",
+                    "statementCacheHits",
+                    "statementCacheMisses"
+                },
+                new Object[] {
+                    theName,
+                    theMaxConnections,
+                    getOpenConnectionCount(),
+                    getIdleConnectionCount(),
+                    getCheckOutCount(),
+                    getWaitCount(),
+                    getTotalWaitTime(),
+                    getStatementCacheHitCount(),
+                    getStatementCacheMissCount()
+                });
+    }
+
+    /**
+     * The maximum number of Connections open at the same time.
+     */
+    protected int theMaxConnections;
+
+    /**
+     * The maximum time, in milliseconds, to wait for a Connection to become available.
+     */
+    protected long theMaxWait;
+
+    /**
+     * The idle Connections, most recently used first.
+     */
+    protected LinkedList<Connection> theIdleConnections = new LinkedList<Connection>();
+
+    /**
+     * The Connections currently checked out. This is used as an identity set.
+     */
+    protected IdentityHashMap<Connection,Connection> theCheckedOutConnections = new IdentityHashMap<Connection,Connection>();
+
+    /**
+     * The cached PreparedStatements, per pooled Connection.
+     */
+    protected IdentityHashMap<Connection,Map<SqlPreparedStatement,PreparedStatement>> theStatementCaches
+            = new IdentityHashMap<Connection,Map<SqlPreparedStatement,PreparedStatement>>();
+
+    /**
+     * The number of open pooled Connections, including those being created.
+     */
+    protected int theOpenCount;
+
+    /**
+     * Set to true once the pool has been closed.
+     */
+    protected boolean isClosed;
+
+    /**
+     * Number of check-outs.
+     */
+    protected long theCheckOutCount;
+
+    /**
+     * Number of check-outs that had to wait.
+     */
+    protected long theWaitCount;
+
+    /**
+     * Total time spent waiting, in milliseconds.
+     */
+    protected long theTotalWaitTime;
+
+    /**
+     * Number of check-outs that timed out.
+     */
+    protected long theTimeoutCount;
+
+    /**
+     * Number of Connections created.
+     */
+    protected long theCreatedCount;
+
+    /**
+     * Number of Connections discarded because they failed.
+     */
+    protected long theDiscardedCount;
+
+    /**
+     * Number of PreparedStatement cache hits.
+     */
+    protected long theStatementCacheHitCount;
+
+    /**
+     * Number of PreparedStatement cache misses.
+     */
+    protected long theStatementCacheMissCount;
+
+    /**
+     * The default maximum time, in milliseconds, to wait for a Connection to become available.
+     */
+    public static final long DEFAULT_MAX_WAIT = 30000L;
+}
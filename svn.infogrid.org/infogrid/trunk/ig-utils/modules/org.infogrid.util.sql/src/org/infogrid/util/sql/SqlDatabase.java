@@ -15,6 +15,7 @@ package org.infogrid.util.sql;
 //
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import javax.sql.DataSource;
 
@@ -138,6 +139,87 @@ public class SqlDatabase
         return theConnection;
     }
 
+    /**
+     * Obtain a Connection to the database for the exclusive use of the caller until
+     * it is handed back with {@link #checkInConnection}. This implementation shares
+     * a single Connection between all callers, who are expected to synchronize on it.
+     * Subclasses may pool Connections instead.
+     *
+     * @return the Connection
+     * @throws SQLException thrown if the database could not be contacted
+     */
+    public Connection checkOutConnection()
+        throws
+            SQLException
+    {
+        return obtainConnection();
+    }
+
+    /**
+     * Hand back a Connection previously obtained with {@link #checkOutConnection}.
+     * This implementation does nothing.
+     *
+     * @param conn the Connection
+     */
+    public void checkInConnection(
+            Connection conn )
+    {
+        // noop
+    }
+
+    /**
+     * Discard a Connection previously obtained with {@link #checkOutConnection} that
+     * has failed, and obtain a new one in its place. The new Connection must be handed
+     * back with {@link #checkInConnection}.
+     *
+     * @param failed the failed Connection
+     * @return the new Connection
+     * @throws SQLException thrown if the database could not be contacted
+     */
+    public Connection replaceConnection(
+            Connection failed )
+        throws
+            SQLException
+    {
+        return obtainNewConnection();
+    }
+
+    /**
+     * Obtain the JDBC PreparedStatement for this SqlPreparedStatement on this Connection.
+     * This implementation only remembers the PreparedStatement for the most recently used
+     * Connection.
+     *
+     * @param stm the SqlPreparedStatement
+     * @param conn the Connection
+     * @return the PreparedStatement
+     * @throws SQLException thrown when a database problem occurs
+     */
+    protected PreparedStatement obtainPreparedStatement(
+            SqlPreparedStatement stm,
+            Connection           conn )
+        throws
+            SQLException
+    {
+        return stm.obtainForMostRecentConnection( conn );
+    }
+
+    /**
+     * Close the JDBC PreparedStatement for this SqlPreparedStatement on this Connection,
+     * typically after an error.
+     *
+     * @param stm the SqlPreparedStatement
+     * @param conn the Connection
+     * @throws SQLException thrown when a database problem occurs
+     */
+    protected void closePreparedStatement(
+            SqlPreparedStatement stm,
+            Connection           conn )
+        throws
+            SQLException
+    {
+        stm.close();
+    }
+
     /**
      * Close the connection to the database.
      */
@@ -69,73 +69,77 @@ public abstract class SqlExecutionAction<R>
         throws
             SQLException
     {
-        SqlDatabase   db   = theStatement.getDatabase();        
-        Connection conn = db.obtainConnection();
-        
-        synchronized( conn ) {
-            track();
-
-            PreparedStatement stm;
-            boolean           error = true;
-            try {
-                stm = theStatement.obtain( conn );
-                R ret = perform( stm, conn );
-
-                error = false;
-                
-                return ret; // we are done
-
-            } catch( SQLException ex ) {
-                theStatement.close();
-            } finally {
-                if( autoCommit == null ) {
-                    autoCommit = db.getAutoCommit();
-                }
-                if( autoCommit != null && !autoCommit.booleanValue() ) {
-                    try {
-                        if( error ) {
-                            conn.rollback();
-                        } else {
-                            conn.commit();
+        SqlDatabase db   = theStatement.getDatabase();
+        Connection  conn = db.checkOutConnection();
+
+        try {
+            synchronized( conn ) {
+                track();
+
+                PreparedStatement stm;
+                boolean           error = true;
+                try {
+                    stm = theStatement.obtain( conn );
+                    R ret = perform( stm, conn );
+
+                    error = false;
+
+                    return ret; // we are done
+
+                } catch( SQLException ex ) {
+                    theStatement.close( conn );
+                } finally {
+                    if( autoCommit == null ) {
+                        autoCommit = db.getAutoCommit();
+                    }
+                    if( autoCommit != null && !autoCommit.booleanValue() ) {
+                        try {
+                            if( error ) {
+                                conn.rollback();
+                            } else {
+                                conn.commit();
+                            }
+                        } catch( SQLException ex ) {
+                            // do nothing
                         }
-                    } catch( SQLException ex ) {
-                        // do nothing
                     }
                 }
-            }
 
-            conn = db.obtainNewConnection();
+                conn = db.replaceConnection( conn );
 
-            // Get a new connection and try again. This time pass on any Exceptions.
-            error = true;
+                // Get a new connection and try again. This time pass on any Exceptions.
+                error = true;
 
-            try {
-                stm = theStatement.obtain( conn );
-                R ret = perform( stm, conn );
+                try {
+                    stm = theStatement.obtain( conn );
+                    R ret = perform( stm, conn );
 
-                error = false;
+                    error = false;
 
-                return ret;
+                    return ret;
 
-            } finally {
-                // this funny construct is to not having to catch the Exception while
-                // still closing the SqlStorePreparedStatement
+                } finally {
+                    // this funny construct is to not having to catch the Exception while
+                    // still closing the SqlStorePreparedStatement
 
-                if( error ) {
-                    theStatement.close();
-                }
-                if( autoCommit != null && !autoCommit.booleanValue() ) {
-                    try {
-                        if( error ) {
-                            conn.rollback();
-                        } else {
-                            conn.commit();
+                    if( error ) {
+                        theStatement.close( conn );
+                    }
+                    if( autoCommit != null && !autoCommit.booleanValue() ) {
+                        try {
+                            if( error ) {
+                                conn.rollback();
+                            } else {
+                                conn.commit();
+                            }
+                        } catch( SQLException ex ) {
+                            // do nothing
                         }
-                    } catch( SQLException ex ) {
-                        // do nothing
                     }
-                }                
+                }
             }
+        } finally {
+            db.checkInConnection( conn );
         }
     }
 
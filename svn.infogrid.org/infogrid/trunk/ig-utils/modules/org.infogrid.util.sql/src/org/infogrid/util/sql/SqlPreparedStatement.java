@@ -48,20 +48,52 @@ public class SqlPreparedStatement
      * @return the PreparedStatement
      * @throws SQLException thrown when a database problem occurs
      */
-    public synchronized PreparedStatement obtain(
+    public PreparedStatement obtain(
+            Connection conn )
+        throws
+            SQLException
+    {
+        return theDatabase.obtainPreparedStatement( this, conn );
+    }
+
+    /**
+     * Obtain a PreparedStatement for this Connection, reusing the one for the most
+     * recently used Connection if it is the same.
+     *
+     * @param conn the Connection
+     * @return the PreparedStatement
+     * @throws SQLException thrown when a database problem occurs
+     */
+    protected synchronized PreparedStatement obtainForMostRecentConnection(
             Connection conn )
         throws
             SQLException
     {
         if( conn != theConnection || thePreparedStatement == null ) {
             theConnection        = conn;
-            thePreparedStatement = theConnection.prepareStatement(
-                    theSql,
-                    ResultSet.TYPE_SCROLL_INSENSITIVE,
-                    ResultSet.CONCUR_READ_ONLY );
+            thePreparedStatement = prepare( conn );
         }
         return thePreparedStatement;
     }
+
+    /**
+     * Create a new PreparedStatement for this Connection.
+     *
+     * @param conn the Connection
+     * @return the PreparedStatement
+     * @throws SQLException thrown when a database problem occurs
+     */
+    protected PreparedStatement prepare(
+            Connection conn )
+        throws
+            SQLException
+    {
+        PreparedStatement ret = conn.prepareStatement(
+                theSql,
+                ResultSet.TYPE_SCROLL_INSENSITIVE,
+                ResultSet.CONCUR_READ_ONLY );
+        return ret;
+    }
     
     /**
      * Obtain the Database that this belongs to.
@@ -88,6 +120,20 @@ public class SqlPreparedStatement
         }
     }
 
+    /**
+     * Close the PreparedStatement for this Connection, typically after an error.
+     *
+     * @param conn the Connection
+     * @throws SQLException thrown when a database problem occurs
+     */
+    public void close(
+            Connection conn )
+        throws
+            SQLException
+    {
+        theDatabase.closePreparedStatement( this, conn );
+    }
+
     /**
      * Obtain the SQL code for this statement. This is primarily for debugging and logging.
      * 
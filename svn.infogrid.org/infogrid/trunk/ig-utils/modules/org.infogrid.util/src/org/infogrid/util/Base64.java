@@ -40,7 +40,10 @@ public abstract class Base64
             String data )
     {
         try {
-            byte [] ret = theDecoder.decodeBuffer( data );
+            byte [] ret;
+            synchronized( theDecoder ) {
+                ret = theDecoder.decodeBuffer( data );
+            }
             return ret;
 
         } catch( IOException ex ) {
@@ -58,7 +61,10 @@ public abstract class Base64
     public static String base64encode(
             byte [] data )
     {
-        String ret = theEncoder.encode( data );
+        String ret;
+        synchronized( theEncoder ) {
+            ret = theEncoder.encode( data );
+        }
         return ret;
     }
 
@@ -87,12 +93,12 @@ public abstract class Base64
     }
 
     /**
-     * Shared Encoder.
+     * Shared Encoder. It keeps state while encoding, so all calls to it must be synchronized to it.
      */
     protected static BASE64Encoder theEncoder = new BASE64Encoder();
 
     /**
-     * Shared Decoder.
+     * Shared Decoder. It keeps state while decoding, so all calls to it must be synchronized to it.
      */
     protected static BASE64Decoder theDecoder = new BASE64Decoder();
 }
@@ -0,0 +1,552 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Holds strong references to the most valuable values of a {@link SwappingHashMap},
+ *    up to a maximum total weight as determined by a {@link CacheWeigher}. As long as a
+ *    value is held by the BoundedWorkingSet, the garbage collector cannot clear the
+ *    SwappingHashMap's Reference to it, so residency in the cache is decided by this
+ *    class and not by the garbage collector.</p>
+ * <p>Eviction follows a segmented LRU policy: values enter a probationary segment, and are
+ *    promoted to a protected segment when they are accessed again. Values are evicted from
+ *    the probationary segment first, so a one-time scan over many values does not
+ *    displace the values that are used repeatedly.</p>
+ * <p>The BoundedWorkingSet also counts cache hits, misses and evictions.</p>
+ * <p>This class is thread-safe. So that cache hits do not contend for a single lock,
+ *    a hit that occurs while another thread is updating the BoundedWorkingSet is counted,
+ *    but does not change the sequence of use. This makes the policy slightly less precise,
+ *    but never lets the total weight exceed the maximum.</p>
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ */
+public class BoundedWorkingSet<K,V>
+        implements
+            CanBeDumped
+{
+    private static final Log log = Log.getLogInstance( BoundedWorkingSet.class ); // our own, private logger
+
+    /**
+     * Factory method, for a BoundedWorkingSet that holds up to a maximum number of values.
+     *
+     * @param maxEntries the maximum number of values
+     * @return the created BoundedWorkingSet
+     * @param <K> the type of key
+     * @param <V> the type of value
+     */
+    public static <K,V> BoundedWorkingSet<K,V> create(
+            long maxEntries )
+    {
+        return new BoundedWorkingSet<K,V>( maxEntries, CacheWeigher.UNIT );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param maxWeight the maximum total weight of the held values
+     * @param weigher estimates the weight of each value
+     * @return the created BoundedWorkingSet
+     * @param <K> the type of key
+     * @param <V> the type of value
+     */
+    public static <K,V> BoundedWorkingSet<K,V> create(
+            long                             maxWeight,
+            CacheWeigher<? super K,? super V> weigher )
+    {
+        if( maxWeight <= 0 ) {
+            throw new IllegalArgumentException( "Maximum weight must be positive: " + maxWeight );
+        }
+        if( weigher == null ) {
+            throw new NullPointerException();
+        }
+        return new BoundedWorkingSet<K,V>( maxWeight, weigher );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param maxWeight the maximum total weight of the held values
+     * @param weigher estimates the weight of each value
+     */
+    protected BoundedWorkingSet(
+            long                             maxWeight,
+            CacheWeigher<? super K,? super V> weigher )
+    {
+        theMaxWeight          = maxWeight;
+        theMaxProtectedWeight = (long) ( maxWeight * PROTECTED_SHARE );
+        theWeigher            = weigher;
+    }
+
+    /**
+     * Record that a value was found in memory, and mark it as recently used.
+     *
+     * @param key the key
+     * @param value the value that was found
+     */
+    public void recordHit(
+            K key,
+            V value )
+    {
+        theHitCount.incrementAndGet();
+
+        if( !theLock.tryLock() ) {
+            return; // somebody else is busy; not recording this use is cheaper than waiting
+        }
+        try {
+            Entry<V> entry = theProtected.remove( key );
+            if( entry != null ) {
+                entry.theValue = value;
+                theProtected.put( key, entry );
+                return;
+            }
+
+            entry = theProbation.remove( key );
+            if( entry != null ) {
+                theProbationWeight -= entry.theWeight;
+
+                entry.theValue = value;
+                theProtected.put( key, entry );
+                theProtectedWeight += entry.theWeight;
+
+                demoteProtected();
+            } else {
+                // evicted earlier, but still referenced from elsewhere
+                admit( key, value );
+            }
+            evict();
+
+        } finally {
+            theLock.unlock();
+        }
+    }
+
+    /**
+     * Record that a value was not found in memory and had to be loaded from storage.
+     *
+     * @param key the key
+     * @param value the value that was loaded, or null if none
+     */
+    public void recordMiss(
+            K key,
+            V value )
+    {
+        theMissCount.incrementAndGet();
+
+        if( value != null ) {
+            theLock.lock();
+            try {
+                admit( key, value );
+                evict();
+
+            } finally {
+                theLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Hold a value that was newly put into the cache, or that replaces a previous value.
+     *
+     * @param key the key
+     * @param value the new value
+     */
+    public void put(
+            K key,
+            V value )
+    {
+        theLock.lock();
+        try {
+            Entry<V> entry = theProtected.get( key );
+            if( entry != null ) {
+                int newWeight = weigh( key, value );
+
+                theProtectedWeight += newWeight - entry.theWeight;
+                entry.theValue  = value;
+                entry.theWeight = newWeight;
+
+                demoteProtected();
+            } else {
+                admit( key, value );
+            }
+            evict();
+
+        } finally {
+            theLock.unlock();
+        }
+    }
+
+    /**
+     * Stop holding the value for this key, if any.
+     *
+     * @param key the key
+     */
+    public void remove(
+            Object key )
+    {
+        theLock.lock();
+        try {
+            Entry<V> entry = theProbation.remove( key );
+            if( entry != null ) {
+                theProbationWeight -= entry.theWeight;
+            }
+            entry = theProtected.remove( key );
+            if( entry != null ) {
+                theProtectedWeight -= entry.theWeight;
+            }
+
+        } finally {
+            theLock.unlock();
+        }
+    }
+
+    /**
+     * Stop holding any values.
+     */
+    public void clear()
+    {
+        theLock.lock();
+        try {
+            theProbation.clear();
+            theProtected.clear();
+
+            theProbationWeight = 0L;
+            theProtectedWeight = 0L;
+
+        } finally {
+            theLock.unlock();
+        }
+    }
+
+    /**
+     * Determine whether the value for this key is currently being held.
+     *
+     * @param key the key
+     * @return true if the value is being held
+     */
+    public boolean contains(
+            Object key )
+    {
+        theLock.lock();
+        try {
+            return theProtected.containsKey( key ) || theProbation.containsKey( key );
+
+        } finally {
+            theLock.unlock();
+        }
+    }
+
+    /**
+     * Obtain the number of values currently being held.
+     *
+     * @return the number of values
+     */
+    public int size()
+    {
+        theLock.lock();
+        try {
+            return theProbation.size() + theProtected.size();
+
+        } finally {
+            theLock.unlock();
+        }
+    }
+
+    /**
+     * Obtain the total weight of the values currently being held.
+     *
+     * @return the total weight
+     */
+    public long getWeight()
+    {
+        theLock.lock();
+        try {
+            return theProbationWeight + theProtectedWeight;
+
+        } finally {
+            theLock.unlock();
+        }
+    }
+
+    /**
+     * Obtain the maximum total weight of the values being held.
+     *
+     * @return the maximum total weight
+     */
+    public long getMaxWeight()
+    {
+        return theMaxWeight;
+    }
+
+    /**
+     * Obtain the number of times a value was found in memory.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount()
+    {
+        return theHitCount.get();
+    }
+
+    /**
+     * Obtain the number of times a value had to be loaded from storage.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount()
+    {
+        return theMissCount.get();
+    }
+
+    /**
+     * Obtain the number of values that were evicted in order to stay within the maximum total weight.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount()
+    {
+        return theEvictionCount.get();
+    }
+
+    /**
+     * Reset the hit, miss and eviction counters.
+     */
+    public void resetCounters()
+    {
+        theHitCount.set( 0L );
+        theMissCount.set( 0L );
+        theEvictionCount.set( 0L );
+    }
+
+    /**
+     * Add a value to the probationary segment. The caller must hold theLock.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    protected void admit(
+            K key,
+            V value )
+    {
+        Entry<V> entry = new Entry<V>( value, weigh( key, value ));
+
+        Entry<V> old = theProbation.remove( key ); // so it moves to the most recently used end
+        if( old != null ) {
+            theProbationWeight -= old.theWeight;
+        }
+        theProbation.put( key, entry );
+        theProbationWeight += entry.theWeight;
+    }
+
+    /**
+     * Move the least recently used values from the protected segment into the probationary
+     * segment until the protected segment is within its maximum weight. The caller must hold theLock.
+     */
+    protected void demoteProtected()
+    {
+        Iterator<Map.Entry<K,Entry<V>>> iter = theProtected.entrySet().iterator();
+        while( theProtectedWeight > theMaxProtectedWeight && iter.hasNext() ) {
+            Map.Entry<K,Entry<V>> current = iter.next();
+            iter.remove();
+
+            theProtectedWeight -= current.getValue().theWeight;
+            theProbation.put( current.getKey(), current.getValue() );
+            theProbationWeight += current.getValue().theWeight;
+        }
+    }
+
+    /**
+     * Evict the least recently used values, probationary ones first, until the total
+     * weight is within the maximum. The caller must hold theLock.
+     */
+    protected void evict()
+    {
+        while( theProbationWeight + theProtectedWeight > theMaxWeight ) {
+            Iterator<Map.Entry<K,Entry<V>>> iter;
+            boolean                         probation;
+
+            if( !theProbation.isEmpty() ) {
+                iter      = theProbation.entrySet().iterator();
+                probation = true;
+            } else if( !theProtected.isEmpty() ) {
+                iter      = theProtected.entrySet().iterator();
+                probation = false;
+            } else {
+                break;
+            }
+            Map.Entry<K,Entry<V>> victim = iter.next();
+            iter.remove();
+
+            if( probation ) {
+                theProbationWeight -= victim.getValue().theWeight;
+            } else {
+                theProtectedWeight -= victim.getValue().theWeight;
+            }
+            theEvictionCount.incrementAndGet();
+
+            if( log.isTraceEnabled() ) {
+                log.traceMethodCallEntry( this, "evict", victim.getKey() );
+            }
+        }
+    }
+
+    /**
+     * Determine the weight of a key-value pair.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the weight
+     */
+    protected int weigh(
+            K key,
+            V value )
+    {
+        int ret = theWeigher.weigh( key, value );
+        if( ret <= 0 ) {
+            log.error( "Non-positive weight " + ret + " for " + key );
+            ret = 1;
+        }
+        return ret;
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "size",
+                    "weight",
+                    "maxWeight",
+                    "hits",
+                    "misses",
+                    "evictions"
+                },
+                new Object[] {
+                    size(),
+                    getWeight(),
+                    theMaxWeight,
+                    getHitCount(),
+                    getMissCount(),
+                    getEvictionCount()
+                });
+    }
+
+    /**
+     * The maximum total weight of the held values.
+     */
+    protected final long theMaxWeight;
+
+    /**
+     * The maximum total weight of the values in the protected segment.
+     */
+    protected final long theMaxProtectedWeight;
+
+    /**
+     * Estimates the weight of each value.
+     */
+    protected final CacheWeigher<? super K,? super V> theWeigher;
+
+    /**
+     * The values that have been accessed only once since they were admitted, in
+     * sequence of their last use.
+     */
+    protected final LinkedHashMap<K,Entry<V>> theProbation = new LinkedHashMap<K,Entry<V>>();
+
+    /**
+     * The values that have been accessed repeatedly, in sequence of their last use.
+     */
+    protected final LinkedHashMap<K,Entry<V>> theProtected = new LinkedHashMap<K,Entry<V>>();
+
+    /**
+     * The total weight of the values in the probationary segment. Guarded by theLock.
+     */
+    protected long theProbationWeight;
+
+    /**
+     * The total weight of the values in the protected segment. Guarded by theLock.
+     */
+    protected long theProtectedWeight;
+
+    /**
+     * Guards the segments and their weights.
+     */
+    protected final ReentrantLock theLock = new ReentrantLock();
+
+    /**
+     * The number of cache hits.
+     */
+    protected final AtomicLong theHitCount = new AtomicLong();
+
+    /**
+     * The number of cache misses.
+     */
+    protected final AtomicLong theMissCount = new AtomicLong();
+
+    /**
+     * The number of evictions.
+     */
+    protected final AtomicLong theEvictionCount = new AtomicLong();
+
+    /**
+     * The share of the maximum total weight that may be used by the protected segment.
+     */
+    public static final double PROTECTED_SHARE = 0.8;
+
+    /**
+     * A held value, together with its weight.
+     *
+     * @param <V> the type of value
+     */
+    protected static class Entry<V>
+    {
+        /**
+         * Constructor.
+         *
+         * @param value the value
+         * @param weight the weight of the value
+         */
+        public Entry(
+                V   value,
+                int weight )
+        {
+            theValue  = value;
+            theWeight = weight;
+        }
+
+        /**
+         * The value.
+         */
+        protected V theValue;
+
+        /**
+         * The weight of the value.
+         */
+        protected int theWeight;
+    }
+}
@@ -0,0 +1,50 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2012 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.util;
+
+/**
+ * Estimates how much memory a value held in a cache uses. The unit of the estimate
+ * is up to the implementation, but all weights used with the same cache must use
+ * the same unit.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ */
+public interface CacheWeigher<K,V>
+{
+    /**
+     * Estimate the weight of this key-value pair.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the weight, which must be positive
+     */
+    public int weigh(
+            K key,
+            V value );
+
+    /**
+     * A CacheWeigher that gives all key-value pairs the same weight. With this
+     * CacheWeigher, the maximum weight of a cache is its maximum number of entries.
+     */
+    public static final CacheWeigher<Object,Object> UNIT = new CacheWeigher<Object,Object>() {
+            public int weigh(
+                    Object key,
+                    Object value )
+            {
+                return 1;
+            }
+    };
+}
@@ -76,6 +76,20 @@ public interface CachingMap<K,V>
             Class<K> keyArrayComponentType,
             Class<V> valueArrayComponentType );
 
+    /**
+     * Obtain the values for several keys at the same time. Depending on the implementation
+     * of this interface, this may be considerably faster than invoking {@link #get} once for
+     * each key, e.g. by loading all values not held in memory with a single disk operation.
+     *
+     * @param keys the keys
+     * @param values an array of the same length as the keys, into which the values are written.
+     *        If there is no value for a key, the corresponding entry is set to null
+     * @return the values array, for convenience
+     */
+    public abstract V [] getMultiple(
+            K [] keys,
+            V [] values );
+
     /**
      * Obtain the keys for an existing value. This is the opposite operation
      * of {@link #get}. Depending on the implementation of this interface,
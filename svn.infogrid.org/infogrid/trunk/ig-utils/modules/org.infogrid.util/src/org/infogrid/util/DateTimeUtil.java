@@ -38,7 +38,10 @@ public abstract class DateTimeUtil
     public static String dateToRfc3339(
             Date d )
     {
-        String ret = theRfc3339Format.format( d );
+        String ret;
+        synchronized( theRfc3339Format ) {
+            ret = theRfc3339Format.format( d );
+        }
 
         return ret;
     }
@@ -57,7 +60,10 @@ public abstract class DateTimeUtil
     {
         s = s.toUpperCase();
 
-        Date ret = theRfc3339Format.parse( s );
+        Date ret;
+        synchronized( theRfc3339Format ) {
+            ret = theRfc3339Format.parse( s );
+        }
 
         return ret;
     }
@@ -71,7 +77,10 @@ public abstract class DateTimeUtil
     public static String dateToW3c(
             Date d )
     {
-        String ret = theW3cFormat.format( d );
+        String ret;
+        synchronized( theW3cFormat ) {
+            ret = theW3cFormat.format( d );
+        }
 
         return ret;
     }
@@ -90,7 +99,10 @@ public abstract class DateTimeUtil
     {
         s = s.toUpperCase();
 
-        Date ret = theW3cFormat.parse( s );
+        Date ret;
+        synchronized( theW3cFormat ) {
+            ret = theW3cFormat.parse( s );
+        }
 
         return ret;
     }
@@ -101,7 +113,7 @@ public abstract class DateTimeUtil
     public static final TimeZone UTC = TimeZone.getTimeZone( "UTC" );
 
     /**
-     * Date format to use for RFC 3339.
+     * Date format to use for RFC 3339. All calls to it must be synchronized to it.
      */
     public static final SimpleDateFormat theRfc3339Format = new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
     static {
@@ -109,7 +121,7 @@ public abstract class DateTimeUtil
     }
 
     /**
-     * Date format to use for W3C.
+     * Date format to use for W3C. All calls to it must be synchronized to it.
      */
     public static final SimpleDateFormat theW3cFormat = new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss'Z'");
     static {
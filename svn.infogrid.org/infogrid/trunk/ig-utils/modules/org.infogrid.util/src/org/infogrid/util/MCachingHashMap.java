@@ -269,6 +269,24 @@ public class MCachingHashMap<K,V>
         return ret;
     }
 
+    /**
+     * Obtain the values for several keys at the same time.
+     *
+     * @param keys the keys
+     * @param values an array of the same length as the keys, into which the values are written.
+     *        If there is no value for a key, the corresponding entry is set to null
+     * @return the values array, for convenience
+     */
+    public V [] getMultiple(
+            K [] keys,
+            V [] values )
+    {
+        for( int i=0 ; i<keys.length ; ++i ) {
+            values[i] = get( keys[i] );
+        }
+        return values;
+    }
+
     /**
      * Obtain the keys for an existing value. This is the opposite operation
      * of {@link #get}. Depending on the implementation of this interface,
@@ -32,8 +32,22 @@ public class NamedThreadFactory
      */
     public NamedThreadFactory(
             String prefix )
+    {
+        this( prefix, false );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param prefix the prefix name
+     * @param daemon if true, created Threads are daemon Threads that do not keep the JVM from exiting
+     */
+    public NamedThreadFactory(
+            String  prefix,
+            boolean daemon )
     {
         thePrefix = prefix + "-";
+        isDaemon  = daemon;
     }
 
     /**
@@ -47,6 +61,9 @@ public class NamedThreadFactory
             Runnable r )
     {
         Thread ret = new Thread( r, thePrefix + theCounter++ );
+        if( isDaemon ) {
+            ret.setDaemon( true );
+        }
         return ret;
     }
 
@@ -55,6 +72,11 @@ public class NamedThreadFactory
      */
     protected String thePrefix;
 
+    /**
+     * If true, created Threads are daemon Threads.
+     */
+    protected boolean isDaemon;
+
     /**
      * The current counter of created Threads.
      */
@@ -14,7 +14,9 @@
 
 package org.infogrid.util;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.infogrid.util.logging.CanBeDumped;
 import org.infogrid.util.logging.Dumper;
@@ -39,6 +41,9 @@ import org.infogrid.util.logging.Log;
  * </ol>
  * <p>The purpose of the <code>beginTransaction</code> and <code>endTransaction</code> calls is
  * largely to make debugging easier and fail faster in case of programming errors.</p>
+ * <p>Instead of <code>join</code> and <code>endTransaction</code>, a thread may invoke
+ * <code>detachTransaction</code>. The thread can then proceed without waiting, and the
+ * provided CompletionListener is invoked once all the queries have produced results.</p>
  * <p>FIXME? There is a chance this can be implemented more efficiently.</p>
  *
  * @param <K> the type of key
@@ -221,6 +226,9 @@ public class ReturnSynchronizer<K,R>
                     throw new ReturnSynchronizerException.DuplicateKey( this, keyForQuery );
                 }
             }
+            if( theDetachedQueries.containsKey( keyForQuery )) {
+                throw new ReturnSynchronizerException.DuplicateKey( this, keyForQuery );
+            }
             semaphore.addOpenQuery( keyForQuery );
         }
     }
@@ -247,6 +255,12 @@ public class ReturnSynchronizer<K,R>
         }
 
         synchronized( this ) {
+            Detached detached = theDetachedQueries.get( existingKeyForQuery );
+            if( detached != null ) {
+                detached.theMonitor.addOpenQuery( newKeyForQuery );
+                theDetachedQueries.put( newKeyForQuery, detached );
+                return;
+            }
             for( CS<K,R> current : threadToMonitorTable.values() ) {
                 if( current.hasQuery( existingKeyForQuery ) != null ) {
                     current.addOpenQuery( newKeyForQuery ); // may throw
@@ -277,15 +291,29 @@ public class ReturnSynchronizer<K,R>
             log.traceMethodCallEntry( this, "queryHasCompleted", keyForQuery, result );
         }
 
+        Detached completed = null;
+        boolean  ret       = false;
+
         synchronized( this ) {
-            boolean ret = false;
-            for( CS<K,R> current : threadToMonitorTable.values() ) {
-                if( current.hasQuery( keyForQuery ) != null ) {
-                    current.depositQueryResult( keyForQuery, result );
+            Detached detached = theDetachedQueries.remove( keyForQuery );
+            if( detached != null ) {
+                detached.theMonitor.depositQueryResult( keyForQuery, result );
+                if( detached.theMonitor.counter <= 0 && !detached.isDone ) {
+                    detached.isDone = true;
+                    completed       = detached;
+                }
+            } else {
+                for( CS<K,R> current : threadToMonitorTable.values() ) {
+                    if( current.hasQuery( keyForQuery ) != null ) {
+                        current.depositQueryResult( keyForQuery, result );
+                    }
                 }
             }
-            return ret;
         }
+        if( completed != null ) {
+            completed.notifyListener( true );
+        }
+        return ret;
     }
 
     /**
@@ -372,6 +400,9 @@ public class ReturnSynchronizer<K,R>
         }
 
         synchronized( this ) {
+            if( theDetachedQueries.containsKey( keyForQuery )) {
+                return true; // answered queries are removed
+            }
             for( CS<K,R> current : threadToMonitorTable.values() ) {
                 if( current.theResults == null ) {
                     continue;
@@ -513,13 +544,94 @@ public class ReturnSynchronizer<K,R>
         if( log.isTraceEnabled() ) {
             log.traceMethodCallEntry( this, "disablingError", ex );
         }
+        List<Detached> abandoned = new ArrayList<Detached>();
         synchronized( this ) {
             for( CS<K,R> current : threadToMonitorTable.values() ) {
                 current.abandon();
             }
+            for( Detached current : theDetachedQueries.values() ) {
+                if( !current.isDone ) {
+                    current.isDone = true;
+                    abandoned.add( current );
+                }
+            }
+            theDetachedQueries.clear();
+        }
+        for( Detached current : abandoned ) {
+            current.notifyListener( false );
         }
     }
 
+    /**
+     * Detach the open transaction from the calling Thread. The Thread does not wait for
+     * the results, and may open another transaction right away. Instead, the CompletionListener
+     * is invoked once all queries have produced results, which may be immediately.
+     *
+     * @param listener the CompletionListener
+     * @return the detached transaction
+     * @throws ReturnSynchronizerException.NoTransactionOpen thrown if no transaction is active on this Thread
+     */
+    public Detached detachTransaction(
+            CompletionListener<K,R> listener )
+        throws
+            ReturnSynchronizerException.NoTransactionOpen
+    {
+        Thread t = Thread.currentThread();
+
+        return detachTransaction( t, listener );
+    }
+
+    /**
+     * Detach the open transaction from a given Thread.
+     *
+     * @param thread the Thread
+     * @param listener the CompletionListener
+     * @return the detached transaction
+     * @throws ReturnSynchronizerException.NoTransactionOpen thrown if no transaction is active on this Thread
+     * @see #detachTransaction(CompletionListener)
+     */
+    public Detached detachTransaction(
+            Thread                  thread,
+            CompletionListener<K,R> listener )
+        throws
+            ReturnSynchronizerException.NoTransactionOpen
+    {
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "detachTransaction", thread, listener );
+        }
+
+        Detached ret;
+        synchronized( this ) {
+            CS<K,R> found = threadToMonitorTable.remove( thread );
+            if( found == null ) {
+                throw new ReturnSynchronizerException.NoTransactionOpen( this, thread );
+            }
+            ret = new Detached( found, listener );
+
+            if( found.counter > 0 ) {
+                for( Map.Entry<K,Object> current : found.theResults.entrySet() ) {
+                    if( current.getValue() == found ) {
+                        theDetachedQueries.put( current.getKey(), ret );
+                    }
+                }
+                return ret;
+            }
+            ret.isDone = true;
+        }
+        ret.notifyListener( true );
+        return ret;
+    }
+
+    /**
+     * Determine the number of detached transactions whose queries have not all produced results yet.
+     *
+     * @return the number of queries
+     */
+    public synchronized int getNumberOfOpenDetachedQueries()
+    {
+        return theDetachedQueries.size();
+    }
+
     /**
      * Dump this object.
      *
@@ -571,6 +683,131 @@ public class ReturnSynchronizer<K,R>
      */
     protected HashMap<Thread,CS<K,R>> threadToMonitorTable = new HashMap<Thread,CS<K,R>>();
 
+    /**
+     * This table maps the keys of the open queries of detached transactions to their transactions.
+     */
+    protected HashMap<K,Detached> theDetachedQueries = new HashMap<K,Detached>();
+
+    /**
+     * Implemented by those who wish to be notified when a detached transaction is complete.
+     *
+     * @param <K> the type of key
+     * @param <R> the type of return value
+     */
+    public static interface CompletionListener<K,R>
+    {
+        /**
+         * The detached transaction is complete.
+         *
+         * @param synchronizer the ReturnSynchronizer sending this event
+         * @param results the results of the queries that produced results, keyed by query
+         * @param allQueriesComplete if true, all queries produced results. If false, the transaction was
+         *        cancelled or abandoned before that
+         */
+        public abstract void transactionComplete(
+                ReturnSynchronizer<K,R> synchronizer,
+                Map<K,R>                results,
+                boolean                 allQueriesComplete );
+    }
+
+    /**
+     * A transaction that has been detached from its Thread.
+     */
+    public class Detached
+    {
+        /**
+         * Constructor.
+         *
+         * @param monitor the monitor of the transaction
+         * @param listener the CompletionListener to notify
+         */
+        protected Detached(
+                CS<K,R>                 monitor,
+                CompletionListener<K,R> listener )
+        {
+            theMonitor  = monitor;
+            theListener = listener;
+        }
+
+        /**
+         * Cancel the transaction if it has not completed yet, for example because
+         * it timed out. The CompletionListener is notified that not all queries completed.
+         *
+         * @return true if the transaction was cancelled, false if it was complete already
+         */
+        public boolean cancel()
+        {
+            synchronized( ReturnSynchronizer.this ) {
+                if( isDone ) {
+                    return false;
+                }
+                isDone = true;
+
+                if( theMonitor.theResults != null ) {
+                    for( K current : theMonitor.theResults.keySet() ) {
+                        theDetachedQueries.remove( current );
+                    }
+                }
+            }
+            notifyListener( false );
+            return true;
+        }
+
+        /**
+         * Determine whether this transaction is complete, or was cancelled or abandoned.
+         *
+         * @return true if done
+         */
+        public boolean isDone()
+        {
+            synchronized( ReturnSynchronizer.this ) {
+                return isDone;
+            }
+        }
+
+        /**
+         * Notify the CompletionListener. Invoked exactly once, and not while holding any locks.
+         *
+         * @param allQueriesComplete if true, all queries produced results
+         */
+        @SuppressWarnings("unchecked")
+        protected void notifyListener(
+                boolean allQueriesComplete )
+        {
+            HashMap<K,R> results = new HashMap<K,R>();
+            synchronized( theMonitor ) {
+                if( theMonitor.theResults != null ) {
+                    for( Map.Entry<K,Object> current : theMonitor.theResults.entrySet() ) {
+                        if( current.getValue() != theMonitor ) {
+                            results.put( current.getKey(), (R) current.getValue() );
+                        }
+                    }
+                }
+            }
+            try {
+                theListener.transactionComplete( ReturnSynchronizer.this, results, allQueriesComplete );
+
+            } catch( Throwable t ) {
+                log.error( t );
+            }
+        }
+
+        /**
+         * The monitor of the transaction.
+         */
+        protected CS<K,R> theMonitor;
+
+        /**
+         * The CompletionListener to notify.
+         */
+        protected CompletionListener<K,R> theListener;
+
+        /**
+         * Set to true when complete, cancelled or abandoned. Guarded by the ReturnSynchronizer.
+         */
+        protected boolean isDone;
+    }
+
     /**
      * This is some version of a counting semaphore.
      *
@@ -593,8 +830,8 @@ public class ReturnSynchronizer<K,R>
             throws
                 InterruptedException
         {
-            if( theResults == null || theResults.isEmpty() ) {
-                return true;
+            if( theResults == null || theResults.isEmpty() || counter <= 0 ) {
+                return true; // the results may have been deposited before we got here
             }
 
             wait( timeout );
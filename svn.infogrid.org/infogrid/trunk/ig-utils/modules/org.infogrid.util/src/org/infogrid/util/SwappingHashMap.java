@@ -19,11 +19,14 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.AbstractCollection;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import org.infogrid.util.logging.Log;
 
 /**
@@ -35,6 +38,14 @@ import org.infogrid.util.logging.Log;
  * other place (outside of the scope of this class) a previously deallocated value.
  * In the comments to this class, and in some of the method calls, this other place
  * is called "storage".
+ * Optionally, a {@link BoundedWorkingSet} holds strong references to the most valuable
+ * values, so they stay in memory regardless of garbage collection.
+ *
+ * This class is thread-safe. Values that are in memory are found without locking.
+ * Loading a value from storage, and modifying the value for a key, is performed while
+ * holding one of several locks, selected by the hash code of the key. Because of that,
+ * the value for a key is loaded only once even if several threads ask for it at the
+ * same time, while threads asking for values with other keys are rarely blocked.
  * 
  * @param <K> the type of key
  * @param <V> the type of value
@@ -53,7 +64,44 @@ public abstract class SwappingHashMap<K,V>
     protected SwappingHashMap(
             int initialSize )
     {
-        theDelegate = new HashMap<K,Reference<V>>( initialSize );
+        theDelegate = new ConcurrentHashMap<K,Reference<V>>( initialSize );
+
+        theLocks = new ReentrantLock[ LOCK_STRIPES ];
+        for( int i=0 ; i<theLocks.length ; ++i ) {
+            theLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Set the BoundedWorkingSet that holds strong references to the most valuable values
+     * in this SwappingHashMap. If null, values are only held by References, and the garbage
+     * collector decides which of them stay in memory.
+     *
+     * @param newValue the new BoundedWorkingSet, or null
+     */
+    public void setWorkingSet(
+            BoundedWorkingSet<K,V> newValue )
+    {
+        if( newValue != null ) {
+            for( Map.Entry<K,Reference<V>> current : theDelegate.entrySet() ) {
+                V value = current.getValue().get();
+                if( value != null ) {
+                    newValue.put( current.getKey(), value );
+                }
+            }
+        }
+        theWorkingSet = newValue;
+    }
+
+    /**
+     * Obtain the BoundedWorkingSet that holds strong references to the most valuable values
+     * in this SwappingHashMap, if any.
+     *
+     * @return the BoundedWorkingSet, or null
+     */
+    public BoundedWorkingSet<K,V> getWorkingSet()
+    {
+        return theWorkingSet;
     }
 
     /**
@@ -82,13 +130,15 @@ public abstract class SwappingHashMap<K,V>
             // we know that this queue only contains things that implement this interface, so this cast is safe
             EntryReference<K> realCurrent = (EntryReference<K>) current;
             K key = realCurrent.getKey();
-            theDelegate.remove( key );
 
-            if( log.isDebugEnabled() ) {
-                log.debug( this + ".cleanup() of object with key " + key );
+            // only if the key has not been mapped to a new value in the meantime
+            if( theDelegate.remove( key, current )) {
+                if( log.isDebugEnabled() ) {
+                    log.debug( this + ".cleanup() of object with key " + key );
+                }
+
+                fireValueCleanedUp( key );
             }
-            
-            fireValueCleanedUp( key );
         }
     }
 
@@ -100,7 +150,7 @@ public abstract class SwappingHashMap<K,V>
      *
      * @return the number of key-value mappings in this SwappingHashMap.
      */
-    public synchronized int size()
+    public int size()
     {
         cleanup();
         return theDelegate.size();
@@ -111,7 +161,7 @@ public abstract class SwappingHashMap<K,V>
      *
      * @return true if this is empty
      */
-    public synchronized boolean isEmpty()
+    public boolean isEmpty()
     {
         cleanup();
         return theDelegate.isEmpty();
@@ -126,7 +176,7 @@ public abstract class SwappingHashMap<K,V>
      */
     @Override
     @SuppressWarnings(value={"unchecked"})
-    public synchronized boolean containsKey(
+    public boolean containsKey(
             Object key )
     {
         cleanup();
@@ -134,13 +184,24 @@ public abstract class SwappingHashMap<K,V>
         Reference<V> ref = theDelegate.get( key );
         V found = ref != null ? ref.get() : null;
 
-        boolean ret = found != null;
-        if( found == null ) {
-            found = loadValueFromStorage( key );
-            theSwappingListeners.fireEvent( new Pair<K,V>( (K) key, found ), 0 );
-            ret = found != null;
+        if( found != null ) {
+            return true;
         }
-        return ret;
+
+        ReentrantLock lock = lockFor( key );
+        lock.lock();
+        try {
+            ref   = theDelegate.get( key ); // may have been loaded by another thread in the meantime
+            found = ref != null ? ref.get() : null;
+
+            if( found == null ) {
+                found = loadValueFromStorage( key );
+                theSwappingListeners.fireEvent( new Pair<K,V>( (K) key, found ), 0 );
+            }
+        } finally {
+            lock.unlock();
+        }
+        return found != null;
     }
 
     /**
@@ -159,6 +220,25 @@ public abstract class SwappingHashMap<K,V>
         return null; // on this level
     }
 
+    /**
+     * This method may be overridden by subclasses, to swap in several values at the same
+     * time that currently are not contained in the local cache. This default implementation
+     * invokes {@link #loadValueFromStorage} once for each key whose value is missing.
+     *
+     * @param keys the keys
+     * @param values the values; only those entries that are null shall be loaded
+     */
+    protected void loadValuesFromStorage(
+            K [] keys,
+            V [] values )
+    {
+        for( int i=0 ; i<keys.length ; ++i ) {
+            if( values[i] == null ) {
+                values[i] = loadValueFromStorage( keys[i] );
+            }
+        }
+    }
+
     /**
      * Returns <tt>true</tt> if this SwappingHashMap maps one or more keys to the
      * specified value.
@@ -180,20 +260,46 @@ public abstract class SwappingHashMap<K,V>
      * @return the value, if any
      */
     @SuppressWarnings(value={"unchecked"})
-    public synchronized V get(
+    public V get(
             Object key )
     {
         cleanup();
         @SuppressWarnings("element-type-mismatch")
         Reference<V> found = theDelegate.get( key );
         V ret = found != null ? found.get() : null;
-        
-        if( ret == null ) {
+
+        BoundedWorkingSet<K,V> workingSet = theWorkingSet;
+        if( ret != null ) {
+            if( workingSet != null ) {
+                workingSet.recordHit( (K) key, ret );
+            }
+            return ret;
+        }
+
+        ReentrantLock lock = lockFor( key );
+        lock.lock();
+        try {
+            found = theDelegate.get( key ); // may have been loaded by another thread in the meantime
+            ret   = found != null ? found.get() : null;
+
+            if( ret != null ) {
+                if( workingSet != null ) {
+                    workingSet.recordHit( (K) key, ret );
+                }
+                return ret;
+            }
+
             ret = loadValueFromStorage( key );
             if( ret != null ) {
                 theDelegate.put( (K) key, createReference( (K) key, ret ));
             }
+            if( workingSet != null ) {
+                workingSet.recordMiss( (K) key, ret );
+            }
             theSwappingListeners.fireEvent( new Pair<K,V>( (K) key, ret ), 0 ); // this is here, not in the method, in order to allow for easy subclassing
+
+        } finally {
+            lock.unlock();
         }
         return ret;
     }
@@ -214,6 +320,120 @@ public abstract class SwappingHashMap<K,V>
         return ret;
     }
 
+    /**
+     * Obtain the values for several keys at the same time. All values that are not
+     * held in memory are loaded from storage with a single invocation of
+     * {@link #loadValuesFromStorage}.
+     *
+     * @param keys the keys
+     * @param values an array of the same length as the keys, into which the values are written.
+     *        If there is no value for a key, the corresponding entry is set to null
+     * @return the values array, for convenience
+     */
+    @Override
+    public V [] getMultiple(
+            K [] keys,
+            V [] values )
+    {
+        cleanup();
+
+        BoundedWorkingSet<K,V> workingSet = theWorkingSet;
+
+        boolean [] missing = new boolean[ keys.length ];
+        boolean [] stripes = null; // the locks we need to acquire, by index
+
+        for( int i=0 ; i<keys.length ; ++i ) {
+            Reference<V> found = theDelegate.get( keys[i] );
+            values[i] = found != null ? found.get() : null;
+
+            if( values[i] == null ) {
+                missing[i] = true;
+                if( stripes == null ) {
+                    stripes = new boolean[ theLocks.length ];
+                }
+                stripes[ stripeIndex( keys[i] ) ] = true;
+
+            } else if( workingSet != null ) {
+                workingSet.recordHit( keys[i], values[i] );
+            }
+        }
+        if( stripes == null ) {
+            return values;
+        }
+
+        // always acquire locks in the same sequence, so we cannot deadlock with another invocation of this method
+        for( int i=0 ; i<stripes.length ; ++i ) {
+            if( stripes[i] ) {
+                theLocks[i].lock();
+            }
+        }
+        try {
+            for( int i=0 ; i<keys.length ; ++i ) {
+                if( missing[i] ) {
+                    Reference<V> found = theDelegate.get( keys[i] ); // may have been loaded by another thread in the meantime
+                    values[i] = found != null ? found.get() : null;
+
+                    if( values[i] != null ) {
+                        missing[i] = false;
+                        if( workingSet != null ) {
+                            workingSet.recordHit( keys[i], values[i] );
+                        }
+                    }
+                }
+            }
+
+            // the same key may be given more than once: load it only once, and give all occurrences the same value
+            HashMap<K,Integer> positions    = new HashMap<K,Integer>();
+            int []             keyPositions = new int[ keys.length ];
+            int []             firstIndices = new int[ keys.length ];
+            int                count        = 0;
+
+            for( int i=0 ; i<keys.length ; ++i ) {
+                if( missing[i] ) {
+                    Integer position = positions.get( keys[i] );
+                    if( position == null ) {
+                        position = count;
+                        positions.put( keys[i], position );
+                        firstIndices[ count++ ] = i;
+                    }
+                    keyPositions[i] = position;
+                }
+            }
+
+            K [] uniqueKeys   = Arrays.copyOf( keys,   count );
+            V [] uniqueValues = Arrays.copyOf( values, count );
+            for( int i=0 ; i<count ; ++i ) {
+                uniqueKeys[i]   = keys[ firstIndices[i] ];
+                uniqueValues[i] = null;
+            }
+
+            loadValuesFromStorage( uniqueKeys, uniqueValues );
+
+            for( int i=0 ; i<count ; ++i ) {
+                if( uniqueValues[i] != null ) {
+                    theDelegate.put( uniqueKeys[i], createReference( uniqueKeys[i], uniqueValues[i] ));
+                }
+                if( workingSet != null ) {
+                    workingSet.recordMiss( uniqueKeys[i], uniqueValues[i] );
+                }
+                theSwappingListeners.fireEvent( new Pair<K,V>( uniqueKeys[i], uniqueValues[i] ), 0 ); // as in get
+            }
+            for( int i=0 ; i<keys.length ; ++i ) {
+                if( missing[i] ) {
+                    values[i] = uniqueValues[ keyPositions[i] ];
+                }
+            }
+
+        } finally {
+            for( int i=stripes.length-1 ; i>=0 ; --i ) {
+                if( stripes[i] ) {
+                    theLocks[i].unlock();
+                }
+            }
+        }
+        return values;
+    }
+
     /**
      * Associates the specified value with the specified key in this map.
      * This is the same operation as <code>put</code>, but does not return the previous
@@ -239,21 +459,40 @@ public abstract class SwappingHashMap<K,V>
      * @param attemptLoad if true, attempt to load the old value
      * @return the old value for the key, if any
      */
-    protected synchronized V internalPut(
+    protected V internalPut(
             K       key,
             V       value,
             boolean attemptLoad )
     {
         cleanup();
-        Reference<V> found = theDelegate.put( key, createReference( key, value ));
-        V ret = found != null ? found.get() : null;
 
-        if( attemptLoad && ret == null ) {
-            ret = loadValueFromStorage( key );
-        }
+        V ret;
+
+        ReentrantLock lock = lockFor( key );
+        lock.lock();
+        try {
+            Reference<V> found = theDelegate.put( key, createReference( key, value ));
+            ret = found != null ? found.get() : null;
+
+            BoundedWorkingSet<K,V> workingSet = theWorkingSet;
+            if( workingSet != null ) {
+                if( value != null ) {
+                    workingSet.put( key, value );
+                } else {
+                    workingSet.remove( key );
+                }
+            }
+
+            if( attemptLoad && ret == null ) {
+                ret = loadValueFromStorage( key );
+            }
 
-        saveValueToStorage( key, value );
-        theSwappingListeners.fireEvent( new Pair<K,V>( key, value ), 1 ); // this is here, not in the method, in order to allow for easy subclassing
+            saveValueToStorage( key, value );
+            theSwappingListeners.fireEvent( new Pair<K,V>( key, value ), 1 ); // this is here, not in the method, in order to allow for easy subclassing
+
+        } finally {
+            lock.unlock();
+        }
 
         if( ret != null ) {
             fireValueRemoved( key );
@@ -288,20 +527,34 @@ public abstract class SwappingHashMap<K,V>
      * @return the old value for the key, if any
      */
     @SuppressWarnings(value={"unchecked"})
-    public synchronized V remove(
+    public V remove(
             Object key )
     {
         cleanup();
-        Reference<V> found = theDelegate.remove( key );
-        V ret = found != null ? found.get() : null;
-        
-        if( ret == null ) {
-            ret = loadValueFromStorage( key );
-            theSwappingListeners.fireEvent( new Pair<K,V>( (K) key, null ), 0 ); // this is here, not in the method, in order to allow for easy subclassing
-        }
-        if( ret != null ) {
-            removeValueFromStorage( key );
-            theSwappingListeners.fireEvent( new Pair<K,V>( (K) key, null ), 2 ); // this is here, not in the method, in order to allow for easy subclassing
+
+        V ret;
+
+        ReentrantLock lock = lockFor( key );
+        lock.lock();
+        try {
+            Reference<V> found = theDelegate.remove( key );
+            ret = found != null ? found.get() : null;
+
+            BoundedWorkingSet<K,V> workingSet = theWorkingSet;
+            if( workingSet != null ) {
+                workingSet.remove( key );
+            }
+            if( ret == null ) {
+                ret = loadValueFromStorage( key );
+                theSwappingListeners.fireEvent( new Pair<K,V>( (K) key, null ), 0 ); // this is here, not in the method, in order to allow for easy subclassing
+            }
+            if( ret != null ) {
+                removeValueFromStorage( key );
+                theSwappingListeners.fireEvent( new Pair<K,V>( (K) key, null ), 2 ); // this is here, not in the method, in order to allow for easy subclassing
+            }
+
+        } finally {
+            lock.unlock();
         }
         if( ret != null ) {
             fireValueRemoved( (K) key );
@@ -339,19 +592,41 @@ public abstract class SwappingHashMap<K,V>
     /**
      * Removes all mappings from this map (optional operation).
      */
-    public synchronized void clear()
+    public void clear()
     {
-        theDelegate.clear();
-        clearStorage();
+        lockAll();
+        try {
+            theDelegate.clear();
+
+            BoundedWorkingSet<K,V> workingSet = theWorkingSet;
+            if( workingSet != null ) {
+                workingSet.clear();
+            }
+            clearStorage();
+
+        } finally {
+            unlockAll();
+        }
     }
 
     /**
      * Removes only the locally cached mappings from this map. This keeps
      * the content of the Map and only affects the cache.
      */
-    public synchronized void clearLocalCache()
+    public void clearLocalCache()
     {
-        theDelegate.clear();
+        lockAll();
+        try {
+            theDelegate.clear();
+
+            BoundedWorkingSet<K,V> workingSet = theWorkingSet;
+            if( workingSet != null ) {
+                workingSet.clear();
+            }
+
+        } finally {
+            unlockAll();
+        }
     }
 
     /**
@@ -381,7 +656,7 @@ public abstract class SwappingHashMap<K,V>
      *
      * @return the Set of keys
      */
-    public synchronized Set<K> keySet()
+    public Set<K> keySet()
     {
         cleanup();
         return theDelegate.keySet();
@@ -415,11 +690,57 @@ public abstract class SwappingHashMap<K,V>
      *
      * @return the underlying cache
      */
-    protected HashMap<K,Reference<V>> getUnderlyingCache()
+    protected ConcurrentHashMap<K,Reference<V>> getUnderlyingCache()
     {
         return theDelegate;
     }
 
+    /**
+     * Determine the index of the lock that guards loading and modifying the value for this key.
+     *
+     * @param key the key
+     * @return the index into theLocks
+     */
+    protected int stripeIndex(
+            Object key )
+    {
+        int h = key.hashCode();
+        h ^= ( h >>> 16 ); // spread the high bits, as the number of locks is small
+        return h & ( theLocks.length - 1 );
+    }
+
+    /**
+     * Obtain the lock that guards loading and modifying the value for this key.
+     *
+     * @param key the key
+     * @return the lock
+     */
+    protected ReentrantLock lockFor(
+            Object key )
+    {
+        return theLocks[ stripeIndex( key ) ];
+    }
+
+    /**
+     * Acquire all locks, in sequence.
+     */
+    protected void lockAll()
+    {
+        for( int i=0 ; i<theLocks.length ; ++i ) {
+            theLocks[i].lock();
+        }
+    }
+
+    /**
+     * Release all locks, in reverse sequence.
+     */
+    protected void unlockAll()
+    {
+        for( int i=theLocks.length-1 ; i>=0 ; --i ) {
+            theLocks[i].unlock();
+        }
+    }
+
     /**
      * Add a listener for SwappingHashMap events.
      *
@@ -467,7 +788,22 @@ public abstract class SwappingHashMap<K,V>
     /**
      * The underlying store.
      */
-    protected HashMap<K,Reference<V>> theDelegate;
+    protected ConcurrentHashMap<K,Reference<V>> theDelegate;
+
+    /**
+     * The locks that guard loading and modifying values, selected by the hash code of the key.
+     */
+    protected ReentrantLock [] theLocks;
+
+    /**
+     * Holds strong references to the most valuable values, if any.
+     */
+    protected volatile BoundedWorkingSet<K,V> theWorkingSet;
+
+    /**
+     * The number of locks. This must be a power of two.
+     */
+    public static final int LOCK_STRIPES = 64;
 
     /**
      * A "projection" of the referenced values in the collection.
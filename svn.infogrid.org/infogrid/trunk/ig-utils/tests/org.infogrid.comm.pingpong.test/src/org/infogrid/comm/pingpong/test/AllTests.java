@@ -44,6 +44,10 @@ public class AllTests
 
                 new TestSpec( PingPongReturnSynchronizerTest1.class ),
                 new TestSpec( PingPongReturnSynchronizerTest2.class ),
+
+                new TestSpec( WindowedTest1.class ),
+                new TestSpec( WindowedTest2.class ),
+                new TestSpec( WindowedPerformanceTest1.class ),
         };
 
         runTests( tests );
@@ -0,0 +1,391 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.comm.pingpong.test;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.comm.BidirectionalMessageEndpoint;
+import org.infogrid.comm.MessageEndpoint;
+import org.infogrid.comm.MessageEndpointListener;
+import org.infogrid.comm.ReceivingMessageEndpoint;
+import org.infogrid.comm.SendingMessageEndpoint;
+import org.infogrid.comm.pingpong.m.MPingPongMessageEndpoint;
+import org.infogrid.comm.windowed.m.MWindowedMessageEndpoint;
+import org.infogrid.testharness.AbstractTest;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Compares the messages per second and the round-trip latency of the ping-pong and the
+ * windowed endpoints, each with its default settings. A number of clients each keep one
+ * request outstanding that the partner echoes back.
+ */
+public class WindowedPerformanceTest1
+        extends
+            AbstractTest
+{
+    /**
+     * Test run.
+     *
+     * @throws Exception this code may throw any Exception
+     */
+    public void run()
+            throws
+                Exception
+    {
+        log.info( "Measuring ping-pong" );
+
+        MPingPongMessageEndpoint<Integer> pp1 = MPingPongMessageEndpoint.create( exec );
+        MPingPongMessageEndpoint<Integer> pp2 = MPingPongMessageEndpoint.create( exec );
+
+        Client pingPong = new Client( pp1 );
+        pp2.addDirectMessageEndpointListener( new Echo( pp2 ));
+        pp1.setPartnerAndInitiateCommunications( pp2 );
+
+        pingPong.measure();
+
+        pp1.stopCommunicating();
+        pp2.stopCommunicating();
+
+        //
+
+        log.info( "Measuring windowed" );
+
+        MWindowedMessageEndpoint<Integer> w1 = MWindowedMessageEndpoint.create( exec );
+        MWindowedMessageEndpoint<Integer> w2 = MWindowedMessageEndpoint.create( exec );
+
+        Client windowed = new Client( w1 );
+        w2.addDirectMessageEndpointListener( new Echo( w2 ));
+        w1.setPartnerAndInitiateCommunications( w2 );
+
+        windowed.measure();
+
+        w1.gracefulDie();
+        w2.gracefulDie();
+
+        //
+
+        log.info( "Ping-pong: " + pingPong );
+        log.info( "Windowed:  " + windowed );
+
+        checkCondition( pingPong.theCompleted > 0, "No ping-pong round trips" );
+        checkCondition( windowed.theCompleted > pingPong.theCompleted, "Windowed not faster than ping-pong: " + windowed + " vs. " + pingPong );
+    }
+
+    /**
+      * Main program.
+      *
+      * @param args command-line arguments
+      */
+    public static void main(
+             String [] args )
+    {
+        WindowedPerformanceTest1 test = null;
+        try {
+            if( args.length != 0 ) {
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+            test = new WindowedPerformanceTest1( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            ++errorCount;
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.error( "FAIL (" + errorCount + " errors)" );
+        }
+
+        System.exit( errorCount );
+    }
+
+    /**
+     * Setup.
+     *
+     * @param args not used
+     * @throws Exception any kind of exception
+     */
+    public WindowedPerformanceTest1(
+            String [] args )
+        throws
+            Exception
+    {
+    }
+
+    /**
+     * Cleanup.
+     */
+    @Override
+    public void cleanup()
+    {
+        exec.shutdown();
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( WindowedPerformanceTest1.class );
+
+    /**
+     * The number of requests outstanding at the same time.
+     */
+    protected static final int N_CLIENTS = 16;
+
+    /**
+     * The duration of each measurement, in milliseconds.
+     */
+    protected static final long DURATION = 3000L;
+
+    /**
+     * Our ThreadPool
+     */
+    protected ScheduledExecutorService exec = createThreadPool( 2 );
+
+    /**
+     * Echoes all received messages back to the sender.
+     */
+    static class Echo
+            extends
+                NoOpListener
+    {
+        /**
+         * Constructor.
+         *
+         * @param endpoint the endpoint to echo through
+         */
+        public Echo(
+                BidirectionalMessageEndpoint<Integer> endpoint )
+        {
+            theEndpoint = endpoint;
+        }
+
+        /**
+         * Called when one more more incoming messages have arrived.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msgs the received messages
+         */
+        @Override
+        public void messageReceived(
+                ReceivingMessageEndpoint<Integer> endpoint,
+                List<Integer>                     msgs )
+        {
+            for( Integer current : msgs ) {
+                theEndpoint.enqueueMessageForSend( current );
+            }
+        }
+
+        /**
+         * The endpoint to echo through.
+         */
+        protected BidirectionalMessageEndpoint<Integer> theEndpoint;
+    }
+
+    /**
+     * Sends the requests and measures the round trips.
+     */
+    static class Client
+            extends
+                NoOpListener
+    {
+        /**
+         * Constructor.
+         *
+         * @param endpoint the endpoint to send through
+         */
+        public Client(
+                BidirectionalMessageEndpoint<Integer> endpoint )
+        {
+            theEndpoint = endpoint;
+            theEndpoint.addDirectMessageEndpointListener( this );
+        }
+
+        /**
+         * Keep N_CLIENTS requests outstanding for DURATION milliseconds.
+         *
+         * @throws InterruptedException thrown if interrupted while waiting
+         */
+        public void measure()
+            throws
+                InterruptedException
+        {
+            synchronized( this ) {
+                isRunning = true;
+                for( int i=0 ; i<N_CLIENTS ; ++i ) {
+                    theSentAt[i] = System.nanoTime();
+                }
+            }
+            long start = System.currentTimeMillis();
+            for( int i=0 ; i<N_CLIENTS ; ++i ) {
+                theEndpoint.enqueueMessageForSend( i );
+            }
+            Thread.sleep( DURATION );
+
+            synchronized( this ) {
+                isRunning = false;
+                theDuration = System.currentTimeMillis() - start;
+            }
+        }
+
+        /**
+         * Called when one more more incoming messages have arrived.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msgs the received messages
+         */
+        @Override
+        public void messageReceived(
+                ReceivingMessageEndpoint<Integer> endpoint,
+                List<Integer>                     msgs )
+        {
+            long now = System.nanoTime();
+            for( Integer current : msgs ) {
+                synchronized( this ) {
+                    if( !isRunning ) {
+                        return;
+                    }
+                    ++theCompleted;
+                    theLatencySum += now - theSentAt[ current ];
+                    theSentAt[ current ] = now;
+                }
+                theEndpoint.enqueueMessageForSend( current );
+            }
+        }
+
+        /**
+         * Convert to String, for reporting.
+         *
+         * @return String representation
+         */
+        @Override
+        public synchronized String toString()
+        {
+            double perSecond = theDuration > 0 ? theCompleted * 1000. / theDuration : 0.;
+            double latency   = theCompleted > 0 ? theLatencySum / 1e6 / theCompleted : 0.;
+
+            return String.format( "%d round trips, %.1f messages/sec, %.2f msec average latency", theCompleted, perSecond, latency );
+        }
+
+        /**
+         * The endpoint to send through.
+         */
+        protected BidirectionalMessageEndpoint<Integer> theEndpoint;
+
+        /**
+         * Per client, the time the outstanding request was sent, in nanoseconds.
+         */
+        protected long [] theSentAt = new long[ N_CLIENTS ];
+
+        /**
+         * True while measuring.
+         */
+        protected boolean isRunning;
+
+        /**
+         * The number of completed round trips.
+         */
+        protected long theCompleted;
+
+        /**
+         * The sum of the round-trip latencies, in nanoseconds.
+         */
+        protected long theLatencySum;
+
+        /**
+         * The actual duration of the measurement, in milliseconds.
+         */
+        protected long theDuration;
+    }
+
+    /**
+     * Listener that ignores all events.
+     */
+    static class NoOpListener
+            implements
+                MessageEndpointListener<Integer>
+    {
+        /**
+         * Called when one more more incoming messages have arrived.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msgs the received messages
+         */
+        public void messageReceived(
+                ReceivingMessageEndpoint<Integer> endpoint,
+                List<Integer>                     msgs )
+        {
+            // no op
+        }
+
+        /**
+         * Called when an outgoing message has been sent.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the sent message
+         */
+        public void messageSent(
+                SendingMessageEndpoint<Integer> endpoint,
+                Integer                         msg )
+        {
+            // no op
+        }
+
+        /**
+         * Called when an outgoing message has enqueued for sending.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the enqueued message
+         */
+        public void messageEnqueued(
+                SendingMessageEndpoint<Integer> endpoint,
+                Integer                         msg )
+        {
+            // no op
+        }
+
+        /**
+         * Called when an outoing message failed to be sent.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the outgoing message
+         */
+        public void messageSendingFailed(
+                SendingMessageEndpoint<Integer> endpoint,
+                Integer                         msg )
+        {
+            log.error( "Message sending failed: " + msg );
+        }
+
+        /**
+         * Called when the receiving endpoint threw the EndpointIsDeadException.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the status of the outgoing queue
+         * @param t the error
+         */
+        public void disablingError(
+                MessageEndpoint<Integer> endpoint,
+                List<Integer>            msg,
+                Throwable                t )
+        {
+            // happens at the end of the measurement
+        }
+    }
+}
@@ -0,0 +1,402 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.comm.pingpong.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.comm.MessageEndpoint;
+import org.infogrid.comm.MessageEndpointIsDeadException;
+import org.infogrid.comm.MessageSendException;
+import org.infogrid.comm.ReceivingMessageEndpoint;
+import org.infogrid.comm.SendingMessageEndpoint;
+import org.infogrid.comm.windowed.MessageEnvelope;
+import org.infogrid.comm.windowed.WindowedMessageEndpoint;
+import org.infogrid.comm.windowed.WindowedMessageEndpointListener;
+import org.infogrid.comm.windowed.m.MWindowedMessageEndpoint;
+import org.infogrid.testharness.AbstractTest;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that the windowed endpoints deliver all messages in order and coalesce them,
+ * even if MessageEnvelopes get lost.
+ */
+public class WindowedTest1
+        extends
+            AbstractTest
+{
+    /**
+     * Test run.
+     *
+     * @throws Exception this code may throw any Exception
+     */
+    public void run()
+            throws
+                Exception
+    {
+        LossyEndpoint                    ep1 = new LossyEndpoint( "ep1", new long[] { 2L, 5L, 6L }, exec );
+        MWindowedMessageEndpoint<String> ep2 = MWindowedMessageEndpoint.create( "ep2", 4, 8, 20L, 10L, 200L, 0., exec );
+
+        MyListener l1 = new MyListener();
+        MyListener l2 = new MyListener();
+        ep1.addDirectMessageEndpointListener( l1 );
+        ep2.addDirectMessageEndpointListener( l2 );
+
+        ep1.setPartnerAndInitiateCommunications( ep2 );
+
+        //
+
+        log.info( "Sending messages through a lossy endpoint" );
+
+        List<String> expected = new ArrayList<String>();
+        for( int i=0 ; i<N_MESSAGES ; ++i ) {
+            String msg = "m" + i;
+            expected.add( msg );
+            ep1.enqueueMessageForSend( msg );
+        }
+        ep2.enqueueMessageForSend( "back" );
+
+        waitFor( l2, N_MESSAGES, 10000L );
+        waitFor( l1, 1, 2000L );
+
+        checkEquals( l2.getReceived(), expected, "Messages not received in order" );
+        checkEquals( l1.getReceived().size(), 1, "Wrong number of messages received in reverse direction" );
+
+        checkEquals( ep1.theDropped.size(), 3, "Not all MessageEnvelopes were dropped" );
+        checkCondition( ep1.getEnvelopesResent() >= 3, "Lost MessageEnvelopes not resent: " + ep1.getEnvelopesResent() );
+        checkCondition( ep1.getEnvelopesSent() < N_MESSAGES / 2, "Messages not coalesced: " + ep1.getEnvelopesSent() );
+        checkCondition( l2.theEnvelopeCount < N_MESSAGES / 2, "Messages not received in batches: " + l2.theEnvelopeCount );
+        checkEquals( l1.theSentCount, N_MESSAGES, "Wrong number of messageSent events" );
+
+        Thread.sleep( 500L ); // let the acknowledgements arrive
+
+        checkEquals( ep1.messagesLastSent().size(), 0, "Messages still unacknowledged" );
+        checkEquals( ep1.getLastSentSequenceNumber(), ep2.getLastReceivedSequenceNumber(), "Sequence numbers out of sync" );
+        checkCondition( l1.theHighestAcknowledged == ep1.getLastSentSequenceNumber(), "Wrong acknowledgement: " + l1.theHighestAcknowledged );
+
+        //
+
+        log.info( "Restoring an endpoint with unacknowledged messages" );
+
+        ep1.stopCommunicating();
+        ep2.stopCommunicating();
+
+        List<String> unacknowledged = new ArrayList<String>();
+        unacknowledged.add( "u1" );
+        List<String> toBeSent = new ArrayList<String>();
+        toBeSent.add( "t1" );
+
+        MWindowedMessageEndpoint<String> ep3 = MWindowedMessageEndpoint.restore(
+                "ep3", 4, 8, 20L, 10L, 200L, 0., exec,
+                ep1.getLastSentSequenceNumber() + 3, // the partner never received these
+                ep1.getLastReceivedSequenceNumber(),
+                unacknowledged,
+                toBeSent );
+        MWindowedMessageEndpoint<String> ep4 = MWindowedMessageEndpoint.restore(
+                "ep4", 4, 8, 20L, 10L, 200L, 0., exec,
+                ep2.getLastSentSequenceNumber(),
+                ep2.getLastReceivedSequenceNumber(),
+                null,
+                new ArrayList<String>() );
+
+        MyListener l4 = new MyListener();
+        ep4.addDirectMessageEndpointListener( l4 );
+
+        ep3.setPartnerAndInitiateCommunications( ep4 );
+        ep4.startCommunicating();
+
+        waitFor( l4, 2, 5000L );
+
+        List<String> expectedAfterRestore = new ArrayList<String>();
+        expectedAfterRestore.add( "u1" );
+        expectedAfterRestore.add( "t1" );
+        checkEquals( l4.getReceived(), expectedAfterRestore, "Wrong messages after restore" );
+
+        ep3.gracefulDie();
+        ep4.gracefulDie();
+    }
+
+    /**
+     * Wait until a listener has received a number of messages, or time runs out.
+     *
+     * @param listener the listener
+     * @param n the number of messages
+     * @param timeout the timeout in milliseconds
+     * @throws InterruptedException thrown if interrupted while waiting
+     */
+    protected void waitFor(
+            MyListener listener,
+            int        n,
+            long       timeout )
+        throws
+            InterruptedException
+    {
+        long until = System.currentTimeMillis() + timeout;
+        while( listener.getReceived().size() < n && System.currentTimeMillis() < until ) {
+            Thread.sleep( 20L );
+        }
+    }
+
+    /**
+      * Main program.
+      *
+      * @param args command-line arguments
+      */
+    public static void main(
+             String [] args )
+    {
+        WindowedTest1 test = null;
+        try {
+            if( args.length != 0 ) {
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+            test = new WindowedTest1( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            ++errorCount;
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.error( "FAIL (" + errorCount + " errors)" );
+        }
+
+        System.exit( errorCount );
+    }
+
+    /**
+     * Setup.
+     *
+     * @param args not used
+     * @throws Exception any kind of exception
+     */
+    public WindowedTest1(
+            String [] args )
+        throws
+            Exception
+    {
+    }
+
+    /**
+     * Cleanup.
+     */
+    @Override
+    public void cleanup()
+    {
+        exec.shutdown();
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( WindowedTest1.class );
+
+    /**
+     * The number of messages to send.
+     */
+    protected static final int N_MESSAGES = 200;
+
+    /**
+     * Our ThreadPool
+     */
+    protected ScheduledExecutorService exec = createThreadPool( 1 );
+
+    /**
+     * Drops the first transmission of some MessageEnvelopes.
+     */
+    static class LossyEndpoint
+            extends
+                MWindowedMessageEndpoint<String>
+    {
+        /**
+         * Constructor.
+         *
+         * @param name the name of the endpoint
+         * @param toDrop the sequence numbers of the MessageEnvelopes to drop when they are first sent
+         * @param exec the ScheduledExecutorService to schedule timed tasks
+         */
+        public LossyEndpoint(
+                String                   name,
+                long []                  toDrop,
+                ScheduledExecutorService exec )
+        {
+            super( name, 4, 8, 20L, 10L, 200L, 0., exec, -1, -1, null, new ArrayList<String>() );
+
+            for( long current : toDrop ) {
+                theToDrop.add( current );
+            }
+        }
+
+        /**
+         * Do the message send, unless this MessageEnvelope is to be dropped.
+         *
+         * @param envelope the MessageEnvelope to send
+         * @throws MessageEndpointIsDeadException thrown if the partner MessageEndpoint is dead
+         * @throws MessageSendException thrown if the message could not be sent
+         */
+        @Override
+        protected void sendEnvelope(
+                MessageEnvelope<String> envelope )
+            throws
+                MessageEndpointIsDeadException,
+                MessageSendException
+        {
+            synchronized( theToDrop ) {
+                if( theToDrop.remove( envelope.getSequenceNumber() )) {
+                    theDropped.add( envelope.getSequenceNumber() );
+                    return;
+                }
+            }
+            super.sendEnvelope( envelope );
+        }
+
+        /**
+         * The sequence numbers of the MessageEnvelopes still to be dropped.
+         */
+        protected final Set<Long> theToDrop = new HashSet<Long>();
+
+        /**
+         * The sequence numbers of the MessageEnvelopes that were dropped.
+         */
+        protected final List<Long> theDropped = new ArrayList<Long>();
+    }
+
+    /**
+     * Listener.
+     */
+    static class MyListener
+            implements
+                WindowedMessageEndpointListener<String>
+    {
+        /**
+         * Obtain a copy of the messages received so far.
+         *
+         * @return the messages
+         */
+        public synchronized List<String> getReceived()
+        {
+            return new ArrayList<String>( theReceived );
+        }
+
+        /**
+         * Called when one more more incoming messages have arrived.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msgs the received messages
+         */
+        public synchronized void messageReceived(
+                ReceivingMessageEndpoint<String> endpoint,
+                List<String>                     msgs )
+        {
+            theReceived.addAll( msgs );
+            ++theEnvelopeCount;
+        }
+
+        /**
+         * Called when an outgoing message has been sent.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the sent message
+         */
+        public synchronized void messageSent(
+                SendingMessageEndpoint<String> endpoint,
+                String                         msg )
+        {
+            ++theSentCount;
+        }
+
+        /**
+         * Called when an outgoing message has enqueued for sending.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the enqueued message
+         */
+        public void messageEnqueued(
+                SendingMessageEndpoint<String> endpoint,
+                String                         msg )
+        {
+            // no op
+        }
+
+        /**
+         * Called when an outoing message failed to be sent.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the outgoing message
+         */
+        public void messageSendingFailed(
+                SendingMessageEndpoint<String> endpoint,
+                String                         msg )
+        {
+            log.error( "Message sending failed: " + msg );
+        }
+
+        /**
+         * Called when the partner has acknowledged receipt of sent messages.
+         *
+         * @param endpoint the WindowedMessageEndpoint that sent this event
+         * @param acknowledged the partner has received all MessageEnvelopes up to and including this sequence number
+         */
+        public synchronized void messagesAcknowledged(
+                WindowedMessageEndpoint<String> endpoint,
+                long                            acknowledged )
+        {
+            theHighestAcknowledged = Math.max( theHighestAcknowledged, acknowledged );
+        }
+
+        /**
+         * Called when the receiving endpoint threw the EndpointIsDeadException.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the status of the outgoing queue
+         * @param t the error
+         */
+        public void disablingError(
+                MessageEndpoint<String> endpoint,
+                List<String>            msg,
+                Throwable               t )
+        {
+            log.error( "Receiving endpoint is dead: " + msg, t );
+        }
+
+        /**
+         * The messages received so far.
+         */
+        protected List<String> theReceived = new ArrayList<String>();
+
+        /**
+         * The number of messageReceived events.
+         */
+        protected int theEnvelopeCount;
+
+        /**
+         * The number of messageSent events.
+         */
+        protected int theSentCount;
+
+        /**
+         * The highest acknowledged sequence number.
+         */
+        protected long theHighestAcknowledged = -1L;
+    }
+}
@@ -0,0 +1,268 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2013 by R-Objects Inc. dba NetMesh Inc., Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.comm.pingpong.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.comm.MessageEndpointIsDeadException;
+import org.infogrid.comm.MessageSendException;
+import org.infogrid.comm.SendingMessageEndpoint;
+import org.infogrid.comm.windowed.MessageEnvelope;
+import org.infogrid.comm.windowed.m.MWindowedMessageEndpoint;
+import org.infogrid.testharness.AbstractTest;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Tests that the windowed endpoints report a message that could not be sent only once,
+ * although the MessageEnvelope carrying it is resent until it goes through.
+ */
+public class WindowedTest2
+        extends
+            AbstractTest
+{
+    /**
+     * Test run.
+     *
+     * @throws Exception this code may throw any Exception
+     */
+    public void run()
+            throws
+                Exception
+    {
+        FailingEndpoint                  ep1 = new FailingEndpoint( "ep1", N_FAILURES, exec );
+        MWindowedMessageEndpoint<String> ep2 = MWindowedMessageEndpoint.create( "ep2", 4, 8, 20L, 10L, 200L, 0., exec );
+
+        FailureListener          l1 = new FailureListener();
+        WindowedTest1.MyListener l2 = new WindowedTest1.MyListener();
+        ep1.addDirectMessageEndpointListener( l1 );
+        ep2.addDirectMessageEndpointListener( l2 );
+
+        ep1.setPartnerAndInitiateCommunications( ep2 );
+
+        //
+
+        log.info( "Sending messages whose first MessageEnvelope fails several times" );
+
+        List<String> expected = new ArrayList<String>();
+        for( int i=0 ; i<N_MESSAGES ; ++i ) {
+            String msg = "m" + i;
+            expected.add( msg );
+            ep1.enqueueMessageForSend( msg );
+        }
+
+        long until = System.currentTimeMillis() + 10000L;
+        while( l2.getReceived().size() < N_MESSAGES && System.currentTimeMillis() < until ) {
+            Thread.sleep( 20L );
+        }
+
+        checkEquals( l2.getReceived(), expected, "Messages not received in order" );
+        checkEquals( ep1.theFailures, N_FAILURES, "Wrong number of failed sends" );
+        checkCondition( ep1.theFailedContent != null && !ep1.theFailedContent.isEmpty(), "No MessageEnvelope failed" );
+        checkEquals( l1.getFailed(), ep1.theFailedContent, "Failed messages not reported exactly once" );
+
+        ep1.gracefulDie();
+        ep2.gracefulDie();
+    }
+
+    /**
+      * Main program.
+      *
+      * @param args command-line arguments
+      */
+    public static void main(
+             String [] args )
+    {
+        WindowedTest2 test = null;
+        try {
+            if( args.length != 0 ) {
+                System.err.println( "Synopsis: <no arguments>" );
+                System.err.println( "aborting ..." );
+                System.exit( 1 );
+            }
+            test = new WindowedTest2( args );
+            test.run();
+
+        } catch( Throwable ex ) {
+            log.error( ex );
+            ++errorCount;
+        }
+        if( test != null ) {
+            test.cleanup();
+        }
+
+        if( errorCount == 0 ) {
+            log.info( "PASS" );
+        } else {
+            log.error( "FAIL (" + errorCount + " errors)" );
+        }
+
+        System.exit( errorCount );
+    }
+
+    /**
+     * Setup.
+     *
+     * @param args not used
+     * @throws Exception any kind of exception
+     */
+    public WindowedTest2(
+            String [] args )
+        throws
+            Exception
+    {
+    }
+
+    /**
+     * Cleanup.
+     */
+    @Override
+    public void cleanup()
+    {
+        exec.shutdown();
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( WindowedTest2.class );
+
+    /**
+     * The number of messages to send.
+     */
+    protected static final int N_MESSAGES = 20;
+
+    /**
+     * The number of times sending the first MessageEnvelope fails.
+     */
+    protected static final int N_FAILURES = 3;
+
+    /**
+     * Our ThreadPool
+     */
+    protected ScheduledExecutorService exec = createThreadPool( 1 );
+
+    /**
+     * Fails to send the first MessageEnvelope with content a number of times.
+     */
+    static class FailingEndpoint
+            extends
+                MWindowedMessageEndpoint<String>
+    {
+        /**
+         * Constructor.
+         *
+         * @param name the name of the endpoint
+         * @param failures the number of times sending the first MessageEnvelope with content fails
+         * @param exec the ScheduledExecutorService to schedule timed tasks
+         */
+        public FailingEndpoint(
+                String                   name,
+                int                      failures,
+                ScheduledExecutorService exec )
+        {
+            super( name, 4, 8, 20L, 10L, 200L, 0., exec, -1, -1, null, new ArrayList<String>() );
+
+            theFailuresLeft = failures;
+        }
+
+        /**
+         * Do the message send, unless this MessageEnvelope is to fail.
+         *
+         * @param envelope the MessageEnvelope to send
+         * @throws MessageEndpointIsDeadException thrown if the partner MessageEndpoint is dead
+         * @throws MessageSendException thrown if the message could not be sent
+         */
+        @Override
+        protected void sendEnvelope(
+                MessageEnvelope<String> envelope )
+            throws
+                MessageEndpointIsDeadException,
+                MessageSendException
+        {
+            List<String> content = envelope.getContent();
+
+            synchronized( this ) {
+                if( content != null && theFailuresLeft > 0 ) {
+                    if( theFailedSequenceNumber < 0 ) {
+                        theFailedSequenceNumber = envelope.getSequenceNumber();
+                        theFailedContent        = new ArrayList<String>( content );
+                    }
+                    if( theFailedSequenceNumber == envelope.getSequenceNumber() ) {
+                        --theFailuresLeft;
+                        ++theFailures;
+                        throw new MessageSendException( content, "failing on purpose" );
+                    }
+                }
+            }
+            super.sendEnvelope( envelope );
+        }
+
+        /**
+         * The number of times sending is still going to fail.
+         */
+        protected int theFailuresLeft;
+
+        /**
+         * The number of times sending has failed.
+         */
+        protected int theFailures;
+
+        /**
+         * The sequence number of the MessageEnvelope that fails.
+         */
+        protected long theFailedSequenceNumber = -1L;
+
+        /**
+         * The messages in the MessageEnvelope that fails.
+         */
+        protected List<String> theFailedContent;
+    }
+
+    /**
+     * Listener that records the messages whose sending failed.
+     */
+    static class FailureListener
+            extends
+                WindowedTest1.MyListener
+    {
+        /**
+         * Obtain a copy of the messages whose sending failed so far.
+         *
+         * @return the messages
+         */
+        public synchronized List<String> getFailed()
+        {
+            return new ArrayList<String>( theFailed );
+        }
+
+        /**
+         * Called when an outoing message failed to be sent.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the outgoing message
+         */
+        @Override
+        public synchronized void messageSendingFailed(
+                SendingMessageEndpoint<String> endpoint,
+                String                         msg )
+        {
+            theFailed.add( msg );
+        }
+
+        /**
+         * The messages whose sending failed.
+         */
+        protected List<String> theFailed = new ArrayList<String>();
+    }
+}